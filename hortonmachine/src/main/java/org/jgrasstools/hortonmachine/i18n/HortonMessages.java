@@ -331,6 +331,8 @@ public class HortonMessages {
     public static final String OMSTRENTOP_tpMax_DESCRIPTION = "Maximum Rain Time step to calculate the discharge.";
     public static final String OMSTRENTOP_tMax_DESCRIPTION = "Max number of time step.";
     public static final String OMSTRENTOP_tpMaxCalibration_DESCRIPTION = "Maximum Rain Time step to evaluate the Rain in calibration mode.";
+    public static final String OMSTRENTOP_pMaxThreads_DESCRIPTION = "The number of threads to use.";
+    public static final String OMSTRENTOP_doWarmStart_DESCRIPTION = "In calibration mode, start the delays of each rain duration from the ones of the previous duration (fewer iterations, but the results differ slightly from a cold start and the durations are not evaluated in parallel).";
     public static final String OMSTRENTOP_dt_DESCRIPTION = "Time step, if pMode=1, in minutes. Is the step used to calculate the discharge. If it's not setted then it's equal to the rain time step.";
     public static final String OMSTRENTOP_inRain_DESCRIPTION = "rain data.";
     public static final String OMSTRENTOP_inPipes_DESCRIPTION = "The read feature collection.";
@@ -692,6 +694,8 @@ public class HortonMessages {
     public static final String OMSNETWORKATTRIBUTESBUILDER_doHack_DESCRIPTION = "Flag to also create the hack map.";
     public static final String OMSNETWORKATTRIBUTESBUILDER_outNet_DESCRIPTION = "The vector of the network.";
     public static final String OMSNETWORKATTRIBUTESBUILDER_outHack_DESCRIPTION = "The map of hack numbering.";
+    public static final String OMSNETWORKATTRIBUTESBUILDER_inChannelNetwork_DESCRIPTION = "The optional channel network graph, if available the network is not extracted again from the rasters.";
+    public static final String OMSNETWORKATTRIBUTESBUILDER_outChannelNetwork_DESCRIPTION = "The channel network graph.";
 
     public static final String OMSMAGNITUDO_DESCRIPTION = "It calculates the magnitude of a basin, defined as the number of sources upriver with respect to every point.";
     public static final String OMSMAGNITUDO_DOCUMENTATION = "OmsMagnitudo.html";
@@ -734,6 +738,7 @@ public class HortonMessages {
     public static final String OMSJAMI_inAltimetry_DESCRIPTION = "The list of altimetric bands information, into which the basin is divided.";
     public static final String OMSJAMI_inAreas_DESCRIPTION = "The list of altimetric/energetic bands areas.";
     public static final String OMSJAMI_inMeteo_DESCRIPTION = "The map of meteo data to interpolate. Every value is associated to the id of the station.";
+    public static final String OMSJAMI_pMaxThreads_DESCRIPTION = "The number of threads to use.";
     public static final String OMSJAMI_outInterpolatedBand_DESCRIPTION = "Output interpolated meteo data for every band and point. Every value is associated to the id of the interpolation point.";
     public static final String OMSJAMI_outInterpolated_DESCRIPTION = "Output interpolated meteo data for every point. Every value is associated to the id of the interpolation point.";
 
@@ -820,6 +825,7 @@ public class HortonMessages {
     public static final String OMSDRAINDIR_inFlownet_DESCRIPTION = "The map of flowdirections on the network pixels (considered only in case of LTD method). Remember that in the case of fixed flow calculation the tca has to be recalculated afterwards; the tca output in this case is not corrected.";
     public static final String OMSDRAINDIR_pLambda_DESCRIPTION = "The direction correction factor.";
     public static final String OMSDRAINDIR_doLad_DESCRIPTION = "Switch for the mode to use: true = LAD (default), false = LTD)).";
+    public static final String OMSDRAINDIR_pMaxThreads_DESCRIPTION = "The number of threads to use.";
     public static final String OMSDRAINDIR_outFlow_DESCRIPTION = "The map of drainage directions.";
     public static final String OMSDRAINDIR_outTca_DESCRIPTION = "The map of total contributing areas.";
 
@@ -1041,6 +1047,8 @@ public class HortonMessages {
     public static final String OMSENERGYBALANCE_inAreas_DESCRIPTION = "The areas of energetic and altimetric bands.";
     public static final String OMSENERGYBALANCE_pInitsafepoint_DESCRIPTION = "The path to the safepoint to use as initial conditions.";
     public static final String OMSENERGYBALANCE_pEndsafepoint_DESCRIPTION = "The path to which to write the safepoint.";
+    public static final String OMSENERGYBALANCE_pSafepointinterval_DESCRIPTION = "The number of timesteps after which a snapshot is appended to the end safepoint, if 0 it is only written at the end.";
+    public static final String OMSENERGYBALANCE_pMaxThreads_DESCRIPTION = "The number of threads to use.";
     public static final String OMSENERGYBALANCE_outPnet_DESCRIPTION = "Net precipitation.";
     public static final String OMSENERGYBALANCE_outPrain_DESCRIPTION = "Precipitation that is rain.";
     public static final String OMSENERGYBALANCE_outPsnow_DESCRIPTION = "Precipitation that is snow.";
@@ -1176,6 +1184,8 @@ public class HortonMessages {
     public static final String OMSDEBRISFLOW_pEasting_DESCRIPTION = "The start position of the simulation (easting)";
     public static final String OMSDEBRISFLOW_pNorthing_DESCRIPTION = "The start position of the simulation (northing)";
     public static final String OMSDEBRISFLOW_pMontecarlo_DESCRIPTION = "The Montecarlo number.";
+    public static final String OMSDEBRISFLOW_pSeed_DESCRIPTION = "The seed of the Montecarlo random generators (negative for a random seed).";
+    public static final String OMSDEBRISFLOW_pMaxThreads_DESCRIPTION = "The number of threads to use.";
     public static final String OMSDEBRISFLOW_outMcs_DESCRIPTION = "The output inundation map.";
     public static final String OMSDEBRISFLOW_outDepo_DESCRIPTION = "The output deposit map.";
 
@@ -1191,6 +1201,9 @@ public class HortonMessages {
     public static final String OMSMULTITCA_inPit_DESCRIPTION = "The map of depitted elevation.";
     public static final String OMSMULTITCA_inFlow_DESCRIPTION = "The map of flowdirections.";
     public static final String OMSMULTITCA_inCp9_DESCRIPTION = "The map with the Thopological classes cp9.";
+    public static final String OMSMULTITCA_pPartition_DESCRIPTION = "The partition of the area of hillslope cells among the lower neighbours.";
+    public static final String OMSMULTITCA_pExponent_DESCRIPTION = "The exponent of the partition (if not set, the one suggested by the method is used).";
+    public static final String OMSMULTITCA_pMaxThreads_DESCRIPTION = "The number of threads to use.";
     public static final String OMSMULTITCA_outMultiTca_DESCRIPTION = "The map of total contributing areas.";
 
     public static final String OMSCB_DESCRIPTION = "Calculates the histogram of a set of data contained in a matrix with respect to the set of data contained in another matrix.";
@@ -1256,4 +1269,20 @@ public class HortonMessages {
     public static final String OMSEXTRACTBASIN_outOutlet_DESCRIPTION = "The optional outlet point vector map.";
     public static final String OMSEXTRACTBASIN_outVectorBasin_DESCRIPTION = "The optional extracted basin vector map.";
 
+    public static final String OMSEXTRACTBASINS_DESCRIPTION = "Extract the basins of many outlets at once from a map of flowdirections, every cell getting the id of its nearest downstream outlet.";
+    public static final String OMSEXTRACTBASINS_DOCUMENTATION = "";
+    public static final String OMSEXTRACTBASINS_KEYWORDS = "Dem manipulation, Basin, OmsFlowDirections";
+    public static final String OMSEXTRACTBASINS_LABEL = DEMMANIPULATION;
+    public static final String OMSEXTRACTBASINS_NAME = "extractbasins";
+    public static final int OMSEXTRACTBASINS_STATUS = 5;
+    public static final String OMSEXTRACTBASINS_LICENSE = "General Public License Version 3 (GPLv3)";
+    public static final String OMSEXTRACTBASINS_AUTHORNAMES = "Andrea Antonello, Silvia Franceschi";
+    public static final String OMSEXTRACTBASINS_AUTHORCONTACTS = "http://www.hydrologis.com";
+    public static final String OMSEXTRACTBASINS_inFlow_DESCRIPTION = "The map of flowdirections.";
+    public static final String OMSEXTRACTBASINS_inOutlets_DESCRIPTION = "The outlet points vector map.";
+    public static final String OMSEXTRACTBASINS_fId_DESCRIPTION = "The optional field of the outlets ids (if not set the position of the outlet is used).";
+    public static final String OMSEXTRACTBASINS_doVector_DESCRIPTION = "Flag to enable vector basins extraction.";
+    public static final String OMSEXTRACTBASINS_outBasins_DESCRIPTION = "The map of basins, labeled with the outlets ids.";
+    public static final String OMSEXTRACTBASINS_outVectorBasins_DESCRIPTION = "The optional vector map of basins, with id and area.";
+
 }
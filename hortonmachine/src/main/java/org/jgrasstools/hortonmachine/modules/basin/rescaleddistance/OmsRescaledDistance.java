@@ -36,6 +36,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSRESCALEDDISTA
 
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -156,9 +157,18 @@ public class OmsRescaledDistance extends JGTModel {
                 inFlow.getCoordinateReferenceSystem());
     }
 
-    private void calculateRescaledDistance( FlowNode runningNode, double distance ) {
-        runningNode.setValueInMap(rescaledIter, distance);
-        if (runningNode.getEnteringNodes().size() > 0) {
+    private void calculateRescaledDistance( FlowNode exitNode, double distance ) {
+        /*
+         * the nodes are walked upstream with an explicit stack, since
+         * a recursion overflows the stack on large basins. The distance
+         * of a node is written in the map before it is pushed.
+         */
+        ArrayDeque<FlowNode> stack = new ArrayDeque<FlowNode>();
+        exitNode.setValueInMap(rescaledIter, distance);
+        stack.push(exitNode);
+        while( !stack.isEmpty() ) {
+            FlowNode runningNode = stack.pop();
+            double runningDistance = runningNode.getValueFromMap(rescaledIter);
             List<FlowNode> enteringNodes = runningNode.getEnteringNodes();
             for( FlowNode enteringNode : enteringNodes ) {
                 double tmpDistance = Direction.forFlow((int) enteringNode.flow).getDistance(xRes, yRes);
@@ -171,13 +181,13 @@ public class OmsRescaledDistance extends JGTModel {
                 double netValue = enteringNode.getValueFromMap(netIter);
                 double newDistance = 0.0;
                 if (isNovalue(netValue)) {
-                    newDistance = distance + tmpDistance * pRatio;
+                    newDistance = runningDistance + tmpDistance * pRatio;
                 } else {
-                    newDistance = distance + tmpDistance;
+                    newDistance = runningDistance + tmpDistance;
                 }
-                calculateRescaledDistance(enteringNode, newDistance);
+                enteringNode.setValueInMap(rescaledIter, newDistance);
+                stack.push(enteringNode);
             }
         }
-
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet;
+
+import java.util.Arrays;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Labels every cell of a flowdirections grid with its nearest downstream outlet.
+ *
+ * <p>
+ * Every cell is visited once: the flow path of an unlabeled cell is followed
+ * downstream, using an explicit stack, until an outlet, an already labeled cell
+ * or the end of the flow is reached, and the whole path gets the found label.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class BasinsLabeler {
+    /**
+     * The label of cells that do not drain into any outlet.
+     */
+    public static final int NONE = 0;
+
+    private static final int UNKNOWN = -1;
+    private static final int RUNNING = -2;
+
+    private static final int[] DCOLS = {0, 1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DROWS = {0, 0, -1, -1, -1, 0, 1, 1, 1};
+
+    private final int[] flow;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * @param flow the flowdirections, row major, with values 1 to 8 for flowing cells.
+     * @param cols the columns of the grid.
+     * @param rows the rows of the grid.
+     */
+    public BasinsLabeler( int[] flow, int cols, int rows ) {
+        this.flow = flow;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Get the index of the cell into which a cell drains.
+     *
+     * @param index the index of the cell.
+     * @return the index of the downstream cell or -1 if the cell doesn't drain into a cell of the grid.
+     */
+    public int downstream( int index ) {
+        int dir = flow[index];
+        if (dir < 1 || dir > 8) {
+            return -1;
+        }
+        int col = index % cols + DCOLS[dir];
+        int row = index / cols + DROWS[dir];
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            return -1;
+        }
+        return row * cols + col;
+    }
+
+    /**
+     * Label the basins of a set of outlets.
+     *
+     * @param outlets the cell indexes of the outlets. An outlet
+     *          on the same cell of a previous one is ignored.
+     * @param pm the progress monitor.
+     * @return the labels, being the position in the outlets array plus 1, or {@link #NONE}.
+     */
+    public int[] label( int[] outlets, IJGTProgressMonitor pm ) {
+        int[] labels = new int[cols * rows];
+        Arrays.fill(labels, UNKNOWN);
+        for( int i = outlets.length - 1; i >= 0; i-- ) {
+            labels[outlets[i]] = i + 1;
+        }
+
+        int[] stack = new int[64];
+        pm.beginTask("Labeling basins...", rows);
+        for( int start = 0; start < labels.length; start++ ) {
+            if (labels[start] == UNKNOWN) {
+                int size = 0;
+                int label = NONE;
+                int current = start;
+                while( true ) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = current;
+                    labels[current] = RUNNING;
+                    int next = downstream(current);
+                    if (next == -1 || labels[next] == RUNNING) {
+                        // end of the flow or loop in the flowdirections
+                        break;
+                    }
+                    if (labels[next] != UNKNOWN) {
+                        label = labels[next];
+                        break;
+                    }
+                    current = next;
+                }
+                while( size > 0 ) {
+                    labels[stack[--size]] = label;
+                }
+            }
+            if ((start + 1) % cols == 0) {
+                pm.worked(1);
+            }
+        }
+        pm.done();
+        return labels;
+    }
+
+    /**
+     * Count the cells of every basin.
+     *
+     * @param labels the labels as returned by {@link #label(int[], IJGTProgressMonitor)}.
+     * @param outletsCount the number of outlets.
+     * @return the number of cells, indexed by label (i.e. position 0 holds the unlabeled cells).
+     */
+    public static long[] countCells( int[] labels, int outletsCount ) {
+        long[] counts = new long[outletsCount + 1];
+        for( int label : labels ) {
+            counts[label]++;
+        }
+        return counts;
+    }
+}
@@ -44,7 +44,7 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.text.MessageFormat;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.List;
 
@@ -226,30 +226,25 @@ public class OmsExtractBasin extends JGTModel {
         FlowNode runningNode = new FlowNode(flowIter, ncols, nrows, outletColRow[0], outletColRow[1]);
         runningNode.setValueInMap(basinIter, pValue);
         outArea++;
-        List<FlowNode> enteringNodes = runningNode.getEnteringNodes();
+        ArrayDeque<FlowNode> enteringNodes = new ArrayDeque<FlowNode>(runningNode.getEnteringNodes());
 
         boolean alreadyWarned = false;
         pm.beginTask(msg.message("wateroutlet.extracting"), -1);
-        while( enteringNodes.size() > 0 ) {
+        while( !enteringNodes.isEmpty() ) {
             if (pm.isCanceled()) {
                 return;
             }
-            List<FlowNode> newEnteringNodes = new ArrayList<FlowNode>();
-            for( FlowNode flowNode : enteringNodes ) {
-                if (!alreadyWarned && flowNode.touchesBound()) {
-                    pm.errorMessage(MessageFormat
-                            .format("WARNING: touched boundaries in col/row = {0}/{1}. You might consider to review your processing region.",
-                                    flowNode.col, flowNode.row));
-                    alreadyWarned = true;
-                }
-                flowNode.setValueInMap(basinIter, pValue);
-                outArea++;
-
-                List<FlowNode> newEntering = flowNode.getEnteringNodes();
-                if (newEntering.size() > 0)
-                    newEnteringNodes.addAll(newEntering);
+            FlowNode flowNode = enteringNodes.poll();
+            if (!alreadyWarned && flowNode.touchesBound()) {
+                pm.errorMessage(MessageFormat.format(
+                        "WARNING: touched boundaries in col/row = {0}/{1}. You might consider to review your processing region.",
+                        flowNode.col, flowNode.row));
+                alreadyWarned = true;
             }
-            enteringNodes = newEnteringNodes;
+            flowNode.setValueInMap(basinIter, pValue);
+            outArea++;
+
+            enteringNodes.addAll(flowNode.getEnteringNodes());
         }
         pm.done();
 
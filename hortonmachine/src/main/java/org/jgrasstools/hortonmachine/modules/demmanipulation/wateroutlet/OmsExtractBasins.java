@@ -0,0 +1,232 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_doVector_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_fId_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_inFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_inOutlets_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_outBasins_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_outVectorBasins_DESCRIPTION;
+
+import java.awt.image.WritableRaster;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+import javax.media.jai.iterator.WritableRandomIter;
+
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Out;
+import oms3.annotations.Status;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+@Description(OMSEXTRACTBASINS_DESCRIPTION)
+@Author(name = OMSEXTRACTBASINS_AUTHORNAMES, contact = OMSEXTRACTBASINS_AUTHORCONTACTS)
+@Keywords(OMSEXTRACTBASINS_KEYWORDS)
+@Label(OMSEXTRACTBASINS_LABEL)
+@Name(OMSEXTRACTBASINS_NAME)
+@Status(OMSEXTRACTBASINS_STATUS)
+@License(OMSEXTRACTBASINS_LICENSE)
+public class OmsExtractBasins extends JGTModel {
+
+    @Description(OMSEXTRACTBASINS_inFlow_DESCRIPTION)
+    @In
+    public GridCoverage2D inFlow;
+
+    @Description(OMSEXTRACTBASINS_inOutlets_DESCRIPTION)
+    @In
+    public SimpleFeatureCollection inOutlets;
+
+    @Description(OMSEXTRACTBASINS_fId_DESCRIPTION)
+    @In
+    public String fId;
+
+    @Description(OMSEXTRACTBASINS_doVector_DESCRIPTION)
+    @In
+    public boolean doVector = true;
+
+    @Description(OMSEXTRACTBASINS_outBasins_DESCRIPTION)
+    @Out
+    public GridCoverage2D outBasins = null;
+
+    @Description(OMSEXTRACTBASINS_outVectorBasins_DESCRIPTION)
+    @Out
+    public SimpleFeatureCollection outVectorBasins = null;
+
+    public static final String FIELD_BASINID = "basinid";
+    public static final String FIELD_BASINAREA = "basinarea";
+
+    @Execute
+    public void process() throws Exception {
+        if (!concatOr(outBasins == null, doReset)) {
+            return;
+        }
+        checkNull(inFlow, inOutlets);
+
+        RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        double cellArea = regionMap.getXres() * regionMap.getYres();
+        GridGeometry2D gridGeometry = inFlow.getGridGeometry();
+
+        int[] flow = new int[cols * rows];
+        RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = flowIter.getSampleDouble(c, r, 0);
+                flow[r * cols + c] = isNovalue(value) ? -1 : (int) value;
+            }
+        }
+        flowIter.done();
+
+        /*
+         * get the outlets cells and ids
+         */
+        List<SimpleFeature> outletsList = FeatureUtilities.featureCollectionToList(inOutlets);
+        String idField = null;
+        if (fId != null && outletsList.size() > 0) {
+            idField = FeatureUtilities.findAttributeName(outletsList.get(0).getFeatureType(), fId);
+            if (idField == null) {
+                throw new ModelsIllegalargumentException("The id field could not be found in the outlets: " + fId, this, pm);
+            }
+        }
+        int[] outlets = new int[outletsList.size()];
+        double[] ids = new double[outletsList.size()];
+        int outletsCount = 0;
+        for( int i = 0; i < outletsList.size(); i++ ) {
+            SimpleFeature outletFeature = outletsList.get(i);
+            Coordinate coordinate = ((Geometry) outletFeature.getDefaultGeometry()).getCoordinate();
+            int[] colRow = CoverageUtilities.colRowFromCoordinate(coordinate, gridGeometry, null);
+            if (colRow == null || colRow[0] < 0 || colRow[0] >= cols || colRow[1] < 0 || colRow[1] >= rows) {
+                pm.errorMessage("Ignoring outlet outside of the region: " + coordinate);
+                continue;
+            }
+            outlets[outletsCount] = colRow[1] * cols + colRow[0];
+            ids[outletsCount] = idField == null ? i + 1 : ((Number) outletFeature.getAttribute(idField)).doubleValue();
+            outletsCount++;
+        }
+        if (outletsCount == 0) {
+            throw new ModelsIllegalargumentException("No outlet lies inside the map region.", this, pm);
+        }
+        if (outletsCount < outlets.length) {
+            int[] tmpOutlets = new int[outletsCount];
+            System.arraycopy(outlets, 0, tmpOutlets, 0, outletsCount);
+            outlets = tmpOutlets;
+        }
+
+        BasinsLabeler labeler = new BasinsLabeler(flow, cols, rows);
+        int[] labels = labeler.label(outlets, pm);
+        long[] cellsCount = BasinsLabeler.countCells(labels, outletsCount);
+
+        WritableRaster basinsWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
+        WritableRandomIter basinsIter = RandomIterFactory.createWritable(basinsWR, null);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                int label = labels[r * cols + c];
+                if (label != BasinsLabeler.NONE) {
+                    basinsIter.setSample(c, r, 0, ids[label - 1]);
+                }
+            }
+        }
+        basinsIter.done();
+        outBasins = CoverageUtilities.buildCoverage("basins", basinsWR, regionMap, inFlow.getCoordinateReferenceSystem());
+
+        if (doVector) {
+            extractVectorBasins(labels, ids, cellsCount, cellArea);
+        }
+    }
+
+    private void extractVectorBasins( int[] labels, double[] ids, long[] cellsCount, double cellArea ) {
+        /*
+         * the area of a basin is the one of all its cells, also when
+         * it is vectorized to more than one polygon
+         */
+        HashMap<Double, Double> id2Area = new HashMap<Double, Double>();
+        for( int i = 0; i < cellsCount.length - 1; i++ ) {
+            Double area = id2Area.get(ids[i]);
+            double basinArea = cellsCount[i + 1] * cellArea;
+            id2Area.put(ids[i], area == null ? basinArea : area + basinArea);
+        }
+
+        pm.beginTask("Vectorizing basins...", -1);
+        Collection<Polygon> polygons = FeatureUtilities.doVectorize(outBasins, null);
+        pm.done();
+
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("basins");
+        b.setCRS(inFlow.getCoordinateReferenceSystem());
+        b.add("the_geom", Polygon.class);
+        b.add(FIELD_BASINID, Double.class);
+        b.add(FIELD_BASINAREA, Double.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+        outVectorBasins = new DefaultFeatureCollection();
+        for( Polygon polygon : polygons ) {
+            Object userData = polygon.getUserData();
+            if (!(userData instanceof Double) || isNovalue((Double) userData)) {
+                continue;
+            }
+            Double area = id2Area.get(userData);
+            if (area == null) {
+                continue;
+            }
+            builder.addAll(new Object[]{polygon, userData, area});
+            SimpleFeature feature = builder.buildFeature(null);
+            ((DefaultFeatureCollection) outVectorBasins).add(feature);
+        }
+    }
+
+}
@@ -35,6 +35,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_inPi
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_outFlow_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_outTca_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_pLambda_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_pMaxThreads_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
@@ -61,7 +62,7 @@ import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.ModelsSupporter;
 import org.jgrasstools.gears.utils.BitMatrix;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-import org.jgrasstools.gears.utils.sorting.QuickSortAlgorithm;
+import org.jgrasstools.gears.utils.sorting.IndexSortAlgorithm;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 
 @Description(OMSDRAINDIR_DESCRIPTION)
@@ -94,6 +95,10 @@ public class OmsDrainDir extends JGTModel {
     @In
     public boolean doLad = true;
 
+    @Description(OMSDRAINDIR_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDRAINDIR_outFlow_DESCRIPTION)
     @Out
     public GridCoverage2D outFlow = null;
@@ -129,7 +134,8 @@ public class OmsDrainDir extends JGTModel {
             return;
         }
         checkNull(inFlow, inPit);
-        double[] orderedelev, indexes;
+        double[] orderedelev;
+        int[] indexes;
         int nelev;
 
         HashMap<String, Double> regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inPit);
@@ -147,7 +153,6 @@ public class OmsDrainDir extends JGTModel {
 
         // create new matrix
         orderedelev = new double[cols * rows];
-        indexes = new double[cols * rows];
 
         nelev = 0;
         for( int j = 0; j < rows; j++ ) {
@@ -156,15 +161,14 @@ public class OmsDrainDir extends JGTModel {
             }
             for( int i = 0; i < cols; i++ ) {
                 orderedelev[((j) * cols) + i] = pitRandomIter.getSampleDouble(i, j, 0);
-                indexes[((j) * cols) + i] = ((j) * cols) + i + 1;
                 if (!isNovalue(pitRandomIter.getSampleDouble(i, j, 0))) {
                     nelev = nelev + 1;
                 }
             }
         }
 
-        QuickSortAlgorithm t = new QuickSortAlgorithm(pm);
-        t.sort(orderedelev, indexes);
+        IndexSortAlgorithm t = new IndexSortAlgorithm(pm, pMaxThreads);
+        indexes = t.sort(orderedelev);
 
         pm.message(msg.message("draindir.initializematrix"));
 
@@ -196,14 +200,14 @@ public class OmsDrainDir extends JGTModel {
      * routine that defines the draining directions
      * 
      * @param indexes
-     *            vector containing the order of elevation
+     *            the cell indexes ordered by elevation
      * @param deviationsImage
      *            the map containing the deviation
      * @param analizedMatrix 
      * @param nelev
      * @return
      */
-    private void OrlandiniD8_LAD( double[] indexes, WritableRaster deviationsImage, BitMatrix analizedMatrix,
+    private void OrlandiniD8_LAD( int[] indexes, WritableRaster deviationsImage, BitMatrix analizedMatrix,
             WritableRaster pitImage, WritableRaster flowImage, WritableRaster tcaImage, WritableRaster dirImage, int nelev ) {
         int row, col, ncelle, nr, nc;
         double dev1, dev2, sumdev1, sumdev2, sumdev;
@@ -213,7 +217,8 @@ public class OmsDrainDir extends JGTModel {
          * didren1,dirdren2,sigma
          */
         double[] dati = new double[10];
-        double count, flow;
+        int count;
+        double flow;
 
         double[] u = {xRes, yRes};
         double[] v = {NaN, NaN};
@@ -232,9 +237,9 @@ public class OmsDrainDir extends JGTModel {
             if (isCanceled(pm)) {
                 return;
             }
-            count = indexes[i] - 1;
-            row = (int) Math.floor(count / cols);
-            col = (int) (count % cols);
+            count = indexes[i];
+            row = count / cols;
+            col = count % cols;
             if (!isNovalue(pitRandomIter.getSampleDouble(col, row, 0)) && !isNovalue(flowRandomIter.getSampleDouble(col, row, 0))) {
                 ncelle = ncelle + 1;
                 compose(analizedMatrix, pitRandomIter, tcaRandomIter, dati, u, v, col, row);
@@ -312,14 +317,14 @@ public class OmsDrainDir extends JGTModel {
      * routine that defines the draining directions
      * 
      * @param indexes
-     *            vector containing the order of elevation
+     *            the cell indexes ordered by elevation
      * @param deviationsImage
      *            the map containing the deviation
      * @param analizedMatrix
      * @param nelev
      * @return
      */
-    private void OrlandiniD8_LTD( double[] indexes, WritableRaster deviationsImage, BitMatrix analizedMatrix,
+    private void OrlandiniD8_LTD( int[] indexes, WritableRaster deviationsImage, BitMatrix analizedMatrix,
             WritableRaster pitImage, WritableRaster flowImage, WritableRaster tcaImage, WritableRaster dirImage, int nelev ) {
 
         int row, col, ncelle, nr, nc;
@@ -330,7 +335,8 @@ public class OmsDrainDir extends JGTModel {
          * didren1,dirdren2,sigma
          */
         double[] dati = new double[10];
-        double count, flow;
+        int count;
+        double flow;
         /*
          * it indicates the position of the triangle's vertexes
          */
@@ -354,9 +360,9 @@ public class OmsDrainDir extends JGTModel {
             if (isCanceled(pm)) {
                 return;
             }
-            count = indexes[i] - 1;
-            row = (int) Math.floor(count / cols);
-            col = (int) (count % cols);
+            count = indexes[i];
+            row = count / cols;
+            col = count % cols;
 
             if (!isNovalue(pitRandomIter.getSampleDouble(col, row, 0)) && !isNovalue(flowRandomIter.getSampleDouble(col, row, 0))) {
                 ncelle = ncelle + 1;
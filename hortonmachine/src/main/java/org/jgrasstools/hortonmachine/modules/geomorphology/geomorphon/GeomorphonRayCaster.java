@@ -0,0 +1,203 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.geomorphology.geomorphon;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.atan;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+
+/**
+ * Line of sight engine for the geomorphon classification, working in grid space.
+ *
+ * <p>
+ * The profiles in the eight directions are sampled the same way as
+ * {@link OmsGeomorphon#calculateGeomorphon(RandomIter, org.geotools.coverage.grid.GridGeometry2D, double, double, double, int, int)}
+ * does through the profile utilities, but the cell offsets and progressive distances of the samples are
+ * calculated once for all the cells. The zenith and nadir angles are then tracked while walking the
+ * samples, without creating coordinates or profile points.
+ * </p>
+ * <p>
+ * An instance can be shared by several threads.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class GeomorphonRayCaster {
+
+    private static final int DIRECTIONS = 8;
+
+    /* relative tolerance that keeps the slope pruning safe from rounding */
+    private static final double SLOPE_TOLERANCE = 1E-9;
+
+    /* column and row offsets of the samples of every direction, starting from the first after the center */
+    private final int[][] colOffsets = new int[DIRECTIONS][];
+    private final int[][] rowOffsets = new int[DIRECTIONS][];
+    /* distance from the center of every sample */
+    private final double[][] progressives = new double[DIRECTIONS][];
+
+    /**
+     * Constructor.
+     *
+     * @param searchRadius the search radius to use.
+     * @param xRes the resolution in x of the elevation raster.
+     * @param yRes the resolution in y of the elevation raster.
+     */
+    public GeomorphonRayCaster( double searchRadius, double xRes, double yRes ) {
+        double diagonalDelta = searchRadius / sqrt(2.0);
+        double[][] ends = {//
+        {searchRadius, 0}, //
+                {diagonalDelta, diagonalDelta}, //
+                {0, searchRadius}, //
+                {-diagonalDelta, diagonalDelta}, //
+                {-searchRadius, 0}, //
+                {-diagonalDelta, -diagonalDelta}, //
+                {0, -searchRadius}, //
+                {diagonalDelta, -diagonalDelta} //
+        };
+
+        double step = Math.min(xRes, yRes);
+        for( int d = 0; d < DIRECTIONS; d++ ) {
+            double dx = ends[d][0];
+            double dy = ends[d][1];
+            double lineLength = sqrt(dx * dx + dy * dy);
+            /*
+             * same stepping as the profile: samples every step, running over by a step
+             * and clamping to the end of the line
+             */
+            int samples = 0;
+            for( double progressive = step; progressive < lineLength + step; progressive = progressive + step ) {
+                samples++;
+            }
+            colOffsets[d] = new int[samples];
+            rowOffsets[d] = new int[samples];
+            progressives[d] = new double[samples];
+            int i = 0;
+            for( double progressive = step; i < samples; progressive = progressive + step ) {
+                double x = dx;
+                double y = dy;
+                if (progressive < lineLength) {
+                    double fraction = progressive / lineLength;
+                    x = fraction * dx;
+                    y = fraction * dy;
+                }
+                colOffsets[d][i] = (int) Math.floor(0.5 + x / xRes);
+                rowOffsets[d][i] = (int) Math.floor(0.5 - y / yRes);
+                progressives[d][i] = progressive;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Calculate the geomorphon for a given cell of an elevation map.
+     *
+     * @param elevIter the elevation map {@link RandomIter}.
+     * @param cols the columns of the elevation map.
+     * @param rows the rows of the elevation map.
+     * @param angleThreshold the angle threshold to apply.
+     * @param c the column of the cell to analyse.
+     * @param r the row of the cell to analyse.
+     * @return the geomorphon classification for the cell.
+     */
+    public double calculateGeomorphon( RandomIter elevIter, int cols, int rows, double angleThreshold, int c, int r ) {
+        double elevation = elevIter.getSampleDouble(c, r, 0);
+        if (JGTConstants.isNovalue(elevation)) {
+            return JGTConstants.doubleNovalue;
+        }
+
+        int plusCount = 0;
+        int minusCount = 0;
+        for( int d = 0; d < DIRECTIONS; d++ ) {
+            int[] dCols = colOffsets[d];
+            int[] dRows = rowOffsets[d];
+            double[] dProgressives = progressives[d];
+
+            double zenithAngle = Double.POSITIVE_INFINITY;
+            double maxAngle = Double.NEGATIVE_INFINITY;
+            double maxSlope = Double.NEGATIVE_INFINITY;
+            double minSlope = Double.POSITIVE_INFINITY;
+            boolean hasVisible = false;
+            for( int i = 0; i < dCols.length; i++ ) {
+                int col = c + dCols[i];
+                int row = r + dRows[i];
+                if (col < 0 || col >= cols || row < 0 || row >= rows) {
+                    continue;
+                }
+                double value = elevIter.getSampleDouble(col, row, 0);
+                if (JGTConstants.isNovalue(value)) {
+                    continue;
+                }
+                double deltaElev = value - elevation;
+                double progressive = dProgressives[i];
+                /*
+                 * the angle decreases with the slope, so it is calculated only
+                 * for the samples that can be the new highest or lowest
+                 */
+                double slope = deltaElev / progressive;
+                if (slope >= maxSlope - SLOPE_TOLERANCE * abs(maxSlope)) {
+                    double angle = verticalAngle(progressive, deltaElev);
+                    if (angle <= zenithAngle) {
+                        zenithAngle = angle;
+                    }
+                    maxSlope = Math.max(maxSlope, slope);
+                }
+                if (slope <= minSlope + SLOPE_TOLERANCE * abs(minSlope)) {
+                    double angle = verticalAngle(progressive, deltaElev);
+                    if (angle >= maxAngle) {
+                        maxAngle = angle;
+                    }
+                    minSlope = Math.min(minSlope, slope);
+                }
+                hasVisible = true;
+            }
+
+            if (hasVisible) {
+                double nadirAngle = 180 - maxAngle;
+                double diff = nadirAngle - zenithAngle;
+                if (diff > angleThreshold) {
+                    plusCount++;
+                } else if (diff < -angleThreshold) {
+                    minusCount++;
+                } else if (!(abs(diff) < angleThreshold)) {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+
+        return GeomorphonClassification.getClassification(plusCount, minusCount);
+    }
+
+    /**
+     * The angle from the vertical of a point seen from the center, as the azimuth of the
+     * profile coordinate <code>(progressive, elevation difference)</code>.
+     */
+    private static double verticalAngle( double progressive, double deltaElev ) {
+        if (deltaElev == 0) {
+            return 90.0;
+        } else if (deltaElev > 0) {
+            return toDegrees(atan(progressive / deltaElev));
+        } else {
+            return toDegrees(atan(-deltaElev / progressive)) + 90.0;
+        }
+    }
+}
@@ -17,10 +17,15 @@
  */
 package org.jgrasstools.hortonmachine.modules.geomorphology.geomorphon;
 import static java.lang.Math.abs;
-import static java.lang.Math.sqrt;
 
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.WritableRandomIter;
@@ -42,6 +47,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.geometry.Envelope2D;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.RegionMap;
@@ -78,6 +84,10 @@ public class OmsGeomorphon extends JGTModel {
     @Out
     public GridCoverage2D outRaster;
 
+    @Description("The number of threads to use.")
+    @In
+    public int pMaxThreads = 1;
+
     @Execute
     public void process() throws Exception {
         checkNull(inElev);
@@ -86,35 +96,68 @@ public class OmsGeomorphon extends JGTModel {
             throw new ModelsIllegalargumentException("The search radius has to be > 0.", this, pm);
         }
 
-        final double diagonalDelta = pRadius / sqrt(2.0);
-
         final RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inElev);
-        int cols = regionMap.getCols();
+        final int cols = regionMap.getCols();
         final int rows = regionMap.getRows();
-
-        final RandomIter elevIter = CoverageUtilities.getRandomIterator(inElev);
-        final GridGeometry2D gridGeometry = inElev.getGridGeometry();
+        final GeomorphonRayCaster rayCaster = new GeomorphonRayCaster(pRadius, regionMap.getXres(), regionMap.getYres());
 
         WritableRaster[] outWRHolder = new WritableRaster[1];
         outRaster = CoverageUtilities.createCoverageFromTemplate(inElev, JGTConstants.doubleNovalue, outWRHolder);
-        final WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWRHolder[0]);
-
-        pm.beginTask("Calculate classes...", cols);
-        for( int c = 0; c < cols; c++ ) {
-            for( int r = 0; r < rows; r++ ) {
-                try {
-                    double classification = calculateGeomorphon(elevIter, gridGeometry, pRadius, pThreshold, diagonalDelta, c, r);
-                    outIter.setSample(c, r, 0, classification);
-                } catch (TransformException e) {
-                    e.printStackTrace();
+        final WritableRaster outWR = outWRHolder[0];
+
+        int workers = Math.max(1, Math.min(pMaxThreads, rows));
+        pm.beginTask("Calculate classes...", rows);
+        if (workers == 1) {
+            calculateRows(rayCaster, outWR, cols, rows, 0, 1);
+        } else {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( int i = 0; i < workers; i++ ) {
+                    final int first = i;
+                    final int step = workers;
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            calculateRows(rayCaster, outWR, cols, rows, first, step);
+                            return null;
+                        }
+                    }));
                 }
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException("Error during the geomorphon calculation: " + e.getCause().getMessage(), this);
+            } finally {
+                fixedThreadPool.shutdownNow();
             }
-            pm.worked(1);
         }
         pm.done();
 
     }
 
+    /**
+     * Classify the rows <code>first, first + step, ...</code>, with iterators owned by the calling thread.
+     */
+    private void calculateRows( GeomorphonRayCaster rayCaster, WritableRaster outWR, int cols, int rows, int first, int step ) {
+        RandomIter elevIter = CoverageUtilities.getRandomIterator(inElev);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
+        try {
+            for( int r = first; r < rows; r += step ) {
+                for( int c = 0; c < cols; c++ ) {
+                    double classification = rayCaster.calculateGeomorphon(elevIter, cols, rows, pThreshold, c, r);
+                    outIter.setSample(c, r, 0, classification);
+                }
+                synchronized (pm) {
+                    pm.worked(1);
+                }
+            }
+        } finally {
+            elevIter.done();
+            outIter.done();
+        }
+    }
+
     /**
      * Calculate the geomorphon for a given cell of an elevation map.
      * 
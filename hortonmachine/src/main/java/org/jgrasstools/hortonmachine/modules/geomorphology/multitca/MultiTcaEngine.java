@@ -0,0 +1,409 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.geomorphology.multitca;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.modules.ModelsSupporter;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+
+/**
+ * Multiple flow direction accumulation of the contributing areas.
+ *
+ * <p>
+ * On hillslopes (cp9 classes 10 to 60) the area of a cell is split among all its lower
+ * neighbours, on convergent sites (cp9 classes 70 to 90) it goes all to the cell its
+ * flow direction points to. Flat areas are crossed following the flow directions.
+ * </p>
+ * <p>
+ * The cells are processed in topological order: every cell knows how many neighbours
+ * drain into it and is processed once they are all done, so no sorting by elevation
+ * is needed. With more threads the cells are first grouped into the independent
+ * drainage systems they belong to, which are then processed in parallel.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class MultiTcaEngine {
+
+    /**
+     * The ways the area of hillslope cells is split among the lower neighbours.
+     */
+    public static enum Partition {
+        /**
+         * Proportional to the elevation drop, the original behaviour of the module.
+         */
+        DROP(1.0),
+        /**
+         * Proportional to the slope raised to the exponent (Freeman, 1991).
+         */
+        FREEMAN(1.1),
+        /**
+         * Proportional to the slope raised to the exponent times the contour length, 0.5
+         * cells for cardinal and 0.354 cells for diagonal neighbours (Quinn et al., 1991).
+         */
+        QUINN(1.0),
+        /**
+         * Proportional to the slope raised to a high exponent, to tune the divergence of
+         * the flow (Holmgren, 1994).
+         */
+        HOLMGREN(4.0);
+
+        private final double defaultExponent;
+
+        private Partition( double defaultExponent ) {
+            this.defaultExponent = defaultExponent;
+        }
+
+        /**
+         * @return the exponent suggested by the method.
+         */
+        public double getDefaultExponent() {
+            return defaultExponent;
+        }
+    }
+
+    private static final int[][] DIR = ModelsSupporter.DIR_WITHFLOW_EXITING;
+
+    private final double[] pit;
+    private final double[] flow;
+    private final double[] cp9;
+    private final int cols;
+    private final int rows;
+    private final Partition partition;
+    private final double exponent;
+    private final int threads;
+    private IJGTProgressMonitor pm = new LogProgressMonitor();
+
+    private final double[] distances = new double[9];
+    private final double[] contourLengths = new double[9];
+
+    private double[] tca;
+    private byte[] receivers;
+    private int[] inDegree;
+    private int[] queue;
+
+    /**
+     * Constructor.
+     *
+     * @param pit the depitted elevations, row by row.
+     * @param flow the flow directions, row by row.
+     * @param cp9 the topological classes, row by row.
+     * @param cols the number of columns.
+     * @param rows the number of rows.
+     * @param xRes the resolution in x.
+     * @param yRes the resolution in y.
+     * @param partition the partition of the area of hillslope cells.
+     * @param exponent the exponent of the partition.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public MultiTcaEngine( double[] pit, double[] flow, double[] cp9, int cols, int rows, double xRes, double yRes,
+            Partition partition, double exponent, int threads, IJGTProgressMonitor pm ) {
+        this.pit = pit;
+        this.flow = flow;
+        this.cp9 = cp9;
+        this.cols = cols;
+        this.rows = rows;
+        this.partition = partition;
+        this.exponent = exponent;
+        this.threads = Math.max(1, threads);
+        if (pm != null)
+            this.pm = pm;
+
+        double diagonal = Math.sqrt(xRes * xRes + yRes * yRes);
+        for( int k = 1; k <= 8; k++ ) {
+            if (DIR[k][1] == 0) {
+                distances[k] = xRes;
+                contourLengths[k] = 0.5 * yRes;
+            } else if (DIR[k][0] == 0) {
+                distances[k] = yRes;
+                contourLengths[k] = 0.5 * xRes;
+            } else {
+                distances[k] = diagonal;
+                contourLengths[k] = 0.354 * diagonal / Math.sqrt(2.0);
+            }
+        }
+    }
+
+    /**
+     * Accumulates the contributing areas, in number of cells.
+     *
+     * @return the contributing areas, row by row, novalue where the flow directions or
+     *          the topological classes are novalues.
+     * @throws Exception
+     */
+    public double[] accumulate() throws Exception {
+        int cellsNum = cols * rows;
+        tca = new double[cellsNum];
+        receivers = new byte[cellsNum];
+        inDegree = new int[cellsNum];
+        queue = new int[cellsNum];
+
+        pm.beginTask("Building the flow graph...", rows);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                int cell = r * cols + c;
+                tca[cell] = 1.0;
+                int mask = findReceivers(c, r);
+                receivers[cell] = (byte) mask;
+                for( int k = 1; k <= 8; k++ ) {
+                    if ((mask & (1 << (k - 1))) != 0) {
+                        inDegree[cell + DIR[k][1] * cols + DIR[k][0]]++;
+                    }
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        if (threads == 1) {
+            int[] cells = new int[cellsNum];
+            for( int i = 0; i < cellsNum; i++ ) {
+                cells[i] = i;
+            }
+            pm.beginTask("Accumulating...", IJGTProgressMonitor.UNKNOWN);
+            process(cells, 0, cellsNum);
+            pm.done();
+        } else {
+            processBasins();
+        }
+
+        for( int i = 0; i < cellsNum; i++ ) {
+            if (isNovalue(cp9[i]) || isNovalue(flow[i])) {
+                tca[i] = doubleNovalue;
+            }
+        }
+        return tca;
+    }
+
+    /**
+     * Groups the cells in the independent drainage systems and processes them in parallel.
+     */
+    private void processBasins() throws Exception {
+        final int cellsNum = cols * rows;
+        int[] parent = new int[cellsNum];
+        for( int i = 0; i < cellsNum; i++ ) {
+            parent[i] = i;
+        }
+        for( int cell = 0; cell < cellsNum; cell++ ) {
+            int mask = receivers[cell] & 0xff;
+            for( int k = 1; k <= 8; k++ ) {
+                if ((mask & (1 << (k - 1))) != 0) {
+                    int a = find(parent, cell);
+                    int b = find(parent, cell + DIR[k][1] * cols + DIR[k][0]);
+                    if (a != b) {
+                        parent[Math.max(a, b)] = Math.min(a, b);
+                    }
+                }
+            }
+        }
+
+        /*
+         * order the cells by basin, the roots being the first cells of their basin
+         */
+        int[] offsets = new int[cellsNum];
+        for( int cell = 0; cell < cellsNum; cell++ ) {
+            parent[cell] = find(parent, cell);
+            offsets[parent[cell]]++;
+        }
+        /*
+         * and group the basins in batches of similar size
+         */
+        final List<int[]> batches = new ArrayList<int[]>();
+        int batchSize = Math.max(1, cellsNum / (threads * 16));
+        int batchStart = 0;
+        int offset = 0;
+        for( int root = 0; root < cellsNum; root++ ) {
+            if (parent[root] == root) {
+                int size = offsets[root];
+                offsets[root] = offset;
+                offset += size;
+                if (offset - batchStart >= batchSize) {
+                    batches.add(new int[]{batchStart, offset});
+                    batchStart = offset;
+                }
+            }
+        }
+        if (batchStart < cellsNum) {
+            batches.add(new int[]{batchStart, cellsNum});
+        }
+        final int[] cells = new int[cellsNum];
+        for( int cell = 0; cell < cellsNum; cell++ ) {
+            cells[offsets[parent[cell]]++] = cell;
+        }
+        parent = null;
+        offsets = null;
+
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        pm.beginTask("Accumulating...", batches.size());
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( final int[] batch : batches ) {
+                futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        process(cells, batch[0], batch[1]);
+                        return null;
+                    }
+                }));
+            }
+            for( Future<Object> future : futures ) {
+                if (pm.isCanceled()) {
+                    throw new ModelsRuntimeException("Module interrupted.", this);
+                }
+                get(future);
+                pm.worked(1);
+            }
+        } finally {
+            fixedThreadPool.shutdownNow();
+        }
+        pm.done();
+    }
+
+    private void get( Future<Object> future ) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelsRuntimeException("Module interrupted.", this);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException("Error during the accumulation: " + e.getCause().getMessage(), this);
+        }
+    }
+
+    private static int find( int[] parent, int cell ) {
+        while( parent[cell] != cell ) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Processes the cells of a group of whole basins, using the same part of the queue.
+     */
+    private void process( int[] cells, int from, int to ) {
+        int tail = from;
+        for( int i = from; i < to; i++ ) {
+            if (inDegree[cells[i]] == 0) {
+                queue[tail++] = cells[i];
+            }
+        }
+        double[] weights = new double[9];
+        for( int head = from; head < tail; head++ ) {
+            int cell = queue[head];
+            int mask = receivers[cell] & 0xff;
+            if (mask == 0) {
+                continue;
+            }
+            int c = cell % cols;
+            int r = cell / cols;
+            double sum = 0;
+            for( int k = 1; k <= 8; k++ ) {
+                weights[k] = 0;
+                if ((mask & (1 << (k - 1))) != 0) {
+                    double drop = pit[cell] - pit[cell + DIR[k][1] * cols + DIR[k][0]];
+                    if (isHillslope(cp9[cell]) && drop > 0) {
+                        weights[k] = weight(drop, k);
+                        sum += weights[k];
+                    } else {
+                        // flats and convergent sites pass the whole area
+                        weights[k] = -1;
+                    }
+                }
+            }
+            for( int k = 1; k <= 8; k++ ) {
+                if (weights[k] != 0) {
+                    int target = (r + DIR[k][1]) * cols + c + DIR[k][0];
+                    tca[target] += weights[k] < 0 ? tca[cell] : tca[cell] * weights[k] / sum;
+                    if (--inDegree[target] == 0) {
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the directions the area of the cell goes to, as bits of the direction codes.
+     */
+    private int findReceivers( int c, int r ) {
+        int cell = r * cols + c;
+        double elevation = pit[cell];
+        if (!(elevation > 0)) {
+            return 0;
+        }
+        int mask = 0;
+        if (isHillslope(cp9[cell])) {
+            for( int k = 1; k <= 8; k++ ) {
+                int nc = c + DIR[k][0];
+                int nr = r + DIR[k][1];
+                if (nc < 0 || nc >= cols || nr < 0 || nr >= rows) {
+                    continue;
+                }
+                double neighbour = pit[nr * cols + nc];
+                double drop = elevation - neighbour;
+                if ((drop > 0 && neighbour > 0) || (drop == 0 && flow[cell] == DIR[k][2])) {
+                    mask |= 1 << (k - 1);
+                }
+            }
+        } else if (isConvergent(cp9[cell])) {
+            for( int k = 1; k <= 8; k++ ) {
+                int nc = c + DIR[k][0];
+                int nr = r + DIR[k][1];
+                if (flow[cell] == DIR[k][2] && nc >= 0 && nc < cols && nr >= 0 && nr < rows) {
+                    mask |= 1 << (k - 1);
+                    break;
+                }
+            }
+        }
+        return mask;
+    }
+
+    private double weight( double drop, int k ) {
+        if (partition == Partition.DROP) {
+            return exponent == 1.0 ? drop : Math.pow(drop, exponent);
+        }
+        double slope = drop / distances[k];
+        double weight = exponent == 1.0 ? slope : Math.pow(slope, exponent);
+        if (partition == Partition.QUINN) {
+            weight = weight * contourLengths[k];
+        }
+        return weight;
+    }
+
+    private static boolean isHillslope( double cp9 ) {
+        return cp9 == 10 || cp9 == 20 || cp9 == 30 || cp9 == 40 || cp9 == 50 || cp9 == 60;
+    }
+
+    private static boolean isConvergent( double cp9 ) {
+        return cp9 == 70 || cp9 == 80 || cp9 == 90;
+    }
+
+}
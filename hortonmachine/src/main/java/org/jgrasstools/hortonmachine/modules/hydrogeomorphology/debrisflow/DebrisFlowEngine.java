@@ -0,0 +1,289 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.debrisflow;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.round;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+import static org.jgrasstools.gears.utils.math.NumericsUtilities.dEq;
+import static org.jgrasstools.gears.utils.math.NumericsUtilities.pythagoras;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Montecarlo engine of the debris flow random walks.
+ *
+ * <p>
+ * Every realization gets its own generator, split in realization order from a
+ * seeded root generator, so that the result depends only on the seed and not on
+ * the number of threads used. Realizations are run in parallel in batches and their
+ * paths are merged in realization order into the hits raster, which allows to
+ * stop at the same realization as the sequential run once the threshold area
+ * is flooded.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DebrisFlowEngine {
+    private static final int[] DCOLS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DROWS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int BATCH_PER_THREAD = 16;
+
+    private final double[] elev;
+    private final int cols;
+    private final int rows;
+    private final double[] distances = new double[DCOLS.length];
+
+    /**
+     * @param elev the elevation values, row major, novalues being {@link Double#NaN} or the default novalue.
+     * @param cols the columns of the region.
+     * @param rows the rows of the region.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     */
+    public DebrisFlowEngine( double[] elev, int cols, int rows, double xRes, double yRes ) {
+        this.elev = elev;
+        this.cols = cols;
+        this.rows = rows;
+        for( int i = 0; i < DCOLS.length; i++ ) {
+            distances[i] = pythagoras(abs(DCOLS[i] * xRes), abs(DROWS[i] * yRes));
+        }
+    }
+
+    /**
+     * Run the Montecarlo realizations.
+     *
+     * @param startCol the start column.
+     * @param startRow the start row.
+     * @param realizations the maximum number of realizations.
+     * @param seed the seed of the root generator.
+     * @param thresCells the number of flooded cells after which to stop.
+     * @param threads the number of threads to use.
+     * @param hits the array, of size cols*rows, into which the hits of every cell are summed.
+     * @param pm the progress monitor.
+     * @return the index of the last processed realization.
+     */
+    public int run( final int startCol, final int startRow, int realizations, long seed, long thresCells, int threads,
+            int[] hits, IJGTProgressMonitor pm ) {
+        threads = Math.max(1, threads);
+        SplittableRandom root = new SplittableRandom(seed);
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        Walker[] walkers = new Walker[threads];
+        for( int i = 0; i < threads; i++ ) {
+            walkers[i] = new Walker();
+        }
+        int batchSize = threads > 1 ? threads * BATCH_PER_THREAD : 1;
+        final int[][] paths = new int[batchSize][];
+        final SplittableRandom[] generators = new SplittableRandom[batchSize];
+
+        long floodedCells = 0;
+        int processed = 0;
+        pm.beginTask("Montecarlo simulation...", realizations);
+        try {
+            for( int batchStart = 0; batchStart < realizations; batchStart += batchSize ) {
+                final int count = Math.min(batchSize, realizations - batchStart);
+                for( int i = 0; i < count; i++ ) {
+                    generators[i] = root.split();
+                }
+
+                if (pool == null) {
+                    paths[0] = walkers[0].walk(startCol, startRow, generators[0]);
+                } else {
+                    List<Future< ? >> futures = new ArrayList<Future< ? >>(threads);
+                    for( int t = 0; t < threads; t++ ) {
+                        final Walker walker = walkers[t];
+                        final int first = t;
+                        final int step = threads;
+                        futures.add(pool.submit(new Callable<Void>(){
+                            public Void call() throws Exception {
+                                for( int i = first; i < count; i += step ) {
+                                    paths[i] = walker.walk(startCol, startRow, generators[i]);
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                    for( Future< ? > future : futures ) {
+                        future.get();
+                    }
+                }
+
+                for( int i = 0; i < count; i++ ) {
+                    int mc = batchStart + i;
+                    processed = mc;
+                    for( int index : paths[i] ) {
+                        if (hits[index]++ == 0) {
+                            floodedCells++;
+                        }
+                    }
+                    paths[i] = null;
+                    pm.worked(1);
+                    if (thresCells <= floodedCells) {
+                        return processed;
+                    }
+                }
+            }
+            return processed;
+        } catch (InterruptedException e) {
+            throw new ModelsRuntimeException("The Montecarlo simulation has been interrupted.", this);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException(e.getCause().getLocalizedMessage(), this);
+        } finally {
+            pm.done();
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * A random walker holding the state reused by the walks of a thread.
+     */
+    public class Walker {
+        private final int[] visitedEpochs = new int[cols * rows];
+        private int epoch = 0;
+        private int[] path = new int[64];
+        private int pathSize;
+        private final int[] candidates = new int[DCOLS.length];
+        private final double[] slopes = new double[DCOLS.length];
+        private final double[] probabilities = new double[DCOLS.length];
+
+        /**
+         * Walk downhill from a start cell.
+         *
+         * @param startCol the start column.
+         * @param startRow the start row.
+         * @param random the generator of the realization.
+         * @return the indexes of the cells hit by the walk, in hit order.
+         */
+        public int[] walk( int startCol, int startRow, SplittableRandom random ) {
+            if (++epoch == 0) {
+                Arrays.fill(visitedEpochs, 0);
+                epoch = 1;
+            }
+            pathSize = 0;
+
+            int centerCol = startCol;
+            int centerRow = startRow;
+            visitedEpochs[centerRow * cols + centerCol] = epoch;
+            while( true ) {
+                double centerValue = elev[centerRow * cols + centerCol];
+
+                int size = 0;
+                double slopeSum = 0;
+                for( int d = 0; d < DCOLS.length; d++ ) {
+                    int tmpCol = centerCol + DCOLS[d];
+                    int tmpRow = centerRow + DROWS[d];
+                    // if point is outside jump it
+                    if (tmpCol < 0 || tmpCol >= cols || tmpRow < 0 || tmpRow >= rows) {
+                        continue;
+                    }
+                    int index = tmpRow * cols + tmpCol;
+                    if (visitedEpochs[index] == epoch) {
+                        continue;
+                    }
+                    // if point is novalue, jump it
+                    double nextValue = elev[index];
+                    if (isNovalue(nextValue)) {
+                        continue;
+                    }
+                    double slope = (nextValue - centerValue) / distances[d];
+                    // we take only negative and 0 slope, downhill
+                    if (slope > 0) {
+                        continue;
+                    }
+                    slope = abs(slope);
+
+                    // insert keeping the candidates sorted by slope, stable on ties
+                    int pos = size;
+                    while( pos > 0 && slopes[pos - 1] > slope ) {
+                        slopes[pos] = slopes[pos - 1];
+                        candidates[pos] = candidates[pos - 1];
+                        pos--;
+                    }
+                    slopes[pos] = slope;
+                    candidates[pos] = index;
+                    size++;
+                    slopeSum = slopeSum + slope;
+                }
+
+                if (size == 0) {
+                    /*
+                     * touched border or slope is not negative
+                     */
+                    break;
+                }
+
+                // get a random number between 0 and 1
+                double rnd = random.nextDouble();
+                int next = centerRow * cols + centerCol;
+                if (size == 1) {
+                    // direction is only one
+                    next = candidates[0];
+                } else if (dEq(slopeSum, 0.0)) {
+                    /*
+                     * case in which the slopes are all 0, choose a random and go on
+                     */
+                    int index = (int) round(random.nextDouble() * size) - 1;
+                    if (index < 0)
+                        index = 0;
+                    next = candidates[index];
+                } else {
+                    /*
+                     * normal case in which the slopes have a value
+                     */
+                    for( int i = 0; i < size; i++ ) {
+                        probabilities[i] = slopes[i] / slopeSum;
+                        if (i != 0) {
+                            probabilities[i] = probabilities[i] + probabilities[i - 1];
+                        }
+                    }
+                    for( int i = 1; i < size; i++ ) {
+                        if (rnd < probabilities[i - 1]) {
+                            next = candidates[i - 1];
+                            break;
+                        } else if (rnd < probabilities[i]) {
+                            next = candidates[i];
+                            break;
+                        }
+                    }
+                }
+
+                centerCol = next % cols;
+                centerRow = next / cols;
+                visitedEpochs[next] = epoch;
+                if (pathSize == path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[pathSize++] = next;
+            }
+            return Arrays.copyOf(path, pathSize);
+        }
+    }
+}
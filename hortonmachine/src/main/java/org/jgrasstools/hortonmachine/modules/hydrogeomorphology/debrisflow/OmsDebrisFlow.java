@@ -17,14 +17,10 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.debrisflow;
 
-import static java.lang.Math.abs;
 import static java.lang.Math.pow;
-import static java.lang.Math.round;
 import static java.lang.Math.sqrt;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
-import static org.jgrasstools.gears.utils.math.NumericsUtilities.dEq;
 import static org.jgrasstools.gears.utils.math.NumericsUtilities.isBetween;
-import static org.jgrasstools.gears.utils.math.NumericsUtilities.pythagoras;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_DESCRIPTION;
@@ -40,15 +36,12 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pD
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pEasting_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMcoeff_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMontecarlo_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pNorthing_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pSeed_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pVolume_DESCRIPTION;
 
 import java.awt.image.WritableRaster;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Random;
-import java.util.TreeSet;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
@@ -117,6 +110,14 @@ public class OmsDebrisFlow extends JGTModel {
     @In
     public int pMontecarlo = 50;
 
+    @Description(OMSDEBRISFLOW_pSeed_DESCRIPTION)
+    @In
+    public long pSeed = -1;
+
+    @Description(OMSDEBRISFLOW_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDEBRISFLOW_outMcs_DESCRIPTION)
     @Out
     public GridCoverage2D outMcs = null;
@@ -153,178 +154,29 @@ public class OmsDebrisFlow extends JGTModel {
             throw new ModelsIllegalargumentException("Input coordinates are on a novalue elevation point.", this, pm);
         }
 
-        WritableRaster mcsWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter probIter = RandomIterFactory.createWritable(mcsWR, null);
-
-        Random flatRnd = new Random();
-        int processedMc = 0;
-        for( int mc = 0; mc < pMontecarlo; mc++ ) {
-            pm.message("Montecarlo n." + mc);
-            processedMc = mc;
-            /*
-             * for every Montecarlo loop, get a flow path
-             */
-            int centerCol = startCol;
-            int centerRow = startRow;
-
-            TreeSet<Point> touchedPoints = new TreeSet<Point>();
-            touchedPoints.add(new Point(centerCol, centerRow));
-
-            boolean doStop = false;
-            // cicle over every cell neighbours along the way
-            Random randomGenerator = new Random();// -System.currentTimeMillis());
-            do {
-                // System.out.println(centerCol + "/" + centerRow + " --- " + cols + "/" + rows);
-                double centerValue = elevIter.getSampleDouble(centerCol, centerRow, 0);
-
-                List<SlopeProbability> spList = new ArrayList<SlopeProbability>();
-                double slopeSum = 0;
-                for( int x = -1; x <= 1; x++ ) {
-                    for( int y = -1; y <= 1; y++ ) {
-                        if (x == 0 && y == 0) {
-                            continue;
-                        }
-
-                        int tmpCol = centerCol + x;
-                        int tmpRow = centerRow + y;
-
-                        if (touchedPoints.contains(new Point(tmpCol, tmpRow))) {
-                            continue;
-                        }
-
-                        // if point is outside jump it
-                        if (!isBetween(tmpCol, 0, cols - 1) || !isBetween(tmpRow, 0, rows - 1)) {
-                            continue;
-                        }
-
-                        // if point is novalue, jump it
-                        double nextValue = elevIter.getSampleDouble(tmpCol, tmpRow, 0);
-                        if (isNovalue(nextValue)) {
-                            continue;
-                        }
-
-                        double distance = pythagoras(abs((tmpCol - centerCol) * xRes), abs((tmpRow - centerRow) * yRes));
-                        double slope = (nextValue - centerValue) / distance;
-
-                        // System.out.println(sp);
-
-                        // we take only negative and 0 slope, downhill
-                        if (slope > 0) {
-                            continue;
-                        }
-
-                        slope = abs(slope);
-
-                        SlopeProbability sp = new SlopeProbability();
-                        sp.fromCol = centerCol;
-                        sp.fromRow = centerRow;
-                        sp.fromElev = centerValue;
-                        sp.toCol = tmpCol;
-                        sp.toRow = tmpRow;
-                        sp.toElev = nextValue;
-                        sp.slope = slope;
-                        slopeSum = slopeSum + slope;
-                        spList.add(sp);
-                    }
-                }
-
-                if (spList.size() == 0) {
-                    /*
-                     * touched border or slope is not negative
-                     */
-                    doStop = true;
-                } else {
-
-                    // get a random number between 0 and 1
-                    double random = randomGenerator.nextDouble();
-
-                    if (spList.size() == 1) {
-                        // direction is only one
-                        SlopeProbability sp = spList.get(0);
-                        centerCol = sp.toCol;
-                        centerRow = sp.toRow;
-                    } else {
-                        Collections.sort(spList);
-
-                        /*
-                         * case in which the slopes are all 0
-                         */
-                        if (dEq(slopeSum, 0.0)) {
-                            // choose a random and go on
-                            int size = spList.size();
-
-                            double rnd = flatRnd.nextDouble();
-                            int index = (int) round(rnd * size) - 1;
-                            if (index < 0)
-                                index = 0;
-                            SlopeProbability sp = spList.get(index);
-                            centerCol = sp.toCol;
-                            centerRow = sp.toRow;
-                        }
-                        /*
-                         * normal case in which the slopes have a value
-                         */
-                        else {
-                            // cumulate the probability
-                            for( int i = 0; i < spList.size(); i++ ) {
-                                SlopeProbability sp = spList.get(i);
-                                double p = sp.slope / slopeSum;
-                                sp.probability = p;
-
-                                if (i != 0) {
-                                    SlopeProbability tmpSp = spList.get(i - 1);
-                                    sp.probability = sp.probability + tmpSp.probability;
-                                }
-                            }
-
-                            for( int i = 1; i < spList.size(); i++ ) {
-                                SlopeProbability sp1 = spList.get(i - 1);
-                                SlopeProbability sp2 = spList.get(i);
+        double[] elev = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                elev[r * cols + c] = elevIter.getSampleDouble(c, r, 0);
+            }
+        }
+        elevIter.done();
 
-                                // if (random < sp1.probability) {
-                                if (random < sp1.probability) {
-                                    centerCol = sp1.toCol;
-                                    centerRow = sp1.toRow;
-                                    break;
-                                    // } else if (random >= sp1.probability && random <
-                                    // sp2.probability)
-                                    // {
-                                } else if (random >= sp1.probability && random < sp2.probability) {
-                                    centerCol = sp2.toCol;
-                                    centerRow = sp2.toRow;
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    touchedPoints.add(new Point(centerCol, centerRow));
-                    double outValue = probIter.getSampleDouble(centerCol, centerRow, 0);
-                    if (isNovalue(outValue)) {
-                        outValue = 0.0;
-                    }
-                    probIter.setSample(centerCol, centerRow, 0, outValue + 1.0);
-                }
-            } while( !doStop );
+        long seed = pSeed < 0 ? System.nanoTime() : pSeed;
+        long thresCells = (long) Math.ceil(thresArea / (xRes * yRes));
+        int[] hits = new int[cols * rows];
+        DebrisFlowEngine engine = new DebrisFlowEngine(elev, cols, rows, xRes, yRes);
+        int processedMc = engine.run(startCol, startRow, pMontecarlo, seed, thresCells, pMaxThreads, hits, pm);
 
-            /*
-             * check if the max area is flooded
-             */
-            int floodedCellNum = 0;
+        WritableRaster mcsWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
+        WritableRandomIter probIter = RandomIterFactory.createWritable(mcsWR, null);
+        for( int r = 0; r < rows; r++ ) {
             for( int c = 0; c < cols; c++ ) {
-                for( int r = 0; r < rows; r++ ) {
-                    double value = probIter.getSampleDouble(c, r, 0);
-                    if (isNovalue(value)) {
-                        continue;
-                    }
-                    floodedCellNum++;
+                int hit = hits[r * cols + c];
+                if (hit > 0) {
+                    probIter.setSample(c, r, 0, hit);
                 }
             }
-
-            double floodedArea = floodedCellNum * xRes * yRes;
-            if (thresArea <= floodedArea) {
-                break;
-            }
-
         }
 
         double probSum = 0.0;
@@ -366,22 +218,4 @@ public class OmsDebrisFlow extends JGTModel {
         outDepo = CoverageUtilities.buildCoverage("depo", depoWR, regionMap, inElev.getCoordinateReferenceSystem());
 
     }
-
-    public class Point implements Comparable<Point> {
-        public int col;
-        public int row;
-
-        public Point( int col, int row ) {
-            this.col = col;
-            this.row = row;
-        }
-
-        public int compareTo( Point o ) {
-            if (col == o.col && row == o.row) {
-                return 0;
-            }
-            return 1;
-        }
-
-    }
 }
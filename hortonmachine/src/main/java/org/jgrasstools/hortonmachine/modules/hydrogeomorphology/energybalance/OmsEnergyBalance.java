@@ -43,16 +43,18 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.sigma;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.tk;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -72,6 +74,8 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.jgrasstools.gears.io.eicalculator.EIAreas;
 import org.jgrasstools.gears.io.eicalculator.EIEnergy;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.joda.time.DateTime;
@@ -199,6 +203,14 @@ public class OmsEnergyBalance extends JGTModel {
     @In
     public String pEndsafepoint;
 
+    @Description(OMSENERGYBALANCE_pSafepointinterval_DESCRIPTION)
+    @In
+    public int pSafepointinterval = 0;
+
+    @Description(OMSENERGYBALANCE_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSENERGYBALANCE_outPnet_DESCRIPTION)
     @Out
     public HashMap<Integer, double[]> outPnet;
@@ -259,6 +271,8 @@ public class OmsEnergyBalance extends JGTModel {
     private int basinNum = -1;
 
     private SafePoint safePoint;
+    private int stepsSinceSnapshot = 0;
+    private ExecutorService basinsThreadPool;
     private ArrayList<SimpleFeature> basinsFeatures;
     private double[] Abasin;
 
@@ -294,8 +308,6 @@ public class OmsEnergyBalance extends JGTModel {
         outNetradiation = new HashMap<Integer, double[]>();
         outNetshortradiation = new HashMap<Integer, double[]>();
 
-        if (safePoint == null)
-            safePoint = new SafePoint();
         // retrieve number of bands
         num_EI = 0;
         for( EIEnergy energy : inEnergy ) {
@@ -584,14 +596,20 @@ public class OmsEnergyBalance extends JGTModel {
         /*
          * these have to be taken from initial values 
          */
-        if (safePoint.SWE == null) {
+        if (safePoint == null) {
             if (pInitsafepoint != null && new File(pInitsafepoint).exists()) {
-                safePoint = getSafePointData();
+                safePoint = SafePoint.read(new File(pInitsafepoint));
+                if (!safePoint.hasSizes(basinNum, num_ES, num_EI)) {
+                    throw new ModelsIllegalargumentException(
+                            "The safepoint doesn't match the number of basins and bands of the simulation: " + pInitsafepoint,
+                            this);
+                }
             } else {
-                safePoint.SWE = new double[num_ES][num_EI][basinNum];
+                safePoint = new SafePoint(basinNum, num_ES, num_EI);
                 if (pInitswe == -9999.0) {
                     pInitswe = 0.0;
                 }
+                int cells = safePoint.getBasinCellsNum();
                 for( int i = 0; i < basinNum; i++ ) {
                     double sweTmp = pInitswe;
                     if (usoList != null) {
@@ -600,15 +618,8 @@ public class OmsEnergyBalance extends JGTModel {
                             sweTmp = GLACIER_SWE;
                         }
                     }
-                    for( int k = 0; k < num_ES; k++ ) {
-                        for( int j = 0; j < num_EI; j++ ) {
-                            safePoint.SWE[j][k][i] = sweTmp;
-                        }
-                    }
+                    Arrays.fill(safePoint.SWE, i * cells, (i + 1) * cells, sweTmp);
                 }
-                safePoint.U = new double[num_ES][num_EI][basinNum];
-                safePoint.SnAge = new double[num_ES][num_EI][basinNum];
-                safePoint.Ts = new double[num_ES][num_EI][basinNum];
             }
         }
 
@@ -624,39 +635,29 @@ public class OmsEnergyBalance extends JGTModel {
             }
         }
         checkParametersAndRunEnergyBalance(rain, T, V, P, RH, currentMonth, currentDay, hour, Abasin, A, EI, DTd, DTm, canopy);
+        safePoint.setTime(currentDatetime.getMillis());
 
-    }
-
-    private SafePoint getSafePointData() {
-        FileInputStream fis = null;
-        ObjectInputStream in = null;
-        try {
-            fis = new FileInputStream(pInitsafepoint);
-            in = new ObjectInputStream(fis);
-            SafePoint readSafePoint = (SafePoint) in.readObject();
-            in.close();
-            return readSafePoint;
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace();
+        if (pSafepointinterval > 0 && pEndsafepoint != null) {
+            stepsSinceSnapshot++;
+            if (stepsSinceSnapshot >= pSafepointinterval) {
+                safePoint.appendSnapshot(new File(pEndsafepoint));
+                stepsSinceSnapshot = 0;
+            }
         }
-
-        return null;
     }
 
     @Finalize
-    public void writeSafePoint() {
-        if (pEndsafepoint != null && new File(pEndsafepoint).getParentFile() != null) {
-            FileOutputStream fos = null;
-            ObjectOutputStream out = null;
-            try {
-                fos = new FileOutputStream(pEndsafepoint);
-                out = new ObjectOutputStream(fos);
-                out.writeObject(safePoint);
-                out.close();
-            } catch (IOException ex) {
-                ex.printStackTrace();
+    public void writeSafePoint() throws IOException {
+        if (basinsThreadPool != null) {
+            basinsThreadPool.shutdownNow();
+            basinsThreadPool = null;
+        }
+        if (safePoint != null && pEndsafepoint != null && new File(pEndsafepoint).getParentFile() != null) {
+            if (pSafepointinterval > 0) {
+                // only the changes since the last snapshot
+                safePoint.appendSnapshot(new File(pEndsafepoint));
+            } else {
+                safePoint.write(new File(pEndsafepoint));
             }
         }
     }
@@ -723,9 +724,62 @@ public class OmsEnergyBalance extends JGTModel {
          */
         sun(hour, day);
 
+        /*
+         * once the sun position is known the basins are independent
+         */
+        final double[][] basinResults = new double[6][basinNum];
+        int workers = Math.max(1, Math.min(pMaxThreads, basinNum));
+        if (workers == 1) {
+            for( int i = 0; i < basinNum; i++ ) {
+                calculateEnergyBalance(i, month, hasNoStations, V[i], canopy, T[i], P[i], RH[i], rain, pTrain, pTsnow, Dt, A,
+                        Abasin, EI, DTd[i], DTm[i], K, eps, Lc, pRhosnow, Ksat, rho_g, De, C_g, aep, albedo_land, Ks, Ts_min,
+                        Ts_max, basinResults);
+            }
+        } else {
+            if (basinsThreadPool == null) {
+                basinsThreadPool = Executors.newFixedThreadPool(workers, new ThreadFactory(){
+                    public Thread newThread( Runnable r ) {
+                        Thread thread = new Thread(r, "energybalance");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( int w = 0; w < workers; w++ ) {
+                final int from = (int) ((long) basinNum * w / workers);
+                final int to = (int) ((long) basinNum * (w + 1) / workers);
+                futures.add(basinsThreadPool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        for( int i = from; i < to; i++ ) {
+                            calculateEnergyBalance(i, month, hasNoStations, V[i], canopy, T[i], P[i], RH[i], rain, pTrain,
+                                    pTsnow, Dt, A, Abasin, EI, DTd[i], DTm[i], K, eps, Lc, pRhosnow, Ksat, rho_g, De, C_g, aep,
+                                    albedo_land, Ks, Ts_min, Ts_max, basinResults);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            try {
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelsRuntimeException("Module interrupted.", this);
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException("Error during the energy balance: " + e.getCause().getMessage(), this);
+            }
+        }
+
         for( int i = 0; i < basinNum; i++ ) {
-            calculateEnergyBalance(i, month, hasNoStations, V[i], canopy, T[i], P[i], RH[i], rain, pTrain, pTsnow, Dt, A, Abasin,
-                    EI, DTd[i], DTm[i], K, eps, Lc, pRhosnow, Ksat, rho_g, De, C_g, aep, albedo_land, Ks, Ts_min, Ts_max);
+            Integer basinId = basinindex2BasinidMap.get(i);
+            outSwe.put(basinId, new double[]{basinResults[0][i]});
+            outPnet.put(basinId, new double[]{basinResults[1][i]});
+            outPrain.put(basinId, new double[]{basinResults[2][i]});
+            outPsnow.put(basinId, new double[]{basinResults[3][i]});
+            outNetradiation.put(basinId, new double[]{basinResults[4][i]});
+            outNetshortradiation.put(basinId, new double[]{basinResults[5][i]});
         }
     }
 
@@ -764,12 +818,14 @@ public class OmsEnergyBalance extends JGTModel {
      * @param U 
      * @param SnAge snow age [banda altimetrica][banda energetica][bacino]
      * @param Ts surface temperature
+     * @param basinResults the swe, pnet, prain, psnow, net radiation and net short radiation 
+     *          averaged over the basin, set at the basin index.
      */
     private void calculateEnergyBalance( int i, double month, boolean hasNoStations, double[] windSpeed, double[][] canopy,
             double[] T, double[] P, double[] RH, double[] rain, double Train, double Tsnow, double Dt, double[][][] A,
             double[] Abasin, double[][][] EI, double[] DTd, double[] DTm, double K, double eps, double Lc, double rho_sn,
             double Ksat, double rho_g, double De, double C_g, double aep, double albedo_land, double Ks, double Ts_min,
-            double Ts_max ) {
+            double Ts_max, double[][] basinResults ) {
 
         double rho, cp, ea, Psnow, T_snow, Prain, T_rain, Qp, Pnet;
         double[] tausn = new double[1];
@@ -784,10 +840,10 @@ public class OmsEnergyBalance extends JGTModel {
         int tol, cont;
         int[] conv = new int[1];
 
-        double[][][] SWE = safePoint.SWE;
-        double[][][] SnAge = safePoint.SnAge;
-        double[][][] Ts = safePoint.Ts;
-        double[][][] U = safePoint.U;
+        double[] SWE = safePoint.SWE;
+        double[] SnAge = safePoint.SnAge;
+        double[] Ts = safePoint.Ts;
+        double[] U = safePoint.U;
 
         /*
          * set first value to the id of the basin
@@ -864,28 +920,30 @@ public class OmsEnergyBalance extends JGTModel {
             for( int k = 0; k < num_EI; k++ ) { // per tutte le BANDE
                 // ENERGETICHE
 
+                int c = safePoint.index(i, j, k);
+
                 // se il SWE della banda altimetrica, banda energetica del
                 // bacino i o la prec
                 // nevosa sono maggiori di zero
-                if (SWE[j][k][i] > 0 || Psnow > 0) {
+                if (SWE[c] > 0 || Psnow > 0) {
 
                     // calcolo contenuto di ghiaccio e temperatura della neve da
                     // U
-                    calculateTemp(Wice, Tin, Fliq, 1.0E3 * U[j][k][i], SWE[j][k][i], rho_g, De, C_g);
+                    calculateTemp(Wice, Tin, Fliq, 1.0E3 * U[c], SWE[c], rho_g, De, C_g);
 
                     // radiazione e albedo
-                    tausn[0] = SnAge[j][k][i]; // età della neve
+                    tausn[0] = SnAge[c]; // età della neve
                     // adimensionale
                     // BEFORE radiation(parameters, EI[month][k][i],
                     // alpha, E0,
-                    // Ts[j][k][i], Wice[0], T[j], ea, Psnow,
+                    // Ts[c], Wice[0], T[j], ea, Psnow,
                     // DTd[j], DTm[j], tausn, Rsw, Rlwin);
-                    calculateRadiation(EI[(int) month][k][i], Ts[j][k][i], Wice[0], T[j], ea, P[j], Psnow, DTd[j], DTm[j], tausn,
+                    calculateRadiation(EI[(int) month][k][i], Ts[c], Wice[0], T[j], ea, P[j], Psnow, DTd[j], DTm[j], tausn,
                             Rsw, Rlwin, Dt, aep, albedo_land, netRadiation, netShortRadiation, pSnowrefv, pSnowrefir);
 
                     // double Dt, double aep, double albedo_land
 
-                    SnAge[j][k][i] = tausn[0];
+                    SnAge[c] = tausn[0];
 
                     // riduzione della canopy sui flussi radiativi
                     Rsw[0] *= (1.0 - canopy[j][i]);
@@ -893,7 +951,7 @@ public class OmsEnergyBalance extends JGTModel {
 
                     // PREDICTOR
                     // temperatura della superficie
-                    Tsur = calculateSurfaceTemperature(conv, Ts[j][k][i], Tin[0], T[j], P[j], windSpeed[j], ea, Rsw[0], Rlwin[0],
+                    Tsur = calculateSurfaceTemperature(conv, Ts[c], Tin[0], T[j], P[j], windSpeed[j], ea, Rsw[0], Rlwin[0],
                             Qp, rho, cp, canopy[j][i], K, rho_sn, Ks, eps, Ts_min, Ts_max);
 
                     if (Double.isNaN(Tsur) || conv[0] != 1)
@@ -918,12 +976,12 @@ public class OmsEnergyBalance extends JGTModel {
                     M0 = Ksat * pow(Se, 3.0); // flusso di acqua uscente
                     if (Double.isNaN(Se))
                         M0 = 0.0;
-                    if (M0 * Dt > SWE[j][k][i] - Wice[0])
-                        M0 = (SWE[j][k][i] - Wice[0]) / Dt;
+                    if (M0 * Dt > SWE[c] - Wice[0])
+                        M0 = (SWE[c] - Wice[0]) / Dt;
 
                     // aggiornamento
-                    W1 = SWE[j][k][i] + rain[i] + (L0 / Lv - M0) * Dt;
-                    U1 = U[j][k][i] + 1.0E-3 * (Rsw[0] + Rlwin[0] + Qp - Lf * M0 - R0 + H0 + L0) * Dt;
+                    W1 = SWE[c] + rain[i] + (L0 / Lv - M0) * Dt;
+                    U1 = U[c] + 1.0E-3 * (Rsw[0] + Rlwin[0] + Qp - Lf * M0 - R0 + H0 + L0) * Dt;
 
                     U0 = U1; // aggiorno i parametri di U e W con i valori
                     // calcolati
@@ -973,8 +1031,8 @@ public class OmsEnergyBalance extends JGTModel {
                                 M1 = (W1 - Wice[0]) / Dt;
 
                             // aggiornamento
-                            W2 = SWE[j][k][i] + rain[i] + (0.5 * (L0 / Lv - M0) + 0.5 * (L1 / Lv - M1)) * Dt;
-                            U2 = U[j][k][i]
+                            W2 = SWE[c] + rain[i] + (0.5 * (L0 / Lv - M0) + 0.5 * (L1 / Lv - M1)) * Dt;
+                            U2 = U[c]
                                     + 1.0E-3
                                     * (Rsw[0] + Rlwin[0] + Qp + 0.5 * (-Lf * M0 - R0 + H0 + L0) + 0.5 * (-Lf * M1 - R1 + H1 + L1))
                                     * Dt;
@@ -1001,54 +1059,49 @@ public class OmsEnergyBalance extends JGTModel {
                     // (approssimata)
                     if (tol == 0) { // solo frazione liquida: ho trovato i
                         // valori e aggiorno i dati
-                        U[j][k][i] = U0;
-                        SWE[j][k][i] = W0;
-                        Ts[j][k][i] = Tsur;
+                        U[c] = U0;
+                        SWE[c] = W0;
+                        Ts[c] = Tsur;
                         Pnet = M0 * Dt;
                     } else if (tol == 3) { // non ho convergenza e setto a zero
                         // tutto
-                        U[j][k][i] = 0.0;
-                        SWE[j][k][i] = 0.0;
-                        Ts[j][k][i] = 0.0;
+                        U[c] = 0.0;
+                        SWE[c] = 0.0;
+                        Ts[c] = 0.0;
                         Pnet = M1 * Dt;
                     } else { // frazione liquida e solida: ho trovato i
                         // valori e aggiorno i dati
-                        U[j][k][i] = U1;
-                        SWE[j][k][i] = W1;
-                        Ts[j][k][i] = Tsur;
+                        U[c] = U1;
+                        SWE[c] = W1;
+                        Ts[c] = Tsur;
                         Pnet = (0.5 * M0 + 0.5 * M1) * Dt;
                     }
 
                     // se tutto lo SWE e' liquido o se c'è troppo poco SWE
                     // metto tutto lo SWE nella Pn
-                    if (1.0E3 * U[j][k][i] >= Lf * SWE[j][k][i] || SWE[j][k][i] <= 0) {
-                        if (SWE[j][k][i] < 0)
-                            SWE[j][k][i] = 0.0;
-                        Pnet += SWE[j][k][i];
+                    if (1.0E3 * U[c] >= Lf * SWE[c] || SWE[c] <= 0) {
+                        if (SWE[c] < 0)
+                            SWE[c] = 0.0;
+                        Pnet += SWE[c];
                         if (Pnet < 0)
                             Pnet = 0.0;
-                        SWE[j][k][i] = 0.0;
-                        U[j][k][i] = 0.0;
+                        SWE[c] = 0.0;
+                        U[c] = 0.0;
                     }
                 } else {
                     Pnet = Prain;
 
                     Tsur = T[j];
-                    Ts[j][k][i] = Tsur;
+                    Ts[c] = Tsur;
                     tausn[0] = 0.0;
-                    calculateRadiation(EI[(int) month][k][i], Ts[j][k][i], 0.0, T[j], ea, P[j], Psnow, DTd[j], DTm[j], tausn,
+                    calculateRadiation(EI[(int) month][k][i], Ts[c], 0.0, T[j], ea, P[j], Psnow, DTd[j], DTm[j], tausn,
                             Rsw, Rlwin, Dt, aep, albedo_land, netRadiation, netShortRadiation, pSnowrefv, pSnowrefir);
                     // for( m = 2; m <= 40; m++ ) {
                     // logg[m] = -1.0;
                     // }
                 }
-                safePoint.SWE[j][k][i] = SWE[j][k][i];
-                safePoint.U[j][k][i] = U[j][k][i];
-                safePoint.Ts[j][k][i] = Ts[j][k][i];
-                safePoint.SnAge[j][k][i] = SnAge[j][k][i];
-
                 // calcolo i valori medi per bacino di SWE, Pnet, Prain, Psnow
-                tmpSwe = tmpSwe + SWE[j][k][i] * (A[j][k][i] / Abasin[i]);
+                tmpSwe = tmpSwe + SWE[c] * (A[j][k][i] / Abasin[i]);
                 tmpPnet = tmpPnet + Pnet * (A[j][k][i] / Abasin[i]);
                 tmpPrain = tmpPrain + Prain * (A[j][k][i] / Abasin[i]);
                 tmpPsnow = tmpPsnow + Psnow * (A[j][k][i] / Abasin[i]);
@@ -1059,12 +1112,12 @@ public class OmsEnergyBalance extends JGTModel {
             averageTemperature[2 * i + 1] += T[j];
         }
 
-        outSwe.put(basinId, new double[]{tmpSwe});
-        outPnet.put(basinId, new double[]{tmpPnet});
-        outPrain.put(basinId, new double[]{tmpPrain});
-        outPsnow.put(basinId, new double[]{tmpPsnow});
-        outNetradiation.put(basinId, new double[]{tmpNetradiation});
-        outNetshortradiation.put(basinId, new double[]{tmpNetShortRadiation});
+        basinResults[0][i] = tmpSwe;
+        basinResults[1][i] = tmpPnet;
+        basinResults[2][i] = tmpPrain;
+        basinResults[3][i] = tmpPsnow;
+        basinResults[4][i] = tmpNetradiation;
+        basinResults[5][i] = tmpNetShortRadiation;
 
         // System.out.println("rad media= " + fullAdigeData[8 * i + 2]);
         // System.out.println("short media= " + fullAdigeData[8 * i + 3]);
@@ -18,15 +18,278 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.energybalance;
 
-import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 
-public class SafePoint implements Serializable {
-    
-    private static final long serialVersionUID = 1L;
+/**
+ * The state of the snow cover of the {@link OmsEnergyBalance}.
+ * 
+ * <p>
+ * The state variables are kept in flat arrays, with the values of a basin
+ * contiguous, ordered by altimetric band and then by energetic band
+ * (see {@link #index(int, int, int)}), so that every basin can be processed
+ * on its own.
+ * </p>
+ * <p>
+ * The safepoint files are binary and versioned: a header with the sizes,
+ * followed by snapshots. A snapshot contains the time and the basins
+ * that changed since the previous snapshot of the same file, so that
+ * snapshots can be appended during a simulation at small cost. Reading
+ * a file applies all complete snapshots in order, an incomplete last
+ * snapshot (for example of an interrupted run) is ignored.
+ * </p>
+ */
+public class SafePoint {
+
+    /**
+     * The version of the safepoint files written.
+     */
+    public static final short VERSION = 1;
+
+    private static final int MAGIC = 0x4A474542;
+
+    public final int basinNum;
+    public final int altimetricBandsNum;
+    public final int energeticBandsNum;
+
+    public final double[] SWE;
+    public final double[] U;
+    public final double[] Ts;
+    public final double[] SnAge;
+
+    private long time = -1;
+
+    /*
+     * the state at the last snapshot written, to find the changed basins
+     */
+    private double[][] snapshotState;
+
+    /**
+     * Constructor.
+     * 
+     * @param basinNum the number of basins.
+     * @param altimetricBandsNum the number of altimetric bands.
+     * @param energeticBandsNum the number of energetic bands.
+     */
+    public SafePoint( int basinNum, int altimetricBandsNum, int energeticBandsNum ) {
+        this.basinNum = basinNum;
+        this.altimetricBandsNum = altimetricBandsNum;
+        this.energeticBandsNum = energeticBandsNum;
+        int size = basinNum * altimetricBandsNum * energeticBandsNum;
+        SWE = new double[size];
+        U = new double[size];
+        Ts = new double[size];
+        SnAge = new double[size];
+    }
+
+    /**
+     * @param basin the basin index.
+     * @param altimetricBand the altimetric band.
+     * @param energeticBand the energetic band.
+     * @return the position of the values in the state arrays.
+     */
+    public int index( int basin, int altimetricBand, int energeticBand ) {
+        return (basin * altimetricBandsNum + altimetricBand) * energeticBandsNum + energeticBand;
+    }
+
+    /**
+     * @return the number of values per basin.
+     */
+    public int getBasinCellsNum() {
+        return altimetricBandsNum * energeticBandsNum;
+    }
+
+    /**
+     * @return the time in milliseconds of the last step, <code>-1</code> if not set.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @param time the time in milliseconds of the last step.
+     */
+    public void setTime( long time ) {
+        this.time = time;
+    }
+
+    /**
+     * Checks if the sizes match.
+     * 
+     * @return <code>true</code> if the safepoint has the given sizes.
+     */
+    public boolean hasSizes( int basinNum, int altimetricBandsNum, int energeticBandsNum ) {
+        return this.basinNum == basinNum && this.altimetricBandsNum == altimetricBandsNum
+                && this.energeticBandsNum == energeticBandsNum;
+    }
+
+    /**
+     * Writes the whole state to a new file.
+     * 
+     * @param file the file to write, overwritten if existing.
+     * @throws IOException
+     */
+    public void write( File file ) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(basinNum);
+            out.writeInt(altimetricBandsNum);
+            out.writeInt(energeticBandsNum);
+            snapshotState = null;
+            writeSnapshot(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Appends to a file the basins that changed since the last snapshot written.
+     * 
+     * <p>If nothing has been written yet, the file is created with the whole state.</p>
+     * 
+     * @param file the file to append to.
+     * @throws IOException
+     */
+    public void appendSnapshot( File file ) throws IOException {
+        if (snapshotState == null || !file.exists()) {
+            write(file);
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+            writeSnapshot(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeSnapshot( DataOutputStream out ) throws IOException {
+        double[][] state = {SWE, U, Ts, SnAge};
+        int cells = getBasinCellsNum();
+        boolean[] changed = new boolean[basinNum];
+        int changedNum = 0;
+        for( int i = 0; i < basinNum; i++ ) {
+            changed[i] = snapshotState == null || !sameBlock(state, snapshotState, i * cells, cells);
+            if (changed[i])
+                changedNum++;
+        }
+
+        out.writeLong(time);
+        out.writeInt(changedNum);
+        for( int i = 0; i < basinNum; i++ ) {
+            if (!changed[i])
+                continue;
+            out.writeInt(i);
+            for( double[] values : state ) {
+                for( int c = i * cells; c < (i + 1) * cells; c++ ) {
+                    out.writeDouble(values[c]);
+                }
+            }
+        }
+
+        if (snapshotState == null) {
+            snapshotState = new double[state.length][];
+            for( int s = 0; s < state.length; s++ ) {
+                snapshotState[s] = state[s].clone();
+            }
+        } else {
+            for( int i = 0; i < basinNum; i++ ) {
+                if (changed[i]) {
+                    for( int s = 0; s < state.length; s++ ) {
+                        System.arraycopy(state[s], i * cells, snapshotState[s], i * cells, cells);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean sameBlock( double[][] state, double[][] other, int from, int cells ) {
+        for( int s = 0; s < state.length; s++ ) {
+            for( int c = from; c < from + cells; c++ ) {
+                if (Double.doubleToLongBits(state[s][c]) != Double.doubleToLongBits(other[s][c])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-    public double[][][] SWE = null;
-    public double[][][] U = null;
-    public double[][][] Ts = null;
-    public double[][][] SnAge = null;
+    /**
+     * Reads a safepoint file, applying all its complete snapshots.
+     * 
+     * @param file the file to read.
+     * @return the read safepoint.
+     * @throws IOException if the file is not a valid safepoint.
+     */
+    public static SafePoint read( File file ) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file is not an energy balance safepoint: " + file);
+            }
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported safepoint version " + version + " in file: " + file);
+            }
+            SafePoint safePoint = new SafePoint(in.readInt(), in.readInt(), in.readInt());
+            double[][] state = {safePoint.SWE, safePoint.U, safePoint.Ts, safePoint.SnAge};
+            int cells = safePoint.getBasinCellsNum();
+            boolean hasSnapshot = false;
+            while( true ) {
+                /*
+                 * read the whole snapshot before applying it
+                 */
+                long time;
+                int[] basins;
+                double[][][] blocks;
+                try {
+                    time = in.readLong();
+                    int changedNum = in.readInt();
+                    if (changedNum < 0 || changedNum > safePoint.basinNum) {
+                        throw new IOException("Corrupted safepoint file: " + file);
+                    }
+                    basins = new int[changedNum];
+                    blocks = new double[changedNum][state.length][cells];
+                    for( int b = 0; b < changedNum; b++ ) {
+                        basins[b] = in.readInt();
+                        if (basins[b] < 0 || basins[b] >= safePoint.basinNum) {
+                            throw new IOException("Corrupted safepoint file: " + file);
+                        }
+                        for( int s = 0; s < state.length; s++ ) {
+                            for( int c = 0; c < cells; c++ ) {
+                                blocks[b][s][c] = in.readDouble();
+                            }
+                        }
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                for( int b = 0; b < basins.length; b++ ) {
+                    for( int s = 0; s < state.length; s++ ) {
+                        System.arraycopy(blocks[b][s], 0, state[s], basins[b] * cells, cells);
+                    }
+                }
+                safePoint.time = time;
+                hasSnapshot = true;
+            }
+            if (!hasSnapshot) {
+                throw new IOException("No complete snapshot found in the safepoint file: " + file);
+            }
+            return safePoint;
+        } catch (EOFException e) {
+            throw new IOException("Truncated safepoint file: " + file);
+        } finally {
+            in.close();
+        }
+    }
 
 }
@@ -22,9 +22,12 @@ import static java.lang.Math.pow;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -41,6 +44,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.features.FeatureExtender;
@@ -100,6 +104,10 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
     @In
     public double pMinSlope = 0.001;
 
+    @Description(pMaxThreads_DESCR)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(outNetPoints_DESCR)
     @Out
     public SimpleFeatureCollection outNetPoints = null;
@@ -116,6 +124,7 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
     public static final String outInundationSections_DESCR = "The output layer with the sections lines where the inundation width has been calculated.";
     public static final String outInundationArea_DESCR = "The output polygon layer with the inundation areas.";
     public static final String outNetPoints_DESCR = "The output points network layer with the additional attribute of inundated width and average slope.";
+    public static final String pMaxThreads_DESCR = "The number of threads to use.";
     public static final String pMinSlope_DESCR = "The value to use for the places where the slope is zero in the input raster map.";
     public static final String doKeepBridgeDamWidth_DESCR = "The boolean to select if considering the width of dams and bridges or not.";
     public static final String pN_DESCR = "Formula exponent of the power law for the evaluation of the new width: newWidth = width + k * slope^n";
@@ -135,16 +144,16 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
     // VARS DOC END
 
     private HashMap<String, Geometry> pfafId2WidthLine;
-    private SimpleFeatureBuilder newLinesBuilder;
-    private PreparedGeometry preparedSupFormGeom;
+    private Geometry supFormGeom;
+    private FeatureExtender ext;
+    private SimpleFeatureType newLinesType;
 
     @Execute
     public void process() throws Exception {
 
         // store the geometries of the superficial geology in a list
         List<Geometry> inSupFormGeomsList = FeatureUtilities.featureCollectionToGeometriesList(inGeo, false, null);
-
-        preparedSupFormGeom = PreparedGeometryFactory.prepare(inSupFormGeomsList.get(0));
+        supFormGeom = inSupFormGeomsList.get(0);
 
         /*
          * read the width lines and index them by id
@@ -158,19 +167,79 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
             pfafId2WidthLine.put(id, (Geometry) widthLineFeature.getDefaultGeometry());
         }
 
+        HashMap<String, TreeSet<SimpleFeature>> pfaff2PointsListSet = groupByHierarchy(FeatureUtilities
+                .featureCollectionToList(inNetPoints));
+
+        CoordinateReferenceSystem crs = inNetPoints.getBounds().getCoordinateReferenceSystem();
+        newLinesType = getNewLinesType(crs);
+
+        // prepare the schema for the output network points
+        ext = new FeatureExtender(inNetPoints.getSchema(), new String[]{WIDTH2, AVGSLOPE}, new Class[]{Double.class,
+                Double.class});
+
         /*
-         * read the network points and store it in a list
+         * the hierarchies are independent from each other, so they are processed
+         * in parallel and the results are collected in the original order
          */
-        List<SimpleFeature> netList = FeatureUtilities.featureCollectionToList(inNetPoints);
+        final List<TreeSet<SimpleFeature>> hierarchies = new ArrayList<TreeSet<SimpleFeature>>(pfaff2PointsListSet.values());
+        final HierarchyResult[] results = new HierarchyResult[hierarchies.size()];
+        pm.beginTask("Processing...", hierarchies.size());
+        int threads = Math.max(1, Math.min(pMaxThreads, hierarchies.size()));
+        if (threads == 1) {
+            processHierarchies(hierarchies, 0, 1, results);
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+                for( int t = 0; t < threads; t++ ) {
+                    final int first = t;
+                    final int step = threads;
+                    futures.add(pool.submit(new Callable<Void>(){
+                        public Void call() throws Exception {
+                            processHierarchies(hierarchies, first, step, results);
+                            return null;
+                        }
+                    }));
+                }
+                for( Future<Void> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException(e.getCause().getLocalizedMessage(), this);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        pm.done();
+
+        // prepare to store the network points, the inundated sections (lines) and areas (polygons)
+        outNetPoints = new DefaultFeatureCollection();
+        outInundationSections = new DefaultFeatureCollection();
+        outInundationArea = new DefaultFeatureCollection();
+        Geometry[] finalPolygonGeoms = new Geometry[results.length];
+        for( int i = 0; i < results.length; i++ ) {
+            ((DefaultFeatureCollection) outNetPoints).addAll(results[i].netPoints);
+            ((DefaultFeatureCollection) outInundationSections).addAll(results[i].sections);
+            finalPolygonGeoms[i] = results[i].area;
+        }
+        SimpleFeatureCollection outInundatedAreaFC = FeatureUtilities.featureCollectionFromGeometry(crs, finalPolygonGeoms);
+
+        // add the inundated polygons to the output collection
+        ((DefaultFeatureCollection) outInundationArea).addAll(outInundatedAreaFC);
+    }
 
+    /**
+     * Group the network points by hierarchy.
+     * 
+     * <p>For each network point the hierarchy is given by the attribute Pfafstetter 
+     * and the position of the point inside the link by the index (from comparator).</p>
+     * 
+     * @param netList the network points.
+     * @return the map of the pfafstetter numbers to the navigable sets of their points.
+     */
+    private static HashMap<String, TreeSet<SimpleFeature>> groupByHierarchy( List<SimpleFeature> netList ) {
         NetIndexComparator indexComparator = new NetIndexComparator();
         HashMap<String, TreeSet<SimpleFeature>> pfaff2PointsListSet = new HashMap<String, TreeSet<SimpleFeature>>();
-
-        /*
-         * create a treeSet as a navigable set using the comparator methods
-         * for each network point get the hierarchy using the attribute Pfafstetter and then 
-         * get the position of the point inside the link using the index (from comparator)
-         */
         for( SimpleFeature netFeature : netList ) {
             String pfaf = netFeature.getAttribute(PFAF).toString();
 
@@ -181,23 +250,19 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
             }
             treeSet.add(netFeature);
         }
+        return pfaff2PointsListSet;
+    }
 
-        // prepare to store inundated sections (lines)
-        outInundationSections = new DefaultFeatureCollection();
-        outInundationArea = new DefaultFeatureCollection();
-        newLinesBuilder = getNewLinesBuilder(inNetPoints.getBounds().getCoordinateReferenceSystem());
-
-        // prepare the schema for the output network points
-        FeatureExtender ext = new FeatureExtender(inNetPoints.getSchema(), new String[]{WIDTH2, AVGSLOPE}, new Class[]{
-                Double.class, Double.class});
-        // prepare to store the polygons of inundated areas
-        ArrayList<Geometry> finalPolygonGeoms = new ArrayList<Geometry>();
-        outNetPoints = new DefaultFeatureCollection();
-        Set<Entry<String, TreeSet<SimpleFeature>>> entrySet = pfaff2PointsListSet.entrySet();
-        pm.beginTask("Processing...", entrySet.size());
-        for( Entry<String, TreeSet<SimpleFeature>> entry : entrySet ) {
-            TreeSet<SimpleFeature> pointsSet = entry.getValue();
-            SimpleFeature[] netPointsFeatures = pointsSet.toArray(new SimpleFeature[0]);
+    /*
+     * process every step-th hierarchy starting from first, with an own prepared
+     * geology and lines builder, since they are not meant to be shared among threads 
+     */
+    private void processHierarchies( List<TreeSet<SimpleFeature>> hierarchies, int first, int step, HierarchyResult[] results ) {
+        PreparedGeometry preparedSupFormGeom = PreparedGeometryFactory.prepare(supFormGeom);
+        SimpleFeatureBuilder newLinesBuilder = new SimpleFeatureBuilder(newLinesType);
+        for( int h = first; h < hierarchies.size(); h += step ) {
+            SimpleFeature[] netPointsFeatures = hierarchies.get(h).toArray(new SimpleFeature[0]);
+            HierarchyResult result = new HierarchyResult();
 
             // create the sections in each point
             ArrayList<SimpleFeature> newLinesFeatures = new ArrayList<SimpleFeature>();
@@ -225,31 +290,33 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
                     newLinesFeatures.add(feature);
                 } else {
                     // calculate the inundated section
-                    newWidth = addPoints(pK, pN, slope, newLinesFeatures, netPointFeature, lineBankfullSection);
+                    newWidth = addPoints(pK, pN, slope, newLinesFeatures, netPointFeature, lineBankfullSection,
+                            preparedSupFormGeom, newLinesBuilder);
                 }
 
                 // add the attributes to the point network
                 SimpleFeature extendedFeature = ext.extendFeature(netPointFeature, new Object[]{newWidth, slope});
-                ((DefaultFeatureCollection) outNetPoints).add(extendedFeature);
+                result.netPoints.add(extendedFeature);
             }
             // create the output polygon of inundated area
             ArrayList<Geometry> triangles = getPolygonBetweenLines(newLinesFeatures);
+            result.area = CascadedPolygonUnion.union(triangles);
+            result.sections = newLinesFeatures;
+            results[h] = result;
 
-            Geometry union = CascadedPolygonUnion.union(triangles);
-            finalPolygonGeoms.add(union);
-
-            // add the inundated section to the output collection
-            ((DefaultFeatureCollection) outInundationSections).addAll(newLinesFeatures);
-            pm.worked(1);
+            synchronized (pm) {
+                pm.worked(1);
+            }
         }
-        SimpleFeatureCollection outInundatedAreaFC = FeatureUtilities.featureCollectionFromGeometry(inNetPoints.getBounds()
-                .getCoordinateReferenceSystem(), finalPolygonGeoms.toArray(new Geometry[0]));
-
-        // add the inundated polygons to the output collection
-        ((DefaultFeatureCollection) outInundationArea).addAll(outInundatedAreaFC);
-
-        pm.done();
+    }
 
+    /*
+     * the features created for a single hierarchy
+     */
+    private static class HierarchyResult {
+        List<SimpleFeature> netPoints = new ArrayList<SimpleFeature>();
+        List<SimpleFeature> sections;
+        Geometry area;
     }
 
     /*
@@ -290,16 +357,14 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
     /*
      * create a collection of lines (sections) for each network point
      */
-    private SimpleFeatureBuilder getNewLinesBuilder( CoordinateReferenceSystem crs ) throws Exception {
+    private SimpleFeatureType getNewLinesType( CoordinateReferenceSystem crs ) throws Exception {
         SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
         b.setName("net");
         b.setCRS(crs);
         b.add("the_geom", LineString.class);
         b.add(PFAF, String.class);
         b.add(LINKID, Integer.class);
-        SimpleFeatureType type = b.buildFeatureType();
-        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
-        return builder;
+        return b.buildFeatureType();
     }
 
     private LineString getLineGeometry( SimpleFeature f ) {
@@ -343,7 +408,8 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
     }
 
     private double addPoints( double k, double n, double slope, ArrayList<SimpleFeature> newLinesFeatures,
-            SimpleFeature netPointFeature, LineString lineBankfullSection ) {
+            SimpleFeature netPointFeature, LineString lineBankfullSection, PreparedGeometry preparedSupFormGeom,
+            SimpleFeatureBuilder newLinesBuilder ) {
 
         double width = (Double) netPointFeature.getAttribute(WIDTH);
         Object pfaf = netPointFeature.getAttribute(PFAF);
@@ -387,8 +453,8 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
          * check of the intersection of the new vertexes of the inundated section
          * and the superficial geology
          */
-        newSeg1 = checkSupFormIntersection(centerPoint, origC1, newSeg1);
-        newSeg2 = checkSupFormIntersection(centerPoint, origC2, newSeg2);
+        newSeg1 = checkSupFormIntersection(centerPoint, origC1, newSeg1, preparedSupFormGeom);
+        newSeg2 = checkSupFormIntersection(centerPoint, origC2, newSeg2, preparedSupFormGeom);
 
         // consider the final coordinates of the vertexes of the inundated section and create
         // the new line
@@ -408,7 +474,8 @@ public class OmsLW07_NetworkBufferWidthCalculator extends JGTModel implements LW
      * check the intersection of the extracted inundated sections with the geology of
      * superficial forms to avoid to have erosion where there is rock on the surface
      */
-    private LineString checkSupFormIntersection( Point centerPoint, Coordinate origC, LineString newOneSideSegment ) {
+    private LineString checkSupFormIntersection( Point centerPoint, Coordinate origC, LineString newOneSideSegment,
+            PreparedGeometry preparedSupFormGeom ) {
         if (preparedSupFormGeom.intersects(newOneSideSegment) && !preparedSupFormGeom.covers(newOneSideSegment)) {
             Geometry intersection1 = preparedSupFormGeom.getGeometry().intersection(newOneSideSegment);
             if (intersection1 instanceof LineString) {
@@ -57,7 +57,7 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
-import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
+import com.vividsolutions.jts.index.strtree.STRtree;
 
 @Description(OmsLW09_AreaToNetpointAssociator.DESCRIPTION)
 @Author(name = OmsLW09_AreaToNetpointAssociator.AUTHORS, contact = OmsLW09_AreaToNetpointAssociator.CONTACTS)
@@ -159,9 +159,10 @@ public class OmsLW09_AreaToNetpointAssociator extends JGTModel {
         GeometryFactory gf = GeometryUtilities.gf();
 
         /*
-         * extract the inundated area from the polygon
+         * index the inundated areas
          */
-        PreparedGeometry preparedFooldingArea = getFloofindArea(inInundationArea);
+        STRtree floodingAreasIndex = indexInundationAreas(FeatureUtilities.featureCollectionToGeometriesList(inInundationArea,
+                true, null));
 
         /*
          * extract the Canopy Height Model from DTM and DSM
@@ -205,7 +206,7 @@ public class OmsLW09_AreaToNetpointAssociator extends JGTModel {
                      * - point is inside the inundated area
                      * and fill the hashmaps with the correspondent positions.
                      */
-                    if (connectivityDouble < pConnectivityThreshold || preparedFooldingArea.intersects(point)) {
+                    if (connectivityDouble < pConnectivityThreshold || isInundated(floodingAreasIndex, point)) {
                         double chmDouble = chmIter.getSampleDouble(c, r, 0);
                         double standDouble = standIter.getSampleDouble(c, r, 0);
                         DescriptiveStatistics summaryHeightStatistics = heightBasin2ValueMap.get(netNum);
@@ -259,14 +260,35 @@ public class OmsLW09_AreaToNetpointAssociator extends JGTModel {
         outNetPoints = finalNetworkPointsFC;
     }
 
+    /**
+     * Index the inundation areas as prepared geometries.
+     * 
+     * <p>A point intersects the union of the areas if it intersects any of them,
+     * so there is no need to merge them.</p>
+     * 
+     * @param floodingAreasList the inundation polygons.
+     * @return the index of the {@link PreparedGeometry}s.
+     */
+    private static STRtree indexInundationAreas( List<Geometry> floodingAreasList ) {
+        STRtree floodingAreasIndex = new STRtree();
+        for( Geometry floodingArea : floodingAreasList ) {
+            PreparedGeometry preparedGeometry = PreparedGeometryFactory.prepare(floodingArea);
+            floodingAreasIndex.insert(floodingArea.getEnvelopeInternal(), preparedGeometry);
+        }
+        return floodingAreasIndex;
+    }
+
     /*
-    * extract the inundated area from the polygon
+    * check if the point lies in the inundated area
     */
-    private PreparedGeometry getFloofindArea( SimpleFeatureCollection inFloodingAreas ) throws Exception {
-        List<Geometry> geometriesList = FeatureUtilities.featureCollectionToGeometriesList(inFloodingAreas, true, null);
-        Geometry polygonUnion = CascadedPolygonUnion.union(geometriesList);
-        PreparedGeometry preparedGeometry = PreparedGeometryFactory.prepare(polygonUnion);
-        return preparedGeometry;
+    private boolean isInundated( STRtree floodingAreasIndex, Point point ) {
+        List< ? > floodingAreas = floodingAreasIndex.query(point.getEnvelopeInternal());
+        for( Object floodingArea : floodingAreas ) {
+            if (((PreparedGeometry) floodingArea).intersects(point)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /*
@@ -0,0 +1,315 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment;
+
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Out;
+import oms3.annotations.Status;
+import oms3.annotations.Unit;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.OmsNetworkAttributesBuilder;
+
+@Description(OmsLWRecruitmentPipeline.DESCRIPTION)
+@Author(name = OmsLWRecruitmentPipeline.AUTHORS, contact = OmsLWRecruitmentPipeline.CONTACTS)
+@Keywords(OmsLWRecruitmentPipeline.KEYWORDS)
+@Label(OmsLWRecruitmentPipeline.LABEL)
+@Name("_" + OmsLWRecruitmentPipeline.NAME)
+@Status(OmsLWRecruitmentPipeline.STATUS)
+@License(OmsLWRecruitmentPipeline.LICENSE)
+public class OmsLWRecruitmentPipeline extends JGTModel implements LWFields {
+
+    @Description(inBankfull_DESCR)
+    @In
+    public SimpleFeatureCollection inBankfull = null;
+
+    @Description(inNet_DESCR)
+    @In
+    public GridCoverage2D inNet = null;
+
+    @Description(inFlow_DESCR)
+    @In
+    public GridCoverage2D inFlow = null;
+
+    @Description(inTca_DESCR)
+    @In
+    public GridCoverage2D inTca = null;
+
+    @Description(inBridges_DESCR)
+    @In
+    public SimpleFeatureCollection inBridges = null;
+
+    @Description(inDams_DESCR)
+    @In
+    public SimpleFeatureCollection inDams = null;
+
+    @Description(inSlope_DESCR)
+    @In
+    public GridCoverage2D inSlope = null;
+
+    @Description(inGeo_DESCR)
+    @In
+    public SimpleFeatureCollection inGeo = null;
+
+    @Description(inDtm_DESCR)
+    @In
+    public GridCoverage2D inDtm = null;
+
+    @Description(inDsm_DESCR)
+    @In
+    public GridCoverage2D inDsm = null;
+
+    @Description(inStand_DESCR)
+    @In
+    public GridCoverage2D inStand = null;
+
+    @Description(inConnectivity_DESCR)
+    @In
+    public GridCoverage2D inConnectivity = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMaxDistanceFromNetpoint_DESCR)
+    @Unit("m")
+    @In
+    public double pMaxDistanceFromNetpoint = 100.0;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMaxNetworkWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pMaxNetworkWidth = 100;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMinNetworkWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pMinNetworkWidth = 0.5;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pDamsOnNetDistance_DESCR)
+    @Unit("m")
+    @In
+    public double pDamsOnNetDistance = 15.0;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pBridgesOnNetDistance_DESCR)
+    @Unit("m")
+    @In
+    public double pBridgesOnNetDistance = 15.0;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pFixedDamsWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pFixedDamsWidth = 0.1;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.bridgeLenghtField_DESCR)
+    @In
+    public String fBridgeLenght = "LENGHT";
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pPrePostCount4Slope_DESCR)
+    @In
+    public int pPrePostCount4Slope = 10;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pK_DESCR)
+    @In
+    public double pK = 20.0;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pN_DESCR)
+    @In
+    public double pN = -0.2;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.doKeepBridgeDamWidth_DESCR)
+    @In
+    public boolean doKeepBridgeDamWidth = true;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pMinSlope_DESCR)
+    @In
+    public double pMinSlope = 0.001;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.pConnectivityThreshold_DESCR)
+    @In
+    public double pConnectivityThreshold = 4.0;
+
+    @Description(pMaxThreads_DESCR)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(outNetPoints_DESCR)
+    @Out
+    public SimpleFeatureCollection outNetPoints = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.outProblemPoints_DESCR)
+    @Out
+    public SimpleFeatureCollection outProblemPoints = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.outBankfullSections_DESCR)
+    @Out
+    public SimpleFeatureCollection outBankfullSections = null;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.outProblemBridges_DESCR)
+    @Out
+    public SimpleFeatureCollection outProblemBridges = null;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.outInundationSections_DESCR)
+    @Out
+    public SimpleFeatureCollection outInundationSections = null;
+
+    @Description(OmsLW08_NetworBufferMergerHolesRemover.outInundationArea_DESCR)
+    @Out
+    public SimpleFeatureCollection outInundationArea = null;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.outNetnum_DESCR)
+    @Out
+    public GridCoverage2D outNetnum = null;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.outBasins_DESCR)
+    @Out
+    public GridCoverage2D outBasins = null;
+
+    // VARS DOC START
+    public static final String outNetPoints_DESCR = "The output network points layer with the critical sections labelled in the attribute table.";
+    public static final String pMaxThreads_DESCR = "The number of threads to use.";
+    public static final String inConnectivity_DESCR = "The input downslope connectivity index raster map.";
+    public static final String inStand_DESCR = "The input total stand volume raster map.";
+    public static final String inDsm_DESCR = "The input superficial elevation raster map.";
+    public static final String inDtm_DESCR = "The input terrain elevation raster map.";
+    public static final String inGeo_DESCR = "The input polygon layer with the geological superficial geological formations.";
+    public static final String inSlope_DESCR = "The input slope raster map.";
+    public static final String inDams_DESCR = "The input point layer with the check dams to consider to modify channel width.";
+    public static final String inBridges_DESCR = "The input point layer with the bridges to consider to modify channel width.";
+    public static final String inTca_DESCR = "The input total contributing areas raster map.";
+    public static final String inFlow_DESCR = "The input flow directions raster map.";
+    public static final String inNet_DESCR = "The input network raster map.";
+    public static final String inBankfull_DESCR = "The input polygon layer of the bankfull area.";
+    public static final int STATUS = Status.EXPERIMENTAL;
+    public static final String LICENSE = "General Public License Version 3 (GPLv3)";
+    public static final String NAME = "lwrecruitmentpipeline";
+    public static final String LABEL = JGTConstants.HYDROGEOMORPHOLOGY + "/LWRecruitment";
+    public static final String KEYWORDS = "network, vector, bankflull, width, inundation, vegetation, critical, wood";
+    public static final String CONTACTS = "http://www.hydrologis.com";
+    public static final String AUTHORS = "Silvia Franceschi, Andrea Antonello";
+    public static final String DESCRIPTION = "Run the whole large wood recruitment chain, from the bankfull polygons to the critical sections, in memory.";
+    // VARS DOC END
+
+    @Execute
+    public void process() throws Exception {
+        checkNull(inBankfull, inNet, inFlow, inTca, inBridges, inDams, inSlope, inGeo, inDtm, inDsm, inStand, inConnectivity);
+
+        pm.message("Merging the bankfull polygons...");
+        OmsLW01_ChannelPolygonMerger lw01 = new OmsLW01_ChannelPolygonMerger();
+        lw01.inBankfull = inBankfull;
+        lw01.pm = pm;
+        lw01.process();
+
+        pm.message("Extracting the network hierarchy...");
+        OmsNetworkAttributesBuilder lw02 = new OmsNetworkAttributesBuilder();
+        lw02.inNet = inNet;
+        lw02.inFlow = inFlow;
+        lw02.inTca = inTca;
+        lw02.doHack = false;
+        lw02.pm = pm;
+        lw02.process();
+
+        OmsLW03_NetworkHierarchyToPointsSplitter lw03 = new OmsLW03_NetworkHierarchyToPointsSplitter();
+        lw03.inNet = lw02.outNet;
+        lw03.pm = pm;
+        lw03.process();
+
+        OmsLW04_BankfullWidthAnalyzer lw04 = new OmsLW04_BankfullWidthAnalyzer();
+        lw04.inBankfull = lw01.outBankfull;
+        lw04.inNetPoints = lw03.outNetPoints;
+        lw04.pMaxDistanceFromNetpoint = pMaxDistanceFromNetpoint;
+        lw04.pMaxNetworkWidth = pMaxNetworkWidth;
+        lw04.pMinNetworkWidth = pMinNetworkWidth;
+        lw04.pm = pm;
+        lw04.process();
+        outProblemPoints = lw04.outProblemPoints;
+        outBankfullSections = lw04.outBankfullSections;
+
+        OmsLW05_BridgesDamsWidthAdder lw05 = new OmsLW05_BridgesDamsWidthAdder();
+        lw05.inNetPoints = lw04.outNetPoints;
+        lw05.inBridges = inBridges;
+        lw05.inDams = inDams;
+        lw05.pDamsOnNetDistance = pDamsOnNetDistance;
+        lw05.pBridgesOnNetDistance = pBridgesOnNetDistance;
+        lw05.pFixedDamsWidth = pFixedDamsWidth;
+        lw05.fBridgeLenght = fBridgeLenght;
+        lw05.pm = pm;
+        lw05.process();
+        outProblemBridges = lw05.outProblemBridges;
+
+        OmsLW06_SlopeToNetworkAdder lw06 = new OmsLW06_SlopeToNetworkAdder();
+        lw06.inNetPoints = lw05.outNetPoints;
+        lw06.inSlope = inSlope;
+        lw06.pm = pm;
+        lw06.process();
+
+        /*
+         * the hierarchies of the network are processed in parallel
+         */
+        OmsLW07_NetworkBufferWidthCalculator lw07 = new OmsLW07_NetworkBufferWidthCalculator();
+        lw07.inNetPoints = lw06.outNetPoints;
+        lw07.inGeo = inGeo;
+        lw07.inSectWidth = lw04.outBankfullSections;
+        lw07.pPrePostCount4Slope = pPrePostCount4Slope;
+        lw07.pK = pK;
+        lw07.pN = pN;
+        lw07.doKeepBridgeDamWidth = doKeepBridgeDamWidth;
+        lw07.pMinSlope = pMinSlope;
+        lw07.pMaxThreads = pMaxThreads;
+        lw07.pm = pm;
+        lw07.process();
+        outInundationSections = lw07.outInundationSections;
+
+        pm.message("Merging the inundation areas...");
+        OmsLW08_NetworBufferMergerHolesRemover lw08 = new OmsLW08_NetworBufferMergerHolesRemover();
+        lw08.inInundationArea = lw07.outInundationArea;
+        lw08.pm = pm;
+        lw08.process();
+        outInundationArea = lw08.outInundationArea;
+
+        OmsLW09_AreaToNetpointAssociator lw09 = new OmsLW09_AreaToNetpointAssociator();
+        lw09.inNetPoints = lw07.outNetPoints;
+        lw09.inInundationArea = lw08.outInundationArea;
+        lw09.inFlow = inFlow;
+        lw09.inTca = inTca;
+        lw09.inNet = inNet;
+        lw09.inDtm = inDtm;
+        lw09.inDsm = inDsm;
+        lw09.inStand = inStand;
+        lw09.inSlope = inSlope;
+        lw09.inConnectivity = inConnectivity;
+        lw09.pConnectivityThreshold = pConnectivityThreshold;
+        lw09.pm = pm;
+        lw09.process();
+        outNetnum = lw09.outNetnum;
+        outBasins = lw09.outBasins;
+
+        OmsLW10_NetworkPropagator lw10 = new OmsLW10_NetworkPropagator();
+        lw10.inNetPoints = lw09.outNetPoints;
+        lw10.pm = pm;
+        lw10.process();
+        outNetPoints = lw10.outNetPoints;
+    }
+
+}
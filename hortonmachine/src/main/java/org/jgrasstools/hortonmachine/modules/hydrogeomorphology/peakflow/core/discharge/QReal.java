@@ -18,11 +18,13 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.core.discharge;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.math.ConvolutionUtilities;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.ParameterBox;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.core.iuh.IUHCalculator;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.core.jeff.RealJeff;
@@ -94,9 +96,7 @@ public class QReal implements DischargeCalculator {
         double tcorr = ampi[ampi.length - 1][0];
         tpmax = (double) raintimestep;
         int rainLength = jeff.size();
-        double[][] totalQshiftMatrix = new double[rainLength][(int) (Math.floor((tcorr + tpmax) / timestep) + 1 + rainLength
-                * raintimestep / timestep)];
-        double[][] Q = new double[(int) Math.floor((tcorr + tpmax) / timestep) + 1][3];
+        int qLength = (int) (Math.floor((tcorr + tpmax) / timestep) + 1 + rainLength * raintimestep / timestep);
 
         if (area_sub != -9999.0) {
             area_tot = area_sub + area_super;
@@ -104,73 +104,30 @@ public class QReal implements DischargeCalculator {
             area_tot = area_super;
         }
 
+        /*
+         * the discharge of every rain step is the rain times the response of the
+         * basin to a unit rain of duration tpmax, shifted to the rain time, so the
+         * total discharge is the convolution of the rain with the unit response
+         */
+        double[] unitResponse = calculateUnitResponse(tcorr, timestep);
+
         Set<DateTime> dates = jeff.keySet();
         pm.beginTask("Calculating discharge...", dates.size());
-        int i = 0;
+        double[] rain = new double[0];
         for( DateTime dateTime : dates ) {
             double J = jeff.get(dateTime);
-            /*
-             * calculate the discharge for t < tcorr
-             */
-            int j = 0;
-            for( int t = 1; t < tcorr; t += timestep ) {
-                j = (int) Math.floor((t) / timestep);
-
-                if (t <= tpmax) {
-                    Q[j][0] = t;
-                    double widthInterpolate = ModelsEngine.width_interpolate(ampi, t, 0, 2);
-                    Q[j][1] = (double) (J * area_tot * widthInterpolate);
-                    Q[j][2] = Q[j - 1][2] + Q[j][1];
-                } else {
-                    Q[j][0] = t;
-                    Q[j][1] = (double) (J * area_tot * (ModelsEngine.width_interpolate(ampi, t, 0, 2) - ModelsEngine
-                            .width_interpolate(ampi, t - tpmax, 0, 2)));
-                    Q[j][2] = Q[j - 1][2] + Q[j][1];
-                }
-            }
-
-            /*
-             * calculate the discharge for t > tcorr
-             */
-
-            for( double t = tcorr; t < (tcorr + tpmax); t += timestep ) {
-                j = (int) Math.floor(((int) t) / timestep);
-                Q[j][0] = t;
-                Q[j][1] = (double) (J * area_tot * (ampi[ampi.length - 1][2] - ModelsEngine.width_interpolate(ampi, t - tpmax, 0,
-                        2)));
-                Q[j][2] = Q[j - 1][2] + Q[j][1];
-            }
-
-            /*
-             * calculate the volumes
-             */
-            // double vol = Q[Q.length - 2][2] * timestep;
-            // double vol2 = (double) (area_tot * J * raintimestep);
-
             /*
              * calculate zero padding before first value Note that jeff contains already the
              * progressive time of the rainfile.
              */
-            int totalshiftmatrixindex = 0;
-            int initalshiftmatrixindex = 0;
             // FIXME time in ???
             Duration duration = new Duration(firstDate, dateTime);
             long intervalSeconds = duration.getStandardSeconds();
-
             int paddingnumber = (int) (intervalSeconds / timestep);
-            for( int m = 0; m < paddingnumber; m++ ) {
-                totalQshiftMatrix[i][m] = 0;
-                totalshiftmatrixindex++;
+            if (paddingnumber >= rain.length) {
+                rain = Arrays.copyOf(rain, Math.max(paddingnumber + 1, rain.length * 2));
             }
-            initalshiftmatrixindex = totalshiftmatrixindex;
-            for( int k = initalshiftmatrixindex; k < Q.length + initalshiftmatrixindex; k++ ) {
-                totalQshiftMatrix[i][k] = Q[k - initalshiftmatrixindex][1];
-                totalshiftmatrixindex++;
-            }
-            for( int k = Q.length + totalshiftmatrixindex; k < totalQshiftMatrix[0].length; k++ ) {
-                totalQshiftMatrix[i][k] = 0;
-            }
-            i++;
+            rain[paddingnumber] = rain[paddingnumber] + J * area_tot;
             pm.worked(1);
         }
         pm.done();
@@ -178,17 +135,13 @@ public class QReal implements DischargeCalculator {
         /*
          * sum the discharge contributes
          */
-        Qtot = new double[totalQshiftMatrix[0].length][2];
+        double[] discharge = ConvolutionUtilities.convolve(rain, unitResponse, qLength);
+        Qtot = new double[qLength][2];
         double tottime = 0f;
         for( int k = 0; k < Qtot.length; k++ ) {
-            double sum = 0f;
-            for( int j = 0; j < totalQshiftMatrix.length; j++ ) {
-                sum = sum + totalQshiftMatrix[j][k];
-            }
-
             tottime = tottime + timestep;
 
-            Qtot[k][1] = sum;
+            Qtot[k][1] = discharge[k];
             Qtot[k][0] = tottime;
         }
 
@@ -206,6 +159,40 @@ public class QReal implements DischargeCalculator {
         return Qtot;
     }
 
+    /**
+     * Calculate the discharge of the basin for a unit rain of duration tpmax.
+     *
+     * @param tcorr the time of concentration of the iuh.
+     * @param timestep the timestep.
+     * @return the unit discharge per timestep, to be multiplied by rain and area.
+     */
+    private double[] calculateUnitResponse( double tcorr, double timestep ) {
+        double[] response = new double[(int) Math.floor((tcorr + tpmax) / timestep) + 1];
+        /*
+         * calculate the discharge for t < tcorr
+         */
+        int j = 0;
+        for( int t = 1; t < tcorr; t += timestep ) {
+            j = (int) Math.floor((t) / timestep);
+
+            if (t <= tpmax) {
+                response[j] = ModelsEngine.width_interpolate_sorted(ampi, t, 0, 2);
+            } else {
+                response[j] = ModelsEngine.width_interpolate_sorted(ampi, t, 0, 2)
+                        - ModelsEngine.width_interpolate_sorted(ampi, t - tpmax, 0, 2);
+            }
+        }
+
+        /*
+         * calculate the discharge for t > tcorr
+         */
+        for( double t = tcorr; t < (tcorr + tpmax); t += timestep ) {
+            j = (int) Math.floor(((int) t) / timestep);
+            response[j] = ampi[ampi.length - 1][2] - ModelsEngine.width_interpolate_sorted(ampi, t - tpmax, 0, 2);
+        }
+        return response;
+    }
+
     /*
      * (non-Javadoc)
      * @see bsh.commands.h.peakflow.core.discharge.DischargeCalculator#calculateQmax()
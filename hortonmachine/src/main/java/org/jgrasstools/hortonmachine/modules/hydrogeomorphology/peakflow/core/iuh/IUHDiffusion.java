@@ -113,8 +113,8 @@ public class IUHDiffusion implements IUHCalculator {
             if (tstar < tcorr) {
                 prov = n_idf
                         - 1
-                        + (tp * (double) ModelsEngine.width_interpolate(totalampidiffusion, tstar, 0, 1) / (area_tot * ((double) ModelsEngine
-                                .width_interpolate(totalampidiffusion, tstar, 0, 2) - (double) ModelsEngine.width_interpolate(
+                        + (tp * (double) ModelsEngine.width_interpolate_sorted(totalampidiffusion, tstar, 0, 1) / (area_tot * ((double) ModelsEngine
+                                .width_interpolate_sorted(totalampidiffusion, tstar, 0, 2) - (double) ModelsEngine.width_interpolate_sorted(
                                 totalampidiffusion, dt, 0, 2))));
 
                 if (Math.abs(prov) < error) {
@@ -165,7 +165,7 @@ public class IUHDiffusion implements IUHCalculator {
             double intsup = 0f;
             for( int i = 0; i < ampidiffsurface.length; i++ ) {
                 totaldiff[i][0] = ampidiffsurface[i][0];
-                intsub = (double) ModelsEngine.width_interpolate(ampisubsurface, ampidiffsurface[i][0], 0, 1);
+                intsub = (double) ModelsEngine.width_interpolate_sorted(ampisubsurface, ampidiffsurface[i][0], 0, 1);
                 intsup = ampidiffsurface[i][1];
                 if (isNovalue(intsub)) {
                     pm.errorMessage("Found undefined interpolated value for subsuperficial. Not summing it. Index: " + i);
@@ -118,8 +118,8 @@ public class IUHKinematic implements IUHCalculator {
             if (tstar < tcorr) {
                 prov = n_idf
                         - 1
-                        + (tp * (double) ModelsEngine.width_interpolate(totalampikinematic, tstar, 0, 1) / (area * ((double) ModelsEngine
-                                .width_interpolate(totalampikinematic, tstar, 0, 2) - (double) ModelsEngine.width_interpolate(
+                        + (tp * (double) ModelsEngine.width_interpolate_sorted(totalampikinematic, tstar, 0, 1) / (area * ((double) ModelsEngine
+                                .width_interpolate_sorted(totalampikinematic, tstar, 0, 2) - (double) ModelsEngine.width_interpolate_sorted(
                                 totalampikinematic, dt, 0, 2))));
 
                 if (Math.abs(prov) < error) {
@@ -175,7 +175,7 @@ public class IUHKinematic implements IUHCalculator {
             double intsup = 0f;
             for( int i = 0; i < ampikinesurface.length; i++ ) {
                 totalKinematic[i][0] = ampikinesurface[i][0];
-                intsub = (double) ModelsEngine.width_interpolate(ampisubsurface, ampikinesurface[i][0], 0, 1);
+                intsub = (double) ModelsEngine.width_interpolate_sorted(ampisubsurface, ampikinesurface[i][0], 0, 1);
                 intsup = ampikinesurface[i][1];
 
                 totalKinematic[i][1] = intsup + intsub;
@@ -31,47 +31,68 @@ public class LinearAlgebra {
     private final double EPS = 1.0e-14;
     private final double TINY = 1.0E-20;
 
+    /* work vectors, reused as long as the size of the system does not change */
+    private int size = -1;
+    private double[] sa;
+    private int[] ija;
+    private double[] p;
+    private double[] pp;
+    private double[] r;
+    private double[] rr;
+    private double[] z;
+    private double[] zz;
+
     public void ris_sistema( double d[], double ds[], double di[], double b[], double x[], int n ) {
-        /* Alloco una matrice normale a partire da tre vettori, uno per diagonale */
-        double[][] A = vett_mat(d, ds, di, n);
-        /*
-         * Alloco i vettori che memorizzano la matrice tridiagonale come una matrice sparsa alla
-         * maniera di N.R.
-         */
-        double[] sa = new double[((3 * n) - 1)];
-        int[] ija = new int[((3 * n) - 1)];
+        if (n != size) {
+            /*
+             * Alloco i vettori che memorizzano la matrice tridiagonale come una matrice sparsa alla
+             * maniera di N.R.
+             */
+            sa = new double[((3 * n) - 1)];
+            ija = new int[((3 * n) - 1)];
+            p = new double[n];
+            pp = new double[n];
+            r = new double[n];
+            rr = new double[n];
+            z = new double[n];
+            zz = new double[n];
+            size = n;
+        }
 
-        /* Definisco gli elementi dei vettori sa[] e ija[] */
-        sprsin(A, THRESH, sa, ija);
+        /* Definisco gli elementi dei vettori sa[] e ija[] direttamente dalle tre diagonali */
+        sprsin(d, ds, di, n, THRESH, sa, ija);
 
         /* Calcolo la soluzione del sistema lineare */
         linbcg(n, b, x, ITOL, TOL, ITMAX, sa, ija);
     }
 
     /**
-     * Questa funzione converte tre vettori in una matrice quadrata tridiagonale.
+     * Questa funzione memorizza una matrice tridiagonale, data dalle sue tre diagonali, nei
+     * vettori sa[] e ija[] alla maniera di N.R., come fa {@link #sprsin(double[][], double, double[], int[])}
+     * sulla matrice quadrata corrispondente.
      * 
      * @param d elementi delle diagonale principale
      * @param ds elementi della diagonale superiore
      * @param di elementi della diagonale inferiore
-     * @param n dimensione della matrice che si vuole generare
-     * @return matrix
+     * @param n dimensione della matrice
      */
-    private double[][] vett_mat( double[] d, double[] ds, double[] di, int n ) {
-        double[][] A = new double[n][n];
+    private void sprsin( double[] d, double[] ds, double[] di, int n, double thresh, double[] sa, int[] ija ) {
+        int k;
+        for( int j = 0; j < n; j++ )
+            sa[j] = d[j];
+        ija[0] = n + 1;
+        k = n;
         for( int i = 0; i < n; i++ ) {
-            for( int j = 0; j < n; j++ )
-                A[i][j] = 0.0;
-        }
-        A[0][1] = ds[0];
-        A[n - 1][n - 2] = di[n - 2];
-        for( int i = 0; i < n; i++ )
-            A[i][i] = d[i];
-        for( int i = 1; i < n - 1; i++ ) {
-            A[i][i + 1] = ds[i];
-            A[i][i - 1] = di[i - 1];
+            if (i > 0 && Math.abs(di[i - 1]) > thresh) {
+                sa[++k] = di[i - 1];
+                ija[k] = i - 1;
+            }
+            if (i < n - 1 && Math.abs(ds[i]) > thresh) {
+                sa[++k] = ds[i];
+                ija[k] = i + 1;
+            }
+            ija[i + 1] = k + 1;
         }
-        return A;
     }
 
     /**
@@ -132,12 +153,12 @@ public class LinearAlgebra {
         // FIXME check itol and those numbers that start from 1 in here
         double ak, akden, bk, bkden = 0, bknum, bnrm = 0, dxnrm, xnrm, zm1nrm, znrm = 0;
 
-        double[] p = new double[n];
-        double[] pp = new double[n];
-        double[] r = new double[n];
-        double[] rr = new double[n];
-        double[] z = new double[n];
-        double[] zz = new double[n];
+        double[] p = this.p;
+        double[] pp = this.pp;
+        double[] r = this.r;
+        double[] rr = this.rr;
+        double[] z = this.z;
+        double[] zz = this.zz;
 
         int iter = 0;
         double err = 0;
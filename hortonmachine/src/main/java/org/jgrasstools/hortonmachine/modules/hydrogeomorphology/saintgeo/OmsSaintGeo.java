@@ -21,6 +21,7 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.HYDROGEOMORPHOLOGY
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -96,6 +97,11 @@ public class OmsSaintGeo extends JGTModel {
     @In
     public long pDeltaTMillis = 5000;
 
+    @Description(pLevelStep_DESCRIPTION)
+    @Unit(pLevelStep_UNIT)
+    @In
+    public double pLevelStep = 0.0;
+
     @Description(outputLevelFile_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -124,6 +130,8 @@ public class OmsSaintGeo extends JGTModel {
     public static final String outputLevelFile_DESCRIPTION = "Output file with levels.";
     public static final String outputDischargeFile_DESCRIPTION = "Output file with the quantities related to discharge.";
     public static final String pDeltaTMillis_DESCRIPTION = "Time interval.";
+    public static final String pLevelStep_UNIT = "m";
+    public static final String pLevelStep_DESCRIPTION = "The level step of the hydraulic tables of the sections (0 calculates the hydraulic quantities exactly at every step).";
     public static final String inConfluenceId2DischargeMap_DESCRIPTION = "Lateral immission from confluences discharge values for each id.";
     public static final String inLateralId2DischargeMap_DESCRIPTION = "Lateral discharge tribute or offtake section discharge values for each id.";
     public static final String inDownstreamLevel_DESCRIPTION = "Input downstream level.";
@@ -135,6 +143,20 @@ public class OmsSaintGeo extends JGTModel {
     private int SCELTA_A_MONTE;
     private int SCELTA_A_VALLE;
 
+    /* hydraulics of the sections and work arrays, allocated once per run */
+    private SectionHydraulics[] hydraulics;
+    private double[][] idrgeoBuffer;
+    private double[][] geomidBuffer;
+    private double[] U_IBuffer;
+    private double[] GAMBuffer;
+    private double[] F_QBuffer;
+    private double[] DBuffer;
+    private double[] DSBuffer;
+    private double[] DIBuffer;
+    private double[] BBuffer;
+    private double[] tirante_oldBuffer;
+    private double[] qsBuffer;
+
     // CONSTANTS
     private final double TOL_mu = 0.001;
     private final int MAX_CICLI = 1000;
@@ -162,6 +184,7 @@ public class OmsSaintGeo extends JGTModel {
         List<RiverPoint> riverPoints = ARiverSectionsExtractor.riverInfo2RiverPoints(riverInfo);
 
         int sectionsCount = riverPoints.size();
+        initHydraulics(riverPoints);
 
         try (BufferedWriter outputLevelWriter = new BufferedWriter(new FileWriter(outputLevelFile));
                 BufferedWriter outputDischargeWriter = new BufferedWriter(new FileWriter(outputDischargeFile));) {
@@ -240,7 +263,7 @@ public class OmsSaintGeo extends JGTModel {
                      * the Gaukler-Strickler formula
                      */
                     calculateGauklerStrickler(qHead, waterLevel, riverPoints);
-                    idrgeo = wettedArea(waterLevel, riverPoints);
+                    idrgeo = wettedArea(waterLevel);
                     double error = 100.0;
 
                     /*
@@ -302,7 +325,7 @@ public class OmsSaintGeo extends JGTModel {
                 new_tirante(riverPoints, waterLevel, discharge, celerity, DELXM, SCELTA_A_MONTE, qHead, qHeadPrevious,
                         SCELTA_A_VALLE, downstreamLevel, ql);
 
-                idrgeo = wettedArea(waterLevel, riverPoints);
+                idrgeo = wettedArea(waterLevel);
 
                 /* write the output file with levels */
                 StringBuilder sbLevel = new StringBuilder();
@@ -379,7 +402,8 @@ public class OmsSaintGeo extends JGTModel {
     private void calculateGauklerStrickler( double q, double[] level, List<RiverPoint> sectionsList ) {
         double toll, conta_cicli;
         double IF, max_tir, tir_dx, tir_sx, tir_med, val_dx, val_sx, val_med;
-        double[][] idrgeo;
+        /* only the quantities of the section being evaluated are needed */
+        double[] idrgeo = new double[SectionHydraulics.QUANTITIES];
         /* create a complete list to proceed with the next elaborations */
         int imax = sectionsList.size();
         double[] minsez = new double[imax];
@@ -418,18 +442,18 @@ public class OmsSaintGeo extends JGTModel {
 
             while( toll >= TOLL && conta_cicli <= MAX_CICLI ) {
                 level[i] = tir_dx;
-                idrgeo = wettedArea(level, sectionsList);
-                val_dx = q - idrgeo[i][0] * idrgeo[i][4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[i][2], (2.0 / 3.0));
+                hydraulics[i].calculate(level[i], idrgeo);
+                val_dx = q - idrgeo[0] * idrgeo[4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[2], (2.0 / 3.0));
                 level[i] = tir_sx;
-                idrgeo = wettedArea(level, sectionsList);
-                val_sx = q - idrgeo[i][0] * idrgeo[i][4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[i][2], (2.0 / 3.0));
+                hydraulics[i].calculate(level[i], idrgeo);
+                val_sx = q - idrgeo[0] * idrgeo[4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[2], (2.0 / 3.0));
                 if ((val_dx * val_sx) > 0) {
                     pm.errorMessage("Evaluation of the steady flow not possible for the section " + i + "solution not found.");
                 }
                 tir_med = (tir_dx + tir_sx) / 2.0;
                 level[i] = tir_med;
-                idrgeo = wettedArea(level, sectionsList);
-                val_med = q - idrgeo[i][0] * idrgeo[i][4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[i][2], (2.0 / 3.0));
+                hydraulics[i].calculate(level[i], idrgeo);
+                val_med = q - idrgeo[0] * idrgeo[4] * Math.pow(IF, (0.5)) * Math.pow(idrgeo[2], (2.0 / 3.0));
                 toll = Math.abs(tir_dx - tir_sx);
                 if ((val_dx * val_med) < 0)
                     tir_sx = tir_med;
@@ -508,8 +532,12 @@ public class OmsSaintGeo extends JGTModel {
      * </ul>
      * </p>
      * 
+     * <p>
+     * The quantities are evaluated through the {@link SectionHydraulics} of the sections and
+     * put in a matrix that is reused at every call.
+     * </p>
+     * 
      * @param waterLevel il vettore dei tiranti
-     * @param riverPoints il vettore che contiene le sezioni di calcolo
      * @return una matrice che ha come elementi di ogni colonna della i-esima riga le
      *         grandezze: 
      *          - wetted area
@@ -519,172 +547,36 @@ public class OmsSaintGeo extends JGTModel {
      *          - alpha coefficient of Corilis
      *         relative alla i-esima sezione.
      */
-    private double[][] wettedArea( double[] waterLevel, List<RiverPoint> riverPoints ) {
-        /* right and left limits of the main channel */
-        double dx, sx;
-        double area_b, base_dx, base_sx, altezza;
-        double peri_b;
-        double larghe_b;
-        double gau_b;
-        double alfa_num, alfa_den;
-        /* *_loc refer to the local slice (trapezoidal) of the area of the section */
-        double area_loc, peri_loc, gau_loc;
+    private double[][] wettedArea( double[] waterLevel ) {
+        for( int i = 0; i < hydraulics.length; i++ ) {
+            hydraulics[i].calculate(waterLevel[i], idrgeoBuffer[i]);
+        }
+        return idrgeoBuffer;
+    }
 
+    /**
+     * Builds the hydraulics of the sections and allocates the work arrays of the time steps.
+     * 
+     * @param riverPoints the sections.
+     */
+    private void initHydraulics( List<RiverPoint> riverPoints ) {
         int imax = riverPoints.size();
-        double[][] tirase = new double[imax][6];
-
-        /*
-         * Calculate: wetted area, wetted perimeter, width of the water surface, the roughness
-         * and the alpha coefficient of Coriolis in the section i
-         */
+        hydraulics = new SectionHydraulics[imax];
         for( int i = 0; i < imax; i++ ) {
-
-            RiverPoint section = riverPoints.get(i);
-            area_b = 0;
-            peri_b = 0;
-            larghe_b = 0;
-            gau_b = 0;
-            gau_loc = 0;
-            alfa_num = 0;
-            alfa_den = 0;
-
-            dx = section.getStartNodeIndex() + 1;
-            sx = section.getEndNodeIndex() - 1;
-
-            Coordinate[] sectionCoordinates = section.getSectionCoordinates();
-            List<Double> sectionProgressives = section.getSectionProgressive();
-            List<Double> sectionGauklerStrickler = section.getSectionGauklerStrickler();
-
-            for( int j = (int) dx - 1; j < sx - 1; j++ ) {
-                /* Check the segments between the stations j and j+1 of the current section
-                 
-                // if (section.getYAt(j) >= tirante[i] && section.getYAt(j + 1) >= tirante[i]) {
-                // area_b = area_b + 0;
-                // peri_b = peri_b + 0;
-                // larghe_b = larghe_b + 0;
-                // gau_b = gau_b + 0;
-                // alfa_num = alfa_num + 0;
-                // alfa_den = alfa_den + 0;
-                // }
-                /* 
-                 * case 1: only partially wetted (right side dry) 
-                 */
-
-                if (sectionCoordinates[j].z >= waterLevel[i] && sectionCoordinates[j + 1].z < waterLevel[i]) {
-                    /* the area of the triangle */
-                    base_dx = 0;
-                    base_sx = waterLevel[i] - sectionCoordinates[j + 1].z;
-                    altezza = base_sx * (sectionProgressives.get(j + 1) - sectionProgressives.get(j))
-                            / (sectionCoordinates[j].z - sectionCoordinates[j + 1].z);
-                    area_b = area_b + (base_dx + base_sx) * altezza / 2.0;
-                    /* the part of the bottom that is wetted */
-                    peri_b = peri_b + Math.sqrt(Math.abs(base_dx - base_sx) * Math.abs(base_dx - base_sx) + altezza * altezza);
-                    /* the width of the water surface */
-                    larghe_b = larghe_b + altezza;
-                    /* the roughness coefficient */
-                    gau_b = gau_b + (sectionGauklerStrickler.get(j) * Math.pow((base_dx + base_sx) / 2.0, (5.0 / 3.0)) * altezza);
-                    gau_loc = sectionGauklerStrickler.get(j);
-                    /* the alpha coefficient of Coriolis */
-                    area_loc = (base_dx + base_sx) * altezza / 2.0;
-                    peri_loc = Math.sqrt((base_dx - base_sx) * (base_dx - base_sx) + altezza * altezza);
-                    if (area_loc != 0) {
-                        // use the method of Einstein-Horton?
-                        alfa_num = alfa_num + (gau_loc * gau_loc) * Math.pow(area_loc, (7.0 / 3.0))
-                                / Math.pow(peri_loc, (4.0 / 3.0));
-                    }
-                    alfa_den = alfa_den + gau_loc * area_loc * Math.pow(peri_loc, (2.0 / 3.0));
-
-                    /* no one of these values can be null */
-                    /*
-                     * if ( base_dx<0 || base_sx<0 || altezza<0 ) { print("POSIZIONE " + i " -
-                     * TIRANTE " + waterLevel[i] + "Error in the evaluation of the wetted area"};
-                     */
-                }
-                /* case 2: only partially wetted (left side dry) */
-
-                if (sectionCoordinates[j + 1].z >= waterLevel[i] && sectionCoordinates[j].z < waterLevel[i]) {
-                    /* the area of the triangle */
-                    base_sx = 0;
-                    base_dx = waterLevel[i] - sectionCoordinates[j].z;
-                    altezza = base_dx * (sectionProgressives.get(j + 1) - sectionProgressives.get(j))
-                            / (sectionCoordinates[j + 1].z - sectionCoordinates[j].z);
-                    area_b = area_b + (base_dx + base_sx) * altezza / 2.0;
-                    /* the part of the bottom that is wetted */
-                    peri_b = peri_b + Math.sqrt(Math.abs(base_dx - base_sx) * Math.abs(base_dx - base_sx) + altezza * altezza);
-                    /* the width of the water surface */
-                    larghe_b = larghe_b + altezza;
-                    /* the roughness coefficient */
-                    gau_b = gau_b + (sectionGauklerStrickler.get(j) * Math.pow((base_dx + base_sx) / 2.0, (5.0 / 3.0)) * altezza);
-                    gau_loc = sectionGauklerStrickler.get(j);
-
-                    /* the alpha coefficient of Coriolis */
-                    area_loc = (base_dx + base_sx) * altezza / 2.0;
-                    peri_loc = Math.sqrt((base_dx - base_sx) * (base_dx - base_sx) + altezza * altezza);
-                    if (area_loc != 0) {
-                        alfa_num = alfa_num + (gau_loc * gau_loc) * Math.pow(area_loc, (7.0 / 3.0))
-                                / Math.pow(peri_loc, (4.0 / 3.0));
-                    }
-                    alfa_den = alfa_den + gau_loc * area_loc * Math.pow(peri_loc, (2.0 / 3.0));
-
-                    /* no one of these values can be null */
-                    /*
-                     * if ( base_dx<0 || base_sx<0 || altezza<0 ) { print("POSIZIONE " + i " -
-                     * TIRANTE " + waterLevel[i] + "Error in the evaluation of the wetted area"};
-                     */
-
-                }
-                /* case 3: completely wetted */
-
-                if (sectionCoordinates[j + 1].z < waterLevel[i] && sectionCoordinates[j].z < waterLevel[i]) {
-                    base_dx = waterLevel[i] - sectionCoordinates[j].z;
-                    base_sx = waterLevel[i] - sectionCoordinates[j + 1].z;
-                    altezza = sectionProgressives.get(j + 1) - sectionProgressives.get(j);
-                    area_b = area_b + (base_dx + base_sx) * altezza / 2.0;
-
-                    peri_b = peri_b + Math.sqrt(Math.abs(base_dx - base_sx) * Math.abs(base_dx - base_sx) + altezza * altezza);
-                    larghe_b = larghe_b + altezza;
-                    gau_b = gau_b + (sectionGauklerStrickler.get(j) * Math.pow((base_dx + base_sx) / 2, (5.0 / 3.0)) * altezza);
-                    gau_loc = sectionGauklerStrickler.get(j);
-
-                    area_loc = (base_dx + base_sx) * altezza / 2;
-                    peri_loc = Math.sqrt((base_dx - base_sx) * (base_dx - base_sx) + altezza * altezza);
-                    if (area_loc != 0) {
-                        alfa_num = alfa_num + (gau_loc * gau_loc) * Math.pow(area_loc, (7.0 / 3.0))
-                                / Math.pow(peri_loc, (4.0 / 3.0));
-                    } else {
-                        alfa_num = alfa_num + 0;
-                    }
-                    alfa_den = alfa_den + gau_loc * area_loc * Math.pow(peri_loc, (2.0 / 3.0));
-
-                    /* no one of these values can be null */
-                    /*
-                     * if ( base_dx<0 || base_sx<0 || altezza<0 ) { print("POSIZIONE " + i " -
-                     * TIRANTE " + waterLevel[i] + "Error in the evaluation of the wetted area"};
-                     */
-                }
-            }
-            /*
-             * Fill the final matrix tirase
-             */
-            /* wetted area */
-            tirase[i][0] = area_b;
-            /* wetted perimeter */
-            tirase[i][1] = peri_b;
-            /* hydraulic radius */
-            tirase[i][2] = area_b / peri_b;
-            /* width of the water surface */
-            tirase[i][3] = larghe_b;
-            /* roughness coefficient */
-            gau_b = gau_b / (area_b * Math.pow((area_b / peri_b), (2.0 / 3.0)));
-
-            tirase[i][4] = gau_b;
-            /* alpha coefficient of Coriolis */
-            tirase[i][5] = alfa_num / (area_b * Math.pow(gau_b, 2) * Math.pow((area_b / peri_b), (4.0 / 3.0)));
-            /* tirase[i][6]=1; */
-            /* tirase[i][6]=area_b*alfa_num/(alfa_den*alfa_den); */
+            hydraulics[i] = new SectionHydraulics(riverPoints.get(i));
+            hydraulics[i].buildTable(pLevelStep);
         }
-
-        return tirase;
+        idrgeoBuffer = new double[imax][SectionHydraulics.QUANTITIES];
+        geomidBuffer = new double[imax - 1][SectionHydraulics.QUANTITIES];
+        U_IBuffer = new double[imax];
+        GAMBuffer = new double[imax];
+        F_QBuffer = new double[imax - 1];
+        DBuffer = new double[imax];
+        DSBuffer = new double[imax - 1];
+        DIBuffer = new double[imax - 1];
+        BBuffer = new double[imax];
+        tirante_oldBuffer = new double[imax];
+        qsBuffer = new double[imax - 1];
     }
 
     /*
@@ -701,16 +593,26 @@ public class OmsSaintGeo extends JGTModel {
         double T1, T2, A1dx, A2dx, A1sx, A2sx;
         double l, c;
         int imax = riverPoints.size();
-        double[][] geomid = new double[imax - 1][6];
-        double[] U_I = new double[imax];
-        double[] GAM = new double[imax];
-        double[] F_Q = new double[imax - 1];
-        double[] D = new double[imax];
-        double[] DS = new double[imax - 1];
-        double[] DI = new double[imax - 1];
-        double[] B = new double[imax];
-        double[] tirante_old = new double[imax];
-        double[] qs = new double[imax - 1];
+        double[][] geomid = geomidBuffer;
+        double[] U_I = U_IBuffer;
+        double[] GAM = GAMBuffer;
+        double[] F_Q = F_QBuffer;
+        double[] D = DBuffer;
+        double[] DS = DSBuffer;
+        double[] DI = DIBuffer;
+        double[] B = BBuffer;
+        double[] tirante_old = tirante_oldBuffer;
+        double[] qs = qsBuffer;
+        /* the arrays are reused among time steps, start from a clean state */
+        Arrays.fill(U_I, 0.0);
+        Arrays.fill(GAM, 0.0);
+        Arrays.fill(F_Q, 0.0);
+        Arrays.fill(D, 0.0);
+        Arrays.fill(DS, 0.0);
+        Arrays.fill(DI, 0.0);
+        Arrays.fill(B, 0.0);
+        Arrays.fill(tirante_old, 0.0);
+        Arrays.fill(qs, 0.0);
 
         // FIXME not sure it is correct
         double tirantein = 0;
@@ -719,7 +621,7 @@ public class OmsSaintGeo extends JGTModel {
          * Execute the method wettedArea
          * the variable idrgeo contains all the quantities related to water depth and section
          */
-        double[][] idrgeo = wettedArea(tirante, riverPoints);
+        double[][] idrgeo = wettedArea(tirante);
         /*
          * goemid contains all the quantities related to intermediate sections, linear interpolation
          * between the values calculated for the given sections
@@ -0,0 +1,216 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo;
+
+import java.util.List;
+
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.riversections.RiverPoint;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * The hydraulic quantities of a river section as function of the water level.
+ *
+ * <p>
+ * The geometry of the main channel of the section is copied once into flat arrays,
+ * so that the quantities can be evaluated at every time step without going through
+ * the lists of the {@link RiverPoint}. Optionally the quantities are tabulated at
+ * a regular level step and then linearly interpolated.
+ * </p>
+ * <p>
+ * The quantities are, in this order: wetted area, wetted perimeter, hydraulic radius,
+ * width of the water surface, roughness and alpha coefficient of Coriolis.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class SectionHydraulics {
+
+    /**
+     * The number of hydraulic quantities.
+     */
+    public static final int QUANTITIES = 6;
+
+    private static final int TABLE_COLUMNS = 5;
+
+    /* elevations of the nodes of the main channel */
+    private final double[] elevations;
+    /* horizontal length of the segments between the nodes */
+    private final double[] lengths;
+    /* Gaukler-Strickler coefficient of the segments */
+    private final double[] strickler;
+
+    private double minElevation = Double.POSITIVE_INFINITY;
+    private double maxElevation = Double.NEGATIVE_INFINITY;
+
+    private double[] table;
+    private double tableStep;
+    private int tableLevels;
+
+    /**
+     * Constructor.
+     *
+     * @param section the river section.
+     */
+    public SectionHydraulics( RiverPoint section ) {
+        Coordinate[] sectionCoordinates = section.getSectionCoordinates();
+        List<Double> sectionProgressives = section.getSectionProgressive();
+        List<Double> sectionGauklerStrickler = section.getSectionGauklerStrickler();
+
+        /* segments j, j + 1 with j from the start node to the end node - 3 */
+        int first = section.getStartNodeIndex();
+        int segments = Math.max(0, section.getEndNodeIndex() - 2 - first);
+
+        elevations = new double[segments + 1];
+        lengths = new double[segments];
+        strickler = new double[segments];
+        for( int s = 0; s < segments; s++ ) {
+            int j = first + s;
+            lengths[s] = sectionProgressives.get(j + 1) - sectionProgressives.get(j);
+            strickler[s] = sectionGauklerStrickler.get(j);
+        }
+        if (segments > 0) {
+            for( int s = 0; s <= segments; s++ ) {
+                elevations[s] = sectionCoordinates[first + s].z;
+                minElevation = Math.min(minElevation, elevations[s]);
+                maxElevation = Math.max(maxElevation, elevations[s]);
+            }
+        }
+    }
+
+    /**
+     * Tabulates the hydraulic quantities between the lowest and highest node of the main
+     * channel.
+     *
+     * <p>
+     * Levels outside of the table are still calculated exactly.
+     * </p>
+     *
+     * @param step the level step of the table.
+     */
+    public void buildTable( double step ) {
+        if (step <= 0 || lengths.length == 0) {
+            table = null;
+            return;
+        }
+        tableStep = step;
+        tableLevels = (int) Math.ceil((maxElevation - minElevation) / step) + 1;
+        table = new double[tableLevels * TABLE_COLUMNS];
+        double[] values = new double[QUANTITIES];
+        for( int k = 0; k < tableLevels; k++ ) {
+            integrate(minElevation + k * step, values);
+            int index = k * TABLE_COLUMNS;
+            table[index] = values[0];
+            table[index + 1] = values[1];
+            table[index + 2] = values[3];
+            table[index + 3] = values[4];
+            table[index + 4] = values[5];
+        }
+    }
+
+    /**
+     * Calculates the hydraulic quantities at a water level.
+     *
+     * @param waterLevel the water level.
+     * @param values the array of size {@link #QUANTITIES} into which the quantities are put.
+     */
+    public void calculate( double waterLevel, double[] values ) {
+        double position = table == null ? -1 : (waterLevel - minElevation) / tableStep;
+        if (position > 0 && position < tableLevels - 1) {
+            int k = (int) position;
+            double w = position - k;
+            int index = k * TABLE_COLUMNS;
+            values[0] = table[index] + w * (table[index + TABLE_COLUMNS] - table[index]);
+            values[1] = table[index + 1] + w * (table[index + TABLE_COLUMNS + 1] - table[index + 1]);
+            values[3] = table[index + 2] + w * (table[index + TABLE_COLUMNS + 2] - table[index + 2]);
+            values[4] = table[index + 3] + w * (table[index + TABLE_COLUMNS + 3] - table[index + 3]);
+            values[5] = table[index + 4] + w * (table[index + TABLE_COLUMNS + 4] - table[index + 4]);
+        } else {
+            integrate(waterLevel, values);
+        }
+
+        double area_b = values[0];
+        double peri_b = values[1];
+        /* hydraulic radius */
+        values[2] = area_b / peri_b;
+        /* roughness coefficient */
+        double gau_b = values[4] / (area_b * Math.pow((area_b / peri_b), (2.0 / 3.0)));
+        values[4] = gau_b;
+        /* alpha coefficient of Coriolis */
+        values[5] = values[5] / (area_b * Math.pow(gau_b, 2) * Math.pow((area_b / peri_b), (4.0 / 3.0)));
+    }
+
+    /**
+     * Sums the contributions of the trapezoids of the section.
+     *
+     * <p>
+     * Puts the wetted area, the wetted perimeter, the width of the water surface, the
+     * sum of <b>Ks(j)*Y(j)^(5/3)*B(j)</b> and the sum of <b>Ks(j)^2*A(j)^(7/3)/P(j)^(4/3)</b>
+     * in the positions 0, 1, 3, 4 and 5 of the values.
+     * </p>
+     */
+    private void integrate( double waterLevel, double[] values ) {
+        double area_b = 0;
+        double peri_b = 0;
+        double larghe_b = 0;
+        double gau_b = 0;
+        double alfa_num = 0;
+        double base_dx, base_sx, altezza;
+
+        for( int s = 0; s < lengths.length; s++ ) {
+            double z1 = elevations[s];
+            double z2 = elevations[s + 1];
+            if (z1 >= waterLevel && z2 < waterLevel) {
+                /* case 1: only partially wetted (right side dry) */
+                base_dx = 0;
+                base_sx = waterLevel - z2;
+                altezza = base_sx * lengths[s] / (z1 - z2);
+            } else if (z2 >= waterLevel && z1 < waterLevel) {
+                /* case 2: only partially wetted (left side dry) */
+                base_sx = 0;
+                base_dx = waterLevel - z1;
+                altezza = base_dx * lengths[s] / (z2 - z1);
+            } else if (z2 < waterLevel && z1 < waterLevel) {
+                /* case 3: completely wetted */
+                base_dx = waterLevel - z1;
+                base_sx = waterLevel - z2;
+                altezza = lengths[s];
+            } else {
+                /* dry */
+                continue;
+            }
+
+            double gau_loc = strickler[s];
+            double area_loc = (base_dx + base_sx) * altezza / 2.0;
+            double peri_loc = Math.sqrt((base_dx - base_sx) * (base_dx - base_sx) + altezza * altezza);
+            area_b = area_b + area_loc;
+            peri_b = peri_b + peri_loc;
+            larghe_b = larghe_b + altezza;
+            gau_b = gau_b + (gau_loc * Math.pow((base_dx + base_sx) / 2.0, (5.0 / 3.0)) * altezza);
+            if (area_loc != 0) {
+                alfa_num = alfa_num + (gau_loc * gau_loc) * Math.pow(area_loc, (7.0 / 3.0)) / Math.pow(peri_loc, (4.0 / 3.0));
+            }
+        }
+
+        values[0] = area_b;
+        values[1] = peri_b;
+        values[3] = larghe_b;
+        values[4] = gau_b;
+        values[5] = alfa_num;
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.network.networkattributes;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.WritableRandomIter;
+
+import org.jgrasstools.gears.libs.modules.Direction;
+import org.jgrasstools.gears.libs.modules.FlowNode;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+
+/**
+ * The graph of a channel network, extracted once from the flowdirections and network rasters.
+ *
+ * <p>
+ * The network is split in links, i.e. runs of cells between two junctions. A link starts at
+ * a source or at a junction cell (more than one network cell entering) and goes downstream up
+ * to the cell that enters the next junction or leaves the map. Links are numbered depth first
+ * from the outlets, visiting the main upstream link (the one with the largest tca) first, so
+ * that upstream links always have a larger index than their downstream link.
+ * </p>
+ * <p>
+ * Everything is kept in <code>int</code> arrays, cells are stored as <code>row * cols + col</code>.
+ * The attributes of the network (Strahler, Shreve magnitude, Hack order, main stem length) are
+ * calculated on the links in linear time and the graph can be saved to disk to skip the raster
+ * scan in subsequent analyses.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ChannelNetwork implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The extension of the files in which the graph is cached.
+     */
+    public static final String CACHE_EXTENSION = ".channels";
+
+    private final int cols;
+    private final int rows;
+    private final double xRes;
+    private final double yRes;
+
+    private int linksNum = 0;
+    /* the cells of link i are cells[linkStart[i]] to cells[linkStart[i + 1] - 1], upstream first */
+    private int[] linkStart = new int[16];
+    private int[] cells = new int[64];
+    private int cellsNum = 0;
+    private int[] downstreamLink = new int[16];
+    private int[] mainUpstreamLink = new int[16];
+    /* the upstream links of link i are upstreamLinks[upstreamStart[i]] to upstreamLinks[upstreamStart[i + 1] - 1] */
+    private int[] upstreamStart;
+    private int[] upstreamLinks;
+    private int[] hackOrder = new int[16];
+
+    /**
+     * Extract the graph from the rasters.
+     *
+     * <p>
+     * The network is followed upstream from all its cells that are marked as outlet or that
+     * flow outside of the valid flowdirections.
+     * </p>
+     *
+     * @param flowIter the flowdirections.
+     * @param netIter the network, all valid cells are part of the network.
+     * @param tcaIter the tca, used to pick the main upstream link at the junctions.
+     * @param regionMap the region of the rasters.
+     * @param pm the progress monitor.
+     */
+    public ChannelNetwork( RandomIter flowIter, RandomIter netIter, RandomIter tcaIter, RegionMap regionMap,
+            IJGTProgressMonitor pm ) {
+        cols = regionMap.getCols();
+        rows = regionMap.getRows();
+        xRes = regionMap.getXres();
+        yRes = regionMap.getYres();
+
+        int[] flow = new int[cols * rows];
+        boolean[] isNet = new boolean[cols * rows];
+        double[] tca = new double[cols * rows];
+        pm.beginTask("Read flow and network...", rows); //$NON-NLS-1$
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                int index = r * cols + c;
+                double flowValue = flowIter.getSampleDouble(c, r, 0);
+                flow[index] = isNovalue(flowValue) ? -1 : (int) flowValue;
+                isNet[index] = !isNovalue(netIter.getSampleDouble(c, r, 0));
+                if (isNet[index]) {
+                    tca[index] = tcaIter.getSampleDouble(c, r, 0);
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        int[] linkStack = new int[16];
+        int[] hackStack = new int[16];
+        int[] downStack = new int[16];
+        int stackSize = 0;
+        int[] upstream = new int[8];
+        int[] linkCells = new int[64];
+        pm.beginTask("Extract network links...", rows); //$NON-NLS-1$
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                int index = r * cols + c;
+                if (!isNet[index] || !isExit(flow, c, r)) {
+                    continue;
+                }
+                /*
+                 * follow the network upstream with an explicit stack of the link ends
+                 * still to be handled, the main upstream link is pushed last
+                 */
+                linkStack[0] = index;
+                hackStack[0] = 1;
+                downStack[0] = -1;
+                stackSize = 1;
+                while( stackSize > 0 ) {
+                    stackSize--;
+                    int cell = linkStack[stackSize];
+                    int hack = hackStack[stackSize];
+                    int down = downStack[stackSize];
+
+                    int linkCellsNum = 0;
+                    int upstreamNum;
+                    while( true ) {
+                        if (linkCellsNum == linkCells.length) {
+                            linkCells = Arrays.copyOf(linkCells, linkCells.length * 2);
+                        }
+                        linkCells[linkCellsNum++] = cell;
+                        upstreamNum = upstreamNetCells(flow, isNet, cell, upstream);
+                        if (upstreamNum != 1) {
+                            break;
+                        }
+                        cell = upstream[0];
+                    }
+                    int link = addLink(linkCells, linkCellsNum, down, hack);
+
+                    if (upstreamNum > 1) {
+                        int main = 0;
+                        for( int i = 1; i < upstreamNum; i++ ) {
+                            if (tca[upstream[i]] > tca[upstream[main]]) {
+                                main = i;
+                            }
+                        }
+                        if (stackSize + upstreamNum > linkStack.length) {
+                            int newLength = Math.max(linkStack.length * 2, stackSize + upstreamNum);
+                            linkStack = Arrays.copyOf(linkStack, newLength);
+                            hackStack = Arrays.copyOf(hackStack, newLength);
+                            downStack = Arrays.copyOf(downStack, newLength);
+                        }
+                        for( int i = upstreamNum - 1; i >= 0; i-- ) {
+                            if (i != main) {
+                                linkStack[stackSize] = upstream[i];
+                                hackStack[stackSize] = hack + 1;
+                                downStack[stackSize] = link;
+                                stackSize++;
+                            }
+                        }
+                        linkStack[stackSize] = upstream[main];
+                        hackStack[stackSize] = hack;
+                        downStack[stackSize] = link;
+                        stackSize++;
+                    }
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        linkStart = Arrays.copyOf(linkStart, linksNum + 1);
+        cells = Arrays.copyOf(cells, cellsNum);
+        downstreamLink = Arrays.copyOf(downstreamLink, linksNum);
+        mainUpstreamLink = Arrays.copyOf(mainUpstreamLink, linksNum);
+        hackOrder = Arrays.copyOf(hackOrder, linksNum);
+        Arrays.fill(mainUpstreamLink, -1);
+
+        /*
+         * the upstream links of every link, in the order in which they have been
+         * found, which is the main link first
+         */
+        upstreamStart = new int[linksNum + 1];
+        for( int i = 0; i < linksNum; i++ ) {
+            if (downstreamLink[i] != -1) {
+                upstreamStart[downstreamLink[i] + 1]++;
+            }
+        }
+        for( int i = 0; i < linksNum; i++ ) {
+            upstreamStart[i + 1] += upstreamStart[i];
+        }
+        upstreamLinks = new int[upstreamStart[linksNum]];
+        int[] fill = Arrays.copyOf(upstreamStart, linksNum);
+        for( int i = 0; i < linksNum; i++ ) {
+            int down = downstreamLink[i];
+            if (down != -1) {
+                if (fill[down] == upstreamStart[down]) {
+                    mainUpstreamLink[down] = i;
+                }
+                upstreamLinks[fill[down]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Checks if a network cell is an exit of the network, the same way as it is done with the {@link FlowNode}.
+     */
+    private boolean isExit( int[] flow, int col, int row ) {
+        int value = flow[row * cols + col];
+        if (value == (int) FlowNode.OUTLET) {
+            return true;
+        }
+        if (value == -1) {
+            return false;
+        }
+        boolean touchesBound = false;
+        for( int c = -1; c <= 1 && !touchesBound; c++ ) {
+            for( int r = -1; r <= 1; r++ ) {
+                if (c == 0 && r == 0) {
+                    continue;
+                }
+                int newCol = col + c;
+                int newRow = row + r;
+                if (!isInRaster(newCol, newRow) || flow[newRow * cols + newCol] == -1) {
+                    touchesBound = true;
+                    break;
+                }
+            }
+        }
+        if (!touchesBound) {
+            return false;
+        }
+        Direction direction = Direction.forFlow(value);
+        if (direction == null) {
+            return true;
+        }
+        int newCol = col + direction.col;
+        int newRow = row + direction.row;
+        return !isInRaster(newCol, newRow) || flow[newRow * cols + newCol] == -1;
+    }
+
+    /**
+     * Collects the network cells that flow into a cell, in the order of {@link Direction#getOrderedDirs()}.
+     */
+    private int upstreamNetCells( int[] flow, boolean[] isNet, int cell, int[] upstream ) {
+        int col = cell % cols;
+        int row = cell / cols;
+        int num = 0;
+        for( Direction direction : Direction.getOrderedDirs() ) {
+            int newCol = col + direction.col;
+            int newRow = row + direction.row;
+            if (isInRaster(newCol, newRow)) {
+                int index = newRow * cols + newCol;
+                if (isNet[index] && flow[index] == direction.getEnteringFlow()) {
+                    upstream[num++] = index;
+                }
+            }
+        }
+        return num;
+    }
+
+    /**
+     * Adds a link, its cells are given from downstream to upstream.
+     */
+    private int addLink( int[] linkCells, int linkCellsNum, int down, int hack ) {
+        if (linksNum + 1 >= linkStart.length) {
+            linkStart = Arrays.copyOf(linkStart, linkStart.length * 2);
+            downstreamLink = Arrays.copyOf(downstreamLink, linkStart.length);
+            mainUpstreamLink = Arrays.copyOf(mainUpstreamLink, linkStart.length);
+            hackOrder = Arrays.copyOf(hackOrder, linkStart.length);
+        }
+        if (cellsNum + linkCellsNum > cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, cellsNum + linkCellsNum));
+        }
+        for( int i = linkCellsNum - 1; i >= 0; i-- ) {
+            cells[cellsNum++] = linkCells[i];
+        }
+        int link = linksNum++;
+        linkStart[linksNum] = cellsNum;
+        downstreamLink[link] = down;
+        hackOrder[link] = hack;
+        return link;
+    }
+
+    private boolean isInRaster( int col, int row ) {
+        return col >= 0 && col < cols && row >= 0 && row < rows;
+    }
+
+    /**
+     * @return the columns of the rasters the graph was extracted from.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the rows of the rasters the graph was extracted from.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of links.
+     */
+    public int getLinksNum() {
+        return linksNum;
+    }
+
+    /**
+     * Get the cells of a link.
+     *
+     * @param link the link index.
+     * @return the cells as <code>row * cols + col</code>, from upstream to downstream.
+     */
+    public int[] getCells( int link ) {
+        return Arrays.copyOfRange(cells, linkStart[link], linkStart[link + 1]);
+    }
+
+    /**
+     * Get the cells that make the line of a link, i.e. its cells and the junction it flows into.
+     *
+     * @param link the link index.
+     * @return the cells as <code>row * cols + col</code>, from upstream to downstream.
+     */
+    public int[] getLineCells( int link ) {
+        int start = linkStart[link];
+        int end = linkStart[link + 1];
+        int down = downstreamLink[link];
+        int[] lineCells = Arrays.copyOfRange(cells, start, down == -1 ? end : end + 1);
+        if (down != -1) {
+            lineCells[end - start] = cells[linkStart[down]];
+        }
+        return lineCells;
+    }
+
+    /**
+     * @param link the link index.
+     * @return the index of the link downstream or <code>-1</code> if the link is an outlet.
+     */
+    public int getDownstreamLink( int link ) {
+        return downstreamLink[link];
+    }
+
+    /**
+     * @param link the link index.
+     * @return the index of the main upstream link or <code>-1</code> if the link is a source.
+     */
+    public int getMainUpstreamLink( int link ) {
+        return mainUpstreamLink[link];
+    }
+
+    /**
+     * @param link the link index.
+     * @return the indexes of the links that flow into the link, the main one first.
+     */
+    public int[] getUpstreamLinks( int link ) {
+        return Arrays.copyOfRange(upstreamLinks, upstreamStart[link], upstreamStart[link + 1]);
+    }
+
+    /**
+     * @return the Hack order of every link, 1 for the main channels that reach the outlets.
+     */
+    public int[] getHackOrder() {
+        return hackOrder.clone();
+    }
+
+    /**
+     * Calculate the Strahler order of the links.
+     *
+     * <p>
+     * Sources have order 1, a link fed by links of the same order gets that order + 1,
+     * else it gets the maximum of the orders of the upstream links.
+     * </p>
+     *
+     * @return the Strahler order of every link.
+     */
+    public int[] getStrahler() {
+        int[] strahler = new int[linksNum];
+        for( int link = linksNum - 1; link >= 0; link-- ) {
+            int start = upstreamStart[link];
+            int end = upstreamStart[link + 1];
+            if (start == end) {
+                strahler[link] = 1;
+                continue;
+            }
+            int max = 0;
+            boolean allEqual = true;
+            for( int i = start; i < end; i++ ) {
+                int order = strahler[upstreamLinks[i]];
+                if (i > start && order != strahler[upstreamLinks[start]]) {
+                    allEqual = false;
+                }
+                max = Math.max(max, order);
+            }
+            strahler[link] = allEqual ? max + 1 : max;
+        }
+        return strahler;
+    }
+
+    /**
+     * Calculate the Shreve magnitude of the links, i.e. the number of sources upstream.
+     *
+     * @return the magnitude of every link.
+     */
+    public int[] getMagnitude() {
+        int[] magnitude = new int[linksNum];
+        for( int link = linksNum - 1; link >= 0; link-- ) {
+            if (upstreamStart[link] == upstreamStart[link + 1]) {
+                magnitude[link] = 1;
+            }
+            int down = downstreamLink[link];
+            if (down != -1) {
+                magnitude[down] += magnitude[link];
+            }
+        }
+        return magnitude;
+    }
+
+    /**
+     * Calculate the length of the main stem upstream of every link.
+     *
+     * <p>
+     * This is the Hack length of the last cell of the link, measured along the network
+     * up to the source reached following the main upstream links.
+     * </p>
+     *
+     * @return the length of every link, in the units of the region.
+     */
+    public double[] getMainStemLength() {
+        double[] length = new double[linksNum];
+        for( int link = linksNum - 1; link >= 0; link-- ) {
+            int start = linkStart[link];
+            int end = linkStart[link + 1];
+            double linkLength = 0;
+            for( int i = start + 1; i < end; i++ ) {
+                linkLength += distance(cells[i - 1], cells[i]);
+            }
+            int main = mainUpstreamLink[link];
+            if (main != -1) {
+                linkLength += length[main] + distance(cells[linkStart[main + 1] - 1], cells[start]);
+            }
+            length[link] = linkLength;
+        }
+        return length;
+    }
+
+    private double distance( int cell1, int cell2 ) {
+        double dx = (cell1 % cols - cell2 % cols) * xRes;
+        double dy = (cell1 / cols - cell2 / cols) * yRes;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Burns a value per link into a raster.
+     *
+     * @param linkValues the values of the links.
+     * @return the raster with the values on the network cells and novalues elsewhere.
+     */
+    public WritableRaster toRaster( int[] linkValues ) {
+        WritableRaster raster = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
+                JGTConstants.doubleNovalue);
+        WritableRandomIter iter = CoverageUtilities.getWritableRandomIterator(raster);
+        for( int link = 0; link < linksNum; link++ ) {
+            for( int i = linkStart[link]; i < linkStart[link + 1]; i++ ) {
+                iter.setSample(cells[i] % cols, cells[i] / cols, 0, linkValues[link]);
+            }
+        }
+        iter.done();
+        return raster;
+    }
+
+    /**
+     * Save the graph to a file.
+     *
+     * @param file the file to write.
+     * @throws IOException
+     */
+    public void save( File file ) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a graph from a file.
+     *
+     * @param file the file to read.
+     * @return the graph.
+     * @throws IOException
+     */
+    public static ChannelNetwork load( File file ) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return (ChannelNetwork) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getLocalizedMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the file in which the graph of a network raster is cached.
+     *
+     * @param netPath the path to the network raster.
+     * @return the cache file, next to the raster.
+     */
+    public static File getCacheFile( String netPath ) {
+        return new File(netPath + CACHE_EXTENSION);
+    }
+
+    /**
+     * Read a cached graph, if it is newer than the rasters it was extracted from.
+     *
+     * @param cacheFile the cache file.
+     * @param sources the files of the rasters used to extract the graph.
+     * @return the graph or <code>null</code> if the cache is missing, outdated or unreadable.
+     */
+    public static ChannelNetwork readCache( File cacheFile, File... sources ) {
+        if (!cacheFile.exists()) {
+            return null;
+        }
+        for( File source : sources ) {
+            if (!source.exists() || source.lastModified() >= cacheFile.lastModified()) {
+                return null;
+            }
+        }
+        try {
+            return load(cacheFile);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -17,7 +17,6 @@
  */
 package org.jgrasstools.hortonmachine.modules.network.networkattributes;
 
-import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_DESCRIPTION;
@@ -27,10 +26,12 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIB
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_doHack_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inChannelNetwork_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inDem_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inFlow_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inNet_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inTca_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outChannelNetwork_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outHack_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outNet_DESCRIPTION;
 
@@ -40,7 +41,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -60,10 +60,7 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
-import org.jgrasstools.gears.libs.modules.FlowNode;
-import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.modules.Node;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -113,73 +110,52 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
     @Out
     public GridCoverage2D outHack = null;
 
-    private int cols;
-    private int rows;
-
-    private List<SimpleFeature> networkList = new ArrayList<SimpleFeature>();
-
-    private GridGeometry2D gridGeometry;
+    @Description(OMSNETWORKATTRIBUTESBUILDER_inChannelNetwork_DESCRIPTION)
+    @In
+    public ChannelNetwork inChannelNetwork = null;
 
-    private RandomIter netIter;
+    @Description(OMSNETWORKATTRIBUTESBUILDER_outChannelNetwork_DESCRIPTION)
+    @Out
+    public ChannelNetwork outChannelNetwork = null;
 
     private GeometryFactory gf = GeometryUtilities.gf();
 
-    private SimpleFeatureBuilder networkBuilder;
-
-    private RandomIter tcaIter;
     private int maxHack = 0;
 
-    private WritableRandomIter hackWIter;
-
     private List<NetworkChannel> channels;
 
     @Execute
     public void process() throws Exception {
-        checkNull(inFlow, inNet, inTca);
+        if (inChannelNetwork == null) {
+            checkNull(inFlow, inNet, inTca);
+        } else {
+            checkNull(inFlow);
+        }
         if (!concatOr(outNet == null, doReset)) {
             return;
         }
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
-        cols = regionMap.getCols();
-        rows = regionMap.getRows();
-        gridGeometry = inFlow.getGridGeometry();
-
-        RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
-        tcaIter = CoverageUtilities.getRandomIterator(inTca);
-        netIter = CoverageUtilities.getRandomIterator(inNet);
-
-        WritableRaster hackWR = null;
-        if (doHack) {
-            hackWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-            hackWIter = CoverageUtilities.getWritableRandomIterator(hackWR);
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        GridGeometry2D gridGeometry = inFlow.getGridGeometry();
+
+        ChannelNetwork channelNetwork = inChannelNetwork;
+        if (channelNetwork == null) {
+            RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
+            RandomIter tcaIter = CoverageUtilities.getRandomIterator(inTca);
+            RandomIter netIter = CoverageUtilities.getRandomIterator(inNet);
+            channelNetwork = new ChannelNetwork(flowIter, netIter, tcaIter, regionMap, pm);
+            flowIter.done();
+            tcaIter.done();
+            netIter.done();
+        } else if (channelNetwork.getCols() != cols || channelNetwork.getRows() != rows) {
+            throw new ModelsIllegalargumentException("The channel network doesn't match the region of the flowdirections.",
+                    this, pm);
         }
+        outChannelNetwork = channelNetwork;
 
-        pm.beginTask("Find outlets...", rows); //$NON-NLS-1$
-        List<FlowNode> exitsList = new ArrayList<FlowNode>();
-        for( int r = 0; r < rows; r++ ) {
-            for( int c = 0; c < cols; c++ ) {
-                double netValue = netIter.getSampleDouble(c, r, 0);
-                if (isNovalue(netValue)) {
-                    // we make sure that we pick only outlets that are on the net
-                    continue;
-                }
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isMarkedAsOutlet()) {
-                    exitsList.add(flowNode);
-                } else if (flowNode.touchesBound() && flowNode.isValid()) {
-                    // check if the flow exits
-                    Node goDownstream = flowNode.goDownstream();
-                    if (goDownstream == null) {
-                        // flowNode is exit
-                        exitsList.add(flowNode);
-                    }
-                }
-            }
-            pm.worked(1);
-        }
-        pm.done();
-        
-        if (exitsList.size()==0) {
+        int linksNum = channelNetwork.getLinksNum();
+        if (linksNum == 0) {
             throw new ModelsIllegalargumentException("No outlet has been found in the network. Check your data.", this, pm);
         }
 
@@ -197,46 +173,45 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
             b.add(NetworkChannel.ENDELEVNAME, Double.class);
         }
         SimpleFeatureType type = b.buildFeatureType();
-        networkBuilder = new SimpleFeatureBuilder(type);
-
-        pm.beginTask("Extract vectors...", exitsList.size());
-        for( FlowNode exitNode : exitsList ) {
-            /*
-             * - first hack order is 1
-             */
-            handleTrail(exitNode, null, 1);
-            pm.worked(1);
-        }
-        pm.done();
+        SimpleFeatureBuilder networkBuilder = new SimpleFeatureBuilder(type);
 
-        outNet = new DefaultFeatureCollection();
-        ((DefaultFeatureCollection) outNet).addAll(networkList);
+        int[] hackOrder = channelNetwork.getHackOrder();
+        int[] strahler = channelNetwork.getStrahler();
 
         /*
-         * connect channels
+         * create the lines, the links are ordered so that the
+         * downstream channel is always created before the upstream ones
          */
+        List<SimpleFeature> networkList = new ArrayList<SimpleFeature>();
         channels = new ArrayList<NetworkChannel>();
-        for( SimpleFeature network : networkList ) {
-            channels.add(new NetworkChannel(network));
-        }
-        pm.beginTask("Connect channels...", channels.size());
-        for( NetworkChannel channel : channels ) {
-            for( NetworkChannel checkChannel : channels ) {
-                if (channel.equals(checkChannel)) {
-                    continue;
+        NetworkChannel[] linkChannels = new NetworkChannel[linksNum];
+        pm.beginTask("Extract vectors...", linksNum);
+        for( int link = 0; link < linksNum; link++ ) {
+            int[] lineCells = channelNetwork.getLineCells(link);
+            if (lineCells.length >= 2) {
+                Coordinate[] lineCoordinates = new Coordinate[lineCells.length];
+                for( int i = 0; i < lineCells.length; i++ ) {
+                    lineCoordinates[i] = CoverageUtilities.coordinateFromColRow(lineCells[i] % cols, lineCells[i] / cols,
+                            gridGeometry);
                 }
-                channel.checkAndAdd(checkChannel);
+                SimpleFeature netFeature = createLine(networkBuilder, lineCoordinates, hackOrder[link], strahler[link]);
+                networkList.add(netFeature);
+
+                NetworkChannel channel = new NetworkChannel(netFeature);
+                int downstreamLink = channelNetwork.getDownstreamLink(link);
+                if (downstreamLink != -1 && linkChannels[downstreamLink] != null) {
+                    channel.setNext(linkChannels[downstreamLink]);
+                    linkChannels[downstreamLink].addPrevious(channel);
+                }
+                linkChannels[link] = channel;
+                channels.add(channel);
             }
             pm.worked(1);
         }
         pm.done();
 
-        /*
-         * calculate strahler
-         */
-        pm.beginTask("Calculate Strahler...", IJGTProgressMonitor.UNKNOWN);
-        calculateStrahler();
-        pm.done();
+        outNet = new DefaultFeatureCollection();
+        ((DefaultFeatureCollection) outNet).addAll(networkList);
 
         /*
          * calculate pfaf
@@ -245,7 +220,8 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
         calculatePfafstetter();
         pm.done();
 
-        if (hackWIter != null) {
+        if (doHack) {
+            WritableRaster hackWR = channelNetwork.toRaster(hackOrder);
             outHack = CoverageUtilities.buildCoverage("hack", hackWR, regionMap, inFlow.getCoordinateReferenceSystem());
         }
     }
@@ -299,168 +275,15 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
         }
     }
 
-    private void calculateStrahler() {
-        // calculate Strahler
-        List<NetworkChannel> sourceChannels = new ArrayList<NetworkChannel>();
-        for( NetworkChannel channel : channels ) {
-            if (channel.isSource()) {
-                sourceChannels.add(channel);
-                // set start
-                channel.setStrahler(1);
-            }
-        }
-
-        List<NetworkChannel> nextsList = new ArrayList<NetworkChannel>();
-        List<NetworkChannel> toKeepList = new ArrayList<NetworkChannel>();
-        while( true ) {
-            sourceChannels.addAll(nextsList);
-            nextsList.clear();
-            sourceChannels.addAll(toKeepList);
-            toKeepList.clear();
-            for( NetworkChannel sourceChannel : sourceChannels ) {
-                NetworkChannel nextChannel = sourceChannel.getNextChannel();
-                if (nextChannel != null) {
-                    if (!nextsList.contains(nextChannel))
-                        nextsList.add(nextChannel);
-                }
-            }
-            if (nextsList.size() == 0) {
-                break;
-            }
-
-            for( NetworkChannel networkChannel : nextsList ) {
-                List<NetworkChannel> previousChannels = networkChannel.getPreviousChannels();
-                if (previousChannels.size() == 0) {
-                    throw new RuntimeException();
-                }
-                int maxStrahler = 0;
-                boolean allEqual = true;
-                int previousStrahler = -1;
-                boolean doContinue = false;
-                for( NetworkChannel channel : previousChannels ) {
-                    int strahler = channel.getStrahler();
-                    if (strahler < 0) {
-                        // has not been set yet, keep it
-                        toKeepList.add(channel);
-                        doContinue = true;
-                        break;
-                    } else {
-                        if (strahler > maxStrahler)
-                            maxStrahler = strahler;
-                        if (previousStrahler > 0) {
-                            // was set already
-                            if (previousStrahler != strahler) {
-                                allEqual = false;
-                            }
-                        }
-                        previousStrahler = strahler;
-                    }
-                }
-                if (doContinue) {
-                    continue;
-                }
-                if (allEqual) {
-                    networkChannel.setStrahler(maxStrahler + 1);
-                } else {
-                    networkChannel.setStrahler(maxStrahler);
-                }
-            }
-
-            sourceChannels.clear();
-        }
-    }
-
-    private void handleTrail( FlowNode runningNode, Coordinate startCoordinate, int hackIndex ) {
-        List<Coordinate> lineCoordinatesList = new ArrayList<Coordinate>();
-        if (startCoordinate != null) {
-            lineCoordinatesList.add(startCoordinate);
-            // write hack if needed
-            if (doHack)
-                runningNode.setValueInMap(hackWIter, hackIndex);
-        }
-        // if there are entering nodes
-        while( runningNode.getEnteringNodes().size() > 0 ) {
-            int col = runningNode.col;
-            int row = runningNode.row;
-            Coordinate coord = CoverageUtilities.coordinateFromColRow(col, row, gridGeometry);
-
-            double netValue = netIter.getSampleDouble(col, row, 0);
-            if (!isNovalue(netValue)) {
-                // if a net value is available, then it needs to be vector net
-                lineCoordinatesList.add(coord);
-                // write hack if needed
-                if (doHack)
-                    runningNode.setValueInMap(hackWIter, hackIndex);
-            } else {
-                /*
-                 * the line is finished 
-                 */
-                if (lineCoordinatesList.size() < 2) {
-                    throw new RuntimeException();
-                }
-                // create a line and finish this trail
-                createLine(lineCoordinatesList, hackIndex);
-                break;
-            }
-
-            List<FlowNode> enteringNodes = runningNode.getEnteringNodes();
-            List<FlowNode> checkedNodes = new ArrayList<FlowNode>();
-            // we need to check which ones are really net nodes
-            for( FlowNode tmpNode : enteringNodes ) {
-                int tmpCol = tmpNode.col;
-                int tmpRow = tmpNode.row;
-                double tmpNetValue = netIter.getSampleDouble(tmpCol, tmpRow, 0);
-                if (!isNovalue(tmpNetValue)) {
-                    checkedNodes.add(tmpNode);
-                }
-            }
-            if (checkedNodes.size() == 1) {
-                // normal, get the next upstream node and go on
-                runningNode = checkedNodes.get(0);
-            } else if (checkedNodes.size() == 0) {
-                // it was an exit
-                createLine(lineCoordinatesList, hackIndex);
-                break;
-            } else if (checkedNodes.size() > 1) {
-
-                createLine(lineCoordinatesList, hackIndex);
-
-                if (tcaIter == null) {
-                    // we just extract the vector line
-                    for( FlowNode flowNode : checkedNodes ) {
-                        handleTrail(flowNode, coord, hackIndex + 1);
-                    }
-                } else {
-                    // we want also hack numbering and friends
-                    FlowNode mainUpstream = runningNode.getUpstreamTcaBased(tcaIter, null);
-                    // the main channel keeps the same index
-                    handleTrail(mainUpstream, coord, hackIndex);
-                    // the others jump up one
-                    for( FlowNode flowNode : checkedNodes ) {
-                        if (!flowNode.equals(mainUpstream)) {
-                            handleTrail(flowNode, coord, hackIndex + 1);
-                        }
-                    }
-                }
-                break;
-            } else {
-                throw new RuntimeException();
-            }
-        }
-    }
-
-    private void createLine( List<Coordinate> lineCoordinatesList, int hackindex ) {
-        if (lineCoordinatesList.size() < 2) {
-            return;
-        }
+    private SimpleFeature createLine( SimpleFeatureBuilder networkBuilder, Coordinate[] lineCoordinates, int hackindex,
+            int strahler ) {
         if (hackindex > maxHack) {
             maxHack = hackindex;
         }
-        LineString newNetLine = gf.createLineString(lineCoordinatesList.toArray(new Coordinate[0]));
-        newNetLine = (LineString) newNetLine.reverse();
+        LineString newNetLine = gf.createLineString(lineCoordinates);
         Object[] values;
         if (inDem == null) {
-            values = new Object[]{newNetLine, hackindex, 0, "-"};
+            values = new Object[]{newNetLine, hackindex, strahler, "-"};
         } else {
             Point startPoint = newNetLine.getStartPoint();
             Point endPoint = newNetLine.getEndPoint();
@@ -472,13 +295,10 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
             p.setLocation(endPoint.getX(), endPoint.getY());
             inDem.evaluate(p, value);
             double endElev = value[0];
-            values = new Object[]{newNetLine, hackindex, 0, "-", startElev, endElev};
+            values = new Object[]{newNetLine, hackindex, strahler, "-", startElev, endElev};
         }
         networkBuilder.addAll(values);
-        SimpleFeature netFeature = networkBuilder.buildFeature(null);
-        synchronized (networkList) {
-            networkList.add(netFeature);
-        }
+        return networkBuilder.buildFeature(null);
     }
 
 }
\ No newline at end of file
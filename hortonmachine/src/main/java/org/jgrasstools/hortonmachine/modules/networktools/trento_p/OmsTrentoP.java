@@ -59,6 +59,8 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pTole
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_tDTp_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_tMax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_tpMaxCalibration_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMaxThreads_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_doWarmStart_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_tpMax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_tpMin_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.modules.networktools.trento_p.utils.Constants.DEFAULT_ACCURACY;
@@ -287,6 +289,14 @@ public class OmsTrentoP extends JGTModel {
     @In
     public Integer tpMaxCalibration = null;
 
+    @Description(OMSTRENTOP_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSTRENTOP_doWarmStart_DESCRIPTION)
+    @In
+    public boolean doWarmStart = false;
+
     @Description(OMSTRENTOP_dt_DESCRIPTION)
     @Unit("minutes")
     @In
@@ -399,7 +409,8 @@ public class OmsTrentoP extends JGTModel {
             outFillDegree = new LinkedHashMap<DateTime, HashMap<Integer, double[]>>();
             // initialize the NetworkCalibration.
             network = new NetworkCalibration.Builder(pm, networkPipes, dt, inRain, outDischarge, outFillDegree, warningBuilder,
-                    tpMaxCalibration, foundTp).celerityFactor(pCelerityFactor).tMax(tMax).build();
+                    tpMaxCalibration, foundTp).celerityFactor(pCelerityFactor).tMax(tMax).threads(pMaxThreads)
+                    .warmStart(doWarmStart).build();
             network.geoSewer();
             outTpMax = ((NetworkCalibration) network).getTpMax();
 
@@ -32,12 +32,21 @@ import static org.jgrasstools.hortonmachine.modules.networktools.trento_p.utils.
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
 import org.jgrasstools.gears.utils.sorting.QuickSortAlgorithm;
@@ -56,6 +65,14 @@ import static org.jgrasstools.hortonmachine.modules.networktools.trento_p.utils.
  * It contains a geosewere method which verify the net..
  * 
  * </p>
+ * <p>
+ * The drainage tree of the network is scanned once into index arrays. When the rain
+ * time that gives the maximum discharge is searched, the rain durations are evaluated
+ * in batches by a fixed thread pool and the results are consumed in the order of the
+ * durations, so that the search stops exactly where the serial one would. With the warm
+ * start every duration needs the delays of the previous one, so the durations are then
+ * evaluated one after the other.
+ * </p>
  * 
  * @author Daniele Andreis, Riccardo Rigon, David Tamanini
  * 
@@ -95,10 +112,6 @@ public class NetworkCalibration implements Network {
      */
     private final HashMap<DateTime, double[]> inRain;
 
-    /*
-     * Flag to exit if a pipe is full.
-     */
-    boolean isFill = false;
     /*
      * Dati relativi alla rete
      */
@@ -150,14 +163,34 @@ public class NetworkCalibration implements Network {
      * Is the number of data rain to use.
      */
     private int nTime;
-    /*
-     * True if there is an infinite loop.
-     */
-    private boolean infiniteLoop = false;
     /*
      * Max number of iteration to search the solution.
      */
     private final static int MAX_NUMBER_ITERATION = 1000;
+    /*
+     * The number of rain durations evaluated in parallel.
+     */
+    private final int threads;
+    /*
+     * If true, the delays of a rain duration start from the ones of the previous duration.
+     */
+    private final boolean warmStart;
+    /*
+     * The indexes of the pipes, in order of increasing magnitude.
+     */
+    private int[] magnitudeOrder;
+    /*
+     * The magnitude of the pipes, in the order of magnitudeOrder.
+     */
+    private double[] sortedMagnitude;
+    /*
+     * For each pipe, the pipes that drain in it, directly or not.
+     */
+    private int[][] upstreamPipes;
+    /*
+     * For each pipe and each of its upstream pipes, the pipes the water flows through in between.
+     */
+    private int[][][] delayPaths;
 
     /**
         * Builder for the Calibration class.
@@ -210,6 +243,14 @@ public class NetworkCalibration implements Network {
          *  max number of time step.
          */
         private int tMax = (int) DEFAULT_TMAX;
+        /*
+         * Number of threads.
+         */
+        private int threads = 1;
+        /*
+         * Flag to start the delays from the ones of the previous rain duration.
+         */
+        private boolean warmStart = false;
         /**
          * Initialize the object with the needed parameters
          * 
@@ -264,6 +305,35 @@ public class NetworkCalibration implements Network {
             return this;
         }
 
+        /**
+         * Set the number of rain durations to evaluate in parallel.
+         * 
+         * @param threads
+         *            the number of threads.
+         */
+        public Builder threads( int threads ) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Start the delays of every rain duration from the converged ones of the previous duration.
+         * 
+         * <p>
+         * This reduces the iterations, but the delays converge to slightly different values
+         * (inside of the tolerance), so the results are not identical to the ones of a cold start.
+         * The durations are evaluated one after the other, whatever the number of threads, so
+         * that every duration starts from the same delays.
+         * </p>
+         * 
+         * @param warmStart
+         *            the flag.
+         */
+        public Builder warmStart( boolean warmStart ) {
+            this.warmStart = warmStart;
+            return this;
+        }
+
         /**
          * Create a NetworkCalibration Object.
          * 
@@ -289,6 +359,8 @@ public class NetworkCalibration implements Network {
         this.strBuilder = builder.strBuilder;
         this.tpMaxCalibration = builder.tpMaxCalibration;
         this.foundMaxrainTime = builder.foundMaxrainTime;
+        this.threads = Math.max(1, builder.threads);
+        this.warmStart = builder.warmStart;
         if (builder.networkPipe != null) {
             this.networkPipes = builder.networkPipe;
         } else {
@@ -370,6 +442,148 @@ public class NetworkCalibration implements Network {
         return matrix;
     }
 
+
+    /*
+     * The state of the evaluation of the network for a single rain duration.
+     */
+    private static class DurationRun {
+        /*
+         * The rain duration.
+         */
+        final int tp;
+        final double[][] timeDischarge;
+        final double[][] timeFillDegree;
+        /*
+         * The converged delay of each pipe.
+         */
+        final double[] cDelays;
+        /*
+         * The first attempt delay of each pipe, null to start from 1 minute.
+         */
+        final double[] initialDelays;
+        /*
+         * The warnings of this duration.
+         */
+        final StringBuilder warnings = new StringBuilder();
+        final IJGTProgressMonitor pm;
+        /*
+         * Flag to exit if a pipe is full.
+         */
+        boolean isFill = false;
+        /*
+         * True if there is an infinite loop.
+         */
+        boolean infiniteLoop = false;
+        /*
+         * The max discharge.
+         */
+        double qMax;
+
+        DurationRun( int tp, double[][] timeDischarge, double[][] timeFillDegree, int pipesNum, double[] initialDelays,
+                IJGTProgressMonitor pm ) {
+            this.tp = tp;
+            this.timeDischarge = timeDischarge;
+            this.timeFillDegree = timeFillDegree;
+            this.cDelays = new double[pipesNum];
+            this.initialDelays = initialDelays;
+            this.pm = pm;
+        }
+
+        double initialDelay( int k ) {
+            if (initialDelays != null && initialDelays[k] > 0) {
+                return initialDelays[k];
+            }
+            return 1;
+        }
+    }
+
+    /**
+     * Scan the drainage tree of the network.
+     * 
+     * <p>
+     * The pipes are sorted by magnitude and, for each pipe, the pipes that drain in it
+     * are collected together with the paths the water follows to reach it. This doesn't depend
+     * on the rain, so it is done once for all the rain durations.
+     * </p>
+     */
+    private void buildDrainageTree() {
+        int pipesNum = networkPipes.length;
+        double[] magnitude = new double[pipesNum];
+        double[] one = new double[pipesNum];
+        double[] two = new double[pipesNum];
+        for( int i = 0; i < pipesNum; i++ ) {
+            /* Indice degli stati */
+            one[i] = i;
+            /* Indice degli stati riceventi, compresa almeno un'uscita */
+            two[i] = networkPipes[i].getIndexPipeWhereDrain();
+        }
+        /* Calcola la magnitude di ciascun stato */
+        Utility.pipeMagnitude(magnitude, two, pm);
+
+        /*
+         * Ordina gli elementi del vettore magnitude in ordine crescente, e
+         * posiziona nello stesso ordine gli elementi di one
+         */
+        QuickSortAlgorithm t = new QuickSortAlgorithm(pm);
+        t.sort(magnitude, one);
+
+        magnitudeOrder = new int[pipesNum];
+        for( int i = 0; i < pipesNum; i++ ) {
+            magnitudeOrder[i] = (int) one[i];
+        }
+        sortedMagnitude = magnitude;
+        upstreamPipes = new int[pipesNum][];
+        delayPaths = new int[pipesNum][][];
+
+        for( int k = 0; k < pipesNum; k++ ) {
+            int l = magnitudeOrder[k];
+            if (sortedMagnitude[k] <= 1) {
+                upstreamPipes[l] = new int[0];
+                delayPaths[l] = new int[0][];
+                continue;
+            }
+            /*
+             * the pipes of lower magnitude that reach l following the water
+             */
+            List<Integer> upstream = new ArrayList<Integer>();
+            for( int j = 0; j < k; j++ ) {
+                int i = magnitudeOrder[j];
+                int ind = i;
+                while( networkPipes[ind].getIdPipeWhereDrain() != OUT_ID_PIPE ) {
+                    ind = networkPipes[ind].getIndexPipeWhereDrain();
+                    if (ind == l) {
+                        upstream.add(i);
+                        break;
+                    }
+                }
+            }
+            int[] upstreamArray = new int[upstream.size()];
+            int[][] paths = new int[upstream.size()][];
+            for( int j = 0; j < upstreamArray.length; j++ ) {
+                upstreamArray[j] = upstream.get(j);
+                /*
+                 * Area l is not included in delays
+                 */
+                List<Integer> path = new ArrayList<Integer>();
+                int ind = upstreamArray[j];
+                while( networkPipes[ind].getIndexPipeWhereDrain() != l ) {
+                    ind = networkPipes[ind].getIndexPipeWhereDrain();
+                    path.add(ind);
+                    if (path.size() >= pipesNum) {
+                        pm.errorMessage(msg.message("trentoP.error.incorrectmatrix"));
+                        throw new ArithmeticException(msg.message("trentoP.error.incorrectmatrix"));
+                    }
+                }
+                paths[j] = new int[path.size()];
+                for( int p = 0; p < paths[j].length; p++ ) {
+                    paths[j][p] = path.get(p);
+                }
+            }
+            upstreamPipes[l] = upstreamArray;
+            delayPaths[l] = paths;
+        }
+    }
+
     /**
      * verify of the no-head pipes.
      * 
@@ -378,21 +592,21 @@ public class NetworkCalibration implements Network {
      * </p>
      * 
      * @param k  ID of the pipe where evaluate the discharge.
-     * @param cDelays delay matrix (for the evalutation of the flow wave).
-     * @param net matrix that contains value of the network.
+     * @param run the state of the rain duration.
      * @return 
      */
-    private double internalPipeVerify( int k, double[] cDelays, double[][] net, double[][] timeDischarge,
-            double[][] timeFillDegree, int tp ) {
+    private double internalPipeVerify( int k, DurationRun run ) {
 
         int num;
         double localdelay, olddelay, qMax, B, known, theta, u;
         double[][] qPartial;
 
+        double[][] timeDischarge = run.timeDischarge;
+        int[] upstream = upstreamPipes[k];
         qPartial = new double[timeDischarge.length][timeDischarge[0].length];
-        calculateDelays(k, cDelays, net);
+        double[] delays = calculateDelays(k, run.cDelays);
         // First attempt local delay [min]
-        localdelay = 1;
+        localdelay = run.initialDelay(k);
         double accuracy = networkPipes[0].getAccuracy();
         int jMax = networkPipes[0].getjMax();
         double minG = networkPipes[0].getMinG();
@@ -403,44 +617,46 @@ public class NetworkCalibration implements Network {
             olddelay = localdelay;
             qMax = 0;
             // Updates delays
-            for( int i = 0; i < net.length; i++ ) {
-                net[i][2] += localdelay;
+            for( int i = 0; i < delays.length; i++ ) {
+                delays[i] += localdelay;
             };
 
-            for( int j = 0; j < net.length; ++j ) {
-                num = (int) net[j][0];
-                getHydrograph(num, qPartial, olddelay, net[j][2], tp);
+            for( int j = 0; j < upstream.length; ++j ) {
+                num = upstream[j];
+                getHydrograph(num, qPartial, olddelay, delays[j], run.tp);
 
             }
 
-            getHydrograph(k, qPartial, olddelay, 0, tp);
-            qMax = ModelsEngine.sumDoublematrixColumns(k, qPartial, timeDischarge, 0, qPartial[0].length - 1, pm);
+            getHydrograph(k, qPartial, olddelay, 0, run.tp);
+            qMax = ModelsEngine.sumDoublematrixColumns(k, qPartial, timeDischarge, 0, qPartial[0].length - 1, run.pm);
             if (qMax <= 1)
                 qMax = 1;
             // Resets delays
-            for( int i = 0; i < net.length; i++ ) {
-                net[i][2] -= localdelay;
+            for( int i = 0; i < delays.length; i++ ) {
+                delays[i] -= localdelay;
             }
-            calculateFillDegree(k, timeDischarge, timeFillDegree);
+            calculateFillDegree(k, run);
             B = qMax / (CUBICMETER2LITER * networkPipes[k].getKs() * sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
             known = (B * TWO_THIRTEENOVERTHREE) / pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
+            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, run.pm, run.warnings);
             // Average velocity in pipe [ m / s ]
             u = qMax * 80 / (pow(networkPipes[k].diameterToVerify, 2) * (theta - sin(theta)));
             localdelay = networkPipes[k].getLenght() / (celerityfactor1 * u * MINUTE2SEC);
             count++;
             // verify if it's an infiniteloop.
             if (count > MAX_NUMBER_ITERATION) {
-                infiniteLoop = true;
+                run.infiniteLoop = true;
                 throw new ArithmeticException();
             }
         } while( abs(localdelay - olddelay) / olddelay >= tolerance );
-        cDelays[k] = localdelay;
+        run.cDelays[k] = localdelay;
         return qMax;
 
     }
 
-    private void calculateFillDegree( int k, double[][] timeDischarge, double[][] timeFillDegree ) {
+    private void calculateFillDegree( int k, DurationRun run ) {
+        double[][] timeDischarge = run.timeDischarge;
+        double[][] timeFillDegree = run.timeFillDegree;
         double accuracy = networkPipes[0].getAccuracy();
         int jMax = networkPipes[0].getjMax();
         double minG = networkPipes[0].getMinG();
@@ -454,7 +670,7 @@ public class NetworkCalibration implements Network {
             if (q > NumericsUtilities.machineFEpsilon()) {
                 double B = q / (CUBICMETER2LITER * networkPipes[k].getKs() * sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
                 double known = (B * TWO_THIRTEENOVERTHREE) / pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-                double theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
+                double theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, run.pm, run.warnings);
                 timeFillDegree[i][k] = angleToFillDegree(theta);
             } else {
                 timeFillDegree[i][k] = 0.0;
@@ -464,39 +680,23 @@ public class NetworkCalibration implements Network {
     }
 
     /**
-     * Calcola il ritardo della tubazione k.
+     * Calcola il ritardo delle tubazioni a monte della tubazione k.
      * 
      * @param k indice della tubazione.
      * @param cDelays matrice dei ritardi.
-     * @param net  matrice che contiene la sottorete.
+     * @return il ritardo di ciascuna tubazione a monte, nell'ordine di upstreamPipes.
      */
-
-    private void calculateDelays( int k, double[] cDelays, double[][] net )
-
-    {
-
-        double t;
-        int ind, r = 1;
-        for( int j = 0; j < net.length; ++j ) {
-            t = 0;
-            r = 1;
-            ind = (int) net[j][0];
-            /*
-             * Area k is not included in delays
-             */
-            while( networkPipes[ind].getIndexPipeWhereDrain() != k ) {
-                ind = networkPipes[ind].getIndexPipeWhereDrain();
+    private double[] calculateDelays( int k, double[] cDelays ) {
+        int[][] paths = delayPaths[k];
+        double[] delays = new double[paths.length];
+        for( int j = 0; j < paths.length; ++j ) {
+            double t = 0;
+            for( int ind : paths[j] ) {
                 t += cDelays[ind];
-                r++;
             }
-
-            if (r > networkPipes.length) {
-                pm.errorMessage(msg.message("trentoP.error.incorrectmatrix"));
-                throw new ArithmeticException(msg.message("trentoP.error.incorrectmatrix"));
-            }
-            net[j][2] = t;
+            delays[j] = t;
         }
-
+        return delays;
     }
 
     /**
@@ -564,10 +764,10 @@ public class NetworkCalibration implements Network {
      * 
      * @param k
      *            ID of the pipe where evaluate the discharge.
-     * @param cDelays
-     *            delay matrix (for the evalutation of the flow wave).
+     * @param run
+     *            the state of the rain duration.
      */
-    private double headPipeVerify( int k, double[] cDelays, double[][] timeDischarge, double[][] timeFillDegree, int tp ) {
+    private double headPipeVerify( int k, DurationRun run ) {
 
         double olddelay = 0;
         double qMax = 0;
@@ -576,7 +776,7 @@ public class NetworkCalibration implements Network {
         double theta = 0;
         double u = 0;
         /* First attempt local delay [min] */
-        double localdelay = 1;
+        double localdelay = run.initialDelay(k);
         double accuracy = networkPipes[0].getAccuracy();
         int jMax = networkPipes[0].getjMax();
         double minG = networkPipes[0].getMinG();
@@ -585,14 +785,14 @@ public class NetworkCalibration implements Network {
         int count = 0;
         do {
             olddelay = localdelay;
-            qMax = getHydrograph(k, timeDischarge, olddelay, 0, tp);
+            qMax = getHydrograph(k, run.timeDischarge, olddelay, 0, run.tp);
             if (qMax <= 1) {
                 qMax = 1;
             }
-            calculateFillDegree(k, timeDischarge, timeFillDegree);
+            calculateFillDegree(k, run);
             B = qMax / (CUBICMETER2LITER * networkPipes[k].getKs() * Math.sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
             known = (B * TWO_THIRTEENOVERTHREE) / Math.pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
+            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, run.pm, run.warnings);
             double tmp1 = 0;
             double tmp2 = 0;
             if (k - 1 >= 0) {
@@ -606,13 +806,13 @@ public class NetworkCalibration implements Network {
             localdelay = tmp2 / (celerityfactor1 * u * MINUTE2SEC);
             count++;
             if (count > MAX_NUMBER_ITERATION) {
-                infiniteLoop = true;
+                run.infiniteLoop = true;
                 throw new ArithmeticException();
             }
 
         } while( Math.abs(localdelay - olddelay) / olddelay >= tolerance );
 
-        cDelays[k] = localdelay;
+        run.cDelays[k] = localdelay;
         return qMax;
     }
 
@@ -667,35 +867,91 @@ public class NetworkCalibration implements Network {
      */
     @Override
     public void geoSewer() throws Exception {
+        buildDrainageTree();
         if (!foundMaxrainTime) {
-            evaluateDischarge(lastTimeDischarge, lastTimeFillDegree, tpMaxCalibration);
+            DurationRun run = new DurationRun(tpMaxCalibration, lastTimeDischarge, lastTimeFillDegree, networkPipes.length,
+                    null, pm);
+            evaluateDischarge(run);
+            strBuilder.append(run.warnings);
         } else {
             /*
              *  start to evaluate the discharge from 15 minutes,evaluate the nearsted value to 15 minutes.
              */
             int minTime = (int) ModelsEngine.approximate2Multiple(INITIAL_TIME, dt);
-            double qMax = 0;
+            List<Integer> durations = new ArrayList<Integer>();
             for( int i = minTime; i < tpMaxCalibration; i = i + dt ) {
-                tpMax = i;
-                double[][] timeDischarge = createMatrix();
-                double[][] timeFillDegree = createMatrix();
-                double q = evaluateDischarge(timeDischarge, timeFillDegree, i);
-                if (q > qMax) {
-                    qMax = q;
-                    lastTimeDischarge = timeDischarge;
-                    lastTimeFillDegree = timeFillDegree;
-                } else if (q < qMax) {
-                    break;
-                }
-                if (isFill) {
-                    break;
+                durations.add(i);
+            }
+            double qMax = 0;
+            double[] lastDelays = null;
+            int next = 0;
+            search: while( next < durations.size() ) {
+                // a warm started duration needs the delays of the previous one
+                int batch = warmStart ? 1 : Math.min(threads, durations.size() - next);
+                List<DurationRun> runs = evaluateDurations(durations.subList(next, next + batch), warmStart ? lastDelays : null);
+                for( DurationRun run : runs ) {
+                    strBuilder.append(run.warnings);
+                    tpMax = run.tp;
+                    if (run.qMax > qMax) {
+                        qMax = run.qMax;
+                        lastTimeDischarge = run.timeDischarge;
+                        lastTimeFillDegree = run.timeFillDegree;
+                    } else if (run.qMax < qMax) {
+                        break search;
+                    }
+                    if (run.isFill) {
+                        break search;
+                    }
+                    lastDelays = run.cDelays;
                 }
+                next += batch;
             }
 
         }
         getNetData();
 
     }
+
+    /*
+     * Evaluate a batch of rain durations, in parallel if there is more than one.
+     */
+    private List<DurationRun> evaluateDurations( List<Integer> durations, double[] initialDelays ) throws Exception {
+        final List<DurationRun> runs = new ArrayList<DurationRun>();
+        IJGTProgressMonitor runMonitor = durations.size() == 1 ? pm : new DummyProgressMonitor();
+        for( Integer tp : durations ) {
+            runs.add(new DurationRun(tp, createMatrix(), createMatrix(), networkPipes.length, initialDelays, runMonitor));
+        }
+        if (runs.size() == 1) {
+            evaluateDischarge(runs.get(0));
+            return runs;
+        }
+
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(runs.size());
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( final DurationRun run : runs ) {
+                futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        evaluateDischarge(run);
+                        return null;
+                    }
+                }));
+            }
+            for( Future<Object> future : futures ) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new ModelsRuntimeException(cause.getMessage(), this);
+        } finally {
+            fixedThreadPool.shutdownNow();
+        }
+        return runs;
+    }
+
     /*
      * Fill the two output HashMap.
      */
@@ -740,176 +996,32 @@ public class NetworkCalibration implements Network {
             fillDegree.put(tmp, tmpHMFill);
         }
     }
-    /**
-     * Compila la mantrice net con tutte i dati del sottobacino con chiusura nel
-     * tratto che si sta analizzando, e restituisce la sua superfice
-     * 
-     * @param k tratto analizzato del sottobacino chiuso in l.
-     * @param l chiusura del bacino.
-     * @param one indice dei versanti.
-     * @param net sottobacino che si chiude in l.
-     */
-
-    private double scanNetwork( int k, int l, double[] one, double[][] net ) {
-
-        int ind;
-        /*
-         * t Ritardo accumulato dall'onda prima di raggiungere il tratto si sta
-         * dimensionando.
-         */
-        double t;
-        /*
-         * Distanza percorsa dall'acqua dall'area dove e' caduta per raggiungere
-         * l'ingresso del tratto che si sta dimensionando.
-         */
-        double length;
-        /*
-         * Superfice del sottobacino con chiusura nel tratto che si sta
-         * analizzando.
-         */
-        double totalarea = 0;
-
-        int r = 0;
-        int i = 0;
-        /*
-         * In one gli stati sono in ordine di magmitude crescente. Per ogni
-         * stato di magnitude inferiore a quella del tratto l che si sta
-         * progettando.
-         */
-        for( int j = 0; j < k; j++ ) {
-
-            /* La portata e valutata all'uscita di ciascun tratto */
-            t = 0;
-            /*
-             * ID dello lo stato di magnitude inferiore a quello del tratto che
-             * si sta progettando.
-             */
-            i = (int) one[j];
-            ind = i;
-            // la lunghezza del tubo precedentemente progettato
-            length = networkPipes[ind].getLenght();
-
-            // seguo il percorso dell'acqua finch� non si incontra l'uscita.
-            while( networkPipes[ind].getIdPipeWhereDrain() != OUT_ID_PIPE ) {
 
-                // lo stato dove drena a sua volta.
-                ind = networkPipes[ind].getIndexPipeWhereDrain();
-                /*
-                 * se lo stato drena direttamente in quello che si sta
-                 * progettando
-                 */
-                if (ind == l) {
-                    /*
-                     * ID dello stato che drena in l, piu o meno direttamente.
-                     */
-                    net[r][0] = i;
-                    /*
-                     * lunghezza del percorsa dall'acqua prima di raggiungere lo
-                     * stato l che si sta progettando
-                     */
-                    net[r][1] = length + networkPipes[l].getLenght();
-
-                    /*
-                     * Ritardo accumulato dall'onda di piena formatasi in uno
-                     * degli stati a monte, prima di raggiungere il tratto l che
-                     * si sta progettando
-                     */
-                    net[r][2] = t;
-
-                    /*
-                     * area di tutti gli stati a monte che direttamente o
-                     * indirettamente drenano in l
-                     */
-                    totalarea += networkPipes[i].getDrainArea();
-                    r++;
-
-                    break;
-                }
-
-            }
-            /*
-             * viene incrementato solo se l'area drena in l quindi non puo'
-             * superare net->nrh
-             */
-            if (r > net.length)
-                break;
-        }
-
-        // area degli stati a monte che drenano in l, l compreso
-
-        totalarea += networkPipes[l].getDrainArea();
-
-        return totalarea;
-
-    }
-
-    private double evaluateDischarge( double[][] timeDischarge, double[][] timeFillDegree, int tp ) {
+    private double evaluateDischarge( DurationRun run ) {
         /* l Tratto che si sta progettando. */
         int l;
         /*
-         * matrice che per ciascun area non di testa, contiene i dati geometrici
-         * degli stati a monte, che direttamente o indirettamente, drenano in
-         * esso
-         */
-        double[][] net;
-        /*
-         * contiene la magnitude dei vari stati.
-         */
-        double[] magnitude = new double[networkPipes.length];
-        /*
-         * vettore che contiene l'indice dei versanti.
+         * contiene la magnitude dei vari stati, in ordine crescente.
          */
-        double[] one = new double[networkPipes.length];
-        /*
-         * vettore che contiene gli stati riceventi, compresa almeno un'uscita
-         */
-        double[] two = new double[networkPipes.length];
+        double[] magnitude = sortedMagnitude;
+        int tp = run.tp;
+        IJGTProgressMonitor pm = run.pm;
+        StringBuilder strBuilder = run.warnings;
         /*
          *Max discharge at this iteration; 
          */
         double qMax = 0;
 
-        // initialize the discharge array
-
-        for( int i = 0; i < networkPipes.length; i++ ) {
-            /* Indice degli stati */
-            one[i] = i;
-            /* Indice degli stati riceventi, compresa almeno un'uscita */
-            two[i] = networkPipes[i].getIndexPipeWhereDrain();
-        }
-        /* Calcola la magnitude di ciascun stato */
-        Utility.pipeMagnitude(magnitude, two, pm);/*
-                                                  * Calcola la magnitude di
-                                                  * ciascun stato
-                                                  */
-
-        /* al vettore two vengono assegnati gli elementi di magnitude */
-        for( int i = 0; i < two.length; i++ ) /*
-                                              * al vettore two vengono assegnati
-                                              * gli elementi di magnitude
-                                              */
-        {
-            two[i] = magnitude[i];
-        }
-
-        /*
-         * Ordina gli elementi del vettore magnitude in ordine crescente, e
-         * posiziona nello stesso ordine gli elementi di one
-         */
-        QuickSortAlgorithm t = new QuickSortAlgorithm(pm);
-        t.sort(magnitude, one);
-
         int k = 0;
         // tratto che si sta analizzando o progettando
-        l = (int) one[k];
+        l = magnitudeOrder[k];
         pm.beginTask(msg.message("trentoP.begin"), networkPipes.length - 1);
-        isFill = false;
-        double[] cDelays = new double[networkPipes.length];
+        run.isFill = false;
         double maxFill = angleToFillDegree(networkPipes[k].getMaxTheta());
         while( magnitude[k] == 1 ) {
             try {
 
-                double q = headPipeVerify(l, cDelays, timeDischarge, timeFillDegree, tp);
+                double q = headPipeVerify(l, run);
                 if (q > qMax) {
                     qMax = q;
                 }
@@ -921,13 +1033,13 @@ public class NetworkCalibration implements Network {
                      * Il prossimo tratto da progettare, ovviamente se avra
                      * magnitude=1
                      */
-                    l = (int) one[k];
+                    l = magnitudeOrder[k];
                 } else {
                     break;
                 }
                 pm.worked(1);
             } catch (ArithmeticException e) {
-                if (infiniteLoop) {
+                if (run.infiniteLoop) {
                     strBuilder.append(msg.message("trentoP.error.infiniteLoop"));
                 } else {
                     NumberFormat formatter = new DecimalFormat("#.###");
@@ -941,7 +1053,7 @@ public class NetworkCalibration implements Network {
                     strBuilder.append(" ");
                     strBuilder.append("tp " + tp);
                     strBuilder.append("\n");
-                    isFill = true;
+                    run.isFill = true;
                 }
                 break;
 
@@ -955,13 +1067,11 @@ public class NetworkCalibration implements Network {
          * 
          * Magnitude > 1 AREE NON DI TESTA
          */
-        if (!isFill) {
+        if (!run.isFill) {
             while( k < magnitude.length ) {
 
                 try {
-                    net = new double[(int) (magnitude[k] - 1)][9];
-                    scanNetwork(k, l, one, net);
-                    double q = internalPipeVerify(l, cDelays, net, timeDischarge, timeFillDegree, tp);
+                    double q = internalPipeVerify(l, run);
                     if (q > qMax) {
                         qMax = q;
                     }
@@ -970,14 +1080,14 @@ public class NetworkCalibration implements Network {
                     /* se non sono arrivato alla fine */
                     if (k < magnitude.length) {
                         /* Prossimo stato da progettare */
-                        l = (int) one[k];
+                        l = magnitudeOrder[k];
                     } else {
                         break;
                     }
                     pm.worked(1);
                 } catch (ArithmeticException e) {
                     // if there is an infinite loop.
-                    if (infiniteLoop) {
+                    if (run.infiniteLoop) {
                         strBuilder.append(msg.message("trentoP.error.infiniteLoop"));
                     } else {
                         // if a pipe is fill.
@@ -989,12 +1099,13 @@ public class NetworkCalibration implements Network {
                         strBuilder.append(" ");
                         strBuilder.append("tp " + tp);
                         strBuilder.append("\n");
-                        isFill = true;
+                        run.isFill = true;
                     }
                     break;
                 }
             }
         }
+        run.qMax = qMax;
         return qMax;
     }
 
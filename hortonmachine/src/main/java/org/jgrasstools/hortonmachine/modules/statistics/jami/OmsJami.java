@@ -55,19 +55,22 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_outInter
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pBins_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmin_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pNum_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pType_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_tCurrent_DESCRIPTION;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -83,9 +86,9 @@ import oms3.annotations.Unit;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureIterator;
-import org.geotools.gce.grassraster.JGrassConstants;
 import org.jgrasstools.gears.io.eicalculator.EIAltimetry;
 import org.jgrasstools.gears.io.eicalculator.EIAreas;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.sorting.QuickSortAlgorithm;
@@ -194,6 +197,10 @@ public class OmsJami extends JGTModel {
     @In
     public HashMap<Integer, double[]> inMeteo = null;
 
+    @Description(OMSJAMI_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSJAMI_outInterpolatedBand_DESCRIPTION)
     @Out
     public HashMap<Integer, double[]> outInterpolatedBand = null;
@@ -276,13 +283,39 @@ public class OmsJami extends JGTModel {
      * Map of basin ids and their original position in the list originally read.
      */
     private HashMap<Integer, Integer> basinid2BasinindexMap;
-    private HashMap<Integer, Integer> basinindex2basinidMap;
 
     /**
-     * Map of the list of station ids found for every elevation band of the
-     * stations elevation.
+     * The basin ids, in the order of the basins list.
+     */
+    private int[] basinIds;
+
+    /**
+     * The indexes of the stations of every bin of the stations elevation.
+     */
+    private int[][] binStations;
+
+    /**
+     * For every basin and bin of the stations elevation, the indexes of the 
+     * stations of the bin sorted by distance from the basin baricenter.
      */
-    private HashMap<Integer, List<Integer>> bin2StationsListMap;
+    private int[][][] basinBinStations;
+
+    /**
+     * The distances of the stations in {@link #basinBinStations}.
+     */
+    private double[][][] basinBinDistances;
+
+    /*
+     * the inputs the precomputed data refer to
+     */
+    private SimpleFeatureCollection preparedStations;
+    private SimpleFeatureCollection preparedBasins;
+    private List<EIAltimetry> preparedAltimetry;
+    private List<EIAreas> preparedAreas;
+    private String preparedStationid;
+    private String preparedStationelev;
+    private String preparedBasinid;
+    private int preparedBins = -1;
 
     /**
      * Map of station ids and their geometry.
@@ -326,6 +359,93 @@ public class OmsJami extends JGTModel {
 
         checkNull(inAltimetry, inAreas, inMeteo, inStations);
 
+        currentTimestamp = formatter.parseDateTime(tCurrent);
+
+        outInterpolatedBand = new HashMap<Integer, double[]>();
+        outInterpolated = new HashMap<Integer, double[]>();
+
+        if (!isPrepared()) {
+            prepare();
+        }
+
+        /*
+         * get values for current timestep and order them with the stations ids
+         */
+        final double[] statValues = new double[stationCoordinates.size()];
+        for( int i = 0; i < statValues.length; i++ ) {
+            statValues[i] = doubleNovalue;
+        }
+        Set<Integer> stationIdSet = inMeteo.keySet();
+        for( Integer stationId : stationIdSet ) {
+            int id = stationId;
+            double[] value = inMeteo.get(id);
+            Integer index = stationid2StationindexMap.get((int) id);
+            if (index == null)
+                continue;
+            statValues[index] = value[0];
+        }
+
+        int bandsNum = bandsBasins.length;
+        if (pType == DTDAY || pType == DTMONTH) {
+            /*
+             * calculate the DT month and day for each station
+             */
+            // System.out.println("Calculating the dayly and monthly Dt for each station...");
+            rangeT(statValues);
+        }
+
+        final int basinNum = basinIds.length;
+        final double[][] interpolatedMeteoForBands = new double[basinNum][bandsNum];
+        final double[] interpolatedMeteoForBasins = new double[basinNum];
+
+        pm.beginTask("Interpolating over bands and basins...", basinNum);
+        int workers = Math.min(Math.max(1, pMaxThreads), basinNum);
+        if (workers <= 1) {
+            interpolateBasins(0, 1, statValues, interpolatedMeteoForBands, interpolatedMeteoForBasins);
+        } else {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( int i = 0; i < workers; i++ ) {
+                    final int first = i;
+                    final int step = workers;
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            interpolateBasins(first, step, statValues, interpolatedMeteoForBands, interpolatedMeteoForBasins);
+                            return null;
+                        }
+                    }));
+                }
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException("Error during the interpolation: " + e.getCause().getMessage(), this);
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+
+        for( int i = 0; i < basinNum; i++ ) {
+            outInterpolatedBand.put(basinIds[i], interpolatedMeteoForBands[i]);
+            outInterpolated.put(basinIds[i], new double[]{interpolatedMeteoForBasins[i]});
+        }
+        pm.done();
+    }
+
+    /**
+     * Reads the stations and basins and precomputes all that does not depend on the
+     * current timestep.
+     * 
+     * <p>
+     * Besides the elevation bands of the basins, for every basin and bin of station
+     * elevations the stations are sorted by distance from the basin baricenter, so that
+     * at every timestep the nearest stations with data are taken from the head of the arrays.
+     * </p>
+     * 
+     * @throws Exception
+     */
+    private void prepare() throws Exception {
         // check fascie num
         int fascieNum = 0;
         for( EIAreas area : inAreas ) {
@@ -337,10 +457,6 @@ public class OmsJami extends JGTModel {
         // increment by one. Fascie start from 0, so 0-5 are 6 fascie
         fascieNum++;
 
-        currentTimestamp = formatter.parseDateTime(tCurrent);
-
-        outInterpolatedBand = new HashMap<Integer, double[]>();
-        outInterpolated = new HashMap<Integer, double[]>();
         /*
          * get stations
          */
@@ -358,9 +474,8 @@ public class OmsJami extends JGTModel {
         pm.done();
 
         /*
-         * get basins and create of every basin a buffered geometry at 10,
-         * 20 and 50 km, which will be used to find the nearest stations
-         * around.
+         * get basins and their baricenter, which will be used to find the 
+         * nearest stations around.
          */
         basinBaricenterCoordinates = new ArrayList<Coordinate>();
         basinFeatures = new ArrayList<SimpleFeature>();
@@ -395,22 +510,23 @@ public class OmsJami extends JGTModel {
         if (basinIdFieldIndex == -1) {
             throw new IllegalArgumentException("The field of the basin id couldn't be found in the supplied basin data.");
         }
+        int basinNum = basinBaricenterCoordinates.size();
         basinid2BasinindexMap = new HashMap<Integer, Integer>();
-        basinindex2basinidMap = new HashMap<Integer, Integer>();
-        for( int i = 0; i < basinBaricenterCoordinates.size(); i++ ) {
+        basinIds = new int[basinNum];
+        for( int i = 0; i < basinNum; i++ ) {
             int basinid = ((Number) basinFeatures.get(i).getAttribute(basinIdFieldIndex)).intValue();
             basinid2BasinindexMap.put(basinid, i);
-            basinindex2basinidMap.put(i, basinid);
+            basinIds[i] = basinid;
         }
 
+        // the areas are recalculated for the new inputs
+        basinAreas = null;
         calculateAreas(fascieNum);
 
         pm.message("Creating the band's elevation for every basin matrix.");
         /*
          * create the altimetric bands matrix
          */
-        int basinNum = basinBaricenterCoordinates.size();
-
         bandsBasins = new double[fascieNum][basinNum];
         for( int i = 0; i < inAltimetry.size(); i++ ) {
             EIAltimetry eiAltimetry = inAltimetry.get(i);
@@ -437,386 +553,508 @@ public class OmsJami extends JGTModel {
         }
 
         /*
-         * find all stations inside a elevation band for every basin
+         * find all stations inside a elevation band
          */
-        pm.beginTask("Finding all stations inside a elevation band for every basin.", stationBinsArrays.length - 1);
-        bin2StationsListMap = new HashMap<Integer, List<Integer>>();
+        pm.beginTask("Finding all stations inside a elevation band.", stationBinsArrays.length - 1);
+        binStations = new int[stationBinsArrays.length - 1][];
         for( int i = 0; i < stationBinsArrays.length - 1; i++ ) {
-            List<Integer> stationsIds = new ArrayList<Integer>();
+            List<Integer> stationsIndexes = new ArrayList<Integer>();
             for( int j = 0; j < statId.length; j++ ) {
                 double id = statId[j];
                 double elev = statElev[j];
                 if (elev >= stationBinsArrays[i] && elev < stationBinsArrays[i + 1]) {
-                    stationsIds.add((int) id);
+                    stationsIndexes.add(stationid2StationindexMap.get((int) id));
                 }
             }
-            bin2StationsListMap.put(i, stationsIds);
+            binStations[i] = new int[stationsIndexes.size()];
+            for( int j = 0; j < binStations[i].length; j++ ) {
+                binStations[i][j] = stationsIndexes.get(j);
+            }
             pm.worked(1);
         }
         pm.done();
 
         /*
-         * get values for current timestep and order them with the stations ids
+         * sort the stations of every bin by distance for every basin
          */
-        double[] statValues = new double[stationCoordinates.size()];
-        for( int i = 0; i < statValues.length; i++ ) {
-            statValues[i] = doubleNovalue;
-        }
-        Set<Integer> stationIdSet = inMeteo.keySet();
-        for( Integer stationId : stationIdSet ) {
-            int id = stationId;
-            double[] value = inMeteo.get(id);
-            Integer index = stationid2StationindexMap.get((int) id);
-            if (index == null)
-                continue;
-            statValues[index] = value[0];
-        }
-
-        // number of active stations for every basin
-        int[] activeStationsPerBasin = new int[basinBaricenterCoordinates.size()];
-        int[][] stazBacMatrix = createStationBasinsMatrix(statValues, activeStationsPerBasin);
-        int[][] stations = new int[stazBacMatrix.length][stazBacMatrix[0].length];
-        int contStations = 0;
-        // riempimento vettori/matrici
-        for( int i = 0; i < stazBacMatrix[0].length; i++ ) { // indice bacino
-            contStations = 0;
-            for( int j = 0; j < stazBacMatrix.length; j++ ) { // indice stazione
-                if (stazBacMatrix[j][i] == 1) {
-                    stations[contStations][i] = j;
-                    contStations += 1;
+        pm.beginTask("Sorting the stations by distance for every basin.", basinNum);
+        basinBinStations = new int[basinNum][binStations.length][];
+        basinBinDistances = new double[basinNum][binStations.length][];
+        for( int i = 0; i < basinNum; i++ ) {
+            Coordinate basinBaricenterCoordinate = basinBaricenterCoordinates.get(i);
+            for( int b = 0; b < binStations.length; b++ ) {
+                int[] stations = binStations[b].clone();
+                double[] distances = new double[stations.length];
+                for( int j = 0; j < stations.length; j++ ) {
+                    Coordinate stationCoord = stationId2CoordinateMap.get((int) statId[stations[j]]);
+                    distances[j] = basinBaricenterCoordinate.distance(stationCoord);
                 }
+                // stable insertion sort, stations at the same distance keep the bin order
+                for( int j = 1; j < stations.length; j++ ) {
+                    double distance = distances[j];
+                    int station = stations[j];
+                    int k = j - 1;
+                    while( k >= 0 && distances[k] > distance ) {
+                        distances[k + 1] = distances[k];
+                        stations[k + 1] = stations[k];
+                        k--;
+                    }
+                    distances[k + 1] = distance;
+                    stations[k + 1] = station;
+                }
+                basinBinStations[i][b] = stations;
+                basinBinDistances[i][b] = distances;
             }
+            pm.worked(1);
         }
+        pm.done();
 
-        int bandsNum = bandsBasins.length;
-        if (pType == DTDAY || pType == DTMONTH) {
+        preparedStations = inStations;
+        preparedBasins = inInterpolate;
+        preparedAltimetry = inAltimetry;
+        preparedAreas = inAreas;
+        preparedStationid = fStationid;
+        preparedStationelev = fStationelev;
+        preparedBasinid = fBasinid;
+        preparedBins = pBins;
+    }
+
+    /**
+     * Checks if the precomputed data refer to the current inputs.
+     * 
+     * @return <code>true</code> if {@link #prepare()} doesn't need to be run again.
+     */
+    private boolean isPrepared() {
+        return preparedStations == inStations && preparedBasins == inInterpolate && preparedAltimetry == inAltimetry
+                && preparedAreas == inAreas && sameField(preparedStationid, fStationid)
+                && sameField(preparedStationelev, fStationelev) && sameField(preparedBasinid, fBasinid)
+                && preparedBins == pBins;
+    }
+
+    private static boolean sameField( String preparedField, String field ) {
+        return preparedField == null ? field == null : preparedField.equals(field);
+    }
+
+    /**
+     * Interpolates the basins <code>first, first + step, ...</code>.
+     * 
+     * @param first the first basin index.
+     * @param step the step between basin indexes.
+     * @param statValues the station values of the current timestep.
+     * @param interpolatedMeteoForBands the matrix to put the interpolated values per basin and band in.
+     * @param interpolatedMeteoForBasins the array to put the interpolated values per basin in.
+     */
+    private void interpolateBasins( int first, int step, double[] statValues, double[][] interpolatedMeteoForBands,
+            double[] interpolatedMeteoForBasins ) {
+        int stationNum = statValues.length;
+        boolean[] selectedStations = new boolean[stationNum];
+        int[] leftOverStations = new int[stationNum];
+        int[] basinStations = new int[stationNum];
+        for( int i = first; i < interpolatedMeteoForBasins.length; i += step ) {
+            int active = selectStations(i, statValues, selectedStations, leftOverStations);
             /*
-             * calculate the DT month and day for each station
+             * the stations used by the basin, in elevation order
              */
-            // System.out.println("Calculating the dayly and monthly Dt for each station...");
-            rangeT(statValues);
+            Arrays.fill(basinStations, 0);
+            int contStations = 0;
+            for( int j = 0; j < stationNum; j++ ) {
+                if (selectedStations[j]) {
+                    basinStations[contStations++] = j;
+                    selectedStations[j] = false;
+                }
+            }
+            interpolatedMeteoForBasins[i] = interpolateBasin(i, active, basinStations, statValues,
+                    interpolatedMeteoForBands[i]);
+            synchronized (pm) {
+                pm.worked(1);
+            }
         }
+    }
 
-        pm.beginTask("Interpolating over bands and basins...", basinBaricenterCoordinates.size());
+    /**
+     * Selects the stations to use for a basin.
+     * 
+     * <p>
+     * For every bin of station elevations the nearest <code>pNum</code> stations that have
+     * a value are taken. If not enough stations are found, also stations that don't have
+     * values are added, since their value won't be considered. As it always did, the
+     * filling loop compares its counter with the shrinking gap, so only about half of the
+     * missing stations are added.
+     * </p>
+     * 
+     * @param i the basin index.
+     * @param statValues the station values of the current timestep.
+     * @param selectedStations the array in which to flag the selected stations.
+     * @param leftOverStations a working array for the stations without values.
+     * @return the number of active stations for the basin.
+     */
+    private int selectStations( int i, double[] statValues, boolean[] selectedStations, int[] leftOverStations ) {
+        int activeStationsForThisBasin = 0;
+        for( int b = 0; b < binStations.length; b++ ) {
+            int[] stations = basinBinStations[i][b];
+            double[] distances = basinBinDistances[i][b];
+            int used = 0;
+            int k = 0;
+            while( k < stations.length && used < pNum ) {
+                int end = k + 1;
+                while( end < stations.length && distances[end] == distances[k] ) {
+                    end++;
+                }
+                // of the stations at the same distance only the last one with a value is used
+                for( int j = end - 1; j >= k; j-- ) {
+                    if (!isNovalue(statValues[stations[j]])) {
+                        selectedStations[stations[j]] = true;
+                        used++;
+                        break;
+                    }
+                }
+                k = end;
+            }
 
-        // System.out.println("---");
-        // for (int s = 0; s < minTempPerStation.length; s++) {
-        // if (minTempPerStation[s] != 0) {
-        // System.out.println("Temperature: "
-        // + maxTempPerStation[s] + " "
-        // + minTempPerStation[s]);
-        //
-        // }
-        // }
+            if (used < pNum) {
+                message("Found only " + used + " for basin " + basinIds[i] + " and bandid " + b + ".");
 
-        for( int i = 0; i < basinBaricenterCoordinates.size(); i++ ) {
-            pm.worked(1);
-            // interpolated value for every band
-            double[] interpolatedMeteoForBand = new double[bandsNum];
-            double interpolatedMeteoForBasin = 0;
-
-            int cont = 0;
-            double h;
-            int[] jj_av;
-
-            // trova le stazioni che forniscono dati
-            jj_av = new int[activeStationsPerBasin[i]]; // costruisco un nuovo
-            // vettore jj_av con le
-            // stazioni del bacino in studio
-            for( int j = 0; j < activeStationsPerBasin[i]; j++ ) {
-                if (pType != DTDAY && pType != DTMONTH) {
-                    if (!isNovalue(statValues[stations[j][i]])) {
-                        jj_av[cont] = stations[j][i]; // registro le stazioni
-                        // attive
-                        cont += 1;
-                    }
-                } else {
-                    // se per la stazione j del bacino i minT e maxT sono
-                    // diversi da
-                    // NODATA
-                    if (!isNovalue(minTempPerStation[stations[j][i]]) && isNovalue(maxTempPerStation[stations[j][i]])) {
-                        // jj conterrà le stazioni che hanno dati di escursione
-                        // termica
-                        // giornaliera
-                        jj_av[cont] = stations[j][i]; // registro le stazioni
-                        // attive
-                        cont += 1;
+                int leftOverNum = 0;
+                for( int station : binStations[b] ) {
+                    if (isNovalue(statValues[station])) {
+                        leftOverStations[leftOverNum++] = station;
                     }
                 }
+                for( int j = 0; j < pNum - used && j < leftOverNum; j++ ) {
+                    selectedStations[leftOverStations[j]] = true;
+                    used++;
+                }
             }
+            activeStationsForThisBasin = activeStationsForThisBasin + used;
+        }
+        return activeStationsForThisBasin;
+    }
 
-            // caso 0. se non c'e' nessuna stazione, cerco che il programma
-            // sopravviva
-            if (cont == 0) {
-                if (pType == TEMPERATURE) { // caso dei dati di temperatura
-                    pm.errorMessage("ERRORE: PER IL BACINO " + i
-                            + " NON SONO DISPONIBILI DATI DI TEMPERATURA, PER QUESTO BACINO STAND-BY");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto il
-                        // dato a -100
-                        interpolatedMeteoForBand[f] = doubleNovalue;
-                    }
-                    interpolatedMeteoForBasin = doubleNovalue;
-                } else if (pType == PRESSURE) { // caso dei dati di pressione
-                    pm.message("  -> Per il bacino " + i + " non sono disponibili dati di pressione, uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche considero
-                        // un'adiabatica
-                        interpolatedMeteoForBand[f] = 1013.25 * Math.exp(-(bandsBasins[f][i]) * 0.00013);
-                        interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                                * basinAreasPerFascias[i][f] / basinAreas[i];
-                    }
-                } else if (pType == HUMIDITY) { // caso dei dati di umidità
-                    pm.message("  -> Per il bacino " + i + " non sono disponibili dati di umidita', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto NODATA
-                        interpolatedMeteoForBand[f] = defaultRh;
-                    }
-                    interpolatedMeteoForBasin = defaultRh;
-                } else if (pType == WIND) { // caso dei dati di velocità del vento
-                    pm.message("  -> Per il bacino " + i
-                            + " non sono disponibili dati di velocita' del vento, uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto NODATA
-                        interpolatedMeteoForBand[f] = defaultW;
-                    }
-                    interpolatedMeteoForBasin = defaultW;
-                } else if (pType == DTDAY) { // caso dei dati di escursione termica
+    /**
+     * Interpolates the meteo value on the bands of a basin.
+     * 
+     * @param i the basin index.
+     * @param active the number of active stations for the basin.
+     * @param basinStations the indexes of the stations used by the basin.
+     * @param statValues the station values of the current timestep.
+     * @param interpolatedMeteoForBand the array to put the interpolated value for every band in.
+     * @return the interpolated value for the whole basin.
+     */
+    private double interpolateBasin( int i, int active, int[] basinStations, double[] statValues,
+            double[] interpolatedMeteoForBand ) {
+        int bandsNum = interpolatedMeteoForBand.length;
+        double interpolatedMeteoForBasin = 0;
+
+        int cont = 0;
+        double h;
+        int[] jj_av;
+
+        // trova le stazioni che forniscono dati
+        jj_av = new int[active]; // costruisco un nuovo
+        // vettore jj_av con le
+        // stazioni del bacino in studio
+        for( int j = 0; j < active; j++ ) {
+            if (pType != DTDAY && pType != DTMONTH) {
+                if (!isNovalue(statValues[basinStations[j]])) {
+                    jj_av[cont] = basinStations[j]; // registro le stazioni
+                    // attive
+                    cont += 1;
+                }
+            } else {
+                // se per la stazione j del bacino i minT e maxT sono
+                // diversi da
+                // NODATA
+                if (!isNovalue(minTempPerStation[basinStations[j]]) && isNovalue(maxTempPerStation[basinStations[j]])) {
+                    // jj conterrà le stazioni che hanno dati di escursione
+                    // termica
                     // giornaliera
-                    pm.message("  -> Per il bacino " + i
-                            + " non sono disponibili dati di escursione termica giornaliera', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche del bacino
-                        // assegno all'escursione termica giornaliera il dato
-                        // DTd
-                        // messo nel file dei parametri
+                    jj_av[cont] = basinStations[j]; // registro le stazioni
+                    // attive
+                    cont += 1;
+                }
+            }
+        }
+
+        // caso 0. se non c'e' nessuna stazione, cerco che il programma
+        // sopravviva
+        if (cont == 0) {
+            if (pType == TEMPERATURE) { // caso dei dati di temperatura
+                errorMessage("ERRORE: PER IL BACINO " + i
+                        + " NON SONO DISPONIBILI DATI DI TEMPERATURA, PER QUESTO BACINO STAND-BY");
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto il
+                    // dato a -100
+                    interpolatedMeteoForBand[f] = doubleNovalue;
+                }
+                interpolatedMeteoForBasin = doubleNovalue;
+            } else if (pType == PRESSURE) { // caso dei dati di pressione
+                message("  -> Per il bacino " + i + " non sono disponibili dati di pressione, uso valori di default");
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche considero
+                    // un'adiabatica
+                    interpolatedMeteoForBand[f] = 1013.25 * Math.exp(-(bandsBasins[f][i]) * 0.00013);
+                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                            * basinAreasPerFascias[i][f] / basinAreas[i];
+                }
+            } else if (pType == HUMIDITY) { // caso dei dati di umidità
+                message("  -> Per il bacino " + i + " non sono disponibili dati di umidita', uso valori di default");
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto NODATA
+                    interpolatedMeteoForBand[f] = defaultRh;
+                }
+                interpolatedMeteoForBasin = defaultRh;
+            } else if (pType == WIND) { // caso dei dati di velocità del vento
+                message("  -> Per il bacino " + i
+                        + " non sono disponibili dati di velocita' del vento, uso valori di default");
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto NODATA
+                    interpolatedMeteoForBand[f] = defaultW;
+                }
+                interpolatedMeteoForBasin = defaultW;
+            } else if (pType == DTDAY) { // caso dei dati di escursione termica
+                // giornaliera
+                message("  -> Per il bacino " + i
+                        + " non sono disponibili dati di escursione termica giornaliera', uso valori di default");
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche del bacino
+                    // assegno all'escursione termica giornaliera il dato
+                    // DTd
+                    // messo nel file dei parametri
+                    interpolatedMeteoForBand[f] = defaultDtday;
+                }
+                interpolatedMeteoForBasin = defaultDtday;
+            } else if (pType == DTMONTH) { // caso dei dati di escursione termica
+                // mensile
+                message("  -> Per il bacino " + i
+                        + " non sono disponibili dati di escursione termica mensile', uso valori di default");
+                for( int f = 0; f < bandsNum; f++ ) {
+                    /*
+                     *  per tutte le fasce
+                     * altimetriche del bacino
+                     */
+                    // assegno all'escursione termica media mensile il
+                    // datoDTm
+                    // messo nel file dei parametri
+                    interpolatedMeteoForBand[f] = defaultDtmonth;
+                }
+                interpolatedMeteoForBasin = defaultDtmonth;
+            }
+
+        } else if (cont == 1) {
+            // caso 1. c'e' solo una stazione presente . modello di
+            // atmosfera
+            // standard per T e P, valori costanti per RH e V
+            for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
+                // altimetriche
+                if (pType == TEMPERATURE) { // trasformo la temp in K e calcolo T
+                    // con
+                    // l'adiabatica semplice
+                    interpolatedMeteoForBand[f] = (statValues[jj_av[0]] + tk)
+                            * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * GAMMA / (statValues[jj_av[0]] + tk)) - tk;
+                } else if (pType == PRESSURE) { // calcolo P con il gradiente
+                    // adiabatico
+                    interpolatedMeteoForBand[f] = statValues[jj_av[0]]
+                            * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * 0.00013);
+                } else if (pType == DTDAY) {
+                    // se ho una sola stazione assegno il valore della
+                    // stazione a tutto il
+                    // bacino
+                    // altimetriche del bacino assegno il valore di
+                    // escursione massima
+                    // giornaliera
+                    interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
+                    if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
                         interpolatedMeteoForBand[f] = defaultDtday;
                     }
-                    interpolatedMeteoForBasin = defaultDtday;
-                } else if (pType == DTMONTH) { // caso dei dati di escursione termica
-                    // mensile
-                    pm.message("  -> Per il bacino " + i
-                            + " non sono disponibili dati di escursione termica mensile', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        /*
-                         *  per tutte le fasce
-                         * altimetriche del bacino
-                         */
-                        // assegno all'escursione termica media mensile il
-                        // datoDTm
-                        // messo nel file dei parametri
-                        interpolatedMeteoForBand[f] = defaultDtmonth;
-                    }
-                    interpolatedMeteoForBasin = defaultDtmonth;
+                } else if (pType == DTMONTH) {
+                    // se ho una sola stazione assegno il valore della
+                    // stazione a tutto il
+                    // bacino
+                    // altimetriche del bacino assegno il valore di
+                    // escursione massima mensile
+                    interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
+                } else { // RH e V sono costanti al variare delle fasce
+                    // altimetriche
+                    interpolatedMeteoForBand[f] = statValues[jj_av[0]];
                 }
 
-            } else if (cont == 1) {
-                // caso 1. c'e' solo una stazione presente . modello di
-                // atmosfera
-                // standard per T e P, valori costanti per RH e V
-                for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
-                    // altimetriche
-                    if (pType == TEMPERATURE) { // trasformo la temp in K e calcolo T
-                        // con
-                        // l'adiabatica semplice
-                        interpolatedMeteoForBand[f] = (statValues[jj_av[0]] + tk)
-                                * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * GAMMA / (statValues[jj_av[0]] + tk)) - tk;
-                    } else if (pType == PRESSURE) { // calcolo P con il gradiente
-                        // adiabatico
-                        interpolatedMeteoForBand[f] = statValues[jj_av[0]]
-                                * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * 0.00013);
+                interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                        * basinAreasPerFascias[i][f] / basinAreas[i];
+            }
+        } else {
+            // caso 2. ci sono almeno 2 stazioni (a quote inferiori alla
+            // stazioni piu' bassa considero atmosfera standard come a quote
+            // superiori alla staz. piu' alta, in mezzo calcolo LAPSE RATE)
+            // alloca L (vettore di dimensioni numero di stazioni attive-1)
+            double[] lapseRate = new double[cont - 1];
+
+            for( int j = 0; j < cont - 1; j++ ) { // le stazioni sono in
+                // ordine di
+                // quota
+                // L[j] e' il lapse rate tra la stazione j e j+1, puo'
+                // essere
+                // calcolato dai dati per j che va da 1 a n-1, dove n e' il
+                // numero di stazioni (cont)
+                lapseRate[j] = (statValues[jj_av[j]] - statValues[jj_av[j + 1]])
+                        / (statElev[jj_av[j + 1]] - statElev[jj_av[j]]);
+            }
+
+            for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
+                // altimetriche
+
+                // per le fasce altimetriche con quote piu' basse della
+                // quota
+                // della stazione piu' bassa prendo i dati della stazione
+                // più bassa
+                if (bandsBasins[f][i] <= statElev[jj_av[0]]) {
+                    if (pType == TEMPERATURE) { // T
+                        interpolatedMeteoForBand[f] = statValues[jj_av[0]] - GAMMA * (bandsBasins[f][i] - statElev[jj_av[0]]);
+                    } else if (pType == PRESSURE) { // P
+                        interpolatedMeteoForBand[f] = statValues[jj_av[0]] - (statValues[jj_av[0]] * 0.00013)
+                                * (bandsBasins[f][i] - statElev[jj_av[0]]);
                     } else if (pType == DTDAY) {
-                        // se ho una sola stazione assegno il valore della
-                        // stazione a tutto il
-                        // bacino
-                        // altimetriche del bacino assegno il valore di
-                        // escursione massima
-                        // giornaliera
                         interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
                         if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
                             interpolatedMeteoForBand[f] = defaultDtday;
                         }
                     } else if (pType == DTMONTH) {
-                        // se ho una sola stazione assegno il valore della
-                        // stazione a tutto il
-                        // bacino
-                        // altimetriche del bacino assegno il valore di
-                        // escursione massima mensile
                         interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
-                    } else { // RH e V sono costanti al variare delle fasce
-                        // altimetriche
+                    } else { // RH e V
                         interpolatedMeteoForBand[f] = statValues[jj_av[0]];
                     }
 
-                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                            * basinAreasPerFascias[i][f] / basinAreas[i];
-                }
-            } else {
-                // caso 2. ci sono almeno 2 stazioni (a quote inferiori alla
-                // stazioni piu' bassa considero atmosfera standard come a quote
-                // superiori alla staz. piu' alta, in mezzo calcolo LAPSE RATE)
-                // alloca L (vettore di dimensioni numero di stazioni attive-1)
-                double[] lapseRate = new double[cont - 1];
-
-                for( int j = 0; j < cont - 1; j++ ) { // le stazioni sono in
-                    // ordine di
-                    // quota
-                    // L[j] e' il lapse rate tra la stazione j e j+1, puo'
-                    // essere
-                    // calcolato dai dati per j che va da 1 a n-1, dove n e' il
-                    // numero di stazioni (cont)
-                    lapseRate[j] = (statValues[jj_av[j]] - statValues[jj_av[j + 1]])
-                            / (statElev[jj_av[j + 1]] - statElev[jj_av[j]]);
-                }
-
-                for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
-                    // altimetriche
-
-                    // per le fasce altimetriche con quote piu' basse della
+                    // per le fasce altimetriche con quote piu' alte della
                     // quota
-                    // della stazione piu' bassa prendo i dati della stazione
-                    // più bassa
-                    if (bandsBasins[f][i] <= statElev[jj_av[0]]) {
-                        if (pType == TEMPERATURE) { // T
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]] - GAMMA * (bandsBasins[f][i] - statElev[jj_av[0]]);
-                        } else if (pType == PRESSURE) { // P
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]] - (statValues[jj_av[0]] * 0.00013)
-                                    * (bandsBasins[f][i] - statElev[jj_av[0]]);
-                        } else if (pType == DTDAY) {
-                            interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
-                            if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
-                        } else { // RH e V
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]];
+                    // della stazione piu' alta prendo i dati della stazione
+                    // più alta
+                } else if (bandsBasins[f][i] >= statElev[jj_av[cont - 1]]) {
+                    if (pType == TEMPERATURE) { // T
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - GAMMA
+                                * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
+                    } else if (pType == PRESSURE) { // P
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - (statValues[jj_av[cont - 1]] * 0.00013)
+                                * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
+                    } else if (pType == DTDAY) {
+                        interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[cont - 1]] - minTempPerStation[jj_av[cont - 1]];
+                        if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
+                            interpolatedMeteoForBand[f] = defaultDtday;
                         }
+                    } else if (pType == DTMONTH) {
+                        interpolatedMeteoForBand[f] = DTmonth[jj_av[cont - 1]];
+                    } else { // RH e V
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]];
+                    }
 
-                        // per le fasce altimetriche con quote piu' alte della
-                        // quota
-                        // della stazione piu' alta prendo i dati della stazione
-                        // più alta
-                    } else if (bandsBasins[f][i] >= statElev[jj_av[cont - 1]]) {
-                        if (pType == TEMPERATURE) { // T
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - GAMMA
-                                    * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
-                        } else if (pType == PRESSURE) { // P
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - (statValues[jj_av[cont - 1]] * 0.00013)
-                                    * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
-                        } else if (pType == DTDAY) {
-                            interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[cont - 1]] - minTempPerStation[jj_av[cont - 1]];
-                            if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            interpolatedMeteoForBand[f] = DTmonth[jj_av[cont - 1]];
-                        } else { // RH e V
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]];
+                } else {
+                    int k = cont - 1;
+                    if (pType == DTDAY) {
+                        // per le fasce altimetriche intermedie devo
+                        // interpolare tra la min e
+                        // la max delle stazioni
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+
+                        // for (int j = 0; j < cont; j++) {
+                        // if (f ==0 && i == 100) {
+                        // System.out.println(j + " "+ statElev[jj_av[j]]);
+                        // }
+                        // }
+
+                        // interpolatedMeteoForBand[f] =
+                        // ((maxTempPerStation[jj_av[k]] -
+                        // minTempPerStation[jj_av[k]])
+                        // * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) +
+                        // (maxTempPerStation[jj_av[k + 1]] -
+                        // minTempPerStation[jj_av[k + 1]])
+                        // * (bandsBasins[f][i] - statElev[jj_av[k]]))
+                        // / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
+                        interpolatedMeteoForBand[f] = ((maxTempPerStation[jj_av[k + 1]] - minTempPerStation[jj_av[k + 1]]) - (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]))
+                                * (bandsBasins[f][i] - statElev[jj_av[k]])
+                                / (statElev[jj_av[k + 1]] - statElev[jj_av[k]])
+                                + (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]);
+                        // if (i == 100) {
+                        // System.out.println("Banda " + f + " "
+                        // + bandsBasins[f][i]);
+                        // System.out.println("stazione1 " + k);
+                        // System.out.println("elevazione: "
+                        // + statElev[jj_av[k]]);
+                        // System.out.println("stazione2 " + k + 1);
+                        // System.out.println("max: "
+                        // + maxTempPerStation[jj_av[k + 1]]);
+                        // System.out.println("min: "
+                        // + minTempPerStation[jj_av[k + 1]]);
+                        // // System.out.println(statElev[jj_av[k + 1]]);
+                        // }
+
+                        if (interpolatedMeteoForBand[f] <= 0) {
+                            interpolatedMeteoForBand[f] = defaultDtday;
                         }
-
+                    } else if (pType == DTMONTH) {
+                        // per le fasce altimetriche intermedie devo
+                        // interpolare tra la min e
+                        // la max delle stazioni
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+                        interpolatedMeteoForBand[f] = (DTmonth[jj_av[k]] * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) + DTmonth[jj_av[k + 1]]
+                                * (bandsBasins[f][i] - statElev[jj_av[k]]))
+                                / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
                     } else {
-                        int k = cont - 1;
-                        if (pType == DTDAY) {
-                            // per le fasce altimetriche intermedie devo
-                            // interpolare tra la min e
-                            // la max delle stazioni
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-
-                            // for (int j = 0; j < cont; j++) {
-                            // if (f ==0 && i == 100) {
-                            // System.out.println(j + " "+ statElev[jj_av[j]]);
-                            // }
-                            // }
-
-                            // interpolatedMeteoForBand[f] =
-                            // ((maxTempPerStation[jj_av[k]] -
-                            // minTempPerStation[jj_av[k]])
-                            // * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) +
-                            // (maxTempPerStation[jj_av[k + 1]] -
-                            // minTempPerStation[jj_av[k + 1]])
-                            // * (bandsBasins[f][i] - statElev[jj_av[k]]))
-                            // / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
-                            interpolatedMeteoForBand[f] = ((maxTempPerStation[jj_av[k + 1]] - minTempPerStation[jj_av[k + 1]]) - (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]))
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]])
-                                    / (statElev[jj_av[k + 1]] - statElev[jj_av[k]])
-                                    + (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]);
-                            // if (i == 100) {
-                            // System.out.println("Banda " + f + " "
-                            // + bandsBasins[f][i]);
-                            // System.out.println("stazione1 " + k);
-                            // System.out.println("elevazione: "
-                            // + statElev[jj_av[k]]);
-                            // System.out.println("stazione2 " + k + 1);
-                            // System.out.println("max: "
-                            // + maxTempPerStation[jj_av[k + 1]]);
-                            // System.out.println("min: "
-                            // + minTempPerStation[jj_av[k + 1]]);
-                            // // System.out.println(statElev[jj_av[k + 1]]);
-                            // }
-
-                            if (interpolatedMeteoForBand[f] <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            // per le fasce altimetriche intermedie devo
-                            // interpolare tra la min e
-                            // la max delle stazioni
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-                            interpolatedMeteoForBand[f] = (DTmonth[jj_av[k]] * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) + DTmonth[jj_av[k + 1]]
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]]))
-                                    / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
-                        } else {
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-                            interpolatedMeteoForBand[f] = statValues[jj_av[k]] - lapseRate[k]
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]]);
-                        }
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+                        interpolatedMeteoForBand[f] = statValues[jj_av[k]] - lapseRate[k]
+                                * (bandsBasins[f][i] - statElev[jj_av[k]]);
                     }
-
-                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                            * basinAreasPerFascias[i][f] / basinAreas[i];
                 }
 
-                // ADDED
-                // controllo su RH>100 e v=0
-                if (pType == HUMIDITY) { // RH
-                    double MAX_HUMIDITY = 100;
-                    double MIN_HUMIDITY = 5;
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        if (interpolatedMeteoForBand[f] > MAX_HUMIDITY)
-                            interpolatedMeteoForBand[f] = MAX_HUMIDITY;
-                        if (interpolatedMeteoForBand[f] < MIN_HUMIDITY)
-                            interpolatedMeteoForBand[f] = MIN_HUMIDITY;
-                    }
-                    if (interpolatedMeteoForBasin > MAX_HUMIDITY)
-                        interpolatedMeteoForBasin = MAX_HUMIDITY;
-                    if (interpolatedMeteoForBasin < MIN_HUMIDITY)
-                        interpolatedMeteoForBasin = MIN_HUMIDITY;
-                } else if (pType == WIND) { // V
-                    double MIN_WIND = 0.01;
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        if (interpolatedMeteoForBand[f] < MIN_WIND)
-                            interpolatedMeteoForBand[f] = MIN_WIND;
-                    }
-                    if (interpolatedMeteoForBasin < MIN_WIND)
-                        interpolatedMeteoForBasin = MIN_WIND;
-                }
+                interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                        * basinAreasPerFascias[i][f] / basinAreas[i];
+            }
 
+            // ADDED
+            // controllo su RH>100 e v=0
+            if (pType == HUMIDITY) { // RH
+                double MAX_HUMIDITY = 100;
+                double MIN_HUMIDITY = 5;
+                for( int f = 0; f < bandsNum; f++ ) {
+                    if (interpolatedMeteoForBand[f] > MAX_HUMIDITY)
+                        interpolatedMeteoForBand[f] = MAX_HUMIDITY;
+                    if (interpolatedMeteoForBand[f] < MIN_HUMIDITY)
+                        interpolatedMeteoForBand[f] = MIN_HUMIDITY;
+                }
+                if (interpolatedMeteoForBasin > MAX_HUMIDITY)
+                    interpolatedMeteoForBasin = MAX_HUMIDITY;
+                if (interpolatedMeteoForBasin < MIN_HUMIDITY)
+                    interpolatedMeteoForBasin = MIN_HUMIDITY;
+            } else if (pType == WIND) { // V
+                double MIN_WIND = 0.01;
+                for( int f = 0; f < bandsNum; f++ ) {
+                    if (interpolatedMeteoForBand[f] < MIN_WIND)
+                        interpolatedMeteoForBand[f] = MIN_WIND;
+                }
+                if (interpolatedMeteoForBasin < MIN_WIND)
+                    interpolatedMeteoForBasin = MIN_WIND;
             }
-            int basinid = ((Number) basinFeatures.get(i).getAttribute(basinIdFieldIndex)).intValue();
-            outInterpolatedBand.put(basinid, interpolatedMeteoForBand);
-            outInterpolated.put(basinid, new double[]{interpolatedMeteoForBasin});
+
+        }
+        return interpolatedMeteoForBasin;
+    }
+
+    private void message( String message ) {
+        synchronized (pm) {
+            pm.message(message);
+        }
+    }
+
+    private void errorMessage( String message ) {
+        synchronized (pm) {
+            pm.errorMessage(message);
         }
-        pm.done();
     }
 
     private void calculateAreas( int fascieNum ) {
@@ -875,171 +1113,6 @@ public class OmsJami extends JGTModel {
         }
     }
 
-    /**
-     * Creates the stations per basins matrix.
-     * 
-     * <p>
-     * The matrix is a bitmap of the stations that will be used for every basin,
-     * following the schema:
-     * </p>
-     * <table>
-     * <tr>
-     * <td></td>
-     * <td>basin1</td>
-     * <td>basin2</td>
-     * <td>basin3</td>
-     * <td>basin...</td>
-     * <tr>
-     * <td>station1</td>
-     * <td>1</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station2</td>
-     * <td>1</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station3</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station...</td>
-     * <td>0</td>
-     * <td>0</td>
-     * <td>0</td>
-     * <td>0...</td>
-     * </tr>
-     * </table>
-     * <p>
-     * In the above case basin1 will use station1 and station2, while basin2
-     * will use only station3, and so on.
-     * </p>
-     * 
-     * @param statValues
-     *            the station data values, properly ordered, containing
-     *            {@link JGrassConstants#defaultNovalue novalues}.
-     * @param activeStationsPerBasin
-     *            an array to be filled with the number of active stations per
-     *            basin.
-     * @return the matrix of active stations for every basin.
-     */
-    private int[][] createStationBasinsMatrix( double[] statValues, int[] activeStationsPerBasin ) {
-        int[][] stationsBasins = new int[stationCoordinates.size()][basinBaricenterCoordinates.size()];
-        Set<Integer> bandsIdSet = bin2StationsListMap.keySet();
-        Integer[] bandsIdArray = (Integer[]) bandsIdSet.toArray(new Integer[bandsIdSet.size()]);
-        // for every basin
-        for( int i = 0; i < basinBaricenterCoordinates.size(); i++ ) {
-            Coordinate basinBaricenterCoordinate = basinBaricenterCoordinates.get(i);
-            // for every stations band
-            int activeStationsForThisBasin = 0;
-            for( int j = 0; j < bandsIdArray.length; j++ ) {
-                int bandId = bandsIdArray[j];
-                List<Integer> stationIdsForBand = bin2StationsListMap.get(bandId);
-
-                /*
-                 * search for the nearest stations that have values.
-                 */
-                List<Integer> stationsToUse = extractStationsToUse(basinBaricenterCoordinate, stationIdsForBand,
-                        stationId2CoordinateMap, statValues, stationid2StationindexMap);
-                if (stationsToUse.size() < pNum) {
-                    pm.message("Found only " + stationsToUse.size() + " for basin " + basinindex2basinidMap.get(i)
-                            + " and bandid " + bandId + ".");
-                }
-
-                /*
-                 * now we have the list of stations to use. With this list we
-                 * need to enable (1) the proper matrix positions inside the
-                 * stations-basins matrix.
-                 */
-                // i is the column (basin) index
-                // the station id index can be taken from the idStationIndexMap
-                // System.out.print("STATIONS for basin " + basinindex2basinidMap.get(i) + ": ");
-                for( Integer stationIdToEnable : stationsToUse ) {
-                    int stIndex = stationid2StationindexMap.get(stationIdToEnable);
-                    stationsBasins[stIndex][i] = 1;
-
-                    // System.out.print(stationIdToEnable + ", ");
-                }
-                // System.out.println();
-                activeStationsForThisBasin = activeStationsForThisBasin + stationsToUse.size();
-            }
-
-            activeStationsPerBasin[i] = activeStationsForThisBasin;
-        }
-
-        return stationsBasins;
-    }
-    /**
-     * @param basinBaricenterCoordinate the basin baricenter coordinate used to 
-     *                      Calculate distances with stations.
-     * @param stationIdsToSearch the list of stations.
-     * @param stationId2CoordinateMap
-     * @param statValues the array of data to consider. Used to identify stations
-     *                      that have no data for an instant.
-     * @param idStationIndexMap
-     * @return the list of needed nearest stations.
-     */
-    private List<Integer> extractStationsToUse( Coordinate basinBaricenterCoordinate, List<Integer> stationIdsToSearch,
-            HashMap<Integer, Coordinate> stationId2CoordinateMap, double[] statValues, HashMap<Integer, Integer> idStationIndexMap ) {
-
-        List<Integer> stationsToUse = new ArrayList<Integer>();
-        List<Integer> stationsLeftOver = new ArrayList<Integer>();
-        Map<Double, Integer> sortedByDistanceStationsMap = new TreeMap<Double, Integer>();
-        for( Integer stId : stationIdsToSearch ) {
-            /*
-             * check the values of the stations. If there are novalues and there
-             * are enough stations left, disable them
-             */
-            double currentValue = statValues[stationid2StationindexMap.get(stId)];
-            if (isNovalue(currentValue)) {
-                // if the station has a novalue, jump over it, even without
-                // adding the station.
-                // out.println("Jump over station: " + stId);
-                stationsLeftOver.add(stId);
-                continue;
-            }
-
-            /*
-             * if it gets here, the station has a value. 
-             * Put it to the list of stations to be checked 
-             * for which is nearer. 
-             */
-            Coordinate stationCoord = stationId2CoordinateMap.get(stId);
-            double distance = basinBaricenterCoordinate.distance(stationCoord);
-            sortedByDistanceStationsMap.put(distance, stId);
-        }
-        Collection<Integer> statIds = sortedByDistanceStationsMap.values();
-        Iterator<Integer> iterator = statIds.iterator();
-        for( int i = 0; i < statIds.size(); i++ ) {
-            if (iterator.hasNext() && i < pNum) {
-                stationsToUse.add(iterator.next());
-            } else if (iterator.hasNext() && i >= pNum) {
-                stationsLeftOver.add(iterator.next());
-            } else {
-                System.out.println("SHOULD THIS EVER HAPPEN???");
-                break;
-            }
-        }
-
-        /*
-         * if not enough stations were collected, add also stations that
-         * don't have values. Those stations are taken in random way, 
-         * since their value won't be considered.  
-         */
-        if (stationsToUse.size() < pNum) {
-            for( int i = 0; i < pNum - stationsToUse.size(); i++ ) {
-                stationsToUse.add(stationsLeftOver.get(i));
-            }
-        }
-
-        return stationsToUse;
-    }
-
     /**
      * Fills the elevation and id arrays for the stations, ordering in ascending
      * elevation order.
@@ -0,0 +1,75 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.awt.image.WritableRaster;
+import java.io.File;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.ChannelNetwork;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.jgrasstools.hortonmachine.utils.HMTestMaps;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Test the {@link ChannelNetwork} graph.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestChannelNetwork extends HMTestCase {
+
+    public void testChannelNetwork() throws Exception {
+        RegionMap envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", HMTestMaps.mflowDataBorder, envelopeParams,
+                crs, true);
+        GridCoverage2D netCoverage = CoverageUtilities.buildCoverage("net", HMTestMaps.extractNet1Data, envelopeParams, crs,
+                true);
+        GridCoverage2D tcaCoverage = CoverageUtilities.buildCoverage("tca", HMTestMaps.tcaData, envelopeParams, crs, true);
+
+        RandomIter flowIter = CoverageUtilities.getRandomIterator(flowCoverage);
+        RandomIter netIter = CoverageUtilities.getRandomIterator(netCoverage);
+        RandomIter tcaIter = CoverageUtilities.getRandomIterator(tcaCoverage);
+        ChannelNetwork channelNetwork = new ChannelNetwork(flowIter, netIter, tcaIter, envelopeParams, pm);
+
+        WritableRaster strahlerWR = channelNetwork.toRaster(channelNetwork.getStrahler());
+        GridCoverage2D strahlerCoverage = CoverageUtilities.buildCoverage("strahler", strahlerWR, envelopeParams, crs);
+        checkMatrixEqual(strahlerCoverage.getRenderedImage(), HMTestMaps.strahlerData, 0);
+        // the outlet link is the first and collects all the sources
+        assertEquals(-1, channelNetwork.getDownstreamLink(0));
+        assertEquals(12, channelNetwork.getMagnitude()[0]);
+        assertEquals(1, channelNetwork.getHackOrder()[0]);
+
+        File cacheFile = File.createTempFile("jgt-", ChannelNetwork.CACHE_EXTENSION);
+        try {
+            channelNetwork.save(cacheFile);
+            ChannelNetwork readNetwork = ChannelNetwork.load(cacheFile);
+            assertEquals(channelNetwork.getLinksNum(), readNetwork.getLinksNum());
+            strahlerWR = readNetwork.toRaster(readNetwork.getStrahler());
+            strahlerCoverage = CoverageUtilities.buildCoverage("strahler", strahlerWR, envelopeParams, crs);
+            checkMatrixEqual(strahlerCoverage.getRenderedImage(), HMTestMaps.strahlerData, 0);
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.debrisflow.DebrisFlowEngine;
+
+/**
+ * Test for the {@link DebrisFlowEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDebrisFlowEngine extends HMTestCase {
+
+    private static final int COLS = 60;
+    private static final int ROWS = 80;
+
+    private double[] elev;
+
+    protected void setUp() throws Exception {
+        // an inclined rough surface with a flat area and some holes
+        Random random = new Random(7);
+        elev = new double[COLS * ROWS];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                double value = 1000.0 - r * 5.0 + random.nextDouble() * 8.0;
+                if (r > 60 && c < 20) {
+                    value = 700.0;
+                } else if (random.nextDouble() < 0.02) {
+                    value = Double.NaN;
+                }
+                elev[r * COLS + c] = value;
+            }
+        }
+        elev[30] = 1100;
+    }
+
+    public void testReproducibility() throws Exception {
+        DebrisFlowEngine engine = new DebrisFlowEngine(elev, COLS, ROWS, 10.0, 10.0);
+
+        int[] reference = new int[COLS * ROWS];
+        int processed = engine.run(30, 0, 500, 42, Long.MAX_VALUE, 1, reference, pm);
+        assertEquals(499, processed);
+        int hitCells = 0;
+        for( int hit : reference ) {
+            assertTrue(hit <= 500);
+            if (hit > 0) {
+                hitCells++;
+            }
+        }
+        assertTrue(hitCells > 100);
+
+        for( int threads : new int[]{2, 5} ) {
+            int[] hits = new int[COLS * ROWS];
+            assertEquals(499, engine.run(30, 0, 500, 42, Long.MAX_VALUE, threads, hits, pm));
+            assertTrue(Arrays.equals(reference, hits));
+        }
+
+        int[] other = new int[COLS * ROWS];
+        engine.run(30, 0, 500, 43, Long.MAX_VALUE, 1, other, pm);
+        assertFalse(Arrays.equals(reference, other));
+    }
+
+    public void testThreshold() throws Exception {
+        DebrisFlowEngine engine = new DebrisFlowEngine(elev, COLS, ROWS, 10.0, 10.0);
+
+        int[] reference = new int[COLS * ROWS];
+        int processed = engine.run(30, 0, 500, 3, 300, 1, reference, pm);
+        assertTrue(processed < 499);
+
+        int[] hits = new int[COLS * ROWS];
+        assertEquals(processed, engine.run(30, 0, 500, 3, 300, 4, hits, pm));
+        assertTrue(Arrays.equals(reference, hits));
+    }
+
+}
@@ -1,227 +1,242 @@
-//package org.jgrasstools.hortonmachine.models.hm;
-//
-//import java.io.File;
-//import java.net.URL;
-//import java.util.HashMap;
-//import java.util.List;
-//
-//import org.geotools.data.simple.SimpleFeatureCollection;
-//import org.jgrasstools.gears.io.eicalculator.EIAreas;
-//import org.jgrasstools.gears.io.eicalculator.OmsEIAreasReader;
-//import org.jgrasstools.gears.io.eicalculator.EIEnergy;
-//import org.jgrasstools.gears.io.eicalculator.OmsEIEnergyReader;
-//import org.jgrasstools.gears.io.generic.OmsId2ValueArrayReader;
-//import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorWriter;
-//import org.jgrasstools.gears.libs.monitor.PrintStreamProgressMonitor;
-//import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.energybalance.OmsEnergyBalance;
-//import org.jgrasstools.hortonmachine.utils.HMTestCase;
-///**
-// * Test OmsEnergyBalance.
-// * 
-// * @author Andrea Antonello (www.hydrologis.com)
-// */
-//public class TestEnergyBalance extends HMTestCase {
-//
-//    public void testEnergyBalance() throws Exception {
-//
-//        PrintStreamProgressMonitor pm = new PrintStreamProgressMonitor(System.out, System.out);
-//
-//        URL areasUrl = this.getClass().getClassLoader().getResource("eicalculator_out_areas.csv");
-//        URL energyUrl = this.getClass().getClassLoader().getResource("eicalculator_out_energy.csv");
-//
-//        URL rainUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_rain.csv");
-//
-//        URL tempUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_temperature.csv");
-//        URL windUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_windspeed.csv");
-//        URL pressureUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_pressure.csv");
-//        URL humidityUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_humidity.csv");
-//        URL dtdayUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_dtday.csv");
-//        URL dtmonthUrl = this.getClass().getClassLoader().getResource("energybalance_in_data_dtmonth.csv");
-//
-//        URL basinsUrl = this.getClass().getClassLoader().getResource("jami_in_basins.shp");
-//
-//        OmsEIAreasReader areas = new OmsEIAreasReader();
-//        File areaFile = new File(areasUrl.toURI());
-//        areas.file = areaFile.getAbsolutePath();
-//        areas.pSeparator = "\\s+";
-//        areas.pm = pm;
-//        areas.read();
-//        List<EIAreas> areasList = areas.outAreas;
-//        areas.close();
-//
-//        OmsEIEnergyReader energy = new OmsEIEnergyReader();
-//        energy.file = new File(energyUrl.toURI()).getAbsolutePath();
-//        energy.pSeparator = "\\s+";
-//        energy.pm = pm;
-//        energy.read();
-//        List<EIEnergy> energyList = energy.outEnergy;
-//        energy.close();
-//
-//        OmsShapefileFeatureReader basinsReader = new OmsShapefileFeatureReader();
-//        basinsReader.file = new File(basinsUrl.toURI()).getAbsolutePath();
-//        basinsReader.readFeatureCollection();
-//        SimpleFeatureCollection basinsFC = basinsReader.geodata;
-//
-//        OmsTimeSeriesIteratorReader rainReader = new OmsTimeSeriesIteratorReader();
-//        rainReader.file = new File(rainUrl.toURI()).getAbsolutePath();
-//        rainReader.idfield = "ID";
-//        rainReader.tStart = "2000-01-01 00:00";
-//        rainReader.tTimestep = 60;
-//        // reader.tEnd = "2000-01-01 00:00";
-//        rainReader.fileNovalue = "-9999";
-//        rainReader.initProcess();
-//
-//        OmsId2ValueArrayReader tempReader = new OmsId2ValueArrayReader();
-//        tempReader.file = new File(tempUrl.toURI()).getAbsolutePath();
-//        tempReader.pCols = 5;
-//        tempReader.pSeparator = "\\s+";
-//        tempReader.fileNovalue = "-9999.0";
-//
-//        OmsId2ValueArrayReader pressureReader = new OmsId2ValueArrayReader();
-//        pressureReader.file = new File(pressureUrl.toURI()).getAbsolutePath();
-//        pressureReader.pCols = 5;
-//        pressureReader.pSeparator = "\\s+";
-//        pressureReader.fileNovalue = "-9999.0";
-//
-//        OmsId2ValueArrayReader humidityReader = new OmsId2ValueArrayReader();
-//        humidityReader.file = new File(humidityUrl.toURI()).getAbsolutePath();
-//        humidityReader.pCols = 5;
-//        humidityReader.pSeparator = "\\s+";
-//        humidityReader.fileNovalue = "-9999.0";
-//
-//        OmsId2ValueArrayReader windReader = new OmsId2ValueArrayReader();
-//        windReader.file = new File(windUrl.toURI()).getAbsolutePath();
-//        windReader.pCols = 5;
-//        windReader.pSeparator = "\\s+";
-//        windReader.fileNovalue = "-9999.0";
-//
-//        OmsId2ValueArrayReader dtdayReader = new OmsId2ValueArrayReader();
-//        dtdayReader.file = new File(dtdayUrl.toURI()).getAbsolutePath();
-//        dtdayReader.pCols = 5;
-//        dtdayReader.pSeparator = "\\s+";
-//        dtdayReader.fileNovalue = "-9999.0";
-//
-//        OmsId2ValueArrayReader dtmonthReader = new OmsId2ValueArrayReader();
-//        dtmonthReader.file = new File(dtmonthUrl.toURI()).getAbsolutePath();
-//        dtmonthReader.pCols = 5;
-//        dtmonthReader.pSeparator = "\\s+";
-//        dtmonthReader.fileNovalue = "-9999.0";
-//
-//        OmsEnergyBalance energyBalance = new OmsEnergyBalance();
-//        energyBalance.pm = pm;
-//        energyBalance.inBasins = basinsFC;
-//        energyBalance.inEnergy = energyList;
-//        energyBalance.inAreas = areasList;
-//        energyBalance.fBasinid = "netnum";
-//        energyBalance.fBasinlandcover = "uso_reclas";
-//        energyBalance.pInitswe = 500;
-//        energyBalance.pGlacierid = 15;
-//        // energyBalance.pSnowrefv = 0.95;
-//        energyBalance.tTimestep = rainReader.tTimestep;
-//
-//        File pnetFile = new File(areaFile.getParentFile(), "energybalance_out_pnet.csv");
-//        pnetFile = classesTestFile2srcTestResourcesFile(pnetFile);
-//        OmsTimeSeriesIteratorWriter pnetWriter = new OmsTimeSeriesIteratorWriter();
-//        pnetWriter.file = pnetFile.getAbsolutePath();
-//        pnetWriter.tStart = rainReader.tStart;
-//        pnetWriter.tTimestep = rainReader.tTimestep;
-//
-//        while( rainReader.doProcess ) {
-//            rainReader.nextRecord();
-//            HashMap<Integer, double[]> id2ValueMap = rainReader.outFolder;
-//            energyBalance.inRain = id2ValueMap;
-//
-//            tempReader.readNextLine();
-//            HashMap<Integer, double[]> id2ValueArrayMap = tempReader.data;
-//            energyBalance.inTemp = id2ValueArrayMap;
-//
-//            windReader.readNextLine();
-//            id2ValueArrayMap = windReader.data;
-//            energyBalance.inWind = id2ValueArrayMap;
-//
-//            pressureReader.readNextLine();
-//            id2ValueArrayMap = pressureReader.data;
-//            energyBalance.inPressure = id2ValueArrayMap;
-//
-//            humidityReader.readNextLine();
-//            id2ValueArrayMap = humidityReader.data;
-//            energyBalance.inRh = id2ValueArrayMap;
-//
-//            dtdayReader.readNextLine();
-//            id2ValueArrayMap = dtdayReader.data;
-//            energyBalance.inDtday = id2ValueArrayMap;
-//
-//            dtmonthReader.readNextLine();
-//            id2ValueArrayMap = dtmonthReader.data;
-//            energyBalance.inDtmonth = id2ValueArrayMap;
-//
-//            energyBalance.tCurrent = rainReader.tCurrent;
-//            energyBalance.process();
-//
-//            HashMap<Integer, double[]> pnet = energyBalance.outPnet;
-//            HashMap<Integer, double[]> prain = energyBalance.outPrain;
-//            HashMap<Integer, double[]> psnow = energyBalance.outPsnow;
-//
-//            pnetWriter.inData = prain;
-//            pnetWriter.writeNextLine();
-//
-//        }
-//        rainReader.close();
-//
-//        tempReader.close();
-//        pressureReader.close();
-//        windReader.close();
-//        humidityReader.close();
-//        dtdayReader.close();
-//        dtmonthReader.close();
-//
-//        pnetWriter.close();
-//
-//        // double[] result1221 = new double[]{9.925938910342381, 8.1, 7.561630032493953,
-//        // 5.86663426553045, 3.4220912542795046};
-//        //
-//        // for( int i = 0; i < result1221.length; i++ ) {
-//        // assertEquals(result1221[i], values1221[i], 0.0001);
-//        // }
-//        
-//        if (!pnetFile.delete()) {
-//            pnetFile.deleteOnExit();
-//        }
-//
-//    }
-//
-//    private double[] expectedPnet = new double[]{699.0, 0.0, 1065.0, 0.0, 1210.0, 0.0, 762.0, 0.0, 626.0, 0.0, 623.0, 0.0, 616.0,
-//            0.0, 944.0, 0.0, 1209.0, 0.0, 1039.0, 0.0, 624.0, 0.0, 1097.0, 0.0, 1212.0, 0.0, 1263.0, 0.0, 629.0, 0.0, 1104.0,
-//            0.0, 621.0, 0.0, 1179.0, 0.0, 1042.0, 0.0, 613.0, 0.0, 946.0, 0.0, 693.0, 0.0, 763.0, 0.0, 769.0, 0.0, 1292.0, 0.0,
-//            618.0, 0.0, 1068.0, 0.0, 615.0, 0.0, 630.0, 0.0, 961.0, 0.0, 617.0, 0.0, 627.0, 0.0, 625.0, 0.0, 1211.0, 0.0, 1221.0,
-//            0.0, 1064.0, 0.0, 619.0, 0.0, 1041.0, 0.0, 1202.0, 0.0, 841.0, 0.0, 1040.0, 0.0, 1069.0, 0.0, 1260.0, 0.0, 1242.0,
-//            0.0, 622.0, 0.0, 1291.0, 0.0, 1070.0, 0.0, 620.0, 0.0, 1075.0, 0.0, 1066.0, 0.0, 628.0, 0.0, 1105.0, 0.0, 945.0, 0.0,
-//            614.0, 0.0, 970.0, 0.0};
-//    private double[] expectedPrain = new double[]{699.0, 0.1454180460051585, 1065.0, 0.14999999760693658, 1210.0,
-//            0.23190963611777973, 762.0, 0.2972437781933401, 626.0, 0.14999999500822495, 623.0, 0.14999999564750602, 616.0,
-//            0.29974445956392226, 944.0, 0.24999999116857943, 1209.0, 0.20843756700693264, 1039.0, 0.2046855716152388, 624.0,
-//            0.14997390897836843, 1097.0, 0.14993486689479696, 1212.0, 0.24256385305908343, 1263.0, 0.2442336421296105, 629.0,
-//            0.14999999820645707, 1104.0, 0.14999999806845538, 621.0, 0.14999999440686618, 1179.0, 0.14997921950545054, 1042.0,
-//            0.15008797554452888, 613.0, 0.29764065702174186, 946.0, 0.29999999713668396, 693.0, 0.285995906054635, 763.0,
-//            0.2999999966009149, 769.0, 0.14982853690272288, 1292.0, 0.14999999525968377, 618.0, 0.2999057459276908, 1068.0,
-//            0.2063624744985185, 615.0, 0.29955312661787636, 630.0, 0.15003825036919352, 961.0, 0.14999999555508045, 617.0,
-//            0.249999988359043, 627.0, 0.14994771192193923, 625.0, 0.1499999952331639, 1211.0, 0.25384614779184755, 1221.0,
-//            0.14999999615251092, 1064.0, 0.14999999927172133, 619.0, 0.1499999985664037, 1041.0, 0.14773406320776558, 1202.0,
-//            0.14997890273328196, 841.0, 0.2999479041662106, 1040.0, 0.1500000009061293, 1069.0, 0.2499999928695707, 1260.0,
-//            0.14999999950137963, 1242.0, 0.15000000222012597, 622.0, 0.14999999497489233, 1291.0, 0.1499748491180227, 1070.0,
-//            0.24999999222422858, 620.0, 0.14997830946474452, 1075.0, 0.14994904177153595, 1066.0, 0.15020407797302815, 628.0,
-//            0.1499999975559162, 1105.0, 0.1499805447102739, 945.0, 0.24942877310354855, 614.0, 0.2760015917709732, 970.0,
-//            0.22512322172103927};
-//    private double[] expectedPSnow = new double[]{699.0, 0.004581945735074934, 1065.0, 0.0, 1210.0, 0.018025491089557658, 762.0,
-//            0.0027562177310753466, 626.0, 0.0, 623.0, 0.0, 616.0, 0.0, 944.0, 0.0, 1209.0, 0.0415015727199312, 1039.0,
-//            0.04531442069636117, 624.0, 0.0, 1097.0, 0.0, 1212.0, 0.007436140804802122, 1263.0, 0.005766353985273886, 629.0, 0.0,
-//            1104.0, 0.0, 621.0, 0.0, 1179.0, 0.0, 1042.0, 0.0, 613.0, 0.0023593381768641287, 946.0, 0.0, 693.0,
-//            0.013924429209936248, 763.0, 0.0, 769.0, 1.714554984036082E-4, 1292.0, 0.0, 618.0, 0.0, 1068.0, 0.04363751926076958,
-//            615.0, 4.468691949822926E-4, 630.0, 0.0, 961.0, 0.0, 617.0, 0.0, 627.0, 0.0, 625.0, 0.0, 1211.0, 0.0, 1221.0, 0.0,
-//            1064.0, 0.0, 619.0, 0.0, 1041.0, 0.0022773621234270292, 1202.0, 0.0, 841.0, 0.0, 1040.0, 0.0, 1069.0, 0.0, 1260.0,
-//            0.0, 1242.0, 0.0, 622.0, 0.0, 1291.0, 0.0, 1070.0, 0.0, 620.0, 0.0, 1075.0, 0.0, 1066.0, 0.0, 628.0, 0.0, 1105.0,
-//            0.0, 945.0, 5.712168815597725E-4, 614.0, 0.023848027492350717, 970.0, 0.02487676985069746};
-//
-//}
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.io.eicalculator.EIAreas;
+import org.jgrasstools.gears.io.eicalculator.EIEnergy;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.energybalance.OmsEnergyBalance;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+/**
+ * Test OmsEnergyBalance.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestEnergyBalance extends HMTestCase {
+
+    private static final int BASINS = 12;
+    private static final int ALTIMETRIC_BANDS = 3;
+    private static final int ENERGETIC_BANDS = 3;
+    private static final int TIMESTEPS = 300;
+
+    public void testSerialParallel() throws Exception {
+        List<HashMap<Integer, double[]>> serial = runEnergyBalance(1);
+        List<HashMap<Integer, double[]>> parallel = runEnergyBalance(4);
+
+        assertEquals(serial.size(), parallel.size());
+        for( int i = 0; i < serial.size(); i++ ) {
+            HashMap<Integer, double[]> expected = serial.get(i);
+            HashMap<Integer, double[]> actual = parallel.get(i);
+            assertEquals(BASINS, expected.size());
+            assertEquals(expected.keySet(), actual.keySet());
+            for( Integer basinId : expected.keySet() ) {
+                double[] expectedValues = expected.get(basinId);
+                double[] actualValues = actual.get(basinId);
+                assertEquals(expectedValues.length, actualValues.length);
+                for( int j = 0; j < expectedValues.length; j++ ) {
+                    assertEquals(expectedValues[j], actualValues[j], 0.0);
+                }
+            }
+        }
+    }
+
+    public void testPrecipitationPartition() throws Exception {
+        DefaultFeatureCollection basins = createBasins();
+        List<EIAreas> areas = createAreas();
+        OmsEnergyBalance energyBalance = createEnergyBalance(basins, areas, 4);
+
+        // the basin areas in km2, as the areas of the bands
+        HashMap<Integer, Double> basinAreas = new HashMap<Integer, Double>();
+        for( SimpleFeature basin : FeatureUtilities.featureCollectionToList(basins) ) {
+            int basinId = ((Number) basin.getAttribute("netnum")).intValue();
+            basinAreas.put(basinId, ((Geometry) basin.getDefaultGeometry()).getArea() / 1000000.0);
+        }
+        for( int t = 0; t < 24; t++ ) {
+            runTimestep(energyBalance, t);
+
+            /*
+             * the rain of a basin is split on every altimetric band by its temperature, all
+             * rain above pTrain, all snow below pTsnow and linearly in between
+             */
+            for( int i = 0; i < BASINS; i++ ) {
+                int basinId = 100 + i;
+                double basinArea = basinAreas.get(basinId);
+                double rain = energyBalance.inRain.get(basinId)[0];
+                double[] temperatures = energyBalance.inTemp.get(basinId);
+                double expectedRain = 0;
+                double expectedSnow = 0;
+                for( EIAreas area : areas ) {
+                    if (area.basinId != basinId) {
+                        continue;
+                    }
+                    double temperature = temperatures[area.altimetricBandId];
+                    double rainFraction = (temperature - energyBalance.pTsnow) / (energyBalance.pTrain - energyBalance.pTsnow);
+                    rainFraction = Math.max(0, Math.min(1, rainFraction));
+                    expectedRain = expectedRain + rain * rainFraction * area.areaValue / basinArea;
+                    expectedSnow = expectedSnow + rain * (1 - rainFraction) * area.areaValue / basinArea;
+                }
+                assertEquals(expectedRain, energyBalance.outPrain.get(basinId)[0], DELTA);
+                assertEquals(expectedSnow, energyBalance.outPsnow.get(basinId)[0], DELTA);
+            }
+        }
+        energyBalance.writeSafePoint();
+    }
+
+    /*
+     * Runs the hourly timesteps on synthetic basins, returning all the outputs of every timestep.
+     */
+    private List<HashMap<Integer, double[]>> runEnergyBalance( int threads ) throws Exception {
+        OmsEnergyBalance energyBalance = createEnergyBalance(createBasins(), createAreas(), threads);
+
+        List<HashMap<Integer, double[]>> results = new ArrayList<HashMap<Integer, double[]>>();
+        for( int t = 0; t < TIMESTEPS; t++ ) {
+            runTimestep(energyBalance, t);
+
+            results.add(energyBalance.outPnet);
+            results.add(energyBalance.outPrain);
+            results.add(energyBalance.outPsnow);
+            results.add(energyBalance.outSwe);
+            results.add(energyBalance.outNetradiation);
+            results.add(energyBalance.outNetshortradiation);
+        }
+        energyBalance.writeSafePoint();
+        return results;
+    }
+
+    private OmsEnergyBalance createEnergyBalance( DefaultFeatureCollection basins, List<EIAreas> areas, int threads ) {
+        OmsEnergyBalance energyBalance = new OmsEnergyBalance();
+        energyBalance.pm = pm;
+        energyBalance.inBasins = basins;
+        energyBalance.inEnergy = createEnergy();
+        energyBalance.inAreas = areas;
+        energyBalance.fBasinid = "netnum";
+        energyBalance.fBasinlandcover = "uso_reclas";
+        energyBalance.pInitswe = 100;
+        energyBalance.pGlacierid = 15;
+        energyBalance.tTimestep = 60;
+        energyBalance.pMaxThreads = threads;
+        return energyBalance;
+    }
+
+    /*
+     * Runs the hourly timestep t, with temperatures around zero changing over the day.
+     */
+    private void runTimestep( OmsEnergyBalance energyBalance, int t ) throws Exception {
+        Random random = new Random(1000 + t);
+        energyBalance.inRain = createData(random, 1, 2, 1);
+        energyBalance.inTemp = createData(random, (t % 24) / 4.0 - 3, 6, ALTIMETRIC_BANDS);
+        energyBalance.inWind = createData(random, 3, 2, ALTIMETRIC_BANDS);
+        energyBalance.inPressure = createData(random, 900, 50, ALTIMETRIC_BANDS);
+        energyBalance.inRh = createData(random, 70, 30, ALTIMETRIC_BANDS);
+        energyBalance.inDtday = createData(random, 8, 4, ALTIMETRIC_BANDS);
+        energyBalance.inDtmonth = createData(random, 10, 4, ALTIMETRIC_BANDS);
+        energyBalance.tCurrent = String.format("2000-%02d-%02d %02d:00", 1 + t / 24 / 28, 1 + (t / 24) % 28, t % 24);
+        energyBalance.process();
+    }
+
+    /*
+     * Square basins, every fifth is a glacier.
+     */
+    private DefaultFeatureCollection createBasins() {
+        GeometryFactory gf = GeometryUtilities.gf();
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("basins");
+        b.add("the_geom", Polygon.class);
+        b.add("netnum", Integer.class);
+        b.add("uso_reclas", Integer.class);
+        SimpleFeatureType type = b.buildFeatureType();
+
+        DefaultFeatureCollection basins = new DefaultFeatureCollection();
+        for( int i = 0; i < BASINS; i++ ) {
+            double side = Math.sqrt(1E6 * (5 + i % 7));
+            double x = i * 5000.0;
+            Polygon polygon = gf.createPolygon(gf.createLinearRing(new Coordinate[]{new Coordinate(x, 0),
+                    new Coordinate(x + side, 0), new Coordinate(x + side, side), new Coordinate(x, side), new Coordinate(x, 0)}),
+                    null);
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+            builder.addAll(new Object[]{polygon, 100 + i, i % 5 == 0 ? 15 : 1});
+            basins.add(builder.buildFeature(null));
+        }
+        return basins;
+    }
+
+    private List<EIEnergy> createEnergy() {
+        Random random = new Random(1);
+        List<EIEnergy> energyList = new ArrayList<EIEnergy>();
+        for( int i = 0; i < BASINS; i++ ) {
+            for( int j = 0; j < ENERGETIC_BANDS; j++ ) {
+                for( int month = 0; month < 6; month++ ) {
+                    EIEnergy energy = new EIEnergy();
+                    energy.basinId = 100 + i;
+                    energy.energeticBandId = j;
+                    energy.virtualMonth = month;
+                    energy.energyValue = 0.5 + random.nextDouble();
+                    energyList.add(energy);
+                }
+            }
+        }
+        return energyList;
+    }
+
+    private List<EIAreas> createAreas() {
+        Random random = new Random(2);
+        List<EIAreas> areasList = new ArrayList<EIAreas>();
+        for( int i = 0; i < BASINS; i++ ) {
+            for( int a = 0; a < ALTIMETRIC_BANDS; a++ ) {
+                for( int e = 0; e < ENERGETIC_BANDS; e++ ) {
+                    EIAreas area = new EIAreas();
+                    area.basinId = 100 + i;
+                    area.altimetricBandId = a;
+                    area.energyBandId = e;
+                    area.areaValue = (5 + i % 7) / 9.0 * (0.5 + random.nextDouble());
+                    areasList.add(area);
+                }
+            }
+        }
+        return areasList;
+    }
+
+    private HashMap<Integer, double[]> createData( Random random, double base, double range, int bands ) {
+        HashMap<Integer, double[]> data = new HashMap<Integer, double[]>();
+        for( int i = 0; i < BASINS; i++ ) {
+            double[] values = new double[bands];
+            for( int band = 0; band < bands; band++ ) {
+                values[band] = base + range * (random.nextDouble() - 0.5) - band;
+            }
+            data.put(100 + i, values);
+        }
+        return data;
+    }
+}
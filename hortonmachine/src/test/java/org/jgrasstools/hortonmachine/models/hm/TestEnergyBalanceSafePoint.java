@@ -0,0 +1,58 @@
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.energybalance.SafePoint;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+
+/**
+ * Test the {@link SafePoint} files of the energy balance.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestEnergyBalanceSafePoint extends HMTestCase {
+
+    public void testSnapshots() throws Exception {
+        File file = File.createTempFile("jgt-safepoint", ".bin");
+        try {
+            SafePoint safePoint = new SafePoint(3, 2, 2);
+            for( int i = 0; i < safePoint.SWE.length; i++ ) {
+                safePoint.SWE[i] = i;
+                safePoint.U[i] = -i;
+                safePoint.Ts[i] = i / 2.0;
+                safePoint.SnAge[i] = i * 3;
+            }
+            safePoint.setTime(1000);
+            safePoint.write(file);
+            long fullLength = file.length();
+
+            // change a single basin, only that is appended
+            safePoint.SWE[safePoint.index(1, 1, 0)] = 99;
+            safePoint.setTime(2000);
+            safePoint.appendSnapshot(file);
+            assertTrue(file.length() - fullLength < fullLength / 2);
+
+            SafePoint readSafePoint = SafePoint.read(file);
+            assertTrue(readSafePoint.hasSizes(3, 2, 2));
+            assertEquals(2000, readSafePoint.getTime());
+            assertTrue(Arrays.equals(safePoint.SWE, readSafePoint.SWE));
+            assertTrue(Arrays.equals(safePoint.U, readSafePoint.U));
+            assertTrue(Arrays.equals(safePoint.Ts, readSafePoint.Ts));
+            assertTrue(Arrays.equals(safePoint.SnAge, readSafePoint.SnAge));
+
+            // an interrupted last snapshot is ignored
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(file.length() - 4);
+            raf.close();
+            readSafePoint = SafePoint.read(file);
+            assertEquals(1000, readSafePoint.getTime());
+            assertEquals(safePoint.index(1, 1, 0), readSafePoint.SWE[safePoint.index(1, 1, 0)], DELTA);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
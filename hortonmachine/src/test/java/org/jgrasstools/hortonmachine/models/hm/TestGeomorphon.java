@@ -24,10 +24,12 @@ import javax.media.jai.iterator.RandomIter;
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.utils.PrintUtilities;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.coverage.ProfilePoint;
+import org.jgrasstools.hortonmachine.modules.geomorphology.geomorphon.GeomorphonRayCaster;
 import org.jgrasstools.hortonmachine.modules.geomorphology.geomorphon.OmsGeomorphon;
 import org.jgrasstools.hortonmachine.utils.HMTestCase;
 import org.jgrasstools.hortonmachine.utils.HMTestMaps;
@@ -67,6 +69,53 @@ public class TestGeomorphon extends HMTestCase {
 
     }
 
+    public void testRayCasterMatchesProfiles() throws Exception {
+        // different resolutions in x and y and a novalue in the map
+        double[][] mapData = HMTestMaps.mapData;
+        int rows = mapData.length;
+        int cols = mapData[0].length;
+        double north = 5140020.0;
+        double west = 1640650.0;
+        double xres = 30.0;
+        double yres = 45.0;
+        HashMap<String, Double> eP = CoverageUtilities.makeRegionParamsMap(north, north - rows * yres, west, west + cols * xres,
+                xres, yres, cols, rows);
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D inElev = CoverageUtilities.buildCoverage("elevation", mapData, eP, crs, true);
+
+        double radius = 100.0;
+        double threshold = 1.0;
+        RandomIter elevIter = CoverageUtilities.getRandomIterator(inElev);
+        GridGeometry2D gridGeometry = inElev.getGridGeometry();
+        GeomorphonRayCaster rayCaster = new GeomorphonRayCaster(radius, xres, yres);
+        double[][] expected = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                expected[r][c] = OmsGeomorphon.calculateGeomorphon(elevIter, gridGeometry, radius, threshold,
+                        radius / Math.sqrt(2.0), c, r);
+                double classification = rayCaster.calculateGeomorphon(elevIter, cols, rows, threshold, c, r);
+                if (JGTConstants.isNovalue(expected[r][c])) {
+                    assertTrue(JGTConstants.isNovalue(classification));
+                } else {
+                    assertEquals(expected[r][c], classification, DELTA);
+                }
+            }
+        }
+        elevIter.done();
+        assertTrue(JGTConstants.isNovalue(expected[1][1]));
+
+        for( int threads : new int[]{1, 3} ) {
+            OmsGeomorphon g = new OmsGeomorphon();
+            g.inElev = inElev;
+            g.pRadius = radius;
+            g.pThreshold = threshold;
+            g.pMaxThreads = threads;
+            g.pm = pm;
+            g.process();
+            checkMatrixEqual(g.outRaster.getRenderedImage(), expected, DELTA);
+        }
+    }
+
     public void testLastVisible2() throws Exception {
         double[][] mapData = new double[][]{//
         /*    */{500, 500, 500, 500, 500, 500, 500, 500, 500, 500}, //
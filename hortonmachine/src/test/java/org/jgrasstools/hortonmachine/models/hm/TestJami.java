@@ -1,167 +1,241 @@
-//package org.jgrasstools.hortonmachine.models.hm;
-//
-//import java.io.File;
-//import java.net.URL;
-//import java.util.HashMap;
-//import java.util.List;
-//import java.util.Map.Entry;
-//import java.util.Set;
-//
-//import org.geotools.data.simple.SimpleFeatureCollection;
-//import org.jgrasstools.gears.io.eicalculator.EIAltimetry;
-//import org.jgrasstools.gears.io.eicalculator.OmsEIAltimetryReader;
-//import org.jgrasstools.gears.io.eicalculator.EIAreas;
-//import org.jgrasstools.gears.io.eicalculator.OmsEIAreasReader;
-//import org.jgrasstools.gears.io.generic.OmsId2ValueArrayWriter;
-//import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorWriter;
-//import org.jgrasstools.gears.libs.modules.JGTConstants;
-//import org.jgrasstools.gears.libs.monitor.PrintStreamProgressMonitor;
-//import org.jgrasstools.hortonmachine.modules.statistics.jami.OmsJami;
-//import org.jgrasstools.hortonmachine.utils.HMTestCase;
-//import org.joda.time.DateTime;
-//import org.joda.time.format.DateTimeFormatter;
-///**
-// * Test jami.
-// * 
-// * @author Andrea Antonello (www.hydrologis.com)
-// */
-//public class TestJami extends HMTestCase {
-//
-//    public void testJami() throws Exception {
-//        PrintStreamProgressMonitor pm = new PrintStreamProgressMonitor(System.out, System.out);
-//
-//        URL altimUrl = this.getClass().getClassLoader().getResource("eicalculator_out_altimetry.csv");
-//        File altimetryFile = new File(altimUrl.toURI());
-//
-//        URL areasUrl = this.getClass().getClassLoader().getResource("eicalculator_out_areas.csv");
-//        File areasFile = new File(areasUrl.toURI());
-//
-//        File outputFileForEtp = new File(altimetryFile.getParentFile(), "etp_in_temp.csv");
-//        outputFileForEtp = classesTestFile2srcTestResourcesFile(outputFileForEtp);
-//
-//        File outputFile = new File(altimetryFile.getParentFile(), "jami_out_temp.csv");
-//        outputFile = classesTestFile2srcTestResourcesFile(outputFile);
-//
-//        URL stationsUrl = this.getClass().getClassLoader().getResource("jami_in_stations.shp");
-//        URL stationdataUrl = this.getClass().getClassLoader().getResource("jami_new_temp.csv");
-//        File stationDataFile = new File(stationdataUrl.toURI());
-//        URL basinsUrl = this.getClass().getClassLoader().getResource("jami_in_basins.shp");
-//
-//        OmsEIAltimetryReader altim = new OmsEIAltimetryReader();
-//        altim.file = altimetryFile.getAbsolutePath();
-//        altim.pSeparator = "\\s+";
-//        altim.pm = pm;
-//        altim.read();
-//        List<EIAltimetry> altimList = altim.outAltimetry;
-//        altim.close();
-//
-//        OmsEIAreasReader areas = new OmsEIAreasReader();
-//        areas.file = areasFile.getAbsolutePath();
-//        areas.pSeparator = "\\s+";
-//        areas.pm = pm;
-//        areas.read();
-//        List<EIAreas> areasList = areas.outAreas;
-//        areas.close();
-//
-//        OmsShapefileFeatureReader stationsReader = new OmsShapefileFeatureReader();
-//        stationsReader.file = new File(stationsUrl.toURI()).getAbsolutePath();
-//        stationsReader.readFeatureCollection();
-//        SimpleFeatureCollection stationsFC = stationsReader.geodata;
-//
-//        OmsShapefileFeatureReader basinsReader = new OmsShapefileFeatureReader();
-//        basinsReader.file = new File(basinsUrl.toURI()).getAbsolutePath();
-//        basinsReader.readFeatureCollection();
-//        SimpleFeatureCollection basinsFC = basinsReader.geodata;
-//
-//        OmsTimeSeriesIteratorReader dataReader = new OmsTimeSeriesIteratorReader();
-//        dataReader.file = stationDataFile.getAbsolutePath();
-//        dataReader.fileNovalue = "-9999";
-//        dataReader.idfield = "ID";
-//        dataReader.tStart = "2005-05-01 00:00";
-//        dataReader.tTimestep = 60;
-//        dataReader.tEnd = "2005-05-01 03:00";
-//
-//        dataReader.initProcess();
-//
-//        OmsJami jami = new OmsJami();
-//        jami.pm = pm;
-//        jami.inAltimetry = altimList;
-//        jami.inAreas = areasList;
-//        jami.fStationid = "id_punti_m";
-//        jami.fStationelev = "quota";
-//        jami.fBasinid = "netnum";
-//        jami.pNum = 2;
-//        jami.pBins = 4;
-//        jami.pType = JGTConstants.DTDAY;
-//        jami.inStations = stationsFC;
-//        jami.inInterpolate = basinsFC;
-//
-//        OmsId2ValueArrayWriter writer = new OmsId2ValueArrayWriter();
-//        writer.file = outputFile.getAbsolutePath();
-//        writer.pSeparator = " ";
-//        writer.fileNovalue = "-9999.0";
-//
-//        OmsTimeSeriesIteratorWriter tsWriter = new OmsTimeSeriesIteratorWriter();
-//        tsWriter.file = outputFileForEtp.getAbsolutePath();
-//        tsWriter.tStart = dataReader.tStart;
-//        tsWriter.tTimestep = dataReader.tTimestep;
-//
-//        DateTimeFormatter dF = JGTConstants.utcDateFormatterYYYYMMDDHHMM;
-//        // 1 5 2005 - 1 6 2005
-//        // 30 min
-//        while( dataReader.doProcess ) {
-//            dataReader.nextRecord();
-//            DateTime runningDate = dF.parseDateTime(dataReader.tCurrent);
-//            HashMap<Integer, double[]> id2ValueMap = dataReader.outFolder;
-//            jami.inMeteo = id2ValueMap;
-//            jami.tCurrent = runningDate.toString(dF);
-//
-//            jami.process();
-//
-//            HashMap<Integer, double[]> interpolationPointId2MeteoDataMapBands = jami.outInterpolatedBand;
-//            HashMap<Integer, double[]> interpolationPointId2MeteoDataMap = jami.outInterpolated;
-//
-//            // Set<Entry<Integer, double[]>> entrySet =
-//            // interpolationPointId2MeteoDataMapBands.entrySet();
-//            // for( Entry<Integer, double[]> entry : entrySet ) {
-//            // Integer basinId = entry.getKey();
-//            // double[] valuePerBand = entry.getValue();
-//            // double value = interpolationPointId2MeteoDataMap.get(basinId)[0];
-//            // System.out.println("basin: " + basinId);
-//            // System.out.print("per band: ");
-//            // for( double bandValue : valuePerBand ) {
-//            // System.out.print(" " + bandValue);
-//            // }
-//            // System.out.println("per band: ");
-//            // System.out.println("interpolated on basin: " + value);
-//            // System.out.println("****************************");
-//            // }
-//
-//            writer.data = interpolationPointId2MeteoDataMapBands;
-//            writer.writeNextLine();
-//
-//            tsWriter.inData = interpolationPointId2MeteoDataMap;
-//            tsWriter.writeNextLine();
-//
-//            runningDate = runningDate.plusMinutes(30);
-//        }
-//
-//        dataReader.close();
-//        writer.close();
-//        tsWriter.close();
-//
-//        // for now there is no writer... waiting for the apposite module
-//
-//        // double[] result1221 = new double[]{9.925938910342381, 8.1, 7.561630032493953,
-//        // 5.86663426553045, 3.4220912542795046};
-//        //
-//        // for( int i = 0; i < result1221.length; i++ ) {
-//        // assertEquals(result1221[i], values1221[i], 0.0001);
-//        // }
-//        if (!outputFileForEtp.delete()) {
-//            outputFileForEtp.deleteOnExit();
-//        }
-//    }
-//}
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.io.eicalculator.EIAltimetry;
+import org.jgrasstools.gears.io.eicalculator.EIAreas;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.statistics.jami.OmsJami;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+/**
+ * Test jami.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestJami extends HMTestCase {
+
+    private static final int STATIONS = 60;
+    private static final int BASINS = 40;
+    private static final int BANDS = 5;
+    private static final int TIMESTEPS = 50;
+
+    private DefaultFeatureCollection stations;
+    private DefaultFeatureCollection basins;
+    private List<EIAltimetry> altimetry;
+    private List<EIAreas> areas;
+
+    @Override
+    protected void setUp() throws Exception {
+        GeometryFactory gf = GeometryUtilities.gf();
+        Random random = new Random(7);
+
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("stations");
+        b.add("the_geom", Point.class);
+        b.add("id", Integer.class);
+        b.add("quota", Double.class);
+        b.add("quota2", Double.class);
+        SimpleFeatureType stationType = b.buildFeatureType();
+        stations = new DefaultFeatureCollection();
+        for( int i = 0; i < STATIONS; i++ ) {
+            Point point = gf.createPoint(new Coordinate(random.nextInt(50), random.nextInt(50)));
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(stationType);
+            builder.addAll(new Object[]{point, 100 + i, 200 + random.nextDouble() * 2000, 2200 - i * 30.0});
+            stations.add(builder.buildFeature(null));
+        }
+
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("basins");
+        b.add("the_geom", Point.class);
+        b.add("netnum", Integer.class);
+        SimpleFeatureType basinType = b.buildFeatureType();
+        basins = new DefaultFeatureCollection();
+        altimetry = new ArrayList<EIAltimetry>();
+        areas = new ArrayList<EIAreas>();
+        for( int i = 0; i < BASINS; i++ ) {
+            Point point = gf.createPoint(new Coordinate(random.nextInt(50), random.nextInt(50)));
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(basinType);
+            builder.addAll(new Object[]{point, 1000 + i});
+            basins.add(builder.buildFeature(null));
+
+            for( int f = 0; f < BANDS; f++ ) {
+                EIAltimetry eiAltimetry = new EIAltimetry();
+                eiAltimetry.basinId = 1000 + i;
+                eiAltimetry.altimetricBandId = f;
+                eiAltimetry.elevationValue = 100 + f * 500 + random.nextDouble() * 300;
+                altimetry.add(eiAltimetry);
+
+                EIAreas eiAreas = new EIAreas();
+                eiAreas.basinId = 1000 + i;
+                eiAreas.altimetricBandId = f;
+                eiAreas.areaValue = 1 + random.nextDouble();
+                areas.add(eiAreas);
+            }
+        }
+    }
+
+    public void testSerialParallel() throws Exception {
+        int[] types = {JGTConstants.TEMPERATURE, JGTConstants.PRESSURE, JGTConstants.HUMIDITY, JGTConstants.WIND};
+        for( int type : types ) {
+            // most of the stations without data, so that also the filling of the bins is used
+            for( double missing : new double[]{0.3, 0.85} ) {
+                List<HashMap<Integer, double[]>> serial = runJami(createJami(type, 1), type, missing);
+                List<HashMap<Integer, double[]>> parallel = runJami(createJami(type, 3), type, missing);
+                checkSameValues(serial, parallel);
+            }
+        }
+    }
+
+    public void testChangedInputs() throws Exception {
+        int type = JGTConstants.TEMPERATURE;
+        OmsJami jami = createJami(type, 2);
+        runJami(jami, type, 0.3);
+
+        // the same module with other areas and station elevations gives the results of a new one
+        List<EIAreas> otherAreas = new ArrayList<EIAreas>();
+        for( EIAreas area : areas ) {
+            EIAreas otherArea = new EIAreas();
+            otherArea.basinId = area.basinId;
+            otherArea.altimetricBandId = area.altimetricBandId;
+            otherArea.areaValue = area.altimetricBandId == 0 ? 10 * area.areaValue : area.areaValue;
+            otherAreas.add(otherArea);
+        }
+        jami.inAreas = otherAreas;
+        jami.fStationelev = "quota2";
+        List<HashMap<Integer, double[]>> changed = runJami(jami, type, 0.3);
+
+        OmsJami newJami = createJami(type, 2);
+        newJami.inAreas = otherAreas;
+        newJami.fStationelev = "quota2";
+        List<HashMap<Integer, double[]>> expected = runJami(newJami, type, 0.3);
+        checkSameValues(expected, changed);
+    }
+
+    public void testLapseRateProfile() throws Exception {
+        // station temperatures that follow the adiabatic lapse rate
+        HashMap<Integer, double[]> meteo = new HashMap<Integer, double[]>();
+        for( SimpleFeature station : FeatureUtilities.featureCollectionToList(stations) ) {
+            int id = ((Number) station.getAttribute("id")).intValue();
+            double elevation = ((Number) station.getAttribute("quota")).doubleValue();
+            meteo.put(id, new double[]{20.0 - JGTConstants.GAMMA * elevation});
+        }
+        OmsJami jami = createJami(JGTConstants.TEMPERATURE, 3);
+        jami.inMeteo = meteo;
+        jami.tCurrent = "2005-05-01 00:00";
+        jami.process();
+
+        // whatever the stations used, every band lies on the same profile
+        for( int i = 0; i < BASINS; i++ ) {
+            double[] bandValues = jami.outInterpolatedBand.get(1000 + i);
+            double basinValue = 0;
+            double basinArea = 0;
+            for( int f = 0; f < BANDS; f++ ) {
+                double expected = 20.0 - JGTConstants.GAMMA * altimetry.get(i * BANDS + f).elevationValue;
+                assertEquals(expected, bandValues[f], DELTA);
+                double area = areas.get(i * BANDS + f).areaValue;
+                basinValue = basinValue + expected * area;
+                basinArea = basinArea + area;
+            }
+            assertEquals(basinValue / basinArea, jami.outInterpolated.get(1000 + i)[0], DELTA);
+        }
+    }
+
+    private OmsJami createJami( int type, int threads ) {
+        OmsJami jami = new OmsJami();
+        jami.pm = pm;
+        jami.inAltimetry = altimetry;
+        jami.inAreas = areas;
+        jami.inStations = stations;
+        jami.inInterpolate = basins;
+        jami.fStationid = "id";
+        jami.fStationelev = "quota";
+        jami.fBasinid = "netnum";
+        jami.pNum = 3;
+        jami.pBins = 4;
+        jami.pType = type;
+        jami.pMaxThreads = threads;
+        return jami;
+    }
+
+    /*
+     * Runs the timesteps, returning the values per band and per basin of every timestep.
+     */
+    private List<HashMap<Integer, double[]>> runJami( OmsJami jami, int type, double missing ) throws Exception {
+        Random random = new Random(11);
+        DateTimeFormatter dF = JGTConstants.utcDateFormatterYYYYMMDDHHMM;
+        DateTime runningDate = dF.parseDateTime("2005-05-01 00:00");
+        double offset = type == JGTConstants.PRESSURE ? 900 : type == JGTConstants.HUMIDITY ? 50 : 0;
+
+        List<HashMap<Integer, double[]>> results = new ArrayList<HashMap<Integer, double[]>>();
+        for( int t = 0; t < TIMESTEPS; t++ ) {
+            HashMap<Integer, double[]> meteo = new HashMap<Integer, double[]>();
+            for( int i = 0; i < STATIONS; i++ ) {
+                double value = 10 * Math.sin(t / 5.0) + random.nextDouble() * 5 + offset;
+                if (random.nextDouble() < missing) {
+                    value = JGTConstants.doubleNovalue;
+                }
+                meteo.put(100 + i, new double[]{value});
+            }
+            jami.inMeteo = meteo;
+            jami.tCurrent = runningDate.toString(dF);
+            jami.process();
+
+            results.add(jami.outInterpolatedBand);
+            results.add(jami.outInterpolated);
+            runningDate = runningDate.plusHours(1);
+        }
+        return results;
+    }
+
+    private void checkSameValues( List<HashMap<Integer, double[]>> expected, List<HashMap<Integer, double[]>> actual ) {
+        assertEquals(expected.size(), actual.size());
+        for( int i = 0; i < expected.size(); i++ ) {
+            HashMap<Integer, double[]> expectedMap = expected.get(i);
+            HashMap<Integer, double[]> actualMap = actual.get(i);
+            assertEquals(BASINS, expectedMap.size());
+            assertEquals(expectedMap.keySet(), actualMap.keySet());
+            for( Integer basinId : expectedMap.keySet() ) {
+                double[] expectedValues = expectedMap.get(basinId);
+                double[] actualValues = actualMap.get(basinId);
+                assertEquals(expectedValues.length, actualValues.length);
+                for( int j = 0; j < expectedValues.length; j++ ) {
+                    assertEquals(expectedValues[j], actualValues[j], 0.0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW01_ChannelPolygonMerger;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW03_NetworkHierarchyToPointsSplitter;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW04_BankfullWidthAnalyzer;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW05_BridgesDamsWidthAdder;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW06_SlopeToNetworkAdder;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW08_NetworBufferMergerHolesRemover;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW09_AreaToNetpointAssociator;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW10_NetworkPropagator;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.OmsNetworkAttributesBuilder;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.jgrasstools.hortonmachine.utils.HMTestMaps;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Test {@link OmsLWRecruitmentPipeline} against the single steps run one after the other.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestLWRecruitmentPipeline extends HMTestCase {
+
+    private CoordinateReferenceSystem crs;
+    private GridCoverage2D netCoverage;
+    private GridCoverage2D flowCoverage;
+    private GridCoverage2D tcaCoverage;
+    private GridCoverage2D slopeCoverage;
+    private GridCoverage2D dtmCoverage;
+    private GridCoverage2D dsmCoverage;
+    private GridCoverage2D standCoverage;
+    private GridCoverage2D connectivityCoverage;
+    private SimpleFeatureCollection bankfullFC;
+    private SimpleFeatureCollection bridgesFC;
+    private SimpleFeatureCollection damsFC;
+    private SimpleFeatureCollection geoFC;
+
+    protected void setUp() throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        crs = HMTestMaps.getCrs();
+
+        netCoverage = CoverageUtilities.buildCoverage("net", HMTestMaps.extractNet1Data, envelopeParams, crs, true);
+        flowCoverage = CoverageUtilities.buildCoverage("flow", HMTestMaps.mflowDataBorder, envelopeParams, crs, true);
+        tcaCoverage = CoverageUtilities.buildCoverage("tca", HMTestMaps.tcaData, envelopeParams, crs, true);
+        slopeCoverage = CoverageUtilities.buildCoverage("slope", HMTestMaps.slopeData, envelopeParams, crs, true);
+        dtmCoverage = CoverageUtilities.buildCoverage("dtm", HMTestMaps.pitData, envelopeParams, crs, true);
+        double[][] pitData = HMTestMaps.pitData;
+        double[][] dsmData = new double[pitData.length][pitData[0].length];
+        double[][] standData = new double[pitData.length][pitData[0].length];
+        double[][] connectivityData = new double[pitData.length][pitData[0].length];
+        for( int r = 0; r < pitData.length; r++ ) {
+            for( int c = 0; c < pitData[0].length; c++ ) {
+                dsmData[r][c] = pitData[r][c] + 10 + c;
+                standData[r][c] = 100 + 10 * r;
+                connectivityData[r][c] = 1;
+            }
+        }
+        dsmCoverage = CoverageUtilities.buildCoverage("dsm", dsmData, envelopeParams, crs, true);
+        standCoverage = CoverageUtilities.buildCoverage("stand", standData, envelopeParams, crs, true);
+        connectivityCoverage = CoverageUtilities.buildCoverage("connectivity", connectivityData, envelopeParams, crs, true);
+
+        // the bankfull area is a buffer around the network lines
+        OmsNetworkAttributesBuilder netBuilder = new OmsNetworkAttributesBuilder();
+        netBuilder.inNet = netCoverage;
+        netBuilder.inFlow = flowCoverage;
+        netBuilder.inTca = tcaCoverage;
+        netBuilder.doHack = false;
+        netBuilder.pm = pm;
+        netBuilder.process();
+        List<Geometry> netLines = FeatureUtilities.featureCollectionToGeometriesList(netBuilder.outNet, true, null);
+        List<Geometry> bankfullPolygons = new ArrayList<Geometry>();
+        for( Geometry netLine : netLines ) {
+            bankfullPolygons.add(netLine.buffer(8.0));
+        }
+        bankfullFC = FeatureUtilities.featureCollectionFromGeometry(crs,
+                bankfullPolygons.toArray(new Geometry[bankfullPolygons.size()]));
+
+        // a bridge and a check dam on network cells
+        GeometryFactory gf = GeometryUtilities.gf();
+        bridgesFC = createPointsFC("bridges", "LENGHT", 12.0, gf.createPoint(cellCenter(envelopeParams, 4, 4)));
+        damsFC = createPointsFC("dams", "TYPE", 233.0, gf.createPoint(cellCenter(envelopeParams, 4, 6)));
+
+        Envelope envelope = new Envelope(envelopeParams.get(CoverageUtilities.WEST),
+                envelopeParams.get(CoverageUtilities.EAST), envelopeParams.get(CoverageUtilities.SOUTH),
+                envelopeParams.get(CoverageUtilities.NORTH));
+        geoFC = FeatureUtilities.featureCollectionFromGeometry(crs, gf.toGeometry(envelope));
+    }
+
+    public void testPipelineMatchesSteps() throws Exception {
+        OmsLWRecruitmentPipeline pipeline = new OmsLWRecruitmentPipeline();
+        pipeline.inBankfull = bankfullFC;
+        pipeline.inNet = netCoverage;
+        pipeline.inFlow = flowCoverage;
+        pipeline.inTca = tcaCoverage;
+        pipeline.inBridges = bridgesFC;
+        pipeline.inDams = damsFC;
+        pipeline.inSlope = slopeCoverage;
+        pipeline.inGeo = geoFC;
+        pipeline.inDtm = dtmCoverage;
+        pipeline.inDsm = dsmCoverage;
+        pipeline.inStand = standCoverage;
+        pipeline.inConnectivity = connectivityCoverage;
+        // the parallel hierarchies of LW07 have to give the serial result
+        pipeline.pMaxThreads = 3;
+        pipeline.pm = pm;
+        pipeline.process();
+
+        OmsLW01_ChannelPolygonMerger lw01 = new OmsLW01_ChannelPolygonMerger();
+        lw01.inBankfull = bankfullFC;
+        lw01.pm = pm;
+        lw01.process();
+
+        OmsNetworkAttributesBuilder lw02 = new OmsNetworkAttributesBuilder();
+        lw02.inNet = netCoverage;
+        lw02.inFlow = flowCoverage;
+        lw02.inTca = tcaCoverage;
+        lw02.doHack = false;
+        lw02.pm = pm;
+        lw02.process();
+
+        OmsLW03_NetworkHierarchyToPointsSplitter lw03 = new OmsLW03_NetworkHierarchyToPointsSplitter();
+        lw03.inNet = lw02.outNet;
+        lw03.pm = pm;
+        lw03.process();
+
+        OmsLW04_BankfullWidthAnalyzer lw04 = new OmsLW04_BankfullWidthAnalyzer();
+        lw04.inBankfull = lw01.outBankfull;
+        lw04.inNetPoints = lw03.outNetPoints;
+        lw04.pm = pm;
+        lw04.process();
+
+        OmsLW05_BridgesDamsWidthAdder lw05 = new OmsLW05_BridgesDamsWidthAdder();
+        lw05.inNetPoints = lw04.outNetPoints;
+        lw05.inBridges = bridgesFC;
+        lw05.inDams = damsFC;
+        lw05.pm = pm;
+        lw05.process();
+
+        OmsLW06_SlopeToNetworkAdder lw06 = new OmsLW06_SlopeToNetworkAdder();
+        lw06.inNetPoints = lw05.outNetPoints;
+        lw06.inSlope = slopeCoverage;
+        lw06.pm = pm;
+        lw06.process();
+
+        OmsLW07_NetworkBufferWidthCalculator lw07 = new OmsLW07_NetworkBufferWidthCalculator();
+        lw07.inNetPoints = lw06.outNetPoints;
+        lw07.inGeo = geoFC;
+        lw07.inSectWidth = lw04.outBankfullSections;
+        lw07.pm = pm;
+        lw07.process();
+
+        // the hierarchies processed in parallel on their own
+        OmsLW07_NetworkBufferWidthCalculator lw07Parallel = new OmsLW07_NetworkBufferWidthCalculator();
+        lw07Parallel.inNetPoints = lw06.outNetPoints;
+        lw07Parallel.inGeo = geoFC;
+        lw07Parallel.inSectWidth = lw04.outBankfullSections;
+        lw07Parallel.pMaxThreads = 3;
+        lw07Parallel.pm = pm;
+        lw07Parallel.process();
+        checkInundationWidths(lw07Parallel);
+        assertEquals(lw06.outNetPoints.size(), lw07Parallel.outNetPoints.size());
+
+        OmsLW08_NetworBufferMergerHolesRemover lw08 = new OmsLW08_NetworBufferMergerHolesRemover();
+        lw08.inInundationArea = lw07.outInundationArea;
+        lw08.pm = pm;
+        lw08.process();
+
+        OmsLW09_AreaToNetpointAssociator lw09 = new OmsLW09_AreaToNetpointAssociator();
+        lw09.inNetPoints = lw07.outNetPoints;
+        lw09.inInundationArea = lw08.outInundationArea;
+        lw09.inFlow = flowCoverage;
+        lw09.inTca = tcaCoverage;
+        lw09.inNet = netCoverage;
+        lw09.inDtm = dtmCoverage;
+        lw09.inDsm = dsmCoverage;
+        lw09.inStand = standCoverage;
+        lw09.inSlope = slopeCoverage;
+        lw09.inConnectivity = connectivityCoverage;
+        lw09.pm = pm;
+        lw09.process();
+
+        OmsLW10_NetworkPropagator lw10 = new OmsLW10_NetworkPropagator();
+        lw10.inNetPoints = lw09.outNetPoints;
+        lw10.pm = pm;
+        lw10.process();
+
+        List<String> netPoints = featuresToStrings(lw10.outNetPoints);
+        assertTrue(netPoints.size() > 0);
+        assertEquals(netPoints, featuresToStrings(pipeline.outNetPoints));
+        assertEquals(featuresToStrings(lw04.outProblemPoints), featuresToStrings(pipeline.outProblemPoints));
+        assertEquals(featuresToStrings(lw04.outBankfullSections), featuresToStrings(pipeline.outBankfullSections));
+        assertEquals(featuresToStrings(lw05.outProblemBridges), featuresToStrings(pipeline.outProblemBridges));
+        assertEquals(featuresToStrings(lw07.outInundationSections), featuresToStrings(pipeline.outInundationSections));
+        assertEquals(featuresToStrings(lw08.outInundationArea), featuresToStrings(pipeline.outInundationArea));
+        checkMatrixEqual(pipeline.outNetnum.getRenderedImage(), toMatrix(lw09.outNetnum), 0);
+        checkMatrixEqual(pipeline.outBasins.getRenderedImage(), toMatrix(lw09.outBasins), 0);
+    }
+
+    /**
+     * Check the new widths against the power law and the number of inundation areas
+     * against the number of hierarchies.
+     */
+    private static void checkInundationWidths( OmsLW07_NetworkBufferWidthCalculator lw07 ) {
+        Set<String> hierarchies = new HashSet<String>();
+        for( SimpleFeature netPoint : FeatureUtilities.featureCollectionToList(lw07.outNetPoints) ) {
+            hierarchies.add(netPoint.getAttribute("pfaf").toString());
+            double width = ((Number) netPoint.getAttribute("w")).doubleValue();
+            double newWidth = ((Number) netPoint.getAttribute("w2")).doubleValue();
+            if (((Number) netPoint.getAttribute("w_from")).intValue() != 0) {
+                // bridges and dams keep their width
+                assertEquals(width, newWidth, DELTA);
+            } else {
+                // the geology covers the whole region, so the sections are never cut
+                double slope = ((Number) netPoint.getAttribute("slopeavg")).doubleValue();
+                if (slope == 0) {
+                    slope = lw07.pMinSlope;
+                }
+                assertEquals(width + lw07.pK * Math.pow(slope, lw07.pN), newWidth, 1E-6);
+            }
+        }
+        assertTrue(hierarchies.size() > 1);
+        assertEquals(hierarchies.size(), lw07.outInundationArea.size());
+    }
+
+    private static Coordinate cellCenter( HashMap<String, Double> envelopeParams, int row, int col ) {
+        double xres = envelopeParams.get(CoverageUtilities.XRES);
+        double yres = envelopeParams.get(CoverageUtilities.YRES);
+        return new Coordinate(envelopeParams.get(CoverageUtilities.WEST) + (col + 0.5) * xres,
+                envelopeParams.get(CoverageUtilities.NORTH) - (row + 0.5) * yres);
+    }
+
+    private SimpleFeatureCollection createPointsFC( String name, String field, double value, Point point ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName(name);
+        b.setCRS(crs);
+        b.add("the_geom", Point.class);
+        b.add(field, Double.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        builder.addAll(new Object[]{point, value});
+        DefaultFeatureCollection fc = new DefaultFeatureCollection();
+        fc.add(builder.buildFeature(null));
+        return fc;
+    }
+
+    /**
+     * The features as geometry and attributes strings, sorted to not depend on the order.
+     */
+    private static List<String> featuresToStrings( SimpleFeatureCollection fc ) {
+        List<String> strings = new ArrayList<String>();
+        for( SimpleFeature feature : FeatureUtilities.featureCollectionToList(fc) ) {
+            StringBuilder sb = new StringBuilder();
+            for( Object attribute : feature.getAttributes() ) {
+                if (attribute instanceof Geometry) {
+                    sb.append(((Geometry) attribute).toText());
+                } else {
+                    sb.append(attribute);
+                }
+                sb.append(";");
+            }
+            strings.add(sb.toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+
+    private static double[][] toMatrix( GridCoverage2D coverage ) {
+        Raster raster = coverage.getRenderedImage().getData();
+        double[][] matrix = new double[raster.getHeight()][raster.getWidth()];
+        for( int r = 0; r < matrix.length; r++ ) {
+            for( int c = 0; c < matrix[0].length; c++ ) {
+                matrix[r][c] = raster.getSampleDouble(raster.getMinX() + c, raster.getMinY() + r, 0);
+            }
+        }
+        return matrix;
+    }
+
+}
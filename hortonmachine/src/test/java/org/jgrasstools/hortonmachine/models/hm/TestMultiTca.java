@@ -1,8 +1,10 @@
 package org.jgrasstools.hortonmachine.models.hm;
 
+import java.awt.image.Raster;
 import java.util.HashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.Variables;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.geomorphology.multitca.OmsMultiTca;
 import org.jgrasstools.hortonmachine.utils.HMTestCase;
@@ -10,6 +12,42 @@ import org.jgrasstools.hortonmachine.utils.HMTestMaps;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 public class TestMultiTca extends HMTestCase {
+
+    private static final double N = Double.NaN;
+
+    private static final double[][] FREEMAN_DATA = new double[][]{ //
+    /*    */{N, N, N, N, N, N, N, N, N, N}, //
+            {N, N, N, 1.07, 1.34, 1.42, 1.3, 1.0, 1.0, N}, //
+            {N, N, N, 2.87, 2.95, 2.38, 2.17, 2.46, 1.09, N}, //
+            {N, 39.26, 2.51, 3.44, 3.28, 2.65, 1.9, 5.46, 2.19, N}, //
+            {N, 1.8, 36.86, 31.11, 24.12, 17.09, 12.28, 4.59, 2.0, N}, //
+            {N, 2.3, 1.75, 1.78, 3.5, 2.17, 2.44, 2.45, 1.0, N}, //
+            {N, 1.29, 1.23, 1.0, 1.08, 1.83, 1.27, 1.04, 1.0, N}, //
+            {N, N, N, N, N, N, N, N, N, N} //
+    };
+
+    private static final double[][] QUINN_DATA = new double[][]{ //
+    /*    */{N, N, N, N, N, N, N, N, N, N}, //
+            {N, N, N, 1.11, 1.42, 1.48, 1.33, 1.0, 1.0, N}, //
+            {N, N, N, 3.01, 3.12, 2.52, 2.27, 2.53, 1.08, N}, //
+            {N, 39.15, 2.41, 3.53, 3.44, 2.8, 1.97, 5.44, 2.12, N}, //
+            {N, 1.81, 36.69, 31.23, 24.48, 17.31, 12.35, 4.57, 1.96, N}, //
+            {N, 2.32, 1.79, 1.79, 3.66, 2.23, 2.51, 2.53, 1.0, N}, //
+            {N, 1.36, 1.26, 1.0, 1.11, 1.87, 1.32, 1.04, 1.0, N}, //
+            {N, N, N, N, N, N, N, N, N, N} //
+    };
+
+    private static final double[][] HOLMGREN_DATA = new double[][]{ //
+    /*    */{N, N, N, N, N, N, N, N, N, N}, //
+            {N, N, N, 1.0, 1.11, 1.4, 1.3, 1.0, 1.0, N}, //
+            {N, N, N, 2.56, 2.65, 1.95, 1.89, 2.31, 1.0, N}, //
+            {N, 40.53, 2.72, 3.21, 2.77, 2.14, 1.32, 5.89, 2.21, N}, //
+            {N, 1.08, 37.48, 30.41, 22.66, 16.21, 11.78, 4.46, 2.07, N}, //
+            {N, 2.26, 1.71, 1.72, 3.17, 1.79, 2.37, 2.11, 1.0, N}, //
+            {N, 1.05, 1.16, 1.0, 1.0, 1.71, 1.09, 1.0, 1.0, N}, //
+            {N, N, N, N, N, N, N, N, N, N} //
+    };
+
     public void testMultiTca() throws Exception {
         double[][] pitfillerData = HMTestMaps.pitData;
         HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
@@ -32,6 +70,93 @@ public class TestMultiTca extends HMTestCase {
         tca.pm = pm;
         tca.process();
         GridCoverage2D tcaCoverage = tca.outMultiTca;
- //       checkMatrixEqual(tcaCoverage.getRenderedImage(), HMTestMaps.multiTcaData);
+        /*
+         * multiTcaData has been regenerated with the routing along the exiting flow directions
+         * of MultiTcaEngine, so it guards against changes, it is not an independent reference.
+         */
+        checkMatrixEqual(tcaCoverage.getRenderedImage(), HMTestMaps.multiTcaData, 0.01);
+        // the outlet collects the whole basin
+        assertEquals(39.16, tcaCoverage.getRenderedImage().getData().getSampleDouble(1, 3, 0), 0.01);
+    }
+
+    public void testPartitions() throws Exception {
+        checkMatrixEqual(multiTca(Variables.MFD_FREEMAN, null).getRenderedImage(), FREEMAN_DATA, 0.01);
+        checkMatrixEqual(multiTca(Variables.MFD_QUINN, null).getRenderedImage(), QUINN_DATA, 0.01);
+        checkMatrixEqual(multiTca(Variables.MFD_HOLMGREN, null).getRenderedImage(), HOLMGREN_DATA, 0.01);
+    }
+
+    public void testQuinnSplit() throws Exception {
+        /*
+         * the hillslope cell at row 1, col 7 (1200) drains to W and S (drop 200) and
+         * to SW (drop 300) and SE (drop 100). With 30 m cells the weights are
+         * drop / 30 * 15 for the cardinal and drop / 42.43 * 10.62 for the diagonal
+         * neighbours. The SE cell has no other donor, so it gets 1 plus its share.
+         */
+        double cardinal = 0.5;
+        double diagonal = 0.354 * 30.0 / Math.sqrt(2.0 * 30.0 * 30.0);
+        double sum = 200 * cardinal + 200 * cardinal + 300 * diagonal + 100 * diagonal;
+        double expected = 1.0 + 100 * diagonal / sum;
+        assertEquals(1.0834, expected, 0.0001);
+
+        Raster quinn = multiTca(Variables.MFD_QUINN, null).getRenderedImage().getData();
+        assertEquals(1.0, quinn.getSampleDouble(7, 1, 0), DELTA);
+        assertEquals(expected, quinn.getSampleDouble(8, 2, 0), DELTA);
+    }
+
+    public void testExponent() throws Exception {
+        // a higher exponent sends more of the flow along the steepest path
+        GridCoverage2D drop = multiTca(Variables.MFD_DROP, 4.0);
+        Raster data = drop.getRenderedImage().getData();
+        assertEquals(40.54, data.getSampleDouble(1, 3, 0), 0.01);
+        assertEquals(37.61, data.getSampleDouble(2, 4, 0), 0.01);
+        assertEquals(1.18, data.getSampleDouble(1, 4, 0), 0.01);
+    }
+
+    public void testMultiTcaThreads() throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D pitfillerCoverage = CoverageUtilities.buildCoverage("pit", HMTestMaps.pitData, envelopeParams, crs, true);
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", HMTestMaps.drainData1, envelopeParams, crs, true);
+        GridCoverage2D cp9Coverage = CoverageUtilities.buildCoverage("cp9", HMTestMaps.cp9Data, envelopeParams, crs, true);
+
+        for( String partition : new String[]{Variables.MFD_DROP, Variables.MFD_FREEMAN, Variables.MFD_QUINN,
+                Variables.MFD_HOLMGREN} ) {
+            GridCoverage2D[] results = new GridCoverage2D[2];
+            for( int i = 0; i < results.length; i++ ) {
+                OmsMultiTca tca = new OmsMultiTca();
+                tca.inPit = pitfillerCoverage;
+                tca.inFlow = flowCoverage;
+                tca.inCp9 = cp9Coverage;
+                tca.pPartition = partition;
+                tca.pMaxThreads = i == 0 ? 1 : 3;
+                tca.pm = pm;
+                tca.process();
+                results[i] = tca.outMultiTca;
+            }
+            checkMatrixEqual(results[1].getRenderedImage(), toMatrix(results[0]), DELTA);
+        }
+    }
+
+    private GridCoverage2D multiTca( String partition, Double exponent ) throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        OmsMultiTca tca = new OmsMultiTca();
+        tca.inPit = CoverageUtilities.buildCoverage("pit", HMTestMaps.pitData, envelopeParams, crs, true);
+        tca.inFlow = CoverageUtilities.buildCoverage("flow", HMTestMaps.drainData1, envelopeParams, crs, true);
+        tca.inCp9 = CoverageUtilities.buildCoverage("cp9", HMTestMaps.cp9Data, envelopeParams, crs, true);
+        tca.pPartition = partition;
+        tca.pExponent = exponent;
+        tca.pm = pm;
+        tca.process();
+        return tca.outMultiTca;
+    }
+
+    private double[][] toMatrix( GridCoverage2D coverage ) {
+        Raster data = coverage.getRenderedImage().getData();
+        double[][] matrix = new double[data.getHeight()][data.getWidth()];
+        for( int r = 0; r < matrix.length; r++ ) {
+            data.getSamples(0, r, matrix[0].length, 1, 0, matrix[r]);
+        }
+        return matrix;
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.riversections.ARiverSectionsExtractor;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Test {@link OmsSaintGeo} on a synthetic reach.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestSaintGeo extends HMTestCase {
+
+    private static final int SECTIONS = 8;
+    private static final int SECTION_POINTS = 11;
+    private static final double[] DISCHARGE = {5, 6, 7, 8, 7, 6};
+
+    /**
+     * The water levels of every time step, as given by the model before the hydraulic tables.
+     */
+    private static final double[][] LEVELS = {//
+            {100.73433938562707, 100.69006838496715, 100.64343541866313, 100.59419045501977, 100.53987873959314,
+                    100.47665937584009, 100.3951840685962, 100.16104845744836}, //
+            {100.74062178872508, 100.69130411117827, 100.6433613620628, 100.59410930196215, 100.53979208364159,
+                    100.47657006753793, 100.39509809530132, 100.16095501278046}, //
+            {100.75174143985025, 100.69506937713635, 100.64359104755803, 100.59403230934448, 100.53970686089991,
+                    100.47648222908701, 100.39501348810023, 100.16086247744703}, //
+            {100.76631717809451, 100.70212226887833, 100.64464367836256, 100.59402685043347, 100.53962438061292,
+                    100.47639590595155, 100.3949302630485, 100.16077121157294}, //
+            {100.77151932062667, 100.70922275201552, 100.64716896758742, 100.59426158094941, 100.53956014623273,
+                    100.47631072948015, 100.39484767661976, 100.16068057465915}, //
+            {100.76951350489982, 100.71400994124981, 100.650698976055, 100.59498023193743, 100.5395646776632,
+                    100.47623457520658, 100.39476966149937, 100.16059493205165} //
+    };
+
+    /**
+     * The discharges between the sections at the last time step.
+     */
+    private static final double[] LAST_DISCHARGES = {6.234711838943148, 5.618741300516392, 5.151980785942497,
+            5.047780273487666, 5.044476931646889, 5.053842068510232, 5.063055547245825};
+
+    public void testExactHydraulics() throws Exception {
+        File levelFile = File.createTempFile("saintgeo_levels", ".txt");
+        File dischargeFile = File.createTempFile("saintgeo_discharge", ".txt");
+        try {
+            runSaintGeo(0.0, levelFile, dischargeFile);
+
+            // pLevelStep = 0 gives the same values as the exact evaluation did
+            double[][] levels = readColumn(levelFile, 2);
+            checkMatrixEqual(levels, LEVELS, 1E-10);
+            double[][] discharges = readColumn(dischargeFile, 3);
+            for( int i = 0; i < LAST_DISCHARGES.length; i++ ) {
+                assertEquals(LAST_DISCHARGES[i], discharges[DISCHARGE.length - 1][i], 1E-10);
+            }
+        } finally {
+            levelFile.delete();
+            dischargeFile.delete();
+        }
+    }
+
+    public void testLevelTables() throws Exception {
+        File levelFile = File.createTempFile("saintgeo_levels", ".txt");
+        File dischargeFile = File.createTempFile("saintgeo_discharge", ".txt");
+        try {
+            // tables with a step of 1 cm stay close to the exact evaluation
+            runSaintGeo(0.01, levelFile, dischargeFile);
+
+            double[][] levels = readColumn(levelFile, 2);
+            checkMatrixEqual(levels, LEVELS, 1E-4);
+        } finally {
+            levelFile.delete();
+            dischargeFile.delete();
+        }
+    }
+
+    private void runSaintGeo( double levelStep, File levelFile, File dischargeFile ) throws Exception {
+        OmsSaintGeo saintGeo = new OmsSaintGeo();
+        createReach(saintGeo);
+        saintGeo.inDischarge = DISCHARGE;
+        saintGeo.pDeltaTMillis = 5000;
+        saintGeo.pLevelStep = levelStep;
+        saintGeo.outputLevelFile = levelFile.getAbsolutePath();
+        saintGeo.outputDischargeFile = dischargeFile.getAbsolutePath();
+        saintGeo.pm = pm;
+        saintGeo.process();
+    }
+
+    /*
+     * A straight reach with a slope of 0.2%, a section every 20 meters.
+     */
+    private void createReach( OmsSaintGeo saintGeo ) {
+        GeometryFactory gf = GeometryUtilities.gf();
+
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("riverpoints");
+        b.add("the_geom", Point.class);
+        b.add(ARiverSectionsExtractor.FIELD_SECTION_ID, Integer.class);
+        b.add(ARiverSectionsExtractor.FIELD_PROGRESSIVE, Double.class);
+        b.add(ARiverSectionsExtractor.FIELD_ELEVATION, Double.class);
+        SimpleFeatureType riverPointType = b.buildFeatureType();
+
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("sections");
+        b.add("the_geom", LineString.class);
+        b.add(ARiverSectionsExtractor.FIELD_SECTION_ID, Integer.class);
+        b.add(ARiverSectionsExtractor.FIELD_PROGRESSIVE, Double.class);
+        SimpleFeatureType sectionType = b.buildFeatureType();
+
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("sectionpoints");
+        b.add("the_geom", Point.class);
+        b.add(ARiverSectionsExtractor.FIELD_SECTION_ID, Integer.class);
+        b.add(ARiverSectionsExtractor.FIELD_SECTIONPOINT_INDEX, Integer.class);
+        SimpleFeatureType sectionPointType = b.buildFeatureType();
+
+        DefaultFeatureCollection riverPoints = new DefaultFeatureCollection();
+        DefaultFeatureCollection sections = new DefaultFeatureCollection();
+        DefaultFeatureCollection sectionPoints = new DefaultFeatureCollection();
+        for( int i = 0; i < SECTIONS; i++ ) {
+            double progressive = i * 20.0;
+            double bed = 100 - 0.002 * progressive;
+
+            Point riverPoint = gf.createPoint(new Coordinate(10, progressive));
+            riverPoints.add(feature(riverPointType, riverPoint, i, progressive, bed));
+
+            Coordinate[] sectionCoordinates = new Coordinate[SECTION_POINTS];
+            for( int k = 0; k < SECTION_POINTS; k++ ) {
+                double d = Math.abs(k - 5);
+                double z = bed + 0.35 * d * d / 4 + 0.01 * ((i + k) % 3);
+                if (k == 0 || k == SECTION_POINTS - 1) {
+                    z = bed + 8;
+                }
+                sectionCoordinates[k] = new Coordinate(k * 2.0, progressive, z);
+                sectionPoints.add(feature(sectionPointType, gf.createPoint(sectionCoordinates[k]), i, k));
+            }
+            sections.add(feature(sectionType, gf.createLineString(sectionCoordinates), i, progressive));
+        }
+        saintGeo.inRiverPoints = riverPoints;
+        saintGeo.inSections = sections;
+        saintGeo.inSectionPoints = sectionPoints;
+    }
+
+    private static SimpleFeature feature( SimpleFeatureType type, Geometry geometry,
+            Object... attributes ) {
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        builder.add(geometry);
+        for( Object attribute : attributes ) {
+            builder.add(attribute);
+        }
+        return builder.buildFeature(null);
+    }
+
+    /*
+     * Read a column of the output files, one row per time step.
+     */
+    private static double[][] readColumn( File file, int column ) throws Exception {
+        List<double[]> steps = new ArrayList<double[]>();
+        List<Double> values = null;
+        for( String line : Files.readAllLines(file.toPath()) ) {
+            line = line.trim();
+            if (line.startsWith("#timestep")) {
+                if (values != null) {
+                    steps.add(toArray(values));
+                }
+                values = new ArrayList<Double>();
+            } else if (line.length() > 0) {
+                values.add(Double.parseDouble(line.split(";")[column]));
+            }
+        }
+        steps.add(toArray(values));
+        return steps.toArray(new double[steps.size()][]);
+    }
+
+    private static double[] toArray( List<Double> values ) {
+        double[] array = new double[values.size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+}
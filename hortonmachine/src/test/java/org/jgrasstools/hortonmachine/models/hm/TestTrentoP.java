@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -341,6 +342,77 @@ public class TestTrentoP extends HMTestCase {
 
 
 
+    /**
+     * Test the search of the rain time of the max discharge in calibration mode.
+     *
+     * The rain durations evaluated in parallel have to give the results of the serial search,
+     * with and without the warm start of the delays.
+     *
+     * @throws Exception
+     */
+    public void testCalibrationThreads() throws Exception {
+        for( boolean warmStart : new boolean[]{false, true} ) {
+            OmsTrentoP serial = runCalibration(1, warmStart);
+            OmsTrentoP parallel = runCalibration(4, warmStart);
+
+            assertNotNull(serial.outTpMax);
+            assertEquals(serial.outTpMax, parallel.outTpMax);
+            checkSameValues(serial.outDischarge, parallel.outDischarge);
+            checkSameValues(serial.outFillDegree, parallel.outFillDegree);
+        }
+    }
+
+    private OmsTrentoP runCalibration( int threads, boolean warmStart ) throws Exception {
+        double[] globalparameters = INTERNAL_PARAMETERS;
+
+        OmsTrentoP trento_P = new OmsTrentoP();
+        trento_P.pMode = 1; // verify
+        trento_P.pA = a;
+        trento_P.pN = n;
+        trento_P.dt = 2;
+        trento_P.tMax = 60;
+        trento_P.tpMaxCalibration = 50;
+        trento_P.pMaxJunction = (int) globalparameters[1];
+        trento_P.pJMax = (int) globalparameters[2];
+        trento_P.pAccuracy = globalparameters[3];
+        trento_P.tpMax = globalparameters[6];
+        trento_P.pEpsilon = globalparameters[7];
+        trento_P.pMaxTheta = 6.28;
+        trento_P.pCelerityFactor = Constants.DEFAULT_CELERITY_FACTOR;
+        trento_P.pExponent = globalparameters[12];
+        trento_P.pTolerance = 0.01;
+        trento_P.pGamma = globalparameters[15];
+        trento_P.pEspInflux = globalparameters[16];
+        trento_P.pOutPipe = 16;
+        trento_P.pMaxThreads = threads;
+        trento_P.doWarmStart = warmStart;
+        URL net = this.getClass().getClassLoader().getResource("TestTrentoP1Verifica.shp");
+        File netFile = new File(net.toURI());
+        OmsShapefileFeatureReader netReader = new OmsShapefileFeatureReader();
+        netReader.file = netFile.getAbsolutePath();
+        netReader.readFeatureCollection();
+        trento_P.inPipes = netReader.geodata;
+        trento_P.pm = pm;
+        trento_P.process();
+        return trento_P;
+    }
+
+    /*
+     * The rain is generated from the start time, so only the values are compared, in time order.
+     */
+    private void checkSameValues( HashMap<DateTime, HashMap<Integer, double[]>> expected,
+            HashMap<DateTime, HashMap<Integer, double[]>> actual ) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<HashMap<Integer, double[]>> actualIterator = actual.values().iterator();
+        for( HashMap<Integer, double[]> expectedValues : expected.values() ) {
+            HashMap<Integer, double[]> actualValues = actualIterator.next();
+            assertEquals(expectedValues.keySet(), actualValues.keySet());
+            for( Entry<Integer, double[]> entry : expectedValues.entrySet() ) {
+                assertEquals(entry.getValue()[0], actualValues.get(entry.getKey())[0], 0.0);
+            }
+        }
+    }
+
     // /**
     // * Test project 2.
     // *
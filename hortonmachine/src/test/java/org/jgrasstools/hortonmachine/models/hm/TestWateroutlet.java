@@ -22,6 +22,7 @@ import java.util.HashMap;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.utils.PrintUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.BasinsLabeler;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsExtractBasin;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsWateroutlet;
 import org.jgrasstools.hortonmachine.utils.HMTestCase;
@@ -80,4 +81,42 @@ public class TestWateroutlet extends HMTestCase {
         checkMatrixEqual(basinCoverage.getRenderedImage(), HMTestMaps.basinWateroutletData, 0);
     }
 
+    public void testBasinsLabeler() throws Exception {
+        double[][] flowData = HMTestMaps.flowData;
+        int rows = flowData.length;
+        int cols = flowData[0].length;
+        int[] flow = new int[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                flow[r * cols + c] = Double.isNaN(flowData[r][c]) ? -1 : (int) flowData[r][c];
+            }
+        }
+        BasinsLabeler labeler = new BasinsLabeler(flow, cols, rows);
+
+        int outlet = 4 * cols + 2;
+        int[] labels = labeler.label(new int[]{outlet}, pm);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                boolean inBasin = !Double.isNaN(HMTestMaps.basinWateroutletData[r][c]);
+                assertEquals(inBasin ? 1 : BasinsLabeler.NONE, labels[r * cols + c]);
+            }
+        }
+
+        // an upstream outlet takes its own basin away from the downstream one
+        int upstreamOutlet = 3 * cols + 5;
+        int[] upstreamLabels = labeler.label(new int[]{upstreamOutlet}, pm);
+        int[] bothLabels = labeler.label(new int[]{outlet, upstreamOutlet}, pm);
+        long[] counts = BasinsLabeler.countCells(bothLabels, 2);
+        long[] singleCounts = BasinsLabeler.countCells(labels, 1);
+        assertEquals(singleCounts[1], counts[1] + counts[2]);
+        assertTrue(counts[2] > 1);
+        for( int i = 0; i < bothLabels.length; i++ ) {
+            if (upstreamLabels[i] == 1) {
+                assertEquals(2, bothLabels[i]);
+            } else {
+                assertEquals(labels[i], bothLabels[i]);
+            }
+        }
+    }
+
 }
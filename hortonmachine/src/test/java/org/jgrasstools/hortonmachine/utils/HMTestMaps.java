@@ -401,12 +401,12 @@ public class HMTestMaps {
 
     public static double[][] multiTcaData = new double[][]{ //
     /*    */{N, N, N, N, N, N, N, N, N, N}, //
-            {N, N, N, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, N}, //
-            {N, N, N, 2.25, 2.125, 2.0, 2.0, 2.0, 1.0, N}, //
-            {N, 33.87, 3.25, 3.47, 3.45, 3.14, 1.0, 5.14, 2.0, N}, //
-            {N, 1.82, 31.5, 26.14, 15.13, 8.35, 7.43, 5.14, 2.0, N}, //
-            {N, 2.28, 2.0, 2.06, 3.0, 2.0, 2.0, 2.0, 1.0, N}, //
-            {N, 1.0, 1.0, 1.0, 1.0, 2.0, 1.0, 1.0, 1.0, N}, //
+            {N, N, N, 1.07, 1.29, 1.36, 1.25, 1.0, 1.0, N}, //
+            {N, N, N, 2.72, 2.83, 2.31, 2.1, 2.41, 1.13, N}, //
+            {N, 39.16, 2.64, 3.42, 3.23, 2.55, 1.91, 5.42, 2.22, N}, //
+            {N, 1.93, 36.9, 31.06, 23.98, 17.08, 12.28, 4.64, 2.03, N}, //
+            {N, 2.27, 1.74, 1.8, 3.4, 2.15, 2.38, 2.4, 1.0, N}, //
+            {N, 1.24, 1.19, 1.0, 1.08, 1.81, 1.23, 1.06, 1.0, N}, //
             {N, N, N, N, N, N, N, N, N, N} //
     };
 
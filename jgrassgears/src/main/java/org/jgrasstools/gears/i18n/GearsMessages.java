@@ -387,6 +387,9 @@ public class GearsMessages {
     public static final String OMSRASTERREPROJECTOR_P_COLS_DESCRIPTION = "The cols of the region to consider";
     public static final String OMSRASTERREPROJECTOR_P_CODE_DESCRIPTION = "The code defining the target coordinate reference system, composed by authority and code number (ex. EPSG:4328).";
     public static final String OMSRASTERREPROJECTOR_P_INTERPOLATION_DESCRIPTION = "The interpolation type to use";
+    public static final String OMSRASTERREPROJECTOR_P_TOLERANCE_DESCRIPTION = "The tolerance in input cells of the interpolated cell positions (0 transforms every cell).";
+    public static final String OMSRASTERREPROJECTOR_P_MAX_THREADS_DESCRIPTION = "The number of threads to use.";
+    public static final String OMSRASTERREPROJECTOR_OUT_FILE_DESCRIPTION = "The optional esri ascii grid to stream the reprojected raster to, instead of keeping it in memory.";
     public static final String OMSRASTERREPROJECTOR_OUT_RASTER_DESCRIPTION = "The reprojected output raster.";
 
     public static final String OMSEIAREASREADER_DESCRIPTION = "Utility class for reading area data (for EICalculator) from csv files.";
@@ -636,6 +639,7 @@ public class GearsMessages {
     public static final String OMSMAPCALC_IN_RASTERS_DESCRIPTION = "The maps that are used in the calculation.";
     public static final String OMSMAPCALC_P_FUNCTION_DESCRIPTION = "The function to process.";
     public static final String OMSMAPCALC_OUT_RASTER_DESCRIPTION = "The resulting map picked from the inserted function.";
+    public static final String OMSMAPCALC_P_MAX_THREADS_DESCRIPTION = "The number of threads to use.";
 
     public static final String OMSMOSAIC12_DESCRIPTION = "Module for patching max 12 rasters.";
     public static final String OMSMOSAIC12_DOCUMENTATION = "";
@@ -765,6 +769,7 @@ public class GearsMessages {
     public static final String OMSDWGCONVERTER_AUTHORCONTACTS = "http://www.hydrologis.com";
     public static final String OMSDWGCONVERTER_FILE_DESCRIPTION = "The dwg input file.";
     public static final String OMSDWGCONVERTER_P_CODE_DESCRIPTION = "The code defining the coordinate reference system, composed by authority and code number (ex. EPSG:4328). Applied in the case the file is missing.";
+    public static final String OMSDWGCONVERTER_P_MAX_THREADS_DESCRIPTION = "The number of threads to use to decode the objects.";
     public static final String OMSDWGCONVERTER_POINTS_VECTOR_DESCRIPTION = "The output point vector.";
     public static final String OMSDWGCONVERTER_LINE_VECTOR_DESCRIPTION = "The output line vector.";
     public static final String OMSDWGCONVERTER_POLYGON_VECTOR_DESCRIPTION = "The output polygon vector.";
@@ -906,6 +911,7 @@ public class GearsMessages {
     public static final String OMSVECTORIZER_DO_REMOVE_HOLES_DESCRIPTION = "If true, wholes are removed form polygons.";
     public static final String OMSVECTORIZER_P_THRES_DESCRIPTION = "A threshold on cell number to filter away polygons with cells less than that.";
     public static final String OMSVECTORIZER_DO_REGION_CHECK_DESCRIPTION = "Make a check on the raster first and shrink the boundaries on the region with data.";
+    public static final String OMSVECTORIZER_P_MAX_THREADS_DESCRIPTION = "The number of threads to use.";
     public static final String OMSVECTORIZER_OUT_VECTOR_DESCRIPTION = "The extracted vector.";
 
     public static final String OMSRASTER2XYZ_DESCRIPTION = "Convert a raster to XYZ triplets.";
@@ -1127,6 +1133,8 @@ public class GearsMessages {
     public static final String OMSCONTOUREXTRACTOR_P_MIN_DESCRIPTION = "The minimum value for the contours.";
     public static final String OMSCONTOUREXTRACTOR_P_MAX_DESCRIPTION = "The maximum value for the contours.";
     public static final String OMSCONTOUREXTRACTOR_P_INTERVAL_DESCRIPTION = "The contours interval.";
+    public static final String OMSCONTOUREXTRACTOR_P_MAX_THREADS_DESCRIPTION = "The number of threads to use.";
+    public static final String OMSCONTOUREXTRACTOR_OUT_FILE_DESCRIPTION = "The optional shapefile to which the contour lines are written while extracted, if set the lines are not collected in memory.";
     public static final String OMSCONTOUREXTRACTOR_OUT_GEODATA_DESCRIPTION = "The generated contour lines vector.";
 
     public static final String OMSCSVMATRIXREADER_DESCRIPTION = "Utility class for reading data from a OMS formatted csv file to a double matrix (dates are saved as longs).";
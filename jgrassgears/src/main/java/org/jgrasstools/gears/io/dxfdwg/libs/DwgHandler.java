@@ -31,7 +31,11 @@ public class DwgHandler {
     private GeometryTranslator gTranslator;
 
     public DwgHandler( File dxfFile, CoordinateReferenceSystem crs )  {
-        this.dwgFile = new DwgFile(dxfFile.getAbsolutePath());
+        this(dxfFile, crs, 1);
+    }
+
+    public DwgHandler( File dxfFile, CoordinateReferenceSystem crs, int threads )  {
+        this.dwgFile = new DwgFile(dxfFile.getAbsolutePath(), threads);
         gTranslator = new GeometryTranslator(crs);
     }
 
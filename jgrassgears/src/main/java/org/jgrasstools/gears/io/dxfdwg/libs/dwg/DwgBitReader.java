@@ -0,0 +1,375 @@
+/*
+ * JGrass - Free Open Source Java GIS http://www.jgrass.org
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jgrasstools.gears.io.dxfdwg.libs.dwg;
+
+import java.util.Vector;
+
+/**
+ * A cursor based reader of the bitstreams of DWG files.
+ *
+ * <p>The reader works directly on the bytes of the file and returns
+ * primitive values, moving the bit cursor past the read value, so that no
+ * intermediate arrays or boxed values are created.</p>
+ *
+ * <p>Instances are not thread safe, but are cheap to create, so every
+ * thread should use its own.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public final class DwgBitReader {
+	private final byte[] data;
+	private final int start;
+	private final int end;
+	private int bitPos;
+
+	/**
+	 * @param data the bytes to read.
+	 */
+	public DwgBitReader(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * @param data the bytes to read.
+	 * @param start the index of the first byte of the stream.
+	 * @param length the number of bytes of the stream.
+	 */
+	public DwgBitReader(byte[] data, int start, int length) {
+		this.data = data;
+		this.start = start;
+		this.end = start + length;
+		this.bitPos = 0;
+	}
+
+	/**
+	 * @return the current bit offset from the beginning of the stream.
+	 */
+	public int getPosition() {
+		return bitPos;
+	}
+
+	/**
+	 * @param bitPos the new bit offset from the beginning of the stream.
+	 */
+	public void setPosition(int bitPos) {
+		this.bitPos = bitPos;
+	}
+
+	/**
+	 * @return the size of the stream in bits.
+	 */
+	public int getBitLength() {
+		return (end - start) * 8;
+	}
+
+	/**
+	 * Read up to 64 bits, the first read bit being the most significant.
+	 *
+	 * @param count the number of bits to read.
+	 * @return the read bits.
+	 */
+	public long getBits(int count) {
+		long value = 0;
+		int remaining = count;
+		while (remaining > 0) {
+			int index = start + (bitPos >>> 3);
+			if (index >= end) {
+				throw new ArrayIndexOutOfBoundsException(index);
+			}
+			int bitIndex = bitPos & 7;
+			int available = 8 - bitIndex;
+			int take = Math.min(available, remaining);
+			int bits = ((data[index] & 0xff) >>> (available - take)) & ((1 << take) - 1);
+			value = (value << take) | bits;
+			remaining -= take;
+			bitPos += take;
+		}
+		return value;
+	}
+
+	/**
+	 * Read bits into bytes (as used for raw values and strings).
+	 *
+	 * @param bytes the array to fill.
+	 * @param count the number of bytes to read.
+	 */
+	private void getBytes(byte[] bytes, int count) {
+		for (int i = 0; i < count; i++) {
+			bytes[i] = (byte) getBits(8);
+		}
+	}
+
+	/**
+	 * @return the next bit as flag.
+	 */
+	public boolean testBit() {
+		return getBits(1) != 0;
+	}
+
+	/**
+	 * @return a raw unsigned char (8 bits).
+	 */
+	public int getRawChar() {
+		return (int) getBits(8);
+	}
+
+	/**
+	 * @return a raw little endian short (16 bits).
+	 */
+	public int getRawShort() {
+		int b0 = getRawChar();
+		int b1 = getRawChar();
+		return (short) (b0 | (b1 << 8));
+	}
+
+	/**
+	 * @return a raw little endian long (32 bits).
+	 */
+	public int getRawLong() {
+		int b0 = getRawChar();
+		int b1 = getRawChar();
+		int b2 = getRawChar();
+		int b3 = getRawChar();
+		return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+	}
+
+	/**
+	 * @return a raw little endian double (64 bits).
+	 */
+	public double getRawDouble() {
+		long bits = 0;
+		for (int i = 0; i < 8; i++) {
+			bits |= getBits(8) << (8 * i);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * @return a bit short.
+	 */
+	public int getBitShort() {
+		int type = (int) getBits(2);
+		switch (type) {
+		case 0x00:
+			return getRawShort();
+		case 0x01:
+			return getRawChar();
+		case 0x02:
+			return 0;
+		default:
+			return 256;
+		}
+	}
+
+	/**
+	 * @return a bit long.
+	 */
+	public int getBitLong() {
+		int type = (int) getBits(2);
+		switch (type) {
+		case 0x00:
+			return getRawLong();
+		case 0x01:
+			return getRawChar();
+		case 0x02:
+			return 0;
+		default:
+			System.out.println("Bad type at bit offset: " + (bitPos - 2));
+			return 0;
+		}
+	}
+
+	/**
+	 * @return a bit double.
+	 */
+	public double getBitDouble() {
+		int type = (int) getBits(2);
+		switch (type) {
+		case 0x00:
+			return getRawDouble();
+		case 0x01:
+			return 1.0;
+		case 0x02:
+			return 0.0;
+		default:
+			System.out.println("Bad type at bit offset: " + (bitPos - 2));
+			return 0.0;
+		}
+	}
+
+	/**
+	 * Read a bit double with default.
+	 *
+	 * @param defVal the default value, of which the read bytes replace part.
+	 * @return the double value.
+	 */
+	public double getDefaultDouble(double defVal) {
+		int flags = (int) getBits(2);
+		if (flags == 0x0) {
+			return defVal;
+		} else if (flags == 0x3) {
+			return getRawDouble();
+		}
+		long bits = Double.doubleToLongBits(defVal);
+		if (flags == 0x1) {
+			// the 4 least significant bytes are replaced
+			long low = getRawLong() & 0xffffffffL;
+			bits = (bits & 0xffffffff00000000L) | low;
+		} else {
+			// the 5th and 6th, then the 4 least significant bytes are replaced
+			long b4 = getRawChar();
+			long b5 = getRawChar();
+			long low = getRawLong() & 0xffffffffL;
+			bits = (bits & 0xffff000000000000L) | (b5 << 40) | (b4 << 32) | low;
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * @return a modular char.
+	 */
+	public int getModularChar() {
+		int val = 0;
+		int fac = 1;
+		int shift = 0;
+		int count = 0;
+		while (true) {
+			int bytee = getRawChar();
+			boolean last = (bytee & 0x80) == 0;
+			if (last && (bytee & 0x40) > 0) {
+				fac = -1;
+				bytee = bytee & 0xbf;
+			}
+			if (count < 4) {
+				val |= (bytee & 0x7f) << shift;
+			}
+			shift += 7;
+			count++;
+			if (last) {
+				break;
+			}
+		}
+		if (count > 4) {
+			System.out.println("Unexpected byte array length: " + count);
+			val = 0;
+		}
+		return fac * val;
+	}
+
+	/**
+	 * @return a text string, the length being given as bit short.
+	 */
+	public String getTextString() {
+		int len = getBitShort();
+		if (len <= 0) {
+			return "";
+		}
+		byte[] bytes = new byte[len];
+		getBytes(bytes, len);
+		return new String(bytes);
+	}
+
+	/**
+	 * Read a handle.
+	 *
+	 * @return the handle as [code, counter, byte1, byte2, ...], the bytes being unsigned.
+	 */
+	public int[] getHandle() {
+		int code = (int) getBits(4);
+		int counter = (int) getBits(4);
+		int[] handle = new int[2 + counter];
+		handle[0] = code;
+		handle[1] = counter;
+		for (int i = 0; i < counter; i++) {
+			handle[2 + i] = getRawChar();
+		}
+		return handle;
+	}
+
+	/**
+	 * Read the extended data for a DWG object.
+	 *
+	 * <p>The data are skipped and only empty placeholders are returned.</p>
+	 *
+	 * @return the extended data.
+	 */
+	public Vector readExtendedData() {
+		Vector extData = new Vector();
+		while (true) {
+			int size = getBitShort();
+			if (size == 0) {
+				break;
+			}
+			getHandle();
+			while (size > 0) {
+				int cb = getRawChar();
+				size = size - 1;
+				if (cb == 0x0) {
+					int len = getRawChar();
+					getRawShort();
+					skip(8 * len);
+					size = size - len - 3;
+				} else if (cb == 0x1) {
+					System.out.println("Invalid EXX code byte: 0x1");
+				} else if (cb == 0x2) {
+					int charr = getRawChar();
+					if (charr != 0x0 && charr != 0x1) {
+						System.out.println("Unexpected EXX char: " + charr);
+					}
+					size = size - 1;
+				} else if (cb == 0x3 || cb == 0x5) {
+					skip(64);
+					size = size - 8;
+				} else if (cb == 0x4) {
+					int len = getRawChar();
+					skip(8 * len);
+					size = size - len - 1;
+				} else if (0xa <= cb && cb <= 0xd) {
+					skip(3 * 64);
+					size = size - 24;
+				} else if (0x28 <= cb && cb <= 0x2a) {
+					skip(64);
+					size = size - 8;
+				} else if (cb == 0x46) {
+					skip(16);
+					size = size - 2;
+				} else if (cb == 0x47) {
+					skip(32);
+					size = size - 4;
+				} else {
+					System.out.println("Unexpected code byte: " + cb);
+				}
+			}
+			extData.add(new Vector());
+		}
+		return extData;
+	}
+
+	/**
+	 * Move the cursor forward.
+	 *
+	 * @param bits the number of bits to skip.
+	 */
+	public void skip(int bits) {
+		if (start + ((bitPos + bits + 7) >>> 3) > end) {
+			throw new ArrayIndexOutOfBoundsException(start + ((bitPos + bits + 7) >>> 3));
+		}
+		bitPos += bits;
+	}
+}
@@ -75,6 +75,7 @@ public class DwgFile {
     private Vector layerTable;
     private Vector layerNames;
     private boolean dwg3DFile;
+    private int threads;
 
     /**
      * Creates a new DwgFile object given the absolute path to
@@ -83,7 +84,19 @@ public class DwgFile {
      * @param filePath an absolute path to the DWG file
      */
     public DwgFile( String filePath ) {
+        this(filePath, 1);
+    }
+
+    /**
+     * Creates a new DwgFile object given the absolute path to
+     * a DWG file
+     * 
+     * @param filePath an absolute path to the DWG file
+     * @param threads the number of threads to use to decode the objects.
+     */
+    public DwgFile( String filePath, int threads ) {
         this.fileName = filePath;
+        this.threads = Math.max(1, threads);
         dwgSectionOffsets = new Vector();
         dwgObjectOffsets = new Vector();
         dwgObjects = new Vector();
@@ -1195,6 +1208,13 @@ public class DwgFile {
         return fileName;
     }
 
+    /**
+     * @return the number of threads to use to decode the objects.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     /**
      * @return Returns the dwg3DFile.
      */
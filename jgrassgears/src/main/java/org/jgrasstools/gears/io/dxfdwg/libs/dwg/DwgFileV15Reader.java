@@ -24,7 +24,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgArc;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgAttdef;
@@ -51,8 +58,7 @@ import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgSpline;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgText;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgVertex2D;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgVertex3D;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.utils.ByteUtils;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.utils.HexUtil;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 
 
 /**
@@ -61,6 +67,8 @@ import org.jgrasstools.gears.io.dxfdwg.libs.dwg.utils.HexUtil;
  * @author jmorell
  */
 public class DwgFileV15Reader extends DwgFileReader {
+	private static final int OBJECTS_BLOCK_SIZE = 512;
+
 	private DwgFile dwgFile;
 	
 	/**
@@ -126,21 +134,14 @@ public class DwgFileV15Reader extends DwgFileReader {
 			if (size==2) break;
 			bb.order(ByteOrder.LITTLE_ENDIAN);
 			byte[] dataBytes = new byte[size];
-			for (int i=0; i<dataBytes.length; i++) {
-				dataBytes[i] = bb.get();
-			}
-			int[] data = DwgUtil.bytesToMachineBytes(dataBytes);
+			bb.get(dataBytes);
+			DwgBitReader reader = new DwgBitReader(dataBytes);
 			int lastHandle=0;
 			int lastLoc=0;
-			int bitPos=0;
 			int bitMax=(size-2)*8;
-			while (bitPos<bitMax) {
-				Vector v = DwgUtil.getModularChar(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				lastHandle = lastHandle + ((Integer)v.get(1)).intValue();
-				v = DwgUtil.getModularChar(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				lastLoc = lastLoc + ((Integer)v.get(1)).intValue();
+			while (reader.getPosition()<bitMax) {
+				lastHandle = lastHandle + reader.getModularChar();
+				lastLoc = lastLoc + reader.getModularChar();
 				dwgFile.addDwgObjectOffset(lastHandle, lastLoc);
 			}
 		}
@@ -152,41 +153,72 @@ public class DwgFileV15Reader extends DwgFileReader {
 		bb.order(ByteOrder.LITTLE_ENDIAN);
 		int size = bb.getInt();
 		byte[] dataBytes = new byte[size];
-		for (int i=0; i<dataBytes.length; i++) {
-			dataBytes[i] = bb.get();
-		}
-		int[] data = DwgUtil.bytesToMachineBytes(dataBytes);
-		for (int i=0; i<data.length; i++) {
-			data[i] = (byte)ByteUtils.getUnsigned((byte)data[i]);
-		}
+		bb.get(dataBytes);
+		DwgBitReader reader = new DwgBitReader(dataBytes);
 		bb.position(bb.position()+2+16);
 		int maxbit = size * 8;
-		int bitPos = 0;
-		while ((bitPos+8) < maxbit) {
-			Vector v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.getTextString(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.getTextString(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.getTextString(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.testBit(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
+		while ((reader.getPosition()+8) < maxbit) {
+			reader.getBitShort();
+			reader.getBitShort();
+			reader.getTextString();
+			reader.getTextString();
+			reader.getTextString();
+			reader.testBit();
+			reader.getBitShort();
 		}
 	}
-	private void readDwgObjects(ByteBuffer bb) {
-		//System.out.println("DwgFileV15Reader.readDwgObjects() executed ...");
-		for (int i=0; i<dwgFile.getDwgObjectOffsets().size(); i++) {
-			DwgObjectOffset doo = (DwgObjectOffset)dwgFile.getDwgObjectOffsets().get(i);
-			DwgObject obj = readDwgObject(bb, doo.getOffset());
-			if (obj!=null) {
-                dwgFile.addDwgObject(obj);
-            }
+	/**
+	 * Reads the objects of the object map.
+	 * 
+	 * <p>Once the offsets are known the objects are independent, so blocks of
+	 * them are decoded in parallel and added to the file in the original order.</p>
+	 */
+	private void readDwgObjects(final ByteBuffer bb) {
+		final Vector offsets = dwgFile.getDwgObjectOffsets();
+		int threads = dwgFile.getThreads();
+		if (threads < 2) {
+			for (int i=0; i<offsets.size(); i++) {
+				DwgObjectOffset doo = (DwgObjectOffset)offsets.get(i);
+				DwgObject obj = readDwgObject(bb, doo.getOffset());
+				if (obj!=null) {
+					dwgFile.addDwgObject(obj);
+				}
+			}
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<DwgObject[]>> blocks = new ArrayList<Future<DwgObject[]>>();
+			for (int start=0; start<offsets.size(); start+=OBJECTS_BLOCK_SIZE) {
+				final int from = start;
+				final int to = Math.min(offsets.size(), start+OBJECTS_BLOCK_SIZE);
+				blocks.add(pool.submit(new Callable<DwgObject[]>(){
+					public DwgObject[] call() {
+						// every block needs its own position and byte order
+						ByteBuffer buffer = bb.duplicate();
+						DwgObject[] objects = new DwgObject[to-from];
+						for (int i=from; i<to; i++) {
+							DwgObjectOffset doo = (DwgObjectOffset)offsets.get(i);
+							objects[i-from] = readDwgObject(buffer, doo.getOffset());
+						}
+						return objects;
+					}
+				}));
+			}
+			for (Future<DwgObject[]> block : blocks) {
+				for (DwgObject obj : block.get()) {
+					if (obj!=null) {
+						dwgFile.addDwgObject(obj);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelsRuntimeException("Module interrupted.", this);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
 		}
 	}
 	private DwgObject readDwgObject(ByteBuffer bb, int offset) {
@@ -195,21 +227,9 @@ public class DwgFileV15Reader extends DwgFileReader {
 			int size = DwgUtil.getModularShort(bb);
 			bb.order(ByteOrder.LITTLE_ENDIAN);
 			byte[] dataBytes = new byte[size];
-			String[] dataMachValString = new String[size];
-			int[] data = new int[size];
-			// fromfile de python devuelve los bytes en valores nativos de la m�quina ...
-			for (int i=0; i<size; i++) {
-				dataBytes[i] = bb.get();
-				dataMachValString[i] = HexUtil.bytesToHex(new byte[]{dataBytes[i]});
-				Integer dataMachValShort = Integer.decode("0x" + dataMachValString[i]);
-				data[i] = dataMachValShort.byteValue();
-				// Hacerlos unsigned ...
-				data[i] = ByteUtils.getUnsigned((byte)data[i]);
-			}
-			int bitPos = 0;
-			Vector v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int type = ((Integer)v.get(1)).intValue();
+			bb.get(dataBytes);
+			DwgBitReader reader = new DwgBitReader(dataBytes);
+			int type = reader.getBitShort();
 			//System.out.println("type = " + type);
 		    DwgObject obj = new DwgObject();
 		    if (type==0x11) {
@@ -312,39 +332,24 @@ public class DwgFileV15Reader extends DwgFileReader {
 		    } else {
 		    }
 		    obj.setType(type);
-		    v = DwgUtil.getRawLong(data, bitPos);
-		    bitPos = ((Integer)v.get(0)).intValue();
-		    int objBSize = ((Integer)v.get(1)).intValue();
+		    int objBSize = reader.getRawLong();
 		    obj.setSizeInBits(objBSize);
-		    Vector entityHandle = new Vector();
-		    v = DwgUtil.getHandle(data, bitPos);
-		    bitPos = ((Integer)v.get(0)).intValue();
-		    for (int i=1;i<v.size();i++) {
-		    	entityHandle.add(v.get(i));
-		    }
+		    int[] entityHandle = reader.getHandle();
 		    obj.setHandle(DwgUtil.handleBinToHandleInt(entityHandle));
-		    v = DwgUtil.readExtendedData(data, bitPos);
-		    bitPos = ((Integer)v.get(0)).intValue();
-		    Vector extData = (Vector)v.get(1);
+		    Vector extData = reader.readExtendedData();
 		    obj.setExtendedData(extData);
 		    
 		    boolean gflag = false;
 	    	gflag = obj.isGraphicsFlag();
 		    if (gflag) {
-		    	v = DwgUtil.testBit(data, bitPos);
-			    bitPos = ((Integer)v.get(0)).intValue();
-			    boolean val = ((Boolean)v.get(1)).booleanValue();
+			    boolean val = reader.testBit();
 			    if (val) {
-			    	v = DwgUtil.getRawLong(data, bitPos);
-				    bitPos = ((Integer)v.get(0)).intValue();
-				    size = ((Integer)v.get(1)).intValue();
-				    int bgSize = size*8;
-					Integer giData = (Integer)DwgUtil.getBits(data, bgSize, bitPos);
-					obj.setGraphicData(giData.intValue());
-					bitPos = bitPos + bgSize;
+				    size = reader.getRawLong();
+				    // skip the graphic data
+				    reader.skip(size*8);
 			    }
 		    }
-			readSpecificObject(obj, data, bitPos);
+			readSpecificObject(obj, reader);
 		    return obj;
 	    } catch (Exception e) {
 	        System.out.println("Exception capturada. Probablemente se ha encontrado un" +
@@ -353,58 +358,58 @@ public class DwgFileV15Reader extends DwgFileReader {
 	        return null;
 	    }
 	}
-	private void readSpecificObject(DwgObject obj, int[] data, int bitPos) throws Exception {
+	private void readSpecificObject(DwgObject obj, DwgBitReader reader) throws Exception {
 		if (obj.getType()==0x11) {
-			((DwgArc)obj).readDwgArcV15(data, bitPos);
+			((DwgArc)obj).readDwgArcV15(reader);
 		} else if (obj.getType()==0x12) {
-			((DwgCircle)obj).readDwgCircleV15(data, bitPos);
+			((DwgCircle)obj).readDwgCircleV15(reader);
 		} else if (obj.getType()==0x13) {
-			((DwgLine)obj).readDwgLineV15(data, bitPos);
+			((DwgLine)obj).readDwgLineV15(reader);
 		} else if (obj.getType()==0x1B) {
-			((DwgPoint)obj).readDwgPointV15(data, bitPos);
+			((DwgPoint)obj).readDwgPointV15(reader);
 		} else if (obj.getType()==0x0F) {
-			((DwgPolyline2D)obj).readDwgPolyline2DV15(data, bitPos);
+			((DwgPolyline2D)obj).readDwgPolyline2DV15(reader);
 		} else if (obj.getType()==0x10) {
-			((DwgPolyline3D)obj).readDwgPolyline3DV15(data, bitPos);
+			((DwgPolyline3D)obj).readDwgPolyline3DV15(reader);
 		} else if (obj.getType()==0x0A) {
-			((DwgVertex2D)obj).readDwgVertex2DV15(data, bitPos);
+			((DwgVertex2D)obj).readDwgVertex2DV15(reader);
 		} else if (obj.getType()==0x0B) {
-			((DwgVertex3D)obj).readDwgVertex3DV15(data, bitPos);
+			((DwgVertex3D)obj).readDwgVertex3DV15(reader);
 		} else if (obj.getType()==0x6) {
-			((DwgSeqend)obj).readDwgSeqendV15(data, bitPos);
+			((DwgSeqend)obj).readDwgSeqendV15(reader);
 		} else if (obj.getType()==0x1) {
-			((DwgText)obj).readDwgTextV15(data, bitPos);
+			((DwgText)obj).readDwgTextV15(reader);
 		} else if (obj.getType()==0x2) {
-			((DwgAttrib)obj).readDwgAttribV15(data, bitPos);
+			((DwgAttrib)obj).readDwgAttribV15(reader);
 		} else if (obj.getType()==0x3) {
-			((DwgAttdef)obj).readDwgAttdefV15(data, bitPos);
+			((DwgAttdef)obj).readDwgAttdefV15(reader);
 		} else if (obj.getType()==0x4) {
-			((DwgBlock)obj).readDwgBlockV15(data, bitPos);
+			((DwgBlock)obj).readDwgBlockV15(reader);
 		} else if (obj.getType()==0x5) {
-			((DwgEndblk)obj).readDwgEndblkV15(data, bitPos);
+			((DwgEndblk)obj).readDwgEndblkV15(reader);
 		} else if (obj.getType()==0x30) {
-			((DwgBlockControl)obj).readDwgBlockControlV15(data, bitPos);
+			((DwgBlockControl)obj).readDwgBlockControlV15(reader);
 		} else if (obj.getType()==0x31) {
-			((DwgBlockHeader)obj).readDwgBlockHeaderV15(data, bitPos);
+			((DwgBlockHeader)obj).readDwgBlockHeaderV15(reader);
 		} else if (obj.getType()==0x32) {
-			((DwgLayerControl)obj).readDwgLayerControlV15(data, bitPos);
+			((DwgLayerControl)obj).readDwgLayerControlV15(reader);
 		} else if (obj.getType()==0x33) {
-			((DwgLayer)obj).readDwgLayerV15(data, bitPos);
+			((DwgLayer)obj).readDwgLayerV15(reader);
 		} else if (obj.getType()==0x7) {
-			((DwgInsert)obj).readDwgInsertV15(data, bitPos);
+			((DwgInsert)obj).readDwgInsertV15(reader);
 		} else if (obj.getType()==0x2C) {
-			((DwgMText)obj).readDwgMTextV15(data, bitPos);
+			((DwgMText)obj).readDwgMTextV15(reader);
 		} else if (obj.getType()==0x1F) {
-			((DwgSolid)obj).readDwgSolidV15(data, bitPos);
+			((DwgSolid)obj).readDwgSolidV15(reader);
 		} else if (obj.getType()==0x23) {
-			((DwgEllipse)obj).readDwgEllipseV15(data, bitPos);
+			((DwgEllipse)obj).readDwgEllipseV15(reader);
 		} else if (obj.getType()==0x24) {
-			((DwgSpline)obj).readDwgSplineV15(data, bitPos);
+			((DwgSpline)obj).readDwgSplineV15(reader);
 		} else if (obj.getType()==0x14) {
 			//System.out.println("... detectado un dim del tipo 0x14 ...");
 		} else if (obj.getType()==0x15) {
 			//System.out.println("... detectado un dim del tipo 0x15 ...");
-			//((DwgLinearDimension)obj).readDwgLinearDimensionV15(data, bitPos);
+			//((DwgLinearDimension)obj).readDwgLinearDimensionV15(reader);
 		} else if (obj.getType()==0x16) {
 			//System.out.println("... detectado un dim del tipo 0x16 ...");
 		} else if (obj.getType()==0x17) {
@@ -416,19 +421,19 @@ public class DwgFileV15Reader extends DwgFileReader {
 		} else if (obj.getType()==0x1A) {
 			//System.out.println("... detectado un dim del tipo 0x1A ...");
 		} else if (obj.getType()==0x4D) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x4E) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x4F) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x50) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x51) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x52) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else if (obj.getType()==0x53) {
-			((DwgLwPolyline)obj).readDwgLwPolylineV15(data, bitPos);
+			((DwgLwPolyline)obj).readDwgLwPolylineV15(reader);
 		} else {
 			//System.out.println("Tipo de objeto pendiente de implementaci�n");
 		}
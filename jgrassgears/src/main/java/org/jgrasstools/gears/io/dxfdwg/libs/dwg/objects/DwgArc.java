@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgArc class represents a DWG Arc
@@ -39,69 +37,43 @@ public class DwgArc extends DwgObject {
 	/**
 	 * Read an Arc in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgArcV15(int[] data, int offset) throws Exception {
+	public void readDwgArcV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgArc() executed ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+		readObjectHeaderV15(reader);
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		double[] coord = new double[]{x, y, z};
 		center = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double val = ((Double)v.get(1)).doubleValue();
+		double val = reader.getBitDouble();
 		radius = val;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 		if (flag) {
 			val=0.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			val = ((Double)v.get(1)).doubleValue();
+			val = reader.getBitDouble();
 		}
 	    thickness = val;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 		if (flag) {
 			 x = y = 0.0;
 			 z = 1.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 		}
 		coord = new double[]{x, y, z};
 		extrusion = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 	    initAngle = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 	    endAngle = val;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the center.
@@ -19,8 +19,8 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -53,145 +53,86 @@ public class DwgAttdef extends DwgObject {
 	/**
 	 * Read an Attdef in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgAttdefV15(int[] data, int offset) throws Exception {
+	public void readDwgAttdefV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgAttdef() executed ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int dflag = ((Integer)v.get(1)).intValue();
+		readObjectHeaderV15(reader);
+		int dflag = reader.getRawChar();
 		dataFlag = dflag;
 		if ((dflag & 0x1)==0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double elev = ((Double)v.get(1)).doubleValue();
+			double elev = reader.getRawDouble();
 			elevation = elev;
 		}
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x1 = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y1 = ((Double)v.get(1)).doubleValue();
+		double x1 = reader.getRawDouble();
+		double y1 = reader.getRawDouble();
 		insertionPoint = new Point2D.Double(x1, y1);
 		double x=0, y=0, z=0;
 		if ((dflag & 0x2)==0) {
-			v = DwgUtil.getDefaultDouble(data, bitPos, x1);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, y1);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
+			x = reader.getDefaultDouble(x1);
+			y = reader.getDefaultDouble(y1);
 		}
 		alignmentPoint = new Point2D.Double(x, y);
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 		if (flag) {
 			y = 0.0;
 			x = y;
 			z = 1.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 		}
 		extrusion = new double[]{x, y, z};
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 	    double th;
 		if (flag) {
 			th=0.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			th = ((Double)v.get(1)).doubleValue();
+			th = reader.getBitDouble();
 		}
 		thickness = th;
 		if ((dflag & 0x4)==0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double oblique = ((Double)v.get(1)).doubleValue();
+			double oblique = reader.getRawDouble();
 			obliqueAngle = oblique;
 		}
 		if ((dflag & 0x8)==0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double rot = ((Double)v.get(1)).doubleValue();
+			double rot = reader.getRawDouble();
 			rotationAngle = rot;
 		}
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double height = ((Double)v.get(1)).doubleValue();
+		double height = reader.getRawDouble();
 		this.height = height;
 		if ((dflag & 0x10)==0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double width = ((Double)v.get(1)).doubleValue();
+			double width = reader.getRawDouble();
 			widthFactor = width;
 		}
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String text = (String)v.get(1);
+		String text = reader.getTextString();
 		this.text = text;
 		if ((dflag & 0x20)==0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int gen = ((Integer)v.get(1)).intValue();
+			int gen = reader.getBitShort();
 			generation = gen;
 		}
 		if ((dflag & 0x40)==0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int halign = ((Integer)v.get(1)).intValue();
+			int halign = reader.getBitShort();
 			this.halign = halign;
 		}
 		if ((dflag & 0x80)==0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int valign = ((Integer)v.get(1)).intValue();
+			int valign = reader.getBitShort();
 			this.valign = valign;
 		}
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String tag = (String)v.get(1);
+		String tag = reader.getTextString();
 		this.tag = tag;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int fl = ((Integer)v.get(1)).intValue();
+		int fl = reader.getBitShort();
 		fieldLength = fl;
-		v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flags = ((Integer)v.get(1)).intValue();
+		int flags = reader.getRawChar();
 		this.flags = flags;
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String prompt = (String)v.get(1);
+		String prompt = reader.getTextString();
 		this.prompt = prompt;
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    styleHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    styleHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/* (non-Javadoc)
 	 * @see java.lang.Object#clone()
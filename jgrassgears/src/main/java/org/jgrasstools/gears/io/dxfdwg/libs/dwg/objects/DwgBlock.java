@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgBlock class represents a DWG Block
@@ -34,19 +32,15 @@ public class DwgBlock extends DwgObject {
 	/**
 	 * Read a Block in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgBlockV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String text = (String)v.get(1);
+	public void readDwgBlockV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		String text = reader.getTextString();
 		name = text;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the name.
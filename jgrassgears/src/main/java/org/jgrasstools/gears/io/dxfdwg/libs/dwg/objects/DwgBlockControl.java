@@ -20,6 +20,7 @@ package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -37,72 +38,29 @@ public class DwgBlockControl extends DwgObject {
 	/**
 	 * Read a Block control in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgBlockControlV15(int[] data, int offset) throws Exception {
+	public void readDwgBlockControlV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgBlockControl() executed ...");
-		int bitPos = offset;
-		Vector v = DwgUtil.getBitLong(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int numReactors = ((Integer)v.get(1)).intValue();
+		int numReactors = reader.getBitLong();
 		setNumReactors(numReactors);
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int enumsz = ((Integer)v.get(1)).intValue();
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-		Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    nullHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
+		int enumsz = reader.getBitShort();
+		int[] handle = reader.getHandle();
+	    nullHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
 		if (enumsz>0) {
 			Vector handles = new Vector();
 			for (int i=0;i<enumsz;i++) {
-				v = DwgUtil.getHandle(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				handle = new int[v.size()-1];
-			    for (int j=1;j<v.size();j++) {
-				    handle[j-1] = ((Integer)v.get(j)).intValue();
-			    }
+				handle = reader.getHandle();
 				handles.add(handle);
 			}
 			code2Handles = handles;
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    modelSpaceHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    paperSpaceHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		handle = reader.getHandle();
+	    modelSpaceHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    paperSpaceHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 }
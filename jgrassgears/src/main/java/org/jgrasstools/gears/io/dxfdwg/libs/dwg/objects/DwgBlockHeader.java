@@ -20,6 +20,7 @@ package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -61,197 +62,83 @@ public class DwgBlockHeader extends DwgObject {
 	/**
 	 * Read a Block header in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgBlockHeaderV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		Vector v = DwgUtil.getBitLong(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int numReactors = ((Integer)v.get(1)).intValue();
+	public void readDwgBlockHeaderV15(DwgBitReader reader) throws Exception {
+		int numReactors = reader.getBitLong();
 		setNumReactors(numReactors);
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String name = (String)v.get(1);
+		String name = reader.getTextString();
 		this.name = name;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 		flag64 = flag;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int xrefplus1 = ((Integer)v.get(1)).intValue();
+		int xrefplus1 = reader.getBitShort();
 		xRefPlus = xrefplus1;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean xdep = ((Boolean)v.get(1)).booleanValue();
+		boolean xdep = reader.testBit();
 		this.xdep = xdep;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean anon = ((Boolean)v.get(1)).booleanValue();
+		boolean anon = reader.testBit();
 		anonymous = anon;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean hasatts = ((Boolean)v.get(1)).booleanValue();
+		boolean hasatts = reader.testBit();
 		hasAttrs = hasatts;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean bxref = ((Boolean)v.get(1)).booleanValue();
+		boolean bxref = reader.testBit();
 		blkIsXRef = bxref;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean xover = ((Boolean)v.get(1)).booleanValue();
+		boolean xover = reader.testBit();
 		xRefOverLaid = xover;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean loaded = ((Boolean)v.get(1)).booleanValue();
+		boolean loaded = reader.testBit();
 		this.loaded = loaded;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double bx = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double by = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double bz = ((Double)v.get(1)).doubleValue();
+		double bx = reader.getBitDouble();
+		double by = reader.getBitDouble();
+		double bz = reader.getBitDouble();
 		double[] coord = new double[]{bx, by, bz};
 		basePoint = coord;
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String pname = (String)v.get(1);
+		String pname = reader.getTextString();
 		xRefPName = pname;
 		int icount = 0;
 		while (true) {
-			v = DwgUtil.getRawChar(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int val = ((Integer)v.get(1)).intValue();
+			int val = reader.getRawChar();
 			if (val==0) {
 				break;
 			}
 			icount++;
 		}
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String desc = (String)v.get(1);
+		String desc = reader.getTextString();
 		blockDescription = desc;
-		v = DwgUtil.getBitLong(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int pdsize = ((Integer)v.get(1)).intValue();
+		int pdsize = reader.getBitLong();
 		if (pdsize>0) {
 			int count = pdsize + icount;
 			//int pdata = ((Integer)DwgUtil.getBits(data, count, bitPos)).intValue();
 			//previewData = pdata;
-			bitPos = bitPos + count;
+			reader.skip(count);
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    blockControlHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		int[] handle = reader.getHandle();
+	    blockControlHandle = DwgUtil.handleBinToHandleInt(handle);
 		for (int i=0;i<numReactors;i++) {
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int j=1;j<v.size();j++) {
-			    handle[j-1] = ((Integer)v.get(j)).intValue();
-		    }
+			handle = reader.getHandle();
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    nullHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    blockEntityHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		handle = reader.getHandle();
+		handle = reader.getHandle();
+	    nullHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    blockEntityHandle = DwgUtil.handleBinToHandleInt(handle);
 		if ((!bxref) && (!xover)) {
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int j=1;j<v.size();j++) {
-			    handle[j-1] = ((Integer)v.get(j)).intValue();
-		    }
-		    handleVect = new Vector();
-		    for (int i=0;i<handle.length;i++) {
-		    	handleVect.add(new Integer(handle[i]));
-		    }
-		    firstEntityHandle = DwgUtil.handleBinToHandleInt(handleVect);
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int j=1;j<v.size();j++) {
-			    handle[j-1] = ((Integer)v.get(j)).intValue();
-		    }
-		    handleVect = new Vector();
-		    for (int i=0;i<handle.length;i++) {
-		    	handleVect.add(new Integer(handle[i]));
-		    }
-		    lastEntityHandle = DwgUtil.handleBinToHandleInt(handleVect);
+			handle = reader.getHandle();
+		    firstEntityHandle = DwgUtil.handleBinToHandleInt(handle);
+			handle = reader.getHandle();
+		    lastEntityHandle = DwgUtil.handleBinToHandleInt(handle);
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    endBlkEntityHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		handle = reader.getHandle();
+	    endBlkEntityHandle = DwgUtil.handleBinToHandleInt(handle);
 		if (icount>0) {
 			Vector handles = new Vector();
 			for (int i=0;i<icount;i++) {
-				v = DwgUtil.getHandle(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				handle = new int[v.size()-1];
-			    for (int j=1;j<v.size();j++) {
-				    handle[j-1] = ((Integer)v.get(j)).intValue();
-			    }
+				handle = reader.getHandle();
 				handles.add(handle);
 			}
 		    insertHandles = handles;
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    layoutHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		handle = reader.getHandle();
+	    layoutHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/**
 	 * @return Returns the basePoint.
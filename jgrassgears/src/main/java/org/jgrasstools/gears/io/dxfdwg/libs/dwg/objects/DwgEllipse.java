@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgEllipse class represents a DWG Ellipse
@@ -39,60 +37,34 @@ public class DwgEllipse extends DwgObject {
 	/**
 	 * Read a Ellipse in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgEllipseV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+	public void readDwgEllipseV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		double[] coord = new double[]{x, y, z};
 		center = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		coord = new double[]{x, y, z};
 		majorAxisVector = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		coord = new double[]{x, y, z};
 		extrusion = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double val = ((Double)v.get(1)).doubleValue();
+		double val = reader.getBitDouble();
 		axisRatio = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 	    initAngle = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 	    endAngle = val;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
     /**
      * @return Returns the axisRatio.
@@ -18,8 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -41,50 +40,29 @@ public class DwgInsert extends DwgObject {
 	/**
 	 * Read a Insert in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgInsertV15(int[] data, int offset) throws Exception {
+	public void readDwgInsertV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgInsert() executed ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+		readObjectHeaderV15(reader);
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		double[] coord = new double[]{x, y, z};
 		insertionPoint = coord;
-		int dflag = ((Integer)DwgUtil.getBits(data, 2, bitPos)).intValue();
-		bitPos = bitPos + 2;
+		int dflag = (int) reader.getBits(2);
 		if (dflag==0x0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, x);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, x);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getRawDouble();
+			y = reader.getDefaultDouble(x);
+			z = reader.getDefaultDouble(x);
 		} else if (dflag==0x1) {
 			x = 1.0;
-			v = DwgUtil.getDefaultDouble(data, bitPos, x);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, x);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			y = reader.getDefaultDouble(x);
+			z = reader.getDefaultDouble(x);
 		} else if (dflag==0x2) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
+			x = reader.getRawDouble();
 			z = x;
 			y = z;
 		} else {
@@ -94,70 +72,24 @@ public class DwgInsert extends DwgObject {
 		}
 		coord = new double[]{x, y, z};
 		scale = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double rot = ((Double)v.get(1)).doubleValue();
+		double rot = reader.getBitDouble();
 		rotation = rot;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		coord = new double[]{x, y, z};
 		extrusion = coord;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean hasattr = ((Boolean)v.get(1)).booleanValue();
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    blockHeaderHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		boolean hasattr = reader.testBit();
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    blockHeaderHandle = DwgUtil.handleBinToHandleInt(handle);
 		if (hasattr) {
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int i=1;i<v.size();i++) {
-			    handle[i-1] = ((Integer)v.get(i)).intValue();
-		    }
-		    handleVect = new Vector();
-		    for (int i=0;i<handle.length;i++) {
-		    	handleVect.add(new Integer(handle[i]));
-		    }
-		    firstAttribHandle = DwgUtil.handleBinToHandleInt(handleVect);
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int i=1;i<v.size();i++) {
-			    handle[i-1] = ((Integer)v.get(i)).intValue();
-		    }
-		    handleVect = new Vector();
-		    for (int i=0;i<handle.length;i++) {
-		    	handleVect.add(new Integer(handle[i]));
-		    }
-		    lastAttribHandle = DwgUtil.handleBinToHandleInt(handleVect);
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int i=1;i<v.size();i++) {
-			    handle[i-1] = ((Integer)v.get(i)).intValue();
-		    }
-		    handleVect = new Vector();
-		    for (int i=0;i<handle.length;i++) {
-		    	handleVect.add(new Integer(handle[i]));
-		    }
-		    seqendHandle = DwgUtil.handleBinToHandleInt(handleVect);
+			handle = reader.getHandle();
+		    firstAttribHandle = DwgUtil.handleBinToHandleInt(handle);
+			handle = reader.getHandle();
+		    lastAttribHandle = DwgUtil.handleBinToHandleInt(handle);
+			handle = reader.getHandle();
+		    seqendHandle = DwgUtil.handleBinToHandleInt(handle);
 		}
 	}
 	/**
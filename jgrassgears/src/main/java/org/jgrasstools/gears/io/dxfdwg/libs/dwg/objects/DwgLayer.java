@@ -18,8 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -43,99 +42,37 @@ public class DwgLayer extends DwgObject {
 	/**
 	 * Read a Layer in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgLayerV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		Vector v = DwgUtil.getBitLong(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int numReactors = ((Integer)v.get(1)).intValue();
+	public void readDwgLayerV15(DwgBitReader reader) throws Exception {
+		int numReactors = reader.getBitLong();
 		setNumReactors(numReactors);
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String name = (String)v.get(1);
+		String name = reader.getTextString();
 		this.name = name;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 		flag64 = flag;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int xrefplus1 = ((Integer)v.get(1)).intValue();
+		int xrefplus1 = reader.getBitShort();
 		xRefPlus = xrefplus1;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean xdep = ((Boolean)v.get(1)).booleanValue();
+		boolean xdep = reader.testBit();
 		this.xdep = xdep; 
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flags = ((Integer)v.get(1)).intValue();
+		int flags = reader.getBitShort();
 		this.flags = flags;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int color = ((Integer)v.get(1)).intValue();
+		int color = reader.getBitShort();
 		this.color = color;
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    layerControlHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		int[] handle = reader.getHandle();
+	    layerControlHandle = DwgUtil.handleBinToHandleInt(handle);
 		for (int i=0;i<numReactors;i++) {
-			v = DwgUtil.getHandle(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			handle = new int[v.size()-1];
-		    for (int j=1;j<v.size();j++) {
-			    handle[j-1] = ((Integer)v.get(j)).intValue();
-		    }
+			handle = reader.getHandle();
 		}
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    nullHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    plotstyleHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    linetypeHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		handle = reader.getHandle();
+		handle = reader.getHandle();
+	    nullHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    plotstyleHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    linetypeHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/**
 	 * @return Returns the color.
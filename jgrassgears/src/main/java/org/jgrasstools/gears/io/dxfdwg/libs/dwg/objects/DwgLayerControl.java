@@ -18,6 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 
 /**
@@ -30,11 +31,10 @@ public class DwgLayerControl extends DwgObject {
 	/**
 	 * Read a Layer control in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgLayerControlV15(int[] data, int offset) throws Exception {
+	public void readDwgLayerControlV15(DwgBitReader reader) throws Exception {
 	}
 }
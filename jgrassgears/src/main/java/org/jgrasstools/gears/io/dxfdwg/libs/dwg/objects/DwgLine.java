@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgLine class represents a DWG Line
@@ -38,38 +36,22 @@ public class DwgLine extends DwgObject {
 	/**
 	 * Read a Line in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgLineV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		zflag = ((Boolean)v.get(1)).booleanValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x1 = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getDefaultDouble(data, bitPos, x1);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x2 = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y1 = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getDefaultDouble(data, bitPos, y1);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y2 = ((Double)v.get(1)).doubleValue();
+	public void readDwgLineV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		zflag = reader.testBit();
+		double x1 = reader.getRawDouble();
+		double x2 = reader.getDefaultDouble(x1);
+		double y1 = reader.getRawDouble();
+		double y2 = reader.getDefaultDouble(y1);
 		double[] p1;
 		double[] p2;
 	    if (!zflag) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double z1 = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, z1);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double z2 = ((Double)v.get(1)).doubleValue();
+			double z1 = reader.getRawDouble();
+			double z2 = reader.getDefaultDouble(z1);
 			p1 = new double[]{x1, y1, z1};
 			p2 = new double[]{x2, y2, z2};
 		} else {
@@ -78,39 +60,27 @@ public class DwgLine extends DwgObject {
 		}
 	    this.p1 = p1;
 	    this.p2 = p2;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 	    double val;
 		if (flag) {
 			val=0.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			val = ((Double)v.get(1)).doubleValue();
+			val = reader.getBitDouble();
 		}
 		thickness = val;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 		double x, y, z;
 	    if (flag) {
 			 x = y = 0.0;
 			 z = 1.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 		}
 		double[] coord = new double[]{x, y, z};
 		extrusion = coord;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the p1.
@@ -19,8 +19,8 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -55,149 +55,67 @@ public class DwgLinearDimension extends DwgObject {
 	/**
 	 * Read a Linear dimension in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgLinearDimensionV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+	public void readDwgLinearDimensionV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		extrusion = new double[]{x, y, z};
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
+		x = reader.getRawDouble();
+		y = reader.getRawDouble();
 		textMidpoint = new Point2D.Double(x, y);
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double val = ((Double)v.get(1)).doubleValue();
+		double val = reader.getBitDouble();
 		elevation = val;
-		v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flags = ((Integer)v.get(1)).intValue();
+		int flags = reader.getRawChar();
 		this.flags = flags;
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String text = (String)v.get(1);
+		String text = reader.getTextString();
 		this.text = text;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		rotation = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		horizDir = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		insScale = new double[]{x, y, z};
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		insRotation = val;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int ap = ((Integer)v.get(1)).intValue();
+		int ap = reader.getBitShort();
 		attachmentPoint = ap;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int lss = ((Integer)v.get(1)).intValue();
+		int lss = reader.getBitShort();
 		linespaceStyle = lss;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		linespaceFactor = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		actualMeasurement = val;
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		x = reader.getRawDouble();
+		val = reader.getRawDouble();
 		pt12 = new Point2D.Double(x, y);
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		pt10 = new double[]{x, y, z};
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		pt13 = new double[]{x, y, z};
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		pt14 = new double[]{x, y, z};
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		extRotation = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		dimensionRotation = val;
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    dimstyleHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    anonBlockHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    dimstyleHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    anonBlockHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
     /**
      * @return Returns the elevation.
@@ -19,10 +19,9 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgLwPolyline class represents a DWG LwPolyline
@@ -42,58 +41,40 @@ public class DwgLwPolyline extends DwgObject {
 	/**
 	 * Read a LwPolyline in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgLwPolylineV15(int[] data, int offset) throws Exception {
+	public void readDwgLwPolylineV15(DwgBitReader reader) throws Exception {
 		//System.out.println("DwgLwPolyline.readDwgLwPolyline() executed ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flag = ((Integer)v.get(1)).intValue();
+		readObjectHeaderV15(reader);
+		int flag = reader.getBitShort();
 		this.flag = flag;
 		// Condici�n emp�rica. Si flag es menor que cero no se trata de LwPolylines ...
 		if (flag>=0) {
 			double constWidth = 0.0;
 			if ((flag & 0x4)>0) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				constWidth = ((Double)v.get(1)).doubleValue();
+				constWidth = reader.getBitDouble();
 			}
 			this.constWidth = constWidth;
 			double elev = 0.0;
 			if ((flag & 0x8)>0) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				elev = ((Double)v.get(1)).doubleValue();
+				elev = reader.getBitDouble();
 			}
 			elevation = elev;
 			double thickness = 0.0;
 			if ((flag & 0x2)>0) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				thickness = ((Double)v.get(1)).doubleValue();
+				thickness = reader.getBitDouble();
 			}
 			this.thickness = thickness;
 			double nx = 0.0, ny = 0.0, nz = 0.0;
 			if ((flag & 0x1)>0) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				nx = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				ny = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				nz = ((Double)v.get(1)).doubleValue();
+				nx = reader.getBitDouble();
+				ny = reader.getBitDouble();
+				nz = reader.getBitDouble();
 			}
 			normal = new double[]{nx, ny, nz};
-			v = DwgUtil.getBitLong(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int np = ((Integer)v.get(1)).intValue();
+			int np = reader.getBitLong();
 			// TODO: Condici�n emp�rica. Si hay m�s de 10000 puntos no se trata de LwPolylines.
 		    // Este tema hay que revisarlo porque si pueden existir LwPolylines con m�s de
 		    // 10000 v�rtices ...
@@ -101,32 +82,20 @@ public class DwgLwPolyline extends DwgObject {
 			if (np>0 && np<10000) {
 				long nb = 0;
 				if ((flag & 0x10)>0) {
-					v = DwgUtil.getBitLong(data, bitPos);
-					bitPos = ((Integer)v.get(0)).intValue();
-					nb = ((Integer)v.get(1)).intValue();
+					nb = reader.getBitLong();
 				}
 				long nw = 0;
 				if ((flag & 0x20)>0) {
-					v = DwgUtil.getBitLong(data, bitPos);
-					bitPos = ((Integer)v.get(0)).intValue();
-					nw = ((Integer)v.get(1)).intValue();
+					nw = reader.getBitLong();
 				}
                 //System.out.println("np = " + np);
 				Point2D[] vertices = new Point2D[np];
-				v = DwgUtil.getRawDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double vx = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getRawDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double vy = ((Double)v.get(1)).doubleValue();
+				double vx = reader.getRawDouble();
+				double vy = reader.getRawDouble();
 				vertices[0] = new Point2D.Double(vx, vy);
 				for (int i=1; i<(np); i++) {
-					v = DwgUtil.getDefaultDouble(data, bitPos, vx);
-					bitPos = ((Integer)v.get(0)).intValue();
-					double x = ((Double)v.get(1)).doubleValue();
-					v = DwgUtil.getDefaultDouble(data, bitPos, vy);
-					bitPos = ((Integer)v.get(0)).intValue();
-					double y = ((Double)v.get(1)).doubleValue();
+					double x = reader.getDefaultDouble(vx);
+					double y = reader.getDefaultDouble(vy);
 					vertices[i] = new Point2D.Double(x, y);
 					vx = x;
 					vy = y;
@@ -136,9 +105,7 @@ public class DwgLwPolyline extends DwgObject {
 				if (nb>0) {
 					bulges = new double[(int)nb];
 					for (int i=0; i<nb; i++) {
-						v = DwgUtil.getRawDouble(data, bitPos);
-						bitPos = ((Integer)v.get(0)).intValue();
-						double bulge = ((Double)v.get(1)).doubleValue();
+						double bulge = reader.getRawDouble();
 						bulges[i] = bulge;
 					}
 				} else if (nb==0) {
@@ -151,18 +118,14 @@ public class DwgLwPolyline extends DwgObject {
 				if (nw>0) {
 					double[][] widths = new double[(int)nw][2];
 					for (int i=0; i<nw; i++) {
-						v = DwgUtil.getBitDouble(data, bitPos);
-						bitPos = ((Integer)v.get(0)).intValue();
-						double sw = ((Double)v.get(1)).doubleValue();
-						v = DwgUtil.getBitDouble(data, bitPos);
-						bitPos = ((Integer)v.get(0)).intValue();
-						double ew = ((Double)v.get(1)).doubleValue();
+						double sw = reader.getBitDouble();
+						double ew = reader.getBitDouble();
 						widths[i][0] = sw;
 						widths[i][1] = ew;
 					}
 					this.widths = widths;
 				}
-				bitPos = readObjectTailV15(data, bitPos);
+				readObjectTailV15(reader);
 			}
 		}
 	}
@@ -18,8 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -46,98 +45,49 @@ public class DwgMText extends DwgObject {
 	/**
 	 * Read a MText in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgMTextV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+	public void readDwgMTextV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		double[] coord = new double[]{x, y, z};
 		insertionPoint = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		coord = new double[]{x, y, z};
 		extrusion = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		z = ((Double)v.get(1)).doubleValue();
+		x = reader.getBitDouble();
+		y = reader.getBitDouble();
+		z = reader.getBitDouble();
 		coord = new double[]{x, y, z};
 		xAxisDirection = coord;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double val = ((Double)v.get(1)).doubleValue();
+		double val = reader.getBitDouble();
 		width = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		height = val;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int ival = ((Integer)v.get(1)).intValue();
+		int ival = reader.getBitShort();
 		attachment = ival;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		ival = ((Integer)v.get(1)).intValue();
+		ival = reader.getBitShort();
 		drawingDir = ival;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		extHeight = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		extWidth = val;
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String text = (String)v.get(1);
+		String text = reader.getTextString();
 		this.text = text;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		ival = ((Integer)v.get(1)).intValue();
+		ival = reader.getBitShort();
 		lineSpacingStyle = ival;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 		lineSpacingFactor = val;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int j=1;j<v.size();j++) {
-		    handle[j-1] = ((Integer)v.get(j)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    styleHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		boolean flag = reader.testBit();
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    styleHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/**
 	 * @return Returns the height.
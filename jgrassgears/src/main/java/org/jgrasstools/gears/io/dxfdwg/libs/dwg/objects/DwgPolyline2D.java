@@ -19,8 +19,8 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -46,99 +46,48 @@ public class DwgPolyline2D extends DwgObject {
 	/**
 	 * Read a Polyline2D in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgPolyline2DV15(int[] data, int offset) throws Exception {
+	public void readDwgPolyline2DV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgPolyline2D executing ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flags = ((Integer)v.get(1)).intValue();
+		readObjectHeaderV15(reader);
+		int flags = reader.getBitShort();
 		this.flags = flags;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int ctype = ((Integer)v.get(1)).intValue();
+		int ctype = reader.getBitShort();
 		curveType = ctype;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double sw = ((Double)v.get(1)).doubleValue();
+		double sw = reader.getBitDouble();
 		initWidth = sw;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double ew = ((Double)v.get(1)).doubleValue();
+		double ew = reader.getBitDouble();
 		endWidth = ew;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 	    double th = 0.0;
 	    if (!flag) {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			th = ((Double)v.get(1)).doubleValue();
+			th = reader.getBitDouble();
 	    }
 	    this.thickness = th;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double elev = ((Double)v.get(1)).doubleValue();
+		double elev = reader.getBitDouble();
 		elevation = elev;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 	    double ex, ey, ez = 0.0;
 	    if (flag) {
 	    	ex = 0.0;
 	    	ey = 0.0;
 	    	ez = 1.0;
 	    } else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			ex = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			ey = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			ez = ((Double)v.get(1)).doubleValue();
+			ex = reader.getBitDouble();
+			ey = reader.getBitDouble();
+			ez = reader.getBitDouble();
 	    }
 	    extrusion = new double[]{ex, ey, ez};
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    firstVertexHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    lastVertexHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    seqendHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    firstVertexHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    lastVertexHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    seqendHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/**
 	 * @return Returns the firstVertexHandle.
@@ -18,8 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
@@ -40,56 +39,23 @@ public class DwgPolyline3D extends DwgObject {
 	/**
 	 * Read a Polyline3D in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgPolyline3DV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int sflags = ((Integer)v.get(1)).intValue();
+	public void readDwgPolyline3DV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		int sflags = reader.getRawChar();
 		splineFlags = sflags;
-		v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int cflags = ((Integer)v.get(1)).intValue();
+		int cflags = reader.getRawChar();
 		closedFlags = cflags;
-		bitPos = readObjectTailV15(data, bitPos);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int[] handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    Vector handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    firstVertexHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    lastVertexHandle = DwgUtil.handleBinToHandleInt(handleVect);
-		v = DwgUtil.getHandle(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		handle = new int[v.size()-1];
-	    for (int i=1;i<v.size();i++) {
-		    handle[i-1] = ((Integer)v.get(i)).intValue();
-	    }
-	    handleVect = new Vector();
-	    for (int i=0;i<handle.length;i++) {
-	    	handleVect.add(new Integer(handle[i]));
-	    }
-	    seqendHandle = DwgUtil.handleBinToHandleInt(handleVect);
+		readObjectTailV15(reader);
+		int[] handle = reader.getHandle();
+	    firstVertexHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    lastVertexHandle = DwgUtil.handleBinToHandleInt(handle);
+		handle = reader.getHandle();
+	    seqendHandle = DwgUtil.handleBinToHandleInt(handle);
 	}
 	/**
 	 * @return Returns the closedFlags.
@@ -18,6 +18,7 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
 
 /**
@@ -30,14 +31,12 @@ public class DwgSeqend extends DwgObject {
 	/**
 	 * Read a Seqend in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgSeqendV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		bitPos = readObjectTailV15(data, bitPos);
+	public void readDwgSeqendV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		readObjectTailV15(reader);
 	}
 }
@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgSolid class represents a DWG Solid
@@ -40,83 +38,51 @@ public class DwgSolid extends DwgObject {
 	/**
 	 * Read a Solid in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgSolidV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+	public void readDwgSolidV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		boolean flag = reader.testBit();
 	    double val;
 		if (flag) {
 			val=0.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			val = ((Double)v.get(1)).doubleValue();
+			val = reader.getBitDouble();
 		}
 		thickness = val;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		val = ((Double)v.get(1)).doubleValue();
+		val = reader.getBitDouble();
 	    elevation = val;
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
+		double x = reader.getRawDouble();
+		double y = reader.getRawDouble();
 		double[] coord = new double[]{x, y, val};
 		corner1 = coord;
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
+		x = reader.getRawDouble();
+		y = reader.getRawDouble();
 		coord = new double[]{x, y, val};
 		corner2 = coord;
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
+		x = reader.getRawDouble();
+		y = reader.getRawDouble();
 		coord = new double[]{x, y, val};
 		corner3 = coord;
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		y = ((Double)v.get(1)).doubleValue();
+		x = reader.getRawDouble();
+		y = reader.getRawDouble();
 		coord = new double[]{x, y, val};
 		corner4 = coord;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 		double z;
 	    if (flag) {
 			 x = y = 0.0;
 			 z = 1.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 		}
 		coord = new double[]{x, y, z};
 		extrusion = coord;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the corner1.
@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgSpline class represents a DWG Spline
@@ -47,95 +45,55 @@ public class DwgSpline extends DwgObject {
 	/**
 	 * Read a Spline in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgSplineV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int sc = ((Integer)v.get(1)).intValue();
+	public void readDwgSplineV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		int sc = reader.getBitShort();
 		scenario = sc;
-		v = DwgUtil.getBitShort(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int deg = ((Integer)v.get(1)).intValue();
+		int deg = reader.getBitShort();
 		degree = deg;
 		int knotsNumber = 0;
 		int controlPointsNumber = 0;
 		int fitPointsNumber = 0;
 		boolean weight = false;
 		if (sc==2) {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double ft = ((Double)v.get(1)).doubleValue();
+			double ft = reader.getBitDouble();
 			fitTolerance = ft;
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double z = ((Double)v.get(1)).doubleValue();
+			double x = reader.getBitDouble();
+			double y = reader.getBitDouble();
+			double z = reader.getBitDouble();
 			double[] coord = new double[]{x, y, z};
 			beginTanVector = coord;
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 			coord = new double[]{x, y, z};
 			endTanVector = coord;
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			fitPointsNumber = ((Integer)v.get(1)).intValue();
+			fitPointsNumber = reader.getBitShort();
 		} else if (sc==1) {
-			v = DwgUtil.testBit(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			boolean rat = ((Boolean)v.get(1)).booleanValue();
+			boolean rat = reader.testBit();
 			rational = rat;
-			v = DwgUtil.testBit(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			boolean closed = ((Boolean)v.get(1)).booleanValue();
+			boolean closed = reader.testBit();
 			this.closed = closed;
-			v = DwgUtil.testBit(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			boolean per = ((Boolean)v.get(1)).booleanValue();
+			boolean per = reader.testBit();
 			periodic = per;
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double ktol = ((Double)v.get(1)).doubleValue();
+			double ktol = reader.getBitDouble();
 			knotTolerance = ktol;
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double ctol = ((Double)v.get(1)).doubleValue();
+			double ctol = reader.getBitDouble();
 			controlTolerance = ctol;
-			v = DwgUtil.getBitLong(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			knotsNumber = ((Integer)v.get(1)).intValue();
-			v = DwgUtil.getBitLong(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			controlPointsNumber = ((Integer)v.get(1)).intValue();
-			v = DwgUtil.testBit(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			weight = ((Boolean)v.get(1)).booleanValue();
+			knotsNumber = reader.getBitLong();
+			controlPointsNumber = reader.getBitLong();
+			weight = reader.testBit();
 		} else {
 			System.out.println("ERROR: Escenario desconocido");
 		}
 		if (knotsNumber>0) {
 			double[] knotpts = new double[knotsNumber];
 			for (int i=0;i<knotsNumber;i++) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				knotpts[i] = ((Double)v.get(1)).doubleValue();
+				knotpts[i] = reader.getBitDouble();
 			}
 			knotPoints = knotpts;
 		}
@@ -144,23 +102,15 @@ public class DwgSpline extends DwgObject {
 			double[][] ctrlpts = new double[controlPointsNumber][3];
 			double[] weights = new double[controlPointsNumber];
 			for (int i=0;i<controlPointsNumber;i++) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double x = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double y = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double z = ((Double)v.get(1)).doubleValue();
+				double x = reader.getBitDouble();
+				double y = reader.getBitDouble();
+				double z = reader.getBitDouble();
 				//double[] coord = new double[]{x, y, z};
 				ctrlpts[i][0] = x;
 				ctrlpts[i][1] = y;
 				ctrlpts[i][2] = z;
 				if (weight) {
-					v = DwgUtil.getBitDouble(data, bitPos);
-					bitPos = ((Integer)v.get(0)).intValue();
-					weights[i] = ((Double)v.get(1)).doubleValue();
+					weights[i] = reader.getBitDouble();
 				}
 			}
 			controlPoints = ctrlpts;
@@ -171,22 +121,16 @@ public class DwgSpline extends DwgObject {
 		if (fitPointsNumber>0) {
 			double[][] fitpts = new double[fitPointsNumber][3];
 			for (int i=0;i<fitPointsNumber;i++) {
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double x = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double y = ((Double)v.get(1)).doubleValue();
-				v = DwgUtil.getBitDouble(data, bitPos);
-				bitPos = ((Integer)v.get(0)).intValue();
-				double z = ((Double)v.get(1)).doubleValue();
+				double x = reader.getBitDouble();
+				double y = reader.getBitDouble();
+				double z = reader.getBitDouble();
 				fitpts[i][0] = x;
 				fitpts[i][1] = y;
 				fitpts[i][2] = z;
 			}
 			fitPoints = fitpts;
 		}
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the closed.
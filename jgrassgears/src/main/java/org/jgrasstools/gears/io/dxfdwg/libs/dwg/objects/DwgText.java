@@ -19,10 +19,9 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
 import java.awt.geom.Point2D;
-import java.util.Vector;
 
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.utils.TextToUnicodeConverter;
 
 /**
@@ -49,119 +48,77 @@ public class DwgText extends DwgObject {
 	/**
 	 * Read a Text in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgTextV15(int[] data, int offset) throws Exception {
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int dflag = ((Integer)v.get(1)).intValue();
+	public void readDwgTextV15(DwgBitReader reader) throws Exception {
+		readObjectHeaderV15(reader);
+		int dflag = reader.getRawChar();
 		dataFlag = dflag;
 		if ((dflag & 0x1)==0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double elev = ((Double)v.get(1)).doubleValue();
+			double elev = reader.getRawDouble();
 			elevation = elev;
 		}
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x1 = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y1 = ((Double)v.get(1)).doubleValue();
+		double x1 = reader.getRawDouble();
+		double y1 = reader.getRawDouble();
 		insertionPoint = new Point2D.Double(x1, y1);
 		if ((dflag & 0x2)==0) {
-			v = DwgUtil.getDefaultDouble(data, bitPos, x1);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double xa = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getDefaultDouble(data, bitPos, y1);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double ya = ((Double)v.get(1)).doubleValue();
+			double xa = reader.getDefaultDouble(x1);
+			double ya = reader.getDefaultDouble(y1);
 			alignmentPoint = new Point2D.Double(xa, ya);
 		}
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		boolean flag = ((Boolean)v.get(1)).booleanValue();
+		boolean flag = reader.testBit();
 		double x, y, z;
 		if (flag) {
 			x = 0.0;
 			y = 0.0;
 			z = 1.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			x = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			y = ((Double)v.get(1)).doubleValue();
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			z = ((Double)v.get(1)).doubleValue();
+			x = reader.getBitDouble();
+			y = reader.getBitDouble();
+			z = reader.getBitDouble();
 		}
 		double[] coord = new double[]{x, y, z};
 		extrusion = coord;
-		v = DwgUtil.testBit(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		flag = ((Boolean)v.get(1)).booleanValue();
+		flag = reader.testBit();
 	    double th;
 		if (flag) {
 			th=0.0;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			th = ((Double)v.get(1)).doubleValue();
+			th = reader.getBitDouble();
 		}
 		thickness = th;
 		if ((dflag & 0x4) == 0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double oblique = ((Double)v.get(1)).doubleValue();
+			double oblique = reader.getRawDouble();
 			obliqueAngle = oblique;
 		}
 		if ((dflag & 0x8) == 0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double rot = ((Double)v.get(1)).doubleValue();
+			double rot = reader.getRawDouble();
 			rotationAngle = rot;
 		}
-		v = DwgUtil.getRawDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double height = ((Double)v.get(1)).doubleValue();
+		double height = reader.getRawDouble();
 		this.height = height;
 		if ((dflag & 0x10) == 0) {
-			v = DwgUtil.getRawDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			double width = ((Double)v.get(1)).doubleValue();
+			double width = reader.getRawDouble();
 			widthFactor = width;
 		}
-		v = DwgUtil.getTextString(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		String text = (String)v.get(1);
+		String text = reader.getTextString();
 		text = TextToUnicodeConverter.convertText(text);
 		this.text = text;
 		if ((dflag & 0x20) == 0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int gen = ((Integer)v.get(1)).intValue();
+			int gen = reader.getBitShort();
 		    generation = gen;
 		}
 		if ((dflag & 0x40) == 0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int halign = ((Integer)v.get(1)).intValue();
+			int halign = reader.getBitShort();
 		    this.halign = halign;
 		}
 		if ((dflag & 0x80) == 0) {
-			v = DwgUtil.getBitShort(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			int valign = ((Integer)v.get(1)).intValue();
+			int valign = reader.getBitShort();
 		    this.valign = valign;
 		}
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the dataFlag.
@@ -18,10 +18,8 @@
  */
 package org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects;
 
-import java.util.Vector;
-
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
 import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgObject;
-import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgUtil;
 
 /**
  * The DwgVertex2D class represents a DWG Vertex2D
@@ -39,53 +37,35 @@ public class DwgVertex2D extends DwgObject {
 	/**
 	 * Read a Vertex2D in the DWG format Version 15
 	 * 
-	 * @param data Array of unsigned bytes obtained from the DWG binary file
-	 * @param offset The current bit offset where the value begins
+	 * @param reader The reader of the object data, positioned where the value begins
 	 * @throws Exception If an unexpected bit value is found in the DWG file. Occurs
 	 * 		   when we are looking for LwPolylines.
 	 */
-	public void readDwgVertex2DV15(int[] data, int offset) throws Exception {
+	public void readDwgVertex2DV15(DwgBitReader reader) throws Exception {
 		//System.out.println("readDwgVertex2D executing ...");
-		int bitPos = offset;
-		bitPos = readObjectHeaderV15(data, bitPos);
-		Vector v = DwgUtil.getRawChar(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		int flags = ((Integer)v.get(1)).intValue();
+		readObjectHeaderV15(reader);
+		int flags = reader.getRawChar();
 		this.flags = flags;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double x = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double y = ((Double)v.get(1)).doubleValue();
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double z = ((Double)v.get(1)).doubleValue();
+		double x = reader.getBitDouble();
+		double y = reader.getBitDouble();
+		double z = reader.getBitDouble();
 		double[] coord = new double[]{x, y, z};
 		point = new double[]{x, y, z};
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double sw = ((Double)v.get(1)).doubleValue();
+		double sw = reader.getBitDouble();
 		double ew = 0.0;
 		if (sw<0.0) {
 			ew = Math.abs(sw);
 			sw = ew;
 		} else {
-			v = DwgUtil.getBitDouble(data, bitPos);
-			bitPos = ((Integer)v.get(0)).intValue();
-			ew = ((Double)v.get(1)).doubleValue();
+			ew = reader.getBitDouble();
 		}
 		initWidth = sw;
 		endWidth = ew;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double bulge = ((Double)v.get(1)).doubleValue();
+		double bulge = reader.getBitDouble();
 		this.bulge = bulge;
-		v = DwgUtil.getBitDouble(data, bitPos);
-		bitPos = ((Integer)v.get(0)).intValue();
-		double tandir = ((Double)v.get(1)).doubleValue();
+		double tandir = reader.getBitDouble();
 		tangentDir = tandir;
-		bitPos = readObjectTailV15(data, bitPos);
+		readObjectTailV15(reader);
 	}
 	/**
 	 * @return Returns the bulge.
@@ -42,7 +42,8 @@ public class LasCell {
     public double maxElev;
 
     /**
-     * The byte array containing [x1,y1,z1,x2,y2,z2,...] in amount of pointsCount. 
+     * The byte array containing [x1,y1,z1,x2,y2,z2,...] in amount of pointsCount, 
+     * encoded through the {@link LasCellCodec}. 
      */
     public byte[] xyzs;
 
@@ -51,7 +52,8 @@ public class LasCell {
     public short maxIntensity;
 
     /**
-     * The array containing [intensities1, classification1, ...] in amount of pointsCount. 
+     * The array containing [intensities1, classification1, ...] in amount of pointsCount, 
+     * encoded through the {@link LasCellCodec}. 
      */
     public byte[] intensitiesClassifications;
 
@@ -69,7 +71,8 @@ public class LasCell {
     public byte[] gpsTimes;
 
     /**
-     * The array containing [r1, g1, b1, r2, g2, b2, ...]  rgb info for stylings.
+     * The array containing [r1, g1, b1, r2, g2, b2, ...]  rgb info for stylings, 
+     * encoded through the {@link LasCellCodec}.
      */
     public byte[] colors;
 
@@ -0,0 +1,254 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.spatialite;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jgrasstools.gears.utils.CompressionUtilities;
+
+/**
+ * Codec for the blobs of the {@link LasCellsTable}.
+ *
+ * <p>
+ * Encoded blobs start with a 3 bytes marker and a version byte, followed by the
+ * length of the uncompressed payload and the Deflate compressed payload.
+ * </p>
+ * <p>
+ * Version 1 payloads:
+ * <ul>
+ * <li>positions: the points count, the origin (the min x, y, z of the cell points) and
+ *      the x, y, z scale of the source, followed by the x, y and z columns of the
+ *      coordinates quantized on origin and scale, delta encoded as zigzag varints.</li>
+ * <li>shorts: the values count and the stride, followed by every column
+ *      (i.e. the intensities and then the classifications) delta encoded as zigzag varints.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Blobs without the marker are the raw big-endian arrays of the first databases and
+ * are still decoded.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasCellCodec {
+
+    /**
+     * The current version of the blob format.
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte[] MARKER = {'J', 'L', 'C'};
+    private static final int HEADER_SIZE = MARKER.length + 1 + 4;
+
+    /**
+     * Encode the positions of the points of a cell.
+     *
+     * @param xyz the interleaved coordinates [x1, y1, z1, x2, y2, z2, ...].
+     * @param count the number of points.
+     * @param scale the x, y, z scale of the source data (ex. the las header scale).
+     * @return the encoded blob.
+     */
+    public static byte[] encodePositions( double[] xyz, int count, double[] scale ) {
+        double[] origin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        for( int i = 0; i < count; i++ ) {
+            for( int d = 0; d < 3; d++ ) {
+                origin[d] = Math.min(origin[d], xyz[i * 3 + d]);
+            }
+        }
+        if (count == 0) {
+            origin = new double[3];
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 6 * 8 + 3 * count * 10);
+        buffer.putInt(count);
+        for( int d = 0; d < 3; d++ ) {
+            buffer.putDouble(origin[d]);
+        }
+        for( int d = 0; d < 3; d++ ) {
+            buffer.putDouble(scale[d]);
+        }
+        for( int d = 0; d < 3; d++ ) {
+            long previous = 0;
+            for( int i = 0; i < count; i++ ) {
+                long quantized = Math.round((xyz[i * 3 + d] - origin[d]) / scale[d]);
+                putVarLong(buffer, quantized - previous);
+                previous = quantized;
+            }
+        }
+        return wrap(buffer);
+    }
+
+    /**
+     * Decode the positions of the points of a cell.
+     *
+     * @param blob the position blob, either encoded or raw doubles.
+     * @param count the number of points.
+     * @return the interleaved coordinates [x1, y1, z1, x2, y2, z2, ...].
+     * @throws IOException
+     */
+    public static double[] decodePositions( byte[] blob, int count ) throws IOException {
+        double[] xyz = new double[count * 3];
+        if (!isEncoded(blob)) {
+            ByteBuffer buffer = ByteBuffer.wrap(blob);
+            for( int i = 0; i < xyz.length; i++ ) {
+                xyz[i] = buffer.getDouble();
+            }
+            return xyz;
+        }
+
+        ByteBuffer buffer = unwrap(blob);
+        int storedCount = buffer.getInt();
+        checkCount(storedCount, count);
+        double[] origin = new double[3];
+        double[] scale = new double[3];
+        for( int d = 0; d < 3; d++ ) {
+            origin[d] = buffer.getDouble();
+        }
+        for( int d = 0; d < 3; d++ ) {
+            scale[d] = buffer.getDouble();
+        }
+        for( int d = 0; d < 3; d++ ) {
+            long quantized = 0;
+            for( int i = 0; i < count; i++ ) {
+                quantized += getVarLong(buffer);
+                xyz[i * 3 + d] = origin[d] + quantized * scale[d];
+            }
+        }
+        return xyz;
+    }
+
+    /**
+     * Encode an interleaved array of shorts (ex. intensity and classification).
+     *
+     * @param values the interleaved values.
+     * @param stride the number of values per point.
+     * @return the encoded blob.
+     */
+    public static byte[] encodeShorts( short[] values, int stride ) {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + values.length * 3);
+        buffer.putInt(values.length);
+        buffer.putInt(stride);
+        for( int s = 0; s < stride; s++ ) {
+            int previous = 0;
+            for( int i = s; i < values.length; i += stride ) {
+                putVarLong(buffer, values[i] - previous);
+                previous = values[i];
+            }
+        }
+        return wrap(buffer);
+    }
+
+    /**
+     * Decode an interleaved array of shorts.
+     *
+     * @param blob the blob, either encoded or raw shorts.
+     * @param count the number of points.
+     * @param stride the number of values per point.
+     * @return the interleaved values.
+     * @throws IOException
+     */
+    public static short[] decodeShorts( byte[] blob, int count, int stride ) throws IOException {
+        short[] values = new short[count * stride];
+        if (!isEncoded(blob)) {
+            ByteBuffer buffer = ByteBuffer.wrap(blob);
+            // old blobs may have been written without data (ex. colors)
+            int available = Math.min(values.length, blob.length / 2);
+            for( int i = 0; i < available; i++ ) {
+                values[i] = buffer.getShort();
+            }
+            return values;
+        }
+
+        ByteBuffer buffer = unwrap(blob);
+        int storedLength = buffer.getInt();
+        checkCount(storedLength, values.length);
+        int storedStride = buffer.getInt();
+        checkCount(storedStride, stride);
+        for( int s = 0; s < stride; s++ ) {
+            int value = 0;
+            for( int i = s; i < values.length; i += stride ) {
+                value += (int) getVarLong(buffer);
+                values[i] = (short) value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Checks if a blob has been written by this codec.
+     *
+     * @param blob the blob to check.
+     * @return <code>true</code> if the blob is encoded, <code>false</code> if it is a raw array.
+     */
+    public static boolean isEncoded( byte[] blob ) {
+        if (blob == null || blob.length < HEADER_SIZE) {
+            return false;
+        }
+        for( int i = 0; i < MARKER.length; i++ ) {
+            if (blob[i] != MARKER[i]) {
+                return false;
+            }
+        }
+        return blob[MARKER.length] > 0 && blob[MARKER.length] <= VERSION;
+    }
+
+    private static byte[] wrap( ByteBuffer payloadBuffer ) {
+        int payloadLength = payloadBuffer.position();
+        byte[] compressed = CompressionUtilities.deflate(payloadBuffer.array(), payloadLength);
+        ByteBuffer blob = ByteBuffer.allocate(HEADER_SIZE + compressed.length);
+        blob.put(MARKER);
+        blob.put(VERSION);
+        blob.putInt(payloadLength);
+        blob.put(compressed);
+        return blob.array();
+    }
+
+    private static ByteBuffer unwrap( byte[] blob ) throws IOException {
+        int payloadLength = ByteBuffer.wrap(blob, MARKER.length + 1, 4).getInt();
+        byte[] payload = CompressionUtilities.inflate(blob, HEADER_SIZE, payloadLength);
+        return ByteBuffer.wrap(payload);
+    }
+
+    private static void checkCount( int stored, int expected ) throws IOException {
+        if (stored != expected) {
+            throw new IOException("The blob contains " + stored + " values while " + expected + " were expected.");
+        }
+    }
+
+    private static void putVarLong( ByteBuffer buffer, long value ) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while( (zigzag & ~0x7FL) != 0 ) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    private static long getVarLong( ByteBuffer buffer ) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while( (b & 0x80) != 0 );
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -17,7 +17,7 @@
  */
 package org.jgrasstools.gears.io.las.spatialite;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -397,42 +397,93 @@ public class LasCellsTable {
         }
     }
 
-    public static double[][] getCellPositions( LasCell cell ) {
+    /**
+     * Get the positions of the points of a cell.
+     * 
+     * @param cell the cell.
+     * @return the positions as <code>[point][x, y, z]</code>.
+     * @throws IOException
+     */
+    public static double[][] getCellPositions( LasCell cell ) throws IOException {
         int points = cell.pointsCount;
+        double[] xyz = getCellPositionsArray(cell);
         double[][] xyzPoints = new double[points][3];
-        ByteBuffer buffer = ByteBuffer.wrap(cell.xyzs);
-
         for( int i = 0; i < points; i++ ) {
-            xyzPoints[i][0] = buffer.getDouble();
-            xyzPoints[i][1] = buffer.getDouble();
-            xyzPoints[i][2] = buffer.getDouble();
+            xyzPoints[i][0] = xyz[i * 3];
+            xyzPoints[i][1] = xyz[i * 3 + 1];
+            xyzPoints[i][2] = xyz[i * 3 + 2];
         }
         return xyzPoints;
     }
 
-    public static short[][] getCellIntensityClass( LasCell cell ) {
+    /**
+     * Get the positions of the points of a cell in a flat array.
+     * 
+     * @param cell the cell.
+     * @return the positions as <code>[x1, y1, z1, x2, y2, z2, ...]</code>.
+     * @throws IOException
+     */
+    public static double[] getCellPositionsArray( LasCell cell ) throws IOException {
+        return LasCellCodec.decodePositions(cell.xyzs, cell.pointsCount);
+    }
+
+    /**
+     * Get the intensity and classification of the points of a cell.
+     * 
+     * @param cell the cell.
+     * @return the values as <code>[point][intensity, classification]</code>.
+     * @throws IOException
+     */
+    public static short[][] getCellIntensityClass( LasCell cell ) throws IOException {
         int points = cell.pointsCount;
+        short[] values = getCellIntensityClassArray(cell);
         short[][] intensClassPoints = new short[points][2];
-        ByteBuffer buffer = ByteBuffer.wrap(cell.intensitiesClassifications);
-
         for( int i = 0; i < points; i++ ) {
-            intensClassPoints[i][0] = buffer.getShort();
-            intensClassPoints[i][1] = buffer.getShort();
+            intensClassPoints[i][0] = values[i * 2];
+            intensClassPoints[i][1] = values[i * 2 + 1];
         }
         return intensClassPoints;
     }
 
-    public static short[][] getCellColors( LasCell cell ) {
+    /**
+     * Get the intensity and classification of the points of a cell in a flat array.
+     * 
+     * @param cell the cell.
+     * @return the values as <code>[intensity1, classification1, intensity2, ...]</code>.
+     * @throws IOException
+     */
+    public static short[] getCellIntensityClassArray( LasCell cell ) throws IOException {
+        return LasCellCodec.decodeShorts(cell.intensitiesClassifications, cell.pointsCount, 2);
+    }
+
+    /**
+     * Get the colors of the points of a cell.
+     * 
+     * @param cell the cell.
+     * @return the values as <code>[point][r, g, b]</code>.
+     * @throws IOException
+     */
+    public static short[][] getCellColors( LasCell cell ) throws IOException {
         int points = cell.pointsCount;
+        short[] values = getCellColorsArray(cell);
         short[][] colorPoints = new short[points][3];
-        ByteBuffer buffer = ByteBuffer.wrap(cell.colors);
-        
         for( int i = 0; i < points; i++ ) {
-            colorPoints[i][0] = buffer.getShort();
-            colorPoints[i][1] = buffer.getShort();
-            colorPoints[i][2] = buffer.getShort();
+            colorPoints[i][0] = values[i * 3];
+            colorPoints[i][1] = values[i * 3 + 1];
+            colorPoints[i][2] = values[i * 3 + 2];
         }
         return colorPoints;
     }
 
+    /**
+     * Get the colors of the points of a cell in a flat array.
+     * 
+     * @param cell the cell.
+     * @return the values as <code>[r1, g1, b1, r2, g2, b2, ...]</code>.
+     * @throws IOException
+     */
+    public static short[] getCellColorsArray( LasCell cell ) throws IOException {
+        return LasCellCodec.decodeShorts(cell.colors, cell.pointsCount, 3);
+    }
+
 }
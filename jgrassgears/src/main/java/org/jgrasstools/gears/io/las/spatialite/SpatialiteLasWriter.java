@@ -28,10 +28,16 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import oms3.annotations.Author;
@@ -46,21 +52,17 @@ import oms3.annotations.Name;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.GridFormatFinder;
 import org.geotools.gce.imagemosaic.ImageMosaicReader;
-import org.geotools.geometry.DirectPosition2D;
-import org.geotools.geometry.Envelope2D;
-import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.CRS;
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
@@ -72,7 +74,6 @@ import org.jgrasstools.gears.utils.files.FileUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
 import org.opengis.coverage.PointOutsideCoverageException;
-import org.opengis.geometry.DirectPosition;
 import org.opengis.parameter.GeneralParameterValue;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -121,6 +122,14 @@ public class SpatialiteLasWriter extends JGTModel {
     @In
     public int pFactor = 5;
 
+    @Description("The number of threads to use to read the las files and build the cells.")
+    @In
+    public int pThreads = 1;
+
+    @Description("The number of cells or levels to write per transaction.")
+    @In
+    public int pBatchSize = 10000;
+
     private CoordinateReferenceSystem crs;
 
     private int srid = -9999;
@@ -255,288 +264,360 @@ public class SpatialiteLasWriter extends JGTModel {
     }
 
     @SuppressWarnings("unchecked")
-    private void processFile( final SpatialiteDb spatialiteDb, File file, long sourceID, GridCoverage2D ortoGC )
-            throws Exception {
+    private void processFile( final SpatialiteDb spatialiteDb, final File file, final long sourceID,
+            final GridCoverage2D ortoGC ) throws Exception {
         String name = file.getName();
         pm.message("Processing file: " + name);
 
+        ILasHeader header;
         try (ALasReader reader = ALasReader.getReader(file, crs)) {
             reader.open();
-            ILasHeader header = reader.getHeader();
-            long recordsCount = header.getRecordsCount();
-            if (recordsCount == 0) {
-                pm.errorMessage("No points found in: " + name);
-                return;
-            }
-            ReferencedEnvelope3D envelope = header.getDataEnvelope();
-            ReferencedEnvelope env2d = new ReferencedEnvelope(envelope);
-            Envelope2D e = new Envelope2D(env2d);
-
-            double north = e.getMaxY();
-            double south = e.getMinY();
-            double east = e.getMaxX();
-            double west = e.getMinX();
-
-            double[] xRanges = NumericsUtilities.range2Bins(west, east, pCellsize, true);
-            double[] yRanges = NumericsUtilities.range2Bins(south, north, pCellsize, true);
-            int cols = xRanges.length - 1;
-            int rows = yRanges.length - 1;
-            int tilesCount = cols * rows;
-
-            pm.message("Splitting " + name + " into " + tilesCount + " tiles.");
-            GridGeometry2D gridGeometry = CoverageUtilities.gridGeometryFromRegionValues(north, south, east, west, cols, rows,
-                    reader.getHeader().getCrs());
-
-            List<LasRecord>[][] dotOnMatrixXY = new ArrayList[cols][rows];
-            LasCell[][] lasCellsOnMatrixXY = new LasCell[cols][rows];
-            pm.beginTask("Sorting points for " + name, (int) recordsCount);
-            while( reader.hasNextPoint() ) {
-                LasRecord dot = reader.getNextPoint();
-                DirectPosition wPoint = new DirectPosition2D(dot.x, dot.y);
-                GridCoordinates2D gridCoord = gridGeometry.worldToGrid(wPoint);
-                int x = gridCoord.x;
-                if (x < 0)
-                    x = 0;
-                if (x > cols - 1)
-                    x = cols - 1;
-                int y = gridCoord.y;
-                if (y < 0)
-                    y = 0;
-                if (y > rows - 1)
-                    y = rows - 1;
-                if (dotOnMatrixXY[x][y] == null) {
-                    dotOnMatrixXY[x][y] = new ArrayList<>();
-                }
-                dotOnMatrixXY[x][y].add(dot);
-                pm.worked(1);
+            header = reader.getHeader();
+        }
+        final long recordsCount = header.getRecordsCount();
+        if (recordsCount == 0) {
+            pm.errorMessage("No points found in: " + name);
+            return;
+        }
+        ReferencedEnvelope3D envelope = header.getDataEnvelope();
+        final double[] xyzScale = header.getXYZScale();
+
+        final double north = envelope.getMaxY();
+        final double south = envelope.getMinY();
+        final double east = envelope.getMaxX();
+        final double west = envelope.getMinX();
+
+        double[] xRanges = NumericsUtilities.range2Bins(west, east, pCellsize, true);
+        double[] yRanges = NumericsUtilities.range2Bins(south, north, pCellsize, true);
+        final int cols = xRanges.length - 1;
+        final int rows = yRanges.length - 1;
+        final double xRes = (east - west) / cols;
+        final double yRes = (north - south) / rows;
+        int tilesCount = cols * rows;
+        final int threads = Math.max(1, pThreads);
+
+        pm.message("Splitting " + name + " into " + tilesCount + " tiles.");
+
+        /*
+         * 1) every thread reads a contiguous range of the file and bins its points
+         */
+        final List<LasRecord>[][] binsPerThread = new List[threads][];
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        try {
+            pm.beginTask("Sorting points for " + name, threads);
+            List<Future< ? >> futures = new ArrayList<>();
+            for( int t = 0; t < threads; t++ ) {
+                final int thread = t;
+                final long from = recordsCount * t / threads;
+                final long to = recordsCount * (t + 1) / threads;
+                futures.add(fixedThreadPool.submit(new Callable<Void>(){
+                    public Void call() throws Exception {
+                        List<LasRecord>[] bins = new List[cols * rows];
+                        try (ALasReader reader = ALasReader.getReader(file, crs)) {
+                            reader.open();
+                            for( long p = from; p < to; p++ ) {
+                                LasRecord dot = reader.getPointAt(p);
+                                int x = (int) Math.floor((dot.x - west) / xRes);
+                                if (x < 0)
+                                    x = 0;
+                                if (x > cols - 1)
+                                    x = cols - 1;
+                                int y = (int) Math.floor((north - dot.y) / yRes);
+                                if (y < 0)
+                                    y = 0;
+                                if (y > rows - 1)
+                                    y = rows - 1;
+                                int index = y * cols + x;
+                                if (bins[index] == null) {
+                                    bins[index] = new ArrayList<>();
+                                }
+                                bins[index].add(dot);
+                            }
+                        }
+                        binsPerThread[thread] = bins;
+                        synchronized (pm) {
+                            pm.worked(1);
+                        }
+                        return null;
+                    }
+                }));
             }
+            waitFor(futures);
             pm.done();
 
-            ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-            List<LasCell> cellsList = new ArrayList<>();
-            final Point2D.Double pos = new Point2D.Double();
-            final int[] ortoValues = new int[3];
-            pm.beginTask("Write las data...", cols * rows);
-            for( int c = 0; c < cols; c++ ) {
-                for( int r = 0; r < rows; r++ ) {
-                    List<LasRecord> dotsList = dotOnMatrixXY[c][r];
-                    if (dotsList == null || dotsList.size() == 0) {
-                        continue;
-                    }
-                    int pointCount = dotsList.size();
-                    Coordinate coord = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
-
-                    Envelope env = new Envelope(coord);
-                    env.expandBy(pCellsize / 2.0, pCellsize / 2.0);
-                    Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(env);
-
-                    double avgElev = 0.0;
-                    double minElev = Double.POSITIVE_INFINITY;
-                    double maxElev = Double.NEGATIVE_INFINITY;
-                    byte[] position = new byte[8 * 3 * pointCount];
-                    ByteBuffer positionBuffer = ByteBuffer.wrap(position);
-
-                    double avgIntensity = 0.0;
-
-                    short minIntensity = 30000;
-                    short maxIntensity = -1;
-                    byte[] intensClass = new byte[2 * 2 * pointCount];
-                    ByteBuffer intensClassBuffer = ByteBuffer.wrap(intensClass);
-                    byte[] returns = new byte[2 * 2 * pointCount];
-                    ByteBuffer returnsBuffer = ByteBuffer.wrap(returns);
-                    double minGpsTime = Double.POSITIVE_INFINITY;
-                    double maxGpsTime = Double.NEGATIVE_INFINITY;
-                    byte[] gpsTimes = new byte[8 * pointCount];
-                    ByteBuffer gpsTimesBuffer = ByteBuffer.wrap(gpsTimes);
-                    byte[] colors = new byte[2 * 3 * pointCount];
-                    ByteBuffer colorsBuffer = ByteBuffer.wrap(colors);
-
-                    int count = 0;
-
-                    for( LasRecord dot : dotsList ) {
-                        avgElev += dot.z;
-                        minElev = min(dot.z, minElev);
-                        maxElev = max(dot.z, maxElev);
-                        positionBuffer.putDouble(dot.x);
-                        positionBuffer.putDouble(dot.y);
-                        positionBuffer.putDouble(dot.z);
-
-                        avgIntensity += dot.intensity;
-                        minIntensity = (short) min(dot.intensity, minIntensity);
-                        maxIntensity = (short) max(dot.intensity, maxIntensity);
-                        intensClassBuffer.putShort(dot.intensity);
-                        intensClassBuffer.putShort(dot.classification);
-
-                        returnsBuffer.putShort(dot.returnNumber);
-                        returnsBuffer.putShort(dot.numberOfReturns);
-
-                        minGpsTime = min(dot.gpsTime, minGpsTime);
-                        maxGpsTime = max(dot.gpsTime, maxGpsTime);
-
-                        gpsTimesBuffer.putDouble(dot.gpsTime);
-
-                        if (ortoGC != null) {
-                            pos.setLocation(dot.x, dot.y);
-                            try {
-                                ortoGC.evaluate(pos, ortoValues);
-                                colorsBuffer.putShort((short) ortoValues[0]);
-                                colorsBuffer.putShort((short) ortoValues[1]);
-                                colorsBuffer.putShort((short) ortoValues[2]);
-                            } catch (PointOutsideCoverageException poce) {
-                                // insert white
-                                colorsBuffer.putShort((short) 255);
-                                colorsBuffer.putShort((short) 255);
-                                colorsBuffer.putShort((short) 255);
-                            }
-
-                        } else if (dot.color != null) {
-                            colorsBuffer.putShort(dot.color[0]);
-                            colorsBuffer.putShort(dot.color[1]);
-                            colorsBuffer.putShort(dot.color[2]);
+            /*
+             * 2) cells are built in parallel and handed to a single writer
+             */
+            final BlockingQueue<List<LasCell>> cellsQueue = new ArrayBlockingQueue<>(2 * threads);
+            ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+            final Future<Void> writerFuture = writerExecutor.submit(new Callable<Void>(){
+                public Void call() throws Exception {
+                    while( true ) {
+                        List<LasCell> cells = cellsQueue.take();
+                        if (cells.isEmpty()) {
+                            return null;
+                        }
+                        LasCellsTable.insertLasCells(spatialiteDb, srid, cells);
+                        synchronized (pm) {
+                            pm.worked(cells.size());
                         }
-
-                        count++;
                     }
-                    avgElev /= count;
-                    avgIntensity /= count;
-
-                    final LasCell lasCell = new LasCell();
-                    lasCell.polygon = polygon;
-                    lasCell.sourceId = sourceID;
-
-                    lasCell.pointsCount = pointCount;
-                    lasCell.avgElev = avgElev;
-                    lasCell.minElev = minElev;
-                    lasCell.maxElev = maxElev;
-                    lasCell.xyzs = position;
-                    lasCell.avgIntensity = (short) Math.round(avgIntensity);
-                    lasCell.minIntensity = minIntensity;
-                    lasCell.maxIntensity = maxIntensity;
-                    lasCell.intensitiesClassifications = intensClass;
-                    lasCell.returns = returns;
-                    lasCell.minGpsTime = minGpsTime;
-                    lasCell.maxGpsTime = maxGpsTime;
-                    lasCell.gpsTimes = gpsTimes;
-                    lasCell.colors = colors;
-
-                    cellsList.add(lasCell);
-                    lasCellsOnMatrixXY[c][r] = lasCell;
-
-                    if (cellsList.size() > 100000) {
-                        // add data to db in a thread to fasten up things
-                        final List<LasCell> processCells = cellsList;
-                        singleThreadExecutor.execute(new Runnable(){
-                            public void run() {
-                                try {
-                                    LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
-                                    pm.worked(processCells.size());
-                                } catch (SQLException e) {
-                                    e.printStackTrace();
+                }
+            });
+            writerExecutor.shutdown();
+
+            final CellsAggregate baseAggregate = new CellsAggregate(cols, rows);
+            pm.beginTask("Write las data...", cols * rows);
+            try {
+                futures.clear();
+                int colsPerTask = Math.max(1, cols / (threads * 4));
+                for( int c = 0; c < cols; c += colsPerTask ) {
+                    final int fromCol = c;
+                    final int toCol = Math.min(cols, c + colsPerTask);
+                    futures.add(fixedThreadPool.submit(new Callable<Void>(){
+                        public Void call() throws Exception {
+                            final Point2D.Double pos = new Point2D.Double();
+                            final int[] ortoValues = new int[3];
+                            List<LasCell> cellsList = new ArrayList<>();
+                            for( int c = fromCol; c < toCol; c++ ) {
+                                for( int r = 0; r < rows; r++ ) {
+                                    int index = r * cols + c;
+                                    int pointCount = 0;
+                                    for( List<LasRecord>[] bins : binsPerThread ) {
+                                        if (bins[index] != null) {
+                                            pointCount += bins[index].size();
+                                        }
+                                    }
+                                    if (pointCount == 0) {
+                                        continue;
+                                    }
+                                    double centerX = west + (c + 0.5) * xRes;
+                                    double centerY = north - (r + 0.5) * yRes;
+                                    LasCell lasCell = createCell(binsPerThread, index, pointCount, centerX, centerY, sourceID,
+                                            xyzScale, ortoGC, pos, ortoValues);
+                                    baseAggregate.set(index, centerX, centerY, lasCell.avgElev, lasCell.minElev,
+                                            lasCell.maxElev, lasCell.avgIntensity, lasCell.minIntensity, lasCell.maxIntensity);
+                                    for( List<LasRecord>[] bins : binsPerThread ) {
+                                        bins[index] = null;
+                                    }
+
+                                    cellsList.add(lasCell);
+                                    if (cellsList.size() >= pBatchSize) {
+                                        putCells(cellsQueue, cellsList, writerFuture);
+                                        cellsList = new ArrayList<>();
+                                    }
                                 }
                             }
-                        });
-                        cellsList = new ArrayList<>();
-                    }
-                }
-            }
-            if (cellsList.size() > 0) {
-                // add data to db in a thread to fasten up things
-                final List<LasCell> processCells = cellsList;
-                singleThreadExecutor.execute(new Runnable(){
-                    public void run() {
-                        try {
-                            LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
-                            pm.worked(processCells.size());
-                        } catch (SQLException e) {
-                            e.printStackTrace();
+                            if (cellsList.size() > 0) {
+                                putCells(cellsQueue, cellsList, writerFuture);
+                            }
+                            return null;
                         }
-                    }
-                });
-                cellsList = new ArrayList<>();
+                    }));
+                }
+                waitFor(futures);
+            } catch (Exception e) {
+                writerFuture.cancel(true);
+                throw e;
             }
-
+            // the empty list tells the writer to stop
+            putCells(cellsQueue, new ArrayList<LasCell>(), writerFuture);
             try {
-                singleThreadExecutor.shutdown();
-                singleThreadExecutor.awaitTermination(30, TimeUnit.DAYS);
-                singleThreadExecutor.shutdownNow();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
+                writerFuture.get();
+            } catch (ExecutionException e) {
+                throw getCause(e);
             }
             pm.done();
+        } finally {
+            fixedThreadPool.shutdownNow();
+        }
 
-            if (pLevels > 0) {
-                for( int level = 1; level <= pLevels; level++ ) {
-                    LasLevelsTable.createTable(spatialiteDb, srid, level);
-                    if (level == 1) {
-                        insertFirstLevel(spatialiteDb, sourceID, north, south, east, west, level);
-                    } else {
-                        insertLevel(spatialiteDb, sourceID, north, south, east, west, level);
+        /*
+         * 3) each level is aggregated in memory from the previous
+         */
+        CellsAggregate previousAggregate = baseAggregate;
+        for( int level = 1; level <= pLevels; level++ ) {
+            LasLevelsTable.createTable(spatialiteDb, srid, level);
+            previousAggregate = insertLevel(spatialiteDb, sourceID, north, south, east, west, level, previousAggregate);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private LasCell createCell( List<LasRecord>[][] binsPerThread, int index, int pointCount, double centerX, double centerY,
+            long sourceID, double[] xyzScale, GridCoverage2D ortoGC, Point2D.Double pos, int[] ortoValues ) throws Exception {
+        Envelope env = new Envelope(new Coordinate(centerX, centerY));
+        env.expandBy(pCellsize / 2.0, pCellsize / 2.0);
+        Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(env);
+
+        double avgElev = 0.0;
+        double minElev = Double.POSITIVE_INFINITY;
+        double maxElev = Double.NEGATIVE_INFINITY;
+        double[] position = new double[3 * pointCount];
+
+        double avgIntensity = 0.0;
+        short minIntensity = 30000;
+        short maxIntensity = -1;
+        short[] intensClass = new short[2 * pointCount];
+        byte[] returns = new byte[2 * 2 * pointCount];
+        ByteBuffer returnsBuffer = ByteBuffer.wrap(returns);
+        double minGpsTime = Double.POSITIVE_INFINITY;
+        double maxGpsTime = Double.NEGATIVE_INFINITY;
+        byte[] gpsTimes = new byte[8 * pointCount];
+        ByteBuffer gpsTimesBuffer = ByteBuffer.wrap(gpsTimes);
+        short[] colors = new short[3 * pointCount];
+
+        int count = 0;
+        for( List<LasRecord>[] bins : binsPerThread ) {
+            List<LasRecord> dotsList = bins[index];
+            if (dotsList == null) {
+                continue;
+            }
+            for( LasRecord dot : dotsList ) {
+                avgElev += dot.z;
+                minElev = min(dot.z, minElev);
+                maxElev = max(dot.z, maxElev);
+                position[count * 3] = dot.x;
+                position[count * 3 + 1] = dot.y;
+                position[count * 3 + 2] = dot.z;
+
+                avgIntensity += dot.intensity;
+                minIntensity = (short) min(dot.intensity, minIntensity);
+                maxIntensity = (short) max(dot.intensity, maxIntensity);
+                intensClass[count * 2] = dot.intensity;
+                intensClass[count * 2 + 1] = dot.classification;
+
+                returnsBuffer.putShort(dot.returnNumber);
+                returnsBuffer.putShort(dot.numberOfReturns);
+
+                minGpsTime = min(dot.gpsTime, minGpsTime);
+                maxGpsTime = max(dot.gpsTime, maxGpsTime);
+
+                gpsTimesBuffer.putDouble(dot.gpsTime);
+
+                if (ortoGC != null) {
+                    pos.setLocation(dot.x, dot.y);
+                    try {
+                        // coverage evaluation is not guaranteed to be thread safe
+                        synchronized (ortoGC) {
+                            ortoGC.evaluate(pos, ortoValues);
+                        }
+                        colors[count * 3] = (short) ortoValues[0];
+                        colors[count * 3 + 1] = (short) ortoValues[1];
+                        colors[count * 3 + 2] = (short) ortoValues[2];
+                    } catch (PointOutsideCoverageException poce) {
+                        // insert white
+                        colors[count * 3] = (short) 255;
+                        colors[count * 3 + 1] = (short) 255;
+                        colors[count * 3 + 2] = (short) 255;
                     }
+
+                } else if (dot.color != null) {
+                    colors[count * 3] = dot.color[0];
+                    colors[count * 3 + 1] = dot.color[1];
+                    colors[count * 3 + 2] = dot.color[2];
                 }
-            }
 
+                count++;
+            }
         }
-
+        avgElev /= count;
+        avgIntensity /= count;
+
+        LasCell lasCell = new LasCell();
+        lasCell.polygon = polygon;
+        lasCell.sourceId = sourceID;
+
+        lasCell.pointsCount = pointCount;
+        lasCell.avgElev = avgElev;
+        lasCell.minElev = minElev;
+        lasCell.maxElev = maxElev;
+        lasCell.xyzs = LasCellCodec.encodePositions(position, pointCount, xyzScale);
+        lasCell.avgIntensity = (short) Math.round(avgIntensity);
+        lasCell.minIntensity = minIntensity;
+        lasCell.maxIntensity = maxIntensity;
+        lasCell.intensitiesClassifications = LasCellCodec.encodeShorts(intensClass, 2);
+        lasCell.returns = returns;
+        lasCell.minGpsTime = minGpsTime;
+        lasCell.maxGpsTime = maxGpsTime;
+        lasCell.gpsTimes = gpsTimes;
+        lasCell.colors = LasCellCodec.encodeShorts(colors, 3);
+        return lasCell;
     }
 
-    private void insertFirstLevel( final SpatialiteDb spatialiteDb, long sourceID, double north, double south, double east,
-            double west, int level ) throws Exception, SQLException {
-        List<LasLevel> levelsList = new ArrayList<>();
+    /**
+     * Create and insert a level, aggregating the cells of the previous one by their center.
+     * 
+     * @return the aggregate of the inserted level.
+     */
+    private CellsAggregate insertLevel( final SpatialiteDb spatialiteDb, long sourceID, double north, double south,
+            double east, double west, int level, CellsAggregate previous ) throws Exception, SQLException {
         double levelCellsize = pCellsize * level * pFactor;
         double[] xRangesLevel = NumericsUtilities.range2Bins(west, east, levelCellsize, false);
         double[] yRangesLevel = NumericsUtilities.range2Bins(south, north, levelCellsize, false);
-        int size = (xRangesLevel.length - 1) * (yRangesLevel.length - 1);
-        pm.beginTask("Creating level " + level + " with " + size + " tiles...", xRangesLevel.length - 1);
-        for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
+        int levelCols = xRangesLevel.length - 1;
+        int levelRows = yRangesLevel.length - 1;
+        int size = levelCols * levelRows;
+        pm.beginTask("Creating level " + level + " with " + size + " tiles...", levelCols);
+
+        double[] sumAvgElev = new double[size];
+        double[] minElev = new double[size];
+        double[] maxElev = new double[size];
+        double[] sumAvgIntensity = new double[size];
+        double[] minIntensity = new double[size];
+        double[] maxIntensity = new double[size];
+        int[] count = new int[size];
+        Arrays.fill(minElev, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxElev, Double.NEGATIVE_INFINITY);
+        Arrays.fill(minIntensity, 30000);
+        Arrays.fill(maxIntensity, -1);
+        for( int i = 0; i < previous.count.length; i++ ) {
+            if (previous.count[i] == 0) {
+                continue;
+            }
+            int x = (int) Math.floor((previous.centerX[i] - west) / levelCellsize);
+            int y = (int) Math.floor((previous.centerY[i] - south) / levelCellsize);
+            x = max(0, min(levelCols - 1, x));
+            y = max(0, min(levelRows - 1, y));
+            int index = x * levelRows + y;
+            sumAvgElev[index] += previous.avgElev(i);
+            minElev[index] = min(minElev[index], previous.minElev[i]);
+            maxElev[index] = max(maxElev[index], previous.maxElev[i]);
+            sumAvgIntensity[index] += previous.avgIntensity(i);
+            minIntensity[index] = min(minIntensity[index], previous.minIntensity[i]);
+            maxIntensity[index] = max(maxIntensity[index], previous.maxIntensity[i]);
+            count[index]++;
+        }
+
+        CellsAggregate aggregate = new CellsAggregate(levelCols, levelRows);
+        List<LasLevel> levelsList = new ArrayList<>();
+        for( int x = 0; x < levelCols; x++ ) {
             double xmin = xRangesLevel[x];
             double xmax = xRangesLevel[x + 1];
-            for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
+            for( int y = 0; y < levelRows; y++ ) {
+                int index = x * levelRows + y;
+                if (count[index] == 0) {
+                    continue;
+                }
                 double ymin = yRangesLevel[y];
                 double ymax = yRangesLevel[y + 1];
                 Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
                 Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
 
-                List<LasCell> lasCells = LasCellsTable.getLasCells(spatialiteDb, polygon, true, true, false, false, false);
-
-                double avgElev = 0.0;
-                double minElev = Double.POSITIVE_INFINITY;
-                double maxElev = Double.NEGATIVE_INFINITY;
-                short avgIntensity = 0;
-                short minIntensity = 30000;
-                short maxIntensity = -1;
-
-                int count = 0;
-                for( LasCell cell : lasCells ) {
-                    avgElev += cell.avgElev;
-                    minElev = min(cell.minElev, minElev);
-                    maxElev = max(cell.maxElev, maxElev);
-
-                    avgIntensity += cell.avgIntensity;
-                    minIntensity = (short) min(cell.minIntensity, minIntensity);
-                    maxIntensity = (short) max(cell.maxIntensity, maxIntensity);
-
-                    count++;
-                }
-                if (count == 0) {
-                    continue;
-                }
-                avgElev /= count;
-                avgIntensity /= count;
-
                 LasLevel lasLevel = new LasLevel();
                 lasLevel.polygon = polygon;
                 lasLevel.level = level;
-                lasLevel.avgElev = avgElev;
-                lasLevel.minElev = minElev;
-                lasLevel.maxElev = maxElev;
-                lasLevel.avgIntensity = avgIntensity;
-                lasLevel.minIntensity = minIntensity;
-                lasLevel.maxIntensity = maxIntensity;
+                lasLevel.avgElev = sumAvgElev[index] / count[index];
+                lasLevel.minElev = minElev[index];
+                lasLevel.maxElev = maxElev[index];
+                lasLevel.avgIntensity = (short) (sumAvgIntensity[index] / count[index]);
+                lasLevel.minIntensity = (short) minIntensity[index];
+                lasLevel.maxIntensity = (short) maxIntensity[index];
                 lasLevel.sourceId = sourceID;
+                aggregate.set(index, levelEnv.centre().x, levelEnv.centre().y, lasLevel.avgElev, lasLevel.minElev,
+                        lasLevel.maxElev, lasLevel.avgIntensity, lasLevel.minIntensity, lasLevel.maxIntensity);
 
                 levelsList.add(lasLevel);
-
-                if (levelsList.size() > 10000) {
+                if (levelsList.size() >= pBatchSize) {
                     LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
                     levelsList = new ArrayList<>();
                 }
@@ -547,77 +628,105 @@ public class SpatialiteLasWriter extends JGTModel {
             LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
         }
         pm.done();
+        return aggregate;
     }
 
-    private void insertLevel( final SpatialiteDb spatialiteDb, long sourceID, double north, double south, double east,
-            double west, int level ) throws Exception, SQLException {
-        int previousLevelNum = level - 1;
-        List<LasLevel> levelsList = new ArrayList<>();
-        double levelCellsize = pCellsize * level * pFactor;
-        double[] xRangesLevel = NumericsUtilities.range2Bins(west, east, levelCellsize, false);
-        double[] yRangesLevel = NumericsUtilities.range2Bins(south, north, levelCellsize, false);
-        int size = (xRangesLevel.length - 1) * (yRangesLevel.length - 1);
-        pm.beginTask("Creating level " + level + " with " + size + " tiles...", xRangesLevel.length - 1);
-        for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
-            double xmin = xRangesLevel[x];
-            double xmax = xRangesLevel[x + 1];
-            for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
-                double ymin = yRangesLevel[y];
-                double ymax = yRangesLevel[y + 1];
-                Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
-                Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
-
-                List<LasLevel> lasLevels = LasLevelsTable.getLasLevels(spatialiteDb, previousLevelNum, levelEnv);
-
-                double avgElev = 0.0;
-                double minElev = Double.POSITIVE_INFINITY;
-                double maxElev = Double.NEGATIVE_INFINITY;
-                short avgIntensity = 0;
-                short minIntensity = 30000;
-                short maxIntensity = -1;
+    /**
+     * Queue cells for the writer, giving up with the writer's error if it already stopped.
+     */
+    private void putCells( BlockingQueue<List<LasCell>> cellsQueue, List<LasCell> cells, Future<Void> writerFuture )
+            throws Exception {
+        while( !cellsQueue.offer(cells, 1, TimeUnit.SECONDS) ) {
+            if (writerFuture.isDone()) {
+                Exception writerError = getWriterError(writerFuture);
+                if (writerError != null) {
+                    throw writerError;
+                }
+                throw new ModelsRuntimeException("The cells writer stopped unexpectedly.", this);
+            }
+        }
+    }
 
-                int count = 0;
-                for( LasLevel lasLevel : lasLevels ) {
-                    avgElev += lasLevel.avgElev;
-                    minElev = min(lasLevel.minElev, minElev);
-                    maxElev = max(lasLevel.maxElev, maxElev);
+    /**
+     * @return the error the writer stopped with or <code>null</code> if it is still running or ended well.
+     */
+    private Exception getWriterError( Future<Void> writerFuture ) throws InterruptedException {
+        if (!writerFuture.isDone() || writerFuture.isCancelled()) {
+            return null;
+        }
+        try {
+            writerFuture.get();
+            return null;
+        } catch (ExecutionException e) {
+            return getCause(e);
+        }
+    }
 
-                    avgIntensity += lasLevel.avgIntensity;
-                    minIntensity = (short) min(lasLevel.minIntensity, minIntensity);
-                    maxIntensity = (short) max(lasLevel.maxIntensity, maxIntensity);
+    private void waitFor( List<Future< ? >> futures ) throws Exception {
+        try {
+            for( Future< ? > future : futures ) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw getCause(e);
+        }
+    }
 
-                    count++;
-                }
-                if (count == 0) {
-                    continue;
-                }
-                avgElev /= count;
-                avgIntensity /= count;
+    private Exception getCause( ExecutionException e ) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new ModelsRuntimeException(cause.getMessage(), this);
+    }
 
-                LasLevel lasLevel = new LasLevel();
-                lasLevel.polygon = polygon;
-                lasLevel.level = level;
-                lasLevel.avgElev = avgElev;
-                lasLevel.minElev = minElev;
-                lasLevel.maxElev = maxElev;
-                lasLevel.avgIntensity = avgIntensity;
-                lasLevel.minIntensity = minIntensity;
-                lasLevel.maxIntensity = maxIntensity;
-                lasLevel.sourceId = sourceID;
+    /**
+     * In memory summary of the cells of a level, used to build the next level.
+     */
+    private static class CellsAggregate {
+        final double[] centerX;
+        final double[] centerY;
+        final double[] sumAvgElev;
+        final double[] minElev;
+        final double[] maxElev;
+        final double[] sumAvgIntensity;
+        final double[] minIntensity;
+        final double[] maxIntensity;
+        final int[] count;
+
+        CellsAggregate( int cols, int rows ) {
+            int size = cols * rows;
+            centerX = new double[size];
+            centerY = new double[size];
+            sumAvgElev = new double[size];
+            minElev = new double[size];
+            maxElev = new double[size];
+            sumAvgIntensity = new double[size];
+            minIntensity = new double[size];
+            maxIntensity = new double[size];
+            count = new int[size];
+        }
 
-                levelsList.add(lasLevel);
+        void set( int index, double x, double y, double avgElev, double minElev, double maxElev, double avgIntensity,
+                double minIntensity, double maxIntensity ) {
+            centerX[index] = x;
+            centerY[index] = y;
+            sumAvgElev[index] = avgElev;
+            this.minElev[index] = minElev;
+            this.maxElev[index] = maxElev;
+            sumAvgIntensity[index] = avgIntensity;
+            this.minIntensity[index] = minIntensity;
+            this.maxIntensity[index] = maxIntensity;
+            count[index] = 1;
+        }
 
-                if (levelsList.size() > 10000) {
-                    LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
-                    levelsList = new ArrayList<>();
-                }
-            }
-            pm.worked(1);
+        double avgElev( int index ) {
+            return sumAvgElev[index] / count[index];
         }
-        if (levelsList.size() > 0) {
-            LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
+
+        double avgIntensity( int index ) {
+            return sumAvgIntensity[index] / count[index];
         }
-        pm.done();
     }
 
     @Finalize
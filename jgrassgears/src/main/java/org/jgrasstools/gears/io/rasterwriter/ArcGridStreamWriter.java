@@ -0,0 +1,124 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.rasterwriter;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.jgrasstools.gears.utils.RegionMap;
+
+/**
+ * Writer that streams a raster to an esri ascii grid tile by tile.
+ *
+ * <p>
+ * Differently from {@link OmsRasterWriter} the raster doesn't need to be kept in
+ * memory, only one row of tiles is buffered until it is complete. The tiles have
+ * to be written in row order.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ArcGridStreamWriter implements Closeable {
+
+    private static final String NOVALUE = "-9999";
+
+    private final BufferedWriter writer;
+    private final int cols;
+
+    private double[] band;
+    private int bandY = 0;
+    private int bandHeight = 0;
+    private int bandFilled = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param path the path of the file to create.
+     * @param region the region of the raster.
+     * @throws IOException
+     */
+    public ArcGridStreamWriter( String path, RegionMap region ) throws IOException {
+        cols = region.getCols();
+        writer = new BufferedWriter(new FileWriter(path));
+        writer.write("ncols " + cols + "\n");
+        writer.write("nrows " + region.getRows() + "\n");
+        writer.write("xllcorner " + region.getWest() + "\n");
+        writer.write("yllcorner " + region.getSouth() + "\n");
+        if (region.getXres() == region.getYres()) {
+            writer.write("cellsize " + region.getXres() + "\n");
+        } else {
+            writer.write("dx " + region.getXres() + "\n");
+            writer.write("dy " + region.getYres() + "\n");
+        }
+        writer.write("NODATA_value " + NOVALUE + "\n");
+    }
+
+    /**
+     * Writes a tile.
+     *
+     * @param x the first column of the tile.
+     * @param y the first row of the tile.
+     * @param width the tile width.
+     * @param height the tile height.
+     * @param values the values of the tile, row by row.
+     * @throws IOException
+     */
+    public synchronized void write( int x, int y, int width, int height, double[] values ) throws IOException {
+        if (band == null || y != bandY) {
+            if (y != bandY + bandHeight || bandFilled != 0) {
+                throw new IOException("Tiles have to be written in row order.");
+            }
+            bandY = y;
+            bandHeight = height;
+            band = new double[cols * height];
+        }
+        for( int r = 0; r < height; r++ ) {
+            System.arraycopy(values, r * width, band, r * cols + x, width);
+        }
+        bandFilled += width;
+        if (bandFilled == cols) {
+            flushBand();
+        }
+    }
+
+    private void flushBand() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for( int r = 0; r < bandHeight; r++ ) {
+            sb.setLength(0);
+            for( int c = 0; c < cols; c++ ) {
+                double value = band[r * cols + c];
+                if (c > 0)
+                    sb.append(' ');
+                sb.append(isNovalue(value) ? NOVALUE : String.valueOf(value));
+            }
+            sb.append('\n');
+            writer.write(sb.toString());
+        }
+        bandFilled = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
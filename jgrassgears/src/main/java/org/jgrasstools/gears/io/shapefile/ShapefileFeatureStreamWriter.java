@@ -0,0 +1,99 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.shapefile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Writer that appends features to a new shapefile one at a time.
+ * 
+ * <p>
+ * Differently from {@link OmsShapefileFeatureWriter} the features don't need to be
+ * collected in memory before writing, which makes it suitable for modules that
+ * produce features while processing big datasets.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ShapefileFeatureStreamWriter implements Closeable {
+
+    private final ShapefileDataStore dataStore;
+    private final FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
+    private int count = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param path the path of the shapefile to create, the extension is added if missing.
+     * @param type the type of the features to write.
+     * @throws IOException
+     */
+    public ShapefileFeatureStreamWriter( String path, SimpleFeatureType type ) throws IOException {
+        if (!path.toLowerCase().endsWith(".shp")) {
+            path = path + ".shp";
+        }
+        ShapefileDataStoreFactory factory = new ShapefileDataStoreFactory();
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put("url", new File(path).toURI().toURL());
+        dataStore = (ShapefileDataStore) factory.createNewDataStore(params);
+        dataStore.createSchema(type);
+        writer = dataStore.getFeatureWriterAppend(Transaction.AUTO_COMMIT);
+    }
+
+    /**
+     * Writes a feature.
+     * 
+     * @param feature the feature, with the attributes of the type of the writer.
+     * @throws IOException
+     */
+    public synchronized void write( SimpleFeature feature ) throws IOException {
+        SimpleFeature newFeature = writer.next();
+        newFeature.setAttributes(feature.getAttributes());
+        writer.write();
+        count++;
+    }
+
+    /**
+     * @return the number of features written.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+}
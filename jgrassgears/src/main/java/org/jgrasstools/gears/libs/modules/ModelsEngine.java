@@ -1033,6 +1033,55 @@ public class ModelsEngine {
         return y;
     }
 
+    /**
+     * Linear interpolation between two values, for data sorted by the x values.
+     *
+     * <p>
+     * This gives the same result as {@link #width_interpolate(double[][], double, int, int)},
+     * but finds the interpolation interval by binary search.
+     * </p>
+     *
+     * @param data
+     *            - matrix of values to interpolate, sorted by the x column
+     * @param x
+     *            - value to interpolate
+     * @param nx
+     *            - column of data in which you find the x values
+     * @param ny
+     *            - column of data in which you find the y values
+     * @return
+     */
+    public static double width_interpolate_sorted( double[][] data, double x, int nx, int ny ) {
+        int rows = data.length;
+        if (x > data[(rows - 1)][nx] || x < 0) {
+            throw new RuntimeException(MessageFormat.format(
+                    "Error in the interpolation algorithm: entering with x = {0} (min = 0.0 max = {1}", x, data[(rows - 1)][nx]));
+        }
+        if (x < data[0][nx]) {
+            return (data[0][ny] / data[0][nx]) * x;
+        }
+
+        // find the first row with x value >= x
+        int low = 1;
+        int high = rows - 1;
+        while( low < high ) {
+            int mid = (low + high) >>> 1;
+            if (data[mid][nx] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low >= rows || !(data[low - 1][nx] < x)) {
+            return 0;
+        }
+        double xuno = data[low - 1][nx];
+        double xdue = data[low][nx];
+        double yuno = data[low - 1][ny];
+        double ydue = data[low][ny];
+        return ((ydue - yuno) / (xdue - xuno)) * (x - xuno) + yuno;
+    }
+
     /**
      * Interpolates the width function in a given tp.
      *
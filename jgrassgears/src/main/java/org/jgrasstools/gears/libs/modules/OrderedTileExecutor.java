@@ -0,0 +1,138 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Processes tiles in parallel and consumes their results in tile order.
+ *
+ * <p>
+ * The tiles are processed by a fixed pool of threads, at most two tiles per thread
+ * ahead of the one being consumed, so that the results waiting in memory stay bounded.
+ * The results are consumed by the calling thread. With a single thread no pool is
+ * created and every tile is processed and consumed in turn.
+ * </p>
+ *
+ * @param <T> the result of a tile.
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public abstract class OrderedTileExecutor<T> {
+
+    private final int threads;
+    private final String task;
+    private final String errorMessage;
+    private final Object owner;
+    private final IJGTProgressMonitor pm;
+
+    /**
+     * Constructor.
+     *
+     * @param threads the number of threads to use.
+     * @param task the name of the task for the progress monitor.
+     * @param errorMessage the message put in front of the errors of the tile processing.
+     * @param owner the caller, used in the messages of the exceptions.
+     * @param pm the progress monitor.
+     */
+    public OrderedTileExecutor( int threads, String task, String errorMessage, Object owner, IJGTProgressMonitor pm ) {
+        this.threads = Math.max(1, threads);
+        this.task = task;
+        this.errorMessage = errorMessage;
+        this.owner = owner;
+        this.pm = pm;
+    }
+
+    /**
+     * Processes a tile, called concurrently by the threads of the pool.
+     *
+     * @param tile the index of the tile.
+     * @return the result of the tile.
+     * @throws Exception
+     */
+    protected abstract T process( int tile ) throws Exception;
+
+    /**
+     * Consumes the result of a tile, called by one thread at a time in tile order.
+     *
+     * @param tile the index of the tile.
+     * @param result the result of the tile.
+     * @throws Exception
+     */
+    protected abstract void consume( int tile, T result ) throws Exception;
+
+    /**
+     * Processes and consumes the tiles.
+     *
+     * @param tilesNum the number of tiles.
+     * @throws Exception
+     */
+    public void execute( final int tilesNum ) throws Exception {
+        int workers = Math.min(threads, tilesNum);
+        ExecutorService fixedThreadPool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        ArrayDeque<Future<T>> processed = new ArrayDeque<Future<T>>();
+        int submitted = 0;
+        pm.beginTask(task, tilesNum);
+        try {
+            for( int tile = 0; tile < tilesNum; tile++ ) {
+                if (pm.isCanceled()) {
+                    throw new ModelsRuntimeException("Module interrupted.", owner);
+                }
+                T result;
+                if (fixedThreadPool == null) {
+                    result = process(tile);
+                } else {
+                    // keep a few tiles ahead of the consumer
+                    while( submitted < tilesNum && submitted < tile + 2 * workers ) {
+                        final int t = submitted++;
+                        processed.add(fixedThreadPool.submit(new Callable<T>(){
+                            public T call() throws Exception {
+                                return process(t);
+                            }
+                        }));
+                    }
+                    result = get(processed.poll());
+                }
+                consume(tile, result);
+                pm.worked(1);
+            }
+        } finally {
+            if (fixedThreadPool != null)
+                fixedThreadPool.shutdownNow();
+        }
+        pm.done();
+    }
+
+    private T get( Future<T> future ) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelsRuntimeException("Module interrupted.", owner);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException(errorMessage + e.getCause().getMessage(), owner);
+        }
+    }
+}
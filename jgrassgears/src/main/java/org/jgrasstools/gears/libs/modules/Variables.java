@@ -76,6 +76,14 @@ public interface Variables {
     public String ACTCELLS = "actcells";
     public String INVCELLS = "invcells";
 
+    /*
+     * multiple flow direction partition
+     */
+    public String MFD_DROP = "elevation drop";
+    public String MFD_FREEMAN = "freeman";
+    public String MFD_QUINN = "quinn";
+    public String MFD_HOLMGREN = "holmgren";
+
     /**
      * Custom keyword. 
      */
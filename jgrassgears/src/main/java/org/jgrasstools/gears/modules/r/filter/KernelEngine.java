@@ -0,0 +1,807 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.filter;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Engine for kernel based filters and morphologic operations.
+ *
+ * <p>
+ * The engine works on flat row-major <code>double</code> arrays and picks the
+ * cheapest strategy the kernel allows:
+ * <ul>
+ * <li>separable (rank one) kernels are applied as a row pass followed by a column pass;</li>
+ * <li>flat rectangular kernels use running sums, i.e. O(1) per cell;</li>
+ * <li>flat kernels of any other shape are split into horizontal runs that are summed
+ *      through row prefix sums;</li>
+ * <li>min and max use the van Herk/Gil-Werman algorithm on the horizontal runs of the
+ *      structuring element (and on the columns too, if it is a rectangle);</li>
+ * <li>any other kernel falls back to the direct convolution.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Novalues are skipped in convolutions and the result is normalized by the sum of the
+ * weights of the valid cells. Cells outside of the raster are treated as novalues.
+ * The work is split in tiles of rows that are processed by a fixed thread pool.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class KernelEngine {
+
+    /**
+     * Relative tolerance used to decide if a kernel is separable.
+     */
+    private static final double SEPARABLE_TOLERANCE = 1E-6;
+
+    private static final int TILE_ROWS = 64;
+
+    private final int cols;
+    private final int rows;
+    private final int threads;
+    private final IJGTProgressMonitor pm;
+
+    /**
+     * Constructor.
+     *
+     * @param cols the columns of the grids to process.
+     * @param rows the rows of the grids to process.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public KernelEngine( int cols, int rows, int threads, IJGTProgressMonitor pm ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.threads = Math.max(1, threads);
+        this.pm = pm;
+    }
+
+    /**
+     * Read the first band of an image into a row-major array.
+     *
+     * @param image the image to read.
+     * @return the data array.
+     */
+    public static double[] getData( RenderedImage image ) {
+        return getData(image.getData());
+    }
+
+    /**
+     * Read the first band of a raster into a row-major array.
+     *
+     * @param raster the raster to read.
+     * @return the data array.
+     */
+    public static double[] getData( Raster raster ) {
+        return raster.getSamples(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(), 0,
+                (double[]) null);
+    }
+
+    /**
+     * Write a row-major array into the first band of a raster.
+     *
+     * @param raster the raster to fill.
+     * @param data the data array.
+     */
+    public static void setData( WritableRaster raster, double[] data ) {
+        raster.setSamples(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(), 0, data);
+    }
+
+    /**
+     * Convolve the data with a kernel, choosing the fastest available strategy.
+     *
+     * @param data the row-major data.
+     * @param kernel the kernel as <code>[row][col]</code>, with odd sides.
+     * @return the filtered data.
+     */
+    public double[] convolve( double[] data, double[][] kernel ) {
+        checkKernel(kernel);
+        int ry = kernel.length / 2;
+        int rx = kernel[0].length / 2;
+
+        if (isFlat(kernel)) {
+            boolean[][] shape = toShape(kernel);
+            if (isRectangle(shape)) {
+                return boxMean(data, rx, ry);
+            }
+            return flatMean(data, shape);
+        }
+        double[][] separated = separate(kernel);
+        if (separated != null) {
+            return convolveSeparable(data, separated[0], separated[1]);
+        }
+        return convolveDirect(data, kernel);
+    }
+
+    /**
+     * Direct convolution, O(kernel size) per cell.
+     *
+     * @param data the row-major data.
+     * @param kernel the kernel as <code>[row][col]</code>, with odd sides.
+     * @return the filtered data.
+     */
+    public double[] convolveDirect( final double[] data, final double[][] kernel ) {
+        checkKernel(kernel);
+        final int ry = kernel.length / 2;
+        final int rx = kernel[0].length / 2;
+        final double[] out = new double[cols * rows];
+        runTiled("Direct convolution...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                double[] sum = new double[cols];
+                double[] weights = new double[cols];
+                for( int r = fromRow; r < toRow; r++ ) {
+                    Arrays.fill(sum, 0.0);
+                    Arrays.fill(weights, 0.0);
+                    for( int kr = -ry; kr <= ry; kr++ ) {
+                        int rr = r + kr;
+                        if (rr < 0 || rr >= rows) {
+                            continue;
+                        }
+                        int rowOffset = rr * cols;
+                        double[] kernelRow = kernel[kr + ry];
+                        for( int kc = -rx; kc <= rx; kc++ ) {
+                            double w = kernelRow[kc + rx];
+                            if (w == 0) {
+                                continue;
+                            }
+                            int cFrom = Math.max(0, -kc);
+                            int cTo = Math.min(cols, cols - kc);
+                            for( int c = cFrom; c < cTo; c++ ) {
+                                double value = data[rowOffset + c + kc];
+                                if (!isNovalue(value)) {
+                                    sum[c] += value * w;
+                                    weights[c] += w;
+                                }
+                            }
+                        }
+                    }
+                    normalize(sum, weights, out, r * cols);
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Convolution with a separable kernel <code>k[r][c] = vertical[r] * horizontal[c]</code>.
+     *
+     * @param data the row-major data.
+     * @param horizontal the horizontal kernel component (odd length).
+     * @param vertical the vertical kernel component (odd length).
+     * @return the filtered data.
+     */
+    public double[] convolveSeparable( final double[] data, final double[] horizontal, final double[] vertical ) {
+        if (horizontal.length % 2 == 0 || vertical.length % 2 == 0) {
+            throw new ModelsRuntimeException("Kernel sides need to be odd.", this);
+        }
+        final int rx = horizontal.length / 2;
+        final int ry = vertical.length / 2;
+        final double[] rowSums = new double[cols * rows];
+        final double[] rowWeights = new double[cols * rows];
+        runTiled("Horizontal convolution...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    int rowOffset = r * cols;
+                    for( int kc = -rx; kc <= rx; kc++ ) {
+                        double w = horizontal[kc + rx];
+                        if (w == 0) {
+                            continue;
+                        }
+                        int cFrom = Math.max(0, -kc);
+                        int cTo = Math.min(cols, cols - kc);
+                        for( int c = cFrom; c < cTo; c++ ) {
+                            double value = data[rowOffset + c + kc];
+                            if (!isNovalue(value)) {
+                                rowSums[rowOffset + c] += value * w;
+                                rowWeights[rowOffset + c] += w;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        final double[] out = new double[cols * rows];
+        runTiled("Vertical convolution...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                double[] sum = new double[cols];
+                double[] weights = new double[cols];
+                for( int r = fromRow; r < toRow; r++ ) {
+                    Arrays.fill(sum, 0.0);
+                    Arrays.fill(weights, 0.0);
+                    for( int kr = -ry; kr <= ry; kr++ ) {
+                        int rr = r + kr;
+                        double w = vertical[kr + ry];
+                        if (rr < 0 || rr >= rows || w == 0) {
+                            continue;
+                        }
+                        int rowOffset = rr * cols;
+                        for( int c = 0; c < cols; c++ ) {
+                            sum[c] += rowSums[rowOffset + c] * w;
+                            weights[c] += rowWeights[rowOffset + c] * w;
+                        }
+                    }
+                    normalize(sum, weights, out, r * cols);
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Mean over a rectangular window using running sums, O(1) per cell.
+     *
+     * @param data the row-major data.
+     * @param rx the horizontal radius of the window.
+     * @param ry the vertical radius of the window.
+     * @return the filtered data.
+     */
+    public double[] boxMean( final double[] data, final int rx, final int ry ) {
+        final double[] rowSums = new double[cols * rows];
+        final int[] rowCounts = new int[cols * rows];
+        runTiled("Horizontal running sums...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    int rowOffset = r * cols;
+                    double sum = 0;
+                    int count = 0;
+                    // prime the window with the cells right of the first one
+                    for( int c = 0; c < Math.min(rx, cols); c++ ) {
+                        double value = data[rowOffset + c];
+                        if (!isNovalue(value)) {
+                            sum += value;
+                            count++;
+                        }
+                    }
+                    for( int c = 0; c < cols; c++ ) {
+                        int enter = c + rx;
+                        if (enter < cols) {
+                            double value = data[rowOffset + enter];
+                            if (!isNovalue(value)) {
+                                sum += value;
+                                count++;
+                            }
+                        }
+                        int exit = c - rx - 1;
+                        if (exit >= 0) {
+                            double value = data[rowOffset + exit];
+                            if (!isNovalue(value)) {
+                                sum -= value;
+                                count--;
+                            }
+                        }
+                        rowSums[rowOffset + c] = count == 0 ? 0.0 : sum;
+                        rowCounts[rowOffset + c] = count;
+                    }
+                }
+            }
+        });
+
+        final double[] out = new double[cols * rows];
+        runTiled("Vertical running sums...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                double[] sum = new double[cols];
+                int[] count = new int[cols];
+                // the first row of the tile is summed directly, the others slide
+                for( int rr = Math.max(0, fromRow - ry); rr <= Math.min(rows - 1, fromRow + ry); rr++ ) {
+                    addRow(rr, sum, count, 1);
+                }
+                for( int r = fromRow; r < toRow; r++ ) {
+                    if (r > fromRow) {
+                        int enter = r + ry;
+                        if (enter < rows) {
+                            addRow(enter, sum, count, 1);
+                        }
+                        int exit = r - ry - 1;
+                        if (exit >= 0) {
+                            addRow(exit, sum, count, -1);
+                        }
+                    }
+                    int rowOffset = r * cols;
+                    for( int c = 0; c < cols; c++ ) {
+                        out[rowOffset + c] = count[c] == 0 ? doubleNovalue : sum[c] / count[c];
+                    }
+                }
+            }
+
+            private void addRow( int row, double[] sum, int[] count, int sign ) {
+                int rowOffset = row * cols;
+                for( int c = 0; c < cols; c++ ) {
+                    sum[c] += sign * rowSums[rowOffset + c];
+                    count[c] += sign * rowCounts[rowOffset + c];
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Mean over a window of arbitrary shape, using row prefix sums on the horizontal runs
+     * of the shape, O(kernel rows) per cell.
+     *
+     * @param data the row-major data.
+     * @param shape the window shape as <code>[row][col]</code>, with odd sides.
+     * @return the filtered data.
+     */
+    public double[] flatMean( final double[] data, boolean[][] shape ) {
+        final int[][] runs = getRuns(shape);
+        final int stride = cols + 1;
+        final double[] prefixSums = new double[stride * rows];
+        final int[] prefixCounts = new int[stride * rows];
+        runTiled("Prefix sums...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    int dataOffset = r * cols;
+                    int prefixOffset = r * stride;
+                    for( int c = 0; c < cols; c++ ) {
+                        double value = data[dataOffset + c];
+                        boolean valid = !isNovalue(value);
+                        prefixSums[prefixOffset + c + 1] = prefixSums[prefixOffset + c] + (valid ? value : 0.0);
+                        prefixCounts[prefixOffset + c + 1] = prefixCounts[prefixOffset + c] + (valid ? 1 : 0);
+                    }
+                }
+            }
+        });
+
+        final double[] out = new double[cols * rows];
+        runTiled("Runs sums...", rows, new TileProcessor(){
+            public void process( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    for( int c = 0; c < cols; c++ ) {
+                        double sum = 0;
+                        int count = 0;
+                        for( int[] run : runs ) {
+                            int rr = r + run[0];
+                            if (rr < 0 || rr >= rows) {
+                                continue;
+                            }
+                            int from = Math.max(0, c + run[1]);
+                            int to = Math.min(cols - 1, c + run[2]);
+                            if (from > to) {
+                                continue;
+                            }
+                            int prefixOffset = rr * stride;
+                            sum += prefixSums[prefixOffset + to + 1] - prefixSums[prefixOffset + from];
+                            count += prefixCounts[prefixOffset + to + 1] - prefixCounts[prefixOffset + from];
+                        }
+                        out[r * cols + c] = count == 0 ? doubleNovalue : sum / count;
+                    }
+                }
+            }
+        });
+        return out;
+    }
+
+    /**
+     * Maximum of the valid values inside the structuring element (dilation).
+     *
+     * <p>Novalues are ignored, cells that have no valid value in the structuring
+     * element are set to novalue.</p>
+     *
+     * @param data the row-major data.
+     * @param shape the structuring element as <code>[row][col]</code>, with odd sides.
+     * @return the max values.
+     */
+    public double[] max( double[] data, boolean[][] shape ) {
+        return extreme(data, shape, true);
+    }
+
+    /**
+     * Minimum of the values inside the structuring element (erosion).
+     *
+     * <p>Novalues are considered the absolute minimum, so every cell whose structuring
+     * element touches a novalue or the raster bounds is set to novalue.</p>
+     *
+     * @param data the row-major data.
+     * @param shape the structuring element as <code>[row][col]</code>, with odd sides.
+     * @return the min values.
+     */
+    public double[] min( double[] data, boolean[][] shape ) {
+        return extreme(data, shape, false);
+    }
+
+    private double[] extreme( final double[] data, boolean[][] shape, final boolean isMax ) {
+        if (shape.length % 2 == 0 || shape[0].length % 2 == 0) {
+            throw new ModelsRuntimeException("Kernel sides need to be odd.", this);
+        }
+        final int[][] runs = getRuns(shape);
+        final int pad = shape[0].length / 2;
+        final double[] out = new double[cols * rows];
+        if (runs.length == 0) {
+            Arrays.fill(out, doubleNovalue);
+            return out;
+        }
+
+        if (isRectangle(shape)) {
+            // separable: horizontal pass followed by a vertical pass
+            final int rx = shape[0].length / 2;
+            final int ry = shape.length / 2;
+            final double[] horizontal = new double[cols * rows];
+            runTiled("Horizontal min/max...", rows, new TileProcessor(){
+                public void process( int fromRow, int toRow ) {
+                    VanHerk vanHerk = new VanHerk(cols, rx, isMax);
+                    for( int r = fromRow; r < toRow; r++ ) {
+                        vanHerk.slideRow(data, r * cols, 2 * rx + 1);
+                        System.arraycopy(vanHerk.result, 0, horizontal, r * cols, cols);
+                    }
+                }
+            });
+            runTiled("Vertical min/max...", cols, new TileProcessor(){
+                public void process( int fromCol, int toCol ) {
+                    VanHerk vanHerk = new VanHerk(rows, ry, isMax);
+                    double[] column = new double[rows];
+                    for( int c = fromCol; c < toCol; c++ ) {
+                        for( int r = 0; r < rows; r++ ) {
+                            column[r] = horizontal[r * cols + c];
+                        }
+                        vanHerk.slideRow(column, 0, 2 * ry + 1);
+                        for( int r = 0; r < rows; r++ ) {
+                            double value = vanHerk.result[r];
+                            out[r * cols + c] = value == Double.NEGATIVE_INFINITY ? doubleNovalue : value;
+                        }
+                    }
+                }
+            });
+        } else {
+            runTiled("Min/max on kernel runs...", rows, new TileProcessor(){
+                public void process( int fromRow, int toRow ) {
+                    VanHerk vanHerk = new VanHerk(cols, pad, isMax);
+                    double[] acc = new double[cols];
+                    for( int r = fromRow; r < toRow; r++ ) {
+                        Arrays.fill(acc, Double.NEGATIVE_INFINITY);
+                        boolean first = true;
+                        for( int[] run : runs ) {
+                            int rr = r + run[0];
+                            int length = run[2] - run[1] + 1;
+                            if (rr < 0 || rr >= rows) {
+                                if (!isMax) {
+                                    // out of the raster is novalue, the absolute minimum
+                                    Arrays.fill(acc, Double.NEGATIVE_INFINITY);
+                                    first = false;
+                                }
+                                continue;
+                            }
+                            vanHerk.slideRow(data, rr * cols, length);
+                            // window starting at c + run[1] sits at index c + run[1] + pad
+                            int shift = run[1] + pad;
+                            double[] windowed = vanHerk.windows;
+                            for( int c = 0; c < cols; c++ ) {
+                                double value = windowed[c + shift];
+                                if (first) {
+                                    acc[c] = value;
+                                } else if (isMax) {
+                                    if (value > acc[c]) {
+                                        acc[c] = value;
+                                    }
+                                } else if (value < acc[c]) {
+                                    acc[c] = value;
+                                }
+                            }
+                            first = false;
+                        }
+                        int rowOffset = r * cols;
+                        for( int c = 0; c < cols; c++ ) {
+                            double value = acc[c];
+                            out[rowOffset + c] = value == Double.NEGATIVE_INFINITY ? doubleNovalue : value;
+                        }
+                    }
+                }
+            });
+        }
+        return out;
+    }
+
+    /**
+     * Van Herk/Gil-Werman sliding min/max over rows padded with novalues
+     * (handled as negative infinity) on both sides.
+     */
+    private static class VanHerk {
+        private final int size;
+        private final int pad;
+        private final boolean isMax;
+        private final double[] extended;
+        private final double[] prefix;
+        private final double[] suffix;
+        /**
+         * The min/max of the windows, indexed by the window start in the padded row.
+         */
+        final double[] windows;
+        /**
+         * The min/max of the centered windows, indexed by the cell.
+         */
+        final double[] result;
+
+        VanHerk( int size, int pad, boolean isMax ) {
+            this.size = size;
+            this.pad = pad;
+            this.isMax = isMax;
+            int extendedSize = size + 2 * pad;
+            extended = new double[extendedSize];
+            prefix = new double[extendedSize];
+            suffix = new double[extendedSize];
+            windows = new double[extendedSize];
+            result = new double[size];
+        }
+
+        void slideRow( double[] data, int offset, int length ) {
+            int extendedSize = extended.length;
+            Arrays.fill(extended, 0, pad, Double.NEGATIVE_INFINITY);
+            Arrays.fill(extended, pad + size, extendedSize, Double.NEGATIVE_INFINITY);
+            for( int i = 0; i < size; i++ ) {
+                double value = data[offset + i];
+                extended[pad + i] = isNovalue(value) ? Double.NEGATIVE_INFINITY : value;
+            }
+
+            for( int blockStart = 0; blockStart < extendedSize; blockStart += length ) {
+                int blockEnd = Math.min(blockStart + length, extendedSize) - 1;
+                prefix[blockStart] = extended[blockStart];
+                for( int i = blockStart + 1; i <= blockEnd; i++ ) {
+                    prefix[i] = pick(prefix[i - 1], extended[i]);
+                }
+                suffix[blockEnd] = extended[blockEnd];
+                for( int i = blockEnd - 1; i >= blockStart; i-- ) {
+                    suffix[i] = pick(suffix[i + 1], extended[i]);
+                }
+            }
+
+            // windows running past the padding are never requested
+            int last = extendedSize - length;
+            for( int i = 0; i <= last; i++ ) {
+                windows[i] = pick(suffix[i], prefix[i + length - 1]);
+            }
+
+            // centered windows, used by the separable path
+            int half = length / 2;
+            for( int c = 0; c < size; c++ ) {
+                result[c] = windows[c + pad - half];
+            }
+        }
+
+        private double pick( double a, double b ) {
+            if (isMax) {
+                return a > b ? a : b;
+            }
+            return a < b ? a : b;
+        }
+    }
+
+    /**
+     * Split a kernel in its vertical and horizontal components.
+     *
+     * @param kernel the kernel as <code>[row][col]</code>.
+     * @return the components as <code>[horizontal, vertical]</code> or
+     *          <code>null</code>, if the kernel is not separable.
+     */
+    public static double[][] separate( double[][] kernel ) {
+        int pivotRow = -1;
+        int pivotCol = -1;
+        double max = 0;
+        for( int r = 0; r < kernel.length; r++ ) {
+            for( int c = 0; c < kernel[r].length; c++ ) {
+                double abs = Math.abs(kernel[r][c]);
+                if (abs > max) {
+                    max = abs;
+                    pivotRow = r;
+                    pivotCol = c;
+                }
+            }
+        }
+        if (pivotRow == -1) {
+            return null;
+        }
+        double pivot = kernel[pivotRow][pivotCol];
+        double[] horizontal = new double[kernel[0].length];
+        double[] vertical = new double[kernel.length];
+        for( int c = 0; c < horizontal.length; c++ ) {
+            horizontal[c] = kernel[pivotRow][c] / pivot;
+        }
+        for( int r = 0; r < vertical.length; r++ ) {
+            vertical[r] = kernel[r][pivotCol];
+        }
+        double tolerance = SEPARABLE_TOLERANCE * max;
+        for( int r = 0; r < kernel.length; r++ ) {
+            for( int c = 0; c < kernel[r].length; c++ ) {
+                if (Math.abs(kernel[r][c] - vertical[r] * horizontal[c]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        return new double[][]{horizontal, vertical};
+    }
+
+    /**
+     * Convert a kernel given as a flat array (as in JAI kernels) to a matrix.
+     *
+     * @param data the kernel data, row-major.
+     * @param width the kernel width.
+     * @param height the kernel height.
+     * @return the kernel as <code>[row][col]</code>.
+     */
+    public static double[][] toMatrix( float[] data, int width, int height ) {
+        double[][] kernel = new double[height][width];
+        int k = 0;
+        for( int r = 0; r < height; r++ ) {
+            for( int c = 0; c < width; c++ ) {
+                kernel[r][c] = data[k++];
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Convert a 0/1 kernel matrix to a structuring element.
+     *
+     * @param kernel the kernel as <code>[row][col]</code>.
+     * @return the shape, <code>true</code> where the kernel is 1.
+     */
+    public static boolean[][] toShape( int[][] kernel ) {
+        boolean[][] shape = new boolean[kernel.length][kernel[0].length];
+        for( int r = 0; r < kernel.length; r++ ) {
+            for( int c = 0; c < kernel[r].length; c++ ) {
+                shape[r][c] = kernel[r][c] == 1;
+            }
+        }
+        return shape;
+    }
+
+    private static boolean[][] toShape( double[][] kernel ) {
+        boolean[][] shape = new boolean[kernel.length][kernel[0].length];
+        for( int r = 0; r < kernel.length; r++ ) {
+            for( int c = 0; c < kernel[r].length; c++ ) {
+                shape[r][c] = kernel[r][c] != 0;
+            }
+        }
+        return shape;
+    }
+
+    private static boolean isFlat( double[][] kernel ) {
+        double weight = 0;
+        for( double[] kernelRow : kernel ) {
+            for( double w : kernelRow ) {
+                if (w == 0) {
+                    continue;
+                }
+                if (weight == 0) {
+                    weight = w;
+                } else if (w != weight) {
+                    return false;
+                }
+            }
+        }
+        return weight > 0;
+    }
+
+    private static boolean isRectangle( boolean[][] shape ) {
+        for( boolean[] shapeRow : shape ) {
+            for( boolean b : shapeRow ) {
+                if (!b) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split a shape in horizontal runs.
+     *
+     * @return the runs as <code>[row delta, first col delta, last col delta]</code>.
+     */
+    private static int[][] getRuns( boolean[][] shape ) {
+        int ry = shape.length / 2;
+        int rx = shape[0].length / 2;
+        List<int[]> runs = new ArrayList<int[]>();
+        for( int r = 0; r < shape.length; r++ ) {
+            int c = 0;
+            while( c < shape[r].length ) {
+                if (!shape[r][c]) {
+                    c++;
+                    continue;
+                }
+                int start = c;
+                while( c < shape[r].length && shape[r][c] ) {
+                    c++;
+                }
+                runs.add(new int[]{r - ry, start - rx, c - 1 - rx});
+            }
+        }
+        return runs.toArray(new int[runs.size()][]);
+    }
+
+    private void checkKernel( double[][] kernel ) {
+        if (kernel.length % 2 == 0 || kernel[0].length % 2 == 0) {
+            throw new ModelsRuntimeException("Kernel sides need to be odd.", this);
+        }
+    }
+
+    private static void normalize( double[] sum, double[] weights, double[] out, int offset ) {
+        for( int c = 0; c < sum.length; c++ ) {
+            out[offset + c] = weights[c] == 0 ? doubleNovalue : sum[c] / weights[c];
+        }
+    }
+
+    /**
+     * Processor of a tile of consecutive rows (or columns).
+     */
+    private static interface TileProcessor {
+        void process( int from, int to );
+    }
+
+    private void runTiled( String task, int size, final TileProcessor processor ) {
+        int tilesNum = (size + TILE_ROWS - 1) / TILE_ROWS;
+        if (pm != null) {
+            pm.beginTask(task, tilesNum);
+        }
+        if (threads == 1 || tilesNum == 1) {
+            for( int from = 0; from < size; from += TILE_ROWS ) {
+                processor.process(from, Math.min(size, from + TILE_ROWS));
+                if (pm != null) {
+                    pm.worked(1);
+                }
+            }
+        } else {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future< ? >> futures = new ArrayList<Future< ? >>();
+                for( int from = 0; from < size; from += TILE_ROWS ) {
+                    final int tileFrom = from;
+                    final int tileTo = Math.min(size, from + TILE_ROWS);
+                    futures.add(fixedThreadPool.submit(new Runnable(){
+                        public void run() {
+                            processor.process(tileFrom, tileTo);
+                            if (pm != null) {
+                                synchronized (pm) {
+                                    pm.worked(1);
+                                }
+                            }
+                        }
+                    }));
+                }
+                for( Future< ? > future : futures ) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelsRuntimeException("Kernel processing interrupted.", this);
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException("Error during kernel processing: " + e.getCause().getMessage(), this);
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+        if (pm != null) {
+            pm.done();
+        }
+    }
+}
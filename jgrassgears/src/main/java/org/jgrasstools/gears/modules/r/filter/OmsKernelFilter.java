@@ -10,13 +10,9 @@ import static org.jgrasstools.gears.libs.modules.Variables.QUARTIC;
 import static org.jgrasstools.gears.libs.modules.Variables.TRIANGULAR;
 import static org.jgrasstools.gears.libs.modules.Variables.TRIWEIGHT;
 
-import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.KernelJAI;
-import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -61,6 +57,10 @@ public class OmsKernelFilter extends JGTModel {
     @In
     public int pRadius = 10;
 
+    @Description("The number of threads to use.")
+    @In
+    public int pMaxThreads = 1;
+
     @Description("Filtered raster")
     @Out
     public GridCoverage2D outRaster;
@@ -76,33 +76,23 @@ public class OmsKernelFilter extends JGTModel {
 
         KernelJAI kernel = KernelFactory.createCircle(pRadius, type);
 
-        RenderedImage inImg = inRaster.getRenderedImage();
-        RandomIter inIter = RandomIterFactory.create(inImg, null);
+        double[][] kernelMatrix = KernelEngine.toMatrix(kernel.getKernelData(), kernel.getWidth(), kernel.getHeight());
+        double[] inData = KernelEngine.getData(inRaster.getRenderedImage());
 
-        WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
-
-        float[] kernelData = kernel.getKernelData();
-        pm.beginTask("Processing...", cols - 2 * pRadius);
-        for( int c = pRadius; c < cols - pRadius; c++ ) {
-            for( int r = pRadius; r < rows - pRadius; r++ ) {
-                double kernelSum = 0.0;
-                int k = 0;
-                double outputValue = 0.0;
-                for( int kc = -pRadius; kc <= pRadius; kc++ ) {
-                    for( int kr = -pRadius; kr <= pRadius; kr++, k++ ) {
-                        double value = inIter.getSampleDouble(c + kc, r + kr, 0);
-                        if (!isNovalue(value)) {
-                            outputValue = outputValue + value * kernelData[k];
-                            kernelSum = kernelSum + kernelData[k];
-                        }
-                    }
+        KernelEngine engine = new KernelEngine(cols, rows, pMaxThreads, pm);
+        double[] outData = engine.convolve(inData, kernelMatrix);
+
+        // cells nearer than the radius to the bounds are left as novalues
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                if (r < pRadius || r >= rows - pRadius || c < pRadius || c >= cols - pRadius) {
+                    outData[r * cols + c] = JGTConstants.doubleNovalue;
                 }
-                outIter.setSample(c, r, 0, outputValue / kernelSum);
             }
-            pm.worked(1);
         }
-        pm.done();
+
+        WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
+        KernelEngine.setData(outWR, outData);
 
         outRaster = CoverageUtilities.buildCoverage("filtered", outWR, regionMap, inRaster.getCoordinateReferenceSystem());
     }
@@ -0,0 +1,321 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.houghes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.sorting.IndexSortAlgorithm;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Memory bounded accumulator of the Hough transform for circles.
+ *
+ * <p>
+ * The hough space is not kept in memory as a whole. The radii are processed in bands
+ * of int counters sized to stay below {@link #MAX_ACCUMULATOR_CELLS}, the edge pixels
+ * being distributed over the threads, each with its own partial counters. Of every
+ * band only the best count of each center and the radius it has been found at are kept.
+ * </p>
+ * <p>
+ * Since the suppression around a found circle clears the centers at all radii, the
+ * best counts are enough to extract the circles: they are visited once in decreasing
+ * count order (smaller radius, then row and column on equal counts) and the centers
+ * that fall within half the radius of an already found circle are skipped.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class HoughAccumulator {
+
+    /**
+     * The maximum number of counters allocated at once, over all threads.
+     */
+    public static final int MAX_ACCUMULATOR_CELLS = 1 << 25;
+
+    private final byte[] imageValues;
+    private final int width;
+    private final int height;
+    private final int radiusMin;
+    private final int radiusInc;
+    private final int depth;
+    private final int[][][] lut;
+    private final int lutSize;
+    private final IJGTProgressMonitor pm;
+
+    private int threads;
+
+    /* best count of every center and the radius index at which it has been found */
+    private int[] bestCounts;
+    private int[] bestRadiusIndexes;
+
+    /**
+     * Constructor.
+     *
+     * @param imageValues the image, with the edge pixels different from 0, row by row.
+     * @param width the image width.
+     * @param height the image height.
+     * @param radiusMin the minimum radius in pixels.
+     * @param radiusInc the radius increment in pixels.
+     * @param depth the number of radii.
+     * @param lut the lookup table of the <code>rcos</code> and <code>rsin</code> values for every radius index.
+     * @param lutSize the number of entries of the lookup table to use.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     */
+    public HoughAccumulator( byte[] imageValues, int width, int height, int radiusMin, int radiusInc, int depth, int[][][] lut,
+            int lutSize, int threads, IJGTProgressMonitor pm ) {
+        this.imageValues = imageValues;
+        this.width = width;
+        this.height = height;
+        this.radiusMin = radiusMin;
+        this.radiusInc = radiusInc;
+        this.depth = depth;
+        this.lut = lut;
+        this.lutSize = lutSize;
+        this.pm = pm;
+
+        long planeCells = (long) width * height;
+        this.threads = (int) Math.max(1, Math.min(threads, MAX_ACCUMULATOR_CELLS / Math.max(1, planeCells)));
+    }
+
+    /**
+     * Accumulates the votes of the edge pixels for all the radii.
+     */
+    public void accumulate() {
+        int planeCells = width * height;
+        bestCounts = new int[planeCells];
+        bestRadiusIndexes = new int[planeCells];
+
+        /*
+         * the edge pixels, the border of the image excluded
+         */
+        int edgesNum = 0;
+        for( int y = 1; y < height - 1; y++ ) {
+            for( int x = 1; x < width - 1; x++ ) {
+                if (imageValues[x + y * width] != 0) {
+                    edgesNum++;
+                }
+            }
+        }
+        final int[] edges = new int[edgesNum];
+        int index = 0;
+        for( int y = 1; y < height - 1; y++ ) {
+            for( int x = 1; x < width - 1; x++ ) {
+                if (imageValues[x + y * width] != 0) {
+                    edges[index++] = x + y * width;
+                }
+            }
+        }
+
+        int workers = Math.max(1, Math.min(threads, edgesNum));
+        int bandDepth = (int) Math.max(1, Math.min(depth, MAX_ACCUMULATOR_CELLS / ((long) planeCells * workers)));
+        final int[][] partials = new int[workers][bandDepth * planeCells];
+
+        int bands = (depth + bandDepth - 1) / bandDepth;
+        ExecutorService fixedThreadPool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            pm.beginTask("Hough transform...", bands);
+            for( int bandStart = 0; bandStart < depth; bandStart += bandDepth ) {
+                if (pm.isCanceled()) {
+                    throw new ModelsRuntimeException("Module interrupted.", this);
+                }
+                final int from = bandStart;
+                final int to = Math.min(depth, bandStart + bandDepth);
+                if (fixedThreadPool == null) {
+                    Arrays.fill(partials[0], 0);
+                    vote(edges, 0, 1, from, to, partials[0]);
+                } else {
+                    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                    for( int w = 0; w < workers; w++ ) {
+                        final int first = w;
+                        final int step = workers;
+                        final int[] partial = partials[w];
+                        futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                            public Object call() throws Exception {
+                                Arrays.fill(partial, 0);
+                                vote(edges, first, step, from, to, partial);
+                                return null;
+                            }
+                        }));
+                    }
+                    waitFor(futures);
+
+                    /*
+                     * sum the partial counters into the first
+                     */
+                    futures.clear();
+                    final int bandCells = (to - from) * planeCells;
+                    for( int w = 0; w < workers; w++ ) {
+                        final int cellsFrom = (int) ((long) bandCells * w / workers);
+                        final int cellsTo = (int) ((long) bandCells * (w + 1) / workers);
+                        futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                            public Object call() throws Exception {
+                                int[] sum = partials[0];
+                                for( int p = 1; p < partials.length; p++ ) {
+                                    int[] partial = partials[p];
+                                    for( int i = cellsFrom; i < cellsTo; i++ ) {
+                                        sum[i] += partial[i];
+                                    }
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                    waitFor(futures);
+                }
+
+                /*
+                 * keep the best count of every center, radii are visited in increasing
+                 * order so that on equal counts the smaller radius is kept
+                 */
+                int[] counts = partials[0];
+                for( int r = from; r < to; r++ ) {
+                    int offset = (r - from) * planeCells;
+                    for( int i = 0; i < planeCells; i++ ) {
+                        int count = counts[offset + i];
+                        if (count > bestCounts[i]) {
+                            bestCounts[i] = count;
+                            bestRadiusIndexes[i] = r;
+                        }
+                    }
+                }
+                pm.worked(1);
+            }
+            pm.done();
+        } finally {
+            if (fixedThreadPool != null)
+                fixedThreadPool.shutdownNow();
+        }
+    }
+
+    private void vote( int[] edges, int first, int step, int from, int to, int[] counts ) {
+        int planeCells = width * height;
+        int[][] rcos = lut[0];
+        int[][] rsin = lut[1];
+        for( int e = first; e < edges.length; e += step ) {
+            int x = edges[e] % width;
+            int y = edges[e] / width;
+            for( int r = from; r < to; r++ ) {
+                int offset = (r - from) * planeCells;
+                for( int i = 0; i < lutSize; i++ ) {
+                    int a = x + rsin[i][r];
+                    int b = y + rcos[i][r];
+                    if (b >= 0 && b < height && a >= 0 && a < width) {
+                        counts[offset + a + b * width]++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void waitFor( List<Future<Object>> futures ) {
+        try {
+            for( Future<Object> future : futures ) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelsRuntimeException("Module interrupted.", this);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException("Error during the hough transform: " + e.getCause().getMessage(), this);
+        }
+    }
+
+    /**
+     * Search for a fixed number of circles.
+     *
+     * <p>Centers without votes are never returned, so less circles than requested
+     * can be found.</p>
+     *
+     * @param maxCircles the number of circles that should be found.
+     * @return the center coordinates, with the radius in pixels as z.
+     */
+    public Coordinate[] getCenterPoints( int maxCircles ) {
+        if (bestCounts == null) {
+            throw new ModelsRuntimeException("The accumulation has to be done before searching for circles.", this);
+        }
+
+        /*
+         * order the centers by decreasing count and increasing radius, the
+         * stable sort keeps rows and columns in order, centers without votes are left out
+         */
+        int planeCells = width * height;
+        double[] keys = new double[planeCells];
+        for( int i = 0; i < planeCells; i++ ) {
+            if (bestCounts[i] == 0) {
+                keys[i] = JGTConstants.doubleNovalue;
+            } else {
+                keys[i] = -(double) bestCounts[i] * depth + bestRadiusIndexes[i];
+            }
+        }
+        IndexSortAlgorithm sortAlgorithm = new IndexSortAlgorithm(null, threads);
+        int[] order = sortAlgorithm.sort(keys);
+
+        List<Coordinate> centerPoints = new ArrayList<Coordinate>();
+        BitSet suppressed = new BitSet(planeCells);
+        pm.beginTask("Search for circles...", maxCircles);
+        for( int o = sortAlgorithm.getNovaluesCount(); o < planeCells && centerPoints.size() < maxCircles; o++ ) {
+            int cell = order[o];
+            if (suppressed.get(cell)) {
+                continue;
+            }
+            int x = cell % width;
+            int y = cell / width;
+            int radius = radiusMin + bestRadiusIndexes[cell] * radiusInc;
+            centerPoints.add(new Coordinate(x, y, radius));
+            suppressNeighbours(suppressed, x, y, radius);
+            pm.worked(1);
+        }
+        pm.done();
+        return centerPoints.toArray(new Coordinate[centerPoints.size()]);
+    }
+
+    /**
+     * Marks the centers nearer than half the radius to a found circle.
+     */
+    private void suppressNeighbours( BitSet suppressed, int x, int y, int radius ) {
+        double halfRadius = radius / 2.0;
+        double halfSquared = halfRadius * halfRadius;
+
+        int y1 = Math.max(0, (int) Math.floor(y - halfRadius));
+        int y2 = Math.min(height, (int) Math.ceil(y + halfRadius) + 1);
+        int x1 = Math.max(0, (int) Math.floor(x - halfRadius));
+        int x2 = Math.min(width, (int) Math.ceil(x + halfRadius) + 1);
+        for( int i = y1; i < y2; i++ ) {
+            for( int j = x1; j < x2; j++ ) {
+                double dx = j - x;
+                double dy = i - y;
+                if (dx * dx + dy * dy < halfSquared) {
+                    suppressed.set(j + i * width);
+                }
+            }
+        }
+    }
+}
@@ -90,6 +90,10 @@ public class OmsHoughCirclesRaster extends JGTModel {
     @In
     public int pMaxCircleCount = 50;
 
+    @Description(pMaxThreads_DESCR)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(outCircles_DESCR)
     @In
     public SimpleFeatureCollection outCircles;
@@ -101,6 +105,7 @@ public class OmsHoughCirclesRaster extends JGTModel {
     public static final String DESCRIPTIO = "Hough Transform implementation.";
 
     public static final String outCircles_DESCR = "The output circles.";
+    public static final String pMaxThreads_DESCR = "The number of threads to use.";
     public static final String pMaxCircleCount_DESCR = "The maximum circle count to look for.";
     public static final String pRadiusIncrement_DESCR = "The radius increment to use.";
     public static final String pMaxRadius_DESCR = "The maximum radius to look for.";
@@ -117,9 +122,6 @@ public class OmsHoughCirclesRaster extends JGTModel {
     private int width; // Hough Space width (depends on image width)
     private int height; // Hough Space heigh (depends on image height)
     private int depth; // Hough Space depth (depends on radius interval)
-    private int offset; // Image Width
-    private int offx; // ROI x offset
-    private int offy; // ROI y offset
     private int lut[][][]; // LookUp Table for rsin e rcos values
 
     private double xRes;
@@ -130,11 +132,8 @@ public class OmsHoughCirclesRaster extends JGTModel {
         checkNull(inRaster, pMinRadius, pMaxRadius, pRadiusIncrement);
 
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inRaster);
-        offx = 0;
-        offy = 0;
         width = regionMap.getCols();
         height = regionMap.getRows();
-        offset = width;
         xRes = regionMap.getXres();
 
         radiusMinPixel = (int) round(width * pMinRadius / (regionMap.getEast() - regionMap.getWest()));
@@ -187,8 +186,11 @@ public class OmsHoughCirclesRaster extends JGTModel {
         }
         renderedImageIterator.done();
 
-        double[][][] houghValues = houghTransform();
-        Coordinate[] centerPoints = getCenterPoints(houghValues, maxCircles);
+        int lutSize = buildLookUpTable();
+        HoughAccumulator accumulator = new HoughAccumulator(imageValues, width, height, radiusMinPixel, radiusIncPixel, depth,
+                lut, lutSize, pMaxThreads, pm);
+        accumulator.accumulate();
+        Coordinate[] centerPoints = accumulator.getCenterPoints(maxCircles);
         Geometry[] geoms = new Geometry[centerPoints.length];
         GridGeometry2D gridGeometry = inRaster.getGridGeometry();
         for( int i = 0; i < centerPoints.length; i++ ) {
@@ -242,118 +244,6 @@ public class OmsHoughCirclesRaster extends JGTModel {
         return i;
     }
 
-    private double[][][] houghTransform() {
-        int lutSize = buildLookUpTable();
-        double[][][] houghValues = new double[width][height][depth];
-        int k = width - 1;
-        int l = height - 1;
-
-        pm.beginTask("Hough transform...", l);
-        for( int y = 1; y < l; y++ ) {
-            if (pm.isCanceled()) {
-                throw new ModelsRuntimeException("Module interrupted.", this);
-            }
-            for( int x = 1; x < k; x++ ) {
-                for( int radius = radiusMinPixel; radius <= radiusMaxPixel; radius = radius + radiusIncPixel ) {
-                    if (imageValues[(x + offx) + (y + offy) * offset] != 0) {// Edge pixel found
-                        int indexR = (radius - radiusMinPixel) / radiusIncPixel;
-                        for( int i = 0; i < lutSize; i++ ) {
-                            int a = x + lut[1][i][indexR];
-                            int b = y + lut[0][i][indexR];
-                            if ((b >= 0) & (b < height) & (a >= 0) & (a < width)) {
-                                houghValues[a][b][indexR] += 1;
-                            }
-                        }
-                    }
-                }
-            }
-            pm.worked(1);
-        }
-        pm.done();
-
-        return houghValues;
-
-    }
-
-    /** 
-     * Search for a fixed number of circles.
-     * 
-     * @param houghValues the hough values.
-     * @param maxCircles The number of circles that should be found.  
-     * @return the center coordinates.
-     */
-    private Coordinate[] getCenterPoints( double[][][] houghValues, int maxCircles ) {
-
-        Coordinate[] centerPoints = new Coordinate[maxCircles];
-        int xMax = 0;
-        int yMax = 0;
-        int rMax = 0;
-
-        pm.beginTask("Search for circles...", maxCircles);
-        for( int c = 0; c < maxCircles; c++ ) {
-            double counterMax = -1;
-            for( int radius = radiusMinPixel; radius <= radiusMaxPixel; radius = radius + radiusIncPixel ) {
-
-                int indexR = (radius - radiusMinPixel) / radiusIncPixel;
-                for( int y = 0; y < height; y++ ) {
-                    for( int x = 0; x < width; x++ ) {
-                        if (houghValues[x][y][indexR] > counterMax) {
-                            counterMax = houghValues[x][y][indexR];
-                            xMax = x;
-                            yMax = y;
-                            rMax = radius;
-                        }
-                    }
-
-                }
-            }
-            centerPoints[c] = new Coordinate(xMax, yMax, rMax);
-            clearNeighbours(houghValues, xMax, yMax, rMax);
-            pm.worked(1);
-        }
-        pm.done();
-        return centerPoints;
-    }
-
-    /** 
-     * Clear, from the Hough Space, all the counter that are near (radius/2) a previously found circle C.
-     *  
-     * @param x The x coordinate of the circle C found.
-     * @param x The y coordinate of the circle C found.
-     * @param x The radius of the circle C found.
-     */
-    private void clearNeighbours( double[][][] houghValues, int x, int y, int radius ) {
-        // The following code just clean the points around the center of the circle found.
-        double halfRadius = radius / 2.0F;
-        double halfSquared = halfRadius * halfRadius;
-
-        int y1 = (int) Math.floor((double) y - halfRadius);
-        int y2 = (int) Math.ceil((double) y + halfRadius) + 1;
-        int x1 = (int) Math.floor((double) x - halfRadius);
-        int x2 = (int) Math.ceil((double) x + halfRadius) + 1;
-
-        if (y1 < 0)
-            y1 = 0;
-        if (y2 > height)
-            y2 = height;
-        if (x1 < 0)
-            x1 = 0;
-        if (x2 > width)
-            x2 = width;
-
-        for( int r = radiusMinPixel; r <= radiusMaxPixel; r = r + radiusIncPixel ) {
-            int indexR = (r - radiusMinPixel) / radiusIncPixel;
-            for( int i = y1; i < y2; i++ ) {
-                for( int j = x1; j < x2; j++ ) {
-                    if (Math.pow(j - x, 2D) + Math.pow(i - y, 2D) < halfSquared) {
-                        houghValues[j][i][indexR] = 0.0D;
-                    }
-                }
-            }
-        }
-
-    }
-
     public static void main( String[] args ) throws Exception {
 
         ThreadedRunnable< ? > runner = new ThreadedRunnable(getDefaultThreadsNum(), null);
@@ -0,0 +1,254 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.mapcalc;
+
+import java.awt.Rectangle;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Engine that evaluates a {@link MapcalcExpression} over whole grids.
+ *
+ * <p>
+ * The grid is split in square tiles that are processed by a fixed thread pool. For every
+ * tile the sources are read in one go, the expression is evaluated on the whole tile and
+ * the result is written to the destination in the same pass. Single tiled images backed by
+ * <code>double</code> arrays are read and written directly through their data buffer.
+ * </p>
+ * <p>
+ * All the sources need to have the size of the destination grid.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class MapcalcEngine {
+
+    /**
+     * The side of the tiles, in cells.
+     */
+    public static final int TILE_SIZE = 256;
+
+    private final MapcalcExpression expression;
+    private final int cols;
+    private final int rows;
+    private final int threads;
+    private final IJGTProgressMonitor pm;
+
+    /**
+     * Constructor.
+     *
+     * @param expression the expression to evaluate.
+     * @param cols the columns of the grids to process.
+     * @param rows the rows of the grids to process.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public MapcalcEngine( MapcalcExpression expression, int cols, int rows, int threads, IJGTProgressMonitor pm ) {
+        this.expression = expression;
+        this.cols = cols;
+        this.rows = rows;
+        this.threads = Math.max(1, threads);
+        this.pm = pm;
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param sources the source images, in the order of {@link MapcalcExpression#getSourceNames()}.
+     * @param destination the raster to write the result into.
+     */
+    public void execute( RenderedImage[] sources, WritableRaster destination ) {
+        final GridAccess[] readers = new GridAccess[sources.length];
+        for( int i = 0; i < sources.length; i++ ) {
+            readers[i] = new GridAccess(sources[i]);
+        }
+        final GridAccess writer = new GridAccess(destination);
+
+        final List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for( int r = 0; r < rows; r += TILE_SIZE ) {
+            for( int c = 0; c < cols; c += TILE_SIZE ) {
+                tiles.add(new Rectangle(c, r, Math.min(TILE_SIZE, cols - c), Math.min(TILE_SIZE, rows - r)));
+            }
+        }
+        int workers = Math.min(threads, tiles.size());
+
+        if (pm != null) {
+            pm.beginTask("Processing maps...", tiles.size());
+        }
+        if (workers <= 1) {
+            processTiles(tiles, 0, 1, readers, writer);
+        } else {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( int i = 0; i < workers; i++ ) {
+                    final int first = i;
+                    final int step = workers;
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            processTiles(tiles, first, step, readers, writer);
+                            return null;
+                        }
+                    }));
+                }
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelsRuntimeException("Map calculation interrupted.", this);
+            } catch (ExecutionException e) {
+                throw new ModelsRuntimeException("Error during the map calculation: " + e.getCause().getMessage(), this);
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+        if (pm != null) {
+            pm.done();
+        }
+    }
+
+    /**
+     * Process the tiles <code>first, first + step, ...</code> with buffers owned by the calling thread.
+     */
+    private void processTiles( List<Rectangle> tiles, int first, int step, GridAccess[] readers, GridAccess writer ) {
+        int length = TILE_SIZE * TILE_SIZE;
+        double[][] sourceBuffers = new double[readers.length][length];
+        double[][] scratch = expression.createScratch(length);
+        double[] outBuffer = new double[length];
+        for( int t = first; t < tiles.size(); t += step ) {
+            Rectangle tile = tiles.get(t);
+            for( int i = 0; i < readers.length; i++ ) {
+                readers[i].read(tile, sourceBuffers[i]);
+            }
+            expression.evaluate(sourceBuffers, scratch, tile.width * tile.height, outBuffer);
+            writer.write(tile, outBuffer);
+            if (pm != null) {
+                synchronized (pm) {
+                    pm.worked(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and writes the first band of a grid, directly on the data array if possible.
+     */
+    private static class GridAccess {
+        private final Raster raster;
+        private final RenderedImage image;
+        private final int minX;
+        private final int minY;
+        private double[] data;
+        private int base;
+        private int pixelStride;
+        private int scanlineStride;
+
+        GridAccess( RenderedImage image ) {
+            this.image = image;
+            minX = image.getMinX();
+            minY = image.getMinY();
+            if (image.getNumXTiles() == 1 && image.getNumYTiles() == 1) {
+                raster = image.getTile(image.getMinTileX(), image.getMinTileY());
+                initDirectAccess();
+            } else {
+                raster = null;
+            }
+        }
+
+        GridAccess( WritableRaster raster ) {
+            this.image = null;
+            this.raster = raster;
+            minX = raster.getMinX();
+            minY = raster.getMinY();
+            initDirectAccess();
+        }
+
+        private void initDirectAccess() {
+            DataBuffer dataBuffer = raster.getDataBuffer();
+            SampleModel sampleModel = raster.getSampleModel();
+            if (dataBuffer instanceof DataBufferDouble && sampleModel instanceof ComponentSampleModel) {
+                ComponentSampleModel csm = (ComponentSampleModel) sampleModel;
+                int bank = csm.getBankIndices()[0];
+                data = ((DataBufferDouble) dataBuffer).getData(bank);
+                pixelStride = csm.getPixelStride();
+                scanlineStride = csm.getScanlineStride();
+                base = dataBuffer.getOffsets()[bank] + csm.getBandOffsets()[0] - raster.getSampleModelTranslateY()
+                        * scanlineStride - raster.getSampleModelTranslateX() * pixelStride;
+            }
+        }
+
+        void read( Rectangle tile, double[] buffer ) {
+            int x = minX + tile.x;
+            int y = minY + tile.y;
+            if (data != null) {
+                for( int r = 0; r < tile.height; r++ ) {
+                    int index = base + (y + r) * scanlineStride + x * pixelStride;
+                    int bufferIndex = r * tile.width;
+                    if (pixelStride == 1) {
+                        System.arraycopy(data, index, buffer, bufferIndex, tile.width);
+                    } else {
+                        for( int c = 0; c < tile.width; c++, index += pixelStride ) {
+                            buffer[bufferIndex + c] = data[index];
+                        }
+                    }
+                }
+            } else if (raster != null) {
+                raster.getSamples(x, y, tile.width, tile.height, 0, buffer);
+            } else {
+                Raster tileRaster = image.getData(new Rectangle(x, y, tile.width, tile.height));
+                tileRaster.getSamples(x, y, tile.width, tile.height, 0, buffer);
+            }
+        }
+
+        void write( Rectangle tile, double[] buffer ) {
+            int x = minX + tile.x;
+            int y = minY + tile.y;
+            if (data != null) {
+                for( int r = 0; r < tile.height; r++ ) {
+                    int index = base + (y + r) * scanlineStride + x * pixelStride;
+                    int bufferIndex = r * tile.width;
+                    if (pixelStride == 1) {
+                        System.arraycopy(buffer, bufferIndex, data, index, tile.width);
+                    } else {
+                        for( int c = 0; c < tile.width; c++, index += pixelStride ) {
+                            data[index] = buffer[bufferIndex + c];
+                        }
+                    }
+                }
+            } else {
+                ((WritableRaster) raster).setSamples(x, y, tile.width, tile.height, 0, buffer);
+            }
+        }
+    }
+}
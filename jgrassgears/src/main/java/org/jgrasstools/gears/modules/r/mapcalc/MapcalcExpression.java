@@ -0,0 +1,579 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.mapcalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A compiled per cell map algebra expression, evaluated on whole blocks of cells.
+ *
+ * <p>
+ * Only the simple subset of the jiffle scripts made of an images block and a single
+ * assignment to the destination image is supported, as in:
+ * <pre>
+ * images{a=read; b=read; dest=write;} dest = sqrt(a^2 + b^2) / 2;
+ * </pre>
+ * with the operators <code>+ - * / % ^</code>, the constants <code>M_PI</code> and
+ * <code>M_E</code> and the functions <code>sqrt, exp, log, abs, sin, cos, tan, asin,
+ * acos, atan, floor, min, max</code>. For anything else {@link #compile(String)} returns
+ * <code>null</code> and the script has to be run by jiffle.
+ * </p>
+ *
+ * <p>
+ * The expression is evaluated one operation at a time over all the cells of a block,
+ * so that the inner loops are simple loops over arrays.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class MapcalcExpression {
+
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int MOD = 4;
+    private static final int POW = 5;
+    private static final int MIN = 6;
+    private static final int MAX = 7;
+
+    private static final String[] FUNCTIONS = {"sqrt", "exp", "log", "abs", "sin", "cos", "tan", "asin", "acos", "atan",
+            "floor"};
+
+    private final String destinationName;
+    private final String[] sourceNames;
+    private final Node root;
+    private final int slotsCount;
+
+    private MapcalcExpression( String destinationName, String[] sourceNames, Node root, int slotsCount ) {
+        this.destinationName = destinationName;
+        this.sourceNames = sourceNames;
+        this.root = root;
+        this.slotsCount = slotsCount;
+    }
+
+    /**
+     * Compile a script.
+     *
+     * @param script the jiffle script.
+     * @return the compiled expression or <code>null</code>, if the script is not supported.
+     */
+    public static MapcalcExpression compile( String script ) {
+        try {
+            return new Parser(script).parse();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the name of the destination image.
+     */
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    /**
+     * @return the names of the source images, in the order expected by {@link #evaluate(double[][], double[][], int, double[])}.
+     */
+    public String[] getSourceNames() {
+        return sourceNames;
+    }
+
+    /**
+     * Create the buffers needed for the intermediate results.
+     *
+     * @param length the maximum number of cells evaluated at once.
+     * @return the buffers, to be used by a single thread.
+     */
+    public double[][] createScratch( int length ) {
+        return new double[slotsCount][length];
+    }
+
+    /**
+     * Evaluate the expression over a block of cells.
+     *
+     * @param sources the values of the source images, in the order of {@link #getSourceNames()}.
+     * @param scratch the buffers created by {@link #createScratch(int)}.
+     * @param length the number of cells to evaluate.
+     * @param out the array into which to put the result.
+     */
+    public void evaluate( double[][] sources, double[][] scratch, int length, double[] out ) {
+        if (root instanceof Constant) {
+            double value = ((Constant) root).value;
+            for( int i = 0; i < length; i++ ) {
+                out[i] = value;
+            }
+        } else {
+            System.arraycopy(root.eval(sources, scratch, length), 0, out, 0, length);
+        }
+    }
+
+    private static abstract class Node {
+        abstract double[] eval( double[][] sources, double[][] scratch, int n );
+    }
+
+    private static class Constant extends Node {
+        final double value;
+
+        Constant( double value ) {
+            this.value = value;
+        }
+
+        double[] eval( double[][] sources, double[][] scratch, int n ) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static class Source extends Node {
+        final int index;
+
+        Source( int index ) {
+            this.index = index;
+        }
+
+        double[] eval( double[][] sources, double[][] scratch, int n ) {
+            return sources[index];
+        }
+    }
+
+    private static class Function extends Node {
+        final int function;
+        final Node arg;
+        final int slot;
+
+        Function( int function, Node arg, int slot ) {
+            this.function = function;
+            this.arg = arg;
+            this.slot = slot;
+        }
+
+        double[] eval( double[][] sources, double[][] scratch, int n ) {
+            double[] a = arg.eval(sources, scratch, n);
+            double[] o = scratch[slot];
+            switch( function ) {
+            case 0:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.sqrt(a[i]);
+                break;
+            case 1:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.exp(a[i]);
+                break;
+            case 2:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.log(a[i]);
+                break;
+            case 3:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.abs(a[i]);
+                break;
+            case 4:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.sin(a[i]);
+                break;
+            case 5:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.cos(a[i]);
+                break;
+            case 6:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.tan(a[i]);
+                break;
+            case 7:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.asin(a[i]);
+                break;
+            case 8:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.acos(a[i]);
+                break;
+            case 9:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.atan(a[i]);
+                break;
+            case 10:
+                for( int i = 0; i < n; i++ )
+                    o[i] = Math.floor(a[i]);
+                break;
+            default:
+                throw new IllegalStateException();
+            }
+            return o;
+        }
+
+        static double apply( int function, double a ) {
+            switch( function ) {
+            case 0:
+                return Math.sqrt(a);
+            case 1:
+                return Math.exp(a);
+            case 2:
+                return Math.log(a);
+            case 3:
+                return Math.abs(a);
+            case 4:
+                return Math.sin(a);
+            case 5:
+                return Math.cos(a);
+            case 6:
+                return Math.tan(a);
+            case 7:
+                return Math.asin(a);
+            case 8:
+                return Math.acos(a);
+            case 9:
+                return Math.atan(a);
+            case 10:
+                return Math.floor(a);
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static class Binary extends Node {
+        final int op;
+        final Node left;
+        final Node right;
+        final int slot;
+
+        Binary( int op, Node left, Node right, int slot ) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.slot = slot;
+        }
+
+        double[] eval( double[][] sources, double[][] scratch, int n ) {
+            double[] o = scratch[slot];
+            if (left instanceof Constant) {
+                double a = ((Constant) left).value;
+                double[] b = right.eval(sources, scratch, n);
+                for( int i = 0; i < n; i++ )
+                    o[i] = apply(op, a, b[i]);
+            } else if (right instanceof Constant) {
+                double[] a = left.eval(sources, scratch, n);
+                double b = ((Constant) right).value;
+                switch( op ) {
+                case ADD:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] + b;
+                    break;
+                case SUB:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] - b;
+                    break;
+                case MUL:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] * b;
+                    break;
+                case DIV:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] / b;
+                    break;
+                default:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = apply(op, a[i], b);
+                }
+            } else {
+                double[] a = left.eval(sources, scratch, n);
+                double[] b = right.eval(sources, scratch, n);
+                switch( op ) {
+                case ADD:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] + b[i];
+                    break;
+                case SUB:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] - b[i];
+                    break;
+                case MUL:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] * b[i];
+                    break;
+                case DIV:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = a[i] / b[i];
+                    break;
+                default:
+                    for( int i = 0; i < n; i++ )
+                        o[i] = apply(op, a[i], b[i]);
+                }
+            }
+            return o;
+        }
+
+        static double apply( int op, double a, double b ) {
+            switch( op ) {
+            case ADD:
+                return a + b;
+            case SUB:
+                return a - b;
+            case MUL:
+                return a * b;
+            case DIV:
+                return a / b;
+            case MOD:
+                return a % b;
+            case POW:
+                return Math.pow(a, b);
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser of the supported subset of jiffle.
+     *
+     * <p>Throws {@link UnsupportedOperationException} for everything it doesn't understand.</p>
+     */
+    private static class Parser {
+        private final String script;
+        private int pos = 0;
+        private int slots = 0;
+        private String destinationName;
+        private final List<String> sourceNames = new ArrayList<String>();
+        private final HashMap<String, Integer> sourceIndexes = new HashMap<String, Integer>();
+
+        Parser( String script ) {
+            this.script = script;
+        }
+
+        MapcalcExpression parse() {
+            expectWord("images");
+            expect('{');
+            while( !peek('}') ) {
+                String name = identifier();
+                expect('=');
+                String mode = identifier();
+                expect(';');
+                if (mode.equals("read")) {
+                    if (!sourceIndexes.containsKey(name)) {
+                        sourceIndexes.put(name, sourceNames.size());
+                        sourceNames.add(name);
+                    }
+                } else if (mode.equals("write") && destinationName == null) {
+                    destinationName = name;
+                } else {
+                    throw new UnsupportedOperationException();
+                }
+            }
+            expect('}');
+            if (destinationName == null || sourceIndexes.containsKey(destinationName)) {
+                throw new UnsupportedOperationException();
+            }
+
+            String target = identifier();
+            if (!target.equals(destinationName)) {
+                throw new UnsupportedOperationException();
+            }
+            expect('=');
+            Node root = expression();
+            expect(';');
+            skipWhitespace();
+            if (pos != script.length()) {
+                throw new UnsupportedOperationException();
+            }
+            return new MapcalcExpression(destinationName, sourceNames.toArray(new String[0]), root, slots);
+        }
+
+        private Node expression() {
+            Node node = term();
+            while( true ) {
+                if (peek('+')) {
+                    pos++;
+                    node = binary(ADD, node, term());
+                } else if (peek('-')) {
+                    pos++;
+                    node = binary(SUB, node, term());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node term() {
+            Node node = unary();
+            while( true ) {
+                if (peek('*')) {
+                    pos++;
+                    node = binary(MUL, node, unary());
+                } else if (peek('/')) {
+                    pos++;
+                    node = binary(DIV, node, unary());
+                } else if (peek('%')) {
+                    pos++;
+                    node = binary(MOD, node, unary());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node unary() {
+            if (peek('-') || peek('+')) {
+                boolean negate = script.charAt(pos) == '-';
+                pos++;
+                Node node = power();
+                if (node instanceof Binary && ((Binary) node).op == POW) {
+                    // the precedence of the sign over the power is left to jiffle
+                    throw new UnsupportedOperationException();
+                }
+                return negate ? binary(SUB, new Constant(0), node) : node;
+            }
+            return power();
+        }
+
+        private Node power() {
+            Node base = primary();
+            if (peek('^')) {
+                pos++;
+                return binary(POW, base, unary());
+            }
+            return base;
+        }
+
+        private Node primary() {
+            skipWhitespace();
+            if (pos >= script.length()) {
+                throw new UnsupportedOperationException();
+            }
+            char c = script.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Node node = expression();
+                expect(')');
+                return node;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return new Constant(number());
+            }
+            String name = identifier();
+            if (peek('(')) {
+                pos++;
+                List<Node> args = new ArrayList<Node>();
+                args.add(expression());
+                while( peek(',') ) {
+                    pos++;
+                    args.add(expression());
+                }
+                expect(')');
+                return function(name, args);
+            }
+            Integer index = sourceIndexes.get(name);
+            if (index != null) {
+                return new Source(index);
+            } else if (name.equals("M_PI")) {
+                return new Constant(Math.PI);
+            } else if (name.equals("M_E")) {
+                return new Constant(Math.E);
+            }
+            throw new UnsupportedOperationException();
+        }
+
+        private Node function( String name, List<Node> args ) {
+            if (args.size() == 2 && (name.equals("min") || name.equals("max"))) {
+                return binary(name.equals("min") ? MIN : MAX, args.get(0), args.get(1));
+            }
+            for( int f = 0; f < FUNCTIONS.length; f++ ) {
+                if (FUNCTIONS[f].equals(name) && args.size() == 1) {
+                    Node arg = args.get(0);
+                    if (arg instanceof Constant) {
+                        return new Constant(Function.apply(f, ((Constant) arg).value));
+                    }
+                    return new Function(f, arg, slots++);
+                }
+            }
+            throw new UnsupportedOperationException();
+        }
+
+        private Node binary( int op, Node left, Node right ) {
+            if (left instanceof Constant && right instanceof Constant) {
+                return new Constant(Binary.apply(op, ((Constant) left).value, ((Constant) right).value));
+            }
+            return new Binary(op, left, right, slots++);
+        }
+
+        private double number() {
+            int start = pos;
+            while( pos < script.length() && (Character.isDigit(script.charAt(pos)) || script.charAt(pos) == '.') ) {
+                pos++;
+            }
+            if (pos < script.length() && (script.charAt(pos) == 'e' || script.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < script.length() && (script.charAt(pos) == '-' || script.charAt(pos) == '+')) {
+                    pos++;
+                }
+                while( pos < script.length() && Character.isDigit(script.charAt(pos)) ) {
+                    pos++;
+                }
+            }
+            try {
+                return Double.parseDouble(script.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private String identifier() {
+            skipWhitespace();
+            int start = pos;
+            while( pos < script.length()
+                    && (Character.isLetter(script.charAt(pos)) || script.charAt(pos) == '_' || (pos > start && Character
+                            .isDigit(script.charAt(pos)))) ) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new UnsupportedOperationException();
+            }
+            return script.substring(start, pos);
+        }
+
+        private void expectWord( String word ) {
+            if (!identifier().equals(word)) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private void expect( char c ) {
+            if (!peek(c)) {
+                throw new UnsupportedOperationException();
+            }
+            pos++;
+        }
+
+        private boolean peek( char c ) {
+            skipWhitespace();
+            return pos < script.length() && script.charAt(pos) == c;
+        }
+
+        private void skipWhitespace() {
+            while( pos < script.length() && Character.isWhitespace(script.charAt(pos)) ) {
+                pos++;
+            }
+        }
+    }
+}
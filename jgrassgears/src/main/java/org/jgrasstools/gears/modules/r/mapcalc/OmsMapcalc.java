@@ -29,13 +29,16 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_IN_RASTERS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_OUT_RASTER_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_P_FUNCTION_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_P_MAX_THREADS_DESCRIPTION;
 
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.awt.image.WritableRenderedImage;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -86,6 +89,10 @@ public class OmsMapcalc extends JGTModel {
     @In
     public String pFunction;
 
+    @Description(OMSMAPCALC_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSMAPCALC_OUT_RASTER_DESCRIPTION)
     @Out
     public GridCoverage2D outRaster = null;
@@ -99,6 +106,21 @@ public class OmsMapcalc extends JGTModel {
     private long updateInterval;
     private long totalCount = 100;
 
+    /**
+     * The maximum number of compiled scripts kept in memory.
+     */
+    private static final int CACHE_SIZE = 32;
+
+    /**
+     * Compiled scripts, shared by all the instances, since the compilation of jiffle is expensive.
+     */
+    private static final Map<String, Object> compiledScripts = new LinkedHashMap<String, Object>(CACHE_SIZE, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry( Map.Entry<String, Object> eldest ) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     @SuppressWarnings("nls")
     @Execute
     public void process() throws Exception {
@@ -109,10 +131,18 @@ public class OmsMapcalc extends JGTModel {
         String script = pFunction;
         script = script.trim();
 
-        Jiffle jiffle = new Jiffle();
-        jiffle.setScript(script);
-        jiffle.compile();
-        JiffleDirectRuntime jiffleRuntime = jiffle.getRuntimeInstance();
+        if (inRasters != null && !inRasters.isEmpty()) {
+            MapcalcExpression expression = getExpression(script);
+            if (expression != null && processTiled(expression)) {
+                return;
+            }
+        }
+
+        Jiffle jiffle = getJiffle(script);
+        JiffleDirectRuntime jiffleRuntime;
+        synchronized (jiffle) {
+            jiffleRuntime = jiffle.getRuntimeInstance();
+        }
 
         CoordinateTransform jiffleCRS = null;
 
@@ -201,6 +231,73 @@ public class OmsMapcalc extends JGTModel {
         executor.shutdown();
     }
 
+    /**
+     * Run the expression through the tiled engine.
+     *
+     * @param expression the compiled expression.
+     * @return <code>false</code> if the maps are not supported by the engine, in which case nothing is done.
+     */
+    private boolean processTiled( MapcalcExpression expression ) {
+        HashMap<String, Double> region = CoverageUtilities.getRegionParamsFromGridCoverage(inRasters.get(0));
+        int nCols = region.get(CoverageUtilities.COLS).intValue();
+        int nRows = region.get(CoverageUtilities.ROWS).intValue();
+
+        String[] sourceNames = expression.getSourceNames();
+        RenderedImage[] sources = new RenderedImage[sourceNames.length];
+        for( GridCoverage2D mapGC : inRasters ) {
+            String name = mapGC.getName().toString();
+            for( int i = 0; i < sourceNames.length; i++ ) {
+                if (sources[i] == null && sourceNames[i].equals(name)) {
+                    sources[i] = mapGC.getRenderedImage();
+                }
+            }
+        }
+        for( RenderedImage source : sources ) {
+            if (source == null || source.getWidth() != nCols || source.getHeight() != nRows) {
+                return false;
+            }
+        }
+
+        regionParameters = region;
+        crs = inRasters.get(0).getCoordinateReferenceSystem();
+        WritableRaster destWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
+        MapcalcEngine engine = new MapcalcEngine(expression, nCols, nRows, pMaxThreads, pm);
+        engine.execute(sources, destWR);
+        outRaster = CoverageUtilities.buildCoverage(expression.getDestinationName(), destWR, regionParameters, crs);
+        return true;
+    }
+
+    private static MapcalcExpression getExpression( String script ) {
+        String key = "expression:" + script;
+        synchronized (compiledScripts) {
+            if (compiledScripts.containsKey(key)) {
+                return (MapcalcExpression) compiledScripts.get(key);
+            }
+        }
+        MapcalcExpression expression = MapcalcExpression.compile(script);
+        synchronized (compiledScripts) {
+            compiledScripts.put(key, expression);
+        }
+        return expression;
+    }
+
+    private static Jiffle getJiffle( String script ) throws Exception {
+        String key = "jiffle:" + script;
+        synchronized (compiledScripts) {
+            Jiffle jiffle = (Jiffle) compiledScripts.get(key);
+            if (jiffle != null) {
+                return jiffle;
+            }
+        }
+        Jiffle jiffle = new Jiffle();
+        jiffle.setScript(script);
+        jiffle.compile();
+        synchronized (compiledScripts) {
+            compiledScripts.put(key, jiffle);
+        }
+        return jiffle;
+    }
+
     private static CoordinateTransform getTransform( Rectangle2D worldBounds, Rectangle imageBounds ) {
         if (worldBounds == null || worldBounds.isEmpty()) {
             throw new IllegalArgumentException("worldBounds must not be null or empty");
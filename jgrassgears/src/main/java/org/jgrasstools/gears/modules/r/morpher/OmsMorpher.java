@@ -48,10 +48,10 @@ import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
-import org.jgrasstools.gears.libs.modules.GridNode;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.modules.r.filter.KernelEngine;
 import org.jgrasstools.gears.modules.utils.BinaryFast;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -87,6 +87,10 @@ public class OmsMorpher extends JGTModel {
     @In
     public int pIterations = 3;
 
+    @Description("The number of threads to use.")
+    @In
+    public int pMaxThreads = 1;
+
     @Description("The resulting map.")
     @Out
     public GridCoverage2D outMap = null;
@@ -125,13 +129,13 @@ public class OmsMorpher extends JGTModel {
             prune(inWR, regionMap, outWR, MorpherHelp.DEFAULT_PRUNE_KERNEL, pIterations);
         } else {
             if (pMode.equals(DILATE)) {
-                dilate(inWR, regionMap, outWR, pKernel, doBinary, pm);
+                dilate(inWR, regionMap, outWR, pKernel, doBinary, pMaxThreads, pm);
             } else if (pMode.equals(ERODE)) {
-                erode(inWR, regionMap, outWR, pKernel, pm);
+                erode(inWR, regionMap, outWR, pKernel, pMaxThreads, pm);
             } else if (pMode.equals(OPEN)) {
-                open(inWR, regionMap, outWR, pKernel, doBinary, pm);
+                open(inWR, regionMap, outWR, pKernel, doBinary, pMaxThreads, pm);
             } else if (pMode.equals(CLOSE)) {
-                close(inWR, regionMap, outWR, pKernel, doBinary, pm);
+                close(inWR, regionMap, outWR, pKernel, doBinary, pMaxThreads, pm);
             } else {
                 throw new ModelsIllegalargumentException("Could not recognize mode.", this, pm);
             }
@@ -151,56 +155,41 @@ public class OmsMorpher extends JGTModel {
      */
     public static void dilate( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
             IJGTProgressMonitor pm ) {
+        dilate(inWR, regionMap, outWR, kernelArray, binary, 1, pm);
+    }
+
+    /**
+     * Morphologically dilates an input raster by a given kernel. 
+     * 
+     * <p>Novalue cells get the max of the valid cells covered by the kernel, 
+     * valid cells are left untouched. For binary maps the max is the
+     * value itself, so the binary mode gives the same result.</p>
+     * 
+     * @param inWR the input raster.
+     * @param regionMap the {@link RegionMap}.
+     * @param outWR the raster to modify.
+     * @param kernelArray the kernel to use.
+     * @param binary if <code>true</code>, binary mode is used.
+     * @param threads the number of threads to use.
+     * @param pm 
+     */
+    public static void dilate( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
+            int threads, IJGTProgressMonitor pm ) {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        double xres = regionMap.getXres();
-        double yres = regionMap.getYres();
-
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
 
-        int[][] kernel = MorpherHelp.getSquareKernelMatrix(kernelArray);
+        boolean[][] shape = KernelEngine.toShape(MorpherHelp.getSquareKernelMatrix(kernelArray));
+        double[] inData = KernelEngine.getData(inWR);
 
-        pm.beginTask("Perform dilation...", cols);
-        for( int c = 0; c < cols; c++ ) {
-            for( int r = 0; r < rows; r++ ) {
-                GridNode node = new GridNode(inIter, cols, rows, xres, yres, c, r);
-                if (!node.isValid()) {
-                    double[][] nodeNeighbours = node.getWindow(kernel.length, false);
-                    // apply the kernel
-                    boolean set = false;
-                    boolean doBreak = false;
-                    double max = Double.NEGATIVE_INFINITY;
-                    for( int kr = 0; kr < kernel.length; kr++ ) {
-                        for( int kc = 0; kc < kernel[0].length; kc++ ) {
-                            if (kernel[kr][kc] == 1) {
-                                // valid kernel value
-                                if (!isNovalue(nodeNeighbours[kr][kc]) && nodeNeighbours[kr][kc] > max) {
-                                    max = nodeNeighbours[kr][kc];
-                                    set = true;
-                                    if (binary) {
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        if (doBreak) {
-                            break;
-                        }
-                    }
-                    if (set) {
-                        node.setValueInMap(outIter, max);
-                    } else {
-                        node.setValueInMap(outIter, JGTConstants.doubleNovalue);
-                    }
-                    continue;
-                } else {
-                    node.setValueInMap(outIter, node.elevation);
-                }
+        pm.message("Perform dilation...");
+        KernelEngine engine = new KernelEngine(cols, rows, threads, pm);
+        double[] maxData = engine.max(inData, shape);
+        for( int i = 0; i < inData.length; i++ ) {
+            if (!isNovalue(inData[i])) {
+                maxData[i] = inData[i];
             }
-            pm.worked(1);
         }
-        pm.done();
+        KernelEngine.setData(outWR, maxData);
     }
 
     /**
@@ -213,55 +202,52 @@ public class OmsMorpher extends JGTModel {
      */
     public static void erode( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray,
             IJGTProgressMonitor pm ) {
+        erode(inWR, regionMap, outWR, kernelArray, 1, pm);
+    }
+
+    /**
+     * Morphologically erodes an input raster by a given kernel. 
+     * 
+     * <p>Valid cells get the min of the cells covered by the kernel, novalues being 
+     * the absolute min.</p>
+     * 
+     * @param inWR the input raster.
+     * @param regionMap the {@link RegionMap}.
+     * @param outWR the raster to modify.
+     * @param kernelArray the kernel to use.
+     * @param threads the number of threads to use.
+     */
+    public static void erode( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, int threads,
+            IJGTProgressMonitor pm ) {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        double xres = regionMap.getXres();
-        double yres = regionMap.getYres();
-
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
 
         int[][] kernel = MorpherHelp.getSquareKernelMatrix(kernelArray);
+        boolean[][] shape = KernelEngine.toShape(kernel);
+        boolean emptyKernel = true;
+        for( int[] kernelRow : kernel ) {
+            for( int k : kernelRow ) {
+                if (k == 1) {
+                    emptyKernel = false;
+                }
+            }
+        }
+        double[] inData = KernelEngine.getData(inWR);
 
-        pm.beginTask("Perform erosion...", cols);
-        for( int c = 0; c < cols; c++ ) {
-            for( int r = 0; r < rows; r++ ) {
-                GridNode node = new GridNode(inIter, cols, rows, xres, yres, c, r);
-                if (node.isValid()) {
-                    double[][] nodeNeighbours = node.getWindow(kernel.length, false);
-                    // apply the kernel
-                    boolean set = false;
-                    double min = Double.POSITIVE_INFINITY;
-                    for( int kr = 0; kr < kernel.length; kr++ ) {
-                        for( int kc = 0; kc < kernel[0].length; kc++ ) {
-                            if (kernel[kr][kc] == 1) {
-                                // valid kernel value
-                                if (isNovalue(nodeNeighbours[kr][kc])) {
-                                    // novalue is the absolute min
-                                    min = doubleNovalue;
-                                    set = true;
-                                    break;
-                                } else if (nodeNeighbours[kr][kc] < min) {
-                                    min = nodeNeighbours[kr][kc];
-                                    set = true;
-                                }
-                            }
-                        }
-                        if (isNovalue(min)) {
-                            break;
-                        }
-                    }
-                    if (set) {
-                        node.setValueInMap(outIter, min);
-                    } else {
-                        node.setValueInMap(outIter, node.elevation);
-                    }
-                    continue;
+        pm.message("Perform erosion...");
+        double[] minData;
+        if (emptyKernel) {
+            minData = inData;
+        } else {
+            KernelEngine engine = new KernelEngine(cols, rows, threads, pm);
+            minData = engine.min(inData, shape);
+            for( int i = 0; i < inData.length; i++ ) {
+                if (isNovalue(inData[i])) {
+                    minData[i] = doubleNovalue;
                 }
             }
-            pm.worked(1);
         }
-        pm.done();
+        KernelEngine.setData(outWR, minData);
     }
 
     /**
@@ -275,10 +261,25 @@ public class OmsMorpher extends JGTModel {
      */
     public static void open( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
             IJGTProgressMonitor pm ) {
-        erode(inWR, regionMap, outWR, kernelArray, pm);
+        open(inWR, regionMap, outWR, kernelArray, binary, 1, pm);
+    }
+
+    /**
+     * Morphologically opens an input raster by a given kernel. 
+     * 
+     * @param inWR the input raster.
+     * @param regionMap the {@link RegionMap}.
+     * @param outWR the raster to modify.
+     * @param kernelArray the kernel to use.
+     * @param binary if <code>true</code>, binary mode is used.
+     * @param threads the number of threads to use.
+     */
+    public static void open( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
+            int threads, IJGTProgressMonitor pm ) {
+        erode(inWR, regionMap, outWR, kernelArray, threads, pm);
         inWR.setDataElements(0, 0, outWR);
         clearRaster(regionMap, outWR);
-        dilate(inWR, regionMap, outWR, kernelArray, binary, pm);
+        dilate(inWR, regionMap, outWR, kernelArray, binary, threads, pm);
     }
 
     /**
@@ -292,10 +293,25 @@ public class OmsMorpher extends JGTModel {
      */
     public static void close( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
             IJGTProgressMonitor pm ) {
-        dilate(inWR, regionMap, outWR, kernelArray, binary, pm);
+        close(inWR, regionMap, outWR, kernelArray, binary, 1, pm);
+    }
+
+    /**
+     * Morphologically closes an input raster by a given kernel. 
+     * 
+     * @param inWR the input raster.
+     * @param regionMap the {@link RegionMap}.
+     * @param outWR the raster to modify.
+     * @param kernelArray the kernel to use.
+     * @param binary if <code>true</code>, binary mode is used.
+     * @param threads the number of threads to use.
+     */
+    public static void close( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[] kernelArray, boolean binary,
+            int threads, IJGTProgressMonitor pm ) {
+        dilate(inWR, regionMap, outWR, kernelArray, binary, threads, pm);
         inWR.setDataElements(0, 0, outWR);
         clearRaster(regionMap, outWR);
-        erode(inWR, regionMap, outWR, kernelArray, pm);
+        erode(inWR, regionMap, outWR, kernelArray, threads, pm);
     }
 
     public static void skeletonize( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[][] kernels ) {
@@ -350,8 +366,8 @@ public class OmsMorpher extends JGTModel {
 
     private static void clearRaster( RegionMap regionMap, WritableRaster outWR ) {
         // clear raster
-        for( int c = 0; c < regionMap.getCols(); c++ ) {
-            for( int r = 0; r < regionMap.getRows(); r++ ) {
+        for( int r = 0; r < regionMap.getRows(); r++ ) {
+            for( int c = 0; c < regionMap.getCols(); c++ ) {
                 outWR.setSample(c, r, 0, doubleNovalue);
             }
         }
@@ -27,19 +27,24 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_LICE
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_IN_RASTER_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_OUT_FILE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_OUT_RASTER_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_CODE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_COLS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_EAST_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_INTERPOLATION_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_NORTH_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_ROWS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_SOUTH_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_TOLERANCE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_WEST_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.BICUBIC;
 import static org.jgrasstools.gears.libs.modules.Variables.BILINEAR;
 import static org.jgrasstools.gears.libs.modules.Variables.NEAREST_NEIGHTBOUR;
 
+import java.awt.image.WritableRaster;
+
 import javax.media.jai.Interpolation;
 
 import oms3.annotations.Author;
@@ -56,14 +61,21 @@ import oms3.annotations.Status;
 import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
-import org.geotools.coverage.processing.Operations;
+import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
+import org.jgrasstools.gears.io.rasterwriter.ArcGridStreamWriter;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.modules.r.rasterreprojector.ReprojectionEngine.TileHandler;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 
 @Description(OMSRASTERREPROJECTOR_DESCRIPTION)
 @Documentation(OMSRASTERREPROJECTOR_DOCUMENTATION)
@@ -119,39 +131,96 @@ public class OmsRasterReprojector extends JGTModel {
     @In
     public String pInterpolation = NEAREST_NEIGHTBOUR;
 
+    @Description(OMSRASTERREPROJECTOR_P_TOLERANCE_DESCRIPTION)
+    @In
+    public double pTolerance = ReprojectionEngine.DEFAULT_TOLERANCE;
+
+    @Description(OMSRASTERREPROJECTOR_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSRASTERREPROJECTOR_OUT_FILE_DESCRIPTION)
+    @In
+    public String outFile = null;
+
     @Description(OMSRASTERREPROJECTOR_OUT_RASTER_DESCRIPTION)
     @Out
     public GridCoverage2D outRaster = null;
 
+    private boolean hasWritten = false;
+
     @Execute
     public void process() throws Exception {
-        if (!concatOr(outRaster == null, doReset)) {
+        if (!concatOr(outRaster == null && !hasWritten, doReset)) {
             return;
         }
+        checkNull(inRaster, pCode);
+        if (outFile != null && !outFile.toLowerCase().endsWith("." + JGTConstants.ESRIGRID)) {
+            throw new ModelsIllegalargumentException("The reprojected raster can be streamed only to esri ascii grids.", this,
+                    pm);
+        }
 
         CoordinateReferenceSystem targetCrs = CRS.decode(pCode);
 
-        Interpolation interpolation = Interpolation.getInstance(Interpolation.INTERP_NEAREST);
+        int interpolation = Interpolation.INTERP_NEAREST;
         if (pInterpolation.equals(BILINEAR)) {
-            interpolation = Interpolation.getInstance(Interpolation.INTERP_BILINEAR);
+            interpolation = Interpolation.INTERP_BILINEAR;
         } else if (pInterpolation.equals(BICUBIC)) {
-            interpolation = Interpolation.getInstance(Interpolation.INTERP_BICUBIC);
+            interpolation = Interpolation.INTERP_BICUBIC;
         }
 
         GridGeometry2D gridGeometry = null;
         if (pNorth != null && pSouth != null && pWest != null && pEast != null && pRows != null && pCols != null) {
             gridGeometry = CoverageUtilities.gridGeometryFromRegionValues(pNorth, pSouth, pEast, pWest, pCols, pRows, targetCrs);
             pm.message("Using supplied gridgeometry: " + gridGeometry);
-        }
-        pm.beginTask("Reprojecting...", IJGTProgressMonitor.UNKNOWN);
-
-        if (gridGeometry == null) {
-            outRaster = (GridCoverage2D) Operations.DEFAULT.resample(inRaster, targetCrs, null, interpolation);
         } else {
-            outRaster = (GridCoverage2D) Operations.DEFAULT.resample(inRaster, targetCrs, gridGeometry, interpolation);
+            // same size of the input, on the reprojected envelope
+            GridGeometry2D inGridGeometry = inRaster.getGridGeometry();
+            GeneralEnvelope targetEnvelope = CRS.transform(inRaster.getEnvelope(), targetCrs);
+            gridGeometry = new GridGeometry2D(new GridEnvelope2D(0, 0, inGridGeometry.getGridRange2D().width,
+                    inGridGeometry.getGridRange2D().height), targetEnvelope);
         }
-        pm.done();
-
+        RegionMap regionMap = CoverageUtilities.gridGeometry2RegionParamsMap(gridGeometry);
+        final int cols = regionMap.getCols();
+        final int rows = regionMap.getRows();
+
+        /*
+         * from the cell corners of the output grid to the cell corners of the input grid
+         */
+        MathTransform gridToTargetCrs = gridGeometry.getGridToCRS2D(PixelOrientation.UPPER_LEFT);
+        MathTransform targetCrsToSourceCrs = CRS.findMathTransform(targetCrs, inRaster.getCoordinateReferenceSystem(), true);
+        MathTransform sourceCrsToGrid = inRaster.getGridGeometry().getCRSToGrid2D(PixelOrientation.UPPER_LEFT);
+        MathTransform transform = ConcatenatedTransform.create(
+                ConcatenatedTransform.create(gridToTargetCrs, targetCrsToSourceCrs), sourceCrsToGrid);
+
+        /*
+         * the tiles are either placed in the output raster or written to the file
+         */
+        final WritableRaster raster = outFile == null ? CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
+                null) : null;
+        final ArcGridStreamWriter writer = outFile == null ? null : new ArcGridStreamWriter(outFile, regionMap);
+        TileHandler handler = new TileHandler(){
+            public void handle( int x, int y, int width, int height, double[] values ) throws Exception {
+                if (writer != null) {
+                    writer.write(x, y, width, height, values);
+                } else {
+                    raster.setSamples(x, y, width, height, 0, values);
+                }
+            }
+        };
+
+        ReprojectionEngine engine = new ReprojectionEngine(inRaster.getRenderedImage(), transform, cols, rows, interpolation,
+                pTolerance, ReprojectionEngine.DEFAULT_TILE_SIZE, pMaxThreads, pm);
+        try {
+            engine.resample(handler);
+        } finally {
+            if (writer != null)
+                writer.close();
+        }
+        if (raster != null) {
+            outRaster = CoverageUtilities.buildCoverage(inRaster.getName().toString(), raster, regionMap, targetCrs);
+        }
+        hasWritten = writer != null;
     }
 
 }
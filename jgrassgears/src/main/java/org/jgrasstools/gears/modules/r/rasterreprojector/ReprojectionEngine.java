@@ -0,0 +1,445 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.rasterreprojector;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+
+import javax.media.jai.Interpolation;
+
+import org.jgrasstools.gears.libs.modules.OrderedTileExecutor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Tiled raster resampling through a coordinate transform.
+ *
+ * <p>
+ * The output grid is processed tile by tile, in parallel. The transform is not applied to
+ * every cell: it is computed on the corners of the tile and linearly interpolated in
+ * between, as long as the interpolated positions of the cells in the middle of the sides
+ * and of the tile are within the tolerance from the transformed ones. Else the tile is
+ * split in four blocks and so on, down to the exact transform of every cell. Only the
+ * part of the input image needed by a tile is read, the tiles are handed over in row
+ * order to the {@link TileHandler}, so that they can be streamed to a writer.
+ * </p>
+ * <p>
+ * Cells are sampled at their center with nearest neighbour, bilinear or bicubic
+ * interpolation. Cells falling outside of the input image or on a novalue are novalues,
+ * novalues among the other cells of the kernel are left out and the weights of the
+ * remaining ones rescaled.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ReprojectionEngine {
+
+    /**
+     * The default tile size in cells.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * The default tolerance of the interpolated positions, in input cells.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.125;
+
+    /**
+     * Receiver of the resampled tiles.
+     */
+    public static interface TileHandler {
+        /**
+         * Handles a tile, called by one thread at a time in row order.
+         *
+         * @param x the first column of the tile.
+         * @param y the first row of the tile.
+         * @param width the tile width.
+         * @param height the tile height.
+         * @param values the values of the tile, row by row.
+         * @throws Exception
+         */
+        public void handle( int x, int y, int width, int height, double[] values ) throws Exception;
+    }
+
+    private final RenderedImage image;
+    private final MathTransform transform;
+    private final int cols;
+    private final int rows;
+    private final int interpolation;
+    private final double tolerance;
+    private final int tileSize;
+    private final int threads;
+    private IJGTProgressMonitor pm = new LogProgressMonitor();
+
+    private int tileCols;
+
+    /**
+     * Constructor.
+     *
+     * @param image the input image, the first band is used.
+     * @param transform the transform from the output grid to the input image, both in
+     *          pixel coordinates with the cell corners at integer column and row.
+     * @param cols the columns of the output grid.
+     * @param rows the rows of the output grid.
+     * @param interpolation the interpolation type, one of {@link Interpolation#INTERP_NEAREST},
+     *          {@link Interpolation#INTERP_BILINEAR} and {@link Interpolation#INTERP_BICUBIC}.
+     * @param tolerance the tolerance of the interpolated positions, in input cells. With
+     *          0 every cell is transformed.
+     * @param tileSize the tile size in cells.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public ReprojectionEngine( RenderedImage image, MathTransform transform, int cols, int rows, int interpolation,
+            double tolerance, int tileSize, int threads, IJGTProgressMonitor pm ) {
+        this.image = image;
+        this.transform = transform;
+        this.cols = cols;
+        this.rows = rows;
+        this.interpolation = interpolation;
+        this.tolerance = tolerance;
+        this.tileSize = Math.max(1, tileSize);
+        this.threads = Math.max(1, threads);
+        if (pm != null)
+            this.pm = pm;
+    }
+
+    /**
+     * Resamples the output grid.
+     *
+     * @param handler the receiver of the tiles.
+     * @throws Exception
+     */
+    public void resample( final TileHandler handler ) throws Exception {
+        if (cols < 1 || rows < 1) {
+            return;
+        }
+        tileCols = (cols + tileSize - 1) / tileSize;
+        int tileRows = (rows + tileSize - 1) / tileSize;
+        int tilesNum = tileCols * tileRows;
+
+        OrderedTileExecutor<double[]> executor = new OrderedTileExecutor<double[]>(threads, "Reprojecting...",
+                "Error during the reprojection: ", this, pm){
+            protected double[] process( int tile ) {
+                return resampleTile(tile);
+            }
+            protected void consume( int tile, double[] values ) throws Exception {
+                int x = (tile % tileCols) * tileSize;
+                int y = (tile / tileCols) * tileSize;
+                handler.handle(x, y, Math.min(tileSize, cols - x), Math.min(tileSize, rows - y), values);
+            }
+        };
+        executor.execute(tilesNum);
+    }
+
+    private double[] resampleTile( int tile ) {
+        int x0 = (tile % tileCols) * tileSize;
+        int y0 = (tile / tileCols) * tileSize;
+        int w = Math.min(tileSize, cols - x0);
+        int h = Math.min(tileSize, rows - y0);
+
+        double[] positions = positions(x0, y0, w, h);
+        int cellsNum = w * h;
+        double[] values = new double[cellsNum];
+
+        /*
+         * read the part of the image covered by the tile, with the
+         * margin needed by the kernel
+         */
+        int margin = interpolation == Interpolation.INTERP_BICUBIC ? 2 : 1;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < cellsNum; i++ ) {
+            double x = positions[2 * i];
+            double y = positions[2 * i + 1];
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                continue;
+            }
+            if (!isNovalue(x) && !isNovalue(y)) {
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        int imageMinX = image.getMinX();
+        int imageMinY = image.getMinY();
+        Rectangle read = new Rectangle(imageMinX, imageMinY, image.getWidth(), image.getHeight());
+        if (minX <= maxX) {
+            int rx1 = (int) Math.max(imageMinX, Math.floor(minX) - margin);
+            int ry1 = (int) Math.max(imageMinY, Math.floor(minY) - margin);
+            int rx2 = (int) Math.min(imageMinX + image.getWidth(), Math.floor(maxX) + margin + 1);
+            int ry2 = (int) Math.min(imageMinY + image.getHeight(), Math.floor(maxY) + margin + 1);
+            read = read.intersection(new Rectangle(rx1, ry1, rx2 - rx1, ry2 - ry1));
+        }
+        if (read.isEmpty()) {
+            for( int i = 0; i < cellsNum; i++ ) {
+                values[i] = doubleNovalue;
+            }
+            return values;
+        }
+        double[] source = image.getData(read).getSamples(read.x, read.y, read.width, read.height, 0, (double[]) null);
+
+        Kernel kernel = new Kernel(source, read);
+        for( int i = 0; i < cellsNum; i++ ) {
+            double x = positions[2 * i];
+            double y = positions[2 * i + 1];
+            if (isNovalue(x) || isNovalue(y)) {
+                values[i] = doubleNovalue;
+                continue;
+            }
+            switch( interpolation ) {
+            case Interpolation.INTERP_BILINEAR:
+                values[i] = kernel.bilinear(x, y);
+                break;
+            case Interpolation.INTERP_BICUBIC:
+                values[i] = kernel.bicubic(x, y);
+                break;
+            default:
+                values[i] = kernel.nearest(x, y);
+                break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Computes the input positions of the centers of the tile cells.
+     *
+     * @return the positions, interleaved.
+     */
+    private double[] positions( int x0, int y0, int w, int h ) {
+        double[] positions = new double[2 * w * h];
+        if (tolerance <= 0) {
+            for( int r = 0; r < h; r++ ) {
+                for( int c = 0; c < w; c++ ) {
+                    positions[2 * (r * w + c)] = x0 + c + 0.5;
+                    positions[2 * (r * w + c) + 1] = y0 + r + 0.5;
+                }
+            }
+            transform(positions);
+            return positions;
+        }
+
+        double[] corners = {//
+        x0 + 0.5, y0 + 0.5, //
+                x0 + w - 0.5, y0 + 0.5, //
+                x0 + 0.5, y0 + h - 0.5, //
+                x0 + w - 0.5, y0 + h - 0.5};
+        transform(corners);
+        approximate(positions, x0, y0, w, 0, 0, w - 1, h - 1, corners);
+        return positions;
+    }
+
+    /**
+     * Fills the positions of a block of cells interpolating the ones of its corners, if
+     * the positions of the cells in the middle of the sides and of the block are within the
+     * tolerance, else splits the block in four.
+     *
+     * @param corners the positions of the top left, top right, bottom left and bottom right cells.
+     */
+    private void approximate( double[] positions, int x0, int y0, int w, int c0, int r0, int c1, int r1, double[] corners ) {
+        if (c1 - c0 <= 1 && r1 - r0 <= 1) {
+            setPosition(positions, w, c0, r0, corners[0], corners[1]);
+            setPosition(positions, w, c1, r0, corners[2], corners[3]);
+            setPosition(positions, w, c0, r1, corners[4], corners[5]);
+            setPosition(positions, w, c1, r1, corners[6], corners[7]);
+            return;
+        }
+        int cm = (c0 + c1) / 2;
+        int rm = (r0 + r1) / 2;
+        double[] middles = {//
+        x0 + cm + 0.5, y0 + r0 + 0.5, //
+                x0 + c0 + 0.5, y0 + rm + 0.5, //
+                x0 + cm + 0.5, y0 + rm + 0.5, //
+                x0 + c1 + 0.5, y0 + rm + 0.5, //
+                x0 + cm + 0.5, y0 + r1 + 0.5};
+        transform(middles);
+
+        double fx = c1 == c0 ? 0 : (cm - c0) / (double) (c1 - c0);
+        double fy = r1 == r0 ? 0 : (rm - r0) / (double) (r1 - r0);
+        double[] fxs = {fx, 0, fx, 1, fx};
+        double[] fys = {0, fy, fy, fy, 1};
+        boolean fits = true;
+        for( int i = 0; i < 5 && fits; i++ ) {
+            double dx = bilinear(corners, 0, fxs[i], fys[i]) - middles[2 * i];
+            double dy = bilinear(corners, 1, fxs[i], fys[i]) - middles[2 * i + 1];
+            // novalues make the comparison fail and the block smaller
+            fits = dx * dx + dy * dy <= tolerance * tolerance;
+        }
+
+        if (fits) {
+            for( int r = r0; r <= r1; r++ ) {
+                double ry = r1 == r0 ? 0 : (r - r0) / (double) (r1 - r0);
+                double leftX = corners[0] + (corners[4] - corners[0]) * ry;
+                double leftY = corners[1] + (corners[5] - corners[1]) * ry;
+                double rightX = corners[2] + (corners[6] - corners[2]) * ry;
+                double rightY = corners[3] + (corners[7] - corners[3]) * ry;
+                for( int c = c0; c <= c1; c++ ) {
+                    double cx = c1 == c0 ? 0 : (c - c0) / (double) (c1 - c0);
+                    setPosition(positions, w, c, r, leftX + (rightX - leftX) * cx, leftY + (rightY - leftY) * cx);
+                }
+            }
+            return;
+        }
+
+        approximate(positions, x0, y0, w, c0, r0, cm, rm, block(corners, 0, middles, 0, middles, 2, middles, 4));
+        approximate(positions, x0, y0, w, cm, r0, c1, rm, block(middles, 0, corners, 2, middles, 4, middles, 6));
+        approximate(positions, x0, y0, w, c0, rm, cm, r1, block(middles, 2, middles, 4, corners, 4, middles, 8));
+        approximate(positions, x0, y0, w, cm, rm, c1, r1, block(middles, 4, middles, 6, middles, 8, corners, 6));
+    }
+
+    /**
+     * @return the corners of a block, from the positions in the given arrays.
+     */
+    private static double[] block( double[] topLeft, int tl, double[] topRight, int tr, double[] bottomLeft, int bl,
+            double[] bottomRight, int br ) {
+        return new double[]{topLeft[tl], topLeft[tl + 1], topRight[tr], topRight[tr + 1], bottomLeft[bl], bottomLeft[bl + 1],
+                bottomRight[br], bottomRight[br + 1]};
+    }
+
+    private static double bilinear( double[] corners, int offset, double fx, double fy ) {
+        double top = corners[offset] + (corners[2 + offset] - corners[offset]) * fx;
+        double bottom = corners[4 + offset] + (corners[6 + offset] - corners[4 + offset]) * fx;
+        return top + (bottom - top) * fy;
+    }
+
+    private static void setPosition( double[] positions, int w, int c, int r, double x, double y ) {
+        positions[2 * (r * w + c)] = x;
+        positions[2 * (r * w + c) + 1] = y;
+    }
+
+    /**
+     * Transforms the positions in place, the ones that can't be transformed become novalues.
+     */
+    private void transform( double[] positions ) {
+        double[] cells = positions.clone();
+        try {
+            transform.transform(cells, 0, positions, 0, positions.length / 2);
+        } catch (TransformException e) {
+            double[] point = new double[2];
+            for( int i = 0; i < positions.length; i += 2 ) {
+                point[0] = cells[i];
+                point[1] = cells[i + 1];
+                try {
+                    transform.transform(point, 0, point, 0, 1);
+                    positions[i] = point[0];
+                    positions[i + 1] = point[1];
+                } catch (TransformException e1) {
+                    positions[i] = doubleNovalue;
+                    positions[i + 1] = doubleNovalue;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sampling of the read part of the image.
+     */
+    private static class Kernel {
+        private final double[] source;
+        private final int minX;
+        private final int minY;
+        private final int width;
+        private final int height;
+
+        Kernel( double[] source, Rectangle read ) {
+            this.source = source;
+            this.minX = read.x;
+            this.minY = read.y;
+            this.width = read.width;
+            this.height = read.height;
+        }
+
+        private double value( int x, int y ) {
+            int c = x - minX;
+            int r = y - minY;
+            if (c < 0 || c >= width || r < 0 || r >= height) {
+                return doubleNovalue;
+            }
+            return source[r * width + c];
+        }
+
+        double nearest( double x, double y ) {
+            return value((int) Math.floor(x), (int) Math.floor(y));
+        }
+
+        double bilinear( double x, double y ) {
+            if (isNovalue(nearest(x, y))) {
+                return doubleNovalue;
+            }
+            double u = x - 0.5;
+            double v = y - 0.5;
+            int c = (int) Math.floor(u);
+            int r = (int) Math.floor(v);
+            double fx = u - c;
+            double fy = v - r;
+            double[] wx = {1 - fx, fx};
+            double[] wy = {1 - fy, fy};
+            return weighted(c, r, wx, wy);
+        }
+
+        double bicubic( double x, double y ) {
+            if (isNovalue(nearest(x, y))) {
+                return doubleNovalue;
+            }
+            double u = x - 0.5;
+            double v = y - 0.5;
+            int c = (int) Math.floor(u);
+            int r = (int) Math.floor(v);
+            double[] wx = cubicWeights(u - c);
+            double[] wy = cubicWeights(v - r);
+            return weighted(c - 1, r - 1, wx, wy);
+        }
+
+        private double weighted( int c, int r, double[] wx, double[] wy ) {
+            double sum = 0;
+            double weights = 0;
+            for( int j = 0; j < wy.length; j++ ) {
+                for( int i = 0; i < wx.length; i++ ) {
+                    double value = value(c + i, r + j);
+                    if (!isNovalue(value)) {
+                        double weight = wx[i] * wy[j];
+                        sum += value * weight;
+                        weights += weight;
+                    }
+                }
+            }
+            return sum / weights;
+        }
+
+        /**
+         * Weights of the cubic convolution (a = -0.5) for the four cells around the position.
+         */
+        private static double[] cubicWeights( double f ) {
+            double f2 = f * f;
+            double f3 = f2 * f;
+            return new double[]{//
+            -0.5 * f3 + f2 - 0.5 * f, //
+                    1.5 * f3 - 2.5 * f2 + 1, //
+                    -1.5 * f3 + 2 * f2 + 0.5 * f, //
+                    0.5 * f3 - 0.5 * f2};
+        }
+    }
+}
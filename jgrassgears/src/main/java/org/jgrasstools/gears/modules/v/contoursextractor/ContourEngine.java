@@ -0,0 +1,527 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.v.contoursextractor;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jgrasstools.gears.libs.modules.OrderedTileExecutor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Tiled contour lines extraction.
+ *
+ * <p>
+ * The cells between the pixel centers are processed with marching squares tile by tile,
+ * reading from the image only the pixels of the tile. Tiles are traced in parallel and
+ * stitched in row order: the lines are joined through the grid edge their ends lie on, which
+ * is the same for the tiles sharing a seam, so that no coordinate matching is needed. A line
+ * is passed to the {@link ContourHandler} as soon as it can't be extended any more, only the
+ * lines crossing the seams still to be processed are kept in memory.
+ * </p>
+ * <p>
+ * Ambiguous saddle cells are resolved with the average of the four corners. Cells with a
+ * novalue corner are skipped, the lines end at their border.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ContourEngine {
+
+    /**
+     * The default tile size in cells.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * Receiver of the extracted contour lines.
+     */
+    public static interface ContourHandler {
+        /**
+         * Handles a contour line, called by one thread at a time.
+         *
+         * @param level the contour level.
+         * @param coordinates the line coordinates in grid space, the pixel centers
+         *          being at integer column and row. Closed lines end with their first coordinate.
+         * @throws Exception
+         */
+        public void handle( double level, Coordinate[] coordinates ) throws Exception;
+    }
+
+    /*
+     * marching squares segments as pairs of cell sides (top, right, bottom, left), by case
+     * with top left, top right, bottom right and bottom left corners as bits from the highest
+     */
+    private static final int TOP = 0;
+    private static final int RIGHT = 1;
+    private static final int BOTTOM = 2;
+    private static final int LEFT = 3;
+    private static final int[][] SEGMENTS = {//
+    {}, {LEFT, BOTTOM}, {BOTTOM, RIGHT}, {LEFT, RIGHT}, //
+            {TOP, RIGHT}, null, {TOP, BOTTOM}, {TOP, LEFT}, //
+            {TOP, LEFT}, {TOP, BOTTOM}, null, {TOP, RIGHT}, //
+            {LEFT, RIGHT}, {BOTTOM, RIGHT}, {LEFT, BOTTOM}, {}};
+
+    private final RenderedImage image;
+    private final int width;
+    private final int height;
+    private final double[] levels;
+    private final int tileSize;
+    private final int threads;
+    private IJGTProgressMonitor pm = new LogProgressMonitor();
+
+    private int cellCols;
+    private int cellRows;
+    private int tileCols;
+
+    /*
+     * stitching state: fragments by the key of their open ends and the keys waiting for a tile
+     */
+    private final HashMap<Long, Fragment> pending = new HashMap<Long, Fragment>();
+    private final HashMap<Integer, List<Long>> waiting = new HashMap<Integer, List<Long>>();
+
+    /**
+     * Constructor.
+     *
+     * @param image the image to contour, the first band is used.
+     * @param levels the contour levels.
+     * @param tileSize the tile size in cells.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public ContourEngine( RenderedImage image, double[] levels, int tileSize, int threads, IJGTProgressMonitor pm ) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.levels = levels;
+        this.tileSize = Math.max(2, tileSize);
+        this.threads = Math.max(1, threads);
+        if (pm != null)
+            this.pm = pm;
+    }
+
+    /**
+     * Extracts the contour lines.
+     *
+     * @param handler the receiver of the lines.
+     * @throws Exception
+     */
+    public void extract( final ContourHandler handler ) throws Exception {
+        cellCols = width - 1;
+        cellRows = height - 1;
+        if (cellCols < 1 || cellRows < 1 || levels.length == 0) {
+            return;
+        }
+        tileCols = (cellCols + tileSize - 1) / tileSize;
+        int tileRows = (cellRows + tileSize - 1) / tileSize;
+        int tilesNum = tileCols * tileRows;
+
+        OrderedTileExecutor<List<Fragment>> executor = new OrderedTileExecutor<List<Fragment>>(threads,
+                "Extracting contours...", "Error during the contours extraction: ", this, pm){
+            protected List<Fragment> process( int tile ) {
+                return trace(tile);
+            }
+            protected void consume( int tile, List<Fragment> fragments ) throws Exception {
+                stitch(tile, fragments, handler);
+            }
+        };
+        try {
+            executor.execute(tilesNum);
+        } finally {
+            pending.clear();
+            waiting.clear();
+        }
+    }
+
+    /**
+     * Traces the contour fragments of a tile for all the levels.
+     */
+    private List<Fragment> trace( int tile ) {
+        int tileX = tile % tileCols;
+        int tileY = tile / tileCols;
+        int c0 = tileX * tileSize;
+        int r0 = tileY * tileSize;
+        int tw = Math.min(tileSize, cellCols - c0);
+        int th = Math.min(tileSize, cellRows - r0);
+        int pw = tw + 1;
+        int ph = th + 1;
+
+        int minX = image.getMinX();
+        int minY = image.getMinY();
+        Raster raster = image.getData(new Rectangle(minX + c0, minY + r0, pw, ph));
+        double[] values = raster.getSamples(minX + c0, minY + r0, pw, ph, 0, (double[]) null);
+
+        /*
+         * local edges: first the horizontal ones, (th + 1) rows of tw, then
+         * the vertical ones, th rows of (tw + 1)
+         */
+        int horizontalNum = ph * tw;
+        int edgesNum = horizontalNum + th * pw;
+        int[] firstSegment = new int[edgesNum];
+        int[] secondSegment = new int[edgesNum];
+        int[] segmentEdges = new int[4 * tw * th];
+
+        List<Fragment> fragments = new ArrayList<Fragment>();
+        for( int l = 0; l < levels.length; l++ ) {
+            double level = levels[l];
+            Arrays.fill(firstSegment, -1);
+            Arrays.fill(secondSegment, -1);
+            int segmentsNum = 0;
+            for( int r = 0; r < th; r++ ) {
+                for( int c = 0; c < tw; c++ ) {
+                    double tl = values[r * pw + c];
+                    double tr = values[r * pw + c + 1];
+                    double br = values[(r + 1) * pw + c + 1];
+                    double bl = values[(r + 1) * pw + c];
+                    if (isNovalue(tl) || isNovalue(tr) || isNovalue(br) || isNovalue(bl)) {
+                        continue;
+                    }
+                    int index = (tl >= level ? 8 : 0) | (tr >= level ? 4 : 0) | (br >= level ? 2 : 0) | (bl >= level ? 1 : 0);
+                    int[] sides = SEGMENTS[index];
+                    if (sides == null) {
+                        boolean centerHigh = (tl + tr + br + bl) / 4.0 >= level;
+                        if (index == 5) {
+                            sides = centerHigh ? new int[]{TOP, LEFT, BOTTOM, RIGHT} : new int[]{TOP, RIGHT, LEFT, BOTTOM};
+                        } else {
+                            sides = centerHigh ? new int[]{TOP, RIGHT, LEFT, BOTTOM} : new int[]{TOP, LEFT, BOTTOM, RIGHT};
+                        }
+                    }
+                    for( int s = 0; s < sides.length; s += 2 ) {
+                        int e1 = localEdge(sides[s], c, r, tw, horizontalNum, pw);
+                        int e2 = localEdge(sides[s + 1], c, r, tw, horizontalNum, pw);
+                        segmentEdges[2 * segmentsNum] = e1;
+                        segmentEdges[2 * segmentsNum + 1] = e2;
+                        link(firstSegment, secondSegment, e1, segmentsNum);
+                        link(firstSegment, secondSegment, e2, segmentsNum);
+                        segmentsNum++;
+                    }
+                }
+            }
+            if (segmentsNum == 0) {
+                continue;
+            }
+
+            /*
+             * chain the segments: first the open lines, starting from edges with a single
+             * segment, then the rings left
+             */
+            boolean[] visited = new boolean[segmentsNum];
+            for( int pass = 0; pass < 2; pass++ ) {
+                for( int s = 0; s < segmentsNum; s++ ) {
+                    if (visited[s]) {
+                        continue;
+                    }
+                    int startEdge;
+                    if (pass == 0) {
+                        int e1 = segmentEdges[2 * s];
+                        int e2 = segmentEdges[2 * s + 1];
+                        if (secondSegment[e1] == -1) {
+                            startEdge = e1;
+                        } else if (secondSegment[e2] == -1) {
+                            startEdge = e2;
+                        } else {
+                            continue;
+                        }
+                    } else {
+                        startEdge = segmentEdges[2 * s];
+                    }
+                    Fragment fragment = new Fragment(l);
+                    int edge = startEdge;
+                    int segment = s;
+                    addCrossing(fragment, edge, values, level, c0, r0, tw, pw, horizontalNum);
+                    while( segment != -1 && !visited[segment] ) {
+                        visited[segment] = true;
+                        edge = segmentEdges[2 * segment] == edge ? segmentEdges[2 * segment + 1] : segmentEdges[2 * segment];
+                        addCrossing(fragment, edge, values, level, c0, r0, tw, pw, horizontalNum);
+                        segment = firstSegment[edge] == segment ? secondSegment[edge] : firstSegment[edge];
+                    }
+                    if (pass == 1) {
+                        fragment.closed = true;
+                    } else {
+                        setEnd(fragment, 0, startEdge, l, c0, r0, tw, th, pw, horizontalNum, tileX, tileY);
+                        setEnd(fragment, 1, edge, l, c0, r0, tw, th, pw, horizontalNum, tileX, tileY);
+                    }
+                    fragments.add(fragment);
+                }
+            }
+        }
+        return fragments;
+    }
+
+    private static int localEdge( int side, int c, int r, int tw, int horizontalNum, int pw ) {
+        switch( side ) {
+        case TOP:
+            return r * tw + c;
+        case BOTTOM:
+            return (r + 1) * tw + c;
+        case LEFT:
+            return horizontalNum + r * pw + c;
+        default:
+            return horizontalNum + r * pw + c + 1;
+        }
+    }
+
+    private static void link( int[] firstSegment, int[] secondSegment, int edge, int segment ) {
+        if (firstSegment[edge] == -1) {
+            firstSegment[edge] = segment;
+        } else {
+            secondSegment[edge] = segment;
+        }
+    }
+
+    /**
+     * Adds the crossing of the level on a local edge, always interpolated from the top or
+     * left pixel, so that tiles sharing the edge get the same coordinate.
+     */
+    private static void addCrossing( Fragment fragment, int edge, double[] values, double level, int c0, int r0, int tw,
+            int pw, int horizontalNum ) {
+        int c;
+        int r;
+        double v0;
+        double v1;
+        double x;
+        double y;
+        if (edge < horizontalNum) {
+            r = edge / tw;
+            c = edge % tw;
+            v0 = values[r * pw + c];
+            v1 = values[r * pw + c + 1];
+            x = c0 + c + (level - v0) / (v1 - v0);
+            y = r0 + r;
+        } else {
+            int e = edge - horizontalNum;
+            r = e / pw;
+            c = e % pw;
+            v0 = values[r * pw + c];
+            v1 = values[(r + 1) * pw + c];
+            x = c0 + c;
+            y = r0 + r + (level - v0) / (v1 - v0);
+        }
+        fragment.add(x, y);
+    }
+
+    /**
+     * Sets an end of a fragment: its key and, if it is on a seam, the tile on the other side.
+     */
+    private void setEnd( Fragment fragment, int end, int edge, int levelIndex, int c0, int r0, int tw, int th, int pw,
+            int horizontalNum, int tileX, int tileY ) {
+        int neighbourTile = -1;
+        long globalEdge;
+        if (edge < horizontalNum) {
+            int r = edge / tw;
+            int c = edge % tw;
+            if (r == 0 && r0 > 0) {
+                neighbourTile = (tileY - 1) * tileCols + tileX;
+            } else if (r == th && r0 + th < cellRows) {
+                neighbourTile = (tileY + 1) * tileCols + tileX;
+            }
+            globalEdge = 2 * ((long) (r0 + r) * width + c0 + c);
+        } else {
+            int e = edge - horizontalNum;
+            int r = e / pw;
+            int c = e % pw;
+            if (c == 0 && c0 > 0) {
+                neighbourTile = tileY * tileCols + tileX - 1;
+            } else if (c == tw && c0 + tw < cellCols) {
+                neighbourTile = tileY * tileCols + tileX + 1;
+            }
+            globalEdge = 2 * ((long) (r0 + r) * width + c0 + c) + 1;
+        }
+        if (neighbourTile != -1) {
+            fragment.keys[end] = globalEdge * levels.length + levelIndex;
+            fragment.neighbourTiles[end] = neighbourTile;
+            fragment.states[end] = Fragment.UNRESOLVED;
+        }
+    }
+
+    /**
+     * Joins the fragments of a tile to the pending ones and hands over the completed lines.
+     */
+    private void stitch( int tile, List<Fragment> fragments, ContourHandler handler ) throws Exception {
+        for( Fragment fragment : fragments ) {
+            if (!fragment.closed) {
+                for( int end = 0; end < 2; end++ ) {
+                    while( fragment.states[end] == Fragment.UNRESOLVED ) {
+                        resolve(tile, fragment, end);
+                    }
+                }
+            }
+            if (fragment.isComplete()) {
+                emit(fragment, handler);
+            }
+        }
+
+        /*
+         * the ends waiting for this tile that didn't find a continuation are final
+         */
+        List<Long> keys = waiting.remove(tile);
+        if (keys != null) {
+            for( Long key : keys ) {
+                Fragment fragment = pending.remove(key);
+                if (fragment == null) {
+                    continue;
+                }
+                int end = fragment.keys[0] == key && fragment.states[0] == Fragment.PENDING ? 0 : 1;
+                fragment.states[end] = Fragment.FINAL;
+                if (fragment.isComplete()) {
+                    emit(fragment, handler);
+                }
+            }
+        }
+    }
+
+    private void resolve( int tile, Fragment fragment, int end ) {
+        long key = fragment.keys[end];
+        Fragment other = pending.remove(key);
+        if (other == null) {
+            if (fragment.neighbourTiles[end] > tile) {
+                fragment.states[end] = Fragment.PENDING;
+                pending.put(key, fragment);
+                List<Long> keys = waiting.get(fragment.neighbourTiles[end]);
+                if (keys == null) {
+                    keys = new ArrayList<Long>();
+                    waiting.put(fragment.neighbourTiles[end], keys);
+                }
+                keys.add(key);
+            } else {
+                fragment.states[end] = Fragment.FINAL;
+            }
+        } else if (other == fragment) {
+            // the two ends met
+            fragment.add(fragment.coordinates[0], fragment.coordinates[1]);
+            fragment.closed = true;
+            fragment.states[0] = Fragment.FINAL;
+            fragment.states[1] = Fragment.FINAL;
+        } else {
+            int otherEnd = other.keys[0] == key && other.states[0] == Fragment.PENDING ? 0 : 1;
+            fragment.join(end, other, otherEnd);
+            // the far end of the other fragment now belongs to this one
+            if (fragment.states[end] == Fragment.PENDING) {
+                pending.put(fragment.keys[end], fragment);
+            }
+        }
+    }
+
+    private void emit( Fragment fragment, ContourHandler handler ) throws Exception {
+        Coordinate[] coordinates = fragment.toCoordinates();
+        if (coordinates.length > 1) {
+            handler.handle(levels[fragment.levelIndex], coordinates);
+        }
+    }
+
+    /**
+     * A piece of contour line, with its coordinates interleaved.
+     */
+    private static class Fragment {
+        static final int FINAL = 0;
+        static final int UNRESOLVED = 1;
+        static final int PENDING = 2;
+
+        final int levelIndex;
+        double[] coordinates = new double[16];
+        int size = 0;
+        boolean closed = false;
+
+        /*
+         * start and end: the key of the seam edge, the tile on the other side and the state
+         */
+        final long[] keys = {-1, -1};
+        final int[] neighbourTiles = {-1, -1};
+        final int[] states = {FINAL, FINAL};
+
+        Fragment( int levelIndex ) {
+            this.levelIndex = levelIndex;
+        }
+
+        void add( double x, double y ) {
+            if (size > 0 && coordinates[size - 2] == x && coordinates[size - 1] == y) {
+                return;
+            }
+            if (size + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[size++] = x;
+            coordinates[size++] = y;
+        }
+
+        boolean isComplete() {
+            return closed || (states[0] == FINAL && states[1] == FINAL);
+        }
+
+        /**
+         * Joins at the given end another fragment, which shares the edge with its given end.
+         * The end takes the key and state of the far end of the other fragment.
+         */
+        void join( int end, Fragment other, int otherEnd ) {
+            if (end == 0) {
+                reverse();
+            }
+            if (otherEnd == 1) {
+                other.reverse();
+            }
+            // the first coordinate of the other is the shared crossing
+            for( int i = 2; i < other.size; i += 2 ) {
+                add(other.coordinates[i], other.coordinates[i + 1]);
+            }
+            keys[1] = other.keys[1];
+            neighbourTiles[1] = other.neighbourTiles[1];
+            states[1] = other.states[1];
+            if (end == 0) {
+                reverse();
+            }
+        }
+
+        void reverse() {
+            for( int i = 0, j = size - 2; i < j; i += 2, j -= 2 ) {
+                double tmpX = coordinates[i];
+                double tmpY = coordinates[i + 1];
+                coordinates[i] = coordinates[j];
+                coordinates[i + 1] = coordinates[j + 1];
+                coordinates[j] = tmpX;
+                coordinates[j + 1] = tmpY;
+            }
+            long tmpKey = keys[0];
+            keys[0] = keys[1];
+            keys[1] = tmpKey;
+            int tmpTile = neighbourTiles[0];
+            neighbourTiles[0] = neighbourTiles[1];
+            neighbourTiles[1] = tmpTile;
+            int tmpState = states[0];
+            states[0] = states[1];
+            states[1] = tmpState;
+        }
+
+        Coordinate[] toCoordinates() {
+            Coordinate[] result = new Coordinate[size / 2];
+            for( int i = 0; i < result.length; i++ ) {
+                result[i] = new Coordinate(coordinates[2 * i], coordinates[2 * i + 1]);
+            }
+            return result;
+        }
+    }
+}
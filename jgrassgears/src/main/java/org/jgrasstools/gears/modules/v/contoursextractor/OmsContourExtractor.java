@@ -27,20 +27,17 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_LICEN
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_IN_COVERAGE_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_OUT_FILE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_OUT_GEODATA_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_INTERVAL_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MAX_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MIN_DESCRIPTION;
 
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
-import javax.media.jai.JAI;
-import javax.media.jai.ParameterBlockJAI;
-import javax.media.jai.RenderedOp;
-
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -58,14 +55,15 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.jaitools.media.jai.contour.ContourDescriptor;
+import org.jgrasstools.gears.io.shapefile.ShapefileFeatureStreamWriter;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.modules.v.contoursextractor.ContourEngine.ContourHandler;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.metadata.spatial.PixelOrientation;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.util.AffineTransformation;
 
@@ -95,14 +93,23 @@ public class OmsContourExtractor extends JGTModel {
     @In
     public Double pInterval;
 
+    @Description(OMSCONTOUREXTRACTOR_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSCONTOUREXTRACTOR_OUT_FILE_DESCRIPTION)
+    @In
+    public String outFile = null;
+
     @Description(OMSCONTOUREXTRACTOR_OUT_GEODATA_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outGeodata = null;
 
-    @SuppressWarnings("unchecked")
+    private boolean hasWritten = false;
+
     @Execute
     public void process() throws Exception {
-        if (!concatOr(outGeodata == null, doReset)) {
+        if (!concatOr(outGeodata == null && !hasWritten, doReset)) {
             return;
         }
         checkNull(inCoverage, pMin, pMax, pInterval);
@@ -120,40 +127,54 @@ public class OmsContourExtractor extends JGTModel {
             pm.message("-> " + level);
         }
 
-        pm.beginTask("Extracting contours...", IJGTProgressMonitor.UNKNOWN);
-        ParameterBlockJAI pb = new ParameterBlockJAI("Contour");
-        pb.setSource("source0", inCoverage.getRenderedImage());
-        pb.setParameter("levels", contourIntervals);
-        RenderedOp dest = JAI.create("Contour", pb);
-        Collection<LineString> contours = (Collection<LineString>) dest.getProperty(ContourDescriptor.CONTOUR_PROPERTY_NAME);
-        pm.done();
+        double[] levels = new double[contourIntervals.size()];
+        for( int i = 0; i < levels.length; i++ ) {
+            levels[i] = contourIntervals.get(i);
+        }
 
-        outGeodata = new DefaultFeatureCollection();
         SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
         b.setName("contours");
         b.setCRS(inCoverage.getCoordinateReferenceSystem());
         b.add("the_geom", LineString.class);
         b.add("elevation", Double.class);
-        SimpleFeatureType type = b.buildFeatureType();
-        int id = 0;
+        final SimpleFeatureType type = b.buildFeatureType();
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
 
         final AffineTransformation jtsTransformation = new AffineTransformation(mt2D.getScaleX(), mt2D.getShearX(),
                 mt2D.getTranslateX(), mt2D.getShearY(), mt2D.getScaleY(), mt2D.getTranslateY());
-        for( LineString lineString : contours ) {
-            Object userData = lineString.getUserData();
-            double elev = -1.0;
-            if (userData instanceof Double) {
-                elev = (Double) userData;
-                lineString.setUserData(null);
+
+        /*
+         * the lines are turned into features as soon as they are complete and
+         * either collected or written to the file
+         */
+        final DefaultFeatureCollection collection = outFile == null ? new DefaultFeatureCollection() : null;
+        final ShapefileFeatureStreamWriter writer = outFile == null ? null : new ShapefileFeatureStreamWriter(outFile, type);
+        ContourHandler handler = new ContourHandler(){
+            private int id = 0;
+            public void handle( double level, Coordinate[] coordinates ) throws Exception {
+                LineString lineString = gf.createLineString(coordinates);
+                lineString.apply(jtsTransformation);
+                Object[] values = new Object[]{lineString, level};
+                builder.addAll(values);
+                SimpleFeature feature = builder.buildFeature(type.getTypeName() + "." + id);
+                id++;
+                if (writer != null) {
+                    writer.write(feature);
+                } else {
+                    collection.add(feature);
+                }
             }
-            lineString.apply(jtsTransformation);
-            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
-            Object[] values = new Object[]{lineString, elev};
-            builder.addAll(values);
-            SimpleFeature feature = builder.buildFeature(type.getTypeName() + "." + id);
-            id++;
-            ((DefaultFeatureCollection) outGeodata).add(feature);
+        };
+
+        ContourEngine engine = new ContourEngine(inCoverage.getRenderedImage(), levels, ContourEngine.DEFAULT_TILE_SIZE,
+                pMaxThreads, pm);
+        try {
+            engine.extract(handler);
+        } finally {
+            if (writer != null)
+                writer.close();
         }
-
+        outGeodata = collection;
+        hasWritten = writer != null;
     }
 }
@@ -31,6 +31,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_CONTOUR_V
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_FILE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_LINE_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_P_CODE_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_POINTS_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_POLYGON_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_TEXT_VECTOR_DESCRIPTION;
@@ -83,6 +84,10 @@ public class OmsDwgConverter extends JGTModel {
     @In
     public String pCode;
 
+    @Description(OMSDWGCONVERTER_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDWGCONVERTER_POINTS_VECTOR_DESCRIPTION)
     @Out
     public SimpleFeatureCollection pointsVector = null;
@@ -133,7 +138,7 @@ public class OmsDwgConverter extends JGTModel {
             }
         }
 
-        DwgHandler dataHandler = new DwgHandler(dwgFile, crs);
+        DwgHandler dataHandler = new DwgHandler(dwgFile, crs, pMaxThreads);
         dataHandler.getLayerTypes();
         DwgReader dwgReader = dataHandler.getDwgReader();
 
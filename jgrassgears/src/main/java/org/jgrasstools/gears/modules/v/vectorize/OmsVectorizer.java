@@ -33,25 +33,17 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_DO_REMOVE_H
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_F_DEFAULT_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_IN_RASTER_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_OUT_VECTOR_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_THRES_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_VALUE_DESCRIPTION;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 
 import java.awt.Point;
 import java.awt.geom.AffineTransform;
-import java.awt.image.RenderedImage;
-import java.awt.image.WritableRaster;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
-import javax.media.jai.JAI;
-import javax.media.jai.ParameterBlockJAI;
-import javax.media.jai.RenderedOp;
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -74,11 +66,8 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.Envelope2D;
-import org.jaitools.media.jai.vectorize.VectorizeDescriptor;
-import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
-import org.jgrasstools.gears.modules.r.rangelookup.OmsRangeLookup;
+import org.jgrasstools.gears.modules.v.vectorize.VectorizerEngine.PolygonHandler;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.opengis.feature.simple.SimpleFeature;
@@ -134,6 +123,10 @@ public class OmsVectorizer extends JGTModel {
     @In
     public double pMaskThreshold = Double.NaN;
 
+    @Description(OMSVECTORIZER_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORIZER_OUT_VECTOR_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outVector = null;
@@ -152,45 +145,28 @@ public class OmsVectorizer extends JGTModel {
 
         doRegionCheck();
 
-        String classes = null;
-        StringBuilder sb = new StringBuilder();
-        if (pValue != null) {
-            sb.append("(null ");
-            sb.append(pValue);
-            sb.append("),[");
-            sb.append(pValue);
-            sb.append(" ");
-            sb.append(pValue);
-            sb.append("],(");
-            sb.append(pValue);
-            sb.append(" null)");
-            classes = "NaN," + pValue + ",NaN";
-
-            String ranges = sb.toString();
-
-            pm.beginTask("Extract range: " + ranges, IJGTProgressMonitor.UNKNOWN);
-
-            // values are first classified, since the vectorializer works on same values
-            OmsRangeLookup cont = new OmsRangeLookup();
-            cont.inRaster = inRaster;
-            cont.pRanges = ranges;
-            cont.pClasses = classes;
-            cont.pm = pm;
-            cont.process();
-            inRaster = cont.outRaster;
-
-            pm.done();
-        }
-
-        if (doMask) {
-            inRaster = maskRaster();
-        }
-
-        pm.beginTask("Vectorizing map...", IJGTProgressMonitor.UNKNOWN);
-        Map<String, Object> args = new HashMap<String, Object>();
-        // args.put("outsideValues", Collections.singleton(0));
-        Collection<Polygon> polygonsList = doVectorize(inRaster.getRenderedImage(), args);
-        pm.done();
+        /*
+         * the values are classified and masked on the fly while the tiles are read
+         */
+        final boolean hasValue = pValue != null;
+        final double value = hasValue ? pValue : doubleNovalue;
+        final boolean mask = doMask;
+        final double maskThreshold = pMaskThreshold;
+        VectorizerEngine engine = new VectorizerEngine(inRaster.getRenderedImage(), VectorizerEngine.DEFAULT_TILE_SIZE,
+                pMaxThreads, pm){
+            protected double classify( double cellValue ) {
+                if (hasValue && cellValue != value) {
+                    return doubleNovalue;
+                }
+                if (mask) {
+                    if (isNovalue(cellValue) || cellValue < maskThreshold) {
+                        return doubleNovalue;
+                    }
+                    return 1;
+                }
+                return cellValue;
+            }
+        };
 
         HashMap<String, Double> regionParams = CoverageUtilities.getRegionParamsFromGridCoverage(inRaster);
         double xRes = regionParams.get(CoverageUtilities.XRES);
@@ -210,75 +186,37 @@ public class OmsVectorizer extends JGTModel {
         b.add("perimeter", Double.class);
         b.add("xcentroid", Double.class);
         b.add("ycentroid", Double.class);
-        SimpleFeatureType type = b.buildFeatureType();
-
-        outVector = new DefaultFeatureCollection();
-
-        for( Polygon polygon : polygonsList ) {
-            double area = polygon.getArea();
-            if (area <= pThres) {
-                continue;
-            }
-
-            Double tmpValue = -1.0;
-            Object userData = polygon.getUserData();
-            if (userData instanceof Double) {
-                tmpValue = (Double) userData;
-            }
-            polygon.apply(awt2WorldTransformation);
-            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
-
-            if (doRemoveHoles) {
-                LineString exteriorRing = polygon.getExteriorRing();
-                polygon = gf.createPolygon(exteriorRing.getCoordinates());
-            }
-
-            area = polygon.getArea();
-            double perim = polygon.getLength();
-            com.vividsolutions.jts.geom.Point centroid = polygon.getCentroid();
-            Coordinate centroidCoord = centroid.getCoordinate();
-            Object[] values = new Object[]{polygon, featureIndex, tmpValue, area, perim, centroidCoord.x, centroidCoord.y};
-            builder.addAll(values);
-            SimpleFeature feature = builder.buildFeature(type.getTypeName() + "." + featureIndex);
-            featureIndex++;
-            ((DefaultFeatureCollection) outVector).add(feature);
-        }
-    }
+        final SimpleFeatureType type = b.buildFeatureType();
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+        final DefaultFeatureCollection collection = new DefaultFeatureCollection();
+        engine.extract(new PolygonHandler(){
+            public void handle( double polygonValue, Polygon polygon ) throws Exception {
+                // the threshold applies to the area in cells
+                double area = polygon.getArea();
+                if (area <= pThres) {
+                    return;
+                }
+                polygon.apply(awt2WorldTransformation);
 
-    private GridCoverage2D maskRaster() {
-        RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inRaster);
-        int nCols = regionMap.getCols();
-        int nRows = regionMap.getRows();
-
-        RandomIter rasterIter = CoverageUtilities.getRandomIterator(inRaster);
-        WritableRaster[] holder = new WritableRaster[1];
-        GridCoverage2D outGC = CoverageUtilities.createCoverageFromTemplate(inRaster, JGTConstants.doubleNovalue, holder);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(holder[0], null);
-
-        pm.beginTask("Masking map...", nRows);
-        for( int r = 0; r < nRows; r++ ) {
-            for( int c = 0; c < nCols; c++ ) {
-                double value = rasterIter.getSampleDouble(c, r, 0);
-                boolean doNull = false;
-                if (!isNovalue(value)) {
-                    if (!Double.isNaN(pMaskThreshold)) {
-                        // check threshold
-                        if (value < pMaskThreshold) {
-                            doNull = true;
-                        } else {
-                            doNull = false;
-                        }
-                    }
-                } else {
-                    doNull = true;
+                if (doRemoveHoles) {
+                    LineString exteriorRing = polygon.getExteriorRing();
+                    polygon = gf.createPolygon(exteriorRing.getCoordinates());
                 }
-                if (!doNull)
-                    outIter.setSample(c, r, 0, 1);
+
+                area = polygon.getArea();
+                double perim = polygon.getLength();
+                com.vividsolutions.jts.geom.Point centroid = polygon.getCentroid();
+                Coordinate centroidCoord = centroid.getCoordinate();
+                Object[] values = new Object[]{polygon, featureIndex, polygonValue, area, perim, centroidCoord.x,
+                        centroidCoord.y};
+                builder.addAll(values);
+                SimpleFeature feature = builder.buildFeature(type.getTypeName() + "." + featureIndex);
+                featureIndex++;
+                collection.add(feature);
             }
-            pm.worked(1);
-        }
-        pm.done();
-        return outGC;
+        });
+        outVector = collection;
     }
 
     private void doRegionCheck() throws TransformException {
@@ -293,10 +231,10 @@ public class OmsVectorizer extends JGTModel {
             int cols = regionMap.getCols();
             int rows = regionMap.getRows();
 
-            pm.beginTask("Try to shrink the region over covered area...", cols);
+            pm.beginTask("Try to shrink the region over covered area...", rows);
             RandomIter rasterIter = CoverageUtilities.getRandomIterator(inRaster);
-            for( int c = 0; c < cols; c++ ) {
-                for( int r = 0; r < rows; r++ ) {
+            for( int r = 0; r < rows; r++ ) {
+                for( int c = 0; c < cols; c++ ) {
                     double value = rasterIter.getSampleDouble(c, r, 0);
                     if (!isNovalue(value)) {
                         left = min(left, c);
@@ -319,32 +257,4 @@ public class OmsVectorizer extends JGTModel {
         }
     }
 
-    /**
-     * Helper function to run the Vectorize operation with given parameters and
-     * retrieve the vectors.
-     * 
-     * @param src the source image
-     * @param args a {@code Map} of parameter names and values
-     * 
-     * @return the generated vectors as JTS Polygons
-     */
-    @SuppressWarnings("unchecked")
-    private Collection<Polygon> doVectorize( RenderedImage src, Map<String, Object> args ) {
-        ParameterBlockJAI pb = new ParameterBlockJAI("Vectorize");
-        pb.setSource("source0", src);
-
-        // Set any parameters that were passed in
-        for( Entry<String, Object> e : args.entrySet() ) {
-            pb.setParameter(e.getKey(), e.getValue());
-        }
-
-        // Get the desintation image: this is the unmodified source image data
-        // plus a property for the generated vectors
-        RenderedOp dest = JAI.create("Vectorize", pb);
-
-        // Get the vectors
-        Object property = dest.getProperty(VectorizeDescriptor.VECTOR_PROPERTY_NAME);
-        return (Collection<Polygon>) property;
-    }
-
 }
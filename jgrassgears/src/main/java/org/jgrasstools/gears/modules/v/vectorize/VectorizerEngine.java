@@ -0,0 +1,720 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.v.vectorize;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.modules.OrderedTileExecutor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Tiled raster to polygons conversion.
+ *
+ * <p>
+ * Cells with the same value that share a side form a polygon, novalues are left out. The
+ * image is processed tile by tile, reading from it only the pixels of the tile and of the
+ * cells around it: tiles are labeled and their boundaries traced in parallel, then stitched
+ * in row order. The polygons that don't cross a seam are built directly by the tile, the
+ * others are dissolved through the seams: their labels are merged and the boundary pieces
+ * are joined through the cell side they continue on, so that no geometric union is needed.
+ * A polygon is passed to the {@link PolygonHandler} as soon as the last tile it covers has
+ * been stitched.
+ * </p>
+ * <p>
+ * Boundaries are traced with the polygon on their left, turning towards it where two cells
+ * of the same value only touch at a corner: such cells are kept apart and the rings only
+ * touch each other in that corner.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class VectorizerEngine {
+
+    /**
+     * The default tile size in cells.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * Receiver of the extracted polygons.
+     */
+    public static interface PolygonHandler {
+        /**
+         * Handles a polygon, called by one thread at a time.
+         *
+         * @param value the value of the cells covered by the polygon.
+         * @param polygon the polygon in image space, the cell corners being at integer
+         *          pixel column and row.
+         * @throws Exception
+         */
+        public void handle( double value, Polygon polygon ) throws Exception;
+    }
+
+    /*
+     * cell sides, in counterclockwise order as seen on the image: bottom, right, top, left.
+     * The boundary along a side runs with the cell on its left, from the corner given
+     * by the start offsets to the start corner of the next side.
+     */
+    private static final int[] SIDE_COL_OFFSETS = {0, 1, 0, -1};
+    private static final int[] SIDE_ROW_OFFSETS = {1, 0, -1, 0};
+    private static final int[] START_X = {0, 1, 1, 0};
+    private static final int[] START_Y = {1, 1, 0, 0};
+
+    private final RenderedImage image;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int threads;
+    private IJGTProgressMonitor pm = new LogProgressMonitor();
+    private GeometryFactory gf = new GeometryFactory();
+
+    private int tileCols;
+
+    /*
+     * stitching state: the open boundary pieces by their first and by their following
+     * side and the regions along the borders of the tiles still to be stitched
+     */
+    private final HashMap<Long, Fragment> byStart = new HashMap<Long, Fragment>();
+    private final HashMap<Long, Fragment> byEnd = new HashMap<Long, Fragment>();
+    private Region[] previousRight;
+    private Region[][] bottomByColumn;
+
+    /**
+     * Constructor.
+     *
+     * @param image the image to vectorize, the first band is used.
+     * @param tileSize the tile size in cells.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, can be <code>null</code>.
+     */
+    public VectorizerEngine( RenderedImage image, int tileSize, int threads, IJGTProgressMonitor pm ) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.tileSize = Math.max(1, tileSize);
+        this.threads = Math.max(1, threads);
+        if (pm != null)
+            this.pm = pm;
+    }
+
+    /**
+     * Maps the image values before vectorizing, to be overridden to classify or mask them.
+     *
+     * <p>Called concurrently by the tiles.</p>
+     *
+     * @param value the image value.
+     * @return the value to vectorize, or a novalue to leave the cell out.
+     */
+    protected double classify( double value ) {
+        return value;
+    }
+
+    /**
+     * Extracts the polygons.
+     *
+     * @param handler the receiver of the polygons.
+     * @throws Exception
+     */
+    public void extract( final PolygonHandler handler ) throws Exception {
+        if (width < 1 || height < 1) {
+            return;
+        }
+        tileCols = (width + tileSize - 1) / tileSize;
+        int tileRows = (height + tileSize - 1) / tileSize;
+        int tilesNum = tileCols * tileRows;
+        bottomByColumn = new Region[tileCols][];
+
+        OrderedTileExecutor<Tile> executor = new OrderedTileExecutor<Tile>(threads, "Vectorizing map...",
+                "Error during the vectorization: ", this, pm){
+            protected Tile process( int tile ) {
+                return trace(tile);
+            }
+            protected void consume( int tile, Tile traced ) throws Exception {
+                stitch(traced, handler);
+            }
+        };
+        try {
+            executor.execute(tilesNum);
+        } finally {
+            byStart.clear();
+            byEnd.clear();
+            previousRight = null;
+            bottomByColumn = null;
+        }
+    }
+
+    /**
+     * Labels the regions of a tile and traces their boundaries.
+     */
+    private Tile trace( int index ) {
+        Tile tile = new Tile();
+        tile.tileX = index % tileCols;
+        tile.tileY = index / tileCols;
+        int c0 = tile.tileX * tileSize;
+        int r0 = tile.tileY * tileSize;
+        int tw = Math.min(tileSize, width - c0);
+        int th = Math.min(tileSize, height - r0);
+        int minX = image.getMinX();
+        int minY = image.getMinY();
+        // the corners are in image space
+        int x0 = minX + c0;
+        int y0 = minY + r0;
+
+        /*
+         * the values of the tile with a frame of the cells around it,
+         * novalues outside of the image
+         */
+        int ew = tw + 2;
+        double[] values = new double[ew * (th + 2)];
+        Arrays.fill(values, doubleNovalue);
+        int x1 = Math.max(0, c0 - 1);
+        int y1 = Math.max(0, r0 - 1);
+        int x2 = Math.min(width, c0 + tw + 1);
+        int y2 = Math.min(height, r0 + th + 1);
+        Raster raster = image.getData(new Rectangle(minX + x1, minY + y1, x2 - x1, y2 - y1));
+        double[] read = raster.getSamples(minX + x1, minY + y1, x2 - x1, y2 - y1, 0, (double[]) null);
+        for( int y = y1; y < y2; y++ ) {
+            for( int x = x1; x < x2; x++ ) {
+                values[(y - r0 + 1) * ew + x - c0 + 1] = classify(read[(y - y1) * (x2 - x1) + x - x1]);
+            }
+        }
+        int[] offsets = new int[4];
+        for( int side = 0; side < 4; side++ ) {
+            offsets[side] = SIDE_ROW_OFFSETS[side] * ew + SIDE_COL_OFFSETS[side];
+        }
+
+        /*
+         * label the cells connected through their sides
+         */
+        int cellsNum = tw * th;
+        int[] labels = new int[cellsNum];
+        int[] parents = new int[cellsNum];
+        int labelsNum = 0;
+        for( int r = 0; r < th; r++ ) {
+            for( int c = 0; c < tw; c++ ) {
+                int cell = r * tw + c;
+                int e = (r + 1) * ew + c + 1;
+                double value = values[e];
+                if (isNovalue(value)) {
+                    labels[cell] = -1;
+                    continue;
+                }
+                int label = -1;
+                if (r > 0 && values[e - ew] == value) {
+                    label = labels[cell - tw];
+                }
+                if (c > 0 && values[e - 1] == value) {
+                    if (label == -1) {
+                        label = labels[cell - 1];
+                    } else {
+                        union(parents, label, labels[cell - 1]);
+                    }
+                }
+                if (label == -1) {
+                    label = labelsNum;
+                    parents[labelsNum++] = label;
+                }
+                labels[cell] = label;
+            }
+        }
+        // roots are the smallest labels of their set, so they are numbered first
+        int regionsNum = 0;
+        int[] regionOfLabel = new int[labelsNum];
+        for( int l = 0; l < labelsNum; l++ ) {
+            int root = find(parents, l);
+            regionOfLabel[l] = root == l ? regionsNum++ : regionOfLabel[root];
+        }
+        double[] regionValues = new double[regionsNum];
+        for( int r = 0; r < th; r++ ) {
+            for( int c = 0; c < tw; c++ ) {
+                int cell = r * tw + c;
+                if (labels[cell] != -1) {
+                    labels[cell] = regionOfLabel[labels[cell]];
+                    regionValues[labels[cell]] = values[(r + 1) * ew + c + 1];
+                }
+            }
+        }
+
+        /*
+         * the regions that continue in the neighbour tiles are open, the links
+         * towards the following tiles are counted
+         */
+        int[] left = border(th, labels, 0, tw, values, ew + 1, ew, -1);
+        int[] right = border(th, labels, tw - 1, tw, values, ew + tw, ew, 1);
+        int[] top = border(tw, labels, 0, 1, values, ew + 1, 1, -ew);
+        int[] bottom = border(tw, labels, (th - 1) * tw, 1, values, th * ew + 1, 1, ew);
+        int[] pieceOfRegion = new int[regionsNum];
+        Arrays.fill(pieceOfRegion, -1);
+        int[][] borders = {left, top, right, bottom};
+        int piecesNum = 0;
+        for( int[] border : borders ) {
+            for( int i = 0; i < border.length; i++ ) {
+                if (border[i] != -1 && pieceOfRegion[border[i]] == -1) {
+                    pieceOfRegion[border[i]] = piecesNum++;
+                }
+            }
+        }
+        tile.pieceValues = new double[piecesNum];
+        tile.pieceLinks = new int[piecesNum];
+        for( int region = 0; region < regionsNum; region++ ) {
+            if (pieceOfRegion[region] != -1) {
+                tile.pieceValues[pieceOfRegion[region]] = regionValues[region];
+            }
+        }
+        for( int[] border : borders ) {
+            boolean following = border == right || border == bottom;
+            for( int i = 0; i < border.length; i++ ) {
+                if (border[i] != -1) {
+                    border[i] = pieceOfRegion[border[i]];
+                    if (following) {
+                        tile.pieceLinks[border[i]]++;
+                    }
+                }
+            }
+        }
+        tile.left = left;
+        tile.top = top;
+        tile.right = right;
+        tile.bottom = bottom;
+
+        /*
+         * boundary sides and their successors: the local side, -1 if it is in another
+         * tile, -2 if the side is not on a boundary
+         */
+        int[] next = new int[4 * cellsNum];
+        boolean[] followsOther = new boolean[4 * cellsNum];
+        Arrays.fill(next, -2);
+        for( int r = 0; r < th; r++ ) {
+            for( int c = 0; c < tw; c++ ) {
+                int e = (r + 1) * ew + c + 1;
+                double value = values[e];
+                if (isNovalue(value)) {
+                    continue;
+                }
+                for( int side = 0; side < 4; side++ ) {
+                    if (values[e + offsets[side]] == value) {
+                        continue;
+                    }
+                    int successor = successor(values, offsets, e, side);
+                    int local = toLocal(successor, ew, tw, th);
+                    next[4 * (r * tw + c) + side] = local;
+                    if (local != -1) {
+                        followsOther[local] = true;
+                    }
+                }
+            }
+        }
+
+        /*
+         * chain the sides: first the pieces entering from another tile, then the rings left
+         */
+        boolean[] visited = new boolean[4 * cellsNum];
+        List<List<Fragment>> closedRings = new ArrayList<List<Fragment>>();
+        for( int i = 0; i < regionsNum; i++ ) {
+            closedRings.add(null);
+        }
+        tile.fragments = new ArrayList<Fragment>();
+        for( int pass = 0; pass < 2; pass++ ) {
+            for( int start = 0; start < next.length; start++ ) {
+                if (next[start] == -2 || visited[start] || (pass == 0 && followsOther[start])) {
+                    continue;
+                }
+                int cell = start / 4;
+                int region = labels[cell];
+                Fragment fragment = new Fragment(pieceOfRegion[region]);
+                fragment.startKey = globalKey(c0 + cell % tw, r0 + cell / tw, start % 4);
+                fragment.add(x0 + cell % tw + START_X[start % 4], y0 + cell / tw + START_Y[start % 4]);
+                int side = start;
+                while( true ) {
+                    visited[side] = true;
+                    cell = side / 4;
+                    int end = (side + 1) % 4;
+                    fragment.add(x0 + cell % tw + START_X[end], y0 + cell / tw + START_Y[end]);
+                    int following = next[side];
+                    if (following == start) {
+                        fragment.endKey = fragment.startKey;
+                        break;
+                    } else if (following == -1) {
+                        int successor = successor(values, offsets, (cell / tw + 1) * ew + cell % tw + 1, side % 4);
+                        int e = successor / 4;
+                        fragment.endKey = globalKey(c0 + e % ew - 1, r0 + e / ew - 1, successor % 4);
+                        break;
+                    }
+                    side = following;
+                }
+                if (fragment.piece != -1) {
+                    tile.fragments.add(fragment);
+                } else {
+                    List<Fragment> rings = closedRings.get(region);
+                    if (rings == null) {
+                        rings = new ArrayList<Fragment>();
+                        closedRings.set(region, rings);
+                    }
+                    rings.add(fragment);
+                }
+            }
+        }
+
+        /*
+         * the regions completely inside the tile
+         */
+        tile.polygons = new ArrayList<Polygon>();
+        tile.polygonValues = new double[regionsNum - piecesNum];
+        for( int region = 0; region < regionsNum; region++ ) {
+            List<Fragment> rings = closedRings.get(region);
+            if (rings != null) {
+                tile.polygonValues[tile.polygons.size()] = regionValues[region];
+                tile.polygons.add(buildPolygon(rings));
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * @return the regions along a tile border that continue beyond it, -1 elsewhere.
+     */
+    private static int[] border( int length, int[] labels, int firstCell, int cellStep, double[] values, int firstValue,
+            int valueStep, int acrossOffset ) {
+        int[] border = new int[length];
+        for( int i = 0; i < length; i++ ) {
+            int e = firstValue + i * valueStep;
+            int label = labels[firstCell + i * cellStep];
+            border[i] = label != -1 && values[e + acrossOffset] == values[e] ? label : -1;
+        }
+        return border;
+    }
+
+    /**
+     * Finds the boundary side that follows the one given, turning towards the region first.
+     *
+     * @return the side as <code>4 * frameCell + side</code>, with the cell in the framed tile.
+     */
+    private static int successor( double[] values, int[] offsets, int e, int side ) {
+        double value = values[e];
+        int left = (side + 1) % 4;
+        int ahead = e + offsets[left];
+        if (values[ahead] != value) {
+            return 4 * e + left;
+        }
+        int diagonal = ahead + offsets[side];
+        if (values[diagonal] != value) {
+            return 4 * ahead + side;
+        }
+        return 4 * diagonal + (side + 3) % 4;
+    }
+
+    private static int toLocal( int framed, int ew, int tw, int th ) {
+        int e = framed / 4;
+        int c = e % ew - 1;
+        int r = e / ew - 1;
+        if (c < 0 || c >= tw || r < 0 || r >= th) {
+            return -1;
+        }
+        return 4 * (r * tw + c) + framed % 4;
+    }
+
+    private long globalKey( int col, int row, int side ) {
+        return 4 * ((long) row * width + col) + side;
+    }
+
+    private static int find( int[] parents, int label ) {
+        while( parents[label] != label ) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
+    }
+
+    private static void union( int[] parents, int label1, int label2 ) {
+        int root1 = find(parents, label1);
+        int root2 = find(parents, label2);
+        if (root1 < root2) {
+            parents[root2] = root1;
+        } else if (root2 < root1) {
+            parents[root1] = root2;
+        }
+    }
+
+    /**
+     * Dissolves the open regions of a tile with the ones of the previous tiles and hands
+     * over the completed polygons.
+     */
+    private void stitch( Tile tile, PolygonHandler handler ) throws Exception {
+        for( int i = 0; i < tile.polygonValues.length; i++ ) {
+            handler.handle(tile.polygonValues[i], tile.polygons.get(i));
+        }
+
+        Region[] regions = new Region[tile.pieceValues.length];
+        for( int i = 0; i < regions.length; i++ ) {
+            regions[i] = new Region(tile.pieceValues[i], tile.pieceLinks[i]);
+        }
+        if (tile.tileX > 0) {
+            link(regions, tile.left, previousRight);
+        }
+        if (tile.tileY > 0) {
+            link(regions, tile.top, bottomByColumn[tile.tileX]);
+        }
+        previousRight = toRegions(regions, tile.right);
+        bottomByColumn[tile.tileX] = toRegions(regions, tile.bottom);
+
+        for( Fragment fragment : tile.fragments ) {
+            fragment.region = regions[fragment.piece];
+            add(fragment);
+        }
+
+        for( Region region : regions ) {
+            Region root = region.find();
+            if (root.links == 0 && root.rings != null) {
+                handler.handle(root.value, buildPolygon(root.rings));
+                root.rings = null;
+            }
+        }
+    }
+
+    private static void link( Region[] regions, int[] border, Region[] previous ) {
+        for( int i = 0; i < border.length; i++ ) {
+            if (border[i] != -1) {
+                Region root = regions[border[i]].union(previous[i]);
+                root.links--;
+            }
+        }
+    }
+
+    private static Region[] toRegions( Region[] regions, int[] border ) {
+        Region[] borderRegions = new Region[border.length];
+        for( int i = 0; i < border.length; i++ ) {
+            if (border[i] != -1) {
+                borderRegions[i] = regions[border[i]];
+            }
+        }
+        return borderRegions;
+    }
+
+    /**
+     * Joins a boundary piece to the pending ones it continues or is continued by.
+     */
+    private void add( Fragment fragment ) {
+        while( fragment.startKey != fragment.endKey ) {
+            Fragment after = byStart.remove(fragment.endKey);
+            if (after != null) {
+                byEnd.remove(after.endKey);
+                fragment.append(after);
+                continue;
+            }
+            Fragment before = byEnd.remove(fragment.startKey);
+            if (before != null) {
+                byStart.remove(before.startKey);
+                before.append(fragment);
+                fragment = before;
+                continue;
+            }
+            byStart.put(fragment.startKey, fragment);
+            byEnd.put(fragment.endKey, fragment);
+            return;
+        }
+        fragment.region.find().rings.add(fragment);
+    }
+
+    /**
+     * Builds the polygon of the rings of a region: the outer one runs clockwise in
+     * grid space, the holes counterclockwise.
+     */
+    private Polygon buildPolygon( List<Fragment> rings ) {
+        LinearRing shell = null;
+        List<LinearRing> holes = new ArrayList<LinearRing>();
+        for( Fragment ring : rings ) {
+            LinearRing linearRing = gf.createLinearRing(ring.toRing());
+            if (ring.signedArea() < 0) {
+                if (shell != null) {
+                    throw new ModelsRuntimeException("Found a region with more than one outer ring.", this);
+                }
+                shell = linearRing;
+            } else {
+                holes.add(linearRing);
+            }
+        }
+        if (shell == null) {
+            throw new ModelsRuntimeException("Found a region without outer ring.", this);
+        }
+        return gf.createPolygon(shell, holes.toArray(new LinearRing[holes.size()]));
+    }
+
+    /**
+     * The result of the tracing of a tile.
+     */
+    private static class Tile {
+        int tileX;
+        int tileY;
+
+        /* the polygons completely inside the tile */
+        List<Polygon> polygons;
+        double[] polygonValues;
+
+        /* the regions continuing in other tiles and their links towards the following */
+        double[] pieceValues;
+        int[] pieceLinks;
+        List<Fragment> fragments;
+        int[] left;
+        int[] top;
+        int[] right;
+        int[] bottom;
+    }
+
+    /**
+     * A region dissolved through the seams, with the links to the tiles still to be stitched.
+     */
+    private static class Region {
+        final double value;
+        int links;
+        Region parent = this;
+        List<Fragment> rings = new ArrayList<Fragment>();
+
+        Region( double value, int links ) {
+            this.value = value;
+            this.links = links;
+        }
+
+        Region find() {
+            Region root = this;
+            while( root.parent != root ) {
+                root = root.parent;
+            }
+            Region region = this;
+            while( region != root ) {
+                Region tmp = region.parent;
+                region.parent = root;
+                region = tmp;
+            }
+            return root;
+        }
+
+        Region union( Region other ) {
+            Region root = find();
+            Region otherRoot = other.find();
+            if (root == otherRoot) {
+                return root;
+            }
+            if (root.rings.size() < otherRoot.rings.size()) {
+                Region tmp = root;
+                root = otherRoot;
+                otherRoot = tmp;
+            }
+            otherRoot.parent = root;
+            root.links += otherRoot.links;
+            root.rings.addAll(otherRoot.rings);
+            otherRoot.rings = null;
+            return root;
+        }
+    }
+
+    /**
+     * A piece of boundary, with its corners interleaved.
+     */
+    private static class Fragment {
+        final int piece;
+        Region region;
+        int[] points = new int[16];
+        int size = 0;
+
+        /* the key of the first side and of the side that follows the last */
+        long startKey;
+        long endKey;
+
+        Fragment( int piece ) {
+            this.piece = piece;
+        }
+
+        /**
+         * Adds a corner, replacing the last one if it lies on a straight line.
+         */
+        void add( int x, int y ) {
+            if (size >= 4) {
+                int x1 = points[size - 4];
+                int y1 = points[size - 3];
+                int x2 = points[size - 2];
+                int y2 = points[size - 1];
+                if ((x1 == x2 && x2 == x) || (y1 == y2 && y2 == y)) {
+                    points[size - 2] = x;
+                    points[size - 1] = y;
+                    return;
+                }
+            }
+            if (size + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[size++] = x;
+            points[size++] = y;
+        }
+
+        /**
+         * Appends the fragment that continues this one, its first corner being the last of this.
+         */
+        void append( Fragment other ) {
+            for( int i = 2; i < other.size; i += 2 ) {
+                add(other.points[i], other.points[i + 1]);
+            }
+            endKey = other.endKey;
+        }
+
+        /**
+         * @return the ring, closed, without the first corner if it lies on a straight line.
+         */
+        Coordinate[] toRing() {
+            // the last corner is the first
+            int n = size / 2 - 1;
+            int first = 0;
+            int x0 = points[0];
+            int y0 = points[1];
+            int xLast = points[2 * n - 2];
+            int yLast = points[2 * n - 1];
+            if ((xLast == x0 && x0 == points[2]) || (yLast == y0 && y0 == points[3])) {
+                first = 1;
+            }
+            Coordinate[] coordinates = new Coordinate[n - first + 1];
+            for( int i = first; i < n; i++ ) {
+                coordinates[i - first] = new Coordinate(points[2 * i], points[2 * i + 1]);
+            }
+            coordinates[coordinates.length - 1] = new Coordinate(coordinates[0]);
+            return coordinates;
+        }
+
+        double signedArea() {
+            long sum = 0;
+            for( int i = 0; i < size - 2; i += 2 ) {
+                sum += (long) points[i] * points[i + 3] - (long) points[i + 2] * points[i + 1];
+            }
+            return sum / 2.0;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -37,6 +38,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -57,6 +63,7 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
 
 /**
  * A spatialite database.
@@ -84,6 +91,19 @@ public class SpatialiteDb implements AutoCloseable {
 
     public boolean mPrintInfos = true;
 
+    private static final int DECODE_BLOCK_SIZE = 1000;
+
+    /**
+     * The idle prepared queries of the current connection. A query is removed while
+     * in use, so that concurrent or nested calls never share a statement.
+     */
+    private final Map<String, CachedQuery> queriesCache = new HashMap<>();
+
+    /**
+     * Incremented whenever the cache is cleared, queries borrowed before are then discarded.
+     */
+    private int queriesGeneration = 0;
+
     /**
      * Open the connection to a database.
      * 
@@ -110,6 +130,8 @@ public class SpatialiteDb implements AutoCloseable {
         // absolutely required by SpatiaLite
         SQLiteConfig config = new SQLiteConfig();
         config.enableLoadExtension(true);
+        // the cached statements belong to the previous connection
+        clearStatementsCache();
         // create a database connection
         mConn = DriverManager.getConnection("jdbc:sqlite:" + dbPath, config.toProperties());
         if (mPrintInfos)
@@ -192,6 +214,7 @@ public class SpatialiteDb implements AutoCloseable {
         if (options == null) {
             options = "";
         }
+        clearStatementsCache();
         enableAutocommit(false);
         String sql = "SELECT InitSpatialMetadata(" + options + ")";
         try (Statement stmt = mConn.createStatement()) {
@@ -259,6 +282,7 @@ public class SpatialiteDb implements AutoCloseable {
         }
         sb.append(")");
 
+        clearStatementsCache();
         try (Statement stmt = mConn.createStatement()) {
             stmt.execute(sb.toString());
         }
@@ -272,6 +296,7 @@ public class SpatialiteDb implements AutoCloseable {
      */
     public void deleteGeoTable(String tableName) throws SQLException {
         String sql = "SELECT DropGeoTable('" + tableName + "');";
+        clearStatementsCache();
 
         try (Statement stmt = mConn.createStatement()) {
             stmt.execute(sql);
@@ -288,6 +313,7 @@ public class SpatialiteDb implements AutoCloseable {
      */
     public void createIndex(String tableName, String column, boolean isUnique) throws SQLException {
         String sql = getIndexSql(tableName, column, isUnique);
+        clearStatementsCache();
         try (Statement stmt = mConn.createStatement()) {
             stmt.executeUpdate(sql);
         }
@@ -335,6 +361,7 @@ public class SpatialiteDb implements AutoCloseable {
             geomColName = defaultGeomFieldName;
         }
 
+        clearStatementsCache();
         try (Statement stmt = mConn.createStatement()) {
             String sql = "SELECT AddGeometryColumn('" + tableName + "','" + geomColName + "', " + epsgStr + ", '"
                 + geomTypeStr + "', 'XY')";
@@ -355,7 +382,7 @@ public class SpatialiteDb implements AutoCloseable {
      */
     public void insertGeometry(String tableName, Geometry geometry, String epsg) throws SQLException {
         String epsgStr = "4326";
-        if (epsg == null) {
+        if (epsg != null) {
             epsgStr = epsg;
         }
 
@@ -602,76 +629,10 @@ public class SpatialiteDb implements AutoCloseable {
      */
     public QueryResult getTableRecordsMapIn(String tableName, Envelope envelope, boolean alsoPK_UID, int limit)
         throws SQLException, ParseException {
-        QueryResult queryResult = new QueryResult();
-
-        SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
-        boolean hasGeom = gCol != null;
-
-        List<String[]> tableColumnsInfo = getTableColumns(tableName);
-        List<String> tableColumns = new ArrayList<>();
-        for (String[] info : tableColumnsInfo) {
-            tableColumns.add(info[0]);
-        }
-        if (hasGeom) {
-            tableColumns.remove(gCol.f_geometry_column);
-        }
-        if (!alsoPK_UID)
-            tableColumns.remove(PK_UID);
-
-        String sql = "SELECT ";
-        if (hasGeom) {
-            sql += "ST_AsBinary(" + gCol.f_geometry_column + ") AS " + gCol.f_geometry_column;
-        }
-        for (int i = 0; i < tableColumns.size(); i++) {
-            if (hasGeom || i != 0)
-                sql += ",";
-            sql += tableColumns.get(i);
-        }
-        sql += " FROM " + tableName;
-        if (envelope != null) {
-            double x1 = envelope.getMinX();
-            double y1 = envelope.getMinY();
-            double x2 = envelope.getMaxX();
-            double y2 = envelope.getMaxY();
-            sql += " WHERE "; //
-            sql += getSpatialindexBBoxWherePiece(tableName, null, x1, y1, x2, y2);
-        }
-        if (limit > 0) {
-            sql += " LIMIT " + limit;
-        }
-        WKBReader wkbReader = new WKBReader();
-        try (Statement stmt = mConn.createStatement()) {
-            ResultSet rs = stmt.executeQuery(sql);
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columnCount = rsmd.getColumnCount();
-
-            for (int i = 1; i <= columnCount; i++) {
-                String columnName = rsmd.getColumnName(i);
-                queryResult.names.add(columnName);
-                String columnTypeName = rsmd.getColumnTypeName(i);
-                queryResult.types.add(columnTypeName);
-                if (hasGeom && columnName.equals(gCol.f_geometry_column)) {
-                    queryResult.geometryIndex = i - 1;
-                }
-            }
-
-            while (rs.next()) {
-                int i = 1;
-                Object[] rec = new Object[columnCount];
-                if (hasGeom) {
-                    byte[] geomBytes = rs.getBytes(i);
-                    Geometry geometry = wkbReader.read(geomBytes);
-                    rec[i - 1] = geometry;
-                    i++;
-                }
-                for (int j = i; j <= columnCount; j++) {
-                    Object object = rs.getObject(j);
-                    rec[j - 1] = object;
-                }
-                queryResult.data.add(rec);
-            }
-            return queryResult;
-        }
+        List<Object[]> data = new ArrayList<>();
+        QueryResult queryResult = streamTableRecordsIn(tableName, envelope, alsoPK_UID, limit, 1, data::add);
+        queryResult.data = data;
+        return queryResult;
     }
 
     /**
@@ -903,6 +864,8 @@ public class SpatialiteDb implements AutoCloseable {
      * @throws Exception 
      */
     public void executeSqlFile(File file, int chunks, boolean eachLineAnSql) throws Exception {
+        // the file might change the structure of any table
+        clearStatementsCache();
         boolean autoCommit = mConn.getAutoCommit();
         mConn.setAutoCommit(false);
 
@@ -948,6 +911,9 @@ public class SpatialiteDb implements AutoCloseable {
      * @throws SQLException
      */
     public int executeInsertUpdateDeleteSql(String sql) throws SQLException {
+        if (isDdl(sql)) {
+            clearStatementsCache();
+        }
         try (Statement stmt = mConn.createStatement()) {
             int executeUpdate = stmt.executeUpdate(sql);
             return executeUpdate;
@@ -965,27 +931,327 @@ public class SpatialiteDb implements AutoCloseable {
      */
     public List<Geometry> getGeometriesIn(String tableName, Envelope envelope) throws SQLException, ParseException {
         List<Geometry> geoms = new ArrayList<Geometry>();
+        streamGeometriesIn(tableName, envelope, 1, geoms::add);
+        return geoms;
+    }
 
-        SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
-        String sql = "SELECT ST_AsBinary(" + gCol.f_geometry_column + ") FROM " + tableName;
-
-        if (envelope != null) {
-            double x1 = envelope.getMinX();
-            double y1 = envelope.getMinY();
-            double x2 = envelope.getMaxX();
-            double y2 = envelope.getMaxY();
-            sql += " WHERE " + getSpatialindexBBoxWherePiece(tableName, null, x1, y1, x2, y2);
+    /**
+     * Stream the geometries of a table inside a given envelope to a consumer.
+     * 
+     * <p>Nothing is kept in memory, which makes this the method to use on large tables.
+     * The query is prepared once and cached, a nested or concurrent call gets its
+     * own statement.</p>
+     * 
+     * @param tableName the table name.
+     * @param envelope the envelope to check. If <code>null</code>, all the geometries are streamed.
+     * @param threads the number of threads to use to decode the geometries. The
+     *          consumer is always called from the calling thread and in the order 
+     *          of the records.
+     * @param consumer the consumer of the geometries.
+     * @return the number of streamed geometries.
+     * @throws SQLException
+     * @throws ParseException
+     */
+    public long streamGeometriesIn(String tableName, Envelope envelope, int threads, Consumer<Geometry> consumer)
+        throws SQLException, ParseException {
+        String key = "geometries:" + tableName + ":" + (envelope != null);
+        CachedQuery query = borrowQuery(key, () -> {
+            SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
+            String sql = "SELECT ST_AsBinary(" + gCol.f_geometry_column + ") FROM " + tableName;
+            if (envelope != null) {
+                sql += " WHERE " + getSpatialindexBBoxParametersWherePiece(tableName, gCol);
+            }
+            return new CachedQuery(mConn.prepareStatement(sql), 0);
+        });
+        try {
+            query.setBBoxParameters(envelope, 1);
+            try (ResultSet rs = query.statement.executeQuery()) {
+                return streamRecords(rs, 1, query.geometryIndex, threads, rec -> consumer.accept((Geometry) rec[0]));
+            }
+        } finally {
+            releaseQuery(key, query);
         }
-        WKBReader wkbReader = new WKBReader();
-        try (Statement stmt = mConn.createStatement()) {
-            ResultSet rs = stmt.executeQuery(sql);
+    }
+
+    /**
+     * Stream the records of a table with geometry in the given envelope to a consumer.
+     * 
+     * <p>If the table is not geometric, the geom is set to null. The record 
+     * arrays are not reused, so consumers are free to keep them.</p>
+     * 
+     * @param tableName the table name.
+     * @param envelope the envelope to check. If <code>null</code>, all the records are streamed.
+     * @param alsoPK_UID if <code>true</code>, also the PK_UID column is considered.
+     * @param limit if > 0 a limit is set.
+     * @param threads the number of threads to use to decode the geometries. The
+     *          consumer is always called from the calling thread and in the order 
+     *          of the records.
+     * @param consumer the consumer of the records.
+     * @return the {@link QueryResult} with the names and types of the columns (the data are not filled).
+     * @throws SQLException
+     * @throws ParseException
+     */
+    public QueryResult streamTableRecordsIn(String tableName, Envelope envelope, boolean alsoPK_UID, int limit,
+        int threads, Consumer<Object[]> consumer) throws SQLException, ParseException {
+        String key = "records:" + tableName + ":" + alsoPK_UID + ":" + (envelope != null);
+        CachedQuery query = borrowQuery(key, () -> {
+                SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
+                boolean hasGeom = gCol != null;
+
+                List<String[]> tableColumnsInfo = getTableColumns(tableName);
+                List<String> tableColumns = new ArrayList<>();
+                for (String[] info : tableColumnsInfo) {
+                    tableColumns.add(info[0]);
+                }
+                if (hasGeom) {
+                    tableColumns.remove(gCol.f_geometry_column);
+                }
+                if (!alsoPK_UID)
+                    tableColumns.remove(PK_UID);
+
+                String sql = "SELECT ";
+                if (hasGeom) {
+                    sql += "ST_AsBinary(" + gCol.f_geometry_column + ") AS " + gCol.f_geometry_column;
+                }
+                for (int i = 0; i < tableColumns.size(); i++) {
+                    if (hasGeom || i != 0)
+                        sql += ",";
+                    sql += tableColumns.get(i);
+                }
+                sql += " FROM " + tableName;
+                if (envelope != null) {
+                    if (!hasGeom) {
+                        throw new SQLException("The table " + tableName + " is not spatial.");
+                    }
+                    sql += " WHERE " + getSpatialindexBBoxParametersWherePiece(tableName, gCol);
+                }
+                // a negative limit means no limit in sqlite
+                sql += " LIMIT ?";
+                return new CachedQuery(mConn.prepareStatement(sql), hasGeom ? 0 : -1);
+            });
+        QueryResult queryResult = new QueryResult();
+        try {
+            int index = query.setBBoxParameters(envelope, 1);
+            query.statement.setInt(index, limit > 0 ? limit : -1);
+
+            try (ResultSet rs = query.statement.executeQuery()) {
+                ResultSetMetaData rsmd = rs.getMetaData();
+                int columnCount = rsmd.getColumnCount();
+                for (int i = 1; i <= columnCount; i++) {
+                    queryResult.names.add(rsmd.getColumnName(i));
+                    queryResult.types.add(rsmd.getColumnTypeName(i));
+                }
+                queryResult.geometryIndex = query.geometryIndex;
+                streamRecords(rs, columnCount, query.geometryIndex, threads, consumer);
+            }
+        } finally {
+            releaseQuery(key, query);
+        }
+        return queryResult;
+    }
+
+    /**
+     * Insert geometries into a table in batches.
+     * 
+     * <p>The geometries are passed as WKB and committed every <code>batchSize</code>
+     * inserts, which is orders of magnitude faster than {@link #insertGeometry(String, Geometry, String)}
+     * on large imports.</p>
+     * 
+     * @param tableName the table to use.
+     * @param geometries the geometries to insert.
+     * @param epsg the optional epsg.
+     * @param batchSize the number of inserts per transaction.
+     * @return the number of inserted geometries.
+     * @throws SQLException
+     */
+    public long insertGeometries(String tableName, Iterable<Geometry> geometries, String epsg, int batchSize)
+        throws SQLException {
+        String epsgStr = "4326";
+        if (epsg != null) {
+            epsgStr = epsg;
+        }
+        if (batchSize < 1) {
+            batchSize = 1;
+        }
+
+        SpatialiteGeometryColumns gc = getGeometryColumnsForTable(tableName);
+        String sql =
+            "INSERT INTO " + tableName + " (" + gc.f_geometry_column + ") VALUES (GeomFromWKB(?, " + epsgStr + "))";
+        boolean autoCommit = mConn.getAutoCommit();
+        mConn.setAutoCommit(false);
+        long count = 0;
+        try (PreparedStatement pStmt = mConn.prepareStatement(sql)) {
+            WKBWriter wkbWriter = new WKBWriter();
+            int inBatch = 0;
+            for (Geometry geometry : geometries) {
+                pStmt.setBytes(1, wkbWriter.write(geometry));
+                pStmt.addBatch();
+                inBatch++;
+                if (inBatch == batchSize) {
+                    pStmt.executeBatch();
+                    mConn.commit();
+                    count += inBatch;
+                    inBatch = 0;
+                }
+            }
+            if (inBatch > 0) {
+                pStmt.executeBatch();
+                mConn.commit();
+                count += inBatch;
+            }
+        } catch (SQLException e) {
+            mConn.rollback();
+            throw e;
+        } finally {
+            mConn.setAutoCommit(autoCommit);
+        }
+        return count;
+    }
+
+    /**
+     * Close and forget the cached prepared statements.
+     * 
+     * <p>This is done by the methods of this class that change the structure of the 
+     * database. It needs to be called if the structure of a queried table is changed 
+     * by other means, for example through {@link #getConnection()}.</p>
+     */
+    public void clearStatementsCache() {
+        synchronized (queriesCache) {
+            for (CachedQuery query : queriesCache.values()) {
+                query.close();
+            }
+            queriesCache.clear();
+            queriesGeneration++;
+        }
+    }
+
+    /**
+     * Take a query out of the cache, preparing a new one if none is idle.
+     * 
+     * <p>The query has to be given back through {@link #releaseQuery(String, CachedQuery)}.</p>
+     */
+    private CachedQuery borrowQuery(String key, QueryCreator creator) throws SQLException {
+        int generation;
+        synchronized (queriesCache) {
+            CachedQuery query = queriesCache.remove(key);
+            if (query != null) {
+                return query;
+            }
+            generation = queriesGeneration;
+        }
+        CachedQuery query = creator.create();
+        query.generation = generation;
+        return query;
+    }
+
+    /**
+     * Put a borrowed query back into the cache, or close it if it is outdated 
+     * or an equivalent query has been cached in the meantime.
+     */
+    private void releaseQuery(String key, CachedQuery query) {
+        synchronized (queriesCache) {
+            if (query.generation == queriesGeneration && !queriesCache.containsKey(key)) {
+                queriesCache.put(key, query);
+                return;
+            }
+        }
+        query.close();
+    }
+
+    private static boolean isDdl(String sql) {
+        String start = sql.trim().toUpperCase();
+        return start.startsWith("CREATE") || start.startsWith("DROP") || start.startsWith("ALTER");
+    }
+
+    /**
+     * Streams the records of a resultset, decoding the WKB geometry column. 
+     * 
+     * <p>With more than one thread, blocks of records are decoded on a worker pool
+     * while the resultset is read, and are handed to the consumer in order.</p>
+     */
+    private long streamRecords(ResultSet rs, int columnCount, int geometryIndex, int threads,
+        Consumer<Object[]> consumer) throws SQLException, ParseException {
+        long count = 0;
+        if (threads < 2 || geometryIndex < 0) {
+            WKBReader wkbReader = new WKBReader();
+            while (rs.next()) {
+                Object[] rec = readRecord(rs, columnCount);
+                if (geometryIndex >= 0) {
+                    byte[] geomBytes = (byte[]) rec[geometryIndex];
+                    rec[geometryIndex] = geomBytes != null ? wkbReader.read(geomBytes) : null;
+                }
+                consumer.accept(rec);
+                count++;
+            }
+            return count;
+        }
+
+        ExecutorService decodePool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<WKBReader> wkbReaders = ThreadLocal.withInitial(WKBReader::new);
+        ArrayDeque<Future<List<Object[]>>> pending = new ArrayDeque<>();
+        try {
+            List<Object[]> block = new ArrayList<>(DECODE_BLOCK_SIZE);
             while (rs.next()) {
-                byte[] geomBytes = rs.getBytes(1);
-                Geometry geometry = wkbReader.read(geomBytes);
-                geoms.add(geometry);
+                block.add(readRecord(rs, columnCount));
+                if (block.size() == DECODE_BLOCK_SIZE) {
+                    pending.add(decodePool.submit(decodeTask(block, geometryIndex, wkbReaders)));
+                    block = new ArrayList<>(DECODE_BLOCK_SIZE);
+                    // keep the pending blocks bounded
+                    while (pending.size() > 2 * threads) {
+                        count += consumeBlock(pending.poll(), consumer);
+                    }
+                }
+            }
+            if (block.size() > 0) {
+                pending.add(decodePool.submit(decodeTask(block, geometryIndex, wkbReaders)));
+            }
+            while (!pending.isEmpty()) {
+                count += consumeBlock(pending.poll(), consumer);
+            }
+            return count;
+        } finally {
+            decodePool.shutdownNow();
+        }
+    }
+
+    private Object[] readRecord(ResultSet rs, int columnCount) throws SQLException {
+        Object[] rec = new Object[columnCount];
+        for (int j = 1; j <= columnCount; j++) {
+            rec[j - 1] = rs.getObject(j);
+        }
+        return rec;
+    }
+
+    private Callable<List<Object[]>> decodeTask(List<Object[]> block, int geometryIndex,
+        ThreadLocal<WKBReader> wkbReaders) {
+        return () -> {
+            WKBReader wkbReader = wkbReaders.get();
+            for (Object[] rec : block) {
+                byte[] geomBytes = (byte[]) rec[geometryIndex];
+                rec[geometryIndex] = geomBytes != null ? wkbReader.read(geomBytes) : null;
+            }
+            return block;
+        };
+    }
+
+    private long consumeBlock(Future<List<Object[]>> future, Consumer<Object[]> consumer) throws ParseException {
+        List<Object[]> block;
+        try {
+            block = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ParseException("Interrupted while decoding geometries.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
             }
-            return geoms;
+            throw new ParseException(cause.getMessage());
+        }
+        for (Object[] rec : block) {
+            consumer.accept(rec);
         }
+        return block.size();
     }
 
     /**
@@ -1017,6 +1283,17 @@ public class SpatialiteDb implements AutoCloseable {
         return sql;
     }
 
+    /**
+     * Get the where piece of a Spatialindex based BBOX query with the bounds as 
+     * parameters, in the order x1, y1, x2, y2 twice.
+     */
+    private String getSpatialindexBBoxParametersWherePiece(String tableName, SpatialiteGeometryColumns gCol) {
+        return "ST_Intersects(" + gCol.f_geometry_column + ", BuildMbr(?, ?, ?, ?)) = 1 AND " + tableName
+            + ".ROWID IN ( SELECT ROWID FROM SpatialIndex WHERE "//
+            + "f_table_name = '" + tableName + "' AND " //
+            + "search_frame = BuildMbr(?, ?, ?, ?))";
+    }
+
     /**
      * Get the where query piece based on a geometry intersection.
      * 
@@ -1110,6 +1387,7 @@ public class SpatialiteDb implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        clearStatementsCache();
         if (mConn != null) {
             mConn.close();
         }
@@ -1148,4 +1426,46 @@ public class SpatialiteDb implements AutoCloseable {
         return sql;
     }
 
+    private interface QueryCreator {
+        CachedQuery create() throws SQLException;
+    }
+
+    /**
+     * A prepared query together with the index of its geometry column.
+     */
+    private static class CachedQuery {
+        final PreparedStatement statement;
+        final int geometryIndex;
+        int generation;
+
+        CachedQuery(PreparedStatement statement, int geometryIndex) {
+            this.statement = statement;
+            this.geometryIndex = geometryIndex;
+        }
+
+        /**
+         * @return the index of the next free parameter.
+         */
+        int setBBoxParameters(Envelope envelope, int index) throws SQLException {
+            if (envelope == null) {
+                return index;
+            }
+            for (int i = 0; i < 2; i++) {
+                statement.setDouble(index++, envelope.getMinX());
+                statement.setDouble(index++, envelope.getMinY());
+                statement.setDouble(index++, envelope.getMaxX());
+                statement.setDouble(index++, envelope.getMaxY());
+            }
+            return index;
+        }
+
+        void close() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // ignore, the statement is discarded anyways
+            }
+        }
+    }
+
 }
@@ -24,6 +24,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -69,6 +72,69 @@ public class CompressionUtilities {
         }
     }
 
+    /**
+     * Compress a byte array with the Deflate algorithm.
+     * 
+     * @param bytes the array to compress.
+     * @param length the number of bytes of the array to consider.
+     * @return the compressed bytes.
+     */
+    public static byte[] deflate( byte[] bytes, int length ) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, length / 2)];
+            int size = 0;
+            while( !deflater.finished() ) {
+                if (size == buffer.length) {
+                    byte[] tmp = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, tmp, 0, size);
+                    buffer = tmp;
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+            byte[] compressed = new byte[size];
+            System.arraycopy(buffer, 0, compressed, 0, size);
+            return compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Uncompress a byte array compressed with {@link #deflate(byte[], int)}.
+     * 
+     * @param compressed the compressed bytes.
+     * @param offset the offset of the compressed data in the array.
+     * @param uncompressedLength the length of the uncompressed data.
+     * @return the uncompressed bytes.
+     * @throws IOException if the data are corrupted.
+     */
+    public static byte[] inflate( byte[] compressed, int offset, int uncompressedLength ) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, offset, compressed.length - offset);
+            byte[] bytes = new byte[uncompressedLength];
+            int size = 0;
+            while( size < uncompressedLength && !inflater.finished() ) {
+                int read = inflater.inflate(bytes, size, uncompressedLength - size);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += read;
+            }
+            if (size != uncompressedLength) {
+                throw new IOException("Compressed data are truncated.");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
     public static void main( String[] args ) throws IOException {
         String zip = "/home/moovida/TMP/AAAAAAA/geopaparazzi_giovanni.zip";
         String outFolder = "/home/moovida/TMP/AAAAAAA/";
@@ -27,10 +27,10 @@ package org.jgrasstools.gears.utils.clustering;
 public class GvmCluster<S extends GvmSpace, K> {
 
 	/**
-	 * The set of clusters to which this cluster belongs
+	 * The space in which this cluster lies
 	 */
 	
-	final GvmClusters<S, K> clusters;
+	final S space;
 	
 	/**
 	 * The pairings of this cluster with all other clusters.
@@ -82,15 +82,26 @@ public class GvmCluster<S extends GvmSpace, K> {
 	
 	// constructors
 	
-	@SuppressWarnings("unchecked")
 	GvmCluster(GvmClusters<S,K> clusters) {
-		this.clusters = clusters;
+		this(clusters.space, clusters.capacity);
+	}
+	
+	/**
+	 * Creates a cluster that is paired with at most pairsCapacity other clusters.
+	 * 
+	 * @param space the space of the cluster
+	 * @param pairsCapacity the size of the pairs array
+	 */
+	
+	@SuppressWarnings("unchecked")
+	GvmCluster(S space, int pairsCapacity) {
+		this.space = space;
 		removed = false;
 		count = 0;
 		m0 = 0.0;
-		m1 = clusters.space.newOrigin();
-		m2 = clusters.space.newOrigin();
-		pairs = new GvmClusterPair[clusters.capacity];
+		m1 = space.newOrigin();
+		m2 = space.newOrigin();
+		pairs = new GvmClusterPair[pairsCapacity];
 		update();
 	}
 	
@@ -138,8 +149,8 @@ public class GvmCluster<S extends GvmSpace, K> {
 	void clear() {
 		count = 0;
 		m0 = 0.0;
-		clusters.space.setToOrigin(m1);
-		clusters.space.setToOrigin(m2);
+		space.setToOrigin(m1);
+		space.setToOrigin(m2);
 		var = 0.0;
 		key = null;
 	}
@@ -156,12 +167,12 @@ public class GvmCluster<S extends GvmSpace, K> {
 	void set(final double m, final Object pt) {
 		if (m == 0.0) {
 			if (count != 0) {
-				clusters.space.setToOrigin(m1);
-				clusters.space.setToOrigin(m2);
+				space.setToOrigin(m1);
+				space.setToOrigin(m2);
 			}
 		} else {
-			clusters.space.setToScaled(m1, m, pt);
-			clusters.space.setToScaledSqr(m2, m, pt);
+			space.setToScaled(m1, m, pt);
+			space.setToScaledSqr(m2, m, pt);
 		}
 		count = 1;
 		m0 = m;
@@ -185,8 +196,8 @@ public class GvmCluster<S extends GvmSpace, K> {
 			
 			if (m != 0.0) {
 				m0 += m;
-				clusters.space.addScaled(m1, m, pt);
-				clusters.space.addScaledSqr(m2, m, pt);
+				space.addScaled(m1, m, pt);
+				space.addScaledSqr(m2, m, pt);
 				update();
 			}
 		}
@@ -202,8 +213,8 @@ public class GvmCluster<S extends GvmSpace, K> {
 		if (cluster == this) throw new IllegalArgumentException("cannot set cluster to itself");
 		
 		m0 = cluster.m0;
-		clusters.space.setTo(m1, cluster.m1);
-		clusters.space.setTo(m2, cluster.m2);
+		space.setTo(m1, cluster.m1);
+		space.setTo(m2, cluster.m2);
 		var = cluster.var;
 	}
 	
@@ -223,8 +234,8 @@ public class GvmCluster<S extends GvmSpace, K> {
 			count += cluster.count;
 			//TODO accelerate add
 			m0 += cluster.m0;
-            clusters.space.add(m1, cluster.m1);
-            clusters.space.add(m2, cluster.m2);
+            space.add(m1, cluster.m1);
+            space.add(m2, cluster.m2);
 			update();
 		}
 	}
@@ -238,7 +249,7 @@ public class GvmCluster<S extends GvmSpace, K> {
 	 */
 	
 	double test(double m, Object pt) {
-		return m0 == 0.0 && m == 0.0 ? 0.0 : clusters.space.variance(m0, m1, m2, m, pt) - var;
+		return m0 == 0.0 && m == 0.0 ? 0.0 : space.variance(m0, m1, m2, m, pt) - var;
 	}
 
 	/**
@@ -252,7 +263,7 @@ public class GvmCluster<S extends GvmSpace, K> {
 
 	//TODO: change for consistency with other test method : return increase in variance
 	double test(GvmCluster<S,K> cluster) {
-		return m0 == 0.0 && cluster.m0 == 0.0 ? 0.0 : clusters.space.variance(m0, m1, m2, cluster.m0, cluster.m1, cluster.m2);
+		return m0 == 0.0 && cluster.m0 == 0.0 ? 0.0 : space.variance(m0, m1, m2, cluster.m0, cluster.m1, cluster.m2);
 	}
 
 	// private utility methods
@@ -262,7 +273,7 @@ public class GvmCluster<S extends GvmSpace, K> {
 	 */
 	
 	private void update() {
-		var = m0 == 0.0 ? 0.0 : clusters.space.variance(m0, m1, m2);
+		var = m0 == 0.0 ? 0.0 : space.variance(m0, m1, m2);
 	}
 	
 }
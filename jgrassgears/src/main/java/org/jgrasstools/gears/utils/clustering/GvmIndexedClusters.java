@@ -0,0 +1,416 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.utils.sorting.IndexSortAlgorithm;
+
+/**
+ * Spatially indexed variant of {@link GvmClusters} for points in a {@link GvmVectorSpace}.
+ *
+ * <p>
+ * The centroids of the clusters are kept in a grid of square cells on the first two
+ * coordinates. A new point is only tested against the clusters in its cell and in the
+ * eight around it and only pairs of clusters in neighbouring cells are candidates
+ * for a merge, so that the cost of a point does not grow with the number of clusters.
+ * The cell size should be in the order of the extent expected for a cluster: clusters
+ * farther apart than a cell are never merged.
+ * </p>
+ * <p>
+ * Big sets of points can be clustered in parallel through {@link #addAll(double[], double[][], List, int)}.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ *
+ * @param <K> the key type
+ */
+public class GvmIndexedClusters<K> {
+
+    /* the strips keep some more clusters than their share, to leave room to the reconciliation */
+    private static final double STRIP_CAPACITY_FACTOR = 1.25;
+
+    private final GvmVectorSpace space;
+    private final int capacity;
+    private final double cellSize;
+
+    private GvmKeyer<K> keyer = new GvmDefaultKeyer<K>();
+
+    private final List<IndexedCluster<K>> clusters = new ArrayList<IndexedCluster<K>>();
+    private final HashMap<Long, List<IndexedCluster<K>>> cells = new HashMap<Long, List<IndexedCluster<K>>>();
+    private final GvmClusterPairs<GvmVectorSpace, K> pairs = new GvmClusterPairs<GvmVectorSpace, K>(64);
+
+    /**
+     * Constructor.
+     *
+     * @param space the space, with at least two dimensions.
+     * @param capacity the greatest number of clusters.
+     * @param cellSize the size of the cells of the index.
+     */
+    public GvmIndexedClusters( GvmVectorSpace space, int capacity, double cellSize ) {
+        if (space == null || space.getDimensions() < 2) {
+            throw new ModelsIllegalargumentException("A space of at least two dimensions is needed.", this);
+        }
+        if (capacity < 1) {
+            throw new ModelsIllegalargumentException("The capacity needs to be positive.", this);
+        }
+        if (!(cellSize > 0)) {
+            throw new ModelsIllegalargumentException("The cell size needs to be positive.", this);
+        }
+        this.space = space;
+        this.capacity = capacity;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the keyer used to assign keys to clusters.
+     */
+    public GvmKeyer<K> getKeyer() {
+        return keyer;
+    }
+
+    /**
+     * @param keyer the keyer to use, it needs to be thread safe for parallel clustering.
+     */
+    public void setKeyer( GvmKeyer<K> keyer ) {
+        if (keyer == null)
+            throw new ModelsIllegalargumentException("The keyer can't be null.", this);
+        this.keyer = keyer;
+    }
+
+    /**
+     * @return the greatest number of clusters.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the space in which clustering is performed.
+     */
+    public GvmVectorSpace getSpace() {
+        return space;
+    }
+
+    /**
+     * Adds a point to be clustered.
+     *
+     * @param m the mass at the point.
+     * @param pt the coordinates of the point.
+     * @param key a key assigned to the point, may be <code>null</code>.
+     */
+    public void add( double m, Object pt, K key ) {
+        if (m == 0.0)
+            return;
+        if (clusters.size() < capacity) {
+            IndexedCluster<K> cluster = new IndexedCluster<K>(space);
+            cluster.set(m, pt);
+            cluster.key = keyer.addKey(cluster, key);
+            clusters.add(cluster);
+            attach(cluster);
+            return;
+        }
+
+        // identify cheapest merge
+        GvmClusterPair<GvmVectorSpace, K> mergePair = pairs.peek();
+        double mergeT = mergePair == null ? Double.MAX_VALUE : mergePair.value;
+        // find cheapest addition among the near clusters
+        double[] coords = (double[]) pt;
+        int col = cellIndex(coords[0]);
+        int row = cellIndex(coords[1]);
+        IndexedCluster<K> additionC = null;
+        double additionT = Double.MAX_VALUE;
+        for( int c = col - 1; c <= col + 1; c++ ) {
+            for( int r = row - 1; r <= row + 1; r++ ) {
+                List<IndexedCluster<K>> cellClusters = cells.get(cellKey(c, r));
+                if (cellClusters == null)
+                    continue;
+                for( IndexedCluster<K> cluster : cellClusters ) {
+                    double t = cluster.test(m, pt);
+                    if (t < additionT) {
+                        additionC = cluster;
+                        additionT = t;
+                    }
+                }
+            }
+        }
+        if (additionC == null && mergePair == null) {
+            // all clusters are isolated, fall back to all of them
+            for( IndexedCluster<K> cluster : clusters ) {
+                double t = cluster.test(m, pt);
+                if (t < additionT) {
+                    additionC = cluster;
+                    additionT = t;
+                }
+            }
+        }
+
+        if (additionC != null && additionT <= mergeT) {
+            // chose addition
+            additionC.add(m, pt);
+            additionC.key = keyer.addKey(additionC, key);
+            relocate(additionC);
+        } else {
+            // choose merge, the lighter cluster is reused for the point
+            IndexedCluster<K> c1 = cast(mergePair.c1);
+            IndexedCluster<K> c2 = cast(mergePair.c2);
+            if (c1.m0 < c2.m0) {
+                c1 = c2;
+                c2 = cast(mergePair.c1);
+            }
+            c1.key = keyer.mergeKeys(c1, c2);
+            c1.add(c2);
+            relocate(c1);
+            c2.set(m, pt);
+            c2.key = null;
+            c2.key = keyer.addKey(c2, key);
+            relocate(c2);
+        }
+    }
+
+    /**
+     * Adds a set of points, clustering them in parallel.
+     *
+     * <p>
+     * The points are split in strips of equal count along the first coordinate, which are
+     * clustered independently, in the order the points are given, each with a share of the
+     * capacity a bit larger than its part of the points. The clusters of the strips are then
+     * collected and the cheapest pairs of neighbouring clusters, among which those split by the
+     * border of two strips, are merged until the capacity is respected. When only isolated
+     * clusters are left, the cheapest pairs among all of them are merged.
+     * </p>
+     *
+     * @param masses the masses of the points.
+     * @param points the coordinates of the points.
+     * @param keys the keys of the points or <code>null</code>.
+     * @param threads the number of threads to use.
+     */
+    public void addAll( final double[] masses, final double[][] points, final List<K> keys, int threads ) {
+        int n = masses.length;
+        int workers = Math.max(1, Math.min(threads, Math.min(capacity, n)));
+        if (workers == 1) {
+            for( int i = 0; i < n; i++ ) {
+                add(masses[i], points[i], keys == null ? null : keys.get(i));
+            }
+            return;
+        }
+
+        double[] xs = new double[n];
+        for( int i = 0; i < n; i++ ) {
+            xs[i] = points[i][0];
+        }
+        int[] order = new IndexSortAlgorithm(null, workers).sort(xs);
+
+        List<GvmIndexedClusters<K>> strips = new ArrayList<GvmIndexedClusters<K>>();
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( int w = 0; w < workers; w++ ) {
+                final int[] indexes = Arrays.copyOfRange(order, (int) ((long) n * w / workers),
+                        (int) ((long) n * (w + 1) / workers));
+                // cluster in the original order of the points
+                Arrays.sort(indexes);
+                int share = (int) Math.max(1, Math.ceil(STRIP_CAPACITY_FACTOR * capacity * indexes.length / n));
+                final GvmIndexedClusters<K> strip = new GvmIndexedClusters<K>(space, share, cellSize);
+                strip.setKeyer(keyer);
+                strips.add(strip);
+                futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        for( int i : indexes ) {
+                            strip.add(masses[i], points[i], keys == null ? null : keys.get(i));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for( Future<Object> future : futures ) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelsRuntimeException("Clustering interrupted.", this);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException("Error during the clustering: " + e.getCause().getMessage(), this);
+        } finally {
+            fixedThreadPool.shutdownNow();
+        }
+
+        /*
+         * reconcile the strips
+         */
+        for( GvmIndexedClusters<K> strip : strips ) {
+            for( IndexedCluster<K> cluster : strip.clusters ) {
+                cluster.neighbourPairs.clear();
+                clusters.add(cluster);
+                attach(cluster);
+            }
+        }
+        while( clusters.size() > capacity ) {
+            GvmClusterPair<GvmVectorSpace, K> mergePair = pairs.peek();
+            if (mergePair == null) {
+                // all clusters are isolated, fall back to all of them
+                mergePair = cheapestPair();
+            }
+            IndexedCluster<K> c1 = cast(mergePair.c1);
+            IndexedCluster<K> c2 = cast(mergePair.c2);
+            if (c1.m0 < c2.m0) {
+                c1 = c2;
+                c2 = cast(mergePair.c1);
+            }
+            c1.key = keyer.mergeKeys(c1, c2);
+            c1.add(c2);
+            detach(c2);
+            clusters.remove(c2);
+            relocate(c1);
+        }
+    }
+
+    /**
+     * Obtains the clusters for the points added.
+     *
+     * @return the result of clustering the points thus far added.
+     */
+    public List<GvmResult<K>> results() {
+        List<GvmResult<K>> list = new ArrayList<GvmResult<K>>(clusters.size());
+        for( IndexedCluster<K> cluster : clusters ) {
+            list.add(new GvmResult<K>(cluster));
+        }
+        return list;
+    }
+
+    /**
+     * Finds the cheapest merge among all the clusters, whether they are neighbours or not.
+     */
+    private GvmClusterPair<GvmVectorSpace, K> cheapestPair() {
+        IndexedCluster<K> cheapest1 = null;
+        IndexedCluster<K> cheapest2 = null;
+        double cheapestT = Double.MAX_VALUE;
+        for( int i = 0; i < clusters.size(); i++ ) {
+            IndexedCluster<K> c1 = clusters.get(i);
+            for( int j = i + 1; j < clusters.size(); j++ ) {
+                IndexedCluster<K> c2 = clusters.get(j);
+                double t = c1.test(c2) - c1.var - c2.var;
+                if (cheapest1 == null || t < cheapestT) {
+                    cheapest1 = c1;
+                    cheapest2 = c2;
+                    cheapestT = t;
+                }
+            }
+        }
+        return new GvmClusterPair<GvmVectorSpace, K>(cheapest1, cheapest2);
+    }
+
+    private int cellIndex( double coordinate ) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long cellKey( int col, int row ) {
+        return ((long) col << 32) ^ (row & 0xffffffffL);
+    }
+
+    private long cellOf( IndexedCluster<K> cluster ) {
+        double[] m1 = (double[]) cluster.m1;
+        return cellKey(cellIndex(m1[0] / cluster.m0), cellIndex(m1[1] / cluster.m0));
+    }
+
+    /**
+     * Puts the cluster in the cell of its centroid and pairs it with the clusters around.
+     */
+    private void attach( IndexedCluster<K> cluster ) {
+        cluster.cell = cellOf(cluster);
+        int col = (int) (cluster.cell >> 32);
+        int row = (int) cluster.cell;
+        for( int c = col - 1; c <= col + 1; c++ ) {
+            for( int r = row - 1; r <= row + 1; r++ ) {
+                List<IndexedCluster<K>> cellClusters = cells.get(cellKey(c, r));
+                if (cellClusters == null)
+                    continue;
+                for( IndexedCluster<K> other : cellClusters ) {
+                    GvmClusterPair<GvmVectorSpace, K> pair = new GvmClusterPair<GvmVectorSpace, K>(other, cluster);
+                    pairs.add(pair);
+                    other.neighbourPairs.add(pair);
+                    cluster.neighbourPairs.add(pair);
+                }
+            }
+        }
+        List<IndexedCluster<K>> cellClusters = cells.get(cluster.cell);
+        if (cellClusters == null) {
+            cellClusters = new ArrayList<IndexedCluster<K>>();
+            cells.put(cluster.cell, cellClusters);
+        }
+        cellClusters.add(cluster);
+    }
+
+    /**
+     * Removes the cluster from its cell and drops its pairs.
+     */
+    private void detach( IndexedCluster<K> cluster ) {
+        List<IndexedCluster<K>> cellClusters = cells.get(cluster.cell);
+        cellClusters.remove(cluster);
+        if (cellClusters.isEmpty()) {
+            cells.remove(cluster.cell);
+        }
+        for( GvmClusterPair<GvmVectorSpace, K> pair : cluster.neighbourPairs ) {
+            pairs.remove(pair);
+            IndexedCluster<K> other = cast(pair.c1 == cluster ? pair.c2 : pair.c1);
+            other.neighbourPairs.remove(pair);
+        }
+        cluster.neighbourPairs.clear();
+    }
+
+    /**
+     * Updates the index after the cluster changed.
+     */
+    private void relocate( IndexedCluster<K> cluster ) {
+        if (cellOf(cluster) == cluster.cell) {
+            for( GvmClusterPair<GvmVectorSpace, K> pair : cluster.neighbourPairs ) {
+                pairs.reprioritize(pair);
+            }
+        } else {
+            detach(cluster);
+            attach(cluster);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> IndexedCluster<K> cast( GvmCluster<GvmVectorSpace, K> cluster ) {
+        return (IndexedCluster<K>) cluster;
+    }
+
+    /**
+     * A cluster that knows its cell and the pairs with its neighbours.
+     */
+    private static class IndexedCluster<K> extends GvmCluster<GvmVectorSpace, K> {
+        long cell;
+        final List<GvmClusterPair<GvmVectorSpace, K>> neighbourPairs = new ArrayList<GvmClusterPair<GvmVectorSpace, K>>();
+
+        IndexedCluster( GvmVectorSpace space ) {
+            super(space, 0);
+        }
+    }
+}
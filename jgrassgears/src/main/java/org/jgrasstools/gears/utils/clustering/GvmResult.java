@@ -84,7 +84,7 @@ public class GvmResult<K> {
 		variance = cluster.var / mass;
 		stdDeviation = -1.0;
 		key = cluster.key;
-		space = cluster.clusters.space;
+		space = cluster.space;
 		point = space.newCopy(cluster.m1);
 		space.scale(point, 1.0 / mass);
 	}
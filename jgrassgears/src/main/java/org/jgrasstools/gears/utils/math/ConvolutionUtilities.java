@@ -0,0 +1,189 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math;
+
+/**
+ * Discrete linear convolution of series.
+ *
+ * <p>
+ * Short series are convolved directly, long ones through the fast fourier
+ * transform, which takes O((n+m) log(n+m)) instead of O(n*m).
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ConvolutionUtilities {
+
+    /**
+     * Below this number of multiplications the direct convolution is used.
+     */
+    public static final long DIRECT_THRESHOLD = 1L << 16;
+
+    private ConvolutionUtilities() {
+    }
+
+    /**
+     * Convolve two series, choosing the direct or the fft method by length.
+     *
+     * @param signal the first series.
+     * @param kernel the second series.
+     * @param length the length of the result to return. The full convolution is
+     *          <code>signal.length + kernel.length - 1</code> long: shorter lengths
+     *          truncate it, longer ones are padded with zeros.
+     * @return the convolution, <code>result[k] = sum(signal[i] * kernel[k - i])</code>.
+     */
+    public static double[] convolve( double[] signal, double[] kernel, int length ) {
+        long directCost = (long) Math.min(signal.length, kernel.length) * length;
+        if (directCost <= DIRECT_THRESHOLD) {
+            return convolveDirect(signal, kernel, length);
+        } else {
+            return convolveFft(signal, kernel, length);
+        }
+    }
+
+    /**
+     * Convolve two series by direct summation.
+     *
+     * <p>
+     * The products are summed in the order of the signal, zero signal values being skipped.
+     * </p>
+     *
+     * @param signal the first series.
+     * @param kernel the second series.
+     * @param length the length of the result.
+     * @return the convolution.
+     * @see #convolve(double[], double[], int)
+     */
+    public static double[] convolveDirect( double[] signal, double[] kernel, int length ) {
+        double[] result = new double[length];
+        for( int i = 0; i < signal.length && i < length; i++ ) {
+            double s = signal[i];
+            if (s == 0.0) {
+                continue;
+            }
+            int end = Math.min(kernel.length, length - i);
+            for( int j = 0; j < end; j++ ) {
+                result[i + j] += s * kernel[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convolve two series through the fast fourier transform.
+     *
+     * @param signal the first series.
+     * @param kernel the second series.
+     * @param length the length of the result.
+     * @return the convolution.
+     * @see #convolve(double[], double[], int)
+     */
+    public static double[] convolveFft( double[] signal, double[] kernel, int length ) {
+        double[] result = new double[length];
+        if (signal.length == 0 || kernel.length == 0) {
+            return result;
+        }
+        int signalLength = Math.min(signal.length, length);
+        int kernelLength = Math.min(kernel.length, length);
+        int fullLength = signalLength + kernelLength - 1;
+        int size = Integer.highestOneBit(fullLength);
+        if (size < fullLength) {
+            size = size << 1;
+        }
+
+        double[] re1 = new double[size];
+        double[] im1 = new double[size];
+        double[] re2 = new double[size];
+        double[] im2 = new double[size];
+        System.arraycopy(signal, 0, re1, 0, signalLength);
+        System.arraycopy(kernel, 0, re2, 0, kernelLength);
+
+        fft(re1, im1, false);
+        fft(re2, im2, false);
+        for( int i = 0; i < size; i++ ) {
+            double re = re1[i] * re2[i] - im1[i] * im2[i];
+            double im = re1[i] * im2[i] + im1[i] * re2[i];
+            re1[i] = re;
+            im1[i] = im;
+        }
+        fft(re1, im1, true);
+
+        int copy = Math.min(fullLength, length);
+        for( int i = 0; i < copy; i++ ) {
+            result[i] = re1[i] / size;
+        }
+        return result;
+    }
+
+    /**
+     * In place radix 2 fast fourier transform.
+     *
+     * <p>The inverse transform is not scaled by the size.</p>
+     *
+     * @param re the real parts, of a size that is a power of 2.
+     * @param im the imaginary parts.
+     * @param inverse if <code>true</code>, the inverse transform is calculated.
+     */
+    public static void fft( double[] re, double[] im, boolean inverse ) {
+        int n = re.length;
+        if (Integer.bitCount(n) > 1) {
+            throw new IllegalArgumentException("The size of the transform has to be a power of 2: " + n);
+        }
+
+        // bit reversal permutation
+        for( int i = 1, j = 0; i < n; i++ ) {
+            int bit = n >> 1;
+            for( ; (j & bit) != 0; bit >>= 1 ) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double tmp = re[i];
+                re[i] = re[j];
+                re[j] = tmp;
+                tmp = im[i];
+                im[i] = im[j];
+                im[j] = tmp;
+            }
+        }
+
+        for( int len = 2; len <= n; len <<= 1 ) {
+            double angle = 2 * Math.PI / len * (inverse ? 1 : -1);
+            int half = len >> 1;
+            // twiddles are calculated directly to avoid the error of recurrences on long series
+            double[] cos = new double[half];
+            double[] sin = new double[half];
+            for( int k = 0; k < half; k++ ) {
+                cos[k] = Math.cos(angle * k);
+                sin[k] = Math.sin(angle * k);
+            }
+            for( int i = 0; i < n; i += len ) {
+                for( int k = 0; k < half; k++ ) {
+                    int a = i + k;
+                    int b = a + half;
+                    double re2 = re[b] * cos[k] - im[b] * sin[k];
+                    double im2 = re[b] * sin[k] + im[b] * cos[k];
+                    re[b] = re[a] - re2;
+                    im[b] = im[a] - im2;
+                    re[a] += re2;
+                    im[a] += im2;
+                }
+            }
+        }
+    }
+}
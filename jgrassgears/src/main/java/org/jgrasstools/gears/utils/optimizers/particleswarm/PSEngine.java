@@ -17,10 +17,22 @@
  */
 package org.jgrasstools.gears.utils.optimizers.particleswarm;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
 
 /**
@@ -29,10 +41,41 @@ import org.jgrasstools.gears.utils.math.NumericsUtilities;
  * <p>http://www.borgelt.net/psopt.html
  * <p>Biblio: http://ncra.ucd.ie/COMP30290/crc2006/Olapeju_Ayoola_03304281.pdf ?</p>
  * 
+ * <p>With more than one thread the {@link IPSFunction#evaluate(int, int, double[], double[]...)}
+ * method is called concurrently for different particles and needs to be thread safe.</p>
+ * 
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public class PSEngine {
 
+    /**
+     * The ways the particles share the best positions found.
+     */
+    public enum Topology {
+        /**
+         * The particles are evaluated one after the other, each one moving towards 
+         * the global best left by the previous.
+         */
+        SEQUENTIAL,
+        /**
+         * All the particles of an iteration move towards the same global best and are evaluated
+         * concurrently. The bests are updated afterwards in particle order, so that the result
+         * does not depend on the number of threads.
+         */
+        SYNCHRONOUS,
+        /**
+         * Every particle moves on as soon as its own evaluation is done, towards the global best
+         * of that moment, without waiting for the rest of the swarm. With more than one thread 
+         * the runs are not reproducible.
+         */
+        ASYNCHRONOUS,
+        /**
+         * The swarm is split into islands that move synchronously towards their own best and 
+         * pass it along a ring every migration interval.
+         */
+        ISLANDS
+    }
+
     private double accelerationFactorLocal;
     private double accelerationFactorGlobal;
     private double initDecelerationFactor;
@@ -48,6 +91,19 @@ public class PSEngine {
     private double[][] ranges;
     private String prefix;
 
+    private Topology topology = Topology.SEQUENTIAL;
+    private int threads = 1;
+    private Long seed = null;
+    private int islandsNum = 4;
+    private int migrationInterval = 10;
+
+    /* the best of every island, a single one if not in islands topology */
+    private int groupsNum;
+    private double[] groupBests;
+    private double[][] groupBestLocations;
+
+    private ExecutorService executor;
+
     /**
      * Constructor.
      * 
@@ -84,6 +140,50 @@ public class PSEngine {
         this.ranges = ranges;
     }
 
+    /**
+     * Set the topology of the swarm, {@link Topology#SEQUENTIAL} by default.
+     * 
+     * @param topology the topology to use.
+     */
+    public void setTopology( Topology topology ) {
+        this.topology = topology;
+    }
+
+    /**
+     * Set the number of threads used to evaluate the particles.
+     * 
+     * <p>Ignored by the {@link Topology#SEQUENTIAL} topology.</p>
+     * 
+     * @param threads the number of threads.
+     */
+    public void setThreads( int threads ) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Set the seed of the random generator, to make runs repeatable.
+     * 
+     * @param seed the seed.
+     */
+    public void setSeed( long seed ) {
+        this.seed = seed;
+    }
+
+    /**
+     * Set the islands for the {@link Topology#ISLANDS} topology.
+     * 
+     * @param islandsNum the number of islands the swarm is split into.
+     * @param migrationInterval the number of iterations between two migrations of the island bests.
+     */
+    public void setIslands( int islandsNum, int migrationInterval ) {
+        if (islandsNum < 1 || migrationInterval < 1) {
+            throw new ModelsIllegalargumentException("The number of islands and the migration interval need to be positive.",
+                    this);
+        }
+        this.islandsNum = islandsNum;
+        this.migrationInterval = migrationInterval;
+    }
+
     /**
      * Run the particle swarm engine.
      * @throws Exception 
@@ -93,23 +193,41 @@ public class PSEngine {
             throw new ModelsIllegalargumentException("No ranges have been defined for the parameter space.", this);
         }
 
-        createSwarm();
-        double[] previous = null;
-        while( iterationStep <= maxIterations ) {
-            updateSwarm();
-
-            if (printStep()) {
-                System.out.println(prefix + " - ITER: " + iterationStep + " global best: " + globalBest + " - for positions: "
-                        + Arrays.toString(globalBestLocations));
+        if (topology == Topology.ASYNCHRONOUS || (topology != Topology.SEQUENTIAL && threads > 1)) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            createSwarm();
+            if (topology == Topology.ASYNCHRONOUS) {
+                runAsynchronous();
+                return;
             }
+            double[] previous = null;
+            while( iterationStep <= maxIterations ) {
+                updateSwarm();
 
-            if (function.hasConverged(globalBest, globalBestLocations, previous)) {
-                break;
+                if (printStep()) {
+                    printBest();
+                }
+
+                if (function.hasConverged(globalBest, globalBestLocations, previous)) {
+                    break;
+                }
+                previous = globalBestLocations.clone();
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
             }
-            previous = globalBestLocations.clone();
         }
     }
 
+    private void printBest() {
+        System.out.println(prefix + " - ITER: " + iterationStep + " global best: " + globalBest + " - for positions: "
+                + Arrays.toString(globalBestLocations));
+    }
+
     private boolean printStep() {
         if (maxIterations > 10000) {
             if (iterationStep % 1000 == 0) {
@@ -138,66 +256,240 @@ public class PSEngine {
     }
 
     private void createSwarm() throws Exception {
-        rand = new Random();
+        rand = seed == null ? new Random() : new Random(seed);
         iterationStep = 0;
         globalBest = function.getInitialGlobalBest();
+        globalBestLocations = null;
+
+        groupsNum = topology == Topology.ISLANDS ? Math.max(1, Math.min(islandsNum, particlesNum)) : 1;
+        groupBests = new double[groupsNum];
+        Arrays.fill(groupBests, globalBest);
+        groupBestLocations = new double[groupsNum][];
+
         swarm = new Particle[particlesNum];
+        double[][] initialLocations = new double[particlesNum][];
         for( int j = 0; j < swarm.length; j++ ) {
-            swarm[j] = new Particle(ranges);
-            double[] currentLocations = swarm[j].getInitialLocations();
-            double evaluated = function.evaluate(iterationStep, j, currentLocations, ranges);
-            swarm[j].setParticleBestFunction(evaluated);
-            /* find globally best function value */
-            if (function.isBetter(evaluated, globalBest)) {
-                globalBest = evaluated;
-                if (globalBestLocations == null) {
-                    globalBestLocations = new double[currentLocations.length];
-                }
-                for( int k = 0; k < currentLocations.length; k++ ) {
-                    globalBestLocations[k] = currentLocations[k];
-                }
+            swarm[j] = seed == null ? new Particle(ranges) : new Particle(ranges, rand);
+            initialLocations[j] = swarm[j].getInitialLocations();
+        }
+        double[] evaluated = evaluate(initialLocations);
+        for( int j = 0; j < swarm.length; j++ ) {
+            double[] currentLocations = initialLocations[j];
+            swarm[j].setParticleBestFunction(evaluated[j]);
+            /* find group and globally best function value */
+            int group = j % groupsNum;
+            if (function.isBetter(evaluated[j], groupBests[group])) {
+                groupBests[group] = evaluated[j];
+                groupBestLocations[group] = currentLocations.clone();
+            }
+            if (function.isBetter(evaluated[j], globalBest)) {
+                globalBest = evaluated[j];
+                globalBestLocations = currentLocations.clone();
             } else if (globalBestLocations == null) {
-                throw new RuntimeException("No evaluated value found better than the initial global best: " + evaluated + " vs. "
-                        + globalBest);
+                throw new RuntimeException("No evaluated value found better than the initial global best: " + evaluated[j]
+                        + " vs. " + globalBest);
+            }
+        }
+        for( int group = 0; group < groupsNum; group++ ) {
+            if (groupBestLocations[group] == null) {
+                groupBestLocations[group] = globalBestLocations.clone();
             }
         }
     }
 
     private void updateSwarm() throws Exception {
-        // System.out.println("UPDATE SWARM");
         iterationStep++;
-        /* 
-         * velocity decay factor:
-         * 
-         *  - it decreases when the iteration number increases
-         *  - it decreases when the decay factor increases 
-         */
-        double w = initDecelerationFactor * Math.pow(iterationStep, -decayFactor);
-        // System.out.println("W = " + w);
-        /* traverse the particles */
+        double w = decelerationFactor();
+        if (topology == Topology.SEQUENTIAL) {
+            /* traverse the particles */
+            for( int i = 0; i < swarm.length; i++ ) {
+                double[] currentLocations = move(i, w);
+                if (currentLocations == null) {
+                    // parameters were outside, ignore and try next round with new position
+                    continue;
+                }
+                double evaluated = function.evaluate(iterationStep, i, currentLocations, ranges);
+                updateBests(i, currentLocations, evaluated);
+            }
+        } else {
+            /*
+             * move all the particles, evaluate them concurrently and only then update 
+             * the bests, in particle order
+             */
+            double[][] currentLocations = new double[swarm.length][];
+            for( int i = 0; i < swarm.length; i++ ) {
+                currentLocations[i] = move(i, w);
+            }
+            double[] evaluated = evaluate(currentLocations);
+            for( int i = 0; i < swarm.length; i++ ) {
+                if (currentLocations[i] != null) {
+                    updateBests(i, currentLocations[i], evaluated[i]);
+                }
+            }
+            if (topology == Topology.ISLANDS && iterationStep % migrationInterval == 0) {
+                migrate();
+            }
+        }
+    }
+
+    /**
+     * The swarm runs without iteration barrier: every time a particle is evaluated
+     * it is moved again. An iteration is counted every time as many particle steps
+     * as particles have been done.
+     */
+    private void runAsynchronous() throws Exception {
+        CompletionService<double[]> completionService = new ExecutorCompletionService<double[]>(executor);
+        double[][] currentLocations = new double[swarm.length][];
+        Deque<Integer> ready = new ArrayDeque<Integer>();
         for( int i = 0; i < swarm.length; i++ ) {
-            Particle particle = this.swarm[i];
-            double[] currentLocations = particle.update(w, accelerationFactorLocal, rand.nextDouble(), accelerationFactorGlobal,
-                    rand.nextDouble(), globalBestLocations);
-            double evaluated;
-            if (currentLocations != null) {
-                evaluated = function.evaluate(iterationStep, i, currentLocations, ranges);
-            } else {
-                // parameters were outside, ignore and try next round with new position
-                continue;
-            }
-            /* update best local function value */
-            if (function.isBetter(evaluated, particle.getParticleBestFunction())) {
-                particle.setParticleBestFunction(evaluated);
-                particle.setParticleLocalBeststoCurrent();
-            }
-            /* update best global function value */
-            if (function.isBetter(evaluated, globalBest)) {
-                globalBest = evaluated;
-                for( int j = 0; j < currentLocations.length; j++ ) {
-                    globalBestLocations[j] = currentLocations[j];
+            ready.add(i);
+        }
+        iterationStep = 1;
+        int steps = 0;
+        int pending = 0;
+        boolean stop = false;
+        double[] previous = null;
+        while( true ) {
+            while( !stop && !ready.isEmpty() ) {
+                final int i = ready.poll();
+                currentLocations[i] = move(i, decelerationFactor());
+                if (currentLocations[i] == null) {
+                    // parameters were outside, the step is done and the particle moves again
+                    ready.add(i);
+                } else {
+                    final double[] locations = currentLocations[i];
+                    final int step = iterationStep;
+                    completionService.submit(new Callable<double[]>(){
+                        public double[] call() throws Exception {
+                            return new double[]{i, function.evaluate(step, i, locations, ranges)};
+                        }
+                    });
+                    pending++;
+                    continue;
+                }
+                if (++steps % swarm.length == 0) {
+                    stop = iterationDone(previous);
+                    previous = globalBestLocations.clone();
                 }
             }
+            if (pending == 0) {
+                break;
+            }
+            double[] result = get(completionService.take());
+            pending--;
+            int i = (int) result[0];
+            updateBests(i, currentLocations[i], result[1]);
+            ready.add(i);
+            if (!stop && ++steps % swarm.length == 0) {
+                stop = iterationDone(previous);
+                previous = globalBestLocations.clone();
+            }
+        }
+    }
+
+    private boolean iterationDone( double[] previous ) {
+        if (printStep()) {
+            printBest();
+        }
+        if (function.hasConverged(globalBest, globalBestLocations, previous)) {
+            return true;
+        }
+        iterationStep++;
+        return iterationStep > maxIterations;
+    }
+
+    /* 
+     * velocity decay factor:
+     * 
+     *  - it decreases when the iteration number increases
+     *  - it decreases when the decay factor increases 
+     */
+    private double decelerationFactor() {
+        return initDecelerationFactor * Math.pow(iterationStep, -decayFactor);
+    }
+
+    private double[] move( int i, double w ) {
+        return swarm[i].update(w, accelerationFactorLocal, rand.nextDouble(), accelerationFactorGlobal, rand.nextDouble(),
+                groupBestLocations[i % groupsNum]);
+    }
+
+    private void updateBests( int i, double[] currentLocations, double evaluated ) {
+        Particle particle = swarm[i];
+        /* update best local function value */
+        if (function.isBetter(evaluated, particle.getParticleBestFunction())) {
+            particle.setParticleBestFunction(evaluated);
+            particle.setParticleLocalBeststoCurrent();
+        }
+        /* update best group and global function value */
+        int group = i % groupsNum;
+        if (function.isBetter(evaluated, groupBests[group])) {
+            groupBests[group] = evaluated;
+            System.arraycopy(currentLocations, 0, groupBestLocations[group], 0, currentLocations.length);
+        }
+        if (function.isBetter(evaluated, globalBest)) {
+            globalBest = evaluated;
+            System.arraycopy(currentLocations, 0, globalBestLocations, 0, currentLocations.length);
+        }
+    }
+
+    /**
+     * Every island gets the best of the previous one along the ring, if better than its own.
+     */
+    private void migrate() {
+        double[] bests = groupBests.clone();
+        double[][] bestLocations = new double[groupsNum][];
+        for( int group = 0; group < groupsNum; group++ ) {
+            bestLocations[group] = groupBestLocations[group].clone();
+        }
+        for( int group = 0; group < groupsNum; group++ ) {
+            int from = (group + groupsNum - 1) % groupsNum;
+            if (function.isBetter(bests[from], groupBests[group])) {
+                groupBests[group] = bests[from];
+                System.arraycopy(bestLocations[from], 0, groupBestLocations[group], 0, bestLocations[from].length);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the function for the particles, concurrently if threads are available.
+     * 
+     * @param locations the locations of the particles, <code>null</code> for those not to evaluate.
+     * @return the function values.
+     */
+    private double[] evaluate( final double[][] locations ) throws Exception {
+        final double[] evaluated = new double[locations.length];
+        if (executor == null) {
+            for( int i = 0; i < locations.length; i++ ) {
+                if (locations[i] != null) {
+                    evaluated[i] = function.evaluate(iterationStep, i, locations[i], ranges);
+                }
+            }
+            return evaluated;
+        }
+        final int step = iterationStep;
+        List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+        for( int i = 0; i < locations.length; i++ ) {
+            if (locations[i] != null) {
+                final int particle = i;
+                futures.add(executor.submit(new Callable<double[]>(){
+                    public double[] call() throws Exception {
+                        return new double[]{particle, function.evaluate(step, particle, locations[particle], ranges)};
+                    }
+                }));
+            }
+        }
+        for( Future<double[]> future : futures ) {
+            double[] result = get(future);
+            evaluated[(int) result[0]] = result[1];
+        }
+        return evaluated;
+    }
+
+    private double[] get( Future<double[]> future ) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException("Error during the evaluation of the particles: " + e.getCause().getMessage(), this);
         }
     }
 
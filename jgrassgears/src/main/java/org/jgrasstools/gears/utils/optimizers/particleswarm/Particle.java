@@ -62,6 +62,16 @@ public class Particle {
      * @param ranges the parameters spaces ranges.
      */
     public Particle( double[][] ranges ) {
+        this(ranges, rand);
+    }
+
+    /**
+     * Create a new {@link Particle} with a given number of parameters dimension.
+     * 
+     * @param ranges the parameters spaces ranges.
+     * @param random the random generator to use for the initial position.
+     */
+    public Particle( double[][] ranges, Random random ) {
         this.ranges = ranges;
 
         /*
@@ -74,8 +84,7 @@ public class Particle {
             double max = ranges[i][1];
 
             double delta = max - min;
-            double random = rand.nextDouble() - 1;
-            double smallRand = 0.5 * delta * random;
+            double smallRand = 0.5 * delta * (random.nextDouble() - 1);
             double value = min + delta / 2.0 + 0.8 * smallRand;
 
             // System.out.println(min + "/" + max + "/" + value);
@@ -0,0 +1,238 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.sorting;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+
+/**
+ * Stable sorting of the indexes of a double array.
+ *
+ * <p>
+ * The values are not moved, the result is the permutation of their indexes. Novalues are
+ * partitioned out before sorting and placed at the beginning of the permutation, as
+ * {@link QuickSortAlgorithm} does, followed by the indexes of the valid values in ascending
+ * order. Equal values keep the order of their indexes.
+ * </p>
+ * <p>
+ * The valid values are split in chunks that are merge sorted in parallel and then merged
+ * pairwise, so the running time is <code>n log(n)</code> also on sorted or flat data and
+ * no recursion is used.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class IndexSortAlgorithm {
+
+    /* runs shorter than this are sorted by insertion */
+    private static final int INSERTION_RUN = 32;
+
+    private IJGTProgressMonitor monitor = new LogProgressMonitor();
+    private int threads = 1;
+    private int novaluesCount;
+
+    /**
+     * Constructor.
+     *
+     * @param monitor the progress monitor, can be <code>null</code>.
+     * @param threads the number of threads to use.
+     */
+    public IndexSortAlgorithm( IJGTProgressMonitor monitor, int threads ) {
+        if (monitor != null)
+            this.monitor = monitor;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sorts the indexes of an array of values.
+     *
+     * @param values the values, they are not modified.
+     * @return the permutation of the indexes: first the novalues, then the valid values in
+     *          ascending order.
+     */
+    public int[] sort( final double[] values ) {
+        monitor.beginTask("Sorting...", -1);
+
+        int number = values.length;
+        final int[] indexes = new int[number];
+        novaluesCount = 0;
+        for( int i = 0; i < number; i++ ) {
+            if (isNovalue(values[i])) {
+                indexes[novaluesCount++] = i;
+            }
+        }
+        int validIndex = novaluesCount;
+        for( int i = 0; i < number; i++ ) {
+            if (!isNovalue(values[i])) {
+                indexes[validIndex++] = i;
+            }
+        }
+
+        final int start = novaluesCount;
+        final int validCount = number - novaluesCount;
+        final int[] buffer = new int[number];
+        int chunks = Math.max(1, Math.min(threads, validCount / (INSERTION_RUN * 64)));
+        final int[] bounds = new int[chunks + 1];
+        for( int i = 0; i <= chunks; i++ ) {
+            bounds[i] = start + (int) ((long) validCount * i / chunks);
+        }
+
+        if (chunks == 1) {
+            mergeSort(values, indexes, buffer, start, number);
+        } else {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(chunks);
+            try {
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( int i = 0; i < chunks; i++ ) {
+                    final int from = bounds[i];
+                    final int to = bounds[i + 1];
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            mergeSort(values, indexes, buffer, from, to);
+                            return null;
+                        }
+                    }));
+                }
+                waitFor(futures);
+
+                /*
+                 * merge the sorted chunks pairwise, the merges of one pass are independent
+                 */
+                for( int width = 1; width < chunks; width = width * 2 ) {
+                    futures.clear();
+                    for( int i = 0; i + width < chunks; i = i + 2 * width ) {
+                        final int from = bounds[i];
+                        final int middle = bounds[i + width];
+                        final int to = bounds[Math.min(i + 2 * width, chunks)];
+                        futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                            public Object call() throws Exception {
+                                mergeInto(values, indexes, buffer, from, middle, to);
+                                System.arraycopy(buffer, from, indexes, from, to - from);
+                                return null;
+                            }
+                        }));
+                    }
+                    waitFor(futures);
+                }
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+
+        monitor.done();
+        return indexes;
+    }
+
+    /**
+     * @return the number of novalues found by the last {@link #sort(double[])}, i.e. the position
+     *          of the first valid value in the permutation.
+     */
+    public int getNovaluesCount() {
+        return novaluesCount;
+    }
+
+    private void waitFor( List<Future<Object>> futures ) {
+        try {
+            for( Future<Object> future : futures ) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelsRuntimeException("Sorting interrupted.", this);
+        } catch (ExecutionException e) {
+            throw new ModelsRuntimeException("Error during the sorting: " + e.getCause().getMessage(), this);
+        }
+    }
+
+    /**
+     * Bottom up merge sort of the indexes between from (inclusive) and to (exclusive).
+     */
+    private static void mergeSort( double[] values, int[] indexes, int[] buffer, int from, int to ) {
+        for( int runStart = from; runStart < to; runStart += INSERTION_RUN ) {
+            insertionSort(values, indexes, runStart, Math.min(runStart + INSERTION_RUN, to));
+        }
+        int[] source = indexes;
+        int[] target = buffer;
+        for( int width = INSERTION_RUN; width < to - from; width = width * 2 ) {
+            for( int left = from; left < to; left += 2 * width ) {
+                int middle = Math.min(left + width, to);
+                int right = Math.min(left + 2 * width, to);
+                mergeInto(values, source, target, left, middle, right);
+            }
+            int[] tmp = source;
+            source = target;
+            target = tmp;
+        }
+        if (source != indexes) {
+            System.arraycopy(source, from, indexes, from, to - from);
+        }
+    }
+
+    private static void insertionSort( double[] values, int[] indexes, int from, int to ) {
+        for( int i = from + 1; i < to; i++ ) {
+            int index = indexes[i];
+            double value = values[index];
+            int j = i - 1;
+            while( j >= from && values[indexes[j]] > value ) {
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+        }
+    }
+
+    /**
+     * Merges the sorted runs [from, middle) and [middle, to) of source into target, taking from
+     * the left run on equal values to keep the sort stable.
+     */
+    private static void mergeInto( double[] values, int[] source, int[] target, int from, int middle, int to ) {
+        int i = from;
+        int j = middle;
+        int k = from;
+        if (middle >= to || values[source[middle - 1]] <= values[source[middle]]) {
+            // already in order
+            System.arraycopy(source, from, target, from, to - from);
+            return;
+        }
+        while( i < middle && j < to ) {
+            if (values[source[j]] < values[source[i]]) {
+                target[k++] = source[j++];
+            } else {
+                target[k++] = source[i++];
+            }
+        }
+        while( i < middle ) {
+            target[k++] = source[i++];
+        }
+        while( j < to ) {
+            target[k++] = source[j++];
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.util.Random;
+
+import org.jgrasstools.gears.libs.modules.ModelsEngine;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.math.ConvolutionUtilities;
+
+/**
+ * Test {@link ConvolutionUtilities}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestConvolutionUtilities extends HMTestCase {
+
+    public void testConvolution() throws Exception {
+        double[] signal = {1, 2, 0, 3};
+        double[] kernel = {0.5, 1};
+        double[] expected = {0.5, 2, 2, 1.5, 3, 0};
+        assertArrayEquals(expected, ConvolutionUtilities.convolveDirect(signal, kernel, 6), DELTA);
+        assertArrayEquals(expected, ConvolutionUtilities.convolveFft(signal, kernel, 6), DELTA);
+
+        Random random = new Random(3);
+        signal = new double[3000];
+        kernel = new double[777];
+        for( int i = 0; i < signal.length; i++ ) {
+            signal[i] = random.nextDouble() < 0.3 ? 0 : random.nextDouble() * 10;
+        }
+        for( int i = 0; i < kernel.length; i++ ) {
+            kernel[i] = Math.sin(i / 50.0) + 1;
+        }
+        for( int length : new int[]{100, 3776, 5000} ) {
+            double[] direct = ConvolutionUtilities.convolveDirect(signal, kernel, length);
+            double[] fft = ConvolutionUtilities.convolveFft(signal, kernel, length);
+            assertEquals(length, fft.length);
+            assertArrayEquals(direct, fft, 1E-8);
+            assertArrayEquals(direct, ConvolutionUtilities.convolve(signal, kernel, length), 1E-8);
+        }
+    }
+
+    public void testSortedInterpolation() throws Exception {
+        double[][] data = {{2, 1, 1}, {4, 3, 4}, {4, 5, 5}, {7, 2, 9}, {10, 0, 10}};
+        for( double x = 0; x <= 10; x += 0.25 ) {
+            assertEquals(ModelsEngine.width_interpolate(data, x, 0, 1), ModelsEngine.width_interpolate_sorted(data, x, 0, 1),
+                    DELTA);
+            assertEquals(ModelsEngine.width_interpolate(data, x, 0, 2), ModelsEngine.width_interpolate_sorted(data, x, 0, 2),
+                    DELTA);
+        }
+    }
+
+    private void assertArrayEquals( double[] expected, double[] values, double delta ) {
+        assertEquals(expected.length, values.length);
+        for( int i = 0; i < expected.length; i++ ) {
+            assertEquals(expected[i], values[i], delta * Math.max(1, Math.abs(expected[i])));
+        }
+    }
+
+}
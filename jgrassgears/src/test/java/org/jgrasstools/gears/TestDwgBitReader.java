@@ -0,0 +1,119 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgBitReader;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link DwgBitReader} on hand encoded bitstreams.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDwgBitReader extends HMTestCase {
+
+    public void testBitShort() throws Exception {
+        // 01+RC 27, 10, 11, 00+RS 4660, 00+RS -2
+        DwgBitReader reader = reader(0x46, 0xEC, 0x34, 0x12, 0x3F, 0xBF, 0xC0);
+        assertEquals(27, reader.getBitShort());
+        assertEquals(10, reader.getPosition());
+        assertEquals(0, reader.getBitShort());
+        assertEquals(256, reader.getBitShort());
+        assertEquals(4660, reader.getBitShort());
+        assertEquals(-2, reader.getBitShort());
+        assertEquals(50, reader.getPosition());
+    }
+
+    public void testBitLong() throws Exception {
+        // 01+RC 200, 10, 00+RL 123456789, 00+RL -5
+        DwgBitReader reader = reader(0x72, 0x20, 0x57, 0x35, 0x6C, 0x1C, 0xFB, 0xFF, 0xFF, 0xFF);
+        assertEquals(200, reader.getBitLong());
+        assertEquals(0, reader.getBitLong());
+        assertEquals(123456789, reader.getBitLong());
+        assertEquals(-5, reader.getBitLong());
+        assertEquals(80, reader.getPosition());
+    }
+
+    public void testBitDouble() throws Exception {
+        // 01, 10, 00+RD -1234.5678
+        DwgBitReader reader = reader(0x62, 0xB7, 0xE9, 0x71, 0xB5, 0x15, 0x2A, 0x4F, 0x00);
+        assertEquals(1.0, reader.getBitDouble(), 0.0);
+        assertEquals(0.0, reader.getBitDouble(), 0.0);
+        assertEquals(-1234.5678, reader.getBitDouble(), 0.0);
+        assertEquals(70, reader.getPosition());
+    }
+
+    public void testDefaultDouble() throws Exception {
+        // 00 (default), 11+RD 3.25, 01+the 4 low bytes of 10.000001
+        DwgBitReader reader = reader(0x30, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0xA4, 0x05, 0x07, 0xBE, 0x34, 0x84);
+        assertEquals(10.0, reader.getDefaultDouble(10.0), 0.0);
+        assertEquals(3.25, reader.getDefaultDouble(10.0), 0.0);
+        assertEquals(10.000001, reader.getDefaultDouble(10.0), 0.0);
+    }
+
+    public void testModularChar() throws Exception {
+        DwgBitReader reader = reader(0x82, 0x24, 0x85, 0x4B, 0x3F, 0x7F);
+        assertEquals(4610, reader.getModularChar());
+        assertEquals(-1413, reader.getModularChar());
+        assertEquals(63, reader.getModularChar());
+        assertEquals(-63, reader.getModularChar());
+        assertEquals(48, reader.getPosition());
+    }
+
+    public void testHandle() throws Exception {
+        // code 5 with the two bytes 0x01 0x2C, then code 3 without bytes
+        DwgBitReader reader = reader(0x52, 0x01, 0x2C, 0x30);
+        int[] handle = reader.getHandle();
+        assertEquals(4, handle.length);
+        assertEquals(5, handle[0]);
+        assertEquals(2, handle[1]);
+        assertEquals(0x01, handle[2]);
+        assertEquals(0x2C, handle[3]);
+        handle = reader.getHandle();
+        assertEquals(2, handle.length);
+        assertEquals(3, handle[0]);
+        assertEquals(0, handle[1]);
+        assertEquals(32, reader.getPosition());
+    }
+
+    public void testOffsetStream() throws Exception {
+        // the same modular chars, starting after two bytes that don't belong to the stream
+        byte[] data = bytes(0xFF, 0xFF, 0x82, 0x24, 0xFF);
+        DwgBitReader reader = new DwgBitReader(data, 2, 2);
+        assertEquals(16, reader.getBitLength());
+        assertEquals(4610, reader.getModularChar());
+        try {
+            reader.getRawChar();
+            fail("The end of the stream has been passed.");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    private static DwgBitReader reader( int... values ) {
+        return new DwgBitReader(bytes(values));
+    }
+
+    private static byte[] bytes( int... values ) {
+        byte[] data = new byte[values.length];
+        for( int i = 0; i < values.length; i++ ) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Vector;
+
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgFile;
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.DwgFileV15Reader;
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgLine;
+import org.jgrasstools.gears.io.dxfdwg.libs.dwg.objects.DwgPoint;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link DwgFileV15Reader} on a generated R15 (AC1015) file.
+ *
+ * <p>The file contains points and lines, more than fit in one of the blocks
+ * that are decoded in parallel.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDwgFileV15Reader extends HMTestCase {
+
+    private static final int POINTS = 700;
+    private static final int LINES = 500;
+    private static final int LAYER_HANDLE = 0x10;
+
+    public void testObjectsCount() throws Exception {
+        File dwgFile = File.createTempFile("jgt-r15", ".dwg");
+        try {
+            try (FileOutputStream out = new FileOutputStream(dwgFile)) {
+                out.write(createR15File());
+            }
+            for( int threads : new int[]{1, 3} ) {
+                DwgFile file = new DwgFile(dwgFile.getAbsolutePath(), threads);
+                file.read();
+
+                Vector< ? > objects = file.getDwgObjects();
+                assertEquals(POINTS + LINES, objects.size());
+                int points = 0;
+                int lines = 0;
+                for( int i = 0; i < objects.size(); i++ ) {
+                    Object object = objects.get(i);
+                    // objects are added in the order of the map
+                    int handle = handle(i);
+                    if (i % 12 < 7) {
+                        DwgPoint point = (DwgPoint) object;
+                        assertEquals(handle, point.getHandle());
+                        assertEquals(LAYER_HANDLE, point.getLayerHandle());
+                        double[] coords = point.getPoint();
+                        assertEquals(x(i), coords[0], 0.0);
+                        assertEquals(y(i), coords[1], 0.0);
+                        assertEquals(z(i), coords[2], 0.0);
+                        points++;
+                    } else {
+                        DwgLine line = (DwgLine) object;
+                        assertEquals(handle, line.getHandle());
+                        assertEquals(LAYER_HANDLE, line.getLayerHandle());
+                        assertEquals(x(i), line.getP1()[0], 0.0);
+                        assertEquals(y(i), line.getP1()[1], 0.0);
+                        // even lines end with the same x, which uses the default double
+                        assertEquals(i % 2 == 0 ? x(i) : x(i) + 5, line.getP2()[0], 0.0);
+                        assertEquals(y(i) - 3, line.getP2()[1], 0.0);
+                        lines++;
+                    }
+                }
+                assertEquals(POINTS, points);
+                assertEquals(LINES, lines);
+            }
+        } finally {
+            dwgFile.delete();
+        }
+    }
+
+    private static int handle( int index ) {
+        return 0x200 + 3 * index;
+    }
+
+    private static double x( int index ) {
+        return 650000.0 + index * 1.5;
+    }
+
+    private static double y( int index ) {
+        return 5100000.0 - index * 0.25;
+    }
+
+    private static double z( int index ) {
+        return index % 3 == 0 ? 0.0 : 1000.0 + index;
+    }
+
+    /**
+     * Creates the bytes of a R15 file, with only what the reader uses: the section
+     * locators, the objects and the object map.
+     */
+    private static byte[] createR15File() throws Exception {
+        ByteArrayOutputStream objectsStream = new ByteArrayOutputStream();
+        int objectsOffset = 64;
+        int[] offsets = new int[POINTS + LINES];
+        for( int i = 0; i < offsets.length; i++ ) {
+            offsets[i] = objectsOffset + objectsStream.size();
+            byte[] object = i % 12 < 7 ? createPoint(i) : createLine(i);
+            // the size as modular short
+            objectsStream.write(object.length & 0xff);
+            objectsStream.write((object.length >> 8) & 0x7f);
+            objectsStream.write(object);
+        }
+        int mapOffset = objectsOffset + objectsStream.size();
+
+        // object map, sections of handle and location deltas as modular chars
+        ByteArrayOutputStream mapStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        int lastHandle = 0;
+        int lastLocation = 0;
+        for( int i = 0; i < offsets.length; i++ ) {
+            writeModularChar(section, handle(i) - lastHandle);
+            writeModularChar(section, offsets[i] - lastLocation);
+            lastHandle = handle(i);
+            lastLocation = offsets[i];
+            if (section.size() > 1900 || i == offsets.length - 1) {
+                // big endian size, including the two bytes of crc
+                int size = section.size() + 2;
+                mapStream.write(size >> 8);
+                mapStream.write(size & 0xff);
+                mapStream.write(section.toByteArray());
+                mapStream.write(0);
+                mapStream.write(0);
+                section.reset();
+                // the deltas restart for every section
+                lastHandle = 0;
+                lastLocation = 0;
+            }
+        }
+        mapStream.write(0);
+        mapStream.write(2);
+
+        byte[] file = new byte[mapOffset + mapStream.size()];
+        byte[] version = "AC1015".getBytes("US-ASCII");
+        System.arraycopy(version, 0, file, 0, version.length);
+        // codepage and three section locators: headers, classes, object map
+        int pos = 19;
+        pos = putLittleEndian(file, pos, 30, 2);
+        pos = putLittleEndian(file, pos, 3, 4);
+        int[][] locators = {{0, 0, 0}, {1, 0, 0}, {2, mapOffset, mapStream.size()}};
+        for( int[] locator : locators ) {
+            file[pos++] = (byte) locator[0];
+            pos = putLittleEndian(file, pos, locator[1], 4);
+            pos = putLittleEndian(file, pos, locator[2], 4);
+        }
+        System.arraycopy(objectsStream.toByteArray(), 0, file, objectsOffset, objectsStream.size());
+        System.arraycopy(mapStream.toByteArray(), 0, file, mapOffset, mapStream.size());
+        return file;
+    }
+
+    private static byte[] createPoint( int index ) {
+        BitWriter writer = new BitWriter();
+        writeObjectStart(writer, 0x1B, handle(index));
+        writer.bitDouble(x(index));
+        writer.bitDouble(y(index));
+        writer.bitDouble(z(index));
+        // no thickness, default extrusion, x axis angle
+        writer.bit(true);
+        writer.bit(true);
+        writer.bitDouble(0.0);
+        writeObjectTail(writer);
+        return writer.toByteArray();
+    }
+
+    private static byte[] createLine( int index ) {
+        BitWriter writer = new BitWriter();
+        writeObjectStart(writer, 0x13, handle(index));
+        // z are zero
+        writer.bit(true);
+        writer.rawDouble(x(index));
+        if (index % 2 == 0) {
+            writer.bits(0, 2);
+        } else {
+            writer.bits(3, 2);
+            writer.rawDouble(x(index) + 5);
+        }
+        writer.rawDouble(y(index));
+        writer.bits(3, 2);
+        writer.rawDouble(y(index) - 3);
+        // no thickness, default extrusion
+        writer.bit(true);
+        writer.bit(true);
+        writeObjectTail(writer);
+        return writer.toByteArray();
+    }
+
+    private static void writeObjectStart( BitWriter writer, int type, int handle ) {
+        writer.bitShort(type);
+        // size in bits, not used by the reader
+        writer.rawLong(0);
+        writer.handle(0, handle >> 8, handle & 0xff);
+        // no extended data, no graphics
+        writer.bitShort(0);
+        writer.bit(false);
+        // entity mode 2, no reactors, no links, color, linetype scale, linetype and plotstyle flags,
+        // invisibility, lineweight
+        writer.bits(2, 2);
+        writer.bitLong(0);
+        writer.bit(true);
+        writer.bitShort(7);
+        writer.bitDouble(1.0);
+        writer.bits(0, 2);
+        writer.bits(0, 2);
+        writer.bitShort(0);
+        writer.bits(29, 8);
+    }
+
+    private static void writeObjectTail( BitWriter writer ) {
+        // xdictionary and layer
+        writer.handle(3);
+        writer.handle(5, LAYER_HANDLE);
+    }
+
+    private static void writeModularChar( ByteArrayOutputStream out, int value ) {
+        boolean negative = value < 0;
+        value = Math.abs(value);
+        while( value > 0x3f ) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value | (negative ? 0x40 : 0));
+    }
+
+    private static int putLittleEndian( byte[] bytes, int pos, int value, int count ) {
+        for( int i = 0; i < count; i++ ) {
+            bytes[pos++] = (byte) (value >> (8 * i));
+        }
+        return pos;
+    }
+
+    /**
+     * Writes DWG bitstreams, the counterpart of the reader for the used codes.
+     */
+    private static class BitWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int count;
+
+        void bit( boolean bit ) {
+            current = (current << 1) | (bit ? 1 : 0);
+            count++;
+            if (count == 8) {
+                out.write(current);
+                current = 0;
+                count = 0;
+            }
+        }
+
+        void bits( long value, int bitsNum ) {
+            for( int i = bitsNum - 1; i >= 0; i-- ) {
+                bit(((value >>> i) & 1) != 0);
+            }
+        }
+
+        void rawLittleEndian( long value, int bytesNum ) {
+            for( int i = 0; i < bytesNum; i++ ) {
+                bits((value >>> (8 * i)) & 0xff, 8);
+            }
+        }
+
+        void rawLong( int value ) {
+            rawLittleEndian(value, 4);
+        }
+
+        void rawDouble( double value ) {
+            rawLittleEndian(Double.doubleToLongBits(value), 8);
+        }
+
+        void bitShort( int value ) {
+            if (value == 0) {
+                bits(2, 2);
+            } else if (value > 0 && value < 256) {
+                bits(1, 2);
+                bits(value, 8);
+            } else {
+                bits(0, 2);
+                rawLittleEndian(value, 2);
+            }
+        }
+
+        void bitLong( int value ) {
+            if (value == 0) {
+                bits(2, 2);
+            } else if (value > 0 && value < 256) {
+                bits(1, 2);
+                bits(value, 8);
+            } else {
+                bits(0, 2);
+                rawLong(value);
+            }
+        }
+
+        void bitDouble( double value ) {
+            if (value == 1.0) {
+                bits(1, 2);
+            } else if (value == 0.0) {
+                bits(2, 2);
+            } else {
+                bits(0, 2);
+                rawDouble(value);
+            }
+        }
+
+        void handle( int code, int... bytes ) {
+            bits(code, 4);
+            bits(bytes.length, 4);
+            for( int b : bytes ) {
+                bits(b, 8);
+            }
+        }
+
+        byte[] toByteArray() {
+            while( count != 0 ) {
+                bit(false);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.jgrasstools.gears;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.clustering.GvmClusters;
+import org.jgrasstools.gears.utils.clustering.GvmIndexedClusters;
+import org.jgrasstools.gears.utils.clustering.GvmResult;
+import org.jgrasstools.gears.utils.clustering.GvmVectorSpace;
+
+/**
+ * Test {@link GvmIndexedClusters}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestGvmIndexedClusters extends HMTestCase {
+
+    private static final int GROUPS = 20;
+    private static final int POINTS = 4000;
+
+    private final GvmVectorSpace space = new GvmVectorSpace(2);
+
+    public void testSameAsUnindexedOnSeparatedGroups() throws Exception {
+        double[] masses = new double[POINTS];
+        double[][] points = new double[POINTS][];
+        createGroups(masses, points);
+
+        GvmClusters<GvmVectorSpace, Object> clusters = new GvmClusters<GvmVectorSpace, Object>(space, GROUPS);
+        GvmIndexedClusters<Object> indexedClusters = new GvmIndexedClusters<Object>(space, GROUPS, 10);
+        for( int i = 0; i < POINTS; i++ ) {
+            clusters.add(masses[i], points[i], null);
+            indexedClusters.add(masses[i], points[i], null);
+        }
+
+        List<GvmResult<Object>> expected = clusters.results();
+        List<GvmResult<Object>> results = indexedClusters.results();
+        assertEquals(GROUPS, results.size());
+        sortByPosition(expected);
+        sortByPosition(results);
+        for( int i = 0; i < GROUPS; i++ ) {
+            assertEquals(expected.get(i).getCount(), results.get(i).getCount());
+            assertEquals(expected.get(i).getMass(), results.get(i).getMass(), DELTA);
+            double[] expectedPoint = (double[]) expected.get(i).getPoint();
+            double[] point = (double[]) results.get(i).getPoint();
+            assertEquals(expectedPoint[0], point[0], DELTA);
+            assertEquals(expectedPoint[1], point[1], DELTA);
+        }
+    }
+
+    public void testParallelKeepsCapacityAndMass() throws Exception {
+        double[] masses = new double[POINTS];
+        double[][] points = new double[POINTS][];
+        createGroups(masses, points);
+
+        GvmIndexedClusters<Object> indexedClusters = new GvmIndexedClusters<Object>(space, GROUPS, 10);
+        indexedClusters.addAll(masses, points, null, 4);
+
+        List<GvmResult<Object>> results = indexedClusters.results();
+        assertEquals(GROUPS, results.size());
+        int count = 0;
+        double mass = 0;
+        for( GvmResult<Object> result : results ) {
+            count += result.getCount();
+            mass += result.getMass();
+        }
+        double expectedMass = 0;
+        for( double m : masses ) {
+            expectedMass += m;
+        }
+        assertEquals(POINTS, count);
+        assertEquals(expectedMass, mass, DELTA);
+        // every group is found as a whole
+        for( GvmResult<Object> result : results ) {
+            assertEquals(POINTS / GROUPS, result.getCount());
+        }
+    }
+
+    public void testGroupOnStripBorder() throws Exception {
+        // with an odd number of groups on a row the border of two strips splits the middle group
+        int groups = 5;
+        double[] masses = new double[POINTS];
+        double[][] points = new double[POINTS][];
+        Random random = new Random(3);
+        for( int i = 0; i < POINTS; i++ ) {
+            masses[i] = 1 + random.nextDouble();
+            points[i] = new double[]{(i % groups) * 50 + random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2};
+        }
+
+        GvmIndexedClusters<Object> indexedClusters = new GvmIndexedClusters<Object>(space, groups, 10);
+        indexedClusters.addAll(masses, points, null, 2);
+
+        List<GvmResult<Object>> results = indexedClusters.results();
+        assertEquals(groups, results.size());
+        sortByPosition(results);
+        for( int i = 0; i < groups; i++ ) {
+            GvmResult<Object> result = results.get(i);
+            assertEquals(POINTS / groups, result.getCount());
+            assertEquals(i * 50, ((double[]) result.getPoint())[0], 0.5);
+        }
+    }
+
+    public void testParallelIsolatedClustersKeepCapacity() throws Exception {
+        double[] masses = new double[POINTS];
+        double[][] points = new double[POINTS][];
+        createGroups(masses, points);
+
+        // the groups are farther apart than a cell, the strips keep more than the capacity
+        int capacity = GROUPS / 2;
+        GvmIndexedClusters<Object> indexedClusters = new GvmIndexedClusters<Object>(space, capacity, 10);
+        indexedClusters.addAll(masses, points, null, 4);
+
+        List<GvmResult<Object>> results = indexedClusters.results();
+        assertEquals(capacity, results.size());
+        int count = 0;
+        for( GvmResult<Object> result : results ) {
+            count += result.getCount();
+        }
+        assertEquals(POINTS, count);
+    }
+
+    /**
+     * Groups of points on a row, 50 apart and within 2 of their center.
+     */
+    private void createGroups( double[] masses, double[][] points ) {
+        Random random = new Random(7);
+        for( int i = 0; i < POINTS; i++ ) {
+            int group = i % GROUPS;
+            masses[i] = 1 + random.nextDouble();
+            points[i] = new double[]{group * 50 + random.nextDouble() * 4 - 2, (group % 3) * 50 + random.nextDouble() * 4 - 2};
+        }
+    }
+
+    private void sortByPosition( List<GvmResult<Object>> results ) {
+        Collections.sort(results, new Comparator<GvmResult<Object>>(){
+            public int compare( GvmResult<Object> r1, GvmResult<Object> r2 ) {
+                return Double.compare(((double[]) r1.getPoint())[0], ((double[]) r2.getPoint())[0]);
+            }
+        });
+    }
+}
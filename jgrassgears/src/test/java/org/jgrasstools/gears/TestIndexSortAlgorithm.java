@@ -0,0 +1,60 @@
+package org.jgrasstools.gears;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.sorting.IndexSortAlgorithm;
+
+/**
+ * Test {@link IndexSortAlgorithm}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestIndexSortAlgorithm extends HMTestCase {
+
+    public void testSmallArray() throws Exception {
+        double[] values = {5, doubleNovalue, 3, 5, 1, doubleNovalue, 3};
+
+        IndexSortAlgorithm sortAlgorithm = new IndexSortAlgorithm(pm, 1);
+        int[] indexes = sortAlgorithm.sort(values);
+
+        int[] expected = {1, 5, 4, 2, 6, 0, 3};
+        assertEquals(expected.length, indexes.length);
+        for( int i = 0; i < expected.length; i++ ) {
+            assertEquals(expected[i], indexes[i]);
+        }
+        assertEquals(2, sortAlgorithm.getNovaluesCount());
+    }
+
+    public void testParallelIsStable() throws Exception {
+        Random random = new Random(13);
+        double[] values = new double[100000];
+        for( int i = 0; i < values.length; i++ ) {
+            if (i % 97 == 0) {
+                values[i] = doubleNovalue;
+            } else {
+                // few distinct values to have many ties
+                values[i] = random.nextInt(50);
+            }
+        }
+
+        int[] single = new IndexSortAlgorithm(pm, 1).sort(values);
+        IndexSortAlgorithm sortAlgorithm = new IndexSortAlgorithm(pm, 4);
+        int[] parallel = sortAlgorithm.sort(values);
+
+        int novalues = sortAlgorithm.getNovaluesCount();
+        for( int i = 0; i < values.length; i++ ) {
+            assertEquals(single[i], parallel[i]);
+            if (i > novalues) {
+                double previous = values[parallel[i - 1]];
+                double current = values[parallel[i]];
+                assertTrue(previous <= current);
+                if (previous == current) {
+                    assertTrue(parallel[i - 1] < parallel[i]);
+                }
+            }
+        }
+    }
+}
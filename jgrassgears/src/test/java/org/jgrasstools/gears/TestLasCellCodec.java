@@ -0,0 +1,75 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.nio.ByteBuffer;
+
+import org.jgrasstools.gears.io.las.spatialite.LasCellCodec;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link LasCellCodec}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestLasCellCodec extends HMTestCase {
+
+    public void testPositions() throws Exception {
+        int count = 1000;
+        double[] xyz = new double[count * 3];
+        for( int i = 0; i < count; i++ ) {
+            xyz[i * 3] = 650000.0 + (i % 37) * 0.01;
+            xyz[i * 3 + 1] = 5100000.0 + (i % 53) * 0.01;
+            xyz[i * 3 + 2] = 1200.0 - i * 0.001;
+        }
+        byte[] blob = LasCellCodec.encodePositions(xyz, count, new double[]{0.01, 0.01, 0.001});
+        assertTrue(LasCellCodec.isEncoded(blob));
+        assertTrue(blob.length * 3 < count * 24);
+
+        double[] decoded = LasCellCodec.decodePositions(blob, count);
+        for( int i = 0; i < xyz.length; i++ ) {
+            assertEquals(xyz[i], decoded[i], 0.0001);
+        }
+    }
+
+    public void testShorts() throws Exception {
+        short[] intensClass = {256, 1, 128, 2, 0, 3, -1, 31};
+        byte[] blob = LasCellCodec.encodeShorts(intensClass, 2);
+        short[] decoded = LasCellCodec.decodeShorts(blob, 4, 2);
+        for( int i = 0; i < intensClass.length; i++ ) {
+            assertEquals(intensClass[i], decoded[i]);
+        }
+    }
+
+    public void testLegacyBlobs() throws Exception {
+        ByteBuffer positions = ByteBuffer.allocate(2 * 24);
+        positions.putDouble(1.0).putDouble(2.0).putDouble(3.0);
+        positions.putDouble(4.0).putDouble(5.0).putDouble(6.0);
+        assertFalse(LasCellCodec.isEncoded(positions.array()));
+        double[] decoded = LasCellCodec.decodePositions(positions.array(), 2);
+        for( int i = 0; i < decoded.length; i++ ) {
+            assertEquals(i + 1.0, decoded[i], DELTA);
+        }
+
+        ByteBuffer shorts = ByteBuffer.allocate(2 * 2 * 2);
+        shorts.putShort((short) 256).putShort((short) 1).putShort((short) 128).putShort((short) 2);
+        short[] decodedShorts = LasCellCodec.decodeShorts(shorts.array(), 2, 2);
+        assertEquals(256, decodedShorts[0]);
+        assertEquals(2, decodedShorts[3]);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.modules.OrderedTileExecutor;
+import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link OrderedTileExecutor}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestOrderedTileExecutor extends HMTestCase {
+
+    private static final int TILES = 50;
+
+    public void testTilesAreConsumedInOrder() throws Exception {
+        for( final int threads : new int[]{1, 4} ) {
+            final AtomicInteger processed = new AtomicInteger();
+            final List<Integer> consumed = new ArrayList<Integer>();
+            OrderedTileExecutor<Integer> executor = new OrderedTileExecutor<Integer>(threads, "Testing...", "Error: ", this,
+                    pm){
+                protected Integer process( int tile ) throws Exception {
+                    processed.incrementAndGet();
+                    // later tiles are faster, so that they are done out of order
+                    Thread.sleep((TILES - tile) % 5);
+                    return tile * 10;
+                }
+                protected void consume( int tile, Integer result ) throws Exception {
+                    assertEquals(consumed.size(), tile);
+                    assertEquals(tile * 10, result.intValue());
+                    // at most two tiles per thread ahead of the consumer
+                    assertTrue(processed.get() <= tile + 2 * threads);
+                    consumed.add(tile);
+                }
+            };
+            executor.execute(TILES);
+            assertEquals(TILES, consumed.size());
+            assertEquals(TILES, processed.get());
+        }
+    }
+
+    public void testErrorsAreWrapped() throws Exception {
+        OrderedTileExecutor<Integer> executor = new OrderedTileExecutor<Integer>(4, "Testing...", "Error in the tile: ", this, pm){
+            protected Integer process( int tile ) throws Exception {
+                if (tile == 7) {
+                    throw new IllegalStateException("broken tile");
+                }
+                return tile;
+            }
+            protected void consume( int tile, Integer result ) throws Exception {
+                assertTrue(tile < 7);
+            }
+        };
+        try {
+            executor.execute(TILES);
+            fail();
+        } catch (ModelsRuntimeException e) {
+            assertEquals("TestOrderedTileExecutor: Error in the tile: broken tile", e.getMessage());
+        }
+    }
+
+    public void testCancel() throws Exception {
+        for( int threads : new int[]{1, 4} ) {
+            final LogProgressMonitor monitor = new LogProgressMonitor();
+            final List<Integer> consumed = new ArrayList<Integer>();
+            OrderedTileExecutor<Integer> executor = new OrderedTileExecutor<Integer>(threads, "Testing...", "Error: ", this,
+                    monitor){
+                protected Integer process( int tile ) throws Exception {
+                    return tile;
+                }
+                protected void consume( int tile, Integer result ) throws Exception {
+                    consumed.add(tile);
+                    if (tile == 3) {
+                        monitor.setCanceled(true);
+                    }
+                }
+            };
+            try {
+                executor.execute(TILES);
+                fail();
+            } catch (ModelsRuntimeException e) {
+                assertEquals("TestOrderedTileExecutor: Module interrupted.", e.getMessage());
+            }
+            assertEquals(4, consumed.size());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.jgrasstools.gears;
+
+import java.util.Arrays;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.optimizers.particleswarm.IPSFunction;
+import org.jgrasstools.gears.utils.optimizers.particleswarm.PSEngine;
+
+/**
+ * Test {@link PSEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestParticleSwarm extends HMTestCase {
+
+    private static final double[][] RANGES = {{-2, 2}, {-2, 2}};
+
+    public void testSeededRunsAreRepeatable() throws Exception {
+        PSEngine first = runEngine(PSEngine.Topology.SEQUENTIAL, 1);
+        PSEngine second = runEngine(PSEngine.Topology.SEQUENTIAL, 1);
+
+        assertEquals(first.getSolutionFittingValue(), second.getSolutionFittingValue(), 0.0);
+        assertTrue(Arrays.equals(first.getSolution(), second.getSolution()));
+        assertEquals(0.0, first.getSolutionFittingValue(), 0.01);
+    }
+
+    public void testParallelEvaluationIsDeterministic() throws Exception {
+        PSEngine single = runEngine(PSEngine.Topology.SYNCHRONOUS, 1);
+        PSEngine parallel = runEngine(PSEngine.Topology.SYNCHRONOUS, 3);
+
+        assertEquals(single.getSolutionFittingValue(), parallel.getSolutionFittingValue(), 0.0);
+        assertTrue(Arrays.equals(single.getSolution(), parallel.getSolution()));
+
+        PSEngine islands = runEngine(PSEngine.Topology.ISLANDS, 3);
+        assertEquals(0.0, islands.getSolutionFittingValue(), 0.01);
+    }
+
+    private PSEngine runEngine( PSEngine.Topology topology, int threads ) throws Exception {
+        PSEngine engine = new PSEngine(12, 50, 2, 2, 1, 0.2, new SphereFunction(), "test");
+        engine.initializeRanges(RANGES);
+        engine.setTopology(topology);
+        engine.setThreads(threads);
+        engine.setSeed(42);
+        engine.run();
+        return engine;
+    }
+
+    private static class SphereFunction implements IPSFunction {
+        public double evaluate( int iterationStep, int particleNum, double[] parameters, double[]... ranges ) throws Exception {
+            return optimization(parameters);
+        }
+
+        public double optimization( double... parameters ) {
+            double sum = 0;
+            for( double p : parameters ) {
+                sum = sum + (p - 0.5) * (p - 0.5);
+            }
+            return sum;
+        }
+
+        public String optimizationDescription() {
+            return "sphere";
+        }
+
+        public boolean isBetter( double evaluatedValue, double consideredBest ) {
+            return evaluatedValue < consideredBest;
+        }
+
+        public boolean hasConverged( double globalBest, double[] globalBestLocations, double[] previousBestLocations ) {
+            return false;
+        }
+
+        public double getInitialGlobalBest() {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        public String getPostInfoString() {
+            return null;
+        }
+    }
+}
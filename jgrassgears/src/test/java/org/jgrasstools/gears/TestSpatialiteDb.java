@@ -0,0 +1,152 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.spatialite.QueryResult;
+import org.jgrasstools.gears.spatialite.SpatialiteDb;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Test {@link SpatialiteDb}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestSpatialiteDb extends HMTestCase {
+
+    private static final String TABLE = "points";
+    private static final int POINTS = 2500;
+
+    private File dbFile;
+    private SpatialiteDb db;
+
+    protected void setUp() throws Exception {
+        dbFile = File.createTempFile("jgt-spatialite", ".sqlite");
+        dbFile.delete();
+        db = new SpatialiteDb();
+        db.mPrintInfos = false;
+        db.open(dbFile.getAbsolutePath());
+        db.initSpatialMetadata(null);
+        createTable("name TEXT");
+
+        // points on the diagonal, more than a decoding block and in batches that don't divide the count
+        List<Geometry> points = new ArrayList<>();
+        GeometryFactory gf = new GeometryFactory();
+        for( int i = 0; i < POINTS; i++ ) {
+            points.add(gf.createPoint(new Coordinate(i + 0.5, i + 0.5)));
+        }
+        assertEquals(POINTS, db.insertGeometries(TABLE, points, "4326", 333));
+    }
+
+    protected void tearDown() throws Exception {
+        db.close();
+        dbFile.delete();
+    }
+
+    public void testInsertGeometries() throws Exception {
+        assertEquals(POINTS, db.getCount(TABLE));
+
+        List<Geometry> geometries = db.getGeometriesIn(TABLE, null);
+        assertEquals(POINTS, geometries.size());
+        for( int i = 0; i < geometries.size(); i++ ) {
+            Point point = (Point) geometries.get(i);
+            assertEquals(i + 0.5, point.getX(), DELTA);
+            assertEquals(i + 0.5, point.getY(), DELTA);
+        }
+    }
+
+    public void testStreamTableRecordsIn() throws Exception {
+        final List<Object[]> records = new ArrayList<>();
+        QueryResult result = db.streamTableRecordsIn(TABLE, new Envelope(10, 20, 10, 20), false, -1, 1, records::add);
+        assertEquals(0, result.geometryIndex);
+        assertEquals(2, result.names.size());
+        assertEquals("name", result.names.get(1));
+        assertEquals(10, records.size());
+        for( Object[] record : records ) {
+            double x = ((Point) record[0]).getX();
+            assertTrue(x > 10 && x < 20);
+        }
+
+        // decoding on more threads keeps the order of the records
+        final List<Object[]> serial = new ArrayList<>();
+        db.streamTableRecordsIn(TABLE, null, false, -1, 1, serial::add);
+        final List<Object[]> parallel = new ArrayList<>();
+        db.streamTableRecordsIn(TABLE, null, false, -1, 3, parallel::add);
+        assertEquals(POINTS, serial.size());
+        assertEquals(POINTS, parallel.size());
+        for( int i = 0; i < POINTS; i++ ) {
+            assertTrue(((Geometry) serial.get(i)[0]).equalsExact((Geometry) parallel.get(i)[0]));
+        }
+
+        records.clear();
+        db.streamTableRecordsIn(TABLE, new Envelope(10, 20, 10, 20), false, 3, 1, records::add);
+        assertEquals(3, records.size());
+    }
+
+    public void testNestedStreams() throws Exception {
+        // the consumer runs the same query, which must not disturb the outer stream
+        final int[] counts = new int[2];
+        db.streamTableRecordsIn(TABLE, new Envelope(0, 50, 0, 50), false, -1, 1, rec -> {
+            counts[0]++;
+            try {
+                db.streamTableRecordsIn(TABLE, new Envelope(0, 5, 0, 5), false, -1, 1, inner -> counts[1]++);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(50, counts[0]);
+        assertEquals(50 * 5, counts[1]);
+    }
+
+    public void testCacheClearedOnTableChange() throws Exception {
+        QueryResult result = db.streamTableRecordsIn(TABLE, null, false, -1, 1, rec -> {
+        });
+        assertEquals(2, result.names.size());
+
+        db.deleteGeoTable(TABLE);
+        createTable("name TEXT", "elev REAL");
+        List<Geometry> points = new ArrayList<>();
+        points.add(new GeometryFactory().createPoint(new Coordinate(1, 1)));
+        db.insertGeometries(TABLE, points, "4326", 10);
+
+        final List<Object[]> records = new ArrayList<>();
+        result = db.streamTableRecordsIn(TABLE, null, false, -1, 1, records::add);
+        assertEquals(3, result.names.size());
+        assertEquals("elev", result.names.get(2));
+        assertEquals(1, records.size());
+    }
+
+    private void createTable( String... fields ) throws Exception {
+        String[] fieldData = new String[fields.length + 1];
+        fieldData[0] = SpatialiteDb.PK_UID + " INTEGER PRIMARY KEY AUTOINCREMENT";
+        System.arraycopy(fields, 0, fieldData, 1, fields.length);
+        db.createTable(TABLE, fieldData);
+        db.addGeometryXYColumnAndIndex(TABLE, null, "POINT", "4326");
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.WritableRenderedImage;
+import java.util.Random;
+
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.jiffle.Jiffle;
+import org.jaitools.jiffle.runtime.JiffleDirectRuntime;
+import org.jaitools.jiffle.runtime.JiffleExecutor;
+import org.jaitools.jiffle.runtime.JiffleExecutorResult;
+import org.jaitools.jiffle.runtime.NullProgressListener;
+import org.jgrasstools.gears.modules.r.mapcalc.MapcalcEngine;
+import org.jgrasstools.gears.modules.r.mapcalc.MapcalcExpression;
+import org.jgrasstools.gears.modules.r.mapcalc.OmsMapcalc;
+import org.jgrasstools.gears.modules.r.mapcalc.WaitingListener;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+
+/**
+ * Benchmark of the tiled engine of {@link OmsMapcalc} against the jiffle executor.
+ *
+ * <p>
+ * Usage: <code>MapcalcBenchmark [cols rows threads]</code>. Expressions with 1, 3 and 10 input
+ * maps are evaluated on random grids and the best time of some runs is reported.
+ * Both engines compile the script before the timing starts, as {@link OmsMapcalc} keeps the
+ * compiled scripts in its cache, and jiffle is run through a {@link JiffleExecutor} the same way
+ * {@link OmsMapcalc} does.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class MapcalcBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void main( String[] args ) throws Exception {
+        int cols = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        String[] scripts = {//
+        "images{m0=read; dest=write;} dest = sqrt(m0) * 2 + 1;",//
+                "images{m0=read; m1=read; m2=read; dest=write;} dest = (m0 + m1) * m2 - sqrt(abs(m0 - m2));",//
+                "images{m0=read; m1=read; m2=read; m3=read; m4=read; m5=read; m6=read; m7=read; m8=read; m9=read; dest=write;} "
+                        + "dest = m0 + 2*m1 + 3*m2 + 4*m3 + 5*m4 + 6*m5 + 7*m6 + 8*m7 + 9*m8 + 10*m9;"};
+
+        Random random = new Random(1);
+        RenderedImage[] maps = new RenderedImage[10];
+        for( int i = 0; i < maps.length; i++ ) {
+            WritableRaster raster = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+            for( int r = 0; r < rows; r++ ) {
+                for( int c = 0; c < cols; c++ ) {
+                    raster.setSample(c, r, 0, random.nextDouble() * 1000);
+                }
+            }
+            maps[i] = CoverageUtilities.buildCoverage("m" + i, raster, CoverageUtilities.makeRegionParamsMap(rows, 0, 0, cols, 1,
+                    1, cols, rows), null).getRenderedImage();
+        }
+
+        System.out.println("Grid of " + cols + "x" + rows + " cells, " + threads + " threads for the tiled engine.");
+        for( String script : scripts ) {
+            MapcalcExpression expression = MapcalcExpression.compile(script);
+            Jiffle jiffle = new Jiffle();
+            jiffle.setScript(script);
+            jiffle.compile();
+            String[] names = expression.getSourceNames();
+            RenderedImage[] sources = new RenderedImage[names.length];
+            System.arraycopy(maps, 0, sources, 0, names.length);
+
+            long jiffleTime = Long.MAX_VALUE;
+            long singleTime = Long.MAX_VALUE;
+            long tiledTime = Long.MAX_VALUE;
+            for( int run = 0; run < RUNS; run++ ) {
+                jiffleTime = Math.min(jiffleTime, runJiffle(jiffle, names, sources, cols, rows));
+                singleTime = Math.min(singleTime, runEngine(expression, sources, cols, rows, 1));
+                tiledTime = Math.min(tiledTime, runEngine(expression, sources, cols, rows, threads));
+            }
+            System.out.println(names.length + " inputs: jiffle " + jiffleTime + " ms, tiled single thread " + singleTime
+                    + " ms, tiled " + threads + " threads " + tiledTime + " ms");
+        }
+    }
+
+    private static long runJiffle( Jiffle jiffle, String[] names, RenderedImage[] sources, int cols, int rows )
+            throws Exception {
+        // the runtime class is generated from the compiled script, not timed
+        JiffleDirectRuntime runtime = jiffle.getRuntimeInstance();
+
+        long start = System.currentTimeMillis();
+        runtime.setWorldByResolution(new Rectangle(0, 0, cols, rows), 1, 1);
+        for( int i = 0; i < names.length; i++ ) {
+            runtime.setSourceImage(names[i], sources[i]);
+        }
+        WritableRenderedImage dest = ImageUtils.createConstantImage(cols, rows, 0d);
+        runtime.setDestinationImage("dest", dest);
+
+        JiffleExecutor executor = new JiffleExecutor();
+        try {
+            WaitingListener listener = new WaitingListener();
+            executor.addEventListener(listener);
+            listener.setNumTasks(1);
+            executor.submit(runtime, new NullProgressListener());
+            listener.await();
+            JiffleExecutorResult result = listener.getResults().get(0);
+            if (!result.isCompleted()) {
+                throw new RuntimeException("The jiffle task failed.");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static long runEngine( MapcalcExpression expression, RenderedImage[] sources, int cols, int rows, int threads ) {
+        long start = System.currentTimeMillis();
+        WritableRaster dest = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        new MapcalcEngine(expression, cols, rows, threads, null).execute(sources, dest);
+        return System.currentTimeMillis() - start;
+    }
+}
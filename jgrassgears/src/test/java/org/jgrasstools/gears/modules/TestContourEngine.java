@@ -0,0 +1,150 @@
+package org.jgrasstools.gears.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jgrasstools.gears.modules.v.contoursextractor.ContourEngine;
+import org.jgrasstools.gears.modules.v.contoursextractor.ContourEngine.ContourHandler;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Test for the {@link ContourEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestContourEngine extends HMTestCase {
+
+    public void testConeGivesOneRingPerLevel() throws Exception {
+        final double centerX = 30.3;
+        final double centerY = 20.7;
+        double[][] values = new double[43][61];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = 100 - Math.hypot(c - centerX, r - centerY);
+            }
+        }
+        RenderedImage image = createImage(values);
+
+        final List<Coordinate[]> rings = new ArrayList<Coordinate[]>();
+        ContourEngine engine = new ContourEngine(image, new double[]{85, 90}, 6, 3, pm);
+        engine.extract(new ContourHandler(){
+            public void handle( double level, Coordinate[] coordinates ) throws Exception {
+                rings.add(coordinates);
+                assertTrue(coordinates[0].equals2D(coordinates[coordinates.length - 1]));
+                for( Coordinate coordinate : coordinates ) {
+                    double radius = Math.hypot(coordinate.x - centerX, coordinate.y - centerY);
+                    assertEquals(100 - level, radius, 0.05);
+                }
+            }
+        });
+        assertEquals(2, rings.size());
+    }
+
+    public void testSaddlesFollowTheCenter() throws Exception {
+        // the center is on the level, the high corners are joined
+        List<String> lines = extract(new ContourEngine(createImage(new double[][]{{10, 0}, {0, 10}}), new double[]{5}, 6, 1,
+                pm));
+        assertEquals(Arrays.asList("5.0: [0.0 0.5, 0.5 1.0]", "5.0: [0.5 0.0, 1.0 0.5]"), lines);
+
+        // the center is below the level, the low corners are joined
+        lines = extract(new ContourEngine(createImage(new double[][]{{10, 0}, {-2, 10}}), new double[]{5}, 6, 1, pm));
+        assertEquals(Arrays.asList("5.0: [0.0 0.4166666666666667, 0.5 0.0]", "5.0: [0.5833333333333334 1.0, 1.0 0.5]"),
+                lines);
+    }
+
+    public void testLinesEndAtNovalues() throws Exception {
+        double[][] values = new double[7][6];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = c;
+            }
+        }
+        values[3][2] = doubleNovalue;
+        RenderedImage image = createImage(values);
+
+        for( int tileSize : new int[]{1000, 2} ) {
+            final List<Coordinate[]> lines = new ArrayList<Coordinate[]>();
+            new ContourEngine(image, new double[]{2.5}, tileSize, 1, pm).extract(new ContourHandler(){
+                public void handle( double level, Coordinate[] coordinates ) throws Exception {
+                    lines.add(coordinates);
+                }
+            });
+            // the line is split by the four cells around the novalue
+            assertEquals(2, lines.size());
+            double[][] ends = new double[2][];
+            for( Coordinate[] line : lines ) {
+                double y1 = line[0].y;
+                double y2 = line[line.length - 1].y;
+                for( Coordinate coordinate : line ) {
+                    assertEquals(2.5, coordinate.x, DELTA);
+                }
+                ends[Math.min(y1, y2) < 3 ? 0 : 1] = new double[]{Math.min(y1, y2), Math.max(y1, y2)};
+            }
+            assertEquals(0.0, ends[0][0], DELTA);
+            assertEquals(2.0, ends[0][1], DELTA);
+            assertEquals(4.0, ends[1][0], DELTA);
+            assertEquals(6.0, ends[1][1], DELTA);
+        }
+    }
+
+    public void testTilesAreSeamless() throws Exception {
+        double[][] values = new double[71][97];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = 50 + 20 * Math.sin(c / 7.0) * Math.cos(r / 9.0) + c / 10.0;
+            }
+        }
+        // a hole of novalues
+        for( int r = 30; r < 36; r++ ) {
+            for( int c = 40; c < 47; c++ ) {
+                values[r][c] = doubleNovalue;
+            }
+        }
+        RenderedImage image = createImage(values);
+        double[] levels = {40, 45, 50, 55, 60, 65};
+
+        List<String> single = extract(new ContourEngine(image, levels, 1000, 1, pm));
+        List<String> tiled = extract(new ContourEngine(image, levels, 8, 4, pm));
+        assertTrue(single.size() > levels.length);
+        assertEquals(single, tiled);
+    }
+
+    /**
+     * @return the lines as sorted strings of their sorted coordinates, independent from
+     *          direction and starting point.
+     */
+    private List<String> extract( ContourEngine engine ) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        engine.extract(new ContourHandler(){
+            public void handle( double level, Coordinate[] coordinates ) throws Exception {
+                // the closing coordinate of rings depends on where they start
+                int count = coordinates.length;
+                if (coordinates[0].equals2D(coordinates[count - 1])) {
+                    count--;
+                }
+                String[] points = new String[count];
+                for( int i = 0; i < count; i++ ) {
+                    points[i] = coordinates[i].x + " " + coordinates[i].y;
+                }
+                Arrays.sort(points);
+                lines.add(level + ": " + Arrays.toString(points));
+            }
+        });
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private RenderedImage createImage( double[][] values ) {
+        return CoverageUtilities.buildCoverage("dem", values, HMTestMaps.getEnvelopeparams(), HMTestMaps.getCrs(), true)
+                .getRenderedImage();
+    }
+}
@@ -1,62 +1,139 @@
-///*
-// * This file is part of JGrasstools (http://www.jgrasstools.org)
-// * (C) HydroloGIS - www.hydrologis.com 
-// * 
-// * JGrasstools is free software: you can redistribute it and/or modify
-// * it under the terms of the GNU General Public License as published by
-// * the Free Software Foundation, either version 3 of the License, or
-// * (at your option) any later version.
-// *
-// * This program is distributed in the hope that it will be useful,
-// * but WITHOUT ANY WARRANTY; without even the implied warranty of
-// * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
-// * GNU General Public License for more details.
-// *
-// * You should have received a copy of the GNU General Public License
-// * along with this program.  If not, see <http://www.gnu.org/licenses/>.
-// */
-//package org.jgrasstools.gears.modules;
-//
-//import java.util.HashMap;
-//
-//import org.geotools.coverage.grid.GridCoverage2D;
-//import org.geotools.data.simple.SimpleFeatureCollection;
-//import org.geotools.data.simple.SimpleFeatureIterator;
-//import org.jgrasstools.gears.modules.v.contoursextractor.OmsContourExtractor;
-//import org.jgrasstools.gears.utils.HMTestCase;
-//import org.jgrasstools.gears.utils.HMTestMaps;
-//import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-//import org.opengis.referencing.crs.CoordinateReferenceSystem;
-//
-//import com.vividsolutions.jts.geom.Geometry;
-//
-///**
-// * Test for the {@link OmsContourExtractor}.
-// * 
-// * @author Andrea Antonello (www.hydrologis.com)
-// */
-//public class TestContourExtractor extends HMTestCase {
-//    public void testCountourExtractor() throws Exception {
-//        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
-//        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
-//        double[][] netData = HMTestMaps.contourExtractorData;
-//        GridCoverage2D cedCoverage = CoverageUtilities.buildCoverage("ced", netData, envelopeParams, crs, true);
-//
-//        OmsContourExtractor extractor = new OmsContourExtractor();
-//        extractor.inCoverage = cedCoverage;
-//        extractor.pMax = 95.0;
-//        extractor.pMin = 90.0;
-//        extractor.pInterval = 5.0;
-//        extractor.process();
-//
-//        SimpleFeatureCollection contours = extractor.outGeodata;
-//        assertTrue(contours.size() == 2);
-//
-//        SimpleFeatureIterator featureIterator = contours.features();
-//        Geometry geometry = (Geometry) featureIterator.next().getDefaultGeometry();
-//        System.out.println(geometry.toText());
-//        geometry = (Geometry) featureIterator.next().getDefaultGeometry();
-//        System.out.println(geometry.toText());
-//    }
-//
-//}
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.jgrasstools.gears.io.vectorreader.OmsVectorReader;
+import org.jgrasstools.gears.modules.v.contoursextractor.OmsContourExtractor;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * Test for the {@link OmsContourExtractor}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestContourExtractor extends HMTestCase {
+
+    /**
+     * The envelopes of the rings around the ring of lower cells, outer one first.
+     */
+    private static final Envelope[] ENVELOPES = {//
+    new Envelope(1640681.5, 1640918.5, 5139811.5, 5139958.5), //
+            new Envelope(1640708.5, 1640891.5, 5139838.5, 5139931.5)};
+
+    public void testCountourExtractor() throws Exception {
+        OmsContourExtractor extractor = createExtractor();
+        extractor.process();
+
+        // no lines at 90, all the cells are above, two rings at 95
+        checkContours(extractor.outGeodata);
+    }
+
+    public void testStreamingToShapefile() throws Exception {
+        File folder = File.createTempFile("contours", "");
+        folder.delete();
+        folder.mkdir();
+        File shapefile = new File(folder, "contours.shp");
+        try {
+            OmsContourExtractor extractor = createExtractor();
+            extractor.outFile = shapefile.getAbsolutePath();
+            extractor.process();
+            assertNull(extractor.outGeodata);
+            checkContours(OmsVectorReader.readVector(shapefile.getAbsolutePath()));
+
+            // once written the module doesn't run again, unless it is reset
+            deleteFiles(folder);
+            extractor.process();
+            assertFalse(shapefile.exists());
+            extractor.doReset = true;
+            extractor.process();
+            checkContours(OmsVectorReader.readVector(shapefile.getAbsolutePath()));
+        } finally {
+            deleteFiles(folder);
+            folder.delete();
+        }
+    }
+
+    private OmsContourExtractor createExtractor() {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        double[][] netData = HMTestMaps.contourExtractorData;
+        GridCoverage2D cedCoverage = CoverageUtilities.buildCoverage("ced", netData, envelopeParams, crs, true);
+
+        OmsContourExtractor extractor = new OmsContourExtractor();
+        extractor.inCoverage = cedCoverage;
+        extractor.pMax = 95.0;
+        extractor.pMin = 90.0;
+        extractor.pInterval = 5.0;
+        extractor.pm = pm;
+        return extractor;
+    }
+
+    private void checkContours( SimpleFeatureCollection contours ) {
+        assertEquals(2, contours.size());
+
+        List<Envelope> envelopes = new ArrayList<Envelope>();
+        SimpleFeatureIterator featureIterator = contours.features();
+        try {
+            while( featureIterator.hasNext() ) {
+                SimpleFeature feature = featureIterator.next();
+                assertEquals(95.0, ((Number) feature.getAttribute("elevation")).doubleValue(), DELTA);
+                // the shapefile gives back multilines
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                assertEquals(1, geometry.getNumGeometries());
+                assertTrue(((LineString) geometry.getGeometryN(0)).isClosed());
+                envelopes.add(geometry.getEnvelopeInternal());
+            }
+        } finally {
+            featureIterator.close();
+        }
+        // outer ring first
+        if (envelopes.get(0).getArea() < envelopes.get(1).getArea()) {
+            Collections.reverse(envelopes);
+        }
+        for( int i = 0; i < ENVELOPES.length; i++ ) {
+            assertEquals(ENVELOPES[i].getMinX(), envelopes.get(i).getMinX(), DELTA);
+            assertEquals(ENVELOPES[i].getMaxX(), envelopes.get(i).getMaxX(), DELTA);
+            assertEquals(ENVELOPES[i].getMinY(), envelopes.get(i).getMinY(), DELTA);
+            assertEquals(ENVELOPES[i].getMaxY(), envelopes.get(i).getMaxY(), DELTA);
+        }
+    }
+
+    private void deleteFiles( File folder ) {
+        for( File file : folder.listFiles() ) {
+            file.delete();
+        }
+    }
+
+}
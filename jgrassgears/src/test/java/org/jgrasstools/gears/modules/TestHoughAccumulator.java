@@ -0,0 +1,147 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import org.jgrasstools.gears.modules.r.houghes.HoughAccumulator;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Test {@link HoughAccumulator} on synthetic images.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHoughAccumulator extends HMTestCase {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 80;
+    private static final int RADIUS_MIN = 6;
+    private static final int RADIUS_MAX = 16;
+    private static final int RADIUS_INC = 1;
+    private static final int DEPTH = (RADIUS_MAX - RADIUS_MIN) / RADIUS_INC + 1;
+
+    /**
+     * The circles as x, y and radius, in the order they are found. The lookup table has
+     * the same number of angles for all radii, so the smaller circle gets the most votes.
+     */
+    private static final int[][] CIRCLES = {{35, 62, 8}, {70, 40, 14}, {28, 30, 11}};
+
+    private int[][][] lut;
+    private int lutSize;
+
+    @Override
+    protected void setUp() throws Exception {
+        buildLookUpTable();
+    }
+
+    public void testCircles() throws Exception {
+        byte[] image = new byte[WIDTH * HEIGHT];
+        for( int[] circle : CIRCLES ) {
+            drawCircle(image, circle[0], circle[1], circle[2]);
+        }
+
+        for( int threads : new int[]{1, 4} ) {
+            HoughAccumulator accumulator = new HoughAccumulator(image, WIDTH, HEIGHT, RADIUS_MIN, RADIUS_INC, DEPTH, lut,
+                    lutSize, threads, pm);
+            accumulator.accumulate();
+            Coordinate[] centerPoints = accumulator.getCenterPoints(CIRCLES.length);
+
+            assertEquals(CIRCLES.length, centerPoints.length);
+            for( int i = 0; i < CIRCLES.length; i++ ) {
+                assertEquals(CIRCLES[i][0], centerPoints[i].x, 0.0);
+                assertEquals(CIRCLES[i][1], centerPoints[i].y, 0.0);
+                assertEquals(CIRCLES[i][2], centerPoints[i].z, 0.0);
+            }
+        }
+    }
+
+    public void testNoPaddingCenters() throws Exception {
+        int maxCircles = 1000;
+
+        // no edge pixels, no votes at all
+        byte[] image = new byte[WIDTH * HEIGHT];
+        for( int threads : new int[]{1, 4} ) {
+            HoughAccumulator accumulator = new HoughAccumulator(image, WIDTH, HEIGHT, RADIUS_MIN, RADIUS_INC, DEPTH, lut,
+                    lutSize, threads, pm);
+            accumulator.accumulate();
+            assertEquals(0, accumulator.getCenterPoints(maxCircles).length);
+        }
+
+        // a single edge pixel only votes for centers around it
+        int x = 50;
+        int y = 40;
+        image[x + y * WIDTH] = 1;
+        Coordinate[] serialPoints = null;
+        for( int threads : new int[]{1, 4} ) {
+            HoughAccumulator accumulator = new HoughAccumulator(image, WIDTH, HEIGHT, RADIUS_MIN, RADIUS_INC, DEPTH, lut,
+                    lutSize, threads, pm);
+            accumulator.accumulate();
+            Coordinate[] centerPoints = accumulator.getCenterPoints(maxCircles);
+
+            assertTrue(centerPoints.length > 0);
+            assertTrue(centerPoints.length < maxCircles);
+            for( Coordinate center : centerPoints ) {
+                double distance = Math.sqrt((center.x - x) * (center.x - x) + (center.y - y) * (center.y - y));
+                assertTrue(Math.abs(distance - center.z) <= 1.0);
+            }
+
+            if (serialPoints == null) {
+                serialPoints = centerPoints;
+            } else {
+                assertEquals(serialPoints.length, centerPoints.length);
+                for( int i = 0; i < centerPoints.length; i++ ) {
+                    assertTrue(serialPoints[i].equals3D(centerPoints[i]));
+                }
+            }
+        }
+    }
+
+    private static void drawCircle( byte[] image, int x, int y, int radius ) {
+        for( int a = 0; a < 720; a++ ) {
+            double angle = 2 * Math.PI * a / 720.0;
+            int col = x + (int) Math.round(radius * Math.cos(angle));
+            int row = y + (int) Math.round(radius * Math.sin(angle));
+            image[col + row * WIDTH] = 1;
+        }
+    }
+
+    /*
+     * the lookup table as built by OmsHoughCirclesRaster
+     */
+    private void buildLookUpTable() {
+        int i = 0;
+        int incDen = Math.round(8F * RADIUS_MIN);
+        lut = new int[2][incDen][DEPTH];
+        for( int radius = RADIUS_MIN; radius <= RADIUS_MAX; radius = radius + RADIUS_INC ) {
+            i = 0;
+            for( int incNun = 0; incNun < incDen; incNun++ ) {
+                double angle = (2 * Math.PI * (double) incNun) / (double) incDen;
+                int indexR = (radius - RADIUS_MIN) / RADIUS_INC;
+                int rcos = (int) Math.round((double) radius * Math.cos(angle));
+                int rsin = (int) Math.round((double) radius * Math.sin(angle));
+                if ((i == 0) | (rcos != lut[0][i][indexR]) & (rsin != lut[1][i][indexR])) {
+                    lut[0][i][indexR] = rcos;
+                    lut[1][i][indexR] = rsin;
+                    i++;
+                }
+            }
+        }
+        lutSize = i;
+    }
+}
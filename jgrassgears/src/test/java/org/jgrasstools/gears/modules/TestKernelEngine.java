@@ -0,0 +1,136 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrasstools.gears.modules.r.filter.KernelEngine;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link KernelEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestKernelEngine extends HMTestCase {
+
+    private static final int COLS = 37;
+    private static final int ROWS = 29;
+    private static final int RADIUS = 4;
+
+    private double[] data;
+
+    protected void setUp() throws Exception {
+        Random random = new Random(1);
+        data = new double[COLS * ROWS];
+        for( int i = 0; i < data.length; i++ ) {
+            data[i] = random.nextDouble() < 0.1 ? Double.NaN : random.nextDouble() * 100;
+        }
+    }
+
+    public void testConvolutions() throws Exception {
+        double[][] box = new double[5][7];
+        double[][] circle = new double[2 * RADIUS + 1][2 * RADIUS + 1];
+        double[][] separable = new double[2 * RADIUS + 1][2 * RADIUS + 1];
+        for( double[] row : box ) {
+            Arrays.fill(row, 1.0);
+        }
+        for( int r = -RADIUS; r <= RADIUS; r++ ) {
+            for( int c = -RADIUS; c <= RADIUS; c++ ) {
+                circle[r + RADIUS][c + RADIUS] = r * r + c * c <= RADIUS * RADIUS ? 1.0 : 0.0;
+                separable[r + RADIUS][c + RADIUS] = Math.exp(-r * r / 3.0) * (1 + Math.abs(c));
+            }
+        }
+        assertNotNull(KernelEngine.separate(separable));
+        assertNull(KernelEngine.separate(circle));
+
+        for( int threads : new int[]{1, 3} ) {
+            KernelEngine engine = new KernelEngine(COLS, ROWS, threads, null);
+            checkEqual(engine.convolveDirect(data, box), engine.convolve(data, box));
+            checkEqual(engine.convolveDirect(data, circle), engine.convolve(data, circle));
+            checkEqual(engine.convolveDirect(data, separable), engine.convolve(data, separable));
+        }
+    }
+
+    public void testMinMax() throws Exception {
+        boolean[][] circle = new boolean[2 * RADIUS + 1][2 * RADIUS + 1];
+        for( int r = -RADIUS; r <= RADIUS; r++ ) {
+            for( int c = -RADIUS; c <= RADIUS; c++ ) {
+                circle[r + RADIUS][c + RADIUS] = r * r + c * c <= RADIUS * RADIUS;
+            }
+        }
+        boolean[][] rectangle = new boolean[3][5];
+        for( boolean[] row : rectangle ) {
+            Arrays.fill(row, true);
+        }
+
+        for( int threads : new int[]{1, 3} ) {
+            KernelEngine engine = new KernelEngine(COLS, ROWS, threads, null);
+            checkEqual(bruteExtreme(circle, true), engine.max(data, circle));
+            checkEqual(bruteExtreme(circle, false), engine.min(data, circle));
+            checkEqual(bruteExtreme(rectangle, true), engine.max(data, rectangle));
+            checkEqual(bruteExtreme(rectangle, false), engine.min(data, rectangle));
+        }
+    }
+
+    private double[] bruteExtreme( boolean[][] shape, boolean isMax ) {
+        int ry = shape.length / 2;
+        int rx = shape[0].length / 2;
+        double[] out = new double[COLS * ROWS];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                double extreme = isMax ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                for( int kr = -ry; kr <= ry; kr++ ) {
+                    for( int kc = -rx; kc <= rx; kc++ ) {
+                        if (!shape[kr + ry][kc + rx]) {
+                            continue;
+                        }
+                        int rr = r + kr;
+                        int cc = c + kc;
+                        double value = Double.NaN;
+                        if (rr >= 0 && rr < ROWS && cc >= 0 && cc < COLS) {
+                            value = data[rr * COLS + cc];
+                        }
+                        if (Double.isNaN(value)) {
+                            if (!isMax) {
+                                extreme = Double.NEGATIVE_INFINITY;
+                            }
+                        } else if (isMax ? value > extreme : value < extreme) {
+                            extreme = value;
+                        }
+                    }
+                }
+                out[r * COLS + c] = Double.isInfinite(extreme) ? Double.NaN : extreme;
+            }
+        }
+        return out;
+    }
+
+    private void checkEqual( double[] expected, double[] values ) {
+        assertEquals(expected.length, values.length);
+        for( int i = 0; i < expected.length; i++ ) {
+            if (Double.isNaN(expected[i])) {
+                assertTrue(Double.isNaN(values[i]));
+            } else {
+                assertEquals(expected[i], values[i], DELTA);
+            }
+        }
+    }
+
+}
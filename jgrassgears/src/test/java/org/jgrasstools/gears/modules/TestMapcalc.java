@@ -21,8 +21,10 @@ import java.awt.image.RenderedImage;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.modules.r.mapcalc.MapcalcExpression;
 import org.jgrasstools.gears.modules.r.mapcalc.OmsMapcalc;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.jgrasstools.gears.utils.HMTestMaps;
@@ -100,6 +102,52 @@ public class TestMapcalc extends HMTestCase {
         checkEqualsSinlgeValue(renderedImage, 900.0, 0.000000001);
     }
 
+    public void testMapcalcTiled() throws Exception {
+        int cols = 700;
+        int rows = 300;
+        Random random = new Random(3);
+        double[][] aData = new double[rows][cols];
+        double[][] bData = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                aData[r][c] = random.nextDouble() < 0.05 ? Double.NaN : random.nextDouble() * 100;
+                bData[r][c] = random.nextDouble() * 100;
+            }
+        }
+        HashMap<String, Double> envelopeParams = CoverageUtilities.makeRegionParamsMap(rows * 10.0, 0, 0, cols * 10.0, 10, 10,
+                cols, rows);
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D aCoverage = CoverageUtilities.buildCoverage("a", aData, envelopeParams, crs, true);
+        GridCoverage2D bCoverage = CoverageUtilities.buildCoverage("b", bData, envelopeParams, crs, true);
+
+        String script = "images{a=read; b=read; dest=write;} dest = max(a, b) - sqrt(abs(a - b)) * 2 + a % 7 - 2^-1 + M_PI;";
+        assertNotNull(MapcalcExpression.compile(script));
+
+        OmsMapcalc mapcalc = new OmsMapcalc();
+        mapcalc.inRasters = Arrays.asList(bCoverage, aCoverage);
+        mapcalc.pFunction = script;
+        mapcalc.pMaxThreads = 4;
+        mapcalc.process();
+
+        double[][] expected = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double a = aData[r][c];
+                double b = bData[r][c];
+                expected[r][c] = Math.max(a, b) - Math.sqrt(Math.abs(a - b)) * 2 + a % 7 - 0.5 + Math.PI;
+            }
+        }
+        checkMatrixEqual(mapcalc.outRaster.getRenderedImage(), expected, 0.000000001);
+    }
+
+    public void testUnsupportedScripts() throws Exception {
+        assertNull(MapcalcExpression.compile("images{ele=read; dest=write;} dest = xres()*yres();"));
+        assertNull(MapcalcExpression.compile("dest = ele * 2;"));
+        assertNull(MapcalcExpression.compile("images{ele=read; dest=write;} dest = -ele^2;"));
+        assertNull(MapcalcExpression.compile("images{ele=read; dest=write;} dest = ele > 2 ? 1 : 0;"));
+        assertNotNull(MapcalcExpression.compile("images{ele=read; dest=write;} dest = (-ele)^2;"));
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestMapcalc().testMapcalc();
     }
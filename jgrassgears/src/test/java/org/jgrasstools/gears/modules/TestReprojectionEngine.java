@@ -0,0 +1,223 @@
+package org.jgrasstools.gears.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+
+import javax.media.jai.Interpolation;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
+import org.jgrasstools.gears.libs.modules.Variables;
+import org.jgrasstools.gears.modules.r.rasterreprojector.OmsRasterReprojector;
+import org.jgrasstools.gears.modules.r.rasterreprojector.ReprojectionEngine;
+import org.jgrasstools.gears.modules.r.rasterreprojector.ReprojectionEngine.TileHandler;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * Test for the {@link ReprojectionEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestReprojectionEngine extends HMTestCase {
+
+    private static final int UTM_CELLS = 100;
+    private static final int LATLONG_COLS = 300;
+    private static final int LATLONG_ROWS = 260;
+    private static final double LATLONG_WEST = 10.5;
+    private static final double LATLONG_SOUTH = 45.0;
+    private static final double LATLONG_RES = 1.0 / 128;
+
+    public void testNearestUpsampling() throws Exception {
+        double[][] mapData = HMTestMaps.mapData;
+        int rows = mapData.length;
+        int cols = mapData[0].length;
+        MathTransform transform = ProjectiveTransform.create(AffineTransform.getScaleInstance(0.5, 0.5));
+
+        double[][] result = resample(new ReprojectionEngine(createImage(mapData), transform, 2 * cols, 2 * rows,
+                Interpolation.INTERP_NEAREST, ReprojectionEngine.DEFAULT_TOLERANCE, 4, 2, pm), 2 * cols, 2 * rows);
+        double[][] expected = new double[2 * rows][2 * cols];
+        for( int r = 0; r < 2 * rows; r++ ) {
+            for( int c = 0; c < 2 * cols; c++ ) {
+                expected[r][c] = mapData[r / 2][c / 2];
+            }
+        }
+        checkEqual(expected, result, 0.0);
+    }
+
+    public void testTilesAreSeamless() throws Exception {
+        double[][] values = new double[53][67];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = 50 + 20 * Math.sin(c / 7.0) * Math.cos(r / 9.0);
+            }
+        }
+        RenderedImage image = createImage(values);
+        AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(30), 33, 26);
+        MathTransform transform = ProjectiveTransform.create(rotation);
+
+        double[][] single = resample(new ReprojectionEngine(image, transform, 67, 53, Interpolation.INTERP_BICUBIC, 0, 1000, 1,
+                pm), 67, 53);
+        double[][] tiled = resample(new ReprojectionEngine(image, transform, 67, 53, Interpolation.INTERP_BICUBIC,
+                ReprojectionEngine.DEFAULT_TOLERANCE, 7, 3, pm), 67, 53);
+        checkEqual(single, tiled, 1E-6);
+    }
+
+    public void testCrsTransformIsApproximatedWithinTolerance() throws Exception {
+        double tolerance = ReprojectionEngine.DEFAULT_TOLERANCE;
+        // ramps on the columns and on the rows, bilinear gives back the input position
+        GridCoverage2D[] ramps = {createUtmRamp(true), createUtmRamp(false)};
+        double[][][] exact = new double[2][][];
+        double[][][] approximated = new double[2][][];
+        double[][][] unsplit = new double[2][][];
+        for( int i = 0; i < 2; i++ ) {
+            exact[i] = reproject(ramps[i], 0, null);
+            approximated[i] = reproject(ramps[i], tolerance, null);
+            unsplit[i] = reproject(ramps[i], 1E6, null);
+        }
+
+        double maxSplitError = 0;
+        double maxUnsplitError = 0;
+        int checked = 0;
+        for( int r = 0; r < LATLONG_ROWS; r++ ) {
+            for( int c = 0; c < LATLONG_COLS; c++ ) {
+                // only the cells with the whole kernel inside the input
+                if (!isInside(exact[0][r][c]) || !isInside(exact[1][r][c])) {
+                    continue;
+                }
+                for( int i = 0; i < 2; i++ ) {
+                    maxSplitError = Math.max(maxSplitError, Math.abs(approximated[i][r][c] - exact[i][r][c]));
+                    maxUnsplitError = Math.max(maxUnsplitError, Math.abs(unsplit[i][r][c] - exact[i][r][c]));
+                }
+                checked++;
+            }
+        }
+        assertTrue(checked > LATLONG_ROWS * LATLONG_COLS / 2);
+        assertTrue(maxSplitError <= tolerance);
+        // the corners of the tiles alone are not enough, the blocks have been split
+        assertTrue(maxUnsplitError > tolerance);
+    }
+
+    public void testStreamingToAsciiGrid() throws Exception {
+        GridCoverage2D ramp = createUtmRamp(true);
+        double[][] expected = reproject(ramp, ReprojectionEngine.DEFAULT_TOLERANCE, null);
+
+        File file = File.createTempFile("reprojected", ".asc");
+        try {
+            // two tiles on a row, that the writer has to put together
+            assertNull(reproject(ramp, ReprojectionEngine.DEFAULT_TOLERANCE, file.getAbsolutePath()));
+
+            OmsRasterReader reader = new OmsRasterReader();
+            reader.file = file.getAbsolutePath();
+            reader.fileNovalue = -9999.0;
+            reader.geodataNovalue = Double.NaN;
+            reader.process();
+            GridCoverage2D readCoverage = reader.outRaster;
+
+            RegionMap region = CoverageUtilities.getRegionParamsFromGridCoverage(readCoverage);
+            assertEquals(LATLONG_COLS, region.getCols());
+            assertEquals(LATLONG_ROWS, region.getRows());
+            assertEquals(LATLONG_WEST, region.getWest(), DELTA);
+            assertEquals(LATLONG_SOUTH, region.getSouth(), DELTA);
+            assertEquals(LATLONG_RES, region.getXres(), DELTA);
+            assertEquals(LATLONG_RES, region.getYres(), DELTA);
+            checkEqual(expected, toMatrix(readCoverage), 1E-4);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private double[][] resample( ReprojectionEngine engine, int cols, int rows ) throws Exception {
+        final double[][] result = new double[rows][cols];
+        engine.resample(new TileHandler(){
+            public void handle( int x, int y, int width, int height, double[] values ) throws Exception {
+                for( int r = 0; r < height; r++ ) {
+                    System.arraycopy(values, r * width, result[y + r], x, width);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return a ramp in UTM 32N, the value being the column or the row.
+     */
+    private GridCoverage2D createUtmRamp( boolean onColumns ) {
+        double[][] values = new double[UTM_CELLS][UTM_CELLS];
+        for( int r = 0; r < UTM_CELLS; r++ ) {
+            for( int c = 0; c < UTM_CELLS; c++ ) {
+                values[r][c] = onColumns ? c : r;
+            }
+        }
+        RegionMap region = CoverageUtilities.makeRegionParamsMap(5200000, 5000000, 600000, 800000, 2000, 2000, UTM_CELLS,
+                UTM_CELLS);
+        return CoverageUtilities.buildCoverage("ramp", values, region, HMTestMaps.getCrs(), true);
+    }
+
+    /**
+     * Reprojects to WGS84 with the longitude first, on a grid of two by two tiles.
+     *
+     * @return the reprojected values or <code>null</code> when streaming.
+     */
+    private double[][] reproject( GridCoverage2D raster, double tolerance, String outFile ) throws Exception {
+        OmsRasterReprojector reprojector = new OmsRasterReprojector();
+        reprojector.inRaster = raster;
+        reprojector.pCode = "CRS:84";
+        reprojector.pInterpolation = Variables.BILINEAR;
+        reprojector.pTolerance = tolerance;
+        reprojector.pMaxThreads = 2;
+        reprojector.pm = pm;
+        reprojector.pNorth = LATLONG_SOUTH + LATLONG_ROWS * LATLONG_RES;
+        reprojector.pSouth = LATLONG_SOUTH;
+        reprojector.pWest = LATLONG_WEST;
+        reprojector.pEast = LATLONG_WEST + LATLONG_COLS * LATLONG_RES;
+        reprojector.pRows = LATLONG_ROWS;
+        reprojector.pCols = LATLONG_COLS;
+        reprojector.outFile = outFile;
+        reprojector.process();
+        if (outFile != null) {
+            return null;
+        }
+        return toMatrix(reprojector.outRaster);
+    }
+
+    private boolean isInside( double position ) {
+        return !isNovalue(position) && position >= 1 && position <= UTM_CELLS - 2;
+    }
+
+    private double[][] toMatrix( GridCoverage2D coverage ) {
+        Raster raster = coverage.getRenderedImage().getData();
+        double[][] values = new double[raster.getHeight()][raster.getWidth()];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = raster.getSampleDouble(raster.getMinX() + c, raster.getMinY() + r, 0);
+            }
+        }
+        return values;
+    }
+
+    private void checkEqual( double[][] expected, double[][] result, double delta ) {
+        for( int r = 0; r < expected.length; r++ ) {
+            for( int c = 0; c < expected[0].length; c++ ) {
+                if (isNovalue(expected[r][c])) {
+                    assertTrue(c + " " + r, isNovalue(result[r][c]));
+                } else {
+                    assertEquals(c + " " + r, expected[r][c], result[r][c], delta);
+                }
+            }
+        }
+    }
+
+    private RenderedImage createImage( double[][] values ) {
+        return CoverageUtilities.buildCoverage("data", values, HMTestMaps.getEnvelopeparams(), HMTestMaps.getCrs(), true)
+                .getRenderedImage();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.File;
+import java.util.List;
+
+import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.core.v_1_0.LasWriter;
+import org.jgrasstools.gears.io.las.spatialite.LasCell;
+import org.jgrasstools.gears.io.las.spatialite.LasCellsTable;
+import org.jgrasstools.gears.io.las.spatialite.SpatialiteLasWriter;
+import org.jgrasstools.gears.spatialite.SpatialiteDb;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Test for the {@link SpatialiteLasWriter}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestSpatialiteLasWriter extends HMTestCase {
+
+    private static final double WEST = 650000.0;
+    private static final double SOUTH = 5100000.0;
+
+    public void testCellsCount() throws Exception {
+        File folder = File.createTempFile("jgt-laswriter", "");
+        folder.delete();
+        folder.mkdirs();
+        File dbFile = new File(folder.getParentFile(), folder.getName() + ".sqlite");
+        try {
+            // 12x12 points one meter apart, split into 4x4 cells of 3 meters
+            LasWriter lasWriter = new LasWriter(new File(folder, "points.las"), null);
+            lasWriter.setScales(0.01, 0.01, 0.01);
+            lasWriter.setOffset(WEST, SOUTH, 0);
+            lasWriter.setBounds(WEST + 0.5, WEST + 11.5, SOUTH + 0.5, SOUTH + 11.5, 100, 111);
+            lasWriter.open();
+            for( int r = 0; r < 12; r++ ) {
+                for( int c = 0; c < 12; c++ ) {
+                    LasRecord dot = new LasRecord();
+                    dot.x = WEST + c + 0.5;
+                    dot.y = SOUTH + r + 0.5;
+                    dot.z = 100 + r;
+                    dot.intensity = 10;
+                    dot.returnNumber = 1;
+                    dot.numberOfReturns = 1;
+                    dot.classification = 2;
+                    lasWriter.addPoint(dot);
+                }
+            }
+            lasWriter.close();
+
+            SpatialiteLasWriter writer = new SpatialiteLasWriter();
+            writer.pm = pm;
+            writer.inFolder = folder.getAbsolutePath();
+            writer.inSpatialite = dbFile.getAbsolutePath();
+            writer.pCode = "EPSG:32632";
+            writer.pCellsize = 3;
+            writer.pLevels = 1;
+            writer.pThreads = 2;
+            // small batches so that the builders have to go through the queue more than once
+            writer.pBatchSize = 3;
+            writer.process();
+
+            try (SpatialiteDb db = new SpatialiteDb()) {
+                db.open(dbFile.getAbsolutePath());
+                assertEquals(16, db.getCount(LasCellsTable.TABLENAME));
+
+                Envelope envelope = new Envelope(WEST, WEST + 12, SOUTH, SOUTH + 12);
+                List<LasCell> cells = LasCellsTable.getLasCells(db, envelope, true, false, false, false, false);
+                assertEquals(16, cells.size());
+                int pointsCount = 0;
+                for( LasCell cell : cells ) {
+                    assertEquals(9, cell.pointsCount);
+                    pointsCount += cell.pointsCount;
+                }
+                assertEquals(144, pointsCount);
+            }
+        } finally {
+            for( File file : folder.listFiles() ) {
+                file.delete();
+            }
+            folder.delete();
+            dbFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.jgrasstools.gears.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrasstools.gears.modules.v.vectorize.VectorizerEngine;
+import org.jgrasstools.gears.modules.v.vectorize.VectorizerEngine.PolygonHandler;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test for the {@link VectorizerEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestVectorizerEngine extends HMTestCase {
+
+    public void testHoleAcrossTiles() throws Exception {
+        double[][] values = new double[5][5];
+        for( double[] row : values ) {
+            Arrays.fill(row, 1);
+        }
+        values[2][2] = 2;
+        values[2][3] = 2;
+        values[0][4] = doubleNovalue;
+
+        List<String> polygons = extract(new VectorizerEngine(createImage(values), 2, 2, pm));
+        assertEquals(2, polygons.size());
+        assertEquals("1.0 area=22.0 holes=1", polygons.get(0).substring(0, polygons.get(0).indexOf(':')));
+        assertEquals("2.0 area=2.0 holes=0", polygons.get(1).substring(0, polygons.get(1).indexOf(':')));
+    }
+
+    public void testCornerCellsAreKeptApart() throws Exception {
+        // a checkerboard gives a polygon per cell, also across the seams
+        double[][] values = new double[3][3];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = (r + c) % 2 + 1;
+            }
+        }
+        List<String> polygons = extract(new VectorizerEngine(createImage(values), 2, 1, pm));
+        assertEquals(9, polygons.size());
+        int ones = 0;
+        for( String polygon : polygons ) {
+            assertTrue(polygon.contains(" area=1.0 holes=0"));
+            if (polygon.startsWith("1.0")) {
+                ones++;
+            }
+        }
+        assertEquals(5, ones);
+    }
+
+    public void testClassify() throws Exception {
+        double[][] values = new double[6][8];
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                values[r][c] = r * values[0].length + c;
+            }
+        }
+        VectorizerEngine engine = new VectorizerEngine(createImage(values), 3, 1, pm){
+            protected double classify( double value ) {
+                if (value >= 40) {
+                    return doubleNovalue;
+                }
+                return value < 16 ? 0 : 1;
+            }
+        };
+        List<String> polygons = extract(engine);
+        assertEquals(2, polygons.size());
+        assertEquals("0.0 area=16.0 holes=0", polygons.get(0).substring(0, polygons.get(0).indexOf(':')));
+        assertEquals("1.0 area=24.0 holes=0", polygons.get(1).substring(0, polygons.get(1).indexOf(':')));
+    }
+
+    public void testTilesAreSeamless() throws Exception {
+        Random random = new Random(7);
+        double[][] values = new double[47][61];
+        int validCells = 0;
+        for( int r = 0; r < values.length; r++ ) {
+            for( int c = 0; c < values[0].length; c++ ) {
+                int v = random.nextInt(8);
+                // a few large patches and many small ones touching at the corners
+                if (v < 3) {
+                    values[r][c] = (r / 9 + c / 13) % 3;
+                } else if (v < 7) {
+                    values[r][c] = (r + c) % 2 + 3;
+                } else {
+                    values[r][c] = doubleNovalue;
+                    continue;
+                }
+                validCells++;
+            }
+        }
+        RenderedImage image = createImage(values);
+
+        List<String> single = extract(new VectorizerEngine(image, 1000, 1, pm));
+        List<String> tiled = extract(new VectorizerEngine(image, 5, 3, pm));
+        assertEquals(single, tiled);
+
+        double area = 0;
+        for( String polygon : single ) {
+            area += Double.parseDouble(polygon.substring(polygon.indexOf('=') + 1, polygon.indexOf(" holes")));
+        }
+        assertEquals(validCells, area, 0.0);
+    }
+
+    /**
+     * @return the polygons as sorted strings of value, area and rings, independent from
+     *          the starting point of the rings.
+     */
+    private List<String> extract( VectorizerEngine engine ) throws Exception {
+        final List<String> polygons = new ArrayList<String>();
+        engine.extract(new PolygonHandler(){
+            public void handle( double value, Polygon polygon ) throws Exception {
+                List<String> holes = new ArrayList<String>();
+                for( int i = 0; i < polygon.getNumInteriorRing(); i++ ) {
+                    holes.add(toString(polygon.getInteriorRingN(i).getCoordinates()));
+                }
+                Collections.sort(holes);
+                polygons.add(value + " area=" + polygon.getArea() + " holes=" + holes.size() + ": "
+                        + toString(polygon.getExteriorRing().getCoordinates()) + " " + holes);
+            }
+
+            private String toString( Coordinate[] coordinates ) {
+                // the closing coordinate depends on where the ring starts
+                String[] points = new String[coordinates.length - 1];
+                for( int i = 0; i < points.length; i++ ) {
+                    points[i] = coordinates[i].x + " " + coordinates[i].y;
+                }
+                Arrays.sort(points);
+                return Arrays.toString(points);
+            }
+        });
+        Collections.sort(polygons);
+        return polygons;
+    }
+
+    private RenderedImage createImage( double[][] values ) {
+        return CoverageUtilities.buildCoverage("data", values, HMTestMaps.getEnvelopeparams(), HMTestMaps.getCrs(), true)
+                .getRenderedImage();
+    }
+}
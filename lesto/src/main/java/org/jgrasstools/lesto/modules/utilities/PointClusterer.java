@@ -22,10 +22,12 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_DRAFT;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
+import oms3.annotations.Execute;
 import oms3.annotations.In;
 import oms3.annotations.Keywords;
 import oms3.annotations.Label;
@@ -46,6 +48,7 @@ import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.clustering.GvmClusters;
+import org.jgrasstools.gears.utils.clustering.GvmIndexedClusters;
 import org.jgrasstools.gears.utils.clustering.GvmResult;
 import org.jgrasstools.gears.utils.clustering.GvmVectorSpace;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
@@ -80,6 +83,14 @@ public class PointClusterer extends JGTModel {
     @In
     public String fClusterName = "elev";
 
+    @Description("The cell size of the spatial index of the clusters, if not set all clusters are compared.")
+    @In
+    public Double pCellSize = null;
+
+    @Description("The number of threads to use, only used with the spatial index.")
+    @In
+    public int pMaxThreads = 1;
+
     @Description("Clustered output shapefile.")
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -87,7 +98,8 @@ public class PointClusterer extends JGTModel {
 
     private final GvmVectorSpace space = new GvmVectorSpace(2);
 
-    public PointClusterer() throws Exception {
+    @Execute
+    public void process() throws Exception {
         checkNull(inFile, outShp);
         DefaultFeatureCollection newCollection = new DefaultFeatureCollection();
         if (inFile.toLowerCase().endsWith(".las")) {
@@ -96,22 +108,53 @@ public class PointClusterer extends JGTModel {
                 ILasHeader header = lasReader.getHeader();
                 CoordinateReferenceSystem crs = header.getCrs();
 
-                GvmClusters<GvmVectorSpace, LasRecord> clusters = new GvmClusters<GvmVectorSpace, LasRecord>(space, pClusterCount);
-                clusters.setKeyer(new LasClusterElevationKeyer());
-                double[] vector = clusters.getSpace().newOrigin();
+                List<GvmResult<LasRecord>> results;
                 pm.beginTask("Clustering...", (int) header.getRecordsCount());
-                while( lasReader.hasNextPoint() ) {
-                    LasRecord dot = lasReader.getNextPoint();
-                    vector[0] = dot.x;
-                    vector[1] = dot.y;
-                    clusters.add(dot.z, vector, dot);
-                    pm.worked(1);
+                if (pCellSize == null) {
+                    GvmClusters<GvmVectorSpace, LasRecord> clusters = new GvmClusters<GvmVectorSpace, LasRecord>(space,
+                            pClusterCount);
+                    clusters.setKeyer(new LasClusterElevationKeyer());
+                    double[] vector = clusters.getSpace().newOrigin();
+                    while( lasReader.hasNextPoint() ) {
+                        LasRecord dot = lasReader.getNextPoint();
+                        vector[0] = dot.x;
+                        vector[1] = dot.y;
+                        clusters.add(dot.z, vector, dot);
+                        pm.worked(1);
+                    }
+                    results = clusters.results();
+                } else {
+                    GvmIndexedClusters<LasRecord> clusters = new GvmIndexedClusters<LasRecord>(space, pClusterCount, pCellSize);
+                    clusters.setKeyer(new LasClusterElevationKeyer());
+                    List<LasRecord> dots = new ArrayList<LasRecord>();
+                    double[] vector = space.newOrigin();
+                    while( lasReader.hasNextPoint() ) {
+                        LasRecord dot = lasReader.getNextPoint();
+                        if (pMaxThreads > 1) {
+                            dots.add(dot);
+                        } else {
+                            vector[0] = dot.x;
+                            vector[1] = dot.y;
+                            clusters.add(dot.z, vector, dot);
+                        }
+                        pm.worked(1);
+                    }
+                    if (pMaxThreads > 1) {
+                        double[] masses = new double[dots.size()];
+                        double[][] points = new double[dots.size()][];
+                        for( int i = 0; i < masses.length; i++ ) {
+                            LasRecord dot = dots.get(i);
+                            masses[i] = dot.z;
+                            points[i] = new double[]{dot.x, dot.y};
+                        }
+                        clusters.addAll(masses, points, dots, pMaxThreads);
+                    }
+                    results = clusters.results();
                 }
                 pm.done();
 
                 SimpleFeatureBuilder builder = getfeatureBuilder(crs);
 
-                List<GvmResult<LasRecord>> results = clusters.results();
                 for( GvmResult<LasRecord> gvmResult : results ) {
                     int count = gvmResult.getCount();
                     double mass = gvmResult.getMass();
@@ -136,26 +179,42 @@ public class PointClusterer extends JGTModel {
             CoordinateReferenceSystem crs = inPointsFC.getBounds().getCoordinateReferenceSystem();
             List<SimpleFeature> pointsList = FeatureUtilities.featureCollectionToList(inPointsFC);
 
-            GvmClusters<GvmVectorSpace, Coordinate> clusters = new GvmClusters<GvmVectorSpace, Coordinate>(space, pClusterCount);
-            clusters.setKeyer(new ShpClusterElevationKeyer());
-            double[] vector = clusters.getSpace().newOrigin();
-            pm.beginTask("Clustering...", pointsList.size());
-            for( SimpleFeature point : pointsList ) {
+            int pointsNum = pointsList.size();
+            double[] masses = new double[pointsNum];
+            double[][] points = new double[pointsNum][];
+            List<Coordinate> dots = new ArrayList<Coordinate>(pointsNum);
+            pm.beginTask("Clustering...", pointsNum);
+            for( int i = 0; i < pointsNum; i++ ) {
+                SimpleFeature point = pointsList.get(i);
                 Geometry geometry = (Geometry) point.getDefaultGeometry();
                 Coordinate dot = geometry.getCoordinate();
-                vector[0] = dot.x;
-                vector[1] = dot.y;
                 double elev = (Double) point.getAttribute(fClusterName);
                 dot.z = elev;
-                clusters.add(elev, vector, dot);
-
+                masses[i] = elev;
+                points[i] = new double[]{dot.x, dot.y};
+                dots.add(dot);
                 pm.worked(1);
             }
+
+            List<GvmResult<Coordinate>> results;
+            if (pCellSize == null) {
+                GvmClusters<GvmVectorSpace, Coordinate> clusters = new GvmClusters<GvmVectorSpace, Coordinate>(space,
+                        pClusterCount);
+                clusters.setKeyer(new ShpClusterElevationKeyer());
+                for( int i = 0; i < pointsNum; i++ ) {
+                    clusters.add(masses[i], points[i], dots.get(i));
+                }
+                results = clusters.results();
+            } else {
+                GvmIndexedClusters<Coordinate> clusters = new GvmIndexedClusters<Coordinate>(space, pClusterCount, pCellSize);
+                clusters.setKeyer(new ShpClusterElevationKeyer());
+                clusters.addAll(masses, points, dots, pMaxThreads);
+                results = clusters.results();
+            }
             pm.done();
 
             SimpleFeatureBuilder builder = getfeatureBuilder(crs);
             double delta = 0.0001;
-            List<GvmResult<Coordinate>> results = clusters.results();
             for( GvmResult<Coordinate> gvmResult : results ) {
                 int count = gvmResult.getCount();
                 double mass = gvmResult.getMass();
@@ -29,6 +29,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_IN_CO
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_OUT_GEODATA_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_INTERVAL_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MAX_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSCONTOUREXTRACTOR_P_MIN_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -71,6 +72,10 @@ public class ContourExtractor extends JGTModel {
     @In
     public Double pInterval;
 
+    @Description(OMSCONTOUREXTRACTOR_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSCONTOUREXTRACTOR_OUT_GEODATA_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -84,7 +89,8 @@ public class ContourExtractor extends JGTModel {
         ex.pMin = pMin;
         ex.pMax = pMax;
         ex.pInterval = pInterval;
+        ex.pMaxThreads = pMaxThreads;
+        ex.outFile = outGeodata;
         ex.process();
-        dumpVector(ex.outGeodata, outGeodata);
     }
 }
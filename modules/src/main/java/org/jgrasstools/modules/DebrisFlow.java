@@ -32,7 +32,9 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pD
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pEasting_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMcoeff_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMontecarlo_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pNorthing_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pSeed_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDEBRISFLOW_pVolume_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -92,6 +94,14 @@ public class DebrisFlow extends JGTModel {
     @In
     public int pMontecarlo = 50;
 
+    @Description(OMSDEBRISFLOW_pSeed_DESCRIPTION)
+    @In
+    public long pSeed = -1;
+
+    @Description(OMSDEBRISFLOW_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDEBRISFLOW_outMcs_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -113,6 +123,8 @@ public class DebrisFlow extends JGTModel {
         f.pEasting = pEasting;
         f.pNorthing = pNorthing;
         f.pMontecarlo = pMontecarlo;
+        f.pSeed = pSeed;
+        f.pMaxThreads = pMaxThreads;
         f.process();
         dumpRaster(f.outMcs, outMcs);
         dumpRaster(f.outDepo, outDepo);
@@ -32,6 +32,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_inPi
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_outFlow_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_outTca_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_pLambda_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINDIR_pMaxThreads_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -79,6 +80,10 @@ public class DrainDir extends JGTModel {
     @In
     public boolean doLad = true;
 
+    @Description(OMSDRAINDIR_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDRAINDIR_outFlow_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -97,6 +102,7 @@ public class DrainDir extends JGTModel {
         draindir.inFlownet = getRaster(inFlownet);
         draindir.pLambda = pLambda;
         draindir.doLad = doLad;
+        draindir.pMaxThreads = pMaxThreads;
         draindir.pm = pm;
         draindir.doProcess = doProcess;
         draindir.doReset = doReset;
@@ -30,6 +30,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_CONTOUR_V
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_FILE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_LINE_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_P_CODE_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_POINTS_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_POLYGON_VECTOR_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSDWGCONVERTER_TEXT_VECTOR_DESCRIPTION;
@@ -67,6 +68,10 @@ public class DwgConverter extends JGTModel {
     @In
     public String pCode;
 
+    @Description(OMSDWGCONVERTER_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSDWGCONVERTER_POINTS_VECTOR_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -102,6 +107,7 @@ public class DwgConverter extends JGTModel {
         OmsDwgConverter dwgconverter = new OmsDwgConverter();
         dwgconverter.file = file;
         dwgconverter.pCode = pCode;
+        dwgconverter.pMaxThreads = pMaxThreads;
         dwgconverter.pm = pm;
         dwgconverter.doProcess = doProcess;
         dwgconverter.doReset = doReset;
@@ -0,0 +1,99 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.modules;
+
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_doVector_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_fId_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_inFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_inOutlets_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_outBasins_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSEXTRACTBASINS_outVectorBasins_DESCRIPTION;
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsExtractBasins;
+
+@Description(OMSEXTRACTBASINS_DESCRIPTION)
+@Author(name = OMSEXTRACTBASINS_AUTHORNAMES, contact = OMSEXTRACTBASINS_AUTHORCONTACTS)
+@Keywords(OMSEXTRACTBASINS_KEYWORDS)
+@Label(OMSEXTRACTBASINS_LABEL)
+@Name("_" + OMSEXTRACTBASINS_NAME)
+@Status(OMSEXTRACTBASINS_STATUS)
+@License(OMSEXTRACTBASINS_LICENSE)
+public class ExtractBasins extends JGTModel {
+    @Description(OMSEXTRACTBASINS_inFlow_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inFlow;
+
+    @Description(OMSEXTRACTBASINS_inOutlets_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inOutlets;
+
+    @Description(OMSEXTRACTBASINS_fId_DESCRIPTION)
+    @In
+    public String fId;
+
+    @Description(OMSEXTRACTBASINS_doVector_DESCRIPTION)
+    @In
+    public boolean doVector = true;
+
+    @Description(OMSEXTRACTBASINS_outBasins_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outBasins = null;
+
+    @Description(OMSEXTRACTBASINS_outVectorBasins_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outVectorBasins = null;
+
+    @Execute
+    public void process() throws Exception {
+        OmsExtractBasins extractbasins = new OmsExtractBasins();
+        extractbasins.inFlow = getRaster(inFlow);
+        extractbasins.inOutlets = getVector(inOutlets);
+        extractbasins.fId = fId;
+        extractbasins.doVector = doVector;
+        extractbasins.pm = pm;
+        extractbasins.doProcess = doProcess;
+        extractbasins.doReset = doReset;
+        extractbasins.process();
+        dumpRaster(extractbasins.outBasins, outBasins);
+        dumpVector(extractbasins.outVectorBasins, outVectorBasins);
+    }
+}
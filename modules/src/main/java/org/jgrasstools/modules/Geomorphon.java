@@ -43,6 +43,7 @@ public class Geomorphon extends OmsGeomorphon {
         geomorphon.inElev = getRaster(inElev);
         geomorphon.pRadius = pRadius;
         geomorphon.pThreshold = pThreshold;
+        geomorphon.pMaxThreads = pMaxThreads;
         geomorphon.pm = pm;
         geomorphon.process();
         dumpRaster(geomorphon.outRaster, outRaster);
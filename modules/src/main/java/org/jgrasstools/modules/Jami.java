@@ -44,6 +44,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_outInter
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pBins_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmin_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pNum_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pType_DESCRIPTION;
 
@@ -171,6 +172,10 @@ public class Jami extends JGTModel {
     @In
     public String inMeteo = null;
 
+    @Description(OMSJAMI_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSJAMI_outInterpolatedBand_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -228,6 +233,7 @@ public class Jami extends JGTModel {
         omsjami.defaultTolltmax = defaultTolltmax;
         omsjami.inAltimetry = altimList;
         omsjami.inAreas = areasList;
+        omsjami.pMaxThreads = pMaxThreads;
         omsjami.pm = pm;
         omsjami.doProcess = doProcess;
         omsjami.doReset = doReset;
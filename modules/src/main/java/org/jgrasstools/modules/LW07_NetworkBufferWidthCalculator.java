@@ -34,6 +34,7 @@ import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruit
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.outNetPoints_DESCR;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.pK_DESCR;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.pMinSlope_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.pMaxThreads_DESCR;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.pN_DESCR;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator.pPrePostCount4Slope_DESCR;
 import oms3.annotations.Author;
@@ -94,6 +95,10 @@ public class LW07_NetworkBufferWidthCalculator extends JGTModel {
     @In
     public double pMinSlope = 0.001;
 
+    @Description(pMaxThreads_DESCR)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(outNetPoints_DESCR)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -113,13 +118,15 @@ public class LW07_NetworkBufferWidthCalculator extends JGTModel {
     public void process() throws Exception {
         OmsLW07_NetworkBufferWidthCalculator m = new OmsLW07_NetworkBufferWidthCalculator();
         m.inNetPoints = getVector(inNetPoints);
-        m.inGeo = getVector(inNetPoints);
+        m.inGeo = getVector(inGeo);
         m.inSectWidth = getVector(inSectWidth);
         m.pPrePostCount4Slope = pPrePostCount4Slope;
         m.pK = pK;
         m.pN = pN;
         m.doKeepBridgeDamWidth = doKeepBridgeDamWidth;
         m.pMinSlope = pMinSlope;
+        m.pMaxThreads = pMaxThreads;
+        m.pm = pm;
         m.process();
         dumpVector(m.outNetPoints, outNetPoints);
         dumpVector(m.outInundationArea, outInundationArea);
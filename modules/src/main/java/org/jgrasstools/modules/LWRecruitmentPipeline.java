@@ -0,0 +1,275 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.modules;
+
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.AUTHORS;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.CONTACTS;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.DESCRIPTION;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.KEYWORDS;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.LABEL;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.LICENSE;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.NAME;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.STATUS;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inBankfull_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inBridges_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inConnectivity_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inDams_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inDsm_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inDtm_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inFlow_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inGeo_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inNet_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inSlope_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inStand_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.inTca_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.outNetPoints_DESCR;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline.pMaxThreads_DESCR;
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+import oms3.annotations.Unit;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW04_BankfullWidthAnalyzer;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW05_BridgesDamsWidthAdder;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW07_NetworkBufferWidthCalculator;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW08_NetworBufferMergerHolesRemover;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLW09_AreaToNetpointAssociator;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.lwrecruitment.OmsLWRecruitmentPipeline;
+
+@Description(DESCRIPTION)
+@Author(name = AUTHORS, contact = CONTACTS)
+@Keywords(KEYWORDS)
+@Label(LABEL)
+@Name(NAME)
+@Status(STATUS)
+@License(LICENSE)
+public class LWRecruitmentPipeline extends JGTModel {
+
+    @Description(inBankfull_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inBankfull = null;
+
+    @Description(inNet_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inNet = null;
+
+    @Description(inFlow_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inFlow = null;
+
+    @Description(inTca_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inTca = null;
+
+    @Description(inBridges_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inBridges = null;
+
+    @Description(inDams_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inDams = null;
+
+    @Description(inSlope_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inSlope = null;
+
+    @Description(inGeo_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inGeo = null;
+
+    @Description(inDtm_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inDtm = null;
+
+    @Description(inDsm_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inDsm = null;
+
+    @Description(inStand_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inStand = null;
+
+    @Description(inConnectivity_DESCR)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inConnectivity = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMaxDistanceFromNetpoint_DESCR)
+    @Unit("m")
+    @In
+    public double pMaxDistanceFromNetpoint = 100.0;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMaxNetworkWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pMaxNetworkWidth = 100;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.pMinNetworkWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pMinNetworkWidth = 0.5;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pDamsOnNetDistance_DESCR)
+    @Unit("m")
+    @In
+    public double pDamsOnNetDistance = 15.0;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pBridgesOnNetDistance_DESCR)
+    @Unit("m")
+    @In
+    public double pBridgesOnNetDistance = 15.0;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.pFixedDamsWidth_DESCR)
+    @Unit("m")
+    @In
+    public double pFixedDamsWidth = 0.1;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.bridgeLenghtField_DESCR)
+    @In
+    public String fBridgeLenght = "LENGHT";
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pPrePostCount4Slope_DESCR)
+    @In
+    public int pPrePostCount4Slope = 10;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pK_DESCR)
+    @In
+    public double pK = 20.0;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pN_DESCR)
+    @In
+    public double pN = -0.2;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.doKeepBridgeDamWidth_DESCR)
+    @In
+    public boolean doKeepBridgeDamWidth = true;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.pMinSlope_DESCR)
+    @In
+    public double pMinSlope = 0.001;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.pConnectivityThreshold_DESCR)
+    @In
+    public double pConnectivityThreshold = 4.0;
+
+    @Description(pMaxThreads_DESCR)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(outNetPoints_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outNetPoints = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.outProblemPoints_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outProblemPoints = null;
+
+    @Description(OmsLW04_BankfullWidthAnalyzer.outBankfullSections_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outBankfullSections = null;
+
+    @Description(OmsLW05_BridgesDamsWidthAdder.outProblemBridges_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outProblemBridges = null;
+
+    @Description(OmsLW07_NetworkBufferWidthCalculator.outInundationSections_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outInundationSections = null;
+
+    @Description(OmsLW08_NetworBufferMergerHolesRemover.outInundationArea_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outInundationArea = null;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.outNetnum_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outNetnum = null;
+
+    @Description(OmsLW09_AreaToNetpointAssociator.outBasins_DESCR)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outBasins = null;
+
+    @Execute
+    public void process() throws Exception {
+        OmsLWRecruitmentPipeline m = new OmsLWRecruitmentPipeline();
+        m.inBankfull = getVector(inBankfull);
+        m.inNet = getRaster(inNet);
+        m.inFlow = getRaster(inFlow);
+        m.inTca = getRaster(inTca);
+        m.inBridges = getVector(inBridges);
+        m.inDams = getVector(inDams);
+        m.inSlope = getRaster(inSlope);
+        m.inGeo = getVector(inGeo);
+        m.inDtm = getRaster(inDtm);
+        m.inDsm = getRaster(inDsm);
+        m.inStand = getRaster(inStand);
+        m.inConnectivity = getRaster(inConnectivity);
+        m.pMaxDistanceFromNetpoint = pMaxDistanceFromNetpoint;
+        m.pMaxNetworkWidth = pMaxNetworkWidth;
+        m.pMinNetworkWidth = pMinNetworkWidth;
+        m.pDamsOnNetDistance = pDamsOnNetDistance;
+        m.pBridgesOnNetDistance = pBridgesOnNetDistance;
+        m.pFixedDamsWidth = pFixedDamsWidth;
+        m.fBridgeLenght = fBridgeLenght;
+        m.pPrePostCount4Slope = pPrePostCount4Slope;
+        m.pK = pK;
+        m.pN = pN;
+        m.doKeepBridgeDamWidth = doKeepBridgeDamWidth;
+        m.pMinSlope = pMinSlope;
+        m.pConnectivityThreshold = pConnectivityThreshold;
+        m.pMaxThreads = pMaxThreads;
+        m.pm = pm;
+        m.process();
+        dumpVector(m.outNetPoints, outNetPoints);
+        dumpVector(m.outProblemPoints, outProblemPoints);
+        dumpVector(m.outBankfullSections, outBankfullSections);
+        dumpVector(m.outProblemBridges, outProblemBridges);
+        dumpVector(m.outInundationSections, outInundationSections);
+        dumpVector(m.outInundationArea, outInundationArea);
+        dumpRaster(m.outNetnum, outNetnum);
+        dumpRaster(m.outBasins, outBasins);
+    }
+
+}
@@ -46,6 +46,7 @@ public class Morpher extends OmsMorpher {
         morpher.doBinary = doBinary;
         morpher.pMode = pMode;
         morpher.pIterations = pIterations;
+        morpher.pMaxThreads = pMaxThreads;
         morpher.pm = pm;
         morpher.process();
         dumpRaster(morpher.outMap, outMap);
@@ -1,5 +1,9 @@
 package org.jgrasstools.modules;
 
+import static org.jgrasstools.gears.libs.modules.Variables.MFD_DROP;
+import static org.jgrasstools.gears.libs.modules.Variables.MFD_FREEMAN;
+import static org.jgrasstools.gears.libs.modules.Variables.MFD_HOLMGREN;
+import static org.jgrasstools.gears.libs.modules.Variables.MFD_QUINN;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_DESCRIPTION;
@@ -12,6 +16,9 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_inCp
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_inFlow_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_inPit_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_outMultiTca_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_pExponent_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_pMaxThreads_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_pPartition_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -50,6 +57,19 @@ public class MultiTca extends JGTModel {
     @In
     public String inCp9 = null;
 
+    @Description(OMSMULTITCA_pPartition_DESCRIPTION)
+    @UI("combo:" + MFD_DROP + "," + MFD_FREEMAN + "," + MFD_QUINN + "," + MFD_HOLMGREN)
+    @In
+    public String pPartition = MFD_DROP;
+
+    @Description(OMSMULTITCA_pExponent_DESCRIPTION)
+    @In
+    public Double pExponent = null;
+
+    @Description(OMSMULTITCA_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSMULTITCA_outMultiTca_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -61,6 +81,9 @@ public class MultiTca extends JGTModel {
         multitca.inPit = getRaster(inPit);
         multitca.inFlow = getRaster(inFlow);
         multitca.inCp9 = getRaster(inCp9);
+        multitca.pPartition = pPartition;
+        multitca.pExponent = pExponent;
+        multitca.pMaxThreads = pMaxThreads;
         multitca.pm = pm;
         multitca.doProcess = doProcess;
         multitca.doReset = doReset;
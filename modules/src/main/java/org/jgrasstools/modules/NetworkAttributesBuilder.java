@@ -31,6 +31,10 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIB
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_inTca_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outHack_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outNet_DESCRIPTION;
+
+import java.io.File;
+import java.io.IOException;
+
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -44,6 +48,7 @@ import oms3.annotations.UI;
 
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.ChannelNetwork;
 import org.jgrasstools.hortonmachine.modules.network.networkattributes.OmsNetworkAttributesBuilder;
 
 @Description(OMSNETWORKATTRIBUTESBUILDER_DESCRIPTION)
@@ -90,11 +95,25 @@ public class NetworkAttributesBuilder extends JGTModel {
         networkattributesbuilder.inNet = getRaster(inNet);
         networkattributesbuilder.inFlow = getRaster(inFlow);
         networkattributesbuilder.inTca = getRaster(inTca);
+        /*
+         * the graph of the network is cached next to the network raster
+         * and reused as long as it is newer than the rasters
+         */
+        File cacheFile = ChannelNetwork.getCacheFile(inNet);
+        networkattributesbuilder.inChannelNetwork = ChannelNetwork.readCache(cacheFile, new File(inNet), new File(inFlow),
+                new File(inTca));
         networkattributesbuilder.doHack = doHack;
         networkattributesbuilder.pm = pm;
         networkattributesbuilder.doProcess = doProcess;
         networkattributesbuilder.doReset = doReset;
         networkattributesbuilder.process();
+        if (networkattributesbuilder.inChannelNetwork == null) {
+            try {
+                networkattributesbuilder.outChannelNetwork.save(cacheFile);
+            } catch (IOException e) {
+                pm.errorMessage("Unable to cache the channel network in: " + cacheFile.getAbsolutePath());
+            }
+        }
         dumpVector(networkattributesbuilder.outNet, outNet);
         dumpRaster(networkattributesbuilder.outHack, outHack);
     }
@@ -31,9 +31,11 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_CO
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_COLS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_EAST_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_INTERPOLATION_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_NORTH_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_ROWS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_SOUTH_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_TOLERANCE_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREPROJECTOR_P_WEST_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.BICUBIC;
 import static org.jgrasstools.gears.libs.modules.Variables.BILINEAR;
@@ -52,6 +54,7 @@ import oms3.annotations.UI;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.modules.r.rasterreprojector.OmsRasterReprojector;
+import org.jgrasstools.gears.modules.r.rasterreprojector.ReprojectionEngine;
 
 @Description(OMSRASTERREPROJECTOR_DESCRIPTION)
 @Author(name = OMSRASTERREPROJECTOR_AUTHORNAMES, contact = OMSRASTERREPROJECTOR_AUTHORCONTACTS)
@@ -107,6 +110,14 @@ public class RasterReprojector extends JGTModel {
     @In
     public String pInterpolation = NEAREST_NEIGHTBOUR;
 
+    @Description(OMSRASTERREPROJECTOR_P_TOLERANCE_DESCRIPTION)
+    @In
+    public double pTolerance = ReprojectionEngine.DEFAULT_TOLERANCE;
+
+    @Description(OMSRASTERREPROJECTOR_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSRASTERREPROJECTOR_OUT_RASTER_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -124,10 +135,19 @@ public class RasterReprojector extends JGTModel {
         rasterreprojector.pCols = pCols;
         rasterreprojector.pCode = pCode;
         rasterreprojector.pInterpolation = pInterpolation;
+        rasterreprojector.pTolerance = pTolerance;
+        rasterreprojector.pMaxThreads = pMaxThreads;
+        // esri ascii grids are written while reprojecting
+        boolean stream = outRaster != null && outRaster.toLowerCase().endsWith("." + JGTConstants.ESRIGRID);
+        if (stream) {
+            rasterreprojector.outFile = outRaster;
+        }
         rasterreprojector.pm = pm;
         rasterreprojector.doProcess = doProcess;
         rasterreprojector.doReset = doReset;
         rasterreprojector.process();
-        dumpRaster(rasterreprojector.outRaster, outRaster);
+        if (!stream) {
+            dumpRaster(rasterreprojector.outRaster, outRaster);
+        }
     }
 }
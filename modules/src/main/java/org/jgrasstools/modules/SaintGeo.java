@@ -36,6 +36,8 @@ import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo.outputDischargeFile_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo.pDeltaTMillis_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo.pDeltaTMillis_UNIT;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo.pLevelStep_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.saintgeo.OmsSaintGeo.pLevelStep_UNIT;
 
 import java.io.File;
 import java.io.IOException;
@@ -114,6 +116,11 @@ public class SaintGeo extends JGTModel {
     @In
     public long pDeltaTMillis = 5000;
 
+    @Description(pLevelStep_DESCRIPTION)
+    @Unit(pLevelStep_UNIT)
+    @In
+    public double pLevelStep = 0.0;
+
     @Description(outputLevelFile_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -151,6 +158,7 @@ public class SaintGeo extends JGTModel {
         }
 
         saintGeo.pDeltaTMillis = pDeltaTMillis;
+        saintGeo.pLevelStep = pLevelStep;
         saintGeo.outputLevelFile = outputLevelFile;
         saintGeo.outputDischargeFile = outputDischargeFile;
         saintGeo.process();
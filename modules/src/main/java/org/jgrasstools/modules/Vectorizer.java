@@ -29,6 +29,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_DO_REGION_C
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_F_DEFAULT_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_IN_RASTER_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_OUT_VECTOR_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_MAX_THREADS_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_THRES_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORIZER_P_VALUE_DESCRIPTION;
 import oms3.annotations.Author;
@@ -76,6 +77,10 @@ public class Vectorizer extends JGTModel {
     @In
     public boolean doRegioncheck = false;
 
+    @Description(OMSVECTORIZER_P_MAX_THREADS_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORIZER_OUT_VECTOR_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -89,6 +94,7 @@ public class Vectorizer extends JGTModel {
         vectorizer.fDefault = fDefault;
         vectorizer.pThres = pThres;
         vectorizer.doRegioncheck = doRegioncheck;
+        vectorizer.pMaxThreads = pMaxThreads;
         vectorizer.pm = pm;
         vectorizer.doProcess = doProcess;
         vectorizer.doReset = doReset;
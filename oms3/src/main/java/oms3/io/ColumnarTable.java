@@ -0,0 +1,555 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Table, that holds its content in typed columns.
+ *
+ * Columns of type <code>Date</code> are parsed once into timestamps,
+ * numeric columns (<code>real</code>, <code>double</code>, <code>float</code>,
+ * <code>int</code>, <code>integer</code>, <code>long</code>) into doubles,
+ * all other columns are kept as strings. The first date column is
+ * indexed for binary searches by time. Empty or invalid numbers are NaN.
+ *
+ * The rows of the table are parsed in chunks, in parallel. The text of
+ * every value is kept too, so {@link #rows()} returns the values as they
+ * are in the file.
+ *
+ * @author Olaf David
+ */
+public class ColumnarTable implements CSTable {
+
+    static final int CHUNK_ROWS = 8192;
+
+    static final int STRING = 0;
+    static final int NUMBER = 1;
+    static final int INTEGER = 2;
+    static final int DATE = 3;
+
+    String name;
+    Map<Integer, Map<String, String>> info = new HashMap<Integer, Map<String, String>>();
+    String[] columnNames;
+    int colCount;
+    int rowCount;
+    int[] kinds;
+    String[] dateFormats;
+    long[][] dates;
+    double[][] numbers;
+    String[][] strings;
+    // the indexed date column
+    int timeColumn = -1;
+    // the rows in time order, null if the table is already sorted by time
+    int[] timeOrder;
+
+    ColumnarTable(CSTable header) {
+        name = header.getName();
+        info.put(-1, new LinkedHashMap<String, String>(header.getInfo()));
+        colCount = header.getColumnCount();
+        columnNames = new String[colCount + 1];
+        columnNames[0] = "ROW";
+        kinds = new int[colCount + 1];
+        dateFormats = new String[colCount + 1];
+        for (int i = 1; i <= colCount; i++) {
+            columnNames[i] = header.getColumnName(i);
+            info.put(i, new LinkedHashMap<String, String>(header.getColumnInfo(i)));
+            kinds[i] = kindOf(header.getColumnInfo(i).get(DataIO.KEY_TYPE));
+            if (kinds[i] == DATE) {
+                dateFormats[i] = DataIO.lookupDateFormat(header, i).toPattern();
+                if (timeColumn == -1) {
+                    timeColumn = i;
+                }
+            }
+        }
+        dates = new long[colCount + 1][];
+        numbers = new double[colCount + 1][];
+        strings = new String[colCount + 1][];
+    }
+
+    private static int kindOf(String type) {
+        if (type == null) {
+            return STRING;
+        }
+        type = type.trim().toLowerCase();
+        if (type.equals(DataIO.VAL_DATE.toLowerCase())) {
+            return DATE;
+        } else if (type.equals("real") || type.equals("double") || type.equals("float")) {
+            return NUMBER;
+        } else if (type.equals("int") || type.equals("integer") || type.equals("long")) {
+            return INTEGER;
+        }
+        return STRING;
+    }
+
+    /** Load the rows of a table.
+     *
+     * @param header the table header, providing name, info and columns
+     * @param data the reader, positioned at the first row of the table.
+     * @param threads the number of threads to parse with.
+     * @return the loaded table
+     * @throws IOException
+     */
+    static ColumnarTable load(CSTable header, BufferedReader data, int threads) throws IOException {
+        ColumnarTable table = new ColumnarTable(header);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Chunk>> chunks = new ArrayList<Future<Chunk>>();
+        try {
+            StringBuilder sb = new StringBuilder();
+            int lines = 0;
+            boolean quoted = false;
+            String line;
+            while ((line = data.readLine()) != null) {
+                if (!quoted) {
+                    if (line.trim().isEmpty()) {
+                        // empty lines are ignored by the parser
+                        continue;
+                    }
+                    if (!isRow(line)) {
+                        break;
+                    }
+                }
+                sb.append(line).append('\n');
+                // a chunk must not split a quoted value over more lines
+                quoted ^= (count(line, '"') % 2) == 1;
+                if (++lines >= CHUNK_ROWS && !quoted) {
+                    chunks.add(pool.submit(table.parser(sb.toString())));
+                    sb.setLength(0);
+                    lines = 0;
+                }
+            }
+            if (lines > 0) {
+                chunks.add(pool.submit(table.parser(sb.toString())));
+            }
+
+            List<Chunk> parsed = new ArrayList<Chunk>(chunks.size());
+            for (Future<Chunk> chunk : chunks) {
+                parsed.add(chunk.get());
+            }
+            table.merge(parsed);
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        table.indexTime();
+        return table;
+    }
+
+    private static boolean isRow(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ',') {
+                return true;
+            }
+            if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static int count(String s, char c) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The typed columns of a chunk of rows.
+     */
+    static class Chunk {
+
+        int size;
+        long[][] dates;
+        double[][] numbers;
+        String[][] strings;
+    }
+
+    private Callable<Chunk> parser(final String text) {
+        return new Callable<Chunk>() {
+
+            @Override
+            public Chunk call() throws Exception {
+                String[][] rows = new CSVParser(new StringReader(text), CSVStrategy.DEFAULT_STRATEGY).getAllValues();
+                Chunk chunk = new Chunk();
+                chunk.size = rows == null ? 0 : rows.length;
+                chunk.dates = new long[colCount + 1][];
+                chunk.numbers = new double[colCount + 1][];
+                chunk.strings = new String[colCount + 1][];
+                for (int col = 1; col <= colCount; col++) {
+                    String[] texts = new String[chunk.size];
+                    for (int r = 0; r < chunk.size; r++) {
+                        texts[r] = text(rows[r], col);
+                    }
+                    chunk.strings[col] = texts;
+                    switch (kinds[col]) {
+                        case DATE: {
+                            // formats are not thread safe
+                            SimpleDateFormat fmt = new SimpleDateFormat(dateFormats[col]);
+                            long[] values = new long[chunk.size];
+                            for (int r = 0; r < chunk.size; r++) {
+                                String value = texts[r].trim();
+                                try {
+                                    values[r] = fmt.parse(value).getTime();
+                                } catch (ParseException ex) {
+                                    throw new IOException("Invalid date '" + value + "' in column " + columnNames[col], ex);
+                                }
+                            }
+                            chunk.dates[col] = values;
+                            break;
+                        }
+                        case NUMBER:
+                        case INTEGER: {
+                            double[] values = new double[chunk.size];
+                            for (int r = 0; r < chunk.size; r++) {
+                                values[r] = number(texts[r].trim());
+                            }
+                            chunk.numbers[col] = values;
+                            break;
+                        }
+                    }
+                }
+                return chunk;
+            }
+        };
+    }
+
+    private static String text(String[] row, int col) {
+        return col < row.length && row[col] != null ? row[col] : "";
+    }
+
+    private static double number(String value) {
+        if (value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private void merge(List<Chunk> chunks) {
+        rowCount = 0;
+        for (Chunk chunk : chunks) {
+            rowCount += chunk.size;
+        }
+        for (int col = 1; col <= colCount; col++) {
+            strings[col] = new String[rowCount];
+            switch (kinds[col]) {
+                case DATE:
+                    dates[col] = new long[rowCount];
+                    break;
+                case NUMBER:
+                case INTEGER:
+                    numbers[col] = new double[rowCount];
+                    break;
+            }
+        }
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            for (int col = 1; col <= colCount; col++) {
+                System.arraycopy(chunk.strings[col], 0, strings[col], pos, chunk.size);
+                switch (kinds[col]) {
+                    case DATE:
+                        System.arraycopy(chunk.dates[col], 0, dates[col], pos, chunk.size);
+                        break;
+                    case NUMBER:
+                    case INTEGER:
+                        System.arraycopy(chunk.numbers[col], 0, numbers[col], pos, chunk.size);
+                        break;
+                }
+            }
+            pos += chunk.size;
+        }
+    }
+
+    private void indexTime() {
+        if (timeColumn == -1) {
+            return;
+        }
+        final long[] times = dates[timeColumn];
+        boolean sorted = true;
+        for (int i = 1; i < rowCount && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            timeOrder = null;
+            return;
+        }
+        // stable, so rows with the same time keep their order
+        Integer[] order = new Integer[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(times[a], times[b]);
+            }
+        });
+        timeOrder = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            timeOrder[i] = order[i];
+        }
+    }
+
+    /** Get the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /** Get the indexed date column.
+     *
+     * @return the first column of type Date, or -1 if there is none.
+     */
+    public int getTimeColumn() {
+        return timeColumn;
+    }
+
+    /** Check if the rows are in time order.
+     *
+     * @return true if the rows are sorted by the time column.
+     */
+    public boolean isTimeSorted() {
+        return timeColumn != -1 && timeOrder == null;
+    }
+
+    /** Get the timestamps of a date column, in row order.
+     * The array is shared and must not be modified.
+     *
+     * @param column the date column
+     * @return the timestamps in milliseconds.
+     */
+    public long[] getTimes(int column) {
+        if (column < 1 || column > colCount || kinds[column] != DATE) {
+            throw new IllegalArgumentException("Not a date column: " + column);
+        }
+        return dates[column];
+    }
+
+    /** Check if a column holds numbers.
+     *
+     * @param column the column
+     * @return true if the column is numeric.
+     */
+    public boolean isNumeric(int column) {
+        return column >= 1 && column <= colCount && (kinds[column] == NUMBER || kinds[column] == INTEGER);
+    }
+
+    /** Get the values of a numeric column, in row order.
+     * The array is shared and must not be modified.
+     *
+     * @param column the numeric column
+     * @return the values.
+     */
+    public double[] getDoubleValues(int column) {
+        if (!isNumeric(column)) {
+            throw new IllegalArgumentException("Not a numeric column: " + column);
+        }
+        return numbers[column];
+    }
+
+    /** Get a single value as string, as it is in the file.
+     *
+     * @param row the row, starting at 0
+     * @param column the column
+     * @return the value.
+     */
+    public String getValue(int row, int column) {
+        return strings[column][row];
+    }
+
+    /** Find the first position in time order with a time not before the given one.
+     *
+     * @param time the time in milliseconds
+     * @return the position in time order, {@link #getRowCount()} if all times are before.
+     */
+    public int lowerBound(long time) {
+        return bound(time, false);
+    }
+
+    /** Find the first position in time order with a time after the given one.
+     *
+     * @param time the time in milliseconds
+     * @return the position in time order, {@link #getRowCount()} if no time is after.
+     */
+    public int upperBound(long time) {
+        return bound(time, true);
+    }
+
+    private int bound(long time, boolean upper) {
+        if (timeColumn == -1) {
+            throw new IllegalStateException("No date column in table: " + name);
+        }
+        long[] times = dates[timeColumn];
+        int lo = 0;
+        int hi = rowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = times[rowAt(mid)];
+            if (t < time || (upper && t == time)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Get the row at a position in time order.
+     *
+     * @param position the position in time order.
+     * @return the row, starting at 0.
+     */
+    public int rowAt(int position) {
+        return timeOrder == null ? position : timeOrder[position];
+    }
+
+    /** Find the first row with a given date.
+     *
+     * @param date the date
+     * @return the row, starting at 0, or -1 if the date is not in the table.
+     */
+    public int findRow(Date date) {
+        int pos = lowerBound(date.getTime());
+        if (pos < rowCount && dates[timeColumn][rowAt(pos)] == date.getTime()) {
+            return rowAt(pos);
+        }
+        return -1;
+    }
+
+    @Override
+    public Iterable<String[]> rows() {
+        return rows(0);
+    }
+
+    @Override
+    public Iterable<String[]> rows(final int startRow) {
+        if (startRow < 0) {
+            throw new IllegalArgumentException("startRow<0");
+        }
+        return new Iterable<String[]>() {
+
+            @Override
+            public TableIterator<String[]> iterator() {
+                return new TableIterator<String[]>() {
+
+                    int row = startRow;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < rowCount;
+                    }
+
+                    @Override
+                    public String[] next() {
+                        if (row >= rowCount) {
+                            throw new NoSuchElementException();
+                        }
+                        String[] s = new String[colCount + 1];
+                        for (int col = 1; col <= colCount; col++) {
+                            s[col] = strings[col][row];
+                        }
+                        s[0] = Integer.toString(++row);
+                        return s;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public void skip(int n) {
+                        if (n < 1) {
+                            throw new IllegalArgumentException("n<1 : " + n);
+                        }
+                        row += n;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Map<String, String> getInfo() {
+        return getColumnInfo(-1);
+    }
+
+    @Override
+    public Map<String, String> getColumnInfo(int column) {
+        return Collections.unmodifiableMap(info.get(column));
+    }
+
+    @Override
+    public int getColumnCount() {
+        return colCount;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+}
@@ -22,6 +22,7 @@
  */
 package oms3.io;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -117,40 +118,22 @@ public class DataIO {
             throw new IllegalArgumentException("No such column: " + columnName);
         }
 
-        DateFormat fmt = lookupDateFormat(t, 1);
-
         boolean useOrigDaily = false;
         switch (timeStep) {
             case DAILY:
                 if (useOrigDaily) {
-                    List<Double> l = new ArrayList<Double>();
-                    for (String[] row : t.rows()) {
-                        try {
-                            Date d = fmt.parse(row[1]);
-                            if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                                l.add(new Double(row[col]));
-                            }
-                        } catch (ParseException ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    }
-                    double[] arr = new double[l.size()];
-                    for (int i = 0; i < arr.length; i++) {
-                        arr[i] = l.get(i);
-                    }
-                    return arr;
+                    return intervalValues(start, end, t, col).values();
                 }
 
             case ANNUAL_MEAN:
             case MONTHLY_MEAN:
             case PERIOD_MEAN: {
-
+                TimeValues tv = intervalValues(start, end, t, col);
 
                 int previousMonth = -1;
                 int previousYear = -1;
                 int previousDay = -1;
                 boolean previousValid = false;
-                boolean lastRow = false;
 
                 boolean useYear = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN) || (timeStep == ANNUAL_MEAN);
                 boolean useMonth = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN);
@@ -160,42 +143,30 @@ public class DataIO {
                 double sum = 0;
                 int count = 0;
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            int year = d.getYear();
-                            int day = d.getDay();
-                            double data = Double.parseDouble(row[col]);
-
-
-
-                            boolean newEntry = (previousValid && ((useYear && (year != previousYear))
-                                    || (useMonth && (month != previousMonth))
-                                    || (useDay && (day != previousDay))));
-
-
-
-                            if (newEntry) {
-                                l.add(sum / count);
-                                sum = 0;
-                                count = 0;
-                            }
-
-                            sum += data;
-                            count++;
-
-                            previousValid = true;
-                            previousDay = day;
-                            previousMonth = month;
-                            previousYear = year;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (int i = 0; i < tv.size; i++) {
+                    Date d = new Date(tv.times[i]);
+                    int month = d.getMonth();
+                    int year = d.getYear();
+                    int day = d.getDay();
+                    double data = tv.values[i];
+
+                    boolean newEntry = (previousValid && ((useYear && (year != previousYear))
+                            || (useMonth && (month != previousMonth))
+                            || (useDay && (day != previousDay))));
+
+                    if (newEntry) {
+                        l.add(sum / count);
+                        sum = 0;
+                        count = 0;
                     }
 
+                    sum += data;
+                    count++;
+
+                    previousValid = true;
+                    previousDay = day;
+                    previousMonth = month;
+                    previousYear = year;
                 }
                 l.add(sum / count); // add the final entry which wasn't yet added
                 // since it never hit a newEntry.
@@ -211,31 +182,15 @@ public class DataIO {
             }
 
             case MEAN_MONTHLY: {
+                TimeValues tv = intervalValues(start, end, t, col);
                 double[] arr = new double[12]; // 1 per month
 
                 int[] count = new int[12];
 
-                for (int i = 0; i < 12; i++) {
-                    arr[i] = 0; // initialize data to 0
-                    count[i] = 0;
-                }
-
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            double data = Double.parseDouble(row[col]);
-                            arr[month] = arr[month] + data;
-                            count[month] = count[month] + 1;
-                            if (month > 11) {
-                                throw new RuntimeException("Month > 11 = " + month);
-                            }
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
+                for (int i = 0; i < tv.size; i++) {
+                    int month = new Date(tv.times[i]).getMonth();
+                    arr[month] = arr[month] + tv.values[i];
+                    count[month] = count[month] + 1;
                 }
 
                 for (int i = 0; i < 12; i++) {
@@ -248,29 +203,22 @@ public class DataIO {
 
             case PERIOD_MIN:
             case PERIOD_MAX: {
+                TimeValues tv = intervalValues(start, end, t, col);
                 double min = -1;
                 double max = -1;
                 boolean previousValid = false;
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            double data = Double.parseDouble(row[col]);
-                            if (!previousValid) {
-                                min = data;
-                                max = data;
-                            } else if ((timeStep == PERIOD_MIN) && (data < min)) {
-                                min = data;
-                            } else if ((timeStep == PERIOD_MAX) && (data > max)) {
-                                max = data;
-                            }
-                            previousValid = true;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (int i = 0; i < tv.size; i++) {
+                    double data = tv.values[i];
+                    if (!previousValid) {
+                        min = data;
+                        max = data;
+                    } else if ((timeStep == PERIOD_MIN) && (data < min)) {
+                        min = data;
+                    } else if ((timeStep == PERIOD_MAX) && (data > max)) {
+                        max = data;
                     }
+                    previousValid = true;
                 }
                 double[] arr = new double[1];
                 arr[0] = (timeStep == PERIOD_MIN) ? min : max;
@@ -279,30 +227,11 @@ public class DataIO {
             }
 
             case PERIOD_MEDIAN: {
-                // Put entire table into ArrayList
-                List<Double> l = new ArrayList<Double>();
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            l.add(new Double(row[col]));
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                }
-
-                //Copy to array of double
-                int lSize = l.size();
+                double[] arr = intervalValues(start, end, t, col).values();
+                int lSize = arr.length;
                 if (lSize == 0) {
                     throw new RuntimeException("No data in file matched the specified period " + start + " to " + end);
                 }
-                double[] arr = new double[lSize];
-                for (int i = 0; i < arr.length; i++) {
-                    arr[i] = l.get(i);
-                }
-
-                l.clear();  // Don't need l anymore so clear it.
 
                 // Sort the Array
                 Arrays.sort(arr);
@@ -326,28 +255,14 @@ public class DataIO {
             }
 
             case PERIOD_STANDARD_DEVIATION: {
-                // kmolson TODO- is it better to read the file twice, or read
-                //   it once and store the data for the 2nd pass while
-                //   computing the mean?
-
-                // Read file to get mean.
+                TimeValues tv = intervalValues(start, end, t, col);
                 double sum = 0;
                 double sq_sum = 0;
-                double data = 0;
-                int count = 0;
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            data = Double.parseDouble(row[col]);
-                            sum += data;
-                            sq_sum += (data * data);
-                            count++;
-                        }
-
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
+                int count = tv.size;
+                for (int i = 0; i < count; i++) {
+                    double data = tv.values[i];
+                    sum += data;
+                    sq_sum += (data * data);
                 }
 
                 double mean = sum / count;
@@ -365,6 +280,69 @@ public class DataIO {
         }
     }
 
+    /**
+     * Timestamps and values of a column, in row order.
+     */
+    private static class TimeValues {
+
+        long[] times = new long[64];
+        double[] values = new double[64];
+        int size;
+
+        void add(long time, double value) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+
+        double[] values() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /** Get the values of a column for the rows with a date (in column 1) within 
+     * an interval. For a {@link ColumnarTable} the rows are found through its time index.
+     */
+    private static TimeValues intervalValues(Date start, Date end, CSTable t, int col) {
+        TimeValues tv = new TimeValues();
+        long s = start.getTime();
+        long e = end.getTime();
+        if (t instanceof ColumnarTable && ((ColumnarTable) t).getTimeColumn() == 1) {
+            ColumnarTable ct = (ColumnarTable) t;
+            long[] times = ct.getTimes(1);
+            double[] values = ct.isNumeric(col) ? ct.getDoubleValues(col) : null;
+            int from = 0;
+            int to = ct.getRowCount();
+            if (ct.isTimeSorted()) {
+                from = ct.lowerBound(s);
+                to = ct.upperBound(e);
+            }
+            for (int i = from; i < to; i++) {
+                if (times[i] >= s && times[i] <= e) {
+                    tv.add(times[i], values != null ? values[i] : Double.parseDouble(ct.getValue(i, col)));
+                }
+            }
+            return tv;
+        }
+
+        DateFormat fmt = lookupDateFormat(t, 1);
+        for (String[] row : t.rows()) {
+            try {
+                long d = fmt.parse(row[1]).getTime();
+                if (d >= s && d <= e) {
+                    tv.add(d, Double.parseDouble(row[col]));
+                }
+            } catch (ParseException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return tv;
+    }
+
     public static SimpleDateFormat lookupDateFormat(CSTable table, int col) {
         if (col < 0 || col > table.getColumnCount()) {
             throw new IllegalArgumentException("invalid column: " + col);
@@ -385,6 +363,14 @@ public class DataIO {
             throw new IllegalArgumentException();
         }
 
+        if (table instanceof ColumnarTable && ((ColumnarTable) table).getTimeColumn() == dateColumn) {
+            int row = ((ColumnarTable) table).findRow(date);
+            if (row == -1) {
+                throw new IllegalArgumentException(date.toString());
+            }
+            return row;
+        }
+
         DateFormat fmt = lookupDateFormat(table, dateColumn);
 
         int rowNo = 0;
@@ -474,6 +460,25 @@ public class DataIO {
         }
         int s = -1;
         int e = -1;
+        if (table instanceof ColumnarTable && ((ColumnarTable) table).getTimeColumn() == timeCol) {
+            ColumnarTable ct = (ColumnarTable) table;
+            long[] times = ct.getTimes(timeCol);
+            if (ct.isTimeSorted()) {
+                s = ct.lowerBound(start.getTime());
+                e = ct.lowerBound(end.getTime());
+                return new int[]{s < ct.getRowCount() ? s : -1, e < ct.getRowCount() ? e : -1};
+            }
+            for (int i = 0; i < times.length; i++) {
+                if (s == -1 && start.getTime() <= times[i]) {
+                    s = i;
+                }
+                if (e == -1 && end.getTime() <= times[i]) {
+                    e = i;
+                    break;
+                }
+            }
+            return new int[]{s, e};
+        }
         int i = -1;
         for (String[] col : table.rows()) {
             i++;
@@ -1186,6 +1191,41 @@ public class DataIO {
         return new FileTable(file, name);
     }
 
+    /** Load a table from a File into typed columns, parsing it in parallel
+     * with all the available processors.
+     *
+     * @param file the file to parse
+     * @param name the name of the table, null for the first one
+     * @return the ColumnarTable
+     * @throws IOException
+     */
+    public static ColumnarTable columnarTable(File file, String name) throws IOException {
+        return columnarTable(file, name, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Load a table from a File into typed columns.
+     *
+     * @param file the file to parse
+     * @param name the name of the table, null for the first one
+     * @param threads the number of threads to parse the rows with
+     * @return the ColumnarTable
+     * @throws IOException
+     */
+    public static ColumnarTable columnarTable(File file, String name, int threads) throws IOException {
+        FileTable header = new FileTable(file, name);
+        BufferedReader r = new BufferedReader(new FileReader(file), 1 << 16);
+        try {
+            for (int i = 0; i < header.firstline; i++) {
+                if (r.readLine() == null) {
+                    break;
+                }
+            }
+            return ColumnarTable.load(header, r, threads);
+        } finally {
+            r.close();
+        }
+    }
+
     /** Parse a table from a Reader. Find the first table
      * 
      * @param s the Reader to read from
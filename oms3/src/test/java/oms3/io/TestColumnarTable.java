@@ -0,0 +1,141 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** Test {@link ColumnarTable} against the rows of the file table.
+ *
+ * @author Olaf David
+ */
+public class TestColumnarTable extends TestCase {
+
+    private static final String CSV = ""
+            + "@T,obs\n"
+            + "Created,2016-01-01\n"
+            + "@H,time,flow,count,station,note\n"
+            + "type,Date,Real,Integer,String,\n"
+            + "format,yyyy-MM-dd,,,,\n"
+            + ",2001-01-02,57,3,A,x\n"
+            + ",2001-01-01,,12,\"B, C\",\n"
+            + ",2001-01-04,1.50,7.0,n/a,y\n"
+            + ",2001-01-03,1.5e2,,12,\n"
+            + ",2001-01-05,n/a,-4,,z\n";
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("oms-columnar", ".csv");
+        FileWriter w = new FileWriter(file);
+        try {
+            w.write(CSV);
+        } finally {
+            w.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testRowsRoundTrip() throws Exception {
+        List<String[]> expected = rows(DataIO.table(file, "obs"));
+        assertEquals(5, expected.size());
+        for (int threads : new int[]{1, 3}) {
+            ColumnarTable table = DataIO.columnarTable(file, "obs", threads);
+            assertEquals(5, table.getRowCount());
+            assertEquals(5, table.getColumnCount());
+            List<String[]> actual = rows(table);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(Arrays.toString(expected.get(i)), Arrays.toString(actual.get(i)));
+            }
+        }
+    }
+
+    public void testTypedColumns() throws Exception {
+        ColumnarTable table = DataIO.columnarTable(file, "obs", 1);
+
+        // the text is kept, the numbers are parsed
+        assertTrue(table.isNumeric(2));
+        assertEquals("57", table.getValue(0, 2));
+        assertEquals("1.50", table.getValue(2, 2));
+        assertEquals("1.5e2", table.getValue(3, 2));
+        double[] flow = table.getDoubleValues(2);
+        assertEquals(57.0, flow[0], 0.0);
+        assertEquals(150.0, flow[3], 0.0);
+
+        assertTrue(table.isNumeric(3));
+        assertEquals("7.0", table.getValue(2, 3));
+        assertEquals("-4", table.getValue(4, 3));
+        assertEquals(-4.0, table.getDoubleValues(3)[4], 0.0);
+
+        // the dates are in the file format
+        assertEquals(1, table.getTimeColumn());
+        assertFalse(table.isTimeSorted());
+        assertEquals("2001-01-01", table.getValue(table.rowAt(0), 1));
+        assertEquals("2001-01-05", table.getValue(table.rowAt(4), 1));
+    }
+
+    public void testEmptyCells() throws Exception {
+        ColumnarTable table = DataIO.columnarTable(file, "obs", 1);
+
+        assertEquals("", table.getValue(1, 2));
+        assertTrue(Double.isNaN(table.getDoubleValues(2)[1]));
+        assertEquals("", table.getValue(3, 3));
+        assertTrue(Double.isNaN(table.getDoubleValues(3)[3]));
+        assertEquals("", table.getValue(4, 4));
+        assertEquals("", table.getValue(1, 5));
+    }
+
+    public void testNonNumericValues() throws Exception {
+        ColumnarTable table = DataIO.columnarTable(file, "obs", 1);
+
+        // string columns keep numbers and quoted separators as they are
+        assertFalse(table.isNumeric(4));
+        assertEquals("B, C", table.getValue(1, 4));
+        assertEquals("12", table.getValue(3, 4));
+        assertFalse(table.isNumeric(5));
+        assertEquals("z", table.getValue(4, 5));
+
+        // an invalid number is NaN, but its text is kept
+        assertEquals("n/a", table.getValue(4, 2));
+        assertTrue(Double.isNaN(table.getDoubleValues(2)[4]));
+    }
+
+    private static List<String[]> rows(CSTable table) throws IOException {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (String[] row : table.rows()) {
+            rows.add(row.clone());
+        }
+        return rows;
+    }
+}